@@ -0,0 +1,74 @@
+package org.bimserver.benchmarks;
+
+/******************************************************************************
+ * Copyright (C) 2009-2019  BIMserver.org
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see {@literal<http://www.gnu.org/licenses/>}.
+ *****************************************************************************/
+
+import org.bimserver.database.DatabaseSession;
+import org.bimserver.database.OldQuery;
+import org.bimserver.emf.PackageMetaData;
+import org.bimserver.models.store.ConcreteRevision;
+import org.bimserver.models.store.Revision;
+import org.bimserver.models.store.StorePackage;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * Shared by all threads of a benchmark, the dataset is generated once per trial (so once per fork)
+ */
+@State(Scope.Benchmark)
+public class DatasetState {
+	@Param({"1000"})
+	public int nrWalls;
+
+	private SyntheticDataset dataset;
+	private int pid;
+	private int rid;
+	private long croid;
+
+	@Setup(Level.Trial)
+	public void setup() throws Exception {
+		dataset = new SyntheticDataset(nrWalls);
+		try (DatabaseSession databaseSession = dataset.createSession()) {
+			Revision revision = databaseSession.get(StorePackage.eINSTANCE.getRevision(), dataset.getRoid(), OldQuery.getDefault());
+			ConcreteRevision concreteRevision = revision.getConcreteRevisions().get(0);
+			pid = concreteRevision.getProject().getId();
+			rid = concreteRevision.getId();
+			croid = concreteRevision.getOid();
+		}
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		dataset.close();
+	}
+
+	public SyntheticDataset getDataset() {
+		return dataset;
+	}
+
+	public PackageMetaData getPackageMetaData() {
+		return dataset.getPackageMetaData();
+	}
+
+	public OldQuery createOldQuery() {
+		return new OldQuery(getPackageMetaData(), pid, rid, croid);
+	}
+}
@@ -0,0 +1,90 @@
+package org.bimserver.benchmarks;
+
+/******************************************************************************
+ * Copyright (C) 2009-2019  BIMserver.org
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see {@literal<http://www.gnu.org/licenses/>}.
+ *****************************************************************************/
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import org.bimserver.BimserverDatabaseException;
+import org.bimserver.plugins.deserializers.DatabaseInterface;
+import org.bimserver.shared.VirtualObject;
+import org.eclipse.emf.ecore.EClass;
+
+/**
+ * DatabaseInterface without a database, oids are generated the same way as the Database does (the cid is in the lowest 16 bits)
+ */
+public class InMemoryDatabaseInterface implements DatabaseInterface {
+	private final Map<EClass, Short> cids = new HashMap<>();
+	private final Map<Short, EClass> eClasses = new HashMap<>();
+	private final Map<EClass, Long> counters = new HashMap<>();
+
+	@Override
+	public EClass getEClassForOid(long oid) throws BimserverDatabaseException {
+		EClass eClass = eClasses.get((short) oid);
+		if (eClass == null) {
+			throw new BimserverDatabaseException("No class for cid " + (short) oid);
+		}
+		return eClass;
+	}
+
+	@Override
+	public short getCidOfEClass(EClass eClass) {
+		Short cid = cids.get(eClass);
+		if (cid == null) {
+			cid = (short) (cids.size() + 1);
+			cids.put(eClass, cid);
+			eClasses.put(cid, eClass);
+		}
+		return cid;
+	}
+
+	@Override
+	public long newOid(EClass eClass) {
+		Long counter = counters.get(eClass);
+		long oid = (counter == null ? getCidOfEClass(eClass) : counter) + 65536;
+		counters.put(eClass, oid);
+		return oid;
+	}
+
+	@Override
+	public int save(VirtualObject virtualObject) throws BimserverDatabaseException {
+		return virtualObject.write().position();
+	}
+
+	@Override
+	public int saveOverwrite(VirtualObject virtualObject) throws BimserverDatabaseException {
+		return save(virtualObject);
+	}
+
+	@Override
+	public byte[] get(String tableName, byte[] key) throws BimserverDatabaseException {
+		return null;
+	}
+
+	@Override
+	public List<byte[]> getDuplicates(String tableName, byte[] key) throws BimserverDatabaseException {
+		return null;
+	}
+
+	@Override
+	public UUID newUuid() {
+		return UUID.randomUUID();
+	}
+}
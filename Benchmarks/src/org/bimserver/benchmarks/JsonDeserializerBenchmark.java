@@ -0,0 +1,121 @@
+package org.bimserver.benchmarks;
+
+/******************************************************************************
+ * Copyright (C) 2009-2019  BIMserver.org
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see {@literal<http://www.gnu.org/licenses/>}.
+ *****************************************************************************/
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.io.FileUtils;
+import org.bimserver.emf.IfcModelInterface;
+import org.bimserver.emf.PackageMetaData;
+import org.bimserver.emf.Schema;
+import org.bimserver.emf.SharedJsonDeserializer;
+import org.bimserver.emf.SharedJsonStreamingDeserializer;
+import org.bimserver.ifc.BasicIfcModel;
+import org.bimserver.models.ifc2x3tc1.Ifc2x3tc1Package;
+import org.bimserver.plugins.deserializers.DeserializeException;
+import org.bimserver.shared.QueryContext;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Reading a generated JSON file (in the format of the SharedJsonStreamingSerializer) with the SharedJsonDeserializer, which builds the
+ * complete model, and with the SharedJsonStreamingDeserializer, which stores every object right away (here in an
+ * InMemoryDatabaseInterface that only serializes it). Every wall references an owner history at the end of the file, so all of those
+ * references are forward references. Run with -prof gc and a limited heap (-jvmArgs -Xmx512m) to compare the memory use.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class JsonDeserializerBenchmark {
+	@Param({"100000"})
+	public int nrWalls;
+
+	private Path tempDir;
+	private Path file;
+	private PackageMetaData packageMetaData;
+
+	@Setup(Level.Trial)
+	public void setup() throws IOException {
+		tempDir = Files.createTempDirectory("benchmark");
+		packageMetaData = new PackageMetaData(Ifc2x3tc1Package.eINSTANCE, Schema.IFC2X3TC1, tempDir);
+		file = tempDir.resolve("model.json");
+		long ownerHistoryOid = (2L * nrWalls + 1) << 16;
+		try (Writer writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+			writer.write("{\"header\":{\"filename\":\"benchmark.ifc\",\"ifcSchemaVersion\":\"IFC2X3\"},\"objects\":[");
+			for (int i = 0; i < nrWalls; i++) {
+				long wallOid = (2L * i) << 16;
+				long propertyOid = (2L * i + 1) << 16;
+				writer.write(objectStart(wallOid, "IfcWall") + ",\"GlobalId\":\"2O2Fr$t4X7Zf8NOew3F" + i + "\",\"Name\":\"Basic Wall:Interior - 138mm Partition\",\"Tag\":\"" + i + "\",\"_rOwnerHistory\":{\"_i\":" + ownerHistoryOid + ",\"_t\":\"IfcOwnerHistory\"}},");
+				writer.write(objectStart(propertyOid, "IfcPropertySingleValue") + ",\"Name\":\"Reference\",\"_eNominalValue\":{\"_t\":\"IfcLabel\",\"_v\":\"Interior - 138mm Partition " + i + "\"}},");
+			}
+			writer.write(objectStart(ownerHistoryOid, "IfcOwnerHistory") + ",\"ChangeAction\":\"ADDED\",\"CreationDate\":1262304000}");
+			writer.write("]}");
+		}
+	}
+
+	/**
+	 * The same fields, in the same order, as the SharedJsonStreamingSerializer writes
+	 */
+	private String objectStart(long oid, String type) {
+		return "{\"_i\":" + oid + ",\"_u\":\"" + new UUID(0, oid) + "\",\"_r\":1,\"_t\":\"" + type + "\",\"_s\":1";
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws IOException {
+		FileUtils.deleteDirectory(tempDir.toFile());
+	}
+
+	@Benchmark
+	public long sharedJsonDeserializer() throws IOException, DeserializeException {
+		try (InputStream inputStream = new BufferedInputStream(Files.newInputStream(file))) {
+			IfcModelInterface model = new SharedJsonDeserializer(false).read(inputStream, new BasicIfcModel(packageMetaData, null), true);
+			return model.size();
+		}
+	}
+
+	@Benchmark
+	public long sharedJsonStreamingDeserializer() throws IOException, DeserializeException {
+		QueryContext queryContext = new QueryContext(new InMemoryDatabaseInterface(), packageMetaData, 1, 1, 1, 1, 0);
+		SharedJsonStreamingDeserializer deserializer = new SharedJsonStreamingDeserializer(packageMetaData, tempDir);
+		try (InputStream inputStream = new BufferedInputStream(Files.newInputStream(file))) {
+			return deserializer.read(inputStream, file.getFileName().toString(), Files.size(file), queryContext);
+		}
+	}
+}
@@ -0,0 +1,92 @@
+package org.bimserver.benchmarks;
+
+/******************************************************************************
+ * Copyright (C) 2009-2019  BIMserver.org
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see {@literal<http://www.gnu.org/licenses/>}.
+ *****************************************************************************/
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import org.bimserver.BimserverDatabaseException;
+import org.bimserver.plugins.deserializers.DatabaseInterface;
+import org.eclipse.emf.ecore.EAttribute;
+import org.eclipse.emf.ecore.EClass;
+import org.eclipse.emf.ecore.EReference;
+import org.eclipse.emf.ecore.EStructuralFeature;
+
+/**
+ * Baseline for VirtualObjectBenchmark, stores its values the way HashMapVirtualObject did before it was array backed: boxed values in a
+ * HashMap keyed by feature, reference lists as ArrayList&lt;Long&gt;. Only building and reading are copied, writing is not.
+ */
+public class MapVirtualObject {
+	private final Map<EStructuralFeature, Object> map = new HashMap<>();
+	// Never used here, but the old implementation allocated it for every object
+	@SuppressWarnings("unused")
+	private final Map<EStructuralFeature, Object> useForSerializationFeatures = new HashMap<>();
+	private final DatabaseInterface databaseInterface;
+	private final EClass eClass;
+	private final long oid;
+	private final UUID uuid;
+
+	public MapVirtualObject(DatabaseInterface databaseInterface, EClass eClass) {
+		this.databaseInterface = databaseInterface;
+		this.eClass = eClass;
+		this.oid = databaseInterface.newOid(eClass);
+		this.uuid = databaseInterface.newUuid();
+	}
+
+	public void setAttribute(EAttribute eAttribute, Object val) {
+		map.put(eAttribute, val);
+	}
+
+	public void setReference(EReference eReference, long referenceOid) throws BimserverDatabaseException {
+		EClass definedType = (EClass) eReference.getEType();
+		EClass referencedEClass = databaseInterface.getEClassForOid(referenceOid);
+		if (!definedType.isSuperTypeOf(referencedEClass)) {
+			throw new BimserverDatabaseException("Cannot store a " + referencedEClass.getName() + " in " + eClass.getName() + "." + eReference.getName());
+		}
+		map.put(eReference, referenceOid);
+	}
+
+	@SuppressWarnings("unchecked")
+	public void addReference(EReference eReference, EClass eClassForOid, long referencedOid) {
+		List<Long> list = (List<Long>) map.get(eReference);
+		if (list == null) {
+			list = new ArrayList<>(0);
+			map.put(eReference, list);
+		}
+		list.add(referencedOid);
+	}
+
+	public Object eGet(EStructuralFeature feature) {
+		return map.get(feature);
+	}
+
+	public EClass eClass() {
+		return eClass;
+	}
+
+	public long getOid() {
+		return oid;
+	}
+
+	public UUID getUuid() {
+		return uuid;
+	}
+}
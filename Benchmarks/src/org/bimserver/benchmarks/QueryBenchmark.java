@@ -0,0 +1,95 @@
+package org.bimserver.benchmarks;
+
+/******************************************************************************
+ * Copyright (C) 2009-2019  BIMserver.org
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see {@literal<http://www.gnu.org/licenses/>}.
+ *****************************************************************************/
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import org.bimserver.BimserverDatabaseException;
+import org.bimserver.database.DatabaseSession;
+import org.bimserver.database.queries.QueryObjectProvider;
+import org.bimserver.database.queries.om.Include;
+import org.bimserver.database.queries.om.Query;
+import org.bimserver.database.queries.om.QueryException;
+import org.bimserver.database.queries.om.QueryPart;
+import org.bimserver.emf.SharedJsonStreamingSerializer;
+import org.bimserver.models.ifc2x3tc1.Ifc2x3tc1Package;
+import org.bimserver.plugins.serializers.SerializerException;
+import org.bimserver.shared.HashMapVirtualObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.google.common.io.ByteStreams;
+import com.google.common.io.CountingOutputStream;
+
+/**
+ * The streaming download path on the synthetic dataset: a query for all walls including their property sets, once only iterating
+ * the QueryObjectProvider and once serializing the results with the SharedJsonStreamingSerializer (to a stream that only counts).
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class QueryBenchmark {
+
+	private QueryObjectProvider createObjectProvider(DatasetState state, DatabaseSession databaseSession) throws IOException, QueryException {
+		Ifc2x3tc1Package ifc = Ifc2x3tc1Package.eINSTANCE;
+		Query query = new Query(state.getPackageMetaData());
+		QueryPart queryPart = query.createQueryPart();
+		queryPart.addType(ifc.getIfcWall(), true);
+		Include isDefinedBy = queryPart.createInclude();
+		isDefinedBy.addType(ifc.getIfcWall(), true);
+		isDefinedBy.addField("IsDefinedBy");
+		Include propertySet = isDefinedBy.createInclude();
+		propertySet.addType(ifc.getIfcRelDefinesByProperties(), false);
+		propertySet.addField("RelatingPropertyDefinition");
+		return new QueryObjectProvider(databaseSession, state.getDataset().getBimServer(), query, Collections.singleton(state.getDataset().getRoid()), state.getPackageMetaData());
+	}
+
+	@Benchmark
+	public int queryObjectProviderNext(DatasetState state) throws IOException, QueryException, BimserverDatabaseException {
+		int count = 0;
+		try (DatabaseSession databaseSession = state.getDataset().createSession()) {
+			QueryObjectProvider objectProvider = createObjectProvider(state, databaseSession);
+			HashMapVirtualObject next = objectProvider.next();
+			while (next != null) {
+				count++;
+				next = objectProvider.next();
+			}
+		}
+		return count;
+	}
+
+	@Benchmark
+	public long jsonSerializer(DatasetState state) throws IOException, QueryException, SerializerException {
+		CountingOutputStream outputStream = new CountingOutputStream(ByteStreams.nullOutputStream());
+		try (DatabaseSession databaseSession = state.getDataset().createSession()) {
+			SharedJsonStreamingSerializer serializer = new SharedJsonStreamingSerializer(createObjectProvider(state, databaseSession), null, false, false);
+			while (serializer.write(outputStream, null)) {
+			}
+		}
+		return outputStream.getCount();
+	}
+}
@@ -0,0 +1,71 @@
+package org.bimserver.benchmarks;
+
+/******************************************************************************
+ * Copyright (C) 2009-2019  BIMserver.org
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see {@literal<http://www.gnu.org/licenses/>}.
+ *****************************************************************************/
+
+import java.util.concurrent.TimeUnit;
+
+import org.bimserver.BimserverDatabaseException;
+import org.bimserver.database.DatabaseSession;
+import org.bimserver.database.Record;
+import org.bimserver.database.RecordIterator;
+import org.bimserver.emf.IfcModelInterface;
+import org.bimserver.models.ifc2x3tc1.Ifc2x3tc1Package;
+import org.eclipse.emf.ecore.EClass;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Reading a full table of the synthetic dataset, once through the object layer (DatabaseSession.getAllOfType, which goes through
+ * convertByteArrayToObject for every record) and once directly through a BerkeleyKeyValueStore cursor.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class StorageBenchmark {
+	private static final EClass WALL = Ifc2x3tc1Package.eINSTANCE.getIfcWall();
+
+	@Benchmark
+	public int convertByteArrayToObject(DatasetState state) throws BimserverDatabaseException {
+		try (DatabaseSession databaseSession = state.getDataset().createSession()) {
+			IfcModelInterface model = databaseSession.getAllOfType(WALL, state.createOldQuery());
+			return model.size();
+		}
+	}
+
+	@Benchmark
+	public long cursorScan(DatasetState state) throws BimserverDatabaseException {
+		long bytes = 0;
+		try (DatabaseSession databaseSession = state.getDataset().createSession()) {
+			try (RecordIterator recordIterator = databaseSession.getKeyValueStore().getRecordIterator(WALL.getEPackage().getName() + "_" + WALL.getName(), databaseSession)) {
+				Record record = recordIterator.next();
+				while (record != null) {
+					bytes += record.getKey().length + record.getValue().length;
+					record = recordIterator.next();
+				}
+			}
+		}
+		return bytes;
+	}
+}
@@ -0,0 +1,153 @@
+package org.bimserver.benchmarks;
+
+/******************************************************************************
+ * Copyright (C) 2009-2019  BIMserver.org
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see {@literal<http://www.gnu.org/licenses/>}.
+ *****************************************************************************/
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.TimeUnit;
+
+import org.bimserver.BimServer;
+import org.bimserver.BimServerConfig;
+import org.bimserver.database.DatabaseSession;
+import org.bimserver.database.OperationType;
+import org.bimserver.emf.PackageMetaData;
+import org.bimserver.interfaces.objects.SProject;
+import org.bimserver.models.log.AccessMethod;
+import org.bimserver.plugins.services.BimServerClientInterface;
+import org.bimserver.shared.LocalDevelopmentResourceFetcher;
+import org.bimserver.shared.UsernamePasswordAuthenticationInfo;
+import org.bimserver.shared.interfaces.LowLevelInterface;
+import org.bimserver.utils.PathUtils;
+import org.bimserver.webservices.ServiceMap;
+import org.bimserver.webservices.authorization.SystemAuthorization;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Starts a BIMserver (without web server and plugins) in a temporary home directory and checks in a generated IFC2x3 model.
+ *
+ * The model has one storey containing nrWalls walls, every wall has an owner history, and every 10 walls share a property set with
+ * 5 properties, so there are references in both directions and lists of references.
+ */
+public class SyntheticDataset implements AutoCloseable {
+	private static final Logger LOGGER = LoggerFactory.getLogger(SyntheticDataset.class);
+	private static final String SCHEMA = "ifc2x3tc1";
+	private final Path home;
+	private final BimServer bimServer;
+	private final long poid;
+	private final long roid;
+	private final int nrObjects;
+
+	public SyntheticDataset(int nrWalls) throws Exception {
+		home = Files.createTempDirectory("bimserver-benchmark");
+
+		BimServerConfig config = new BimServerConfig();
+		config.setHomeDir(home);
+		config.setStartEmbeddedWebServer(false);
+		config.setResourceFetcher(new LocalDevelopmentResourceFetcher(Paths.get("../")));
+		config.setClassPath(System.getProperty("java.class.path"));
+		config.setStartCommandLine(false);
+
+		bimServer = new BimServer(config);
+		bimServer.start();
+
+		ServiceMap serviceMap = bimServer.getServiceFactory().get(new SystemAuthorization(1, TimeUnit.HOURS), AccessMethod.INTERNAL);
+		serviceMap.getAdminInterface().setup("http://localhost", "Benchmark", "Benchmark server", "noicon", "Administrator", "admin@bimserver.org", "admin");
+
+		try (BimServerClientInterface client = bimServer.getBimServerClientFactory().create(new UsernamePasswordAuthenticationInfo("admin@bimserver.org", "admin"))) {
+			SProject project = client.getServiceInterface().addProject("benchmark", SCHEMA);
+			poid = project.getOid();
+
+			LowLevelInterface lowLevelInterface = client.getLowLevelInterface();
+			long tid = lowLevelInterface.startTransaction(poid);
+			int objects = 0;
+
+			long ownerHistory = lowLevelInterface.createObject(tid, "IfcOwnerHistory", false);
+			long storey = lowLevelInterface.createObject(tid, "IfcBuildingStorey", true);
+			lowLevelInterface.setStringAttribute(tid, storey, "Name", "Level 1");
+			long containment = lowLevelInterface.createObject(tid, "IfcRelContainedInSpatialStructure", true);
+			lowLevelInterface.setReference(tid, containment, "RelatingStructure", storey);
+			objects += 3;
+
+			long propertyRelation = -1;
+			for (int i = 0; i < nrWalls; i++) {
+				if (i % 10 == 0) {
+					long propertySet = lowLevelInterface.createObject(tid, "IfcPropertySet", true);
+					lowLevelInterface.setStringAttribute(tid, propertySet, "Name", "Pset_WallCommon");
+					for (int j = 0; j < 5; j++) {
+						long property = lowLevelInterface.createObject(tid, "IfcPropertySingleValue", false);
+						lowLevelInterface.setStringAttribute(tid, property, "Name", "Property " + j);
+						lowLevelInterface.setStringAttribute(tid, property, "Description", "Generated property " + j + " of set " + i / 10);
+						lowLevelInterface.addReference(tid, propertySet, "HasProperties", property);
+					}
+					propertyRelation = lowLevelInterface.createObject(tid, "IfcRelDefinesByProperties", true);
+					lowLevelInterface.setReference(tid, propertyRelation, "RelatingPropertyDefinition", propertySet);
+					objects += 7;
+				}
+				long wall = lowLevelInterface.createObject(tid, "IfcWall", true);
+				lowLevelInterface.setStringAttribute(tid, wall, "Name", "Basic Wall:Interior - 138mm Partition:" + i);
+				lowLevelInterface.setStringAttribute(tid, wall, "Description", "Generated wall " + i);
+				lowLevelInterface.setStringAttribute(tid, wall, "ObjectType", "Basic Wall:Interior - 138mm Partition");
+				lowLevelInterface.setStringAttribute(tid, wall, "Tag", "" + (100000 + i));
+				lowLevelInterface.setReference(tid, wall, "OwnerHistory", ownerHistory);
+				lowLevelInterface.addReference(tid, containment, "RelatedElements", wall);
+				lowLevelInterface.addReference(tid, propertyRelation, "RelatedObjects", wall);
+				objects++;
+			}
+			roid = lowLevelInterface.commitTransaction(tid, "Synthetic dataset", false);
+			nrObjects = objects;
+		}
+		LOGGER.info("Generated synthetic dataset with " + nrObjects + " objects in " + home);
+	}
+
+	public BimServer getBimServer() {
+		return bimServer;
+	}
+
+	public long getPoid() {
+		return poid;
+	}
+
+	public long getRoid() {
+		return roid;
+	}
+
+	public int getNrObjects() {
+		return nrObjects;
+	}
+
+	public PackageMetaData getPackageMetaData() {
+		return bimServer.getMetaDataManager().getPackageMetaData(SCHEMA);
+	}
+
+	public DatabaseSession createSession() {
+		return bimServer.getDatabase().createSession(OperationType.READ_ONLY);
+	}
+
+	@Override
+	public void close() {
+		bimServer.stop();
+		try {
+			PathUtils.removeDirectoryWithContent(home);
+		} catch (IOException e) {
+			LOGGER.error("", e);
+		}
+	}
+}
@@ -0,0 +1,219 @@
+package org.bimserver.benchmarks;
+
+/******************************************************************************
+ * Copyright (C) 2009-2019  BIMserver.org
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see {@literal<http://www.gnu.org/licenses/>}.
+ *****************************************************************************/
+
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import org.bimserver.BimserverDatabaseException;
+import org.bimserver.emf.PackageMetaData;
+import org.bimserver.emf.Schema;
+import org.bimserver.models.geometry.GeometryPackage;
+import org.bimserver.models.ifc2x3tc1.Ifc2x3tc1Package;
+import org.bimserver.shared.HashMapVirtualObject;
+import org.bimserver.shared.QueryContext;
+import org.eclipse.emf.ecore.EClass;
+import org.eclipse.emf.ecore.EStructuralFeature;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Per-object cost of building (deserializing), reading (serializing) and writing (storing) HashMapVirtualObjects. Run with -prof gc to
+ * also get the allocation rate.
+ * 
+ * The *Map benchmarks do the same on MapVirtualObject, which stores its values like HashMapVirtualObject did before it was array
+ * backed, so both implementations are compared in one run. Writing is only measured for the current implementation.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class VirtualObjectBenchmark {
+	private QueryContext queryContext;
+	private InMemoryDatabaseInterface databaseInterface;
+	private Ifc2x3tc1Package ifc;
+	private long ownerHistoryOid;
+	private long placementOid;
+	private long representationOid;
+	private long[] relationOids;
+	private HashMapVirtualObject wall;
+	private HashMapVirtualObject geometryInfo;
+	private MapVirtualObject mapWall;
+	private MapVirtualObject mapGeometryInfo;
+
+	@Setup
+	public void setup() throws Exception {
+		Path tempDir = Files.createTempDirectory("benchmark");
+		ifc = Ifc2x3tc1Package.eINSTANCE;
+		PackageMetaData packageMetaData = new PackageMetaData(ifc, Schema.IFC2X3TC1, tempDir);
+		databaseInterface = new InMemoryDatabaseInterface();
+		queryContext = new QueryContext(databaseInterface, packageMetaData, 1, 1, 1, 1, 0);
+		ownerHistoryOid = databaseInterface.newOid(ifc.getIfcOwnerHistory());
+		placementOid = databaseInterface.newOid(ifc.getIfcLocalPlacement());
+		representationOid = databaseInterface.newOid(ifc.getIfcProductDefinitionShape());
+		relationOids = new long[8];
+		for (int i = 0; i < relationOids.length; i++) {
+			relationOids[i] = databaseInterface.newOid(ifc.getIfcRelDefinesByProperties());
+		}
+		wall = createWall();
+		geometryInfo = createGeometryInfo();
+		mapWall = createMapWall();
+		mapGeometryInfo = createMapGeometryInfo();
+	}
+
+	private HashMapVirtualObject createWall() throws BimserverDatabaseException {
+		HashMapVirtualObject object = new HashMapVirtualObject(queryContext, ifc.getIfcWall());
+		object.setAttribute(ifc.getIfcRoot_GlobalId(), "2O2Fr$t4X7Zf8NOew3FLOH");
+		object.setAttribute(ifc.getIfcRoot_Name(), "Basic Wall:Interior - 138mm Partition");
+		object.setAttribute(ifc.getIfcObject_ObjectType(), "Basic Wall:Interior - 138mm Partition");
+		object.setAttribute(ifc.getIfcElement_Tag(), "128453");
+		object.setReference(ifc.getIfcRoot_OwnerHistory(), ownerHistoryOid);
+		object.setReference(ifc.getIfcProduct_ObjectPlacement(), placementOid);
+		object.setReference(ifc.getIfcProduct_Representation(), representationOid);
+		for (long relationOid : relationOids) {
+			object.addReference(ifc.getIfcObject_IsDefinedBy(), ifc.getIfcRelDefinesByProperties(), relationOid);
+		}
+		return object;
+	}
+
+	private HashMapVirtualObject createGeometryInfo() {
+		GeometryPackage geometry = GeometryPackage.eINSTANCE;
+		HashMapVirtualObject object = new HashMapVirtualObject(queryContext, geometry.getGeometryInfo());
+		object.setAttribute(geometry.getGeometryInfo_PrimitiveCount(), 1280);
+		object.setAttribute(geometry.getGeometryInfo_StartVertex(), 0);
+		object.setAttribute(geometry.getGeometryInfo_StartIndex(), 0);
+		object.setAttribute(geometry.getGeometryInfo_Area(), 12.5);
+		object.setAttribute(geometry.getGeometryInfo_Volume(), 1.725);
+		object.setAttribute(geometry.getGeometryInfo_HasTransparency(), false);
+		object.setAttribute(geometry.getGeometryInfo_IfcProductOid(), 1234567L);
+		object.setAttribute(geometry.getGeometryInfo_IfcProductRid(), 1);
+		object.setAttribute(geometry.getGeometryInfo_Density(), 0.5f);
+		object.setAttribute(geometry.getGeometryInfo_NrColors(), 0);
+		object.setAttribute(geometry.getGeometryInfo_NrVertices(), 3840);
+		return object;
+	}
+
+	private MapVirtualObject createMapWall() throws BimserverDatabaseException {
+		MapVirtualObject object = new MapVirtualObject(databaseInterface, ifc.getIfcWall());
+		object.setAttribute(ifc.getIfcRoot_GlobalId(), "2O2Fr$t4X7Zf8NOew3FLOH");
+		object.setAttribute(ifc.getIfcRoot_Name(), "Basic Wall:Interior - 138mm Partition");
+		object.setAttribute(ifc.getIfcObject_ObjectType(), "Basic Wall:Interior - 138mm Partition");
+		object.setAttribute(ifc.getIfcElement_Tag(), "128453");
+		object.setReference(ifc.getIfcRoot_OwnerHistory(), ownerHistoryOid);
+		object.setReference(ifc.getIfcProduct_ObjectPlacement(), placementOid);
+		object.setReference(ifc.getIfcProduct_Representation(), representationOid);
+		for (long relationOid : relationOids) {
+			object.addReference(ifc.getIfcObject_IsDefinedBy(), ifc.getIfcRelDefinesByProperties(), relationOid);
+		}
+		return object;
+	}
+
+	private MapVirtualObject createMapGeometryInfo() {
+		GeometryPackage geometry = GeometryPackage.eINSTANCE;
+		MapVirtualObject object = new MapVirtualObject(databaseInterface, geometry.getGeometryInfo());
+		object.setAttribute(geometry.getGeometryInfo_PrimitiveCount(), 1280);
+		object.setAttribute(geometry.getGeometryInfo_StartVertex(), 0);
+		object.setAttribute(geometry.getGeometryInfo_StartIndex(), 0);
+		object.setAttribute(geometry.getGeometryInfo_Area(), 12.5);
+		object.setAttribute(geometry.getGeometryInfo_Volume(), 1.725);
+		object.setAttribute(geometry.getGeometryInfo_HasTransparency(), false);
+		object.setAttribute(geometry.getGeometryInfo_IfcProductOid(), 1234567L);
+		object.setAttribute(geometry.getGeometryInfo_IfcProductRid(), 1);
+		object.setAttribute(geometry.getGeometryInfo_Density(), 0.5f);
+		object.setAttribute(geometry.getGeometryInfo_NrColors(), 0);
+		object.setAttribute(geometry.getGeometryInfo_NrVertices(), 3840);
+		return object;
+	}
+
+	private void readAll(MapVirtualObject object, Blackhole blackhole) {
+		EClass eClass = object.eClass();
+		for (EStructuralFeature eStructuralFeature : eClass.getEAllStructuralFeatures()) {
+			blackhole.consume(object.eGet(eStructuralFeature));
+		}
+	}
+
+	private void readAll(HashMapVirtualObject object, Blackhole blackhole) {
+		EClass eClass = object.eClass();
+		for (EStructuralFeature eStructuralFeature : eClass.getEAllStructuralFeatures()) {
+			blackhole.consume(object.eGet(eStructuralFeature));
+		}
+	}
+
+	@Benchmark
+	public HashMapVirtualObject buildWall() throws BimserverDatabaseException {
+		return createWall();
+	}
+
+	@Benchmark
+	public void readWall(Blackhole blackhole) {
+		readAll(wall, blackhole);
+	}
+
+	@Benchmark
+	public ByteBuffer writeWall() throws BimserverDatabaseException {
+		return wall.write();
+	}
+
+	@Benchmark
+	public HashMapVirtualObject buildGeometryInfo() {
+		return createGeometryInfo();
+	}
+
+	@Benchmark
+	public void readGeometryInfo(Blackhole blackhole) {
+		readAll(geometryInfo, blackhole);
+	}
+
+	@Benchmark
+	public ByteBuffer writeGeometryInfo() throws BimserverDatabaseException {
+		return geometryInfo.write();
+	}
+
+	@Benchmark
+	public MapVirtualObject buildWallMap() throws BimserverDatabaseException {
+		return createMapWall();
+	}
+
+	@Benchmark
+	public void readWallMap(Blackhole blackhole) {
+		readAll(mapWall, blackhole);
+	}
+
+	@Benchmark
+	public MapVirtualObject buildGeometryInfoMap() {
+		return createMapGeometryInfo();
+	}
+
+	@Benchmark
+	public void readGeometryInfoMap(Blackhole blackhole) {
+		readAll(mapGeometryInfo, blackhole);
+	}
+}
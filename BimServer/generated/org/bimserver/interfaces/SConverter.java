@@ -6778,6 +6778,7 @@ public class SConverter {
 		result.setErrorMessage(input.getErrorMessage());
 		Version versionVal = input.getVersion();
 		result.setVersion(convertToSObject(versionVal));
+		result.setStartupTimings(input.getStartupTimings());
 		return result;
 	}
 
@@ -6803,6 +6804,7 @@ public class SConverter {
 		result.setServerState(ServerState.values()[input.getServerState().ordinal()]);
 		result.setErrorMessage(input.getErrorMessage());
 		result.setVersion(convertFromSObject(input.getVersion(), session));
+		result.setStartupTimings(input.getStartupTimings());
 		return result;
 	}
 
@@ -6933,6 +6935,7 @@ public class SConverter {
 		result.setFilename(input.getFilename());
 		result.setMime(input.getMime());
 		result.setSize(input.getSize());
+		result.setDigest(input.getDigest());
 		return result;
 	}
 
@@ -6959,6 +6962,7 @@ public class SConverter {
 		result.setFilename(input.getFilename());
 		result.setMime(input.getMime());
 		result.setSize(input.getSize());
+		result.setDigest(input.getDigest());
 		return result;
 	}
 
@@ -34,6 +34,7 @@ import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
@@ -41,6 +42,8 @@ import java.util.concurrent.TimeUnit;
 import javax.crypto.spec.SecretKeySpec;
 
 import org.apache.commons.io.FileUtils;
+import org.bimserver.bimbots.BimBotsConcurrencyLimiter;
+import org.bimserver.blobs.BlobStore;
 import org.bimserver.cache.CompareCache;
 import org.bimserver.cache.DiskCacheManager;
 import org.bimserver.cache.NewDiskCacheManager;
@@ -58,6 +61,8 @@ import org.bimserver.database.OperationType;
 import org.bimserver.database.Record;
 import org.bimserver.database.RecordIterator;
 import org.bimserver.database.berkeley.BerkeleyKeyValueStore;
+import org.bimserver.database.berkeley.CommitLog;
+import org.bimserver.database.berkeley.CommitLogReplicator;
 import org.bimserver.database.berkeley.DatabaseInitException;
 import org.bimserver.database.migrations.InconsistentModelsException;
 import org.bimserver.database.queries.om.Include;
@@ -69,6 +74,7 @@ import org.bimserver.database.query.literals.StringLiteral;
 import org.bimserver.emf.IfcModelInterface;
 import org.bimserver.emf.MetaDataManager;
 import org.bimserver.emf.PackageMetaData;
+import org.bimserver.emf.Schema;
 import org.bimserver.endpoints.EndPointManager;
 import org.bimserver.geometry.accellerator.GeometryAccellerator;
 import org.bimserver.interfaces.SConverter;
@@ -78,6 +84,7 @@ import org.bimserver.interfaces.objects.SPluginInformation;
 import org.bimserver.interfaces.objects.SVersion;
 import org.bimserver.longaction.LongActionManager;
 import org.bimserver.mail.MailSystem;
+import org.bimserver.memory.MemoryGovernor;
 import org.bimserver.models.ifc2x3tc1.Ifc2x3tc1Package;
 import org.bimserver.models.ifc4.Ifc4Package;
 import org.bimserver.models.log.AccessMethod;
@@ -99,6 +106,7 @@ import org.bimserver.models.store.PluginBundleVersion;
 import org.bimserver.models.store.PluginConfiguration;
 import org.bimserver.models.store.PluginDescriptor;
 import org.bimserver.models.store.Project;
+import org.bimserver.models.store.RenderEnginePluginConfiguration;
 import org.bimserver.models.store.SerializerPluginConfiguration;
 import org.bimserver.models.store.ServerInfo;
 import org.bimserver.models.store.ServerSettings;
@@ -117,6 +125,7 @@ import org.bimserver.plugins.BasicServerInfoProvider;
 import org.bimserver.plugins.MavenPluginRepository;
 import org.bimserver.plugins.Plugin;
 import org.bimserver.plugins.PluginBundle;
+import org.bimserver.plugins.PluginBundleLoadRequest;
 import org.bimserver.plugins.PluginBundleManager;
 import org.bimserver.plugins.PluginBundleVersionIdentifier;
 import org.bimserver.plugins.PluginChangeListener;
@@ -125,6 +134,7 @@ import org.bimserver.plugins.PluginManager;
 import org.bimserver.plugins.ResourceFetcher;
 import org.bimserver.plugins.modelchecker.ModelCheckerPlugin;
 import org.bimserver.plugins.renderengine.RenderEngineException;
+import org.bimserver.plugins.serializers.ProgressReporter;
 import org.bimserver.plugins.services.ServicePlugin;
 import org.bimserver.plugins.web.WebModulePlugin;
 import org.bimserver.pluginsettings.PluginSettingsCache;
@@ -147,6 +157,7 @@ import org.bimserver.shared.pb.ProtocolBuffersMetaData;
 import org.bimserver.shared.reflector.RealtimeReflectorFactoryBuilder;
 import org.bimserver.shared.reflector.ReflectorFactory;
 import org.bimserver.templating.TemplateEngine;
+import org.bimserver.uploads.UploadSessionManager;
 import org.bimserver.utils.Formatters;
 import org.bimserver.utils.StringUtils;
 import org.bimserver.version.VersionChecker;
@@ -177,6 +188,10 @@ public class BimServer implements BasicServerInfoProvider {
 	private PluginBundleManager pluginBundleManager;
 	private MailSystem mailSystem;
 	private DiskCacheManager diskCacheManager;
+	private BlobStore blobStore;
+	private UploadSessionManager uploadSessionManager;
+	private BimBotsConcurrencyLimiter bimBotsConcurrencyLimiter;
+	private MemoryGovernor memoryGovernor;
 	private NewDiskCacheManager newDiskCacheManager;
 	private ServerInfoManager serverInfoManager;
 	private PublicInterfaceFactory serviceFactory;
@@ -212,6 +227,8 @@ public class BimServer implements BasicServerInfoProvider {
 	private AuthCache authCache;
 	private GeometryAccellerator geometryAccellerator;
 	private PluginSettingsCache pluginSettingsCache;
+	private final StartupProfile startupProfile = new StartupProfile();
+	private final Set<Long> staleDataCleanupPending = ConcurrentHashMap.newKeySet();
 
 	/**
 	 * Create a new BIMserver
@@ -651,9 +668,13 @@ public class BimServer implements BasicServerInfoProvider {
 				LOGGER.error("", e);
 			}
 
+			startupProfile.phaseDone("setup");
+
 			try {
 				metaDataManager.init(true);
+				startupProfile.phaseDone("metaData");
 				pluginManager.initAllLoadedPlugins();
+				startupProfile.phaseDone("initPlugins");
 			} catch (PluginException e) {
 				LOGGER.error("", e);
 			}
@@ -672,7 +693,8 @@ public class BimServer implements BasicServerInfoProvider {
 				LOGGER.info("No email templates found");
 			}
 			Path databaseDir = config.getHomeDir().resolve("database");
-			BerkeleyKeyValueStore keyValueStore = new BerkeleyKeyValueStore(databaseDir, config.getBdbEnvironmentProperties());
+			BerkeleyKeyValueStore keyValueStore = new BerkeleyKeyValueStore(databaseDir, config.getBdbEnvironmentProperties(), config.getBdbCachePolicy(), config.isBdbSelfTuning());
+			initCommitLog(keyValueStore);
 
 			geometryAccellerator = new GeometryAccellerator(this);
 			
@@ -697,7 +719,8 @@ public class BimServer implements BasicServerInfoProvider {
 				bimDatabase.init();
 			} catch (DatabaseRestartRequiredException e) {
 				bimDatabase.close();
-				keyValueStore = new BerkeleyKeyValueStore(databaseDir, config.getBdbEnvironmentProperties());
+				keyValueStore = new BerkeleyKeyValueStore(databaseDir, config.getBdbEnvironmentProperties(), config.getBdbCachePolicy(), config.isBdbSelfTuning());
+				initCommitLog(keyValueStore);
 				bimDatabase = new Database(this, packages, keyValueStore, metaDataManager);
 				try {
 					bimDatabase.init();
@@ -711,6 +734,11 @@ public class BimServer implements BasicServerInfoProvider {
 				serverInfoManager.setServerState(ServerState.FATAL_ERROR);
 				serverInfoManager.setErrorMessage("Inconsistent models");
 			}
+			startupProfile.phaseDone("database");
+
+			// The Berkeley DB cache is part of the heap too, jobs can only use what it leaves. When the cache tuner grows the cache, it takes the memory from this budget
+			memoryGovernor = new MemoryGovernor(config.getMemoryBudgetPercentage() > 0 ? (Runtime.getRuntime().maxMemory() - keyValueStore.getCacheSize()) / 100 * config.getMemoryBudgetPercentage() : -1);
+			keyValueStore.setMemoryGovernor(memoryGovernor);
 
 			try (DatabaseSession encsession = bimDatabase.createSession(OperationType.POSSIBLY_WRITE)) {
 				byte[] encryptionkeyBytes = null;
@@ -724,8 +752,25 @@ public class BimServer implements BasicServerInfoProvider {
 				}
 				encryptionkey = new SecretKeySpec(encryptionkeyBytes, "AES");
 			}
-			
-			cleanupStaleData();
+
+			// Stale records can only exist for projects that still have checkinInProgress set. Those projects are collected before any
+			// request is served and new checkins on them are refused until their cleanup is done (the topic id of a new checkin can equal
+			// the stale flag, topic ids start at 1 again after a restart). Readers never see records with a rid beyond the last revision,
+			// so the cleanup itself can safely run while the server is already serving requests
+			findStaleDataProjects();
+			startupProfile.backgroundTaskStarted("staleDataCleanup", "Checking for stale records");
+			executorService.submit(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						cleanupStaleData();
+					} catch (Throwable e) {
+						LOGGER.error("", e);
+					} finally {
+						startupProfile.backgroundTaskDone("staleDataCleanup");
+					}
+				}
+			});
 
 			serverInfoManager.init(this);
 
@@ -755,6 +800,7 @@ public class BimServer implements BasicServerInfoProvider {
 				}
 			}
 			
+			startupProfile.phaseDone("queryDefines");
 			serverInfoManager.update();
 
 			if (serverInfoManager.getServerState() == ServerState.MIGRATION_REQUIRED) {
@@ -773,11 +819,15 @@ public class BimServer implements BasicServerInfoProvider {
 			} else {
 				initDatabaseDependantItems();
 			}
+			startupProfile.phaseDone("databaseDependantItems");
 
 			mailSystem = new MailSystem(this);
 
 			diskCacheManager = new DiskCacheManager(this, config.getHomeDir().resolve("cache"));
-			newDiskCacheManager = new NewDiskCacheManager(this, config.getHomeDir().resolve("cache"));
+			newDiskCacheManager = new NewDiskCacheManager(this, config.getHomeDir().resolve("querycache"), config.getQueryCacheDiskSize(), config.getQueryCacheMemorySize());
+			blobStore = new BlobStore(config.getHomeDir().resolve("blobs"));
+			uploadSessionManager = new UploadSessionManager(config.getHomeDir().resolve("uploads"));
+			bimBotsConcurrencyLimiter = new BimBotsConcurrencyLimiter(config.getMaxConcurrentBimBotRuns());
 
 			mergerFactory = new MergerFactory(this);
 
@@ -803,23 +853,67 @@ public class BimServer implements BasicServerInfoProvider {
 			if (getServerInfoManager().getServerState() == ServerState.SETUP) {
 				getServerInfoManager().setServerState(ServerState.RUNNING);
 			}
+			startupProfile.phaseDone("services");
+			startupProfile.foregroundDone();
 		} catch (Throwable e) {
 			LOGGER.error("", e);
 			serverInfoManager.setErrorMessage(e.getMessage());
 		}
 	}
 
+	private void initCommitLog(BerkeleyKeyValueStore keyValueStore) throws IOException {
+		if (config.getCommitLogDirectory() == null) {
+			return;
+		}
+		if (config.getReplicaOf() != null) {
+			LOGGER.warn("Replicas do not write a commit log, ignoring commit log directory " + config.getCommitLogDirectory());
+			return;
+		}
+		keyValueStore.setCommitLog(new CommitLog(config.getCommitLogDirectory()));
+	}
+
+	/*
+	 * Called when starting up has been done, the few changes a replica makes while starting up are overwritten by the primary's changes
+	 */
+	private void startReplication() throws BimserverDatabaseException {
+		if (config.getReplicaOf() == null) {
+			return;
+		}
+		Database database = (Database) bimDatabase;
+		try {
+			database.startReplication(new CommitLogReplicator(database, (BerkeleyKeyValueStore) database.getKeyValueStore(), config.getReplicaOf()));
+		} catch (IOException e) {
+			throw new BimserverDatabaseException(e);
+		}
+	}
+
+	private void findStaleDataProjects() throws BimserverDatabaseException {
+		try (DatabaseSession session = bimDatabase.createSession(OperationType.READ_ONLY)) {
+			for (Project project : session.getAll(Project.class)) {
+				if (project.getCheckinInProgress() != 0 && !project.getName().equals("INT-Store")) {
+					staleDataCleanupPending.add(project.getOid());
+				}
+			}
+		}
+	}
+
+	/**
+	 * @return Whether the project had a checkin in progress when the server stopped and its stale records have not been removed yet
+	 */
+	public boolean isStaleDataCleanupPending(long poid) {
+		return staleDataCleanupPending.contains(poid);
+	}
+
 	private void cleanupStaleData() throws BimserverDatabaseException {
 		LOGGER.info("Checking for stale records, this can take some time...");
 		long s = System.nanoTime();
-		try (DatabaseSession session = bimDatabase.createSession(OperationType.POSSIBLY_WRITE)) {
-			for (Project project : session.getAll(Project.class)) {
-				if (project.getCheckinInProgress() == 0) {
-					continue;
-				}
-				if (project.getName().equals("INT-Store")) {
-					continue;
-				}
+		List<Long> poids = new ArrayList<>(staleDataCleanupPending);
+		int done = 0;
+		for (long poid : poids) {
+			// One transaction per project, so projects become available for checkins one by one
+			try (DatabaseSession session = bimDatabase.createSession(OperationType.POSSIBLY_WRITE)) {
+				Project project = session.get(poid, OldQuery.getDefault());
+				startupProfile.backgroundTaskProgress("staleDataCleanup", "Checking for stale records (" + project.getName() + ")", done * 100 / poids.size());
 				int recordsRemoved = 0;
 				if (project.getRevisions().size() == 0) {
 					recordsRemoved += checkPidRid(session, project, project.getId(), 0);
@@ -834,10 +928,13 @@ public class BimServer implements BasicServerInfoProvider {
 				}
 				project.setCheckinInProgress(0);
 				session.store(project);
+				session.commit();
+				staleDataCleanupPending.remove(poid);
+			} catch (ServiceException e1) {
+				// The project stays closed for checkins, the cleanup is tried again on the next start
+				LOGGER.error("", e1);
 			}
-			session.commit();
-		} catch (ServiceException e1) {
-			LOGGER.error("", e1);
+			done++;
 		}
 		long e = System.nanoTime();
 		LOGGER.info("Done checking for stale records (" + ((e - s) / 1000000) + " ms)");
@@ -1047,6 +1144,38 @@ public class BimServer implements BasicServerInfoProvider {
 		session.store(userSettings);
 	}
 
+	/**
+	 * Creates the render engine pools for the default render engines of the active users, the pools start their first engines in the
+	 * background so the first geometry generation does not have to wait for them
+	 */
+	private void startRenderEnginePools() {
+		try (DatabaseSession session = bimDatabase.createSession(OperationType.READ_ONLY)) {
+			Set<Long> started = new HashSet<>();
+			IfcModelInterface allOfType = session.getAllOfType(StorePackage.eINSTANCE.getUser(), OldQuery.getDefault());
+			for (User user : allOfType.getAll(User.class)) {
+				if (user.getState() != ObjectState.ACTIVE || user.getUserSettings() == null) {
+					continue;
+				}
+				RenderEnginePluginConfiguration renderEngine = user.getUserSettings().getDefaultRenderEngine();
+				if (renderEngine != null && started.add(renderEngine.getOid())) {
+					for (Schema schema : Schema.getIfcSchemas()) {
+						renderEnginePools.getRenderEnginePool(schema, renderEngine.getPluginDescriptor().getPluginClassName(), getPluginSettingsCache().getPluginSettings(renderEngine.getOid()));
+					}
+				}
+			}
+		} catch (Exception e) {
+			LOGGER.error("", e);
+		}
+	}
+
+	private void initMemoryEstimator() {
+		try (DatabaseSession session = bimDatabase.createSession(OperationType.READ_ONLY)) {
+			memoryGovernor.getMemoryEstimator().init(session);
+		} catch (Exception e) {
+			LOGGER.error("", e);
+		}
+	}
+
 	public RenderEnginePools getRenderEnginePools() {
 		return renderEnginePools;
 	}
@@ -1187,6 +1316,9 @@ public class BimServer implements BasicServerInfoProvider {
 				session.close();
 			}
 
+			startRenderEnginePools();
+			initMemoryEstimator();
+
 			webModules = new HashMap<String, WebModulePlugin>();
 			List<WebModulePluginConfiguration> webModuleConfigurations = serverSettingsCache.getServerSettings().getWebModules();
 			for (WebModulePluginConfiguration webModulePluginConfiguration : webModuleConfigurations) {
@@ -1220,6 +1352,8 @@ public class BimServer implements BasicServerInfoProvider {
 			} catch (ServiceException e) {
 				LOGGER.error("", e);
 			}
+
+			startReplication();
 			
 			Integer protocolBuffersPort = getServerSettingsCache().getServerSettings().getProtocolBuffersPort();
 			if (protocolBuffersPort >= 1 && protocolBuffersPort <= 65535) {
@@ -1237,6 +1371,7 @@ public class BimServer implements BasicServerInfoProvider {
 			bimServerClientFactory = new DirectBimServerClientFactory<ServiceInterface>(serverSettingsCache.getServerSettings().getSiteAddress(), serviceFactory, servicesMap, pluginManager, metaDataManager);
 			pluginManager.setBimServerClientFactory(bimServerClientFactory);
 			
+			final List<PluginBundleLoadRequest> pluginBundleLoadRequests = new ArrayList<>();
 			try (DatabaseSession session2 = bimDatabase.createSession(OperationType.READ_ONLY)) {
 				IfcModelInterface pluginBundleVersions = session2.getAllOfType(StorePackage.eINSTANCE.getPluginBundleVersion(), OldQuery.getDefault());
 				for (PluginBundleVersion pluginBundleVersion : pluginBundleVersions.getAll(PluginBundleVersion.class)) {
@@ -1263,16 +1398,37 @@ public class BimServer implements BasicServerInfoProvider {
 							}
 						}
 						
-						try {
-							pluginBundleManager.loadFromPluginDir(pluginBundleVersionIdentifier, getSConverter().convertToSObject(pluginBundleVersion), plugins, serverSettingsCache.getServerSettings().isPluginStrictVersionChecking());
-						} catch (Exception e) {
-							LOGGER.error("", e);
-						}
+						pluginBundleLoadRequests.add(new PluginBundleLoadRequest(pluginBundleVersionIdentifier, getSConverter().convertToSObject(pluginBundleVersion), plugins));
 					}
 				}
 			} catch (Exception e) {
 				throw new BimserverDatabaseException(e);
 			}
+
+			// Resolving the dependencies and loading the classes of the plugin bundles can take minutes, the server does not need them to serve requests
+			final boolean strictVersionChecking = serverSettingsCache.getServerSettings().isPluginStrictVersionChecking();
+			startupProfile.backgroundTaskStarted("pluginBundles", "Loading plugin bundles");
+			executorService.submit(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						pluginBundleManager.loadFromPluginDir(pluginBundleLoadRequests, strictVersionChecking, Runtime.getRuntime().availableProcessors(), new ProgressReporter() {
+							@Override
+							public void update(long progress, long max) {
+								startupProfile.backgroundTaskProgress("pluginBundles", "Loading plugin bundles (" + progress + "/" + max + ")", (int) (progress * 100 / max));
+							}
+
+							@Override
+							public void setTitle(String stage) {
+							}
+						});
+					} catch (Throwable e) {
+						LOGGER.error("", e);
+					} finally {
+						startupProfile.backgroundTaskDone("pluginBundles");
+					}
+				}
+			});
 		} catch (BimserverLockConflictException e) {
 			throw new BimserverDatabaseException(e);
 //		} catch (PluginException e) {
@@ -1428,6 +1584,9 @@ public class BimServer implements BasicServerInfoProvider {
 	public void stop() {
 		LOGGER.info("Stopping BIMserver");
 		executorService.shutdown();
+		if (renderEnginePools != null) {
+			renderEnginePools.close();
+		}
 		if (bimDatabase != null) {
 			try {
 				bimDatabase.close();
@@ -1481,6 +1640,22 @@ public class BimServer implements BasicServerInfoProvider {
 		return diskCacheManager;
 	}
 
+	public BlobStore getBlobStore() {
+		return blobStore;
+	}
+
+	public UploadSessionManager getUploadSessionManager() {
+		return uploadSessionManager;
+	}
+
+	public BimBotsConcurrencyLimiter getBimBotsConcurrencyLimiter() {
+		return bimBotsConcurrencyLimiter;
+	}
+
+	public MemoryGovernor getMemoryGovernor() {
+		return memoryGovernor;
+	}
+
 	public String getClassPath() {
 		return config.getClassPath();
 	}
@@ -1489,6 +1664,10 @@ public class BimServer implements BasicServerInfoProvider {
 		return serverInfoManager.getServerInfo();
 	}
 
+	public StartupProfile getStartupProfile() {
+		return startupProfile;
+	}
+
 	public BimServerClientFactory getBimServerClientFactory() {
 		return bimServerClientFactory;
 	}
@@ -20,7 +20,9 @@ package org.bimserver;
 import java.nio.file.Path;
 import java.util.Properties;
 
+import org.bimserver.database.berkeley.BerkeleyCachePolicy;
 import org.bimserver.plugins.ResourceFetcher;
+import org.bimserver.uploads.DuplicateCheckinPolicy;
 
 public class BimServerConfig {
 	private boolean startEmbeddedWebServer;
@@ -34,6 +36,15 @@ public class BimServerConfig {
 	private Environment environment;
 	private String resourceBase;
 	private Properties bdbEnvironmentProperties = null;
+	private Path commitLogDirectory;
+	private Path replicaOf;
+	private DuplicateCheckinPolicy duplicateCheckinPolicy = DuplicateCheckinPolicy.OFF;
+	private int maxConcurrentBimBotRuns = 2;
+	private int memoryBudgetPercentage = 70;
+	private long queryCacheMemorySize = 256L * 1024 * 1024;
+	private long queryCacheDiskSize = 20L * 1024 * 1024 * 1024;
+	private BerkeleyCachePolicy bdbCachePolicy = BerkeleyCachePolicy.EVICT_BULK_RECORDS;
+	private boolean bdbSelfTuning = false;
 	
 	public boolean isStartEmbeddedWebServer() {
 		return startEmbeddedWebServer;
@@ -139,6 +150,105 @@ public class BimServerConfig {
 		this.autoMigrate = autoMigrate;
 	}
 
+	public Path getCommitLogDirectory() {
+		return commitLogDirectory;
+	}
+
+	/**
+	 * @param commitLogDirectory When set, all database changes are written to a commit log in this directory, so other servers can run as a read replica of this server (see setReplicaOf)
+	 */
+	public void setCommitLogDirectory(Path commitLogDirectory) {
+		this.commitLogDirectory = commitLogDirectory;
+	}
+
+	public Path getReplicaOf() {
+		return replicaOf;
+	}
+
+	/**
+	 * @param replicaOf The commit log directory of the primary server, when set this server runs as a read replica of that server. The database directory has to start out as a copy of the database directory of the (stopped) primary
+	 */
+	public void setReplicaOf(Path replicaOf) {
+		this.replicaOf = replicaOf;
+	}
+
+	public DuplicateCheckinPolicy getDuplicateCheckinPolicy() {
+		return duplicateCheckinPolicy;
+	}
+
+	/**
+	 * @param duplicateCheckinPolicy What to do with chunked uploads that are checked in and are identical to the file of the last revision of the project, default is OFF
+	 */
+	public void setDuplicateCheckinPolicy(DuplicateCheckinPolicy duplicateCheckinPolicy) {
+		this.duplicateCheckinPolicy = duplicateCheckinPolicy;
+	}
+
+	public int getMaxConcurrentBimBotRuns() {
+		return maxConcurrentBimBotRuns;
+	}
+
+	/**
+	 * @param maxConcurrentBimBotRuns The maximum number of runs of one BIMbot service that are executed at the same time, other runs of that service wait, 0 for no limit, default is 2
+	 */
+	public void setMaxConcurrentBimBotRuns(int maxConcurrentBimBotRuns) {
+		this.maxConcurrentBimBotRuns = maxConcurrentBimBotRuns;
+	}
+
+	public int getMemoryBudgetPercentage() {
+		return memoryBudgetPercentage;
+	}
+
+	/**
+	 * @param memoryBudgetPercentage The percentage of the max heap size, minus the Berkeley DB cache, that can be reserved by memory intensive jobs (checkins, downloads) running at the same time, 0 for no limit, default is 70. When the Berkeley DB cache grows with self tuning, the budget shrinks accordingly
+	 */
+	public void setMemoryBudgetPercentage(int memoryBudgetPercentage) {
+		this.memoryBudgetPercentage = memoryBudgetPercentage;
+	}
+
+	public long getQueryCacheMemorySize() {
+		return queryCacheMemorySize;
+	}
+
+	/**
+	 * @param queryCacheMemorySize The maximum number of bytes of cached query results kept in memory, default is 256MB
+	 */
+	public void setQueryCacheMemorySize(long queryCacheMemorySize) {
+		this.queryCacheMemorySize = queryCacheMemorySize;
+	}
+
+	public long getQueryCacheDiskSize() {
+		return queryCacheDiskSize;
+	}
+
+	/**
+	 * @param queryCacheDiskSize The maximum number of bytes of cached query results stored in the "querycache" folder, default is 20GB
+	 */
+	public void setQueryCacheDiskSize(long queryCacheDiskSize) {
+		this.queryCacheDiskSize = queryCacheDiskSize;
+	}
+
+	public BerkeleyCachePolicy getBdbCachePolicy() {
+		return bdbCachePolicy;
+	}
+
+	/**
+	 * @param bdbCachePolicy Which tables keep their records in the Berkeley DB cache, default is EVICT_BULK_RECORDS (only the project, revision, user etc. tables)
+	 */
+	public void setBdbCachePolicy(BerkeleyCachePolicy bdbCachePolicy) {
+		this.bdbCachePolicy = bdbCachePolicy;
+	}
+
+	public boolean isBdbSelfTuning() {
+		return bdbSelfTuning;
+	}
+
+	/**
+	 * @param bdbSelfTuning Whether to adjust the Berkeley DB cache size and number of cleaner threads at runtime, based on the cache and cleaner statistics, default is false
+	 */
+	public void setBdbSelfTuning(boolean bdbSelfTuning) {
+		this.bdbSelfTuning = bdbSelfTuning;
+	}
+
 	public void setResourceBase(String resourceBase) {
 		this.resourceBase = resourceBase;
 	}
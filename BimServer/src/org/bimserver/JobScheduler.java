@@ -21,8 +21,16 @@ import static org.quartz.JobBuilder.newJob;
 import static org.quartz.SimpleScheduleBuilder.simpleSchedule;
 import static org.quartz.TriggerBuilder.newTrigger;
 
+import java.util.HashSet;
 import java.util.Properties;
+import java.util.Set;
 
+import org.bimserver.database.DatabaseSession;
+import org.bimserver.database.OperationType;
+import org.bimserver.database.OldQuery;
+import org.bimserver.models.store.File;
+import org.bimserver.models.store.ServerState;
+import org.bimserver.models.store.StorePackage;
 import org.quartz.Job;
 import org.quartz.JobDetail;
 import org.quartz.JobExecutionContext;
@@ -39,6 +47,9 @@ public class JobScheduler {
 	private static final Logger LOGGER = LoggerFactory.getLogger(JobScheduler.class);
 	private static final int COMPARE_RESULT_CLEAN_INTERVAL_MILLIS = 30 * 60 * 1000; // 30 minutes
 	private static final int LONG_ACTION_MANAGER_CLEANUP_INTERVAL_MILLIS = 1 * 60 * 1000; // 1 minute
+	private static final int UPLOAD_SESSION_CLEANUP_INTERVAL_MILLIS = 30 * 60 * 1000; // 30 minutes
+	private static final int BLOB_GARBAGE_COLLECTION_INTERVAL_MILLIS = 6 * 60 * 60 * 1000; // 6 hours
+	private static final long BLOB_MIN_AGE_MILLIS = 24 * 60 * 60 * 1000L; // 1 day, uploaded blobs of which the File has not been stored yet are kept
 	private SchedulerFactory sf;
 	private Scheduler sched;
 
@@ -66,6 +77,46 @@ public class JobScheduler {
 		}
 	}
 	
+	public static class UploadSessionCleaner implements Job {
+		@Override
+		public void execute(JobExecutionContext jobExecutionContext) throws JobExecutionException {
+			try {
+				BimServer bimServer = (BimServer) (jobExecutionContext.getScheduler().getContext().get("bimserver"));
+				if (bimServer.getUploadSessionManager() != null) {
+					bimServer.getUploadSessionManager().cleanup();
+				}
+			} catch (SchedulerException e) {
+				LOGGER.error("", e);
+			}
+		}
+	}
+	
+	public static class BlobGarbageCollector implements Job {
+		@Override
+		public void execute(JobExecutionContext jobExecutionContext) throws JobExecutionException {
+			try {
+				BimServer bimServer = (BimServer) (jobExecutionContext.getScheduler().getContext().get("bimserver"));
+				if (bimServer.getBlobStore() == null || bimServer.getServerInfo().getServerState() != ServerState.RUNNING) {
+					return;
+				}
+				Set<String> referencedDigests = new HashSet<>();
+				try (DatabaseSession session = bimServer.getDatabase().createSession(OperationType.READ_ONLY)) {
+					for (File file : session.getAllOfType(StorePackage.eINSTANCE.getFile(), File.class, OldQuery.getDefault())) {
+						if (file.getDigest() != null) {
+							referencedDigests.add(file.getDigest());
+						}
+					}
+				}
+				int removed = bimServer.getBlobStore().collectGarbage(referencedDigests, BLOB_MIN_AGE_MILLIS);
+				if (removed > 0) {
+					LOGGER.info("Removed " + removed + " unreferenced blobs");
+				}
+			} catch (Exception e) {
+				LOGGER.error("", e);
+			}
+		}
+	}
+	
 	public JobScheduler(BimServer bimServer) {
 		try {
 			Properties properties = new Properties();
@@ -85,6 +136,8 @@ public class JobScheduler {
 		try {
 			addRecurringJob(CompareResultCacheCleaner.class, COMPARE_RESULT_CLEAN_INTERVAL_MILLIS);
 			addRecurringJob(LongActionManagerCleaner.class, LONG_ACTION_MANAGER_CLEANUP_INTERVAL_MILLIS);
+			addRecurringJob(UploadSessionCleaner.class, UPLOAD_SESSION_CLEANUP_INTERVAL_MILLIS);
+			addRecurringJob(BlobGarbageCollector.class, BLOB_GARBAGE_COLLECTION_INTERVAL_MILLIS);
 			sched.start();
 		} catch (SchedulerException e) {
 			LOGGER.error("", e);
@@ -126,6 +126,9 @@ public class ServerInfoManager {
 	}
 
 	public ServerInfo getServerInfo() {
+		if (bimServer != null) {
+			serverInfo.setStartupTimings(bimServer.getStartupProfile().toJson());
+		}
 		return serverInfo;
 	}
 
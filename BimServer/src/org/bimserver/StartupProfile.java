@@ -0,0 +1,116 @@
+package org.bimserver;
+
+/******************************************************************************
+ * Copyright (C) 2009-2019  BIMserver.org
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see {@literal<http://www.gnu.org/licenses/>}.
+ *****************************************************************************/
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+/*
+ * Keeps track of the time spent in the different phases of starting a BIMserver. Phases that run in the foreground are recorded
+ * sequentially, tasks that have been deferred to the background (stale record cleanup, plugin bundle loading) report their
+ * progress here so it can be shown in ServerInfo while the server is already serving requests.
+ */
+public class StartupProfile {
+	private static final Logger LOGGER = LoggerFactory.getLogger(StartupProfile.class);
+	private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+	private final Map<String, Long> phases = new LinkedHashMap<>();
+	private final Map<String, BackgroundTask> backgroundTasks = new LinkedHashMap<>();
+	private final long start = System.nanoTime();
+	private long phaseStart = start;
+	private long totalMs = -1;
+
+	private static class BackgroundTask {
+		private final long start = System.nanoTime();
+		private long durationMs = -1;
+		private int progress;
+		private String title;
+	}
+
+	/**
+	 * Marks the end of a foreground phase, the duration is counted from the end of the previous phase
+	 */
+	public synchronized void phaseDone(String name) {
+		long now = System.nanoTime();
+		long ms = (now - phaseStart) / 1000000;
+		phases.put(name, ms);
+		phaseStart = now;
+		LOGGER.debug("Startup phase " + name + " done (" + ms + " ms)");
+	}
+
+	/**
+	 * Marks the end of the foreground startup, from here on the server accepts requests
+	 */
+	public synchronized void foregroundDone() {
+		totalMs = (System.nanoTime() - start) / 1000000;
+		LOGGER.info("Server ready to accept requests after " + totalMs + " ms");
+	}
+
+	public synchronized void backgroundTaskStarted(String name, String title) {
+		BackgroundTask backgroundTask = new BackgroundTask();
+		backgroundTask.title = title;
+		backgroundTasks.put(name, backgroundTask);
+	}
+
+	public synchronized void backgroundTaskProgress(String name, String title, int progress) {
+		BackgroundTask backgroundTask = backgroundTasks.get(name);
+		if (backgroundTask != null) {
+			backgroundTask.title = title;
+			backgroundTask.progress = progress;
+		}
+	}
+
+	public synchronized void backgroundTaskDone(String name) {
+		BackgroundTask backgroundTask = backgroundTasks.get(name);
+		if (backgroundTask != null) {
+			backgroundTask.progress = 100;
+			backgroundTask.durationMs = (System.nanoTime() - backgroundTask.start) / 1000000;
+			LOGGER.info("Background startup task " + name + " done (" + backgroundTask.durationMs + " ms)");
+		}
+	}
+
+	public synchronized String toJson() {
+		ObjectNode result = OBJECT_MAPPER.createObjectNode();
+		result.put("totalMs", totalMs);
+		ObjectNode phasesNode = OBJECT_MAPPER.createObjectNode();
+		for (Entry<String, Long> entry : phases.entrySet()) {
+			phasesNode.put(entry.getKey(), entry.getValue());
+		}
+		result.set("phases", phasesNode);
+		ObjectNode backgroundNode = OBJECT_MAPPER.createObjectNode();
+		for (Entry<String, BackgroundTask> entry : backgroundTasks.entrySet()) {
+			BackgroundTask backgroundTask = entry.getValue();
+			ObjectNode taskNode = OBJECT_MAPPER.createObjectNode();
+			taskNode.put("title", backgroundTask.title);
+			taskNode.put("progress", backgroundTask.progress);
+			taskNode.put("done", backgroundTask.durationMs != -1);
+			if (backgroundTask.durationMs != -1) {
+				taskNode.put("durationMs", backgroundTask.durationMs);
+			}
+			backgroundNode.set(entry.getKey(), taskNode);
+		}
+		result.set("background", backgroundNode);
+		return result.toString();
+	}
+}
@@ -0,0 +1,72 @@
+package org.bimserver.bimbots;
+
+/******************************************************************************
+ * Copyright (C) 2009-2019  BIMserver.org
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see {@literal<http://www.gnu.org/licenses/>}.
+ *****************************************************************************/
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Limits the number of BIMbot runs that can be executed at the same time per service, calls for a service that already has the maximum
+ * number of runs wait until one of them is done.
+ *
+ * Callers acquire a Permit before they open a DatabaseSession for the run, so waiting runs do not hold sessions.
+ */
+public class BimBotsConcurrencyLimiter {
+	private final Map<Long, Semaphore> semaphores = new ConcurrentHashMap<>();
+	private final int maxConcurrentRuns;
+
+	public BimBotsConcurrencyLimiter(int maxConcurrentRuns) {
+		this.maxConcurrentRuns = maxConcurrentRuns;
+	}
+
+	/**
+	 * Waits until the service can start another run
+	 * 
+	 * @return A Permit that has to be closed when the run is done
+	 */
+	public Permit acquire(long soid) throws InterruptedException {
+		if (maxConcurrentRuns > 0) {
+			semaphores.computeIfAbsent(soid, k -> new Semaphore(maxConcurrentRuns, true)).acquire();
+		}
+		return new Permit(soid);
+	}
+
+	private void release(long soid) {
+		if (maxConcurrentRuns > 0) {
+			semaphores.get(soid).release();
+		}
+	}
+
+	public class Permit implements AutoCloseable {
+		private final long soid;
+		private boolean closed;
+
+		private Permit(long soid) {
+			this.soid = soid;
+		}
+
+		@Override
+		public void close() {
+			if (!closed) {
+				closed = true;
+				release(soid);
+			}
+		}
+	}
+}
@@ -49,7 +49,7 @@ public class BimServerBimBotsInput extends BimBotsInput {
 				throw new BimBotsException("No default render engine has been selected for this user", BimBotDefaultErrorCode.NO_RENDER_ENGINE);
 			}
 
-			if (generateGeometry) {
+			if (generateGeometry && model != null) {
 				GeometryGenerator generator = new GeometryGenerator(bimServer);
 				RenderEnginePool pool = bimServer.getRenderEnginePools().getRenderEnginePool(model.getPackageMetaData().getSchema(), defaultRenderEngine.getPluginDescriptor().getPluginClassName(), bimServer.getPluginSettingsCache().getPluginSettings(defaultRenderEngine.getOid()));
 				generator.generateGeometry(pool, bimServer.getPluginManager(), null, model, -1, -1, false, null);
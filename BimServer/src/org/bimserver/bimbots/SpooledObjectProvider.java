@@ -0,0 +1,98 @@
+package org.bimserver.bimbots;
+
+/******************************************************************************
+ * Copyright (C) 2009-2019  BIMserver.org
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see {@literal<http://www.gnu.org/licenses/>}.
+ *****************************************************************************/
+
+import java.io.IOException;
+
+import org.bimserver.BimserverDatabaseException;
+import org.bimserver.database.queries.om.QueryException;
+import org.bimserver.plugins.serializers.ObjectProvider;
+import org.bimserver.shared.HashMapVirtualObject;
+import org.eclipse.emf.ecore.EClass;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+/**
+ * Returns all objects that have been written to a SpoolingDatabaseInterface, in the order they were created. Only one object is in
+ * memory at a time, getByOid reads the object from the spool file again.
+ */
+public class SpooledObjectProvider implements ObjectProvider {
+	private static final Logger LOGGER = LoggerFactory.getLogger(SpooledObjectProvider.class);
+	private final SpoolingDatabaseInterface spool;
+	private int index;
+
+	public SpooledObjectProvider(SpoolingDatabaseInterface spool) {
+		this.spool = spool;
+	}
+
+	@Override
+	public HashMapVirtualObject next() throws BimserverDatabaseException {
+		while (index < spool.getNrOids()) {
+			index++;
+			HashMapVirtualObject next = spool.getByIndex(index);
+			if (next != null) {
+				return next;
+			}
+		}
+		return null;
+	}
+
+	@Override
+	public SpooledObjectProvider copy() throws IOException, QueryException {
+		return new SpooledObjectProvider(spool);
+	}
+
+	@Override
+	public HashMapVirtualObject getByOid(long oid) {
+		try {
+			return spool.getByOid(oid);
+		} catch (BimserverDatabaseException e) {
+			LOGGER.error("", e);
+		}
+		return null;
+	}
+
+	@Override
+	public EClass getEClassForOid(long oid) {
+		return getEClassForCid((short) oid);
+	}
+
+	@Override
+	public EClass getEClassForCid(short cid) {
+		try {
+			return spool.getEClassForOid(cid);
+		} catch (BimserverDatabaseException e) {
+			LOGGER.error("", e);
+		}
+		return null;
+	}
+
+	@Override
+	public ObjectNode getQueryNode() {
+		// There is no query, all objects are returned
+		return JsonNodeFactory.instance.objectNode();
+	}
+
+	@Override
+	public void cache(HashMapVirtualObject object) {
+		// Objects are read from the spool file when needed
+	}
+}
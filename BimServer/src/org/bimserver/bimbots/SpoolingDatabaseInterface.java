@@ -0,0 +1,209 @@
+package org.bimserver.bimbots;
+
+/******************************************************************************
+ * Copyright (C) 2009-2019  BIMserver.org
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see {@literal<http://www.gnu.org/licenses/>}.
+ *****************************************************************************/
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+
+import org.bimserver.BimserverDatabaseException;
+import org.bimserver.database.DatabaseSession;
+import org.bimserver.database.queries.RecordDecoder;
+import org.bimserver.emf.PackageMetaData;
+import org.bimserver.plugins.deserializers.DatabaseInterface;
+import org.bimserver.shared.HashMapVirtualObject;
+import org.bimserver.shared.QueryContext;
+import org.bimserver.shared.VirtualObject;
+import org.eclipse.emf.ecore.EClass;
+
+/**
+ * DatabaseInterface for a StreamingDeserializer of which the objects should not end up in the database, used for BIMbot calls when
+ * service runs are not stored. The records are appended to a temporary file in the same format as they would be stored in the database,
+ * only the file position of every object is kept in memory. Every record is preceded by the cid and the length of the record. The objects can be read back with a SpooledObjectProvider.
+ *
+ * Oids are handed out in order, the cid is in the lowest 16 bits like it is for oids of the database, so the cids of the database are
+ * used. Only the cid to EClass mapping of the (read only) DatabaseSession is used.
+ */
+public class SpoolingDatabaseInterface implements DatabaseInterface, Closeable {
+	private static final int HEADER_SIZE = 6;
+	private final DatabaseSession databaseSession;
+	private final Path path;
+	private final FileChannel channel;
+	private final QueryContext queryContext;
+	private final RecordDecoder recordDecoder;
+	private long[] positions = new long[1024];
+	private int nrOids;
+	private long size;
+
+	public SpoolingDatabaseInterface(DatabaseSession databaseSession, PackageMetaData packageMetaData, Path folder) throws IOException {
+		this.databaseSession = databaseSession;
+		Files.createDirectories(folder);
+		this.path = Files.createTempFile(folder, "bimbot", ".tmp");
+		this.channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+		this.queryContext = new QueryContext(this, packageMetaData, -1, -1, -1, -1, -1);
+		this.recordDecoder = new RecordDecoder(queryContext) {
+			@Override
+			protected EClass getEClass(short cid) throws BimserverDatabaseException {
+				return databaseSession.getEClass(cid);
+			}
+
+			@Override
+			protected boolean useForSerialization(long oid, EClass eClass) {
+				// All objects are available
+				return true;
+			}
+		};
+		Arrays.fill(positions, -1);
+	}
+
+	/**
+	 * @return The QueryContext to pass to StreamingDeserializer.read
+	 */
+	public QueryContext getQueryContext() {
+		return queryContext;
+	}
+
+	@Override
+	public EClass getEClassForOid(long oid) throws BimserverDatabaseException {
+		return databaseSession.getEClass((short) oid);
+	}
+
+	@Override
+	public short getCidOfEClass(EClass eClass) {
+		return databaseSession.getCidOfEClass(eClass);
+	}
+
+	@Override
+	public synchronized long newOid(EClass eClass) {
+		nrOids++;
+		return ((long) nrOids << 16) + getCidOfEClass(eClass);
+	}
+
+	@Override
+	public int save(VirtualObject virtualObject) throws BimserverDatabaseException {
+		ByteBuffer record = virtualObject.write();
+		int length = record.position();
+		ByteBuffer entry = ByteBuffer.allocate(HEADER_SIZE + length);
+		entry.putShort((short) virtualObject.getOid());
+		entry.putInt(length);
+		entry.put(record.array(), 0, length);
+		entry.flip();
+		int index = (int) (virtualObject.getOid() >>> 16);
+		long position;
+		synchronized (this) {
+			position = size;
+			size += entry.remaining();
+			if (index >= positions.length) {
+				int oldLength = positions.length;
+				positions = Arrays.copyOf(positions, Math.max(index + 1, oldLength * 2));
+				Arrays.fill(positions, oldLength, positions.length, -1);
+			}
+			// Overwrites are appended as well, the last written version is used
+			positions[index] = position;
+		}
+		try {
+			while (entry.hasRemaining()) {
+				position += channel.write(entry, position);
+			}
+		} catch (IOException e) {
+			throw new BimserverDatabaseException(e);
+		}
+		return length;
+	}
+
+	@Override
+	public int saveOverwrite(VirtualObject virtualObject) throws BimserverDatabaseException {
+		return save(virtualObject);
+	}
+
+	@Override
+	public byte[] get(String tableName, byte[] key) throws BimserverDatabaseException {
+		return null;
+	}
+
+	@Override
+	public List<byte[]> getDuplicates(String tableName, byte[] key) throws BimserverDatabaseException {
+		return Collections.emptyList();
+	}
+
+	@Override
+	public UUID newUuid() {
+		return UUID.randomUUID();
+	}
+
+	/**
+	 * @return The number of oids that have been handed out, objects are numbered 1 to this number
+	 */
+	public synchronized int getNrOids() {
+		return nrOids;
+	}
+
+	/**
+	 * @return The object with the given number, or null when no object with that number has been saved
+	 */
+	public HashMapVirtualObject getByIndex(int index) throws BimserverDatabaseException {
+		long position;
+		synchronized (this) {
+			position = index < positions.length ? positions[index] : -1;
+		}
+		if (position == -1) {
+			return null;
+		}
+		try {
+			ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+			read(header, position);
+			short cid = header.getShort(0);
+			EClass eClass = databaseSession.getEClass(cid);
+			long oid = ((long) index << 16) + cid;
+			ByteBuffer record = ByteBuffer.allocate(header.getInt(2));
+			read(record, position + HEADER_SIZE);
+			record.flip();
+			return recordDecoder.convertByteArrayToObject(eClass, oid, record, -1);
+		} catch (IOException e) {
+			throw new BimserverDatabaseException(e);
+		}
+	}
+
+	public HashMapVirtualObject getByOid(long oid) throws BimserverDatabaseException {
+		return getByIndex((int) (oid >>> 16));
+	}
+
+	private void read(ByteBuffer buffer, long position) throws IOException {
+		while (buffer.hasRemaining()) {
+			int read = channel.read(buffer, position);
+			if (read == -1) {
+				throw new IOException("Unexpected end of " + path);
+			}
+			position += read;
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		channel.close();
+		Files.deleteIfExists(path);
+	}
+}
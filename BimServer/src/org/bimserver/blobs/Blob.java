@@ -0,0 +1,39 @@
+package org.bimserver.blobs;
+
+/******************************************************************************
+ * Copyright (C) 2009-2019  BIMserver.org
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see {@literal<http://www.gnu.org/licenses/>}.
+ *****************************************************************************/
+
+public class Blob {
+	private final String digest;
+	private final long size;
+
+	public Blob(String digest, long size) {
+		this.digest = digest;
+		this.size = size;
+	}
+
+	/**
+	 * @return The lowercase hex SHA-256 of the content
+	 */
+	public String getDigest() {
+		return digest;
+	}
+
+	public long getSize() {
+		return size;
+	}
+}
@@ -0,0 +1,217 @@
+package org.bimserver.blobs;
+
+/******************************************************************************
+ * Copyright (C) 2009-2019  BIMserver.org
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see {@literal<http://www.gnu.org/licenses/>}.
+ *****************************************************************************/
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.commons.io.IOUtils;
+import org.bimserver.models.store.File;
+import org.bimserver.utils.PathUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.io.BaseEncoding;
+
+/**
+ * Content addressed storage of the data of File objects on the local filesystem. A blob is stored as blobs/ab/cd/abcd... where abcd...
+ * is the SHA-256 of the content, a File refers to its blob by that digest (File.digest) instead of keeping the bytes in File.data.
+ *
+ * Storing the same content twice results in one blob. Blobs are written to blobs/tmp first and then moved into place, so a blob that
+ * exists is always complete. Blobs that are no longer referenced by any File are removed by collectGarbage.
+ *
+ * Knowing a digest does not give access to the content, a File can only be created for a blob by the user that uploaded it, see
+ * registerUpload and claimUpload.
+ */
+public class BlobStore {
+	private static final Logger LOGGER = LoggerFactory.getLogger(BlobStore.class);
+	private final Path rootDir;
+	private final Path tmpDir;
+	private final Map<String, Long> uploads = new ConcurrentHashMap<>();
+
+	public BlobStore(Path rootDir) throws IOException {
+		this.rootDir = rootDir;
+		this.tmpDir = rootDir.resolve("tmp");
+		Files.createDirectories(tmpDir);
+	}
+
+	/**
+	 * Streams the input to disk while computing the digest, the input is not closed
+	 */
+	public Blob store(InputStream inputStream) throws IOException {
+		MessageDigest messageDigest = createMessageDigest();
+		Path tmpFile = tmpDir.resolve(UUID.randomUUID().toString());
+		long size;
+		try {
+			try (OutputStream outputStream = new DigestOutputStream(Files.newOutputStream(tmpFile), messageDigest)) {
+				size = IOUtils.copyLarge(inputStream, outputStream);
+			}
+			String digest = BaseEncoding.base16().lowerCase().encode(messageDigest.digest());
+			Path target = getPath(digest);
+			if (Files.exists(target)) {
+				// Same content has been stored before, touch it so a running garbage collection does not consider it old
+				Files.setLastModifiedTime(target, FileTime.fromMillis(System.currentTimeMillis()));
+			} else {
+				Files.createDirectories(target.getParent());
+				try {
+					Files.move(tmpFile, target, StandardCopyOption.ATOMIC_MOVE);
+				} catch (FileAlreadyExistsException | AtomicMoveNotSupportedException e) {
+					// Stored concurrently by another upload
+					if (!Files.exists(target)) {
+						throw e;
+					}
+				}
+			}
+			return new Blob(digest, size);
+		} finally {
+			Files.deleteIfExists(tmpFile);
+		}
+	}
+
+	public Blob store(byte[] data) throws IOException {
+		return store(new ByteArrayInputStream(data));
+	}
+
+	/**
+	 * Remembers that the user with the given uoid has uploaded the blob, until the user claims it or garbage is collected
+	 */
+	public void registerUpload(String digest, long uoid) {
+		uploads.put(getUploadKey(digest, uoid), System.currentTimeMillis());
+	}
+
+	/**
+	 * @return Whether the user with the given uoid has uploaded the blob, an upload can be claimed once
+	 */
+	public boolean claimUpload(String digest, long uoid) {
+		return uploads.remove(getUploadKey(digest, uoid)) != null && contains(digest);
+	}
+
+	private String getUploadKey(String digest, long uoid) {
+		return uoid + "/" + digest;
+	}
+
+	public Path getPath(String digest) {
+		if (!isValidDigest(digest)) {
+			throw new IllegalArgumentException("Invalid digest " + digest);
+		}
+		return rootDir.resolve(digest.substring(0, 2)).resolve(digest.substring(2, 4)).resolve(digest);
+	}
+
+	public boolean contains(String digest) {
+		return isValidDigest(digest) && Files.exists(getPath(digest));
+	}
+
+	public byte[] read(String digest) throws IOException {
+		return Files.readAllBytes(getPath(digest));
+	}
+
+	/**
+	 * @return The data of the file, from the blob store when the file has a digest
+	 */
+	public byte[] getData(File file) throws IOException {
+		if (file.getDigest() != null) {
+			return read(file.getDigest());
+		}
+		return file.getData();
+	}
+
+	/**
+	 * Removes the blobs that are not in referencedDigests and have not been written for at least minAgeMillis. The age check prevents
+	 * removing blobs of which the File has not been committed yet, the same goes for left behind files in the tmp directory.
+	 *
+	 * @return The number of removed blobs
+	 */
+	public int collectGarbage(Set<String> referencedDigests, long minAgeMillis) throws IOException {
+		long removeBefore = System.currentTimeMillis() - minAgeMillis;
+		// Uploads that have not been claimed so far are not going to be claimed, the blob may be removed below
+		Iterator<Long> uploadTimes = uploads.values().iterator();
+		while (uploadTimes.hasNext()) {
+			if (uploadTimes.next() < removeBefore) {
+				uploadTimes.remove();
+			}
+		}
+		int removed = 0;
+		for (Path first : PathUtils.list(rootDir)) {
+			if (first.equals(tmpDir)) {
+				for (Path tmpFile : PathUtils.list(tmpDir)) {
+					if (Files.getLastModifiedTime(tmpFile).toMillis() < removeBefore) {
+						Files.deleteIfExists(tmpFile);
+					}
+				}
+				continue;
+			}
+			if (!Files.isDirectory(first)) {
+				continue;
+			}
+			for (Path second : PathUtils.list(first)) {
+				if (!Files.isDirectory(second)) {
+					continue;
+				}
+				for (Path blob : PathUtils.list(second)) {
+					String digest = blob.getFileName().toString();
+					if (isValidDigest(digest) && !referencedDigests.contains(digest) && Files.getLastModifiedTime(blob).toMillis() < removeBefore) {
+						try {
+							Files.delete(blob);
+							removed++;
+						} catch (IOException e) {
+							LOGGER.error("", e);
+						}
+					}
+				}
+			}
+		}
+		return removed;
+	}
+
+	public static boolean isValidDigest(String digest) {
+		if (digest == null || digest.length() != 64) {
+			return false;
+		}
+		for (int i = 0; i < digest.length(); i++) {
+			char c = digest.charAt(i);
+			if (!((c >= '0' && c <= '9') || (c >= 'a' && c <= 'f'))) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private MessageDigest createMessageDigest() throws IOException {
+		try {
+			return MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException e) {
+			throw new IOException(e);
+		}
+	}
+}
@@ -0,0 +1,84 @@
+package org.bimserver.cache;
+/******************************************************************************
+ * Copyright (C) 2009-2019  BIMserver.org
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see {@literal<http://www.gnu.org/licenses/>}.
+ *****************************************************************************/
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import org.bimserver.BimserverDatabaseException;
+import org.bimserver.plugins.serializers.ExtendedDataSource;
+import org.bimserver.plugins.serializers.ProgressReporter;
+import org.bimserver.plugins.serializers.SerializerException;
+
+/**
+ * Serves a result from the NewDiskCacheManager, from memory or from disk, whichever tier has the entry
+ */
+public class CachedResultDataSource extends ExtendedDataSource {
+
+	private final NewDiskCacheManager newDiskCacheManager;
+	private final DownloadDescriptor downloadDescriptor;
+	private String name;
+	private InputStream inputStream;
+
+	public CachedResultDataSource(NewDiskCacheManager newDiskCacheManager, DownloadDescriptor downloadDescriptor) {
+		this.newDiskCacheManager = newDiskCacheManager;
+		this.downloadDescriptor = downloadDescriptor;
+	}
+
+	@Override
+	public String getContentType() {
+		return null;
+	}
+
+	@Override
+	public InputStream getInputStream() throws IOException {
+		if (inputStream != null) {
+			inputStream.close();
+		}
+		inputStream = newDiskCacheManager.getInputStream(downloadDescriptor);
+		if (inputStream == null) {
+			throw new IOException("Result no longer in cache");
+		}
+		return inputStream;
+	}
+
+	@Override
+	public String getName() {
+		return name;
+	}
+
+	@Override
+	public OutputStream getOutputStream() throws IOException {
+		return null;
+	}
+
+	public void setName(String name) {
+		this.name = name;
+	}
+
+	@Override
+	public void writeToOutputStream(OutputStream outputStream, ProgressReporter progressReporter) throws SerializerException, IOException, BimserverDatabaseException {
+		try (InputStream input = getInputStream()) {
+			byte[] buffer = new byte[4096];
+			int n = 0;
+			while (-1 != (n = input.read(buffer))) {
+				outputStream.write(buffer, 0, n);
+			}
+		}
+	}
+}
@@ -18,77 +18,74 @@ package org.bimserver.cache;
  *****************************************************************************/
 
 import java.io.IOException;
-import java.io.StringWriter;
 import java.util.Set;
+import java.util.TreeSet;
 
 import org.bimserver.database.queries.om.JsonQueryObjectModelConverter;
 import org.bimserver.database.queries.om.Query;
 import org.bimserver.emf.PackageMetaData;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
-import com.fasterxml.jackson.core.JsonGenerationException;
-import com.fasterxml.jackson.databind.JsonMappingException;
+import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.databind.node.ObjectNode;
 import com.google.common.base.Charsets;
-import com.google.common.hash.HashCode;
 import com.google.common.hash.HashFunction;
 import com.google.common.hash.Hasher;
 import com.google.common.hash.Hashing;
 
 public class DownloadDescriptor {
+	private static final Logger LOGGER = LoggerFactory.getLogger(DownloadDescriptor.class);
 	private static final HashFunction hf = Hashing.md5();
 	private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
 	private Set<Long> roids;
 	private Query query;
-	private long serializerOid;
+	private String serializerKey;
 	private String fileNameWithoutExtension;
 	private PackageMetaData packageMetaData;
 	private String jsonQuery;
+	private String cacheKey;
 
-	public long getSerializerOid() {
-		return serializerOid;
-	}
-	
-	public DownloadDescriptor(PackageMetaData packageMetaData, String jsonQuery, Set<Long> roids, Query query, long serializerOid, String fileNameWithoutExtension) {
+	/**
+	 * @param serializerKey Identifies the serializer and its settings, not the serializer object of a user, so the cache is shared between users
+	 */
+	public DownloadDescriptor(PackageMetaData packageMetaData, String jsonQuery, Set<Long> roids, Query query, String serializerKey, String fileNameWithoutExtension) {
 		this.packageMetaData = packageMetaData;
 		this.jsonQuery = jsonQuery;
-		this.roids = roids;
+		this.roids = new TreeSet<>(roids);
 		this.query = query;
-		this.serializerOid = serializerOid;
+		this.serializerKey = serializerKey;
 		this.fileNameWithoutExtension = fileNameWithoutExtension;
 	}
-	
-	public String getCacheKey() {
-		Hasher hasher = hf.newHasher();
-		// TODO This serializerOid actually makes the cache a per-user cache... Maybe not the most useful feature
-		hasher.putLong(serializerOid);
-		for (long roid : roids) {
-			hasher.putLong(roid);
+
+	public Set<Long> getRoids() {
+		return roids;
+	}
+
+	public synchronized String getCacheKey() {
+		if (cacheKey == null) {
+			Hasher hasher = hf.newHasher();
+			hasher.putString(serializerKey, Charsets.UTF_8);
+			// Sorted, the order in which roids are given does not change the result
+			for (long roid : roids) {
+				hasher.putLong(roid);
+			}
+			hasher.putString(JsonQueryObjectModelConverter.toCanonicalString(getQueryJson()), Charsets.UTF_8);
+			cacheKey = hasher.hash().toString();
 		}
+		return cacheKey;
+	}
+
+	private JsonNode getQueryJson() {
 		if (jsonQuery != null) {
-			// TODO This is based on the incoming JSON (if there is any), this should be replaced at some point by a canonical-form
-			hasher.putString(jsonQuery, Charsets.UTF_8);
-			HashCode hashcode = hasher.hash();
-			return hashcode.toString();
-		} else {
-			// TODO This does not work because the toJson function is not complete
-			ObjectNode json = new JsonQueryObjectModelConverter(packageMetaData).toJson(query);
 			try {
-				StringWriter stringWriter = new StringWriter();
-				OBJECT_MAPPER.writeValue(stringWriter, json);
-				System.out.println(query.toString());
-				hasher.putString(stringWriter.toString(), Charsets.UTF_8);
-				HashCode hashcode = hasher.hash();
-				return hashcode.toString();
-			} catch (JsonGenerationException e) {
-				e.printStackTrace();
-			} catch (JsonMappingException e) {
-				e.printStackTrace();
+				return OBJECT_MAPPER.readTree(jsonQuery);
 			} catch (IOException e) {
-				e.printStackTrace();
+				LOGGER.error("", e);
 			}
 		}
-		return null;
+		// TODO This does not work for all queries because the toJson function is not complete
+		return new JsonQueryObjectModelConverter(packageMetaData).toJson(query);
 	}
 
 	public String getFileNameWithoutExtension() {
@@ -21,6 +21,7 @@ import java.io.BufferedInputStream;
 import java.io.Closeable;
 import java.io.DataInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.OutputStream;
 import java.nio.ByteBuffer;
 import java.nio.file.Files;
@@ -36,15 +37,17 @@ import com.google.common.io.ByteStreams;
 
 public class FileCacheReadingWriter implements Writer, Closeable {
 
-	private Path file;
 	private DataInputStream inputStream;
 	private int nextSize = -1;
 	private byte[] buffer;
 
-	public FileCacheReadingWriter(Path file) {
-		this.file = file;
+	public FileCacheReadingWriter(Path file) throws IOException {
+		this(Files.newInputStream(file));
+	}
+
+	public FileCacheReadingWriter(InputStream cached) {
 		try {
-			inputStream = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)));
+			inputStream = new DataInputStream(new BufferedInputStream(cached));
 			nextSize = inputStream.readInt();
 		} catch (IOException e) {
 			e.printStackTrace();
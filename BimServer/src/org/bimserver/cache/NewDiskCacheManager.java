@@ -17,12 +17,20 @@ package org.bimserver.cache;
  * along with this program.  If not, see {@literal<http://www.gnu.org/licenses/>}.
  *****************************************************************************/
 
+import java.io.ByteArrayInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
@@ -32,33 +40,89 @@ import org.bimserver.utils.PathUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.google.common.base.Joiner;
+
+/**
+ * Cache of serialized query results, keyed by DownloadDescriptor.getCacheKey (the roids, the normalised query and the serializer), so
+ * the results can be shared between users. Revisions never change after they have been committed, entries only have to be invalidated
+ * when a revision is deleted or its geometry is regenerated (invalidate).
+ *
+ * Entries are stored on disk, the most recently used small entries are also kept in memory. Both tiers have a maximum size, the least
+ * recently used entries are evicted first. Next to every entry a ".roids" file is stored, so entries can still be invalidated after a
+ * restart.
+ */
 public class NewDiskCacheManager {
 
 	private static final Logger LOGGER = LoggerFactory.getLogger(NewDiskCacheManager.class);
+	private static final String ROIDS_EXTENSION = ".roids";
+	private static final String TMP_EXTENSION = ".__tmp";
 	private final Path cacheDir;
 	private final BimServer bimServer;
-	private final Set<String> cachedFileNames = new HashSet<>();
+	private final long maxDiskSize;
+	private final long maxMemorySize;
+	private final long maxMemoryEntrySize;
+
+	// All guarded by "entries", in least recently used order
+	private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+	private final LinkedHashMap<String, byte[]> memory = new LinkedHashMap<>(16, 0.75f, true);
+	private final Map<Long, Set<String>> keysPerRoid = new HashMap<>();
+	private long diskSize;
+	private long memorySize;
+
 	private final Map<String, DiskCacheItem> busyCaching = new HashMap<>();
+	private final Set<String> invalidatedWhileCaching = new HashSet<>();
+
+	private static class Entry {
+		private final long size;
+		private final Set<Long> roids;
 
-	public NewDiskCacheManager(BimServer bimServer, Path cacheDir) {
+		private Entry(long size, Set<Long> roids) {
+			this.size = size;
+			this.roids = roids;
+		}
+	}
+
+	public NewDiskCacheManager(BimServer bimServer, Path cacheDir, long maxDiskSize, long maxMemorySize) {
 		this.bimServer = bimServer;
 		this.cacheDir = cacheDir;
+		this.maxDiskSize = maxDiskSize;
+		this.maxMemorySize = maxMemorySize;
+		this.maxMemoryEntrySize = maxMemorySize / 16;
 		try {
 			if (!Files.exists(cacheDir)) {
-				Files.createDirectory(cacheDir);
+				Files.createDirectories(cacheDir);
 			}
+			List<Path> files = new ArrayList<>();
 			for (Path file : PathUtils.list(this.cacheDir)) {
-				if (file.getFileName().toString().endsWith(".__tmp")) {
+				String name = file.getFileName().toString();
+				if (name.endsWith(TMP_EXTENSION)) {
 					Files.delete(file);
-				} else {
-					cachedFileNames.add(file.getFileName().toString());
+				} else if (!name.endsWith(ROIDS_EXTENSION)) {
+					if (Files.exists(roidsFile(name))) {
+						files.add(file);
+					} else {
+						// Without roids it can never be invalidated
+						Files.delete(file);
+					}
 				}
 			}
-		} catch (IOException e) {
+			files.sort(Comparator.comparing(file -> file.toFile().lastModified()));
+			synchronized (entries) {
+				for (Path file : files) {
+					String cacheKey = file.getFileName().toString();
+					Set<Long> roids = new HashSet<>();
+					for (String roid : new String(Files.readAllBytes(roidsFile(cacheKey)), StandardCharsets.UTF_8).trim().split(",")) {
+						roids.add(Long.parseLong(roid));
+					}
+					add(cacheKey, Files.size(file), roids);
+				}
+				evict();
+			}
+		} catch (IOException | NumberFormatException e) {
 			LOGGER.error("", e);
 		}
 	}
-	
+
 	public boolean contains(DownloadDescriptor downloadDescriptor) {
 		if (isEnabled()) {
 			String cacheKey = downloadDescriptor.getCacheKey();
@@ -67,8 +131,8 @@ public class NewDiskCacheManager {
 					return true;
 				}
 			}
-			synchronized (cachedFileNames) {
-				return cachedFileNames.contains(cacheKey);
+			synchronized (entries) {
+				return entries.containsKey(cacheKey);
 			}
 		} else {
 			return false;
@@ -96,18 +160,55 @@ public class NewDiskCacheManager {
 			}
 			Path file = cacheDir.resolve(cacheKey);
 			if (!Files.exists(file)) {
-				// This is an inconsistency that can only happen when users remove cached files manually while BIMserver is running
-				cachedFileNames.remove(file.getFileName().toString());
-				busyCaching.remove(downloadDescriptor.getCacheKey());
+				// This is an inconsistency that can only happen when users remove cached files manually while BIMserver is running, or when the entry has just been evicted
+				remove(cacheKey);
+				synchronized (busyCaching) {
+					busyCaching.remove(cacheKey);
+				}
 				LOGGER.error("File " + file.getFileName().toString() + " not found in cache");
 			} else {
-//				LOGGER.info("Reading from cache " + cacheKey);
+				synchronized (entries) {
+					// Marks the entry as recently used
+					entries.get(cacheKey);
+				}
 				return file;
 			}
 		}
 		return null;
 	}
 
+	/**
+	 * @return A stream of the cached result, from memory when the entry is small enough to be kept there, or null when the entry does not
+	 *         exist (anymore)
+	 */
+	public InputStream getInputStream(DownloadDescriptor downloadDescriptor) throws IOException {
+		String cacheKey = downloadDescriptor.getCacheKey();
+		synchronized (entries) {
+			byte[] data = memory.get(cacheKey);
+			if (data != null) {
+				entries.get(cacheKey);
+				return new ByteArrayInputStream(data);
+			}
+		}
+		Path file = get(downloadDescriptor);
+		if (file == null) {
+			return null;
+		}
+		long size = Files.size(file);
+		if (size <= maxMemoryEntrySize) {
+			byte[] data = Files.readAllBytes(file);
+			synchronized (entries) {
+				if (entries.containsKey(cacheKey) && !memory.containsKey(cacheKey)) {
+					memory.put(cacheKey, data);
+					memorySize += data.length;
+					evict();
+				}
+			}
+			return new ByteArrayInputStream(data);
+		}
+		return Files.newInputStream(file);
+	}
+
 	public NewDiskCacheWriter startCachingWriter(DownloadDescriptor downloadDescriptor, MessagingStreamingSerializer messagingStreamingSerializer) {
 		try {
 			String cacheKey = downloadDescriptor.getCacheKey();
@@ -147,7 +248,9 @@ public class NewDiskCacheManager {
 			for (Path file : PathUtils.list(cacheDir)) {
 				try {
 					Files.delete(file);
-					removed++;
+					if (!file.getFileName().toString().endsWith(ROIDS_EXTENSION)) {
+						removed++;
+					}
 				} catch (IOException e) {
 					LOGGER.error("", e);
 				}
@@ -155,25 +258,138 @@ public class NewDiskCacheManager {
 		} catch (IOException e) {
 			LOGGER.error("", e);
 		}
-		cachedFileNames.clear();
+		synchronized (entries) {
+			entries.clear();
+			memory.clear();
+			keysPerRoid.clear();
+			diskSize = 0;
+			memorySize = 0;
+		}
 		return removed;
 	}
 
+	/**
+	 * Removes all entries that contain the given revision, must be called when a revision is deleted or its geometry has changed
+	 */
+	public void invalidate(long roid) {
+		Set<String> cacheKeys;
+		synchronized (entries) {
+			cacheKeys = keysPerRoid.remove(roid);
+		}
+		if (cacheKeys != null) {
+			for (String cacheKey : cacheKeys) {
+				remove(cacheKey);
+			}
+		}
+		synchronized (busyCaching) {
+			for (DiskCacheItem diskCacheItem : busyCaching.values()) {
+				if (diskCacheItem.getDownloadDescriptor().getRoids().contains(roid)) {
+					invalidatedWhileCaching.add(diskCacheItem.getDownloadDescriptor().getCacheKey());
+				}
+			}
+		}
+	}
+
 	public void doneGenerating(DiskCacheItem diskCacheItem) {
+		DownloadDescriptor downloadDescriptor = diskCacheItem.getDownloadDescriptor();
+		String cacheKey = downloadDescriptor.getCacheKey();
+		boolean invalidated;
 		synchronized (busyCaching) {
-			String cacheKey = diskCacheItem.getDownloadDescriptor().getCacheKey();
 //			LOGGER.info("Done caching " + cacheKey);
 			busyCaching.remove(cacheKey);
-			cachedFileNames.add(cacheKey);
+			invalidated = invalidatedWhileCaching.remove(cacheKey);
+		}
+		Path file = cacheDir.resolve(cacheKey);
+		try {
+			if (invalidated) {
+				Files.deleteIfExists(file);
+				return;
+			}
+			Files.write(roidsFile(cacheKey), Joiner.on(",").join(downloadDescriptor.getRoids()).getBytes(StandardCharsets.UTF_8));
+			synchronized (entries) {
+				add(cacheKey, Files.size(file), downloadDescriptor.getRoids());
+				evict();
+			}
+		} catch (IOException e) {
+			LOGGER.error("", e);
 		}
 	}
 
 	public void remove(NewDiskCacheOutputStream diskCacheOutputStream) {
 		String cacheKey = diskCacheOutputStream.getDownloadDescriptor().getCacheKey();
 //		LOGGER.info("Removing cache " + cacheKey);
-		cachedFileNames.remove(cacheKey);
+		remove(cacheKey);
 		synchronized (busyCaching) {
 			busyCaching.remove(cacheKey);
+			invalidatedWhileCaching.remove(cacheKey);
 		}
-	}
-}
\ No newline at end of file
+	}
+
+	private void remove(String cacheKey) {
+		synchronized (entries) {
+			Entry entry = entries.remove(cacheKey);
+			if (entry == null) {
+				return;
+			}
+			diskSize -= entry.size;
+			byte[] data = memory.remove(cacheKey);
+			if (data != null) {
+				memorySize -= data.length;
+			}
+			for (long roid : entry.roids) {
+				Set<String> keys = keysPerRoid.get(roid);
+				if (keys != null) {
+					keys.remove(cacheKey);
+					if (keys.isEmpty()) {
+						keysPerRoid.remove(roid);
+					}
+				}
+			}
+		}
+		try {
+			Files.deleteIfExists(cacheDir.resolve(cacheKey));
+			Files.deleteIfExists(roidsFile(cacheKey));
+		} catch (IOException e) {
+			LOGGER.error("", e);
+		}
+	}
+
+	private void add(String cacheKey, long size, Set<Long> roids) {
+		Entry previous = entries.put(cacheKey, new Entry(size, roids));
+		if (previous != null) {
+			diskSize -= previous.size;
+		}
+		diskSize += size;
+		for (long roid : roids) {
+			keysPerRoid.computeIfAbsent(roid, k -> new HashSet<>()).add(cacheKey);
+		}
+	}
+
+	/**
+	 * Must be called while holding the lock on entries
+	 */
+	private void evict() {
+		Iterator<Map.Entry<String, byte[]>> memoryIterator = memory.entrySet().iterator();
+		while (memorySize > maxMemorySize && memoryIterator.hasNext()) {
+			memorySize -= memoryIterator.next().getValue().length;
+			memoryIterator.remove();
+		}
+		List<String> toRemove = new ArrayList<>();
+		long size = diskSize;
+		for (Map.Entry<String, Entry> entry : entries.entrySet()) {
+			if (size <= maxDiskSize) {
+				break;
+			}
+			toRemove.add(entry.getKey());
+			size -= entry.getValue().size;
+		}
+		for (String cacheKey : toRemove) {
+			LOGGER.debug("Evicting " + cacheKey + " from cache");
+			remove(cacheKey);
+		}
+	}
+
+	private Path roidsFile(String cacheKey) {
+		return cacheDir.resolve(cacheKey + ROIDS_EXTENSION);
+	}
+}
@@ -23,6 +23,7 @@ import org.bimserver.BimserverDatabaseException;
 import org.bimserver.database.berkeley.DatabaseInitException;
 import org.bimserver.database.migrations.InconsistentModelsException;
 import org.bimserver.database.migrations.Migrator;
+import org.bimserver.database.statistics.RevisionStatisticsStore;
 import org.bimserver.emf.MetaDataManager;
 import org.eclipse.emf.ecore.EClass;
 
@@ -41,6 +42,10 @@ public interface BimDatabase {
 
 	Registry getRegistry();
 
+	RevisionStatisticsStore getRevisionStatisticsStore();
+
+	KeyValueStore getKeyValueStore();
+
 	EClass getEClassForOid(long oid) throws BimserverDatabaseException;
 
 	String getTableName(EClass eClass);
@@ -0,0 +1,676 @@
+package org.bimserver.database;
+
+/******************************************************************************
+ * Copyright (C) 2009-2019  BIMserver.org
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see {@literal<http://www.gnu.org/licenses/>}.
+ *****************************************************************************/
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.bimserver.BimserverDatabaseException;
+import org.bimserver.emf.MetaDataManager;
+import org.bimserver.emf.PackageMetaData;
+import org.eclipse.emf.ecore.EClass;
+import org.eclipse.emf.ecore.EClassifier;
+import org.eclipse.emf.ecore.EDataType;
+import org.eclipse.emf.ecore.EEnum;
+import org.eclipse.emf.ecore.EStructuralFeature;
+import org.eclipse.emf.ecore.EcorePackage;
+
+/**
+ * Stores the records of the type tables in a variable length format. DatabaseSession and HashMapVirtualObject keep reading and
+ * writing the fixed width format, this codec transcodes at the KeyValueStore level, which is the only place values go in or out.
+ *
+ * Compared to the fixed width format:
+ * <ul>
+ * <li>Integers, shorts, longs, dates, enums, sizes and lengths are zig-zag encoded varints</li>
+ * <li>References are varints, within a list every oid is stored as the difference with the previous oid</li>
+ * <li>Lists of doubles are stored as floats or integers when that is lossless</li>
+ * </ul>
+ *
+ * The format is enabled per table, the registry keeps track of which tables have been converted (see {@link #getRegistryKey(String)}).
+ * Records of tables that are not enabled are passed through untouched, so they keep the fixed width format. Within an enabled table
+ * every record starts with a format byte. The record is walked using the current schema, when that fails, or when the result would
+ * not be smaller, the record is stored raw. The number of stored features is part of the record, so features that are added at the
+ * end of a class by a migration do not invalidate existing records.
+ */
+public class CompactRecordCodec implements RecordCodec {
+
+	/**
+	 * The schema version from which on the records of the type tables are stored in this format, see Step0058. Type tables that are
+	 * created from this version on use the format from the start.
+	 */
+	public static final int SCHEMA_VERSION = 58;
+
+	/**
+	 * Registry value of a table that is being converted, when a server finds a table in this state the conversion has been interrupted
+	 */
+	public static final int CONVERTING = 1;
+
+	/**
+	 * Registry value of a table of which all records are in this format
+	 */
+	public static final int COMPACT = 2;
+
+	public interface ClassLookup {
+		EClass getEClassForCid(short cid) throws BimserverDatabaseException;
+	}
+
+	private static final byte FORMAT_RAW = 0;
+	private static final byte FORMAT_COMPACT = 1;
+
+	private static final byte DOUBLES_RAW = 0;
+	private static final byte DOUBLES_FLOAT = 1;
+	private static final byte DOUBLES_INTEGRAL = 2;
+
+	/*
+	 * Integral doubles above this value can not be stored as a long without a chance of losing precision
+	 */
+	private static final double MAX_INTEGRAL = 1L << 53;
+
+	private static final int NULL = 0;
+	private static final int EMBEDDED = 1;
+	private static final int REFERENCE = 2;
+	private static final int LIST_WITHOUT_CID = 2;
+
+	private final MetaDataManager metaDataManager;
+	private final ClassLookup classLookup;
+	private final Map<String, EClass> tables = new HashMap<>();
+	private final Set<String> enabledTables = ConcurrentHashMap.newKeySet();
+	private final Map<EClass, StoredClass> storedClasses = new ConcurrentHashMap<>();
+
+	public CompactRecordCodec(MetaDataManager metaDataManager, ClassLookup classLookup) {
+		this.metaDataManager = metaDataManager;
+		this.classLookup = classLookup;
+		for (PackageMetaData packageMetaData : metaDataManager.getAll()) {
+			for (EClassifier eClassifier : packageMetaData.getEPackage().getEClassifiers()) {
+				if (eClassifier instanceof EClass && eClassifier.getEAnnotation("nodatabase") == null) {
+					EClass eClass = (EClass) eClassifier;
+					tables.put(eClass.getEPackage().getName() + "_" + eClass.getName(), eClass);
+				}
+			}
+		}
+	}
+
+	public static String getRegistryKey(String tableName) {
+		return "compactrecords-" + tableName;
+	}
+
+	/**
+	 * @return The names of all tables that can be stored in this format, enabled or not
+	 */
+	public Set<String> getTableNames() {
+		return tables.keySet();
+	}
+
+	public boolean handles(String tableName) {
+		return tables.containsKey(tableName);
+	}
+
+	/**
+	 * From now on records of this table are encoded and decoded, only call this when all records of the table are in this format
+	 */
+	public void enable(String tableName) {
+		if (!tables.containsKey(tableName)) {
+			throw new IllegalArgumentException(tableName + " is not a type table");
+		}
+		enabledTables.add(tableName);
+	}
+
+	public boolean isEnabled(String tableName) {
+		return enabledTables.contains(tableName);
+	}
+
+	@Override
+	public byte[] encode(String tableName, byte[] value, int offset, int length) {
+		if (!enabledTables.contains(tableName)) {
+			return null;
+		}
+		return convert(tableName, value, offset, length);
+	}
+
+	/**
+	 * Converts a record in the fixed width format, regardless of whether the table is enabled. Used when converting a table.
+	 */
+	public byte[] convert(String tableName, byte[] value, int offset, int length) {
+		EClass eClass = tables.get(tableName);
+		// A single byte is the marker of a deleted object
+		if (length > 1) {
+			try {
+				Compactor compactor = new Compactor(ByteBuffer.wrap(value, offset, length), length);
+				compactor.record(getStoredClass(eClass));
+				if (compactor.out.size() <= length) {
+					return compactor.out.toByteArray();
+				}
+			} catch (RuntimeException e) {
+				// Not walkable with the current schema, stored raw
+			}
+		}
+		byte[] raw = new byte[length + 1];
+		raw[0] = FORMAT_RAW;
+		System.arraycopy(value, offset, raw, 1, length);
+		return raw;
+	}
+
+	@Override
+	public byte[] decode(String tableName, byte[] stored) {
+		if (stored.length == 0 || !enabledTables.contains(tableName)) {
+			// Only the key has been read, or the table is still in the fixed width format
+			return stored;
+		}
+		if (stored[0] == FORMAT_RAW) {
+			byte[] value = new byte[stored.length - 1];
+			System.arraycopy(stored, 1, value, 0, value.length);
+			return value;
+		} else if (stored[0] == FORMAT_COMPACT) {
+			Expander expander = new Expander(ByteBuffer.wrap(stored, 1, stored.length - 1), stored.length * 2);
+			expander.record(getStoredClass(tables.get(tableName)));
+			return expander.out.toByteArray();
+		}
+		throw new IllegalStateException("Unknown record format " + stored[0] + " in " + tableName);
+	}
+
+	private StoredClass getStoredClass(EClass eClass) {
+		StoredClass storedClass = storedClasses.get(eClass);
+		if (storedClass == null) {
+			storedClass = new StoredClass(metaDataManager.getPackageMetaData(eClass.getEPackage().getName()), eClass);
+			storedClasses.put(eClass, storedClass);
+		}
+		return storedClass;
+	}
+
+	private EClass getEClassForCid(short cid) {
+		try {
+			EClass eClass = classLookup.getEClassForCid(cid);
+			if (eClass == null) {
+				throw new IllegalArgumentException("No class for cid " + cid);
+			}
+			return eClass;
+		} catch (BimserverDatabaseException e) {
+			throw new IllegalArgumentException(e);
+		}
+	}
+
+	private static class StoredClass {
+		private final EStructuralFeature[] features;
+		private final int unsettedLength;
+
+		StoredClass(PackageMetaData packageMetaData, EClass eClass) {
+			List<EStructuralFeature> stored = new ArrayList<>();
+			for (EStructuralFeature feature : eClass.getEAllStructuralFeatures()) {
+				if (packageMetaData.useForDatabaseStorage(eClass, feature)) {
+					stored.add(feature);
+				}
+			}
+			this.features = stored.toArray(new EStructuralFeature[stored.size()]);
+			this.unsettedLength = packageMetaData.getUnsettedLength(eClass);
+		}
+	}
+
+	/**
+	 * Walks a record in the layout written by DatabaseSession.convertObjectToByteArray and HashMapVirtualObject.write. The layout
+	 * is the same in both directions, only the way the individual values are encoded differs.
+	 */
+	private abstract class Transcoder {
+		protected final ByteBuffer in;
+		protected final Output out;
+		protected int nrFeatures;
+		protected short cid;
+		protected long oid;
+
+		Transcoder(ByteBuffer in, int expectedSize) {
+			this.in = in;
+			this.out = new Output(expectedSize);
+		}
+
+		/**
+		 * Transcodes the unsetted bits and sets nrFeatures to the number of stored features the record contains
+		 */
+		protected abstract byte[] header(StoredClass storedClass);
+
+		protected abstract int int32();
+
+		protected abstract void int16();
+
+		protected abstract void int64();
+
+		/**
+		 * @return NULL, EMBEDDED (cid is set) or REFERENCE (oid is set)
+		 */
+		protected abstract int item(long previousOid);
+
+		/**
+		 * @return NULL, EMBEDDED (cid is set) or LIST_WITHOUT_CID
+		 */
+		protected abstract int twoDimensionalItem();
+
+		protected abstract void doubles(int size);
+
+		protected void raw(int length) {
+			out.put(in.array(), in.position(), length);
+			in.position(in.position() + length);
+		}
+
+		void record(StoredClass storedClass) {
+			byte[] unsetted = header(storedClass);
+			if (nrFeatures > storedClass.features.length) {
+				throw new IllegalArgumentException("Record has more features than its class");
+			}
+			// uuid
+			raw(16);
+			for (int i = 0; i < nrFeatures; i++) {
+				if ((unsetted[i / 8] & (1 << (i % 8))) == 0) {
+					feature(storedClass.features[i]);
+				}
+			}
+			if (in.hasRemaining()) {
+				throw new IllegalArgumentException("Unexpected bytes at the end of the record");
+			}
+		}
+
+		private void feature(EStructuralFeature feature) {
+			EClassifier type = feature.getEType();
+			if (feature.isMany()) {
+				list(feature);
+			} else if (type instanceof EClass) {
+				if (item(0) == EMBEDDED) {
+					embedded(cid);
+				}
+			} else {
+				primitive((EDataType) type);
+			}
+		}
+
+		/*
+		 * Embedded (dbembed) and wrapped values, all features of the class are written, not only the ones stored in the database
+		 */
+		private void embedded(short cid) {
+			for (EStructuralFeature feature : getEClassForCid(cid).getEAllStructuralFeatures()) {
+				feature(feature);
+			}
+		}
+
+		private void list(EStructuralFeature feature) {
+			EClassifier type = feature.getEType();
+			if (type instanceof EEnum) {
+				// Aggregate relations to enums are not stored
+				return;
+			}
+			int size = int32();
+			if (type instanceof EClass) {
+				boolean twoDimensional = feature.getEAnnotation("twodimensionalarray") != null;
+				long previousOid = 0;
+				for (int i = 0; i < size; i++) {
+					if (twoDimensional) {
+						int kind = twoDimensionalItem();
+						if (kind == EMBEDDED) {
+							list(getEClassForCid(cid).getEStructuralFeature("List"));
+						} else if (kind == LIST_WITHOUT_CID) {
+							list(((EClass) type).getEStructuralFeature("List"));
+						}
+					} else {
+						int kind = item(previousOid);
+						if (kind == EMBEDDED) {
+							embedded(cid);
+						} else if (kind == REFERENCE) {
+							previousOid = oid;
+						}
+					}
+				}
+			} else if (isDouble(type)) {
+				if (size > 0) {
+					doubles(size);
+				}
+			} else {
+				for (int i = 0; i < size; i++) {
+					primitive((EDataType) type);
+				}
+			}
+		}
+
+		private void primitive(EDataType type) {
+			EcorePackage ecore = EcorePackage.eINSTANCE;
+			if (type == ecore.getEString() || type == ecore.getEByteArray()) {
+				int length = int32();
+				if (length > 0) {
+					raw(length);
+				}
+			} else if (type == ecore.getEInt() || type == ecore.getEIntegerObject()) {
+				int32();
+			} else if (type == ecore.getEShort() || type == ecore.getEShortObject()) {
+				int16();
+			} else if (isDouble(type)) {
+				raw(8);
+			} else if (type == ecore.getEFloat() || type == ecore.getEFloatObject()) {
+				raw(4);
+			} else if (type == ecore.getELong() || type == ecore.getELongObject() || type == ecore.getEDate()) {
+				int64();
+			} else if (type == ecore.getEBoolean() || type == ecore.getEBooleanObject()) {
+				raw(1);
+			} else if (type instanceof EEnum || type.getName().equals("Tristate")) {
+				int32();
+			} else {
+				throw new IllegalArgumentException("Unsupported type " + type.getName());
+			}
+		}
+	}
+
+	private static boolean isDouble(EClassifier type) {
+		return type == EcorePackage.eINSTANCE.getEDouble() || type == EcorePackage.eINSTANCE.getEDoubleObject();
+	}
+
+	/**
+	 * Fixed width to compact
+	 */
+	private class Compactor extends Transcoder {
+
+		Compactor(ByteBuffer in, int length) {
+			super(in, length);
+			out.put(FORMAT_COMPACT);
+		}
+
+		@Override
+		protected byte[] header(StoredClass storedClass) {
+			nrFeatures = storedClass.features.length;
+			out.putVarint(nrFeatures);
+			byte[] unsetted = new byte[storedClass.unsettedLength];
+			in.get(unsetted);
+			out.put(unsetted, 0, unsetted.length);
+			return unsetted;
+		}
+
+		@Override
+		protected int int32() {
+			int value = in.getInt();
+			out.putVarint(zigZag(value));
+			return value;
+		}
+
+		@Override
+		protected void int16() {
+			out.putVarint(zigZag(in.getShort()));
+		}
+
+		@Override
+		protected void int64() {
+			out.putVarint(zigZag(in.getLong()));
+		}
+
+		@Override
+		protected int item(long previousOid) {
+			short value = Short.reverseBytes(in.getShort(in.position()));
+			if (value == -1) {
+				in.position(in.position() + 2);
+				out.putVarint(0);
+				return NULL;
+			} else if (value < 0) {
+				in.position(in.position() + 2);
+				cid = (short) -value;
+				out.putVarint(1);
+				out.putVarint(cid);
+				return EMBEDDED;
+			}
+			oid = Long.reverseBytes(in.getLong());
+			long delta = zigZag(oid - previousOid);
+			if (Long.compareUnsigned(delta, -3L) > 0) {
+				throw new IllegalArgumentException("Delta too large");
+			}
+			out.putVarint(delta + 2);
+			return REFERENCE;
+		}
+
+		@Override
+		protected int twoDimensionalItem() {
+			short value = Short.reverseBytes(in.getShort(in.position()));
+			if (value == -1) {
+				in.position(in.position() + 2);
+				out.putVarint(0);
+				return NULL;
+			} else if (value < 0) {
+				in.position(in.position() + 2);
+				cid = (short) -value;
+				out.putVarint(1);
+				out.putVarint(cid);
+				return EMBEDDED;
+			}
+			// The EMF writer does not write a cid for the nested lists, the next value is the (big endian) size of the nested list
+			out.putVarint(2);
+			return LIST_WITHOUT_CID;
+		}
+
+		@Override
+		protected void doubles(int size) {
+			double[] values = new double[size];
+			boolean floats = true;
+			boolean integral = true;
+			long integralSize = 0;
+			for (int i = 0; i < size; i++) {
+				double value = in.getDouble();
+				values[i] = value;
+				long bits = Double.doubleToRawLongBits(value);
+				if (floats && Double.doubleToRawLongBits((double) (float) value) != bits) {
+					floats = false;
+				}
+				if (integral) {
+					if (Math.abs(value) > MAX_INTEGRAL || Double.doubleToRawLongBits((double) (long) value) != bits) {
+						integral = false;
+					} else {
+						integralSize += Output.varintSize(zigZag((long) value));
+					}
+				}
+			}
+			if (integral && integralSize < (floats ? 4L : 8L) * size) {
+				out.put(DOUBLES_INTEGRAL);
+				for (double value : values) {
+					out.putVarint(zigZag((long) value));
+				}
+			} else if (floats) {
+				out.put(DOUBLES_FLOAT);
+				for (double value : values) {
+					out.putInt(Float.floatToRawIntBits((float) value));
+				}
+			} else {
+				out.put(DOUBLES_RAW);
+				for (double value : values) {
+					out.putLong(Double.doubleToRawLongBits(value));
+				}
+			}
+		}
+	}
+
+	/**
+	 * Compact to fixed width
+	 */
+	private class Expander extends Transcoder {
+
+		Expander(ByteBuffer in, int expectedSize) {
+			super(in, expectedSize);
+		}
+
+		@Override
+		protected byte[] header(StoredClass storedClass) {
+			nrFeatures = (int) readVarint(in);
+			byte[] unsetted = new byte[(nrFeatures + 7) / 8];
+			in.get(unsetted);
+			out.put(unsetted, 0, unsetted.length);
+			return unsetted;
+		}
+
+		@Override
+		protected int int32() {
+			int value = (int) unZigZag(readVarint(in));
+			out.putInt(value);
+			return value;
+		}
+
+		@Override
+		protected void int16() {
+			out.putShort((short) unZigZag(readVarint(in)));
+		}
+
+		@Override
+		protected void int64() {
+			out.putLong(unZigZag(readVarint(in)));
+		}
+
+		@Override
+		protected int item(long previousOid) {
+			long tag = readVarint(in);
+			if (tag == 0) {
+				out.putShortLittleEndian((short) -1);
+				return NULL;
+			} else if (tag == 1) {
+				cid = (short) readVarint(in);
+				out.putShortLittleEndian((short) -cid);
+				return EMBEDDED;
+			}
+			oid = previousOid + unZigZag(tag - 2);
+			out.putLongLittleEndian(oid);
+			return REFERENCE;
+		}
+
+		@Override
+		protected int twoDimensionalItem() {
+			long tag = readVarint(in);
+			if (tag == 0) {
+				out.putShortLittleEndian((short) -1);
+				return NULL;
+			} else if (tag == 1) {
+				cid = (short) readVarint(in);
+				out.putShortLittleEndian((short) -cid);
+				return EMBEDDED;
+			}
+			return LIST_WITHOUT_CID;
+		}
+
+		@Override
+		protected void doubles(int size) {
+			byte mode = in.get();
+			for (int i = 0; i < size; i++) {
+				if (mode == DOUBLES_INTEGRAL) {
+					out.putLong(Double.doubleToRawLongBits((double) unZigZag(readVarint(in))));
+				} else if (mode == DOUBLES_FLOAT) {
+					out.putLong(Double.doubleToRawLongBits((double) in.getFloat()));
+				} else {
+					out.putLong(in.getLong());
+				}
+			}
+		}
+	}
+
+	private static long zigZag(long value) {
+		return (value << 1) ^ (value >> 63);
+	}
+
+	private static long unZigZag(long value) {
+		return (value >>> 1) ^ -(value & 1);
+	}
+
+	private static long readVarint(ByteBuffer buffer) {
+		long result = 0;
+		for (int shift = 0; shift < 64; shift += 7) {
+			byte b = buffer.get();
+			result |= (long) (b & 0x7F) << shift;
+			if ((b & 0x80) == 0) {
+				return result;
+			}
+		}
+		throw new IllegalArgumentException("Malformed varint");
+	}
+
+	/**
+	 * Growable buffer, big endian like the fixed width format, except for the methods that explicitly say otherwise
+	 */
+	private static class Output {
+		private byte[] bytes;
+		private int position;
+
+		Output(int capacity) {
+			bytes = new byte[Math.max(capacity, 32)];
+		}
+
+		private void ensure(int extra) {
+			if (position + extra > bytes.length) {
+				bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, position + extra));
+			}
+		}
+
+		void put(byte value) {
+			ensure(1);
+			bytes[position++] = value;
+		}
+
+		void put(byte[] source, int offset, int length) {
+			ensure(length);
+			System.arraycopy(source, offset, bytes, position, length);
+			position += length;
+		}
+
+		void putShort(short value) {
+			put((byte) (value >> 8));
+			put((byte) value);
+		}
+
+		void putInt(int value) {
+			putShort((short) (value >> 16));
+			putShort((short) value);
+		}
+
+		void putLong(long value) {
+			putInt((int) (value >> 32));
+			putInt((int) value);
+		}
+
+		void putShortLittleEndian(short value) {
+			putShort(Short.reverseBytes(value));
+		}
+
+		void putLongLittleEndian(long value) {
+			putLong(Long.reverseBytes(value));
+		}
+
+		void putVarint(long value) {
+			while ((value & ~0x7FL) != 0) {
+				put((byte) ((value & 0x7F) | 0x80));
+				value >>>= 7;
+			}
+			put((byte) value);
+		}
+
+		static int varintSize(long value) {
+			int size = 1;
+			while ((value & ~0x7FL) != 0) {
+				value >>>= 7;
+				size++;
+			}
+			return size;
+		}
+
+		int size() {
+			return position;
+		}
+
+		byte[] toByteArray() {
+			return Arrays.copyOf(bytes, position);
+		}
+	}
+}
@@ -26,6 +26,7 @@ import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.TreeSet;
 import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
@@ -36,10 +37,12 @@ import org.bimserver.BimServer;
 import org.bimserver.BimserverDatabaseException;
 import org.bimserver.database.actions.AddUserDatabaseAction;
 import org.bimserver.database.actions.CreateBaseProjectDatabaseAction;
+import org.bimserver.database.berkeley.CommitLogReplicator;
 import org.bimserver.database.berkeley.DatabaseInitException;
 import org.bimserver.database.migrations.InconsistentModelsException;
 import org.bimserver.database.migrations.MigrationException;
 import org.bimserver.database.migrations.Migrator;
+import org.bimserver.database.statistics.RevisionStatisticsStore;
 import org.bimserver.emf.MetaDataManager;
 import org.bimserver.models.geometry.GeometryPackage;
 import org.bimserver.models.ifc2x3tc1.Ifc2x3tc1Package;
@@ -52,6 +55,7 @@ import org.bimserver.models.store.SmtpProtocol;
 import org.bimserver.models.store.StorePackage;
 import org.bimserver.models.store.User;
 import org.bimserver.models.store.UserType;
+import org.bimserver.shared.exceptions.ServiceException;
 import org.bimserver.shared.exceptions.UserException;
 import org.bimserver.utils.BinUtils;
 import org.bimserver.webservices.authorization.SystemAuthorization;
@@ -81,6 +85,8 @@ public class Database implements BimDatabase {
 	private final Map<EClass, AtomicLong> oidCounters = new HashMap<EClass, AtomicLong>();
 	private final AtomicInteger pidCounter = new AtomicInteger(1);
 	private final Registry registry;
+	private final RevisionStatisticsStore revisionStatisticsStore;
+	private final VisibilityIndex visibilityIndex;
 	private Date created;
 	final Set<DatabaseSession> sessions = Collections.newSetFromMap(new ConcurrentHashMap<DatabaseSession, Boolean>());
 	private int databaseSchemaVersion;
@@ -89,13 +95,17 @@ public class Database implements BimDatabase {
 	private final MetaDataManager metaDataManager;
 	private final BimServer bimServer;
 	private UUID uuid;
+	private volatile CommitLogReplicator replicator;
+	private CompactRecordCodec compactRecordCodec;
 
 	/*
 	 * This variable should be _incremented_ with every (released)
 	 * database-schema change. Do not change this variable when nothing has
-	 * changed in the schema!
+	 * changed in the schema! It has to be the number of the latest migration
+	 * step (StepXXXX), a step with a higher number would never be executed,
+	 * init refuses to start when they do not match.
 	 */
-	public static final int APPLICATION_SCHEMA_VERSION = 56;
+	public static final int APPLICATION_SCHEMA_VERSION = 59;
 
 	public Database(BimServer bimServer, Set<? extends EPackage> emfPackages, KeyValueStore keyValueStore, MetaDataManager metaDataManager) throws DatabaseInitException {
 		this.cidToEclass = new EClass[Short.MAX_VALUE]; 
@@ -109,6 +119,8 @@ public class Database implements BimDatabase {
 			this.emfPackages.put(ePackage.getName(), ePackage);
 		}
 		this.registry = new Registry(keyValueStore);
+		this.revisionStatisticsStore = new RevisionStatisticsStore(keyValueStore);
+		this.visibilityIndex = new VisibilityIndex();
 		if (DatabaseSession.DEVELOPER_DEBUG) {
 			new DatabaseSessionMonitor(this).start();
 		}
@@ -137,6 +149,7 @@ public class Database implements BimDatabase {
 				keyValueStore.createTable(CLASS_LOOKUP_TABLE, null, true);
 				keyValueStore.createTable(Database.STORE_PROJECT_NAME, null, true);
 				keyValueStore.createTable(Registry.REGISTRY_TABLE, null, true);
+				keyValueStore.createTable(RevisionStatisticsStore.REVISION_STATISTICS_TABLE, null, true);
 				setDatabaseVersion(-1, databaseSession);
 				created = new Date();
 				registry.save(DATE_CREATED, created, databaseSession);
@@ -146,6 +159,11 @@ public class Database implements BimDatabase {
 				keyValueStore.openTable(databaseSession, CLASS_LOOKUP_TABLE, true);
 				keyValueStore.openTable(databaseSession, Database.STORE_PROJECT_NAME, true);
 				keyValueStore.openTable(databaseSession, Registry.REGISTRY_TABLE, true);
+				if (keyValueStore.containsTable(RevisionStatisticsStore.REVISION_STATISTICS_TABLE)) {
+					keyValueStore.openTable(databaseSession, RevisionStatisticsStore.REVISION_STATISTICS_TABLE, true);
+				} else {
+					keyValueStore.createTable(RevisionStatisticsStore.REVISION_STATISTICS_TABLE, databaseSession, true);
+				}
 				created = registry.readDate(DATE_CREATED, databaseSession);
 				uuid = UUID.fromString(registry.readString(SERVER_UUID, databaseSession));
 				if (created == null) {
@@ -155,8 +173,12 @@ public class Database implements BimDatabase {
 			}
 			
 			databaseSchemaVersion = registry.readInt(SCHEMA_VERSION, databaseSession, -1);
+			initCompactRecords(databaseSession);
 			
 			migrator = new Migrator(this);
+			if (migrator.getLatestVersion() != APPLICATION_SCHEMA_VERSION) {
+				throw new BimserverDatabaseException("The latest migration is Step" + migrator.getLatestVersion() + " but APPLICATION_SCHEMA_VERSION is " + APPLICATION_SCHEMA_VERSION + ", these have to be changed together");
+			}
 
 			if (getKeyValueStore().isNew()) {
 				try {
@@ -220,6 +242,30 @@ public class Database implements BimDatabase {
 		}
 	}
 
+	/**
+	 * Enables the compact record format for the tables that have been converted, tables of older databases are converted by Step0058
+	 */
+	private void initCompactRecords(DatabaseSession databaseSession) throws BimserverDatabaseException {
+		compactRecordCodec = new CompactRecordCodec(metaDataManager, this::getEClassForCid);
+		Set<String> interrupted = new TreeSet<>();
+		for (String tableName : compactRecordCodec.getTableNames()) {
+			int state = registry.readInt(CompactRecordCodec.getRegistryKey(tableName), databaseSession, 0);
+			if (state == CompactRecordCodec.COMPACT) {
+				compactRecordCodec.enable(tableName);
+			} else if (state == CompactRecordCodec.CONVERTING) {
+				interrupted.add(tableName);
+			}
+		}
+		if (!interrupted.isEmpty()) {
+			throw new BimserverDatabaseException("The conversion to compact records has been interrupted for " + interrupted + ", these tables may contain records in both formats, restore the database from a backup");
+		}
+		keyValueStore.setRecordCodec(compactRecordCodec);
+	}
+
+	public CompactRecordCodec getCompactRecordCodec() {
+		return compactRecordCodec;
+	}
+
 	public ServerSettings createDefaultSettings(DatabaseSession databaseSession) throws BimserverDatabaseException {
 		ServerSettings settings = databaseSession.create(ServerSettings.class);
 		settings.setEmailSenderAddress("no-reply@bimserver.org");
@@ -360,15 +406,37 @@ public class Database implements BimDatabase {
 	}
 
 	public void close() {
+		if (replicator != null) {
+			replicator.stop();
+		}
 		keyValueStore.close();
 	}
 
+	/**
+	 * Makes this database a read replica, from now on only the replicator changes it and sessions cannot commit changes
+	 */
+	public void startReplication(CommitLogReplicator replicator) {
+		this.replicator = replicator;
+		replicator.start();
+	}
+
+	public CommitLogReplicator getReplicator() {
+		return replicator;
+	}
+
+	public boolean isReplica() {
+		return replicator != null;
+	}
+
 	public List<String> getAvailableClasses() {
 		return realClasses;
 	}
 
 	public DatabaseSession createSession(OperationType operationType) {
-		DatabaseSession databaseSession = new DatabaseSession(this, keyValueStore.startTransaction(), operationType);
+		// Taken before the transaction starts, see VisibilityIndex
+		long visibilityEpoch = visibilityIndex.getEpoch();
+		BimTransaction bimTransaction = operationType == OperationType.READ_ONLY ? keyValueStore.startReadOnlyTransaction() : keyValueStore.startTransaction();
+		DatabaseSession databaseSession = new DatabaseSession(this, bimTransaction, operationType, visibilityEpoch);
 		sessions.add(databaseSession);
 		return databaseSession;
 	}
@@ -396,6 +464,14 @@ public class Database implements BimDatabase {
 		return registry;
 	}
 
+	public RevisionStatisticsStore getRevisionStatisticsStore() {
+		return revisionStatisticsStore;
+	}
+
+	public VisibilityIndex getVisibilityIndex() {
+		return visibilityIndex;
+	}
+
 	public Date getCreated() {
 		return created;
 	}
@@ -423,6 +499,20 @@ public class Database implements BimDatabase {
 			} catch (BimserverDatabaseException e) {
 				LOGGER.error("", e);
 			}
+			String tableName = getTableName(eClass);
+			if (databaseSchemaVersion >= CompactRecordCodec.SCHEMA_VERSION && compactRecordCodec.handles(tableName)) {
+				// A new table has nothing to convert, the flag is committed before anything is written to the table
+				DatabaseSession flagSession = createSession(OperationType.POSSIBLY_WRITE);
+				try {
+					registry.save(CompactRecordCodec.getRegistryKey(tableName), CompactRecordCodec.COMPACT, flagSession);
+					flagSession.commit();
+				} catch (ServiceException e) {
+					throw new BimserverDatabaseException(e);
+				} finally {
+					flagSession.close();
+				}
+				compactRecordCodec.enable(tableName);
+			}
 			return true;
 		}
 		return false;
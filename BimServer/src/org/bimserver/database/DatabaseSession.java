@@ -39,7 +39,10 @@ import java.util.concurrent.ConcurrentHashMap;
 import org.bimserver.BimserverDatabaseException;
 import org.bimserver.ServerIfcModel;
 import org.bimserver.database.actions.BimDatabaseAction;
+import org.bimserver.database.berkeley.BerkeleyKeyValueStore;
 import org.bimserver.database.berkeley.BimserverConcurrentModificationDatabaseException;
+import org.bimserver.database.berkeley.CommitLog;
+import org.bimserver.database.berkeley.CommitLogReplicator;
 import org.bimserver.database.query.conditions.Condition;
 import org.bimserver.database.query.conditions.IsOfTypeCondition;
 import org.bimserver.emf.IdEObject;
@@ -113,6 +116,8 @@ public class DatabaseSession implements LazyLoader, OidProvider, DatabaseInterfa
 	private final Set<ServerIfcModel> serverModels = new HashSet<>();
 	private long reads;
 	private long createdAt;
+	private final long visibilityEpoch;
+	private Set<Integer> writtenPids;
 
 	public enum SessionState {
 		OPEN, CLOSED
@@ -123,10 +128,11 @@ public class DatabaseSession implements LazyLoader, OidProvider, DatabaseInterfa
 	private boolean error;
 	private final OperationType operationType;
 
-	public DatabaseSession(Database database, BimTransaction bimTransaction, OperationType operationType) {
+	public DatabaseSession(Database database, BimTransaction bimTransaction, OperationType operationType, long visibilityEpoch) {
 		this.database = database;
 		this.bimTransaction = bimTransaction;
 		this.operationType = operationType;
+		this.visibilityEpoch = visibilityEpoch;
 		this.createdAt = System.currentTimeMillis();
 //		if (DEVELOPER_DEBUG) {
 			this.stackTrace = Thread.currentThread().getStackTrace();
@@ -137,6 +143,28 @@ public class DatabaseSession implements LazyLoader, OidProvider, DatabaseInterfa
 		return createdAt;
 	}
 	
+	public VisibilityIndex getVisibilityIndex() {
+		return database.getVisibilityIndex();
+	}
+	
+	public long getVisibilityEpoch() {
+		return visibilityEpoch;
+	}
+	
+	/**
+	 * @return Whether this session has written (not yet committed) objects of the given project, its view of that project differs from other sessions
+	 */
+	public boolean hasWritten(int pid) {
+		return writtenPids != null && writtenPids.contains(pid);
+	}
+	
+	private void written(int pid) {
+		if (writtenPids == null) {
+			writtenPids = new HashSet<>();
+		}
+		writtenPids.add(pid);
+	}
+	
 	public void setOverwriteEnabled(boolean overwriteEnabled) {
 		this.overwriteEnabled = overwriteEnabled;
 	}
@@ -199,6 +227,9 @@ public class DatabaseSession implements LazyLoader, OidProvider, DatabaseInterfa
 		if (operationType == OperationType.READ_ONLY) {
 			throw new BimserverDatabaseException("Cannot commit READ_ONLY DatabaseSession");
 		}
+		if (database.isReplica() && (objectsToCommit != null || objectsToDelete != null)) {
+			throw new BimserverDatabaseException("This server is a read replica, changes can only be made on the primary server");
+		}
 		try {
 			if (progressHandler != null) {
 				progressHandler.progress(0, objectsToCommit == null ? 0 : objectsToCommit.size());
@@ -210,6 +241,7 @@ public class DatabaseSession implements LazyLoader, OidProvider, DatabaseInterfa
 				for (RecordIdentifierPlusType recordIdentifier : objectsToDelete) {
 					fillKeyBuffer(keyBuffer, recordIdentifier);
 					database.getKeyValueStore().storeNoOverwrite(recordIdentifier.getPackageName() + "_" + recordIdentifier.getClassName(), keyBuffer.array(), new byte[] { -1 }, this);
+					written(recordIdentifier.getPid());
 					writes++;
 				}
 			}
@@ -237,6 +269,7 @@ public class DatabaseSession implements LazyLoader, OidProvider, DatabaseInterfa
 						database.getKeyValueStore().store(object.eClass().getEPackage().getName() + "_" + object.eClass().getName(), keyBuffer.array(),
 								valueBuffer.array(), 0, valueBuffer.position(), this);
 					}
+					written(object.getPid());
 					if (progressHandler != null) {
 						progressHandler.progress(++current, objectsToCommit.size());
 					}
@@ -249,6 +282,11 @@ public class DatabaseSession implements LazyLoader, OidProvider, DatabaseInterfa
 				bimTransaction.commit();
 				database.getKeyValueStore().sync();
 			}
+			if (writtenPids != null) {
+				for (int pid : writtenPids) {
+					database.getVisibilityIndex().invalidate(pid);
+				}
+			}
 			database.incrementCommittedWrites(writes);
 			if (bimTransaction != null) {
 				bimTransaction.incUpdates(writes);
@@ -792,7 +830,7 @@ public class DatabaseSession implements LazyLoader, OidProvider, DatabaseInterfa
 				objectsToCommit = null;
 				startOids = null;
 				if (bimTransaction != null) {
-					bimTransaction = database.getKeyValueStore().startTransaction();
+					bimTransaction = startTransaction();
 				} else {
 					// No transaction used, no transactional rollback available/executed, but we still might have to clean up some stuff, see rollback listener
 				}
@@ -801,7 +839,7 @@ public class DatabaseSession implements LazyLoader, OidProvider, DatabaseInterfa
 				bimTransaction.rollback();
 				objectCache.clear();
 				objectsToCommit = null;
-				bimTransaction = database.getKeyValueStore().startTransaction();
+				bimTransaction = startTransaction();
 				if (DEVELOPER_DEBUG) {
 					LockConflictException lockException = e.getLockException();
 					if (lockException instanceof TransactionTimeoutException) {
@@ -825,7 +863,7 @@ public class DatabaseSession implements LazyLoader, OidProvider, DatabaseInterfa
 				bimTransaction.rollback();
 				objectCache.clear();
 				objectsToCommit = null;
-				bimTransaction = database.getKeyValueStore().startTransaction();
+				bimTransaction = startTransaction();
 			} catch (BimserverDatabaseException e) {
 				this.error = true;
 				bimTransaction.rollback();
@@ -1030,6 +1068,13 @@ public class DatabaseSession implements LazyLoader, OidProvider, DatabaseInterfa
 		return bimTransaction;
 	}
 
+	private BimTransaction startTransaction() {
+		if (operationType == OperationType.READ_ONLY) {
+			return database.getKeyValueStore().startReadOnlyTransaction();
+		}
+		return database.getKeyValueStore().startTransaction();
+	}
+
 	public short getCid(EClass eClass) throws BimserverDatabaseException {
 		Short cidOfEClass = database.getCidOfEClass(eClass);
 		if (cidOfEClass == null) {
@@ -1132,9 +1177,39 @@ public class DatabaseSession implements LazyLoader, OidProvider, DatabaseInterfa
 			scanner.close();
 		}
 		databaseInformation.setLocation(database.getKeyValueStore().getLocation());
+		addReplicationInformation(databaseInformation);
 		return databaseInformation;
 	}
 
+	private void addReplicationInformation(DatabaseInformation databaseInformation) {
+		DatabaseInformationCategory category = StoreFactory.eINSTANCE.createDatabaseInformationCategory();
+		category.setTitle("Replication");
+		CommitLogReplicator replicator = database.getReplicator();
+		if (replicator != null) {
+			addItem(category, "Role", "Replica");
+			addItem(category, "Commit log", replicator.getLogDirectory().toString());
+			addItem(category, "Last applied sequence", Long.toString(replicator.getLastAppliedSequence()));
+			addItem(category, "Applied entries", Long.toString(replicator.getAppliedEntries()));
+			addItem(category, "Caught up", Boolean.toString(replicator.isCaughtUp()));
+			addItem(category, "Lag (ms)", Long.toString(replicator.getLagMillis()));
+		} else if (database.getKeyValueStore() instanceof BerkeleyKeyValueStore && ((BerkeleyKeyValueStore) database.getKeyValueStore()).getCommitLog() != null) {
+			CommitLog commitLog = ((BerkeleyKeyValueStore) database.getKeyValueStore()).getCommitLog();
+			addItem(category, "Role", "Primary");
+			addItem(category, "Commit log", commitLog.getDirectory().toString());
+			addItem(category, "Last sequence", Long.toString(commitLog.getLastSequence()));
+		} else {
+			return;
+		}
+		databaseInformation.getCategories().add(category);
+	}
+
+	private void addItem(DatabaseInformationCategory category, String key, String value) {
+		DatabaseInformationItem item = StoreFactory.eINSTANCE.createDatabaseInformationItem();
+		item.setKey(key);
+		item.setValue(value);
+		category.getItems().add(item);
+	}
+
 	public EClass getEClass(short cid) throws BimserverDatabaseException {
 		return database.getEClassForCid(cid);
 	}
@@ -1186,6 +1261,36 @@ public class DatabaseSession implements LazyLoader, OidProvider, DatabaseInterfa
 
 	public enum GetResult {
 		STOP, CONTINUE_WITH_NEXT_RECORD, CONTINUE_WITH_NEXT_OID,
+		
+		/**
+		 * The record is a version that is newer than the revision being read, the visible version of the same oid can be sought directly
+		 */
+		SEEK_VISIBLE_VERSION
+	}
+
+	/**
+	 * Records are keyed (pid, oid, -rid), so the versions of an oid are ordered newest first.
+	 * 
+	 * @return The key the record iterator should seek to after getResult was returned for a record of keyOid, or null when the iterator should just move to the next record
+	 */
+	public static byte[] getSeekKey(GetResult getResult, int pid, long keyOid, int rid) {
+		switch (getResult) {
+		case CONTINUE_WITH_NEXT_OID: {
+			ByteBuffer nextKeyStart = ByteBuffer.allocate(12);
+			nextKeyStart.putInt(pid);
+			nextKeyStart.putLong(keyOid + 1);
+			return nextKeyStart.array();
+		}
+		case SEEK_VISIBLE_VERSION: {
+			ByteBuffer visibleKey = ByteBuffer.allocate(16);
+			visibleKey.putInt(pid);
+			visibleKey.putLong(keyOid);
+			visibleKey.putInt(-rid);
+			return visibleKey.array();
+		}
+		default:
+			return null;
+		}
 	}
 
 	private GetResult getMap(EClass originalQueryClass, EClass eClass, IfcModelInterface model, ByteBuffer buffer, int keyPid, long keyOid, int keyRid, QueryInterface query, TodoList todoList) throws BimserverDatabaseException {
@@ -1220,8 +1325,11 @@ public class DatabaseSession implements LazyLoader, OidProvider, DatabaseInterfa
 						return GetResult.CONTINUE_WITH_NEXT_OID;
 					}
 				}
+			} else if (keyRid > query.getRid()) {
+				return GetResult.SEEK_VISIBLE_VERSION;
 			} else {
-				return GetResult.CONTINUE_WITH_NEXT_RECORD;
+				// Older versions of this oid are below the stop rid as well
+				return GetResult.CONTINUE_WITH_NEXT_OID;
 			}
 		} else {
 			return GetResult.STOP;
@@ -1248,7 +1356,6 @@ public class DatabaseSession implements LazyLoader, OidProvider, DatabaseInterfa
 		}
 		try {
 			Record record = recordIterator.next();
-			ByteBuffer nextKeyStart = ByteBuffer.allocate(12);
 			while (record != null) {
 				if (Thread.currentThread().isInterrupted()) {
 					throw new BimserverThreadInterruptedException("Thread interrupted");
@@ -1260,14 +1367,8 @@ public class DatabaseSession implements LazyLoader, OidProvider, DatabaseInterfa
 				int keyRid = -keyBuffer.getInt();
 				ByteBuffer valueBuffer = ByteBuffer.wrap(record.getValue());
 				GetResult map = getMap(eClass, eClass, ifcModel, valueBuffer, keyPid, keyOid, keyRid, query, todoList);
-				if (map == GetResult.CONTINUE_WITH_NEXT_OID) {
-					nextKeyStart.position(0);
-					nextKeyStart.putInt(query.getPid());
-					nextKeyStart.putLong(keyOid + 1);
-					record = recordIterator.next(nextKeyStart.array());
-				} else {
-					record = recordIterator.next();
-				}
+				byte[] seekKey = getSeekKey(map, query.getPid(), keyOid, query.getRid());
+				record = seekKey == null ? recordIterator.next() : recordIterator.next(seekKey);
 			}
 		} finally {
 			recordIterator.close();
@@ -1319,7 +1420,6 @@ public class DatabaseSession implements LazyLoader, OidProvider, DatabaseInterfa
 		checkOpen();
 		try {
 			Record record = recordIterator.next();
-			ByteBuffer nextKeyStart = ByteBuffer.allocate(12);
 			while (record != null) {
 				reads++;
 				ByteBuffer keyBuffer = ByteBuffer.wrap(record.getKey());
@@ -1328,14 +1428,8 @@ public class DatabaseSession implements LazyLoader, OidProvider, DatabaseInterfa
 				int keyRid = -keyBuffer.getInt();
 				ByteBuffer valueBuffer = ByteBuffer.wrap(record.getValue());
 				GetResult map = getMap(eClass, eClass, model, valueBuffer, keyPid, keyOid, keyRid, query, todoList);
-				if (map == GetResult.CONTINUE_WITH_NEXT_OID) {
-					nextKeyStart.position(0);
-					nextKeyStart.putInt(query.getPid());
-					nextKeyStart.putLong(keyOid + 1);
-					record = recordIterator.next(nextKeyStart.array());
-				} else {
-					record = recordIterator.next();
-				}
+				byte[] seekKey = getSeekKey(map, query.getPid(), keyOid, query.getRid());
+				record = seekKey == null ? recordIterator.next() : recordIterator.next(seekKey);
 			}
 		} finally {
 			recordIterator.close();
@@ -2321,6 +2415,7 @@ public class DatabaseSession implements LazyLoader, OidProvider, DatabaseInterfa
 		EClass eClass = object.eClass();
 		ByteBuffer keyBuffer = createKeyBuffer(object.getPid(), object.getOid(), newRid);
 		database.getKeyValueStore().storeNoOverwrite(eClass.getEPackage().getName() + "_" + eClass.getName(), keyBuffer.array(), valueBuffer.array(), 0, valueBuffer.position(), this);
+		written(object.getPid());
 		
 		processPossibleIndices(keyBuffer, object.getPid(), object.getRid(), object.getOid(), object.eClass(), valueBuffer);
 		
@@ -2337,6 +2432,7 @@ public class DatabaseSession implements LazyLoader, OidProvider, DatabaseInterfa
 		EClass eClass = object.eClass();
 		ByteBuffer keyBuffer = createKeyBuffer(object.getPid(), object.getOid(), object.getRid());
 		database.getKeyValueStore().store(eClass.getEPackage().getName() + "_" + eClass.getName(), keyBuffer.array(), valueBuffer.array(), 0, valueBuffer.position(), this);
+		written(object.getPid());
 
 		processPossibleIndices(keyBuffer, object.getPid(), object.getRid(), object.getOid(), object.eClass(), valueBuffer);
 
@@ -2398,6 +2494,7 @@ public class DatabaseSession implements LazyLoader, OidProvider, DatabaseInterfa
 		EClass eClass = object.eClass();
 		String tableName = eClass.getEPackage().getName() + "_" + eClass.getName();
 		database.getKeyValueStore().storeNoOverwrite(tableName, keyBuffer.array(), new byte[] { -1 }, this);
+		written(object.getPid());
 		if (bimTransaction != null) {
 			bimTransaction.incUpdates(1);
 		}
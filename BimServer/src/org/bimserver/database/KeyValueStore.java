@@ -50,14 +50,24 @@ public interface KeyValueStore {
 
 	boolean isNew();
 
-	void delete(String tableName, byte[] key, DatabaseSession databaseSession) throws BimserverLockConflictException;
+	void delete(String tableName, byte[] key, DatabaseSession databaseSession) throws BimserverLockConflictException, BimserverDatabaseException;
 
 	String getLocation();
 
 	String getStats();
 
+	/**
+	 * @return JSON with the cache, cleaner and checkpointer statistics and the cache mode of every table
+	 */
+	String getCacheStatistics();
+
 	BimTransaction startTransaction();
 
+	/**
+	 * Starts a transaction for a READ_ONLY session, reading from a snapshot without locking
+	 */
+	BimTransaction startReadOnlyTransaction();
+
 	void commit(DatabaseSession databaseSession) throws BimserverDatabaseException, BimserverLockConflictException;
 
 	String getType();
@@ -73,6 +83,11 @@ public interface KeyValueStore {
 	void incrementReads(long reads);
 
 	void storeNoOverwrite(String tableName, byte[] key, byte[] value, int offset, int length, DatabaseSession databaseSession) throws BimserverDatabaseException, BimserverLockConflictException;
+
+	/**
+	 * From here on all values are encoded with the given codec before they are stored, and decoded after they are read
+	 */
+	void setRecordCodec(RecordCodec recordCodec);
 	
 	void store(String tableName, byte[] key, byte[] value, int offset, int length, DatabaseSession databaseSession) throws BimserverDatabaseException, BimserverLockConflictException;
 
@@ -84,7 +99,7 @@ public interface KeyValueStore {
 
 	List<byte[]> getDuplicates(String tableName, byte[] keyBytes, DatabaseSession databaseSession) throws BimserverDatabaseException;
 
-	void delete(String indexTableName, byte[] featureBytesOldIndex, byte[] array, DatabaseSession databaseSession) throws BimserverLockConflictException;
+	void delete(String indexTableName, byte[] featureBytesOldIndex, byte[] array, DatabaseSession databaseSession) throws BimserverLockConflictException, BimserverDatabaseException;
 
 	boolean isTransactional(DatabaseSession databaseSession, String tableName) throws BimserverDatabaseException;
 
@@ -0,0 +1,35 @@
+package org.bimserver.database;
+
+/******************************************************************************
+ * Copyright (C) 2009-2019  BIMserver.org
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see {@literal<http://www.gnu.org/licenses/>}.
+ *****************************************************************************/
+
+/**
+ * Translates between the record format DatabaseSession and HashMapVirtualObject read and write, and the format the KeyValueStore
+ * actually stores. Values of tables a codec does not know about are stored as they are.
+ */
+public interface RecordCodec {
+
+	/**
+	 * @return The bytes to store for the given value, or null when the value should be stored as it is
+	 */
+	byte[] encode(String tableName, byte[] value, int offset, int length);
+
+	/**
+	 * @return The value in the format readers expect, for tables this codec does not handle the stored bytes are returned
+	 */
+	byte[] decode(String tableName, byte[] stored);
+}
@@ -47,7 +47,11 @@ public class RecordSizeEstimater {
 			for (EClassifier eClassifier : ePackage.getEClassifiers()) {
 				if (eClassifier instanceof EClass) {
 					EClass eClass = (EClass)eClassifier;
-					bufferSizeEstimates.put(eClass, estimateBufferSize(eClass));
+					try {
+						bufferSizeEstimates.put(eClass, estimateBufferSize(eClass));
+					} catch (RuntimeException e) {
+						// Unimplemented data type, this class will not have an estimate
+					}
 				}
 			}
 		}
@@ -102,6 +106,10 @@ public class RecordSizeEstimater {
 		return bufferSizeEstimates.get(eClass);
 	}
 
+	public boolean hasEstimate(EClass eClass) {
+		return bufferSizeEstimates.containsKey(eClass);
+	}
+
 	public void adjustBasedOnDefault(GrowingByteBuffer buffer, EClass eClass, int size) {
 		if (size > AVERAGE_REFERENCE_LIST_SIZE) {
 			buffer.ensureExtraCapacity(10 * (size - AVERAGE_REFERENCE_LIST_SIZE));
@@ -0,0 +1,111 @@
+package org.bimserver.database;
+/******************************************************************************
+ * Copyright (C) 2009-2019  BIMserver.org
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see {@literal<http://www.gnu.org/licenses/>}.
+ *****************************************************************************/
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Keeps, per concrete revision (pid, rid and stop rid) and type table, the sorted oids of which a version is visible in that revision.
+ *
+ * Object records are keyed (pid, oid, -rid), so a type scan reads every stored version of every oid, including oids that have been
+ * deleted. With the oids of an entry a scan can seek directly to the visible version of every live oid instead. Entries are only created
+ * by scans that skipped at least as many records as they returned, for other tables the plain scan is cheaper than seeking.
+ *
+ * A project's entries are dropped as soon as a transaction that wrote objects of that project has committed. Sessions that were started
+ * before that can neither use nor create entries of that project (they might be looking at the data from before the commit).
+ */
+public class VisibilityIndex {
+	// Around 32MB of oids
+	public static final long MAX_OIDS = 4000000;
+
+	private static class Entry {
+		private final int pid;
+		private final long[] oids;
+
+		private Entry(int pid, long[] oids) {
+			this.pid = pid;
+			this.oids = oids;
+		}
+	}
+
+	private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+	private final Map<Integer, Long> invalidatedAt = new HashMap<>();
+	private long epoch;
+	private long size;
+
+	/**
+	 * Must be called before the transaction of a session is started, the result is passed to get and put by that session
+	 */
+	public synchronized long getEpoch() {
+		return epoch;
+	}
+
+	/**
+	 * @return The sorted visible oids >= startOid, or null when there is no (usable) entry
+	 */
+	public synchronized long[] get(int pid, int rid, int stopRid, String tableName, long startOid, long sessionEpoch) {
+		if (!isCurrent(pid, sessionEpoch)) {
+			return null;
+		}
+		Entry entry = entries.get(key(pid, rid, stopRid, tableName, startOid));
+		return entry == null ? null : entry.oids;
+	}
+
+	public synchronized void put(int pid, int rid, int stopRid, String tableName, long startOid, long sessionEpoch, long[] oids) {
+		if (!isCurrent(pid, sessionEpoch) || oids.length > MAX_OIDS) {
+			return;
+		}
+		Entry previous = entries.put(key(pid, rid, stopRid, tableName, startOid), new Entry(pid, oids));
+		if (previous != null) {
+			size -= previous.oids.length;
+		}
+		size += oids.length;
+		Iterator<Entry> iterator = entries.values().iterator();
+		while (size > MAX_OIDS && iterator.hasNext()) {
+			size -= iterator.next().oids.length;
+			iterator.remove();
+		}
+	}
+
+	/**
+	 * Called after a transaction that wrote objects of the given project has been committed
+	 */
+	public synchronized void invalidate(int pid) {
+		epoch++;
+		invalidatedAt.put(pid, epoch);
+		Iterator<Entry> iterator = entries.values().iterator();
+		while (iterator.hasNext()) {
+			Entry entry = iterator.next();
+			if (entry.pid == pid) {
+				size -= entry.oids.length;
+				iterator.remove();
+			}
+		}
+	}
+
+	private boolean isCurrent(int pid, long sessionEpoch) {
+		Long at = invalidatedAt.get(pid);
+		return at == null || at <= sessionEpoch;
+	}
+
+	private String key(int pid, int rid, int stopRid, String tableName, long startOid) {
+		return pid + "-" + rid + "-" + stopRid + "-" + tableName + "-" + startOid;
+	}
+}
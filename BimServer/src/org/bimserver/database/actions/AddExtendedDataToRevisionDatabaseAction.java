@@ -55,7 +55,7 @@ public class AddExtendedDataToRevisionDatabaseAction extends AddDatabaseAction<E
 		getIdEObject().setUser(actingUser);
 		getIdEObject().setAdded(new Date());
 		File file = getIdEObject().getFile();
-		getIdEObject().setSize(file.getData().length);
+		getIdEObject().setSize(file.getData() != null ? file.getData().length : file.getSize());
 		super.execute();
 		Revision revision = getRevisionByRoid(roid);
 		if (revision == null) {
@@ -38,6 +38,8 @@ import org.bimserver.database.OldQuery.Deep;
 import org.bimserver.database.OperationType;
 import org.bimserver.database.PostCommitAction;
 import org.bimserver.database.queries.om.QueryException;
+import org.bimserver.database.statistics.RevisionStatistics;
+import org.bimserver.database.statistics.RevisionStatisticsCollector;
 import org.bimserver.emf.PackageMetaData;
 import org.bimserver.geometry.GeometryGenerationReport;
 import org.bimserver.geometry.StreamingGeometryGenerator;
@@ -229,6 +231,7 @@ public class CommitTransactionDatabaseAction extends GenericCheckinDatabaseActio
 		queryContext.setOidCounters(originalOidCounters);
 		concreteRevision.setOidCounters(originalOidCounters == null ? null : originalOidCounters.getBytes());
 
+		RevisionStatisticsCollector statisticsCollector = new RevisionStatisticsCollector();
 		if (getBimServer().getServerSettingsCache().getServerSettings().isGenerateGeometryOnCheckin()) {
 			if (regenerateAllGeometry) {
 				setProgress("Generating Geometry...", -1);
@@ -240,6 +243,8 @@ public class CommitTransactionDatabaseAction extends GenericCheckinDatabaseActio
 					report.setOriginalIfcFileSize(-1);
 					
 					StreamingGeometryGenerator streamingGeometryGenerator = new StreamingGeometryGenerator(getBimServer(), null, -1L, report);
+					statisticsCollector.resolveGroups(getDatabaseSession(), getBimServer(), packageMetaData, newRoid);
+					streamingGeometryGenerator.setStatisticsCollector(statisticsCollector);
 	
 					GenerateGeometryResult generateGeometry = streamingGeometryGenerator.generateGeometry(authorization.getUoid(), getDatabaseSession(), queryContext, summaryMap.count());
 					
@@ -316,12 +321,19 @@ public class CommitTransactionDatabaseAction extends GenericCheckinDatabaseActio
 					
 					// TODO validate this, contains ids?
 					newRevision.setDensityCollection(previousRevision.getDensityCollection());
+
+					RevisionStatistics previousStatistics = getBimServer().getDatabase().getRevisionStatisticsStore().get(previousRevision.getOid(), getDatabaseSession());
+					if (previousStatistics != null) {
+						statisticsCollector.getStatistics().replaceGeometry(previousStatistics);
+					}
 					revision.setHasGeometry(true);
 				}
 			}
 		}
 		
 		concreteRevision.setSummary(summaryMap.toRevisionSummary(getDatabaseSession()));
+		statisticsCollector.addObjectCounts(summaryMap.getSummaryMap());
+		getBimServer().getDatabase().getRevisionStatisticsStore().store(newRoid, statisticsCollector.getStatistics(), getDatabaseSession());
 
 		getDatabaseSession().store(concreteRevision);
 		getDatabaseSession().store(project);
@@ -0,0 +1,122 @@
+package org.bimserver.database.actions;
+
+/******************************************************************************
+ * Copyright (C) 2009-2019  BIMserver.org
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see {@literal<http://www.gnu.org/licenses/>}.
+ *****************************************************************************/
+
+import java.util.Arrays;
+import java.util.Date;
+
+import org.bimserver.BimServer;
+import org.bimserver.BimserverDatabaseException;
+import org.bimserver.database.BimserverLockConflictException;
+import org.bimserver.database.DatabaseSession;
+import org.bimserver.database.PostCommitAction;
+import org.bimserver.database.statistics.RevisionStatistics;
+import org.bimserver.models.log.AccessMethod;
+import org.bimserver.models.store.ConcreteRevision;
+import org.bimserver.models.store.Project;
+import org.bimserver.models.store.Revision;
+import org.bimserver.models.store.User;
+import org.bimserver.notifications.NewRevisionNotification;
+import org.bimserver.shared.exceptions.UserException;
+import org.bimserver.uploads.DuplicateCheckinPolicy;
+import org.bimserver.webservices.authorization.Authorization;
+
+/**
+ * Applies the DuplicateCheckinPolicy to a checkin of a file with the given SHA-256, before the file is deserialized.
+ * 
+ * Returns null when the file is not the same as the file of the last revision of the project (or the policy is OFF), the file has to be
+ * checked in as usual then. Otherwise returns the roid of the last revision (SKIP) or of a new revision that uses the concrete revisions
+ * of the last revision (REUSE). Projects that have a parent or subprojects are always handled as SKIP, their revisions are combinations
+ * of concrete revisions of multiple projects.
+ */
+public class DuplicateCheckinDatabaseAction extends BimDatabaseAction<Long> {
+
+	private final BimServer bimServer;
+	private final long poid;
+	private final byte[] checksum;
+	private final String comment;
+	private final DuplicateCheckinPolicy policy;
+	private final Authorization authorization;
+
+	public DuplicateCheckinDatabaseAction(BimServer bimServer, DatabaseSession databaseSession, AccessMethod accessMethod, long poid, byte[] checksum, String comment, DuplicateCheckinPolicy policy, Authorization authorization) {
+		super(databaseSession, accessMethod);
+		this.bimServer = bimServer;
+		this.poid = poid;
+		this.checksum = checksum;
+		this.comment = comment;
+		this.policy = policy;
+		this.authorization = authorization;
+	}
+
+	@Override
+	public Long execute() throws UserException, BimserverLockConflictException, BimserverDatabaseException {
+		if (policy == DuplicateCheckinPolicy.OFF) {
+			return null;
+		}
+		authorization.canCheckin(poid);
+		Project project = getProjectByPoid(poid);
+		if (project == null) {
+			throw new UserException("Project with poid " + poid + " not found");
+		}
+		Revision lastRevision = project.getLastRevision();
+		ConcreteRevision lastConcreteRevision = project.getLastConcreteRevision();
+		if (lastRevision == null || lastConcreteRevision == null || lastConcreteRevision.getChecksum() == null || !Arrays.equals(lastConcreteRevision.getChecksum(), checksum)) {
+			return null;
+		}
+		if (policy == DuplicateCheckinPolicy.SKIP || project.getParent() != null || !project.getSubProjects().isEmpty()) {
+			return lastRevision.getOid();
+		}
+		User user = getUserByUoid(authorization.getUoid());
+		Revision revision = getDatabaseSession().create(Revision.class);
+		revision.setComment(comment);
+		revision.setDate(new Date());
+		revision.setUser(user);
+		revision.setId(project.getRevisions().size() + 1);
+		revision.setSize(lastRevision.getSize());
+		revision.setLastConcreteRevision(lastRevision.getLastConcreteRevision());
+		revision.setHasGeometry(lastRevision.isHasGeometry());
+		revision.setBounds(lastRevision.getBounds());
+		revision.setBoundsUntransformed(lastRevision.getBoundsUntransformed());
+		revision.setBoundsMm(lastRevision.getBoundsMm());
+		revision.setBoundsUntransformedMm(lastRevision.getBoundsUntransformedMm());
+		revision.setDensityCollection(lastRevision.getDensityCollection());
+		revision.setNrPrimitives(lastRevision.getNrPrimitives());
+		for (ConcreteRevision concreteRevision : lastRevision.getConcreteRevisions()) {
+			revision.getConcreteRevisions().add(concreteRevision);
+			getDatabaseSession().store(concreteRevision);
+		}
+		revision.setProject(project);
+		project.setLastRevision(revision);
+		getDatabaseSession().store(revision);
+		getDatabaseSession().store(project);
+
+		RevisionStatistics revisionStatistics = bimServer.getDatabase().getRevisionStatisticsStore().get(lastRevision.getOid(), getDatabaseSession());
+		if (revisionStatistics != null) {
+			bimServer.getDatabase().getRevisionStatisticsStore().store(revision.getOid(), revisionStatistics, getDatabaseSession());
+		}
+
+		final long roid = revision.getOid();
+		getDatabaseSession().addPostCommitAction(new PostCommitAction() {
+			@Override
+			public void execute() throws UserException {
+				bimServer.getNotificationsManager().notify(new NewRevisionNotification(bimServer, poid, roid, authorization));
+			}
+		});
+		return roid;
+	}
+}
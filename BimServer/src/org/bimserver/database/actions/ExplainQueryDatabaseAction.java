@@ -0,0 +1,81 @@
+package org.bimserver.database.actions;
+
+/******************************************************************************
+ * Copyright (C) 2009-2019  BIMserver.org
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see {@literal<http://www.gnu.org/licenses/>}.
+ *****************************************************************************/
+
+import java.io.IOException;
+import java.util.Set;
+
+import org.bimserver.BimServer;
+import org.bimserver.BimserverDatabaseException;
+import org.bimserver.database.BimserverLockConflictException;
+import org.bimserver.database.DatabaseSession;
+import org.bimserver.database.OldQuery;
+import org.bimserver.database.queries.QueryObjectProvider;
+import org.bimserver.database.queries.om.QueryException;
+import org.bimserver.emf.PackageMetaData;
+import org.bimserver.models.log.AccessMethod;
+import org.bimserver.models.store.Revision;
+import org.bimserver.models.store.StorePackage;
+import org.bimserver.shared.HashMapVirtualObject;
+import org.bimserver.shared.exceptions.UserException;
+import org.bimserver.webservices.authorization.Authorization;
+
+/**
+ * Runs a query without serializing the results and returns the access paths the QueryPlanner chose, with the number of records read
+ */
+public class ExplainQueryDatabaseAction extends BimDatabaseAction<String> {
+
+	private final BimServer bimServer;
+	private final Set<Long> roids;
+	private final String jsonQuery;
+	private final Authorization authorization;
+
+	public ExplainQueryDatabaseAction(BimServer bimServer, DatabaseSession databaseSession, AccessMethod accessMethod, Set<Long> roids, String jsonQuery, Authorization authorization) {
+		super(databaseSession, accessMethod);
+		this.bimServer = bimServer;
+		this.roids = roids;
+		this.jsonQuery = jsonQuery;
+		this.authorization = authorization;
+	}
+
+	@Override
+	public String execute() throws UserException, BimserverLockConflictException, BimserverDatabaseException {
+		if (roids == null || roids.isEmpty()) {
+			throw new UserException("No revisions given");
+		}
+		for (long roid : roids) {
+			authorization.canDownload(roid);
+		}
+		Revision revision = getDatabaseSession().get(StorePackage.eINSTANCE.getRevision(), roids.iterator().next(), OldQuery.getDefault());
+		if (revision == null) {
+			throw new UserException("Revision with roid " + roids.iterator().next() + " not found");
+		}
+		PackageMetaData packageMetaData = bimServer.getMetaDataManager().getPackageMetaData(revision.getProject().getSchema());
+		try {
+			QueryObjectProvider queryObjectProvider = QueryObjectProvider.fromJsonString(getDatabaseSession(), bimServer, jsonQuery, roids, packageMetaData);
+			// The plan is made while the query runs
+			HashMapVirtualObject next = queryObjectProvider.next();
+			while (next != null) {
+				next = queryObjectProvider.next();
+			}
+			return queryObjectProvider.explain().toString();
+		} catch (QueryException | IOException e) {
+			throw new UserException(e);
+		}
+	}
+}
@@ -0,0 +1,115 @@
+package org.bimserver.database.actions;
+
+/******************************************************************************
+ * Copyright (C) 2009-2019  BIMserver.org
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see {@literal<http://www.gnu.org/licenses/>}.
+ *****************************************************************************/
+
+import java.util.Map;
+import java.util.Set;
+
+import org.bimserver.BimServer;
+import org.bimserver.BimserverDatabaseException;
+import org.bimserver.database.BimserverLockConflictException;
+import org.bimserver.database.DatabaseSession;
+import org.bimserver.database.OldQuery;
+import org.bimserver.database.OperationType;
+import org.bimserver.database.statistics.Aggregate;
+import org.bimserver.database.statistics.RevisionStatistics;
+import org.bimserver.database.statistics.RevisionStatisticsCollector;
+import org.bimserver.models.log.AccessMethod;
+import org.bimserver.models.store.Revision;
+import org.bimserver.models.store.StorePackage;
+import org.bimserver.shared.exceptions.ServiceException;
+import org.bimserver.shared.exceptions.UserException;
+import org.bimserver.webservices.authorization.Authorization;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+/**
+ * Combines the stored RevisionStatistics of the given revisions, only the statistics table is read. Revisions without stored
+ * statistics (checked in before statistics were kept) are computed once from the stored model and then stored.
+ */
+public class GetAggregatedStatisticsDatabaseAction extends BimDatabaseAction<String> {
+	private static final Logger LOGGER = LoggerFactory.getLogger(GetAggregatedStatisticsDatabaseAction.class);
+
+	private final BimServer bimServer;
+	private final Set<Long> roids;
+	private final String groupBy;
+	private final Authorization authorization;
+
+	public GetAggregatedStatisticsDatabaseAction(BimServer bimServer, DatabaseSession databaseSession, AccessMethod accessMethod, Set<Long> roids, String groupBy, Authorization authorization) {
+		super(databaseSession, accessMethod);
+		this.bimServer = bimServer;
+		this.roids = roids;
+		this.groupBy = groupBy;
+		this.authorization = authorization;
+	}
+
+	@Override
+	public String execute() throws UserException, BimserverLockConflictException, BimserverDatabaseException {
+		if (groupBy != null && !groupBy.isEmpty() && !RevisionStatistics.isValidGroupBy(groupBy)) {
+			throw new UserException("Unknown groupBy \"" + groupBy + "\", use one of \"" + RevisionStatistics.GROUP_BY_TYPE + "\", \"" + RevisionStatistics.GROUP_BY_STOREY + "\" or \"" + RevisionStatistics.GROUP_BY_CLASSIFICATION + "\"");
+		}
+		RevisionStatistics combined = new RevisionStatistics();
+		ObjectNode result = JsonNodeFactory.instance.objectNode();
+		ArrayNode included = result.putArray("roids");
+		ArrayNode missing = result.putArray("missing");
+		for (long roid : roids) {
+			authorization.canDownload(roid);
+			RevisionStatistics revisionStatistics = bimServer.getDatabase().getRevisionStatisticsStore().get(roid, getDatabaseSession());
+			if (revisionStatistics == null) {
+				revisionStatistics = backfill(roid);
+			}
+			if (revisionStatistics == null) {
+				missing.add(roid);
+			} else {
+				included.add(roid);
+				combined.add(revisionStatistics);
+			}
+		}
+		ObjectNode objectCounts = result.putObject("objectCounts");
+		for (Map.Entry<String, Long> entry : combined.getObjectCounts().entrySet()) {
+			objectCounts.put(entry.getKey(), entry.getValue());
+		}
+		result.set("total", combined.getTotal().toJson());
+		if (groupBy != null && !groupBy.isEmpty()) {
+			result.put("groupBy", groupBy);
+			Map<String, Aggregate> groups = combined.getGroups(groupBy);
+			result.set("groups", RevisionStatistics.toJson(groups));
+		}
+		return result.toString();
+	}
+
+	private RevisionStatistics backfill(long roid) throws BimserverDatabaseException {
+		Revision revision = getDatabaseSession().get(StorePackage.eINSTANCE.getRevision(), roid, OldQuery.getDefault());
+		if (revision == null) {
+			return null;
+		}
+		RevisionStatistics revisionStatistics = RevisionStatisticsCollector.collect(getDatabaseSession(), bimServer, revision);
+		// This action runs read only, the computed statistics are stored in their own session
+		try (DatabaseSession session = bimServer.getDatabase().createSession(OperationType.POSSIBLY_WRITE)) {
+			bimServer.getDatabase().getRevisionStatisticsStore().store(roid, revisionStatistics, session);
+			session.commit();
+		} catch (BimserverDatabaseException | ServiceException e) {
+			LOGGER.error("Could not store statistics of revision " + roid, e);
+		}
+		return revisionStatistics;
+	}
+}
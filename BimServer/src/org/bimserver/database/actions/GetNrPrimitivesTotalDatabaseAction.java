@@ -25,6 +25,7 @@ import org.bimserver.BimserverDatabaseException;
 import org.bimserver.database.BimserverLockConflictException;
 import org.bimserver.database.DatabaseSession;
 import org.bimserver.database.OldQuery;
+import org.bimserver.database.statistics.RevisionStatistics;
 import org.bimserver.models.log.AccessMethod;
 import org.bimserver.models.store.ExtendedData;
 import org.bimserver.models.store.Revision;
@@ -81,6 +82,12 @@ public class GetNrPrimitivesTotalDatabaseAction extends BimDatabaseAction<Long>
 			long totalPrimitives = 0;
 			
 			for (long roid : roids) {
+				RevisionStatistics revisionStatistics = bimServer.getDatabase().getRevisionStatisticsStore().get(roid, getDatabaseSession());
+				if (revisionStatistics != null) {
+					totalPrimitives += revisionStatistics.getTotal().getTriangles();
+					continue;
+				}
+				// Revisions from before statistics were kept
 				Revision revision = getDatabaseSession().get(roid, OldQuery.getDefault());
 				for (ExtendedData extendedData : revision.getExtendedData()) {
 					// TODO ugly
@@ -17,15 +17,22 @@ package org.bimserver.database.actions;
  * along with this program.  If not, see {@literal<http://www.gnu.org/licenses/>}.
  *****************************************************************************/
 
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.List;
 
 import org.bimserver.BimServer;
 import org.bimserver.BimserverDatabaseException;
 import org.bimserver.GenerateGeometryResult;
 import org.bimserver.GeometryGeneratingException;
+import org.bimserver.SummaryMap;
 import org.bimserver.database.BimserverLockConflictException;
 import org.bimserver.database.DatabaseSession;
 import org.bimserver.database.OldQuery;
+import org.bimserver.database.PostCommitAction;
+import org.bimserver.database.statistics.RevisionStatistics;
+import org.bimserver.database.statistics.RevisionStatisticsCollector;
+import org.bimserver.database.statistics.RevisionStatisticsStore;
 import org.bimserver.emf.PackageMetaData;
 import org.bimserver.geometry.GeometryGenerationReport;
 import org.bimserver.geometry.StreamingGeometryGenerator;
@@ -82,11 +89,26 @@ public class RegenerateGeometryDatabaseAction extends ProjectBasedDatabaseAction
 
 		QueryContext queryContext = new QueryContext(getDatabaseSession(), packageMetaData, revision.getProject().getId(), revision.getId(), roid, concreteRevision.getOid(), highestStopId);
 		try {
+			RevisionStatisticsCollector statisticsCollector = new RevisionStatisticsCollector();
+			statisticsCollector.resolveGroups(getDatabaseSession(), bimServer, packageMetaData, roid);
+			streamingGeometryGenerator.setStatisticsCollector(statisticsCollector);
+
 			GenerateGeometryResult generateGeometry = streamingGeometryGenerator.generateGeometry(uoid, getDatabaseSession(), queryContext, 1000); // TODO get the actual amount of products
 			
+			final List<Long> roids = new ArrayList<>();
 			for (Revision other : concreteRevision.getRevisions()) {
 				other.setHasGeometry(true);
+				roids.add(other.getOid());
 			}
+			getDatabaseSession().addPostCommitAction(new PostCommitAction() {
+				@Override
+				public void execute() throws UserException {
+					// Cached query results of these revisions contain the old geometry
+					for (long otherRoid : roids) {
+						bimServer.getNewDiskCacheManager().invalidate(otherRoid);
+					}
+				}
+			});
 			
 			concreteRevision.setMultiplierToMm(generateGeometry.getMultiplierToMm());
 			concreteRevision.setBounds(generateGeometry.getBounds());
@@ -97,6 +119,18 @@ public class RegenerateGeometryDatabaseAction extends ProjectBasedDatabaseAction
 
 			storeExtendedData(htmlBytes, "text/html", "html", revision);
 			storeExtendedData(jsonBytes, "application/json", "json", revision);
+
+			RevisionStatisticsStore revisionStatisticsStore = bimServer.getDatabase().getRevisionStatisticsStore();
+			RevisionStatistics revisionStatistics = revisionStatisticsStore.get(roid, getDatabaseSession());
+			if (revisionStatistics == null) {
+				revisionStatistics = statisticsCollector.getStatistics();
+				if (concreteRevision.getSummary() != null) {
+					statisticsCollector.addObjectCounts(new SummaryMap(packageMetaData, concreteRevision.getSummary()).getSummaryMap());
+				}
+			} else {
+				revisionStatistics.replaceGeometry(statisticsCollector.getStatistics());
+			}
+			revisionStatisticsStore.store(roid, revisionStatistics, getDatabaseSession());
 			
 			getDatabaseSession().store(revision);
 			getDatabaseSession().store(concreteRevision);
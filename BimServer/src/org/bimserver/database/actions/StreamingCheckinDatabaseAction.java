@@ -22,6 +22,8 @@ import java.io.InputStream;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.nio.FloatBuffer;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
 import java.util.Collections;
 import java.util.Date;
 import java.util.Map;
@@ -45,11 +47,14 @@ import org.bimserver.database.queries.QueryObjectProvider;
 import org.bimserver.database.queries.om.Include;
 import org.bimserver.database.queries.om.Query;
 import org.bimserver.database.queries.om.QueryPart;
+import org.bimserver.database.statistics.RevisionStatisticsCollector;
 import org.bimserver.emf.PackageMetaData;
 import org.bimserver.geometry.GeometryGenerationReport;
 import org.bimserver.geometry.Matrix;
 import org.bimserver.geometry.StreamingGeometryGenerator;
 import org.bimserver.mail.MailSystem;
+import org.bimserver.memory.MemoryEstimator;
+import org.bimserver.memory.MemoryReservation;
 import org.bimserver.models.geometry.Bounds;
 import org.bimserver.models.geometry.Buffer;
 import org.bimserver.models.geometry.GeometryPackage;
@@ -80,6 +85,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.google.common.base.Charsets;
+import com.google.common.io.ByteStreams;
 
 public class StreamingCheckinDatabaseAction extends GenericCheckinDatabaseAction {
 
@@ -98,6 +104,7 @@ public class StreamingCheckinDatabaseAction extends GenericCheckinDatabaseAction
 	private PackageMetaData packageMetaData;
 	private PluginBundleVersion pluginBundleVersion;
 	private long topicId;
+	private MemoryReservation memoryReservation;
 
 	public StreamingCheckinDatabaseAction(BimServer bimServer, DatabaseSession databaseSession, AccessMethod accessMethod, long poid, Authorization authorization, String comment, String fileName, InputStream inputStream, StreamingDeserializer deserializer, long fileSize, long newServiceId, PluginBundleVersion pluginBundleVersion, long topicId) {
 		super(bimServer, databaseSession, accessMethod);
@@ -193,7 +200,17 @@ public class StreamingCheckinDatabaseAction extends GenericCheckinDatabaseAction
 			});
 			
 			// This will read the full stream of objects and write to the database directly
-			long size = deserializer.read(inputStream, fileName, fileSize, queryContext);
+			MessageDigest messageDigest = MessageDigest.getInstance("SHA-256");
+			DigestInputStream digestInputStream = new DigestInputStream(inputStream, messageDigest);
+			long size = deserializer.read(digestInputStream, fileName, fileSize, queryContext);
+			// The deserializer can stop before the end of the file (trailing whitespace), the checksum has to be the one of the whole file
+			byte[] checksum = null;
+			try {
+				ByteStreams.exhaust(digestInputStream);
+				checksum = messageDigest.digest();
+			} catch (IOException e) {
+				// Closed by the deserializer, no checksum for this revision
+			}
 			
 			Set<EClass> eClasses = deserializer.getSummaryMap().keySet();
 			Map<String, Long> startOids = getDatabaseSession().getStartOids();
@@ -223,6 +240,9 @@ public class StreamingCheckinDatabaseAction extends GenericCheckinDatabaseAction
 				}
 			};
 			
+			RevisionStatisticsCollector statisticsCollector = new RevisionStatisticsCollector();
+			statisticsCollector.addObjectCounts(deserializer.getSummaryMap());
+
 			GeometryGenerationReport report = null;
 			if (getBimServer().getServerSettingsCache().getServerSettings().isGenerateGeometryOnCheckin()) {
 				report = new GeometryGenerationReport();
@@ -231,6 +251,8 @@ public class StreamingCheckinDatabaseAction extends GenericCheckinDatabaseAction
 				report.setNumberOfObjects(size);
 				report.setOriginalDeserializer(pluginBundleVersion.getGroupId() + "." + pluginBundleVersion.getArtifactId() + ":" + pluginBundleVersion.getVersion());
 				StreamingGeometryGenerator geometryGenerator = new StreamingGeometryGenerator(getBimServer(), progressListener, -1L, report);
+				statisticsCollector.resolveGroups(getDatabaseSession(), getBimServer(), packageMetaData, newRoid);
+				geometryGenerator.setStatisticsCollector(statisticsCollector);
 				setProgress("Generating geometry...", 0);
 
 				GenerateGeometryResult generateGeometry = geometryGenerator.generateGeometry(getActingUid(), getDatabaseSession(), queryContext, size);
@@ -245,6 +267,13 @@ public class StreamingCheckinDatabaseAction extends GenericCheckinDatabaseAction
 				// TODO terrible code, but had to get it going quickly, will cleanup later
 				
 				generateDensityAndBounds(result, generateGeometry, concreteRevision);
+
+				MemoryEstimator memoryEstimator = getBimServer().getMemoryGovernor().getMemoryEstimator();
+				if (memoryReservation != null) {
+					// Geometry generation is the most memory intensive part of the checkin
+					memoryReservation.release(memoryEstimator.estimateGeometryGeneration(fileSize));
+				}
+				memoryEstimator.addGeometryGenerationReport(bytesRead.get(), report.getNumberOfTrianglesIncludingReuse());
 			}
 			
 			final GeometryGenerationReport finalReport = report;
@@ -305,9 +334,8 @@ public class StreamingCheckinDatabaseAction extends GenericCheckinDatabaseAction
 				concreteRevision.setIfcHeader(ifcHeader);
 			}
 			project.getConcreteRevisions().add(concreteRevision);
-//			if (getModel() != null) {
-//				concreteRevision.setChecksum(getModel().getModelMetaData().getChecksum());
-//			}
+			// Used to detect duplicate checkins, see DuplicateCheckinDatabaseAction
+			concreteRevision.setChecksum(checksum);
 			final NewRevisionAdded newRevisionAdded = getDatabaseSession().create(NewRevisionAdded.class);
 			newRevisionAdded.setDate(new Date());
 			newRevisionAdded.setExecutor(user);
@@ -319,6 +347,7 @@ public class StreamingCheckinDatabaseAction extends GenericCheckinDatabaseAction
 			}
 
 			concreteRevision.setSummary(new SummaryMap(packageMetaData, deserializer.getSummaryMap()).toRevisionSummary(getDatabaseSession()));
+			getBimServer().getDatabase().getRevisionStatisticsStore().store(newRoid, statisticsCollector.getStatistics(), getDatabaseSession());
 
 			// If this revision is being created by an external service, store a link to the service in the revision
 			if (authorization instanceof ExplicitRightsAuthorization) {
@@ -500,6 +529,14 @@ public class StreamingCheckinDatabaseAction extends GenericCheckinDatabaseAction
 	public String getFileName() {
 		return fileName;
 	}
+
+	public long getFileSize() {
+		return fileSize;
+	}
+
+	public void setMemoryReservation(MemoryReservation memoryReservation) {
+		this.memoryReservation = memoryReservation;
+	}
 	
 	public ConcreteRevision getConcreteRevision() {
 		return concreteRevision;
@@ -17,24 +17,53 @@ package org.bimserver.database.actions;
  * along with this program.  If not, see {@literal<http://www.gnu.org/licenses/>}.
  *****************************************************************************/
 
+import java.io.IOException;
+
+import org.bimserver.BimServer;
 import org.bimserver.BimserverDatabaseException;
+import org.bimserver.blobs.Blob;
 import org.bimserver.database.BimserverLockConflictException;
 import org.bimserver.database.DatabaseSession;
 import org.bimserver.models.log.AccessMethod;
 import org.bimserver.models.store.File;
 import org.bimserver.shared.exceptions.UserException;
+import org.bimserver.webservices.authorization.Authorization;
 
+/**
+ * Stores a File, data that is passed inline is moved to the blob store so only the digest ends up in the database
+ */
 public class UploadFileDatabaseAction extends BimDatabaseAction<Long> {
 
+	private final BimServer bimServer;
+	private final Authorization authorization;
 	private File convertFromSObject;
 
-	public UploadFileDatabaseAction(DatabaseSession databaseSession, AccessMethod accessMethod, File convertFromSObject) {
+	public UploadFileDatabaseAction(BimServer bimServer, DatabaseSession databaseSession, AccessMethod accessMethod, Authorization authorization, File convertFromSObject) {
 		super(databaseSession, accessMethod);
+		this.bimServer = bimServer;
+		this.authorization = authorization;
 		this.convertFromSObject = convertFromSObject;
 	}
 
 	@Override
 	public Long execute() throws UserException, BimserverLockConflictException, BimserverDatabaseException {
+		String digest = convertFromSObject.getDigest();
+		if (digest != null) {
+			// Only blobs this user has uploaded, otherwise anyone knowing (or guessing) a digest could get a copy of the content
+			if (!bimServer.getBlobStore().claimUpload(digest, authorization.getUoid())) {
+				throw new UserException("No uploaded blob with digest " + digest);
+			}
+			convertFromSObject.setData(null);
+		} else if (convertFromSObject.getData() != null) {
+			try {
+				Blob blob = bimServer.getBlobStore().store(convertFromSObject.getData());
+				convertFromSObject.setDigest(blob.getDigest());
+				convertFromSObject.setSize(blob.getSize());
+				convertFromSObject.setData(null);
+			} catch (IOException e) {
+				throw new BimserverDatabaseException(e);
+			}
+		}
 		return getDatabaseSession().store(convertFromSObject);
 	}
 }
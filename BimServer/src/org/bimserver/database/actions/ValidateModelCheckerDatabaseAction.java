@@ -24,6 +24,8 @@ import org.bimserver.database.DatabaseSession;
 import org.bimserver.database.OldQuery;
 import org.bimserver.models.log.AccessMethod;
 import org.bimserver.models.store.ModelCheckerInstance;
+import org.bimserver.plugins.modelchecker.ModelCheckException;
+import org.bimserver.plugins.modelchecker.ModelChecker;
 import org.bimserver.plugins.modelchecker.ModelCheckerPlugin;
 import org.bimserver.shared.exceptions.UserException;
 
@@ -45,15 +47,17 @@ public class ValidateModelCheckerDatabaseAction extends BimDatabaseAction<Void>
 		if (modelCheckerPlugin == null) {
 			throw new UserException("Model Checker Plugin \"" + modelCheckerInstance.getModelCheckerPluginClassName() + "\" not found/enabled");
 		}
-//		ModelChecker modelChecker = modelCheckerPlugin.createModelChecker(null);
-//		try {
-//			byte[] result = modelChecker.compile(modelCheckerInstance.getCode());
+		ModelChecker modelChecker = modelCheckerPlugin.createModelChecker(null);
+		try {
+			byte[] result = modelChecker.compile(modelCheckerInstance.getCode());
 			modelCheckerInstance.setValid(true);
-//			modelCheckerInstance.setCompiled(result);
+			if (result != null) {
+				modelCheckerInstance.setCompiled(result);
+			}
 			getDatabaseSession().store(modelCheckerInstance);
-//		} catch (ModelCheckException e) {
-//			throw new UserException(e);
-//		}
+		} catch (ModelCheckException e) {
+			throw new UserException(e.getMessage());
+		}
 		return null;
 	}
 }
\ No newline at end of file
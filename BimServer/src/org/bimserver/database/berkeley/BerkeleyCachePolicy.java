@@ -0,0 +1,58 @@
+package org.bimserver.database.berkeley;
+
+/******************************************************************************
+ * Copyright (C) 2009-2019  BIMserver.org
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see {@literal<http://www.gnu.org/licenses/>}.
+ *****************************************************************************/
+
+import com.sleepycat.je.CacheMode;
+
+/**
+ * How the tables share the Berkeley DB cache. Bulk tables are the tables of the IFC packages (and their indices) and of the geometry
+ * package, they are mostly read in large scans by checkins, downloads and geometry generation. The other tables (store, log and the
+ * internal tables) contain the projects, revisions, users etc. that are used by every request.
+ */
+public enum BerkeleyCachePolicy {
+	/**
+	 * All tables share one LRU cache, a large download can evict all other data from the cache
+	 */
+	SHARED(CacheMode.DEFAULT),
+
+	/**
+	 * Records of bulk tables are evicted from the cache right after they have been read or written, the internal nodes (keys) of those
+	 * tables and all data of the other tables stay in the cache
+	 */
+	EVICT_BULK_RECORDS(CacheMode.EVICT_LN),
+
+	/**
+	 * Like EVICT_BULK_RECORDS, but the bottom internal nodes of bulk tables are evicted as well, which leaves almost the whole cache to
+	 * the other tables but makes point lookups in bulk tables more expensive
+	 */
+	EVICT_BULK_NODES(CacheMode.EVICT_BIN);
+
+	private final CacheMode bulkCacheMode;
+
+	private BerkeleyCachePolicy(CacheMode bulkCacheMode) {
+		this.bulkCacheMode = bulkCacheMode;
+	}
+
+	public static boolean isBulkTable(String tableName, boolean transactional) {
+		return !transactional || tableName.startsWith("geometry_");
+	}
+
+	public CacheMode getCacheMode(String tableName, boolean transactional) {
+		return isBulkTable(tableName, transactional) ? bulkCacheMode : CacheMode.DEFAULT;
+	}
+}
@@ -0,0 +1,217 @@
+package org.bimserver.database.berkeley;
+
+/******************************************************************************
+ * Copyright (C) 2009-2019  BIMserver.org
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see {@literal<http://www.gnu.org/licenses/>}.
+ *****************************************************************************/
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.bimserver.memory.MemoryGovernor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.sleepycat.je.DatabaseException;
+import com.sleepycat.je.Environment;
+import com.sleepycat.je.EnvironmentConfig;
+import com.sleepycat.je.EnvironmentMutableConfig;
+import com.sleepycat.je.EnvironmentStats;
+
+/**
+ * Adjusts the mutable settings of the Berkeley DB environment once a minute, based on the statistics of the past minute:
+ *
+ * - The cache percentage grows (up to MAX_CACHE_PERCENT) when many internal nodes had to be read from disk and the heap has room for
+ * it, and shrinks back to the configured percentage when almost everything was found in the cache. Records of bulk tables are
+ * usually evicted on purpose (see BerkeleyCachePolicy), so only the internal node misses are used. The memory for a bigger cache is
+ * taken from the budget of the MemoryGovernor (when set) and given back when the cache shrinks, so the cache and the jobs never
+ * claim more than the heap together.
+ *
+ * - The number of cleaner threads grows (up to MAX_CLEANER_THREADS) when the utilization of the log files falls behind the minimum
+ * utilization, and goes back to the configured number when the cleaners have caught up.
+ */
+public class BerkeleyCacheTuner implements Runnable {
+	private static final Logger LOGGER = LoggerFactory.getLogger(BerkeleyCacheTuner.class);
+	private static final int INTERVAL_SECONDS = 60;
+	private static final int CACHE_PERCENT_STEP = 5;
+	private static final int MAX_CACHE_PERCENT = 50;
+	private static final int MAX_CLEANER_THREADS = 10;
+	private static final double HIGH_MISS_RATIO = 0.05;
+	private static final double LOW_MISS_RATIO = 0.01;
+
+	// Minutes with less internal node fetches than this do not say much about the cache
+	private static final long MIN_FETCHES = 10000;
+
+	private final Environment environment;
+	private final boolean tuneCache;
+	private final int configuredCachePercent;
+	private final int configuredCleanerThreads;
+	private final int minUtilization;
+	private ScheduledExecutorService executorService;
+	private int cachePercent;
+	private int cleanerThreads;
+	private long lastBinsFetch;
+	private long lastBinsFetchMiss;
+	private long nrAdjustments;
+	private MemoryGovernor memoryGovernor;
+	private long takenFromBudget;
+
+	/**
+	 * @param tuneCache False when the cache size has been configured in bytes, the cache percentage is not used in that case
+	 */
+	public BerkeleyCacheTuner(Environment environment, boolean tuneCache) {
+		this.environment = environment;
+		this.tuneCache = tuneCache;
+		EnvironmentConfig config = environment.getConfig();
+		this.configuredCachePercent = config.getCachePercent();
+		this.configuredCleanerThreads = Integer.parseInt(config.getConfigParam(EnvironmentConfig.CLEANER_THREADS));
+		this.minUtilization = Integer.parseInt(config.getConfigParam(EnvironmentConfig.CLEANER_MIN_UTILIZATION));
+		this.cachePercent = configuredCachePercent;
+		this.cleanerThreads = configuredCleanerThreads;
+	}
+
+	public void start() {
+		EnvironmentStats stats = environment.getStats(null);
+		lastBinsFetch = stats.getNBINsFetch();
+		lastBinsFetchMiss = stats.getNBINsFetchMiss();
+		executorService = Executors.newSingleThreadScheduledExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "BerkeleyCacheTuner");
+			thread.setDaemon(true);
+			return thread;
+		});
+		executorService.scheduleWithFixedDelay(this, INTERVAL_SECONDS, INTERVAL_SECONDS, TimeUnit.SECONDS);
+	}
+
+	public void stop() {
+		if (executorService != null) {
+			executorService.shutdownNow();
+			try {
+				executorService.awaitTermination(10, TimeUnit.SECONDS);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	@Override
+	public void run() {
+		try {
+			tune(environment.getStats(null));
+		} catch (DatabaseException | IllegalStateException e) {
+			// The environment is being closed
+			LOGGER.debug("", e);
+		} catch (Exception e) {
+			LOGGER.error("", e);
+		}
+	}
+
+	private synchronized void tune(EnvironmentStats stats) {
+		int newCachePercent = cachePercent;
+		if (tuneCache) {
+			long binsFetch = stats.getNBINsFetch() - lastBinsFetch;
+			long binsFetchMiss = stats.getNBINsFetchMiss() - lastBinsFetchMiss;
+			lastBinsFetch = stats.getNBINsFetch();
+			lastBinsFetchMiss = stats.getNBINsFetchMiss();
+			if (binsFetch >= MIN_FETCHES) {
+				double missRatio = (double) binsFetchMiss / binsFetch;
+				if (missRatio > HIGH_MISS_RATIO && cachePercent + CACHE_PERCENT_STEP <= MAX_CACHE_PERCENT && hasHeapRoom() && takeFromBudget(getCacheBytes(CACHE_PERCENT_STEP))) {
+					newCachePercent = cachePercent + CACHE_PERCENT_STEP;
+				} else if (missRatio < LOW_MISS_RATIO && cachePercent > configuredCachePercent) {
+					newCachePercent = Math.max(configuredCachePercent, cachePercent - CACHE_PERCENT_STEP);
+				}
+			}
+		}
+		int newCleanerThreads = cleanerThreads;
+		int currentMinUtilization = stats.getCurrentMinUtilization();
+		if (currentMinUtilization >= 0) {
+			if (currentMinUtilization < minUtilization - 5 && cleanerThreads < MAX_CLEANER_THREADS) {
+				newCleanerThreads = cleanerThreads + 1;
+			} else if (currentMinUtilization >= minUtilization && cleanerThreads > configuredCleanerThreads) {
+				newCleanerThreads = cleanerThreads - 1;
+			}
+		}
+		if (newCachePercent != cachePercent || newCleanerThreads != cleanerThreads) {
+			EnvironmentMutableConfig mutableConfig = environment.getMutableConfig();
+			if (newCachePercent != cachePercent) {
+				mutableConfig.setCachePercent(newCachePercent);
+			}
+			if (newCleanerThreads != cleanerThreads) {
+				mutableConfig.setConfigParam(EnvironmentConfig.CLEANER_THREADS, Integer.toString(newCleanerThreads));
+			}
+			environment.setMutableConfig(mutableConfig);
+			if (newCachePercent < cachePercent) {
+				returnToBudget(getCacheBytes(cachePercent - newCachePercent));
+			}
+			LOGGER.info("Berkeley DB cache " + cachePercent + "% -> " + newCachePercent + "%, cleaner threads " + cleanerThreads + " -> " + newCleanerThreads + " (min utilization " + currentMinUtilization + "%)");
+			cachePercent = newCachePercent;
+			cleanerThreads = newCleanerThreads;
+			nrAdjustments++;
+		}
+	}
+
+	public synchronized void setMemoryGovernor(MemoryGovernor memoryGovernor) {
+		this.memoryGovernor = memoryGovernor;
+	}
+
+	private boolean takeFromBudget(long bytes) {
+		if (memoryGovernor == null) {
+			return true;
+		}
+		if (!memoryGovernor.takeFromBudget(bytes)) {
+			return false;
+		}
+		takenFromBudget += bytes;
+		return true;
+	}
+
+	/**
+	 * Only what was taken can be given back, the cache may have grown before the governor was set
+	 */
+	private void returnToBudget(long bytes) {
+		if (memoryGovernor != null && takenFromBudget > 0) {
+			long toReturn = Math.min(bytes, takenFromBudget);
+			memoryGovernor.returnToBudget(toReturn);
+			takenFromBudget -= toReturn;
+		}
+	}
+
+	private static long getCacheBytes(int percent) {
+		return Runtime.getRuntime().maxMemory() / 100 * percent;
+	}
+
+	/**
+	 * The cache is part of the heap, only grow it when the heap has room for another step and a margin of the same size
+	 */
+	private boolean hasHeapRoom() {
+		Runtime runtime = Runtime.getRuntime();
+		long used = runtime.totalMemory() - runtime.freeMemory();
+		return runtime.maxMemory() - used > 2 * (runtime.maxMemory() / 100 * CACHE_PERCENT_STEP);
+	}
+
+	public synchronized ObjectNode toJson() {
+		ObjectNode result = JsonNodeFactory.instance.objectNode();
+		result.put("tuneCache", tuneCache);
+		result.put("configuredCachePercent", configuredCachePercent);
+		result.put("cachePercent", cachePercent);
+		result.put("configuredCleanerThreads", configuredCleanerThreads);
+		result.put("cleanerThreads", cleanerThreads);
+		result.put("nrAdjustments", nrAdjustments);
+		result.put("takenFromMemoryBudget", takenFromBudget);
+		return result;
+	}
+}
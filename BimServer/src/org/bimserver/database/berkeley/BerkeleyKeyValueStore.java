@@ -29,6 +29,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
+import java.util.TreeMap;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicLong;
@@ -39,12 +40,17 @@ import org.bimserver.database.BimserverLockConflictException;
 import org.bimserver.database.DatabaseSession;
 import org.bimserver.database.KeyValueStore;
 import org.bimserver.database.Record;
+import org.bimserver.database.RecordCodec;
 import org.bimserver.database.RecordIterator;
 import org.bimserver.database.SearchingRecordIterator;
+import org.bimserver.memory.MemoryGovernor;
 import org.bimserver.utils.PathUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
 import com.sleepycat.je.Cursor;
 import com.sleepycat.je.CursorConfig;
 import com.sleepycat.je.Database;
@@ -54,6 +60,7 @@ import com.sleepycat.je.DatabaseException;
 import com.sleepycat.je.Environment;
 import com.sleepycat.je.EnvironmentConfig;
 import com.sleepycat.je.EnvironmentLockedException;
+import com.sleepycat.je.EnvironmentStats;
 import com.sleepycat.je.JEVersion;
 import com.sleepycat.je.LockConflictException;
 import com.sleepycat.je.LockMode;
@@ -64,6 +71,7 @@ import com.sleepycat.je.TransactionConfig;
 public class BerkeleyKeyValueStore implements KeyValueStore {
 
 	private static final Logger LOGGER = LoggerFactory.getLogger(BerkeleyKeyValueStore.class);
+	private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
 	private Environment environment;
 	private long committedWrites;
 	private long reads;
@@ -79,8 +87,24 @@ public class BerkeleyKeyValueStore implements KeyValueStore {
 	private final boolean useTransactions = true;
 	private final boolean keyPrefixing = true;
 	private CursorConfig unsafeCursorConfig;
+	private final RecordVersions recordVersions = new RecordVersions();
+	private volatile RecordCodec recordCodec;
+	private CommitLog commitLog;
+	private volatile boolean readOnly;
+	private final BerkeleyCachePolicy cachePolicy;
+	private BerkeleyCacheTuner cacheTuner;
 
 	public BerkeleyKeyValueStore(Path dataDir, Properties properties) throws DatabaseInitException {
+		this(dataDir, properties, BerkeleyCachePolicy.EVICT_BULK_RECORDS, false);
+	}
+
+	/**
+	 * @param properties Berkeley DB environment properties, settings in here override the defaults (30% cache, 5 cleaner threads and a high priority checkpointer)
+	 * @param cachePolicy Which tables keep their records in the cache
+	 * @param selfTuning Whether to adjust the cache size and the number of cleaner threads at runtime (see BerkeleyCacheTuner)
+	 */
+	public BerkeleyKeyValueStore(Path dataDir, Properties properties, BerkeleyCachePolicy cachePolicy, boolean selfTuning) throws DatabaseInitException {
+		this.cachePolicy = cachePolicy;
 		if (Files.isDirectory(dataDir)) {
 			try {
 				if (PathUtils.list(dataDir).size() > 0) {
@@ -114,8 +138,12 @@ public class BerkeleyKeyValueStore implements KeyValueStore {
 		envConfig.setTransactional(useTransactions);
 		envConfig.setTxnTimeout(10, TimeUnit.SECONDS);
 		envConfig.setLockTimeout(2000, TimeUnit.MILLISECONDS);
-		envConfig.setConfigParam(EnvironmentConfig.CHECKPOINTER_HIGH_PRIORITY, "true");
-		envConfig.setConfigParam(EnvironmentConfig.CLEANER_THREADS, "5");
+		if (properties == null || !properties.containsKey(EnvironmentConfig.CHECKPOINTER_HIGH_PRIORITY)) {
+			envConfig.setConfigParam(EnvironmentConfig.CHECKPOINTER_HIGH_PRIORITY, "true");
+		}
+		if (properties == null || !properties.containsKey(EnvironmentConfig.CLEANER_THREADS)) {
+			envConfig.setConfigParam(EnvironmentConfig.CLEANER_THREADS, "5");
+		}
 		try {
 			environment = new Environment(dataDir.toFile(), envConfig);
 		} catch (EnvironmentLockedException e) {
@@ -135,16 +163,37 @@ public class BerkeleyKeyValueStore implements KeyValueStore {
 
 		unsafeCursorConfig = new CursorConfig();
 		unsafeCursorConfig.setReadUncommitted(true);
+
+		if (selfTuning) {
+			cacheTuner = new BerkeleyCacheTuner(environment, properties == null || !properties.containsKey(EnvironmentConfig.MAX_MEMORY));
+			cacheTuner.start();
+		}
 	}
 
 	public boolean isNew() {
 		return isNew;
 	}
 
+	/**
+	 * @return The current size of the cache in bytes
+	 */
+	public long getCacheSize() {
+		return environment.getConfig().getCacheSize();
+	}
+
+	/**
+	 * With self tuning, the cache only grows when the given governor has room for it in its budget
+	 */
+	public void setMemoryGovernor(MemoryGovernor memoryGovernor) {
+		if (cacheTuner != null) {
+			cacheTuner.setMemoryGovernor(memoryGovernor);
+		}
+	}
+
 	public BimTransaction startTransaction() {
 		if (useTransactions) {
 			try {
-				return new BerkeleyTransaction(environment.beginTransaction(null, transactionConfig));
+				return new BerkeleyTransaction(environment.beginTransaction(null, transactionConfig), recordVersions, commitLog);
 			} catch (DatabaseException e) {
 				LOGGER.error("", e);
 			}
@@ -152,6 +201,23 @@ public class BerkeleyKeyValueStore implements KeyValueStore {
 		return null;
 	}
 
+	@Override
+	public BimTransaction startReadOnlyTransaction() {
+		if (useTransactions) {
+			return new BerkeleySnapshotTransaction(this, recordVersions);
+		}
+		return null;
+	}
+
+	/*
+	 * The tables of the store and log packages and the internal tables are updated in place, so the previous values have to be kept for
+	 * snapshot readers. Geometry records are keyed on pid/oid/rid like the IFC records, readers already skip records of revisions
+	 * they cannot see, and IFC tables are not transactional at all.
+	 */
+	private boolean isVersionedTable(String tableName, boolean transactional) {
+		return transactional && !tableName.startsWith("geometry_");
+	}
+
 	public boolean createTable(String tableName, DatabaseSession databaseSession, boolean transactional) throws BimserverDatabaseException {
 		if (tables.containsKey(tableName)) {
 			throw new BimserverDatabaseException("Table " + tableName + " already created");
@@ -161,16 +227,17 @@ public class BerkeleyKeyValueStore implements KeyValueStore {
 		databaseConfig.setAllowCreate(true);
 		boolean finalTransactional = transactional && useTransactions;
 		databaseConfig.setDeferredWrite(!finalTransactional);
-//		if (!transactional) {
-//			databaseConfig.setCacheMode(CacheMode.EVICT_BIN);
-//		}
+		databaseConfig.setCacheMode(cachePolicy.getCacheMode(tableName, transactional));
 		databaseConfig.setTransactional(finalTransactional);
 		databaseConfig.setSortedDuplicates(false);
 		Database database = environment.openDatabase(null, tableName, databaseConfig);
 		if (database == null) {
 			return false;
 		}
-		tables.put(tableName, new TableWrapper(database, finalTransactional));
+		tables.put(tableName, new TableWrapper(database, finalTransactional, isVersionedTable(tableName, finalTransactional)));
+		if (commitLog != null) {
+			log(null, CommitLogMutation.createTable(tableName, transactional, false));
+		}
 		
 		return true;
 	}
@@ -183,9 +250,7 @@ public class BerkeleyKeyValueStore implements KeyValueStore {
 		databaseConfig.setKeyPrefixing(keyPrefixing);
 		databaseConfig.setAllowCreate(true);
 		boolean finalTransactional = transactional && useTransactions;
-//		if (!transactional) {
-//			databaseConfig.setCacheMode(CacheMode.EVICT_BIN);
-//		}
+		databaseConfig.setCacheMode(cachePolicy.getCacheMode(tableName, transactional));
 		databaseConfig.setDeferredWrite(!finalTransactional);
 		databaseConfig.setTransactional(finalTransactional);
 		databaseConfig.setSortedDuplicates(true);
@@ -193,7 +258,10 @@ public class BerkeleyKeyValueStore implements KeyValueStore {
 		if (database == null) {
 			return false;
 		}
-		tables.put(tableName, new TableWrapper(database, finalTransactional));
+		tables.put(tableName, new TableWrapper(database, finalTransactional, false));
+		if (commitLog != null) {
+			log(null, CommitLogMutation.createTable(tableName, transactional, true));
+		}
 		
 		return true;
 	}
@@ -206,9 +274,7 @@ public class BerkeleyKeyValueStore implements KeyValueStore {
 		databaseConfig.setKeyPrefixing(keyPrefixing);
 		databaseConfig.setAllowCreate(false);
 		boolean finalTransactional = transactional && useTransactions;
-//		if (!transactional) {
-//			databaseConfig.setCacheMode(CacheMode.EVICT_BIN);
-//		}
+		databaseConfig.setCacheMode(cachePolicy.getCacheMode(tableName, transactional));
 		databaseConfig.setDeferredWrite(!finalTransactional);
 		databaseConfig.setTransactional(finalTransactional);
 		databaseConfig.setSortedDuplicates(false);
@@ -216,7 +282,7 @@ public class BerkeleyKeyValueStore implements KeyValueStore {
 		if (database == null) {
 			throw new BimserverDatabaseException("Table " + tableName + " not found in database");
 		}
-		tables.put(tableName, new TableWrapper(database, finalTransactional));
+		tables.put(tableName, new TableWrapper(database, finalTransactional, isVersionedTable(tableName, finalTransactional)));
 		return true;
 	}
 
@@ -228,9 +294,7 @@ public class BerkeleyKeyValueStore implements KeyValueStore {
 		databaseConfig.setKeyPrefixing(keyPrefixing);
 		databaseConfig.setAllowCreate(false);
 		boolean finalTransactional = transactional && useTransactions;
-//		if (!transactional) {
-//			databaseConfig.setCacheMode(CacheMode.EVICT_BIN);
-//		}
+		databaseConfig.setCacheMode(cachePolicy.getCacheMode(tableName, transactional));
 		databaseConfig.setDeferredWrite(!finalTransactional);
 		databaseConfig.setTransactional(finalTransactional);
 		databaseConfig.setSortedDuplicates(true);
@@ -238,7 +302,7 @@ public class BerkeleyKeyValueStore implements KeyValueStore {
 		if (database == null) {
 			throw new BimserverDatabaseException("Table " + tableName + " not found in database");
 		}
-		tables.put(tableName, new TableWrapper(database, finalTransactional));
+		tables.put(tableName, new TableWrapper(database, finalTransactional, false));
 	}
 	
 	private Database getDatabase(String tableName) throws BimserverDatabaseException {
@@ -255,15 +319,92 @@ public class BerkeleyKeyValueStore implements KeyValueStore {
 
 	private Transaction getTransaction(DatabaseSession databaseSession) {
 		if (databaseSession != null) {
-			BerkeleyTransaction berkeleyTransaction = (BerkeleyTransaction) databaseSession.getBimTransaction();
-			if (berkeleyTransaction != null) {
-				return berkeleyTransaction.getTransaction();
+			BimTransaction bimTransaction = databaseSession.getBimTransaction();
+			if (bimTransaction instanceof BerkeleyTransaction) {
+				return ((BerkeleyTransaction) bimTransaction).getTransaction();
+			} else if (bimTransaction instanceof BerkeleySnapshotTransaction) {
+				return ((BerkeleySnapshotTransaction) bimTransaction).getTransaction();
 			}
 		}
 		return null;
 	}
 
+	/**
+	 * @return The snapshot to read from, null when the session is a regular (or a read-only session that has started writing) session
+	 */
+	private BerkeleySnapshotTransaction getSnapshot(DatabaseSession databaseSession, TableWrapper tableWrapper) {
+		if (databaseSession != null && tableWrapper.isTransactional()) {
+			BimTransaction bimTransaction = databaseSession.getBimTransaction();
+			if (bimTransaction instanceof BerkeleySnapshotTransaction) {
+				BerkeleySnapshotTransaction snapshot = (BerkeleySnapshotTransaction) bimTransaction;
+				if (snapshot.getWriteTransaction() == null) {
+					// Before reading, so the snapshot is never newer than what is read
+					snapshot.start();
+					return snapshot;
+				}
+			}
+		}
+		return null;
+	}
+
+	private Transaction getWriteTransaction(DatabaseSession databaseSession, TableWrapper tableWrapper) {
+		BerkeleyTransaction berkeleyTransaction = getBerkeleyWriteTransaction(databaseSession, tableWrapper);
+		return berkeleyTransaction == null ? null : berkeleyTransaction.getTransaction();
+	}
+
+	private BerkeleyTransaction getBerkeleyWriteTransaction(DatabaseSession databaseSession, TableWrapper tableWrapper) {
+		if (databaseSession == null || !tableWrapper.isTransactional()) {
+			return null;
+		}
+		BimTransaction bimTransaction = databaseSession.getBimTransaction();
+		if (bimTransaction instanceof BerkeleySnapshotTransaction) {
+			return ((BerkeleySnapshotTransaction) bimTransaction).getOrStartWriteTransaction();
+		}
+		return (BerkeleyTransaction) bimTransaction;
+	}
+
+	/*
+	 * Keeps the committed value of a record in a versioned table for snapshot readers, must be called before the record is changed
+	 */
+	private Transaction prepareWrite(String tableName, TableWrapper tableWrapper, byte[] key, DatabaseSession databaseSession) throws DatabaseException {
+		BerkeleyTransaction berkeleyTransaction = getBerkeleyWriteTransaction(databaseSession, tableWrapper);
+		if (berkeleyTransaction == null) {
+			return null;
+		}
+		// Only the first write of a transaction to a record needs the pre-image, the record is locked from then on
+		if (tableWrapper.isVersioned() && !berkeleyTransaction.hasRegisteredWrite(tableName, key)) {
+			DatabaseEntry value = new DatabaseEntry();
+			OperationStatus operationStatus = tableWrapper.getDatabase().get(berkeleyTransaction.getTransaction(), new DatabaseEntry(key), value, LockMode.RMW);
+			berkeleyTransaction.registerWrite(tableName, key, operationStatus == OperationStatus.SUCCESS ? value.getData() : null);
+		}
+		return berkeleyTransaction.getTransaction();
+	}
+
+	/**
+	 * Snapshot readers do not use a transaction and do not lock versioned tables or tables keyed on rid. Index tables have no
+	 * versions, those are read committed, but the locks are released right after reading.
+	 */
+	private LockMode getSnapshotLockMode(TableWrapper tableWrapper) {
+		return tableWrapper.isSortedDuplicates() ? LockMode.READ_COMMITTED : LockMode.READ_UNCOMMITTED;
+	}
+
+	private CursorConfig getSnapshotCursorConfig(TableWrapper tableWrapper) {
+		return tableWrapper.isSortedDuplicates() ? safeCursorConfig : unsafeCursorConfig;
+	}
+
 	public void close() {
+		if (cacheTuner != null) {
+			cacheTuner.stop();
+		}
+		if (commitLog != null) {
+			try {
+				// A copy of this database directory can be used to start a replica, it continues after this position
+				CommitLogReplicator.writePosition(environment.getHome().toPath().resolve(CommitLogReplicator.POSITION_FILE), commitLog.getLastSequence());
+				commitLog.close();
+			} catch (IOException e) {
+				LOGGER.error("", e);
+			}
+		}
 		for (TableWrapper tableWrapper : tables.values()) {
 			try {
 				tableWrapper.getDatabase().close();
@@ -310,9 +451,21 @@ public class BerkeleyKeyValueStore implements KeyValueStore {
 		DatabaseEntry value = new DatabaseEntry();
 		try {
 			TableWrapper tableWrapper = getTableWrapper(tableName);
+			BerkeleySnapshotTransaction snapshot = getSnapshot(databaseSession, tableWrapper);
+			if (snapshot != null) {
+				OperationStatus operationStatus = tableWrapper.getDatabase().get(null, key, value, getSnapshotLockMode(tableWrapper));
+				if (tableWrapper.isVersioned()) {
+					// The version has to be looked up after reading, the value read might have been written by a transaction that did not finish yet
+					RecordVersions.Version version = snapshot.getVisibleVersion(tableName, keyBytes);
+					if (version != null) {
+						return decode(tableName, version.getPreImage());
+					}
+				}
+				return operationStatus == OperationStatus.SUCCESS ? decode(tableName, value.getData()) : null;
+			}
 			OperationStatus operationStatus = tableWrapper.getDatabase().get(getTransaction(databaseSession, tableWrapper), key, value, getLockMode(tableWrapper));
 			if (operationStatus == OperationStatus.SUCCESS) {
-				return value.getData();
+				return decode(tableName, value.getData());
 			}
 		} catch (DatabaseException e) {
 			LOGGER.error("", e);
@@ -326,7 +479,7 @@ public class BerkeleyKeyValueStore implements KeyValueStore {
 		DatabaseEntry value = new DatabaseEntry();
 		try {
 			TableWrapper tableWrapper = getTableWrapper(tableName);
-			Cursor cursor = tableWrapper.getDatabase().openCursor(getTransaction(databaseSession, tableWrapper), getCursorConfig(tableWrapper));
+			Cursor cursor = openCursor(tableWrapper, databaseSession);
 			try {
 				OperationStatus operationStatus = cursor.getSearchKey(key, value, LockMode.DEFAULT);
 				List<byte[]> result = new ArrayList<byte[]>();
@@ -368,13 +521,31 @@ public class BerkeleyKeyValueStore implements KeyValueStore {
 		return false;
 	}
 
+	private Cursor openCursor(TableWrapper tableWrapper, DatabaseSession databaseSession) throws DatabaseException {
+		if (getSnapshot(databaseSession, tableWrapper) != null) {
+			return tableWrapper.getDatabase().openCursor(null, getSnapshotCursorConfig(tableWrapper));
+		}
+		return tableWrapper.getDatabase().openCursor(getTransaction(databaseSession, tableWrapper), getCursorConfig(tableWrapper));
+	}
+
+	/*
+	 * Versioned tables need to be filtered when read by a snapshot, records that were changed or added after the snapshot was taken
+	 */
+	private SnapshotFilter getSnapshotFilter(String tableName, TableWrapper tableWrapper, DatabaseSession databaseSession) {
+		BerkeleySnapshotTransaction snapshot = getSnapshot(databaseSession, tableWrapper);
+		if (snapshot != null && tableWrapper.isVersioned()) {
+			return new SnapshotFilter(snapshot, tableName);
+		}
+		return null;
+	}
+
 	@Override
 	public RecordIterator getRecordIterator(String tableName, DatabaseSession databaseSession) throws BimserverDatabaseException {
 		Cursor cursor = null;
 		try {
 			TableWrapper tableWrapper = getTableWrapper(tableName);
-			cursor = tableWrapper.getDatabase().openCursor(getTransaction(databaseSession, tableWrapper), getCursorConfig(tableWrapper));
-			BerkeleyRecordIterator berkeleyRecordIterator = new BerkeleyRecordIterator(cursor, this, cursorCounter.incrementAndGet());
+			cursor = openCursor(tableWrapper, databaseSession);
+			BerkeleyRecordIterator berkeleyRecordIterator = new BerkeleyRecordIterator(cursor, this, tableName, cursorCounter.incrementAndGet(), getSnapshotFilter(tableName, tableWrapper, databaseSession));
 			if (MONITOR_CURSOR_STACK_TRACES) {
 				openCursors.put(berkeleyRecordIterator.getCursorId(), new Exception().getStackTrace());
 			}
@@ -390,8 +561,8 @@ public class BerkeleyKeyValueStore implements KeyValueStore {
 		Cursor cursor = null;
 		try {
 			TableWrapper tableWrapper = getTableWrapper(tableName);
-			cursor = tableWrapper.getDatabase().openCursor(getTransaction(databaseSession, tableWrapper), getCursorConfig(tableWrapper));
-			BerkeleySearchingRecordIterator berkeleySearchingRecordIterator = new BerkeleySearchingRecordIterator(cursor, this, cursorCounter.incrementAndGet(), mustStartWith, startSearchingAt, keysOnly);
+			cursor = openCursor(tableWrapper, databaseSession);
+			BerkeleySearchingRecordIterator berkeleySearchingRecordIterator = new BerkeleySearchingRecordIterator(cursor, this, tableName, cursorCounter.incrementAndGet(), mustStartWith, startSearchingAt, keysOnly, getSnapshotFilter(tableName, tableWrapper, databaseSession));
 			if (MONITOR_CURSOR_STACK_TRACES) {
 				openCursors.put(berkeleySearchingRecordIterator.getCursorId(), new Exception().getStackTrace());
 			}
@@ -442,11 +613,23 @@ public class BerkeleyKeyValueStore implements KeyValueStore {
 		}
 	}
 
-	public void delete(String tableName, byte[] key, DatabaseSession databaseSession) throws BimserverLockConflictException {
+	public void delete(String tableName, byte[] key, DatabaseSession databaseSession) throws BimserverLockConflictException, BimserverDatabaseException {
+		checkWritable();
+		deleteInternal(tableName, key, databaseSession);
+	}
+
+	void replicateDelete(String tableName, byte[] key, DatabaseSession databaseSession) throws BimserverLockConflictException, BimserverDatabaseException {
+		deleteInternal(tableName, key, databaseSession);
+	}
+
+	private void deleteInternal(String tableName, byte[] key, DatabaseSession databaseSession) throws BimserverLockConflictException, BimserverDatabaseException {
 		DatabaseEntry entry = new DatabaseEntry(key);
 		try {
 			TableWrapper tableWrapper = getTableWrapper(tableName);
-			tableWrapper.getDatabase().delete(getTransaction(databaseSession, tableWrapper), entry);
+			tableWrapper.getDatabase().delete(prepareWrite(tableName, tableWrapper, key, databaseSession), entry);
+			if (commitLog != null) {
+				log(databaseSession, CommitLogMutation.delete(tableName, key));
+			}
 		} catch (LockConflictException e) {
 			throw new BimserverLockConflictException(e);
 		} catch (DatabaseException e) {
@@ -455,19 +638,29 @@ public class BerkeleyKeyValueStore implements KeyValueStore {
 			LOGGER.error("", e);
 		} catch (IllegalArgumentException e) {
 			LOGGER.error("", e);
-		} catch (BimserverDatabaseException e) {
-			LOGGER.error("", e);
 		}
 	}
 	
 	@Override
-	public void delete(String indexTableName, byte[] featureBytesOldIndex, byte[] array, DatabaseSession databaseSession) throws BimserverLockConflictException {
+	public void delete(String indexTableName, byte[] featureBytesOldIndex, byte[] array, DatabaseSession databaseSession) throws BimserverLockConflictException, BimserverDatabaseException {
+		checkWritable();
+		deleteDuplicateInternal(indexTableName, featureBytesOldIndex, array, databaseSession);
+	}
+
+	void replicateDeleteDuplicate(String indexTableName, byte[] featureBytesOldIndex, byte[] array, DatabaseSession databaseSession) throws BimserverLockConflictException, BimserverDatabaseException {
+		deleteDuplicateInternal(indexTableName, featureBytesOldIndex, array, databaseSession);
+	}
+
+	private void deleteDuplicateInternal(String indexTableName, byte[] featureBytesOldIndex, byte[] array, DatabaseSession databaseSession) throws BimserverLockConflictException, BimserverDatabaseException {
 		try {
 			TableWrapper tableWrapper = getTableWrapper(indexTableName);
-			Cursor cursor = tableWrapper.getDatabase().openCursor(getTransaction(databaseSession, tableWrapper), getCursorConfig(tableWrapper));
+			Cursor cursor = tableWrapper.getDatabase().openCursor(getWriteTransaction(databaseSession, tableWrapper), getCursorConfig(tableWrapper));
 			try {
 				if (cursor.getSearchBoth(new DatabaseEntry(featureBytesOldIndex), new DatabaseEntry(array), LockMode.DEFAULT) == OperationStatus.SUCCESS) {
 					cursor.delete();
+					if (commitLog != null) {
+						log(databaseSession, CommitLogMutation.deleteDuplicate(indexTableName, featureBytesOldIndex, array));
+					}
 				}
 			} finally {
 				cursor.close();
@@ -480,8 +673,6 @@ public class BerkeleyKeyValueStore implements KeyValueStore {
 			LOGGER.error("", e);
 		} catch (IllegalArgumentException e) {
 			LOGGER.error("", e);
-		} catch (BimserverDatabaseException e) {
-			LOGGER.error("", e);
 		}
 	}
 
@@ -505,6 +696,56 @@ public class BerkeleyKeyValueStore implements KeyValueStore {
 		return null;
 	}
 
+	@Override
+	public String getCacheStatistics() {
+		try {
+			EnvironmentStats stats = environment.getStats(null);
+			ObjectNode result = OBJECT_MAPPER.createObjectNode();
+			result.put("cachePolicy", cachePolicy.name());
+
+			ObjectNode cache = result.putObject("cache");
+			cache.put("totalBytes", stats.getCacheTotalBytes());
+			cache.put("dataBytes", stats.getDataBytes());
+			cache.put("adminBytes", stats.getAdminBytes());
+			cache.put("lockBytes", stats.getLockBytes());
+			cache.put("nCacheMiss", stats.getNCacheMiss());
+			cache.put("nBINsFetch", stats.getNBINsFetch());
+			cache.put("nBINsFetchMiss", stats.getNBINsFetchMiss());
+			cache.put("nLNsFetch", stats.getNLNsFetch());
+			cache.put("nLNsFetchMiss", stats.getNLNsFetchMiss());
+			cache.put("nEvictPasses", stats.getNEvictPasses());
+			cache.put("nNodesEvicted", stats.getNNodesEvicted());
+
+			ObjectNode cleaner = result.putObject("cleaner");
+			cleaner.put("currentMinUtilization", stats.getCurrentMinUtilization());
+			cleaner.put("currentMaxUtilization", stats.getCurrentMaxUtilization());
+			cleaner.put("nCleanerRuns", stats.getNCleanerRuns());
+			cleaner.put("nCleanerDeletions", stats.getNCleanerDeletions());
+			cleaner.put("nLNsCleaned", stats.getNLNsCleaned());
+			cleaner.put("totalLogSize", stats.getTotalLogSize());
+
+			ObjectNode checkpointer = result.putObject("checkpointer");
+			checkpointer.put("nCheckpoints", stats.getNCheckpoints());
+			checkpointer.put("lastCheckpointStart", stats.getLastCheckpointStart());
+			checkpointer.put("lastCheckpointEnd", stats.getLastCheckpointEnd());
+			checkpointer.put("nFullINFlush", stats.getNFullINFlush());
+			checkpointer.put("nFullBINFlush", stats.getNFullBINFlush());
+			checkpointer.put("nDeltaINFlush", stats.getNDeltaINFlush());
+
+			ObjectNode cacheModes = result.putObject("cacheModes");
+			for (Map.Entry<String, TableWrapper> entry : new TreeMap<>(tables).entrySet()) {
+				cacheModes.put(entry.getKey(), String.valueOf(entry.getValue().getDatabase().getConfig().getCacheMode()));
+			}
+			if (cacheTuner != null) {
+				result.set("tuning", cacheTuner.toJson());
+			}
+			return OBJECT_MAPPER.writeValueAsString(result);
+		} catch (DatabaseException | JsonProcessingException e) {
+			LOGGER.error("", e);
+		}
+		return null;
+	}
+
 	@Override
 	public void commit(DatabaseSession databaseSession) throws BimserverLockConflictException, BimserverDatabaseException {
 		Transaction bdbTransaction = getTransaction(databaseSession);
@@ -524,11 +765,23 @@ public class BerkeleyKeyValueStore implements KeyValueStore {
 	
 	@Override
 	public void store(String tableName, byte[] key, byte[] value, int offset, int length, DatabaseSession databaseSession) throws BimserverDatabaseException, BimserverLockConflictException {
+		checkWritable();
+		storeInternal(tableName, key, value, offset, length, databaseSession);
+	}
+
+	void replicateStore(String tableName, byte[] key, byte[] value, DatabaseSession databaseSession) throws BimserverDatabaseException, BimserverLockConflictException {
+		storeInternal(tableName, key, value, 0, value.length, databaseSession);
+	}
+
+	private void storeInternal(String tableName, byte[] key, byte[] value, int offset, int length, DatabaseSession databaseSession) throws BimserverDatabaseException, BimserverLockConflictException {
 		DatabaseEntry dbKey = new DatabaseEntry(key);
-		DatabaseEntry dbValue = new DatabaseEntry(value, offset, length);
+		DatabaseEntry dbValue = encode(tableName, value, offset, length);
 		try {
 			TableWrapper tableWrapper = getTableWrapper(tableName);
-			tableWrapper.getDatabase().put(getTransaction(databaseSession, tableWrapper), dbKey, dbValue);
+			tableWrapper.getDatabase().put(prepareWrite(tableName, tableWrapper, key, databaseSession), dbKey, dbValue);
+			if (commitLog != null) {
+				log(databaseSession, CommitLogMutation.store(tableName, key, value, offset, length));
+			}
 		} catch (LockConflictException e) {
 			throw new BimserverLockConflictException(e);
 		} catch (DatabaseException e) {
@@ -543,14 +796,20 @@ public class BerkeleyKeyValueStore implements KeyValueStore {
 	
 	@Override
 	public void storeNoOverwrite(String tableName, byte[] key, byte[] value, int index, int length, DatabaseSession databaseSession) throws BimserverDatabaseException, BimserverLockConflictException, BimserverConcurrentModificationDatabaseException {
+		checkWritable();
 		DatabaseEntry dbKey = new DatabaseEntry(key);
-		DatabaseEntry dbValue = new DatabaseEntry(value, index, length);
+		DatabaseEntry dbValue = encode(tableName, value, index, length);
 		try {
 			TableWrapper tableWrapper = getTableWrapper(tableName);
-			OperationStatus putNoOverwrite = tableWrapper.getDatabase().putNoOverwrite(getTransaction(databaseSession, tableWrapper), dbKey, dbValue);
+			Transaction transaction = prepareWrite(tableName, tableWrapper, key, databaseSession);
+			OperationStatus putNoOverwrite = tableWrapper.getDatabase().putNoOverwrite(transaction, dbKey, dbValue);
+			if (commitLog != null) {
+				// Also when the key existed, it is overwritten below (the transaction will usually be rolled back then)
+				log(databaseSession, CommitLogMutation.store(tableName, key, value, index, length));
+			}
 			if (putNoOverwrite == OperationStatus.KEYEXIST) {
 				// TODO temporary test
-				tableWrapper.getDatabase().put(getTransaction(databaseSession, tableWrapper), dbKey, dbValue);
+				tableWrapper.getDatabase().put(transaction, dbKey, dbValue);
 				ByteBuffer keyBuffer = ByteBuffer.wrap(key);
 				if (key.length == 16) {
 					int pid = keyBuffer.getInt();
@@ -570,6 +829,93 @@ public class BerkeleyKeyValueStore implements KeyValueStore {
 		}
 	}
 	
+	/**
+	 * @param commitLog When set, all changes are written to this log when they are committed, to be replicated by CommitLogReplicators
+	 */
+	public void setCommitLog(CommitLog commitLog) {
+		this.commitLog = commitLog;
+	}
+
+	public CommitLog getCommitLog() {
+		return commitLog;
+	}
+
+	/**
+	 * @param readOnly When set, store and delete throw, only a CommitLogReplicator can still change the store
+	 */
+	public void setReadOnly(boolean readOnly) {
+		this.readOnly = readOnly;
+	}
+
+	private void checkWritable() throws BimserverDatabaseException {
+		if (readOnly) {
+			throw new BimserverDatabaseException("This server is a read replica, changes can only be made on the primary server");
+		}
+	}
+
+	/*
+	 * Changes made in a transaction are logged when it commits, other changes (non transactional tables without session, creating
+	 * tables) right away
+	 */
+	private void log(DatabaseSession databaseSession, CommitLogMutation mutation) throws BimserverDatabaseException {
+		BerkeleyTransaction berkeleyTransaction = null;
+		if (databaseSession != null) {
+			BimTransaction bimTransaction = databaseSession.getBimTransaction();
+			if (bimTransaction instanceof BerkeleySnapshotTransaction) {
+				berkeleyTransaction = ((BerkeleySnapshotTransaction) bimTransaction).getOrStartWriteTransaction();
+			} else if (bimTransaction instanceof BerkeleyTransaction) {
+				berkeleyTransaction = (BerkeleyTransaction) bimTransaction;
+			}
+		}
+		if (berkeleyTransaction != null) {
+			berkeleyTransaction.addMutation(mutation);
+		} else {
+			synchronized (commitLog) {
+				try (CommitLogSpool spool = commitLog.createSpool()) {
+					spool.add(mutation);
+					commitLog.append(spool);
+				} catch (IOException e) {
+					throw new BimserverDatabaseException("Could not write to the commit log, replicas are out of sync", e);
+				}
+			}
+		}
+	}
+
+	boolean isOpen(String tableName) {
+		return tables.containsKey(tableName);
+	}
+
+	@Override
+	public void setRecordCodec(RecordCodec recordCodec) {
+		this.recordCodec = recordCodec;
+	}
+
+	private DatabaseEntry encode(String tableName, byte[] value, int offset, int length) {
+		RecordCodec codec = recordCodec;
+		if (codec != null) {
+			byte[] encoded = codec.encode(tableName, value, offset, length);
+			if (encoded != null) {
+				return new DatabaseEntry(encoded);
+			}
+		}
+		return new DatabaseEntry(value, offset, length);
+	}
+
+	private byte[] decode(String tableName, byte[] stored) {
+		RecordCodec codec = recordCodec;
+		if (codec == null || stored == null) {
+			return stored;
+		}
+		return codec.decode(tableName, stored);
+	}
+
+	/**
+	 * Used by the record iterators, the value is presented in the format readers expect
+	 */
+	Record createRecord(String tableName, DatabaseEntry key, DatabaseEntry value) {
+		return new BerkeleyRecord(key.getData(), decode(tableName, value.getData()));
+	}
+
 	@Override
 	public String getType() {
 		return "Berkeley DB Java Edition " + JEVersion.CURRENT_VERSION.toString();
@@ -30,6 +30,11 @@ public class BerkeleyRecord implements Record {
 		this.value = value.getData();
 	}
 
+	public BerkeleyRecord(byte[] key, byte[] value) {
+		this.key = key;
+		this.value = value;
+	}
+
 	@Override
 	public byte[] getKey() {
 		return key;
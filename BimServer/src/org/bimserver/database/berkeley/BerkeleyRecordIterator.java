@@ -34,11 +34,15 @@ public class BerkeleyRecordIterator implements RecordIterator {
 	private static final Logger LOGGER = LoggerFactory.getLogger(BerkeleyRecordIterator.class);
 	private final Cursor cursor;
 	private BerkeleyKeyValueStore berkeleyKeyValueStore;
+	private final String tableName;
+	private final SnapshotFilter snapshotFilter;
 
-	public BerkeleyRecordIterator(Cursor cursor, BerkeleyKeyValueStore berkeleyKeyValueStore, long cursorId) {
+	public BerkeleyRecordIterator(Cursor cursor, BerkeleyKeyValueStore berkeleyKeyValueStore, String tableName, long cursorId, SnapshotFilter snapshotFilter) {
 		this.cursor = cursor;
 		this.berkeleyKeyValueStore = berkeleyKeyValueStore;
+		this.tableName = tableName;
 		this.cursorId = cursorId;
+		this.snapshotFilter = snapshotFilter;
 	}
 
 	public long getCursorId() {
@@ -50,11 +54,14 @@ public class BerkeleyRecordIterator implements RecordIterator {
 		DatabaseEntry value = new DatabaseEntry();
 		try {
 			OperationStatus next = cursor.getNext(key, value, LockMode.DEFAULT);
-			if (next == OperationStatus.SUCCESS) {
-				return new BerkeleyRecord(key, value);
-			} else {
-				return null;
+			while (next == OperationStatus.SUCCESS) {
+				DatabaseEntry visibleValue = snapshotFilter == null ? value : snapshotFilter.filter(key, value);
+				if (visibleValue != null) {
+					return berkeleyKeyValueStore.createRecord(tableName, key, visibleValue);
+				}
+				next = cursor.getNext(key, value, LockMode.DEFAULT);
 			}
+			return null;
 		} catch (DatabaseException e) {
 			LOGGER.error("", e);
 		}
@@ -77,11 +84,14 @@ public class BerkeleyRecordIterator implements RecordIterator {
 		DatabaseEntry value = new DatabaseEntry();
 		try {
 			OperationStatus next = cursor.getLast(key, value, LockMode.DEFAULT);
-			if (next == OperationStatus.SUCCESS) {
-				return new BerkeleyRecord(key, value);
-			} else {
-				return null;
+			while (next == OperationStatus.SUCCESS) {
+				DatabaseEntry visibleValue = snapshotFilter == null ? value : snapshotFilter.filter(key, value);
+				if (visibleValue != null) {
+					return berkeleyKeyValueStore.createRecord(tableName, key, visibleValue);
+				}
+				next = cursor.getPrev(key, value, LockMode.DEFAULT);
 			}
+			return null;
 		} catch (DatabaseException e) {
 		}
 		return null;
@@ -40,15 +40,19 @@ public class BerkeleySearchingRecordIterator implements SearchingRecordIterator
 	private byte[] nextStartSearchingAt;
 	private long cursorId;
 	private BerkeleyKeyValueStore berkeleyKeyValueStore;
+	private final String tableName;
 	private boolean onlyKeys;
+	private final SnapshotFilter snapshotFilter;
 
-	public BerkeleySearchingRecordIterator(Cursor cursor, BerkeleyKeyValueStore berkeleyKeyValueStore, long cursorId, byte[] mustStartWith, byte[] startSearchingAt, boolean onlyKeys) throws BimserverLockConflictException {
+	public BerkeleySearchingRecordIterator(Cursor cursor, BerkeleyKeyValueStore berkeleyKeyValueStore, String tableName, long cursorId, byte[] mustStartWith, byte[] startSearchingAt, boolean onlyKeys, SnapshotFilter snapshotFilter) throws BimserverLockConflictException {
 		this.cursor = cursor;
 		this.berkeleyKeyValueStore = berkeleyKeyValueStore;
+		this.tableName = tableName;
 		this.cursorId = cursorId;
 		this.mustStartWith = mustStartWith;
 		this.nextStartSearchingAt = startSearchingAt;
 		this.onlyKeys = onlyKeys;
+		this.snapshotFilter = snapshotFilter;
 	}
 
 	public long getCursorId() {
@@ -64,12 +68,17 @@ public class BerkeleySearchingRecordIterator implements SearchingRecordIterator
 		}
 		try {
 			OperationStatus next = cursor.getSearchKeyRange(key, value, LockMode.DEFAULT);
-			if (next == OperationStatus.SUCCESS) {
+			while (next == OperationStatus.SUCCESS) {
 				byte[] firstBytes = new byte[mustStartWith.length];
 				System.arraycopy(key.getData(), 0, firstBytes, 0, mustStartWith.length);
-				if (Arrays.equals(firstBytes, mustStartWith)) {
-					return new BerkeleyRecord(key, value);
+				if (!Arrays.equals(firstBytes, mustStartWith)) {
+					break;
 				}
+				DatabaseEntry visibleValue = snapshotFilter == null ? value : snapshotFilter.filter(key, value);
+				if (visibleValue != null) {
+					return berkeleyKeyValueStore.createRecord(tableName, key, visibleValue);
+				}
+				next = cursor.getNext(key, value, LockMode.DEFAULT);
 			}
 		} catch (LockConflictException e) {
 			throw new BimserverLockConflictException(e);
@@ -91,12 +100,17 @@ public class BerkeleySearchingRecordIterator implements SearchingRecordIterator
 		}
 		try {
 			OperationStatus next = cursor.getNext(key, value, LockMode.DEFAULT);
-			if (next == OperationStatus.SUCCESS) {
+			while (next == OperationStatus.SUCCESS) {
 				byte[] firstBytes = new byte[mustStartWith.length];
 				System.arraycopy(key.getData(), 0, firstBytes, 0, mustStartWith.length);
-				if (Arrays.equals(firstBytes, mustStartWith)) {
-					return new BerkeleyRecord(key, value);
+				if (!Arrays.equals(firstBytes, mustStartWith)) {
+					break;
+				}
+				DatabaseEntry visibleValue = snapshotFilter == null ? value : snapshotFilter.filter(key, value);
+				if (visibleValue != null) {
+					return berkeleyKeyValueStore.createRecord(tableName, key, visibleValue);
 				}
+				next = cursor.getNext(key, value, LockMode.DEFAULT);
 			}
 		} catch (LockConflictException e) {
 			throw new BimserverLockConflictException(e);
@@ -133,12 +147,17 @@ public class BerkeleySearchingRecordIterator implements SearchingRecordIterator
 		}
 		try {
 			OperationStatus next = cursor.getLast(key, value, LockMode.DEFAULT);
-			if (next == OperationStatus.SUCCESS) {
+			while (next == OperationStatus.SUCCESS) {
 				byte[] firstBytes = new byte[mustStartWith.length];
 				System.arraycopy(key.getData(), 0, firstBytes, 0, mustStartWith.length);
-				if (Arrays.equals(firstBytes, mustStartWith)) {
-					return new BerkeleyRecord(key, value);
+				if (!Arrays.equals(firstBytes, mustStartWith)) {
+					break;
+				}
+				DatabaseEntry visibleValue = snapshotFilter == null ? value : snapshotFilter.filter(key, value);
+				if (visibleValue != null) {
+					return berkeleyKeyValueStore.createRecord(tableName, key, visibleValue);
 				}
+				next = cursor.getPrev(key, value, LockMode.DEFAULT);
 			}
 		} catch (LockConflictException e) {
 			throw new BimserverLockConflictException(e);
@@ -0,0 +1,155 @@
+package org.bimserver.database.berkeley;
+
+/******************************************************************************
+ * Copyright (C) 2009-2019  BIMserver.org
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see {@literal<http://www.gnu.org/licenses/>}.
+ *****************************************************************************/
+
+import org.bimserver.BimserverDatabaseException;
+import org.bimserver.database.BimTransaction;
+import org.bimserver.database.BimserverLockConflictException;
+
+import com.sleepycat.je.Transaction;
+
+/**
+ * Transaction used by READ_ONLY sessions. No Berkeley transaction is started, so reads do not take locks that could make writers
+ * wait or fail. What is visible is determined by the commit sequence number at the moment this snapshot was taken, see
+ * {@link RecordVersions}. The snapshot is taken on the first read, not when the session is created, so a session that is opened
+ * before another session commits and only reads afterwards sees that commit (as it did when read only sessions used Berkeley
+ * transactions).
+ *
+ * When a READ_ONLY session does write (those writes were always rolled back when the session closes), a real transaction is started
+ * on the first write, from then on the session behaves like a regular session.
+ */
+public class BerkeleySnapshotTransaction implements BimTransaction {
+
+	private final BerkeleyKeyValueStore keyValueStore;
+	private final RecordVersions recordVersions;
+	private long snapshotId;
+	private long snapshotSequence = Long.MAX_VALUE;
+	private BerkeleyTransaction writeTransaction;
+	private boolean ended;
+	private String name;
+	private long updates;
+
+	public BerkeleySnapshotTransaction(BerkeleyKeyValueStore keyValueStore, RecordVersions recordVersions) {
+		this.keyValueStore = keyValueStore;
+		this.recordVersions = recordVersions;
+	}
+
+	/**
+	 * Takes the snapshot if that did not happen yet, called before every read
+	 */
+	public synchronized void start() {
+		if (snapshotId == 0 && !ended) {
+			snapshotId = recordVersions.startSnapshot();
+			snapshotSequence = recordVersions.getSnapshotSequence(snapshotId);
+		}
+	}
+
+	public synchronized long getSnapshotSequence() {
+		start();
+		return snapshotSequence;
+	}
+
+	/**
+	 * @return The visible version of the given record, or null when the value in the database is the visible value
+	 */
+	public RecordVersions.Version getVisibleVersion(String tableName, byte[] key) {
+		return recordVersions.getVisibleVersion(tableName, key, getSnapshotSequence());
+	}
+
+	/**
+	 * @return null as long as this session did not write anything
+	 */
+	public BerkeleyTransaction getWriteTransaction() {
+		return writeTransaction;
+	}
+
+	public BerkeleyTransaction getOrStartWriteTransaction() {
+		if (writeTransaction == null) {
+			writeTransaction = (BerkeleyTransaction) keyValueStore.startTransaction();
+			if (name != null) {
+				writeTransaction.setName(name);
+			}
+		}
+		return writeTransaction;
+	}
+
+	public Transaction getTransaction() {
+		return writeTransaction == null ? null : writeTransaction.getTransaction();
+	}
+
+	@Override
+	public void setName(String name) {
+		this.name = name;
+		if (writeTransaction != null) {
+			writeTransaction.setName(name);
+		}
+	}
+
+	@Override
+	public void close() {
+		if (writeTransaction != null) {
+			writeTransaction.close();
+		}
+		endSnapshot();
+	}
+
+	@Override
+	public void rollback() {
+		if (writeTransaction != null) {
+			writeTransaction.rollback();
+			writeTransaction = null;
+		}
+		endSnapshot();
+	}
+
+	@Override
+	public void commit() throws BimserverLockConflictException, BimserverDatabaseException {
+		if (writeTransaction != null) {
+			writeTransaction.commit();
+			writeTransaction = null;
+		}
+		endSnapshot();
+	}
+
+	private synchronized void endSnapshot() {
+		if (!ended) {
+			if (snapshotId != 0) {
+				recordVersions.endSnapshot(snapshotId);
+			}
+			ended = true;
+		}
+	}
+
+	/**
+	 * Snapshot ids are negative so they never clash with the ids of Berkeley transactions, 0 as long as nothing was read
+	 */
+	@Override
+	public long getId() {
+		return writeTransaction == null ? -snapshotId : writeTransaction.getId();
+	}
+
+	@Override
+	public long updates() {
+		return updates;
+	}
+
+	@Override
+	public void incUpdates(long updates) {
+		this.updates += updates;
+	}
+}
@@ -17,6 +17,8 @@ package org.bimserver.database.berkeley;
  * along with this program.  If not, see {@literal<http://www.gnu.org/licenses/>}.
  *****************************************************************************/
 
+import java.io.IOException;
+
 import org.bimserver.BimserverDatabaseException;
 import org.bimserver.database.BimTransaction;
 import org.bimserver.database.BimserverLockConflictException;
@@ -31,11 +33,18 @@ public class BerkeleyTransaction implements BimTransaction {
 
 	private static final Logger LOGGER = LoggerFactory.getLogger(BerkeleyTransaction.class);
 	private final Transaction transaction;
+	private final RecordVersions recordVersions;
+	private final RecordVersions.Writer writer;
+	private final CommitLog commitLog;
+	private CommitLogSpool spool;
 	private boolean transactionAlive = true;
 	private long updates;
 
-	public BerkeleyTransaction(Transaction transaction) {
+	public BerkeleyTransaction(Transaction transaction, RecordVersions recordVersions, CommitLog commitLog) {
 		this.transaction = transaction;
+		this.recordVersions = recordVersions;
+		this.writer = recordVersions.createWriter();
+		this.commitLog = commitLog;
 	}
 	
 	public void incUpdates(long updates) {
@@ -46,6 +55,50 @@ public class BerkeleyTransaction implements BimTransaction {
 		return transaction;
 	}
 
+	/**
+	 * Registers the committed value of a record in a versioned table before this transaction changes it, so snapshot readers keep
+	 * seeing the old value until this transaction has finished
+	 */
+	public void registerWrite(String tableName, byte[] key, byte[] preImage) {
+		recordVersions.registerWrite(writer, tableName, key, preImage);
+	}
+
+	/**
+	 * @return Whether the committed value of the record has already been registered by this transaction
+	 */
+	public boolean hasRegisteredWrite(String tableName, byte[] key) {
+		return writer.hasRegistered(tableName, key);
+	}
+
+	/**
+	 * Records a mutation for the commit log, it is written to the log when (and if) this transaction commits
+	 */
+	public void addMutation(CommitLogMutation mutation) throws BimserverDatabaseException {
+		try {
+			if (spool == null) {
+				spool = commitLog.createSpool();
+			}
+			spool.add(mutation);
+		} catch (IOException e) {
+			throw new BimserverDatabaseException(e);
+		}
+	}
+
+	private void closeSpool() {
+		if (spool != null) {
+			try {
+				spool.close();
+			} catch (IOException e) {
+				LOGGER.error("", e);
+			}
+			spool = null;
+		}
+	}
+
+	private void finished() {
+		recordVersions.transactionFinished(writer);
+	}
+
 	@Override
 	public void setName(String name) {
 		transaction.setName(name);
@@ -63,20 +116,48 @@ public class BerkeleyTransaction implements BimTransaction {
 		try {
 			transaction.abort();
 			transactionAlive = false;
+			finished();
 		} catch (DatabaseException e) {
 			LOGGER.error("", e);
+		} finally {
+			closeSpool();
 		}
 	}
 
 	@Override
 	public void commit() throws BimserverLockConflictException, BimserverDatabaseException {
 		try {
-			transaction.commit();
-			transactionAlive = false;
+			if (commitLog == null || spool == null) {
+				transaction.commit();
+			} else {
+				// The log has to be in commit order, otherwise a replica could apply two changes of the same record in the wrong order
+				synchronized (commitLog) {
+					try {
+						commitLog.checkHealthy();
+					} catch (IOException e) {
+						// Nothing has been committed, close() rolls back
+						throw new BimserverDatabaseException(e.getMessage(), e);
+					}
+					transaction.commit();
+					transactionAlive = false;
+					finished();
+					try {
+						commitLog.append(spool);
+					} catch (IOException e) {
+						throw new BimserverDatabaseException("Transaction " + transaction.getId() + " has been committed, but could not be written to the commit log. Replicas are out of sync and no changes can be committed until the commit log has been fixed", e);
+					}
+				}
+			}
+			if (transactionAlive) {
+				transactionAlive = false;
+				finished();
+			}
 		} catch (LockConflictException e) {
 			throw new BimserverLockConflictException(e);
 		} catch (DatabaseException e) {
 			throw new BimserverDatabaseException(e);
+		} finally {
+			closeSpool();
 		}
 	}
 
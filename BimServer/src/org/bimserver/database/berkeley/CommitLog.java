@@ -0,0 +1,307 @@
+package org.bimserver.database.berkeley;
+
+/******************************************************************************
+ * Copyright (C) 2009-2019  BIMserver.org
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see {@literal<http://www.gnu.org/licenses/>}.
+ *****************************************************************************/
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Ordered log of the mutations of all committed transactions of a BerkeleyKeyValueStore, replicas tail it with a CommitLogReplicator.
+ *
+ * The log is a directory of segment files named after the sequence number of their first entry. An entry consists of the length of its
+ * payload, its sequence number, the time of the commit, the payload (the mutations) and a CRC32 of all of that. Entries are only
+ * appended, a torn entry at the end of the last segment (after a crash) is cut off when the log is opened again. Segments are never
+ * removed by the server, old segments can be removed when all replicas have passed them.
+ *
+ * When an entry cannot be written the log fails: the partial entry is cut off and every later append throws, so committing changes
+ * fails instead of replicas silently missing them. A failed log has to be fixed (and the replicas seeded again) by an administrator.
+ */
+public class CommitLog implements AutoCloseable {
+	private static final Logger LOGGER = LoggerFactory.getLogger(CommitLog.class);
+	public static final long DEFAULT_SEGMENT_SIZE = 64 * 1024 * 1024;
+	static final String SEGMENT_EXTENSION = ".log";
+	static final int ENTRY_HEADER_SIZE = 4 + 8 + 8;
+	private static final String TMP_DIRECTORY = "tmp";
+
+	private final Path directory;
+	private final Path tmpDirectory;
+	private final long segmentSize;
+	private FileChannel channel;
+	private long nextSequence = 1;
+	private IOException failure;
+
+	public CommitLog(Path directory) throws IOException {
+		this(directory, DEFAULT_SEGMENT_SIZE);
+	}
+
+	public CommitLog(Path directory, long segmentSize) throws IOException {
+		this.directory = directory;
+		this.segmentSize = segmentSize;
+		this.tmpDirectory = directory.resolve(TMP_DIRECTORY);
+		Files.createDirectories(tmpDirectory);
+		// Spools of transactions that were running when the server stopped
+		try (Stream<Path> stream = Files.list(tmpDirectory)) {
+			for (Path path : (Iterable<Path>) stream::iterator) {
+				Files.deleteIfExists(path);
+			}
+		}
+		List<Long> segments = listSegments(directory);
+		if (segments.isEmpty()) {
+			openSegment(nextSequence);
+		} else {
+			long firstSequence = segments.get(segments.size() - 1);
+			Path segment = getSegmentPath(directory, firstSequence);
+			channel = FileChannel.open(segment, StandardOpenOption.READ, StandardOpenOption.WRITE);
+			long position = 0;
+			nextSequence = firstSequence;
+			while (true) {
+				Entry entry = readEntry(channel, position);
+				if (entry == null) {
+					break;
+				}
+				nextSequence = entry.getSequence() + 1;
+				position += entry.getSize();
+			}
+			if (position < channel.size()) {
+				LOGGER.warn("Removing incomplete entry at the end of " + segment);
+				channel.truncate(position);
+			}
+			channel.position(position);
+		}
+		LOGGER.info("Commit log opened at " + directory + ", next sequence " + nextSequence);
+	}
+
+	/**
+	 * @return An empty spool for the mutations of a transaction, the caller closes it
+	 */
+	public CommitLogSpool createSpool() {
+		return new CommitLogSpool(tmpDirectory);
+	}
+
+	/**
+	 * @throws IOException When an earlier append failed, nothing can be appended anymore in that case
+	 */
+	public synchronized void checkHealthy() throws IOException {
+		if (failure != null) {
+			throw new IOException("The commit log could not be written earlier, changes cannot be replicated anymore", failure);
+		}
+	}
+
+	/**
+	 * Appends the mutations of one transaction as one entry, must be called in commit order
+	 *
+	 * @return The sequence number of the entry
+	 */
+	public synchronized long append(CommitLogSpool spool) throws IOException {
+		checkHealthy();
+		long sequence = nextSequence;
+		long start = channel.position();
+		try {
+			long payloadLength = 4 + spool.size();
+			if (payloadLength > Integer.MAX_VALUE - ENTRY_HEADER_SIZE - 4) {
+				throw new IOException("Transaction too large for the commit log (" + payloadLength + " bytes)");
+			}
+			ByteBuffer header = ByteBuffer.allocate(ENTRY_HEADER_SIZE + 4);
+			header.putInt((int) payloadLength);
+			header.putLong(sequence);
+			header.putLong(System.currentTimeMillis());
+			header.putInt(spool.getNrMutations());
+			header.flip();
+			CRC32 crc32 = new CRC32();
+			crc32.update(header.array(), 4, header.limit() - 4);
+			writeFully(channel, header);
+			spool.transferTo(channel, crc32);
+			ByteBuffer trailer = ByteBuffer.allocate(4);
+			trailer.putInt(0, (int) crc32.getValue());
+			writeFully(channel, trailer);
+			channel.force(false);
+		} catch (IOException e) {
+			fail(e, start);
+			throw e;
+		}
+		nextSequence++;
+		if (channel.size() >= segmentSize) {
+			try {
+				channel.close();
+				openSegment(nextSequence);
+			} catch (IOException e) {
+				// The entry itself has been written
+				failure = e;
+				throw e;
+			}
+		}
+		return sequence;
+	}
+
+	/*
+	 * Cuts off what has been written of the failed entry, so the log stays readable up to the last complete entry
+	 */
+	private void fail(IOException e, long entryStart) {
+		failure = e;
+		try {
+			channel.truncate(entryStart);
+			channel.position(entryStart);
+		} catch (IOException e1) {
+			LOGGER.error("", e1);
+		}
+	}
+
+	static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+		while (buffer.hasRemaining()) {
+			channel.write(buffer);
+		}
+	}
+
+	/**
+	 * @return The sequence number of the last entry, 0 when nothing has been logged
+	 */
+	public synchronized long getLastSequence() {
+		return nextSequence - 1;
+	}
+
+	public Path getDirectory() {
+		return directory;
+	}
+
+	@Override
+	public synchronized void close() throws IOException {
+		channel.close();
+	}
+
+	private void openSegment(long firstSequence) throws IOException {
+		channel = FileChannel.open(getSegmentPath(directory, firstSequence), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.READ);
+		channel.position(channel.size());
+	}
+
+	static Path getSegmentPath(Path directory, long firstSequence) {
+		return directory.resolve(String.format("%020d", firstSequence) + SEGMENT_EXTENSION);
+	}
+
+	/**
+	 * @return The first sequence numbers of the segments in the directory, sorted
+	 */
+	static List<Long> listSegments(Path directory) throws IOException {
+		List<Long> segments = new ArrayList<>();
+		if (!Files.isDirectory(directory)) {
+			return segments;
+		}
+		try (Stream<Path> stream = Files.list(directory)) {
+			stream.forEach(path -> {
+				String name = path.getFileName().toString();
+				if (name.endsWith(SEGMENT_EXTENSION)) {
+					try {
+						segments.add(Long.parseLong(name.substring(0, name.length() - SEGMENT_EXTENSION.length())));
+					} catch (NumberFormatException e) {
+						// Not a segment
+					}
+				}
+			});
+		}
+		Collections.sort(segments);
+		return segments;
+	}
+
+	/**
+	 * @return The entry at the given position, or null when there is no complete and valid entry at that position (yet)
+	 */
+	static Entry readEntry(FileChannel channel, long position) throws IOException {
+		ByteBuffer header = ByteBuffer.allocate(ENTRY_HEADER_SIZE);
+		if (!readFully(channel, header, position)) {
+			return null;
+		}
+		int payloadLength = header.getInt(0);
+		if (payloadLength < 4 || payloadLength > channel.size() - position) {
+			return null;
+		}
+		ByteBuffer entry = ByteBuffer.allocate(ENTRY_HEADER_SIZE + payloadLength + 4);
+		if (!readFully(channel, entry, position)) {
+			return null;
+		}
+		CRC32 crc32 = new CRC32();
+		crc32.update(entry.array(), 4, entry.capacity() - 8);
+		if ((int) crc32.getValue() != entry.getInt(entry.capacity() - 4)) {
+			return null;
+		}
+		long sequence = entry.getLong(4);
+		long timestamp = entry.getLong(12);
+		DataInputStream input = new DataInputStream(new ByteArrayInputStream(entry.array(), ENTRY_HEADER_SIZE, payloadLength));
+		int nrMutations = input.readInt();
+		List<CommitLogMutation> mutations = new ArrayList<>(nrMutations);
+		for (int i = 0; i < nrMutations; i++) {
+			mutations.add(CommitLogMutation.readFrom(input));
+		}
+		return new Entry(sequence, timestamp, mutations, entry.capacity());
+	}
+
+	private static boolean readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+		while (buffer.hasRemaining()) {
+			int read = channel.read(buffer, position + buffer.position());
+			if (read == -1) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	public static class Entry {
+		private final long sequence;
+		private final long timestamp;
+		private final List<CommitLogMutation> mutations;
+		private final int size;
+
+		Entry(long sequence, long timestamp, List<CommitLogMutation> mutations, int size) {
+			this.sequence = sequence;
+			this.timestamp = timestamp;
+			this.mutations = mutations;
+			this.size = size;
+		}
+
+		public long getSequence() {
+			return sequence;
+		}
+
+		/**
+		 * @return The time at which the transaction was committed on the primary
+		 */
+		public long getTimestamp() {
+			return timestamp;
+		}
+
+		public List<CommitLogMutation> getMutations() {
+			return mutations;
+		}
+
+		int getSize() {
+			return size;
+		}
+	}
+}
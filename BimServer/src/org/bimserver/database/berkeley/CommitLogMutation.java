@@ -0,0 +1,136 @@
+package org.bimserver.database.berkeley;
+
+/******************************************************************************
+ * Copyright (C) 2009-2019  BIMserver.org
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see {@literal<http://www.gnu.org/licenses/>}.
+ *****************************************************************************/
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+import com.google.common.base.Charsets;
+
+/**
+ * One change to the key value store, as recorded in the CommitLog. Values are recorded as given to the store (before encoding by a
+ * RecordCodec), so a replica encodes them with its own codec.
+ *
+ * The mutations that are created by the store refer to the buffers of the caller, they are written to a CommitLogSpool right away.
+ */
+public class CommitLogMutation {
+	public enum Type {
+		STORE, DELETE, DELETE_DUPLICATE, CREATE_TABLE, CREATE_INDEX_TABLE
+	}
+
+	private final Type type;
+	private final String tableName;
+	private final byte[] key;
+	private final byte[] value;
+	private final int valueOffset;
+	private final int valueLength;
+	private final boolean transactional;
+
+	private CommitLogMutation(Type type, String tableName, byte[] key, byte[] value, int valueOffset, int valueLength, boolean transactional) {
+		this.type = type;
+		this.tableName = tableName;
+		this.key = key;
+		this.value = value;
+		this.valueOffset = valueOffset;
+		this.valueLength = valueLength;
+		this.transactional = transactional;
+	}
+
+	private CommitLogMutation(Type type, String tableName, byte[] key, byte[] value, boolean transactional) {
+		this(type, tableName, key, value, 0, value == null ? 0 : value.length, transactional);
+	}
+
+	public static CommitLogMutation store(String tableName, byte[] key, byte[] value, int offset, int length) {
+		return new CommitLogMutation(Type.STORE, tableName, key, value, offset, length, false);
+	}
+
+	public static CommitLogMutation delete(String tableName, byte[] key) {
+		return new CommitLogMutation(Type.DELETE, tableName, key, null, false);
+	}
+
+	public static CommitLogMutation deleteDuplicate(String tableName, byte[] key, byte[] value) {
+		return new CommitLogMutation(Type.DELETE_DUPLICATE, tableName, key, value, false);
+	}
+
+	public static CommitLogMutation createTable(String tableName, boolean transactional, boolean index) {
+		return new CommitLogMutation(index ? Type.CREATE_INDEX_TABLE : Type.CREATE_TABLE, tableName, null, null, transactional);
+	}
+
+	public Type getType() {
+		return type;
+	}
+
+	public String getTableName() {
+		return tableName;
+	}
+
+	public byte[] getKey() {
+		return key;
+	}
+
+	public byte[] getValue() {
+		return value;
+	}
+
+	public boolean isTransactional() {
+		return transactional;
+	}
+
+	void writeTo(DataOutput output) throws IOException {
+		output.writeByte(type.ordinal());
+		byte[] tableNameBytes = tableName.getBytes(Charsets.UTF_8);
+		output.writeShort(tableNameBytes.length);
+		output.write(tableNameBytes);
+		output.writeBoolean(transactional);
+		writeBytes(output, key, 0, key == null ? 0 : key.length);
+		writeBytes(output, value, valueOffset, valueLength);
+	}
+
+	static CommitLogMutation readFrom(DataInput input) throws IOException {
+		int ordinal = input.readByte();
+		if (ordinal < 0 || ordinal >= Type.values().length) {
+			throw new IOException("Unknown mutation type " + ordinal);
+		}
+		byte[] tableNameBytes = new byte[input.readShort()];
+		input.readFully(tableNameBytes);
+		boolean transactional = input.readBoolean();
+		byte[] key = readBytes(input);
+		byte[] value = readBytes(input);
+		return new CommitLogMutation(Type.values()[ordinal], new String(tableNameBytes, Charsets.UTF_8), key, value, transactional);
+	}
+
+	private static void writeBytes(DataOutput output, byte[] bytes, int offset, int length) throws IOException {
+		if (bytes == null) {
+			output.writeInt(-1);
+		} else {
+			output.writeInt(length);
+			output.write(bytes, offset, length);
+		}
+	}
+
+	private static byte[] readBytes(DataInput input) throws IOException {
+		int length = input.readInt();
+		if (length == -1) {
+			return null;
+		}
+		byte[] bytes = new byte[length];
+		input.readFully(bytes);
+		return bytes;
+	}
+}
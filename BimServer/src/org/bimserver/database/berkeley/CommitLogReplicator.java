@@ -0,0 +1,339 @@
+package org.bimserver.database.berkeley;
+
+/******************************************************************************
+ * Copyright (C) 2009-2019  BIMserver.org
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see {@literal<http://www.gnu.org/licenses/>}.
+ *****************************************************************************/
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.bimserver.BimserverDatabaseException;
+import org.bimserver.database.Database;
+import org.bimserver.database.DatabaseSession;
+import org.bimserver.database.OperationType;
+import org.bimserver.database.berkeley.CommitLog.Entry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Makes a BerkeleyKeyValueStore a read replica of another server by tailing the CommitLog of that server and applying every entry in
+ * one transaction, so READ_ONLY sessions on the replica see whole transactions of the primary.
+ *
+ * A replica starts from a copy of the database directory of the primary, made while the primary was stopped. The primary leaves the
+ * sequence number of its last log entry in the database directory when it stops (see POSITION_FILE), the replica continues from there
+ * and keeps the file up to date. Applying an entry again has no effect, so after a crash the replica simply continues from the last
+ * saved position.
+ */
+public class CommitLogReplicator implements Runnable {
+	private static final Logger LOGGER = LoggerFactory.getLogger(CommitLogReplicator.class);
+	public static final String POSITION_FILE = "replication.position";
+	private static final long POLL_INTERVAL_MS = 100;
+	private static final long RETRY_INTERVAL_MS = 5000;
+	private static final long SAVE_POSITION_INTERVAL_MS = 1000;
+
+	private final Database database;
+	private final BerkeleyKeyValueStore keyValueStore;
+	private final Path logDirectory;
+	private final Path positionFile;
+	private volatile long lastAppliedSequence;
+	private volatile long lastAppliedTimestamp;
+	private volatile long pendingTimestamp;
+	private volatile boolean caughtUp;
+	private volatile boolean running;
+	private volatile long appliedEntries;
+	private long savedSequence;
+	private long lastSave;
+	private Thread thread;
+	private FileChannel channel;
+	private long segmentFirstSequence;
+	private long channelPosition;
+
+	public CommitLogReplicator(Database database, BerkeleyKeyValueStore keyValueStore, Path logDirectory) throws IOException {
+		this.database = database;
+		this.keyValueStore = keyValueStore;
+		this.logDirectory = logDirectory;
+		this.positionFile = Paths.get(keyValueStore.getLocation()).resolve(POSITION_FILE);
+		this.lastAppliedSequence = readPosition(positionFile);
+		this.savedSequence = lastAppliedSequence;
+	}
+
+	public synchronized void start() {
+		LOGGER.info("Replicating from " + logDirectory + ", starting after sequence " + lastAppliedSequence);
+		running = true;
+		keyValueStore.setReadOnly(true);
+		thread = new Thread(this, "CommitLogReplicator");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	public synchronized void stop() {
+		// Not interrupting the thread, an interrupt during a Berkeley operation invalidates the environment
+		running = false;
+		if (thread != null) {
+			try {
+				thread.join(TimeUnit.SECONDS.toMillis(30));
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			thread = null;
+		}
+		closeChannel();
+		savePosition();
+	}
+
+	@Override
+	public void run() {
+		while (running) {
+			try {
+				Entry entry = nextEntry();
+				if (entry == null) {
+					caughtUp = true;
+					if (lastAppliedSequence != savedSequence) {
+						savePosition();
+					}
+					Thread.sleep(POLL_INTERVAL_MS);
+					continue;
+				}
+				caughtUp = false;
+				pendingTimestamp = entry.getTimestamp();
+				apply(entry);
+				channelPosition += entry.getSize();
+				lastAppliedSequence = entry.getSequence();
+				lastAppliedTimestamp = entry.getTimestamp();
+				appliedEntries++;
+				if (System.currentTimeMillis() - lastSave > SAVE_POSITION_INTERVAL_MS) {
+					savePosition();
+				}
+			} catch (InterruptedException e) {
+				break;
+			} catch (Exception e) {
+				// The entry is tried again, it could have been a lock conflict with a reader
+				LOGGER.error("Error applying commit log entry " + (lastAppliedSequence + 1), e);
+				closeChannel();
+				try {
+					Thread.sleep(RETRY_INTERVAL_MS);
+				} catch (InterruptedException e1) {
+					break;
+				}
+			}
+		}
+	}
+
+	/*
+	 * Returns the entry following the last applied one, or null when the primary has not written it yet
+	 */
+	private Entry nextEntry() throws IOException, BimserverDatabaseException {
+		while (true) {
+			if (channel == null) {
+				List<Long> segments = CommitLog.listSegments(logDirectory);
+				long first = -1;
+				for (long segment : segments) {
+					if (segment <= lastAppliedSequence + 1) {
+						first = segment;
+					}
+				}
+				if (first == -1) {
+					if (!segments.isEmpty()) {
+						throw new BimserverDatabaseException("Commit log starts at " + segments.get(0) + ", entries after " + lastAppliedSequence + " are missing");
+					}
+					return null;
+				}
+				channel = FileChannel.open(CommitLog.getSegmentPath(logDirectory, first), StandardOpenOption.READ);
+				segmentFirstSequence = first;
+				channelPosition = 0;
+			}
+			Entry entry = CommitLog.readEntry(channel, channelPosition);
+			if (entry == null) {
+				// Either the primary is still writing this segment, or it has moved on to the next one
+				long current = segmentFirstSequence;
+				for (long segment : CommitLog.listSegments(logDirectory)) {
+					if (segment > current) {
+						if (segment != lastAppliedSequence + 1) {
+							throw new BimserverDatabaseException("Segment " + current + " ends before sequence " + (segment - 1));
+						}
+						closeChannel();
+						break;
+					}
+				}
+				if (channel != null) {
+					return null;
+				}
+				continue;
+			}
+			if (entry.getSequence() <= lastAppliedSequence) {
+				channelPosition += entry.getSize();
+				continue;
+			}
+			if (entry.getSequence() != lastAppliedSequence + 1) {
+				throw new BimserverDatabaseException("Expected commit log entry " + (lastAppliedSequence + 1) + ", found " + entry.getSequence());
+			}
+			return entry;
+		}
+	}
+
+	private void apply(Entry entry) throws BimserverDatabaseException {
+		DatabaseSession databaseSession = database.createSession(OperationType.POSSIBLY_WRITE);
+		Set<Integer> pids = new HashSet<>();
+		try {
+			for (CommitLogMutation mutation : entry.getMutations()) {
+				String tableName = mutation.getTableName();
+				switch (mutation.getType()) {
+				case CREATE_TABLE:
+				case CREATE_INDEX_TABLE:
+					ensureTable(databaseSession, mutation);
+					break;
+				case STORE:
+					keyValueStore.replicateStore(tableName, mutation.getKey(), mutation.getValue(), databaseSession);
+					addPid(pids, mutation);
+					break;
+				case DELETE:
+					keyValueStore.replicateDelete(tableName, mutation.getKey(), databaseSession);
+					addPid(pids, mutation);
+					break;
+				case DELETE_DUPLICATE:
+					keyValueStore.replicateDeleteDuplicate(tableName, mutation.getKey(), mutation.getValue(), databaseSession);
+					break;
+				}
+			}
+			databaseSession.getBimTransaction().commit();
+			for (int pid : pids) {
+				database.getVisibilityIndex().invalidate(pid);
+			}
+		} finally {
+			databaseSession.close();
+		}
+	}
+
+	/*
+	 * Object records are keyed (pid, oid, -rid), for other tables this at worst invalidates the VisibilityIndex of an unrelated project
+	 */
+	private void addPid(Set<Integer> pids, CommitLogMutation mutation) {
+		if (mutation.getKey().length == 16) {
+			pids.add(ByteBuffer.wrap(mutation.getKey()).getInt());
+		}
+	}
+
+	private void ensureTable(DatabaseSession databaseSession, CommitLogMutation mutation) throws BimserverDatabaseException {
+		String tableName = mutation.getTableName();
+		if (keyValueStore.isOpen(tableName)) {
+			return;
+		}
+		boolean index = mutation.getType() == CommitLogMutation.Type.CREATE_INDEX_TABLE;
+		if (keyValueStore.containsTable(tableName)) {
+			if (index) {
+				keyValueStore.openIndexTable(databaseSession, tableName, mutation.isTransactional());
+			} else {
+				keyValueStore.openTable(databaseSession, tableName, mutation.isTransactional());
+			}
+		} else if (index) {
+			keyValueStore.createIndexTable(tableName, databaseSession, mutation.isTransactional());
+		} else {
+			keyValueStore.createTable(tableName, databaseSession, mutation.isTransactional());
+		}
+	}
+
+	private void closeChannel() {
+		if (channel != null) {
+			try {
+				channel.close();
+			} catch (IOException e) {
+				LOGGER.error("", e);
+			}
+			channel = null;
+		}
+	}
+
+	/*
+	 * Tables that are not transactional are written lazily, so the store is synced before the position is saved
+	 */
+	private void savePosition() {
+		long sequence = lastAppliedSequence;
+		keyValueStore.sync();
+		try {
+			writePosition(positionFile, sequence);
+			savedSequence = sequence;
+		} catch (IOException e) {
+			LOGGER.error("", e);
+		}
+		lastSave = System.currentTimeMillis();
+	}
+
+	public static long readPosition(Path positionFile) throws IOException {
+		if (!Files.exists(positionFile)) {
+			return 0;
+		}
+		String content = new String(Files.readAllBytes(positionFile), StandardCharsets.UTF_8).trim();
+		try {
+			return Long.parseLong(content);
+		} catch (NumberFormatException e) {
+			throw new IOException("Invalid replication position in " + positionFile + ": " + content);
+		}
+	}
+
+	public static void writePosition(Path positionFile, long sequence) throws IOException {
+		Path tempFile = positionFile.resolveSibling(POSITION_FILE + ".tmp");
+		Files.write(tempFile, Long.toString(sequence).getBytes(StandardCharsets.UTF_8));
+		Files.move(tempFile, positionFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	public Path getLogDirectory() {
+		return logDirectory;
+	}
+
+	public long getLastAppliedSequence() {
+		return lastAppliedSequence;
+	}
+
+	/**
+	 * @return The time at which the last applied entry was committed on the primary, 0 when nothing has been applied yet
+	 */
+	public long getLastAppliedTimestamp() {
+		return lastAppliedTimestamp;
+	}
+
+	public long getAppliedEntries() {
+		return appliedEntries;
+	}
+
+	/**
+	 * @return Whether all entries the primary has written have been applied
+	 */
+	public boolean isCaughtUp() {
+		return caughtUp;
+	}
+
+	/**
+	 * @return How long ago the oldest entry that has not been applied yet was committed on the primary, 0 when caught up
+	 */
+	public long getLagMillis() {
+		if (caughtUp) {
+			return 0;
+		}
+		long pending = pendingTimestamp;
+		return pending == 0 ? 0 : Math.max(0, System.currentTimeMillis() - pending);
+	}
+}
@@ -0,0 +1,106 @@
+package org.bimserver.database.berkeley;
+
+/******************************************************************************
+ * Copyright (C) 2009-2019  BIMserver.org
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see {@literal<http://www.gnu.org/licenses/>}.
+ *****************************************************************************/
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+
+/**
+ * The serialized mutations of one transaction until it commits. Mutations are serialized when they are made, the first
+ * SPILL_THRESHOLD bytes are kept in memory, the rest goes to a temporary file in the directory of the CommitLog. This way a large
+ * transaction does not keep a copy of all its changes on the heap.
+ */
+public class CommitLogSpool implements AutoCloseable {
+	static final int SPILL_THRESHOLD = 1024 * 1024;
+	private static final int COPY_BUFFER_SIZE = 64 * 1024;
+
+	private final Path tmpDirectory;
+	private ByteArrayOutputStream memory = new ByteArrayOutputStream(256);
+	private DataOutputStream output = new DataOutputStream(memory);
+	private Path file;
+	private long spilledSize;
+	private int nrMutations;
+
+	CommitLogSpool(Path tmpDirectory) {
+		this.tmpDirectory = tmpDirectory;
+	}
+
+	public void add(CommitLogMutation mutation) throws IOException {
+		mutation.writeTo(output);
+		nrMutations++;
+		if (file == null && memory.size() > SPILL_THRESHOLD) {
+			file = Files.createTempFile(tmpDirectory, "transaction", ".spool");
+			BufferedOutputStream fileOutput = new BufferedOutputStream(Files.newOutputStream(file), COPY_BUFFER_SIZE);
+			memory.writeTo(fileOutput);
+			spilledSize = memory.size();
+			memory = null;
+			output = new DataOutputStream(fileOutput);
+		}
+	}
+
+	public int getNrMutations() {
+		return nrMutations;
+	}
+
+	/**
+	 * @return The number of bytes of the serialized mutations
+	 */
+	public long size() {
+		// After spilling the DataOutputStream only counts what has been added since
+		return file == null ? memory.size() : spilledSize + output.size();
+	}
+
+	/**
+	 * Writes the serialized mutations to the channel, at the current position of the channel
+	 */
+	void transferTo(FileChannel channel, CRC32 crc32) throws IOException {
+		if (file == null) {
+			byte[] bytes = memory.toByteArray();
+			crc32.update(bytes);
+			CommitLog.writeFully(channel, ByteBuffer.wrap(bytes));
+			return;
+		}
+		output.flush();
+		ByteBuffer buffer = ByteBuffer.allocate(COPY_BUFFER_SIZE);
+		try (FileChannel spoolChannel = FileChannel.open(file, StandardOpenOption.READ)) {
+			while (spoolChannel.read(buffer) != -1) {
+				buffer.flip();
+				crc32.update(buffer.array(), 0, buffer.limit());
+				CommitLog.writeFully(channel, buffer);
+				buffer.clear();
+			}
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		if (file != null) {
+			output.close();
+			Files.deleteIfExists(file);
+			file = null;
+		}
+	}
+}
@@ -0,0 +1,272 @@
+package org.bimserver.database.berkeley;
+
+/******************************************************************************
+ * Copyright (C) 2009-2019  BIMserver.org
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see {@literal<http://www.gnu.org/licenses/>}.
+ *****************************************************************************/
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Copy-on-write view of the versioned (metadata) tables, used to give read-only sessions a snapshot without taking any locks.
+ *
+ * Before a write transaction changes a record in a versioned table, the committed value of that record (the pre-image) is
+ * registered here. When the transaction finishes (either commit or abort) the pre-images are tagged with the next value of the commit
+ * sequence. A snapshot that was taken at sequence S sees, for every record, the pre-image of the oldest version that finished after S
+ * (or did not finish yet), and the value in the database when there is no such version.
+ *
+ * The versions are kept per table and per record, registering and looking up a version only locks the chain of that record. The commit
+ * sequence and the active snapshots are kept under one small lock. Pre-images are dropped as soon as no active snapshot can need them
+ * anymore: finished writers are queued in commit order, when the oldest snapshot moves on only the records of the writers it passed
+ * are pruned.
+ */
+public class RecordVersions {
+
+	private static final long PENDING = Long.MAX_VALUE;
+
+	public static class Version {
+		private final byte[] preImage;
+		private final Writer writer;
+
+		private Version(byte[] preImage, Writer writer) {
+			this.preImage = preImage;
+			this.writer = writer;
+		}
+
+		/**
+		 * @return The value of the record before this version was written, null if the record did not exist
+		 */
+		public byte[] getPreImage() {
+			return preImage;
+		}
+	}
+
+	/**
+	 * The versions of one write transaction, they all finish at the same moment. Only used by the thread of the transaction.
+	 */
+	public static class Writer {
+		private final Set<RecordKey> keys = new LinkedHashSet<>();
+		private volatile long finishedAt = PENDING;
+
+		private Writer() {
+		}
+
+		/**
+		 * @return Whether the pre-image of the given record has already been registered, later writes to it do not need one
+		 */
+		public boolean hasRegistered(String tableName, byte[] key) {
+			return keys.contains(new RecordKey(tableName, ByteBuffer.wrap(key)));
+		}
+	}
+
+	private static class Chain {
+		private final List<Version> versions = new ArrayList<>(1);
+
+		// Set when the (empty) chain has been removed from its table, a writer has to look up the chain again
+		private boolean removed;
+	}
+
+	private final Map<String, Map<ByteBuffer, Chain>> versions = new ConcurrentHashMap<>();
+	private final Queue<Writer> finishedWriters = new ConcurrentLinkedQueue<>();
+	private final Object pruneLock = new Object();
+
+	private final Object sequenceLock = new Object();
+	private final Map<Long, Long> activeSnapshots = new HashMap<>();
+
+	/*
+	 * Multiset of the sequence numbers of the active snapshots, used to quickly find the oldest one
+	 */
+	private final TreeMap<Long, Integer> activeSequences = new TreeMap<>();
+	private long commitSequence;
+	private long snapshotCounter;
+
+	public Writer createWriter() {
+		return new Writer();
+	}
+
+	/**
+	 * Registers the current value of a record before the given writer overwrites, inserts or deletes it. Only the first write of a
+	 * transaction to a record is registered, later writes by the same transaction are not visible to anyone but the transaction itself.
+	 *
+	 * @return true if a new version was registered
+	 */
+	public boolean registerWrite(Writer writer, String tableName, byte[] key, byte[] preImage) {
+		RecordKey recordKey = new RecordKey(tableName, ByteBuffer.wrap(key.clone()));
+		if (!writer.keys.add(recordKey)) {
+			return false;
+		}
+		Map<ByteBuffer, Chain> table = versions.computeIfAbsent(tableName, t -> new ConcurrentHashMap<>());
+		Version version = new Version(preImage, writer);
+		while (true) {
+			Chain chain = table.computeIfAbsent(recordKey.key, k -> new Chain());
+			synchronized (chain) {
+				if (!chain.removed) {
+					chain.versions.add(version);
+					return true;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Must be called after the transaction has been committed or aborted in the underlying database, also when it did not write to any
+	 * versioned table. An aborted transaction is handled the same as a committed one, its pre-image equals the value that is in the
+	 * database after the abort, but readers that saw the uncommitted value before the abort will now get the pre-image.
+	 */
+	public void transactionFinished(Writer writer) {
+		synchronized (sequenceLock) {
+			commitSequence++;
+			if (!writer.keys.isEmpty()) {
+				// All versions of the writer become visible at once, before any snapshot can see the new sequence
+				writer.finishedAt = commitSequence;
+				finishedWriters.add(writer);
+			}
+		}
+		prune();
+	}
+
+	/**
+	 * @return The version a snapshot taken at the given sequence should see, or null when the value in the database is visible
+	 */
+	public Version getVisibleVersion(String tableName, byte[] key, long snapshotSequence) {
+		Map<ByteBuffer, Chain> table = versions.get(tableName);
+		if (table == null) {
+			return null;
+		}
+		Chain chain = table.get(ByteBuffer.wrap(key));
+		if (chain == null) {
+			return null;
+		}
+		synchronized (chain) {
+			for (Version version : chain.versions) {
+				if (version.writer.finishedAt > snapshotSequence) {
+					return version;
+				}
+			}
+		}
+		return null;
+	}
+
+	public long startSnapshot() {
+		synchronized (sequenceLock) {
+			long snapshotId = ++snapshotCounter;
+			activeSnapshots.put(snapshotId, commitSequence);
+			Integer count = activeSequences.get(commitSequence);
+			activeSequences.put(commitSequence, count == null ? 1 : count + 1);
+			return snapshotId;
+		}
+	}
+
+	public long getSnapshotSequence(long snapshotId) {
+		synchronized (sequenceLock) {
+			return activeSnapshots.get(snapshotId);
+		}
+	}
+
+	public void endSnapshot(long snapshotId) {
+		synchronized (sequenceLock) {
+			Long sequence = activeSnapshots.remove(snapshotId);
+			if (sequence == null) {
+				return;
+			}
+			Integer count = activeSequences.get(sequence);
+			if (count == 1) {
+				activeSequences.remove(sequence);
+			} else {
+				activeSequences.put(sequence, count - 1);
+			}
+		}
+		prune();
+	}
+
+	/*
+	 * A finished version is only needed by snapshots that were taken before it finished
+	 */
+	private long getOldestSnapshotSequence() {
+		synchronized (sequenceLock) {
+			return activeSequences.isEmpty() ? commitSequence : activeSequences.firstKey();
+		}
+	}
+
+	private void prune() {
+		synchronized (pruneLock) {
+			long oldestSnapshot = getOldestSnapshotSequence();
+			// The queue is in commit order, so it can stop at the first writer that is still needed
+			Writer writer = finishedWriters.peek();
+			while (writer != null && writer.finishedAt <= oldestSnapshot) {
+				finishedWriters.poll();
+				for (RecordKey recordKey : writer.keys) {
+					removeObsolete(recordKey, oldestSnapshot);
+				}
+				writer = finishedWriters.peek();
+			}
+		}
+	}
+
+	private void removeObsolete(RecordKey recordKey, long oldestSnapshot) {
+		Map<ByteBuffer, Chain> table = versions.get(recordKey.tableName);
+		Chain chain = table.get(recordKey.key);
+		if (chain == null) {
+			return;
+		}
+		synchronized (chain) {
+			Iterator<Version> iterator = chain.versions.iterator();
+			while (iterator.hasNext()) {
+				if (iterator.next().writer.finishedAt <= oldestSnapshot) {
+					iterator.remove();
+				}
+			}
+			if (chain.versions.isEmpty()) {
+				chain.removed = true;
+				table.remove(recordKey.key, chain);
+			}
+		}
+	}
+
+	private static class RecordKey {
+		private final String tableName;
+		private final ByteBuffer key;
+
+		private RecordKey(String tableName, ByteBuffer key) {
+			this.tableName = tableName;
+			this.key = key;
+		}
+
+		@Override
+		public int hashCode() {
+			return 31 * tableName.hashCode() + key.hashCode();
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (!(obj instanceof RecordKey)) {
+				return false;
+			}
+			RecordKey other = (RecordKey) obj;
+			return tableName.equals(other.tableName) && key.equals(other.key);
+		}
+	}
+}
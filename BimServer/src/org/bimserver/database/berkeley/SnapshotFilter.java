@@ -0,0 +1,47 @@
+package org.bimserver.database.berkeley;
+
+/******************************************************************************
+ * Copyright (C) 2009-2019  BIMserver.org
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see {@literal<http://www.gnu.org/licenses/>}.
+ *****************************************************************************/
+
+import com.sleepycat.je.DatabaseEntry;
+
+/**
+ * Used by the record iterators to present a versioned table as it was when a snapshot was taken
+ */
+public class SnapshotFilter {
+	private final BerkeleySnapshotTransaction snapshot;
+	private final String tableName;
+
+	public SnapshotFilter(BerkeleySnapshotTransaction snapshot, String tableName) {
+		this.snapshot = snapshot;
+		this.tableName = tableName;
+	}
+
+	/**
+	 * @return The value visible to the snapshot, or null if the record did not exist when the snapshot was taken
+	 */
+	public DatabaseEntry filter(DatabaseEntry key, DatabaseEntry value) {
+		RecordVersions.Version version = snapshot.getVisibleVersion(tableName, key.getData());
+		if (version == null) {
+			return value;
+		}
+		if (version.getPreImage() == null) {
+			return null;
+		}
+		return new DatabaseEntry(version.getPreImage());
+	}
+}
@@ -22,15 +22,30 @@ import com.sleepycat.je.Database;
 public class TableWrapper {
 	private Database database;
 	private boolean transactional;
+	private boolean versioned;
+	private boolean sortedDuplicates;
 
-	public TableWrapper(Database database, boolean transactional) {
+	public TableWrapper(Database database, boolean transactional, boolean versioned) {
 		this.database = database;
 		this.transactional = transactional;
+		this.versioned = versioned;
+		this.sortedDuplicates = database.getConfig().getSortedDuplicates();
 	}
 	
 	public boolean isTransactional() {
 		return transactional;
 	}
+
+	/**
+	 * @return Whether changes to this table are registered in RecordVersions, so snapshot readers can read it without locking
+	 */
+	public boolean isVersioned() {
+		return versioned;
+	}
+
+	public boolean isSortedDuplicates() {
+		return sortedDuplicates;
+	}
 	
 	public Database getDatabase() {
 		return database;
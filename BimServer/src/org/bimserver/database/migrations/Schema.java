@@ -334,6 +334,13 @@ public class Schema {
 		eClass.getEStructuralFeatures().remove(eClass.getEStructuralFeature(name));
 	}
 
+	/**
+	 * For changes to the way data is stored that do not follow from a change to the schema
+	 */
+	public void addChange(Change change) {
+		changes.add(change);
+	}
+
 	public void addIndex(EStructuralFeature eStructuralFeature) {
 		for (EAnnotation eAnnotation : eStructuralFeature.getEAnnotations()) {
 			if (eAnnotation.getSource().equals("singleindex")) {
@@ -0,0 +1,113 @@
+package org.bimserver.database.migrations.change;
+
+/******************************************************************************
+ * Copyright (C) 2009-2019  BIMserver.org
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see {@literal<http://www.gnu.org/licenses/>}.
+ *****************************************************************************/
+
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.bimserver.BimserverDatabaseException;
+import org.bimserver.database.CompactRecordCodec;
+import org.bimserver.database.Database;
+import org.bimserver.database.DatabaseSession;
+import org.bimserver.database.KeyValueStore;
+import org.bimserver.database.OperationType;
+import org.bimserver.database.Record;
+import org.bimserver.database.RecordIterator;
+import org.bimserver.database.Registry;
+import org.bimserver.database.migrations.NotImplementedException;
+import org.bimserver.database.migrations.Schema;
+import org.bimserver.shared.exceptions.ServiceException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Rewrites all records of the type tables in the format of {@link CompactRecordCodec}. Every table is converted in its own
+ * transactions and the codec is enabled for a table as soon as its conversion has been committed, so a failing conversion leaves the
+ * tables that have not been converted yet in the fixed width format. Converted tables are skipped when the migration is run again.
+ */
+public class CompactRecordsChange implements Change {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(CompactRecordsChange.class);
+
+	@Override
+	public void change(Database database, DatabaseSession databaseSession) throws NotImplementedException, BimserverDatabaseException {
+		KeyValueStore keyValueStore = database.getKeyValueStore();
+		CompactRecordCodec codec = database.getCompactRecordCodec();
+		// Sorted, so the order of conversion (and of the log) does not depend on the hashing of the table names
+		Set<String> tableNames = new TreeSet<>(codec.getTableNames());
+		for (String tableName : tableNames) {
+			if (codec.isEnabled(tableName) || !keyValueStore.containsTable(tableName)) {
+				continue;
+			}
+			convert(database, codec, tableName);
+		}
+	}
+
+	private void convert(Database database, CompactRecordCodec codec, String tableName) throws BimserverDatabaseException {
+		KeyValueStore keyValueStore = database.getKeyValueStore();
+		Registry registry = database.getRegistry();
+		String registryKey = CompactRecordCodec.getRegistryKey(tableName);
+
+		// The type tables are not transactional, this marker tells a server that is started after a crash that this table may be half converted
+		DatabaseSession markerSession = database.createSession(OperationType.POSSIBLY_WRITE);
+		try {
+			registry.save(registryKey, CompactRecordCodec.CONVERTING, markerSession);
+			markerSession.commit();
+		} catch (ServiceException e) {
+			throw new BimserverDatabaseException(e);
+		} finally {
+			markerSession.close();
+		}
+
+		long oldSize = 0;
+		long newSize = 0;
+		DatabaseSession session = database.createSession(OperationType.POSSIBLY_WRITE);
+		try {
+			RecordIterator recordIterator = keyValueStore.getRecordIterator(tableName, session);
+			try {
+				Record record = recordIterator.next();
+				while (record != null) {
+					byte[] value = record.getValue();
+					byte[] converted = codec.convert(tableName, value, 0, value.length);
+					keyValueStore.store(tableName, record.getKey(), converted, session);
+					oldSize += value.length;
+					newSize += converted.length;
+					record = recordIterator.next();
+				}
+			} finally {
+				recordIterator.close();
+			}
+			// Make sure the records are on disk before the table is marked as converted
+			keyValueStore.sync();
+			registry.save(registryKey, CompactRecordCodec.COMPACT, session);
+			session.commit();
+		} catch (ServiceException e) {
+			throw new BimserverDatabaseException(e);
+		} finally {
+			session.close();
+		}
+		codec.enable(tableName);
+		if (oldSize > 0) {
+			LOGGER.info("Converted " + tableName + " to compact records (" + oldSize + " bytes to " + newSize + " bytes)");
+		}
+	}
+
+	@Override
+	public void doSchemaChanges(Schema schema) {
+	}
+}
@@ -74,7 +74,6 @@ public class QueryBoundingBoxStackFrame extends DatabaseReadingStackFrame implem
 
 		currentObject = null;
 		
-		ByteBuffer nextKeyStart = ByteBuffer.allocate(12);
 		getQueryObjectProvider().incReads();
 		ByteBuffer keyBuffer = ByteBuffer.wrap(record.getKey());
 		int keyPid = keyBuffer.getInt();
@@ -82,14 +81,8 @@ public class QueryBoundingBoxStackFrame extends DatabaseReadingStackFrame implem
 		int keyRid = -keyBuffer.getInt();
 		ByteBuffer valueBuffer = ByteBuffer.wrap(record.getValue());
 		GetResult map = getMap(eClass, eClass, valueBuffer, keyPid, keyOid, keyRid);
-		if (map == GetResult.CONTINUE_WITH_NEXT_OID) {
-			nextKeyStart.position(0);
-			nextKeyStart.putInt(getReusable().getPid());
-			nextKeyStart.putLong(keyOid + 1);
-			record = typeRecordIterator.next(nextKeyStart.array());
-		} else {
-			record = typeRecordIterator.next();
-		}
+		byte[] seekKey = getSeekKey(map, keyOid);
+		record = seekKey == null ? typeRecordIterator.next() : typeRecordIterator.next(seekKey);
 
 		if (currentObject != null) {
 			if (currentObject.has("geometry")) {
@@ -30,6 +30,7 @@ import org.bimserver.database.DatabaseSession.GetResult;
 import org.bimserver.database.ObjectIdentifier;
 import org.bimserver.database.Record;
 import org.bimserver.database.SearchingRecordIterator;
+import org.bimserver.database.queries.QueryPlanner.AccessPath;
 import org.bimserver.database.queries.om.QueryException;
 import org.bimserver.database.queries.om.QueryPart;
 import org.bimserver.plugins.deserializers.DatabaseInterface;
@@ -49,30 +50,27 @@ public class QueryClassificationsAndTypesStackFrame extends DatabaseReadingStack
 	private EClass eClass;
 	private SearchingRecordIterator typeRecordIterator;
 	private Record record;
-	private Set<Long> allowedOids = new HashSet<>();
+	private Set<Long> allowedOids;
+	private List<Long> candidates;
 
-	@SuppressWarnings("unchecked")
 	public QueryClassificationsAndTypesStackFrame(QueryObjectProvider queryObjectProvider, EClass eClass, QueryPart partialQuery, QueryContext reusable, Set<String> classifications) throws BimserverDatabaseException {
 		super(reusable, queryObjectProvider, partialQuery);
 		this.eClass = eClass;
 
-		DatabaseSession databaseSession = getQueryObjectProvider().getDatabaseSession();
-		String schemaName = eClass.getEPackage().getName();
-		EClass classificationReferenceClass = databaseSession.getEClass(schemaName, "IfcClassificationReference");
-		EClass relAssociatesClassificationReferenceClass = databaseSession.getEClass(schemaName, "IfcRelAssociatesClassification");
-		EStructuralFeature classificationKeyFeature = classificationReferenceClass.getEStructuralFeature(1); // renamed from "ItemReference" in IFC2x3 to "Identification" in IFC4
-		for (String classification : classifications) {
-			List<ObjectIdentifier> objectIdentifiers = getOids(classificationReferenceClass, classificationKeyFeature, classification, databaseSession, reusable.getPid(), reusable.getRid());
-			for (ObjectIdentifier objectIdentifier : objectIdentifiers) {
-				// Now we need to get all the IfcRelAssociatesClassification objects referencing this one
-				List<ObjectIdentifier> relAssociates = getOids(relAssociatesClassificationReferenceClass, relAssociatesClassificationReferenceClass.getEStructuralFeature("RelatingClassification"), objectIdentifier.getOid(), databaseSession, reusable.getPid(), reusable.getRid());
-				for (ObjectIdentifier objectIdentifier2 : relAssociates) {
-					HashMapVirtualObject relAssociatesClassification = getByOid(objectIdentifier2.getOid());
-					List<Long> relatedObjects = (List<Long>) relAssociatesClassification.eGet(relAssociatesClassificationReferenceClass.getEStructuralFeature("RelatedObjects"));
-					
-					allowedOids.addAll(relatedObjects);
-				}
-			}
+		QueryPlanner queryPlanner = queryObjectProvider.getQueryPlanner();
+		allowedOids = queryPlanner.getResolvedClassifications(partialQuery);
+		if (allowedOids == null) {
+			allowedOids = resolveClassifications(reusable, classifications);
+			queryPlanner.setResolvedClassifications(partialQuery, allowedOids);
+		}
+		
+		List<Long> candidatesOfType = queryPlanner.getCandidates(allowedOids, eClass);
+		AccessPath accessPath = queryPlanner.choose(partialQuery, eClass, reusable, "classifications", candidatesOfType.size());
+		if (accessPath == AccessPath.EMPTY) {
+			return; // will skip to next one
+		} else if (accessPath == AccessPath.POINT_SEEKS) {
+			candidates = candidatesOfType;
+			return;
 		}
 		
 		String tableName = eClass.getEPackage().getName() + "_" + eClass.getName();
@@ -94,6 +92,33 @@ public class QueryClassificationsAndTypesStackFrame extends DatabaseReadingStack
 		}
 	}
 
+	/*
+	 * Finds the oids of all objects (of any type) that are associated with one of the given classifications
+	 */
+	@SuppressWarnings("unchecked")
+	private Set<Long> resolveClassifications(QueryContext reusable, Set<String> classifications) throws BimserverDatabaseException {
+		Set<Long> allowedOids = new HashSet<>();
+		DatabaseSession databaseSession = getQueryObjectProvider().getDatabaseSession();
+		String schemaName = eClass.getEPackage().getName();
+		EClass classificationReferenceClass = databaseSession.getEClass(schemaName, "IfcClassificationReference");
+		EClass relAssociatesClassificationReferenceClass = databaseSession.getEClass(schemaName, "IfcRelAssociatesClassification");
+		EStructuralFeature classificationKeyFeature = classificationReferenceClass.getEStructuralFeature(1); // renamed from "ItemReference" in IFC2x3 to "Identification" in IFC4
+		for (String classification : classifications) {
+			List<ObjectIdentifier> objectIdentifiers = getOids(classificationReferenceClass, classificationKeyFeature, classification, databaseSession, reusable.getPid(), reusable.getRid());
+			for (ObjectIdentifier objectIdentifier : objectIdentifiers) {
+				// Now we need to get all the IfcRelAssociatesClassification objects referencing this one
+				List<ObjectIdentifier> relAssociates = getOids(relAssociatesClassificationReferenceClass, relAssociatesClassificationReferenceClass.getEStructuralFeature("RelatingClassification"), objectIdentifier.getOid(), databaseSession, reusable.getPid(), reusable.getRid());
+				for (ObjectIdentifier objectIdentifier2 : relAssociates) {
+					HashMapVirtualObject relAssociatesClassification = getByOid(objectIdentifier2.getOid());
+					List<Long> relatedObjects = (List<Long>) relAssociatesClassification.eGet(relAssociatesClassificationReferenceClass.getEStructuralFeature("RelatedObjects"));
+					
+					allowedOids.addAll(relatedObjects);
+				}
+			}
+		}
+		return allowedOids;
+	}
+
 	public ObjectIdentifier getOid(EClass eClass, EAttribute attribute, Object value, DatabaseInterface databaseInterface, int pid, int rid) throws BimserverDatabaseException {
 		if (attribute.getEAnnotation("singleindex") != null) {
 			String indexTableName = attribute.getEContainingClass().getEPackage().getName() + "_" + eClass.getName() + "_" + attribute.getName();
@@ -157,6 +182,10 @@ public class QueryClassificationsAndTypesStackFrame extends DatabaseReadingStack
 	
 	@Override
 	boolean process() throws BimserverDatabaseException, QueryException, JsonParseException, JsonMappingException, IOException {
+		if (candidates != null) {
+			getQueryObjectProvider().push(new QueryOidsAndTypesStackFrame(getQueryObjectProvider(), eClass, getQueryPart(), getReusable(), candidates));
+			return true;
+		}
 		if (typeRecordIterator == null) {
 			return true;
 		}
@@ -168,7 +197,6 @@ public class QueryClassificationsAndTypesStackFrame extends DatabaseReadingStack
 
 		currentObject = null;
 
-		ByteBuffer nextKeyStart = ByteBuffer.allocate(12);
 		getQueryObjectProvider().incReads();
 		ByteBuffer keyBuffer = ByteBuffer.wrap(record.getKey());
 		int keyPid = keyBuffer.getInt();
@@ -176,14 +204,8 @@ public class QueryClassificationsAndTypesStackFrame extends DatabaseReadingStack
 		int keyRid = -keyBuffer.getInt();
 		ByteBuffer valueBuffer = ByteBuffer.wrap(record.getValue());
 		GetResult map = getMap(eClass, eClass, valueBuffer, keyPid, keyOid, keyRid);
-		if (map == GetResult.CONTINUE_WITH_NEXT_OID) {
-			nextKeyStart.position(0);
-			nextKeyStart.putInt(getReusable().getPid());
-			nextKeyStart.putLong(keyOid + 1);
-			record = typeRecordIterator.next(nextKeyStart.array());
-		} else {
-			record = typeRecordIterator.next();
-		}
+		byte[] seekKey = getSeekKey(map, keyOid);
+		record = seekKey == null ? typeRecordIterator.next() : typeRecordIterator.next(seekKey);
 
 		if (currentObject != null) {
 			if (!allowedOids.contains(currentObject.getOid())) {
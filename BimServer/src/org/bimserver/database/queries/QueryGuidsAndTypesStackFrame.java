@@ -19,7 +19,9 @@ package org.bimserver.database.queries;
 
 import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
 
 import org.bimserver.BimserverDatabaseException;
@@ -142,7 +144,10 @@ public class QueryGuidsAndTypesStackFrame extends DatabaseReadingStackFrame {
 			return true;
 		} else {
 			converted = true;
-			queryObjectProvider.push(new QueryOidsAndTypesStackFrame(queryObjectProvider, eClass, jsonQuery, reusable, new ArrayList<>(oids)));
+			// The oids frame seeks in order, so the oids have to be sorted
+			List<Long> sortedOids = new ArrayList<>(oids);
+			Collections.sort(sortedOids);
+			queryObjectProvider.push(new QueryOidsAndTypesStackFrame(queryObjectProvider, eClass, jsonQuery, reusable, sortedOids));
 			return false;
 		}
 	}
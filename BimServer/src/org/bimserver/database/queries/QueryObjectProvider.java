@@ -64,6 +64,7 @@ public class QueryObjectProvider implements ObjectProvider {
 	private Deque<StackFrame> stack;
 	private long start = -1;
 	private long reads = 0;
+	private long skipped = 0;
 	private long stackFramesProcessed = 0;
 	private final Set<Long> goingToRead = new LongOpenHashSet();
 	private Query query;
@@ -72,6 +73,8 @@ public class QueryObjectProvider implements ObjectProvider {
 	private Set<Long> roids;
 
 	private final PackageMetaData packageMetaData;
+	private final QueryPlanner queryPlanner = new QueryPlanner(this);
+	private boolean planLogged;
 
 	public QueryObjectProvider(DatabaseSession databaseSession, BimServer bimServer, Query query, Set<Long> roids, PackageMetaData packageMetaData) throws IOException, QueryException {
 		this.databaseSession = databaseSession;
@@ -184,9 +187,28 @@ public class QueryObjectProvider implements ObjectProvider {
 			throw new BimserverDatabaseException(e);
 		}
 
+		if (query.isExplain() && !planLogged) {
+			planLogged = true;
+			LOGGER.info("Query " + query.getName() + ", plan: " + explain());
+		}
 		return null;
 	}
 	
+	public QueryPlanner getQueryPlanner() {
+		return queryPlanner;
+	}
+	
+	/**
+	 * @return The access paths chosen so far (see QueryPlanner) and the number of records read, complete once next has returned null
+	 */
+	public ObjectNode explain() {
+		ObjectNode result = queryPlanner.toJson();
+		result.put("reads", reads);
+		result.put("skipped", skipped);
+		result.put("objects", oidsRead.size());
+		return result;
+	}
+	
 	public StackFrame getStackFrame() {
 		return stackFrame;
 	}
@@ -212,12 +234,28 @@ public class QueryObjectProvider implements ObjectProvider {
 			}
 		}
 		long end = System.nanoTime();
-		LOGGER.debug("Query " + query.getName() + ", " + reads + " reads, " + stackFramesProcessed + " stack frames processed, " + oidsRead.size() + " objects read, " + ((end - start) / 1000000) + "ms");
+		LOGGER.debug("Query " + query.getName() + ", " + reads + " reads, " + skipped + " skipped, " + stackFramesProcessed + " stack frames processed, " + oidsRead.size() + " objects read, " + ((end - start) / 1000000) + "ms");
+		LOGGER.debug("Plan: " + queryPlanner.toJson());
 	}
 
 	public void incReads() {
 		reads++;
 	}
+	
+	/**
+	 * Counts the records that were read but are not visible in the revision being queried (newer versions, deleted objects, versions below the stop rid)
+	 */
+	public void incSkipped() {
+		skipped++;
+	}
+	
+	public long getReads() {
+		return reads;
+	}
+	
+	public long getSkipped() {
+		return skipped;
+	}
 
 	public DatabaseSession getDatabaseSession() {
 		return databaseSession;
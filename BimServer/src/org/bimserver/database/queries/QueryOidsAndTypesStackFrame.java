@@ -39,6 +39,7 @@ public class QueryOidsAndTypesStackFrame extends DatabaseReadingStackFrame imple
 	private SearchingRecordIterator typeRecordIterator;
 	private Record record;
 	private Iterator<Long> oidIterator;
+	private long expectedOid;
 
 	public QueryOidsAndTypesStackFrame(QueryObjectProvider queryObjectProvider, EClass eClass, QueryPart queryPart, QueryContext reusable, List<Long> oids) throws BimserverLockConflictException, BimserverDatabaseException, QueryException {
 		super(reusable, queryObjectProvider, queryPart);
@@ -64,6 +65,7 @@ public class QueryOidsAndTypesStackFrame extends DatabaseReadingStackFrame imple
 			} else {
 				return;
 			}
+			expectedOid = startOid;
 			ByteBuffer tmp = ByteBuffer.allocate(12);
 			tmp.putInt(getReusable().getPid());
 			tmp.putLong(startOid);
@@ -73,6 +75,7 @@ public class QueryOidsAndTypesStackFrame extends DatabaseReadingStackFrame imple
 //			LOGGER.warn("Potential too-many-reads");
 			oidIterator = oids.iterator();
 			long firstOid = oidIterator.next();
+			expectedOid = firstOid;
 			ByteBuffer tmp = ByteBuffer.allocate(12);
 			tmp.putInt(getReusable().getPid());
 			tmp.putLong(firstOid);
@@ -94,28 +97,27 @@ public class QueryOidsAndTypesStackFrame extends DatabaseReadingStackFrame imple
 
 		currentObject = null;
 		
-		ByteBuffer nextKeyStart = ByteBuffer.allocate(12);
 		getQueryObjectProvider().incReads();
 		ByteBuffer keyBuffer = ByteBuffer.wrap(record.getKey());
 		int keyPid = keyBuffer.getInt();
 		long keyOid = keyBuffer.getLong();
 		int keyRid = -keyBuffer.getInt();
-		ByteBuffer valueBuffer = ByteBuffer.wrap(record.getValue());
-		GetResult map = getMap(eClass, eClass, valueBuffer, keyPid, keyOid, keyRid);
-		if (map == GetResult.CONTINUE_WITH_NEXT_OID) {
-			if (oidIterator.hasNext()) {
-				nextKeyStart.position(0);
-				nextKeyStart.putInt(getReusable().getPid());
-				nextKeyStart.putLong(oidIterator.next());
-				record = typeRecordIterator.next(nextKeyStart.array());
+		if (keyOid != expectedOid) {
+			// There is no (visible) record for the expected oid, the cursor ended up at the records of another object
+			record = seek(keyOid);
+		} else {
+			ByteBuffer valueBuffer = ByteBuffer.wrap(record.getValue());
+			GetResult map = getMap(eClass, eClass, valueBuffer, keyPid, keyOid, keyRid);
+			if (map == GetResult.CONTINUE_WITH_NEXT_OID) {
+				record = seek(expectedOid + 1);
+			} else if (map == GetResult.SEEK_VISIBLE_VERSION) {
+				record = typeRecordIterator.next(getSeekKey(map, keyOid));
 			} else {
-				record = null;
+				record = typeRecordIterator.next();
 			}
-		} else {
-			record = typeRecordIterator.next();
+			
+			processPossibleIncludes(currentObject, eClass, getQueryPart());
 		}
-
-		processPossibleIncludes(currentObject, eClass, getQueryPart());
 		
 		if (record == null) {
 			typeRecordIterator.close();
@@ -123,6 +125,20 @@ public class QueryOidsAndTypesStackFrame extends DatabaseReadingStackFrame imple
 		return record == null;
 	}
 
+	/*
+	 * Moves the cursor to the version that is visible in this revision of the next requested oid that is >= minimumOid
+	 */
+	private Record seek(long minimumOid) throws BimserverLockConflictException {
+		while (oidIterator.hasNext()) {
+			long oid = oidIterator.next();
+			if (oid >= minimumOid) {
+				expectedOid = oid;
+				return typeRecordIterator.next(getSeekKey(GetResult.SEEK_VISIBLE_VERSION, oid));
+			}
+		}
+		return null;
+	}
+
 	public HashMapVirtualObject getCurrentObject() {
 		return currentObject;
 	}
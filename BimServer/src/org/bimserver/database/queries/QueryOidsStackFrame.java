@@ -29,7 +29,6 @@ import org.bimserver.database.queries.om.QueryException;
 import org.bimserver.database.queries.om.QueryPart;
 import org.bimserver.shared.HashMapVirtualObject;
 import org.bimserver.shared.QueryContext;
-import org.bimserver.utils.BinUtils;
 import org.eclipse.emf.ecore.EClass;
 
 public class QueryOidsStackFrame extends DatabaseReadingStackFrame implements ObjectProvidingStackFrame {
@@ -47,19 +46,32 @@ public class QueryOidsStackFrame extends DatabaseReadingStackFrame implements Ob
 	}
 
 	public void prepareNext() throws BimserverDatabaseException {
-		if (!oidsIterator.hasNext()) {
-			record = null;
-			return;
+		record = null;
+		if (typeRecordIterator != null) {
+			typeRecordIterator.close();
+			typeRecordIterator = null;
 		}
-		Long oid = oidsIterator.next();
-		EClass eClass = getReusable().getDatabaseInterface().getEClassForOid(oid);
-		String tableName = eClass.getEPackage().getName() + "_" + eClass.getName();
-		if (getReusable().getOidCounters() != null) {
-			ByteBuffer tmp = ByteBuffer.allocate(12);
-			tmp.putInt(getReusable().getPid());
-			tmp.putLong(oid);
-			typeRecordIterator = getQueryObjectProvider().getDatabaseSession().getKeyValueStore().getRecordIterator(tableName, BinUtils.intToByteArray(getReusable().getPid()), tmp.array(), getQueryObjectProvider().getDatabaseSession());
+		while (record == null && oidsIterator.hasNext()) {
+			Long oid = oidsIterator.next();
+			EClass eClass = getReusable().getDatabaseInterface().getEClassForOid(oid);
+			String tableName = eClass.getEPackage().getName() + "_" + eClass.getName();
+			if (getReusable().getOidCounters() == null) {
+				return;
+			}
+			// Seek directly to the version that is visible in this revision, instead of starting at the newest version of the oid
+			ByteBuffer mustStartWith = ByteBuffer.allocate(12);
+			mustStartWith.putInt(getReusable().getPid());
+			mustStartWith.putLong(oid);
+			ByteBuffer startSearchWith = ByteBuffer.allocate(16);
+			startSearchWith.putInt(getReusable().getPid());
+			startSearchWith.putLong(oid);
+			startSearchWith.putInt(-getReusable().getRid());
+			typeRecordIterator = getQueryObjectProvider().getDatabaseSession().getKeyValueStore().getRecordIterator(tableName, mustStartWith.array(), startSearchWith.array(), getQueryObjectProvider().getDatabaseSession());
 			record = typeRecordIterator.next();
+			if (record == null) {
+				typeRecordIterator.close();
+				typeRecordIterator = null;
+			}
 		}
 	}
 	
@@ -83,9 +95,6 @@ public class QueryOidsStackFrame extends DatabaseReadingStackFrame implements Ob
 
 		processPossibleIncludes(currentObject, eClass, getQueryPart());
 		
-		if (record == null) {
-			typeRecordIterator.close();
-		}
 		prepareNext();
 		return record == null;
 	}
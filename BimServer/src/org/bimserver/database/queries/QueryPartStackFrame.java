@@ -27,6 +27,7 @@ import java.util.Map;
 import java.util.Set;
 
 import org.bimserver.BimserverDatabaseException;
+import org.bimserver.database.queries.QueryPlanner.AccessPath;
 import org.bimserver.database.queries.om.InBoundingBox;
 import org.bimserver.database.queries.om.Include;
 import org.bimserver.database.queries.om.Include.TypeDef;
@@ -146,22 +147,30 @@ public class QueryPartStackFrame extends StackFrame {
 		}
 		if (typeIterator.hasNext()) {
 			EClass eClass = typeIterator.next();
+			QueryPlanner queryPlanner = queryObjectProvider.getQueryPlanner();
 			if (oids != null) {
 				List<Long> oids2 = oids.get(eClass);
 				if (oids2 != null) {
+					queryPlanner.record(partialQuery, eClass, reusable, AccessPath.POINT_SEEKS, "oids", oids2.size());
 					queryObjectProvider.push(new QueryOidsAndTypesStackFrame(queryObjectProvider, eClass, partialQuery, reusable, oids2));
 				}
 			} else if (guids != null) {
+				queryPlanner.record(partialQuery, eClass, reusable, AccessPath.POINT_SEEKS, "guids", guids.size());
 				queryObjectProvider.push(new QueryGuidsAndTypesStackFrame(queryObjectProvider, eClass, partialQuery, reusable, guids));
 			} else if (names != null) {
+				queryPlanner.record(partialQuery, eClass, reusable, AccessPath.POINT_SEEKS, "names", names.size());
 				queryObjectProvider.push(new QueryNamesAndTypesStackFrame(queryObjectProvider, eClass, partialQuery, reusable, names));
 			} else if (properties != null) {
+				queryPlanner.record(partialQuery, eClass, reusable, AccessPath.TYPE_SCAN, "properties", -1);
 				queryObjectProvider.push(new QueryPropertiesAndTypesStackFrame(queryObjectProvider, eClass, partialQuery, reusable, properties));
 			} else if (classifications != null) {
+				// The planner decides between a scan and seeks once the classifications have been resolved
 				queryObjectProvider.push(new QueryClassificationsAndTypesStackFrame(queryObjectProvider, eClass, partialQuery, reusable, classifications));
 			} else if (inBoundingBox != null) {
+				queryPlanner.record(partialQuery, eClass, reusable, AccessPath.TYPE_SCAN, "inBoundingBox", -1);
 				queryObjectProvider.push(new QueryBoundingBoxStackFrame(queryObjectProvider, eClass, partialQuery, reusable, inBoundingBox));
 			} else {
+				queryPlanner.record(partialQuery, eClass, reusable, AccessPath.TYPE_SCAN, null, -1);
 				queryObjectProvider.push(new QueryTypeStackFrame(queryObjectProvider, eClass, reusable, partialQuery));
 			}
 			return false;
@@ -0,0 +1,140 @@
+package org.bimserver.database.queries;
+
+/******************************************************************************
+ * Copyright (C) 2009-2019  BIMserver.org
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see {@literal<http://www.gnu.org/licenses/>}.
+ *****************************************************************************/
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.bimserver.BimserverDatabaseException;
+import org.bimserver.database.DatabaseSession;
+import org.bimserver.database.OidCounters;
+import org.bimserver.database.OldQuery;
+import org.bimserver.database.queries.om.Include.TypeDef;
+import org.bimserver.database.queries.om.Query;
+import org.bimserver.database.queries.om.QueryPart;
+import org.bimserver.emf.PackageMetaData;
+import org.bimserver.models.store.ConcreteRevision;
+import org.bimserver.models.store.Revision;
+import org.bimserver.models.store.StorePackage;
+import org.eclipse.emf.ecore.EClass;
+
+/**
+ * Splits a query into partitions (queries that each return a disjoint part of the result) so they can be read and serialized in
+ * parallel. Partitions are made per EClass, classes with many objects are split further on oid range. The number of objects of a class
+ * is estimated from the oid counters of the revision, as is done by the QueryPlanner.
+ *
+ * Only simple queries can be partitioned: one QueryPart, optionally restricted by type, without includes or any other filters. Includes
+ * would make partitions return the same (included) objects multiple times.
+ */
+public class QueryPartitioner {
+	public static final int DEFAULT_PARTITION_SIZE = 20000;
+
+	/**
+	 * @return The partitions in the order in which their results should be concatenated, or null when the query cannot be partitioned
+	 */
+	public static List<Query> partition(DatabaseSession databaseSession, Query query, Set<Long> roids, int partitionSize) throws BimserverDatabaseException {
+		if (roids.size() != 1 || !isPartitionable(query)) {
+			return null;
+		}
+		Revision revision = databaseSession.get(StorePackage.eINSTANCE.getRevision(), roids.iterator().next(), OldQuery.getDefault());
+		if (revision.getConcreteRevisions().size() != 1) {
+			// Oid ranges are per project, revisions consisting of multiple concrete revisions are not partitioned
+			return null;
+		}
+		ConcreteRevision concreteRevision = revision.getConcreteRevisions().get(0);
+		if (concreteRevision.getOidCounters() == null) {
+			return null;
+		}
+		OidCounters oidCounters = new OidCounters(databaseSession, concreteRevision.getOidCounters());
+		QueryPart queryPart = query.getQueryParts().get(0);
+		
+		List<Query> partitions = new ArrayList<>();
+		Query current = null;
+		long currentSize = 0;
+		for (EClass eClass : getEClasses(query.getPackageMetaData(), queryPart, oidCounters)) {
+			long startOid = oidCounters.get(eClass) + 1;
+			long counter = databaseSession.getCounter(eClass);
+			long estimated = Math.max(1, (counter - startOid) >> 16);
+			long step = (long) partitionSize << 16;
+			long from = startOid;
+			while (true) {
+				long to = from + step;
+				boolean last = to > counter;
+				if (current == null || currentSize >= partitionSize) {
+					current = createPartition(query);
+					partitions.add(current);
+					currentSize = 0;
+				}
+				QueryPart partitionPart = current.createQueryPart();
+				partitionPart.addType(eClass, false);
+				partitionPart.setIncludeAllFields(queryPart.isIncludeAllFields());
+				partitionPart.setMinimumReuseThreshold(queryPart.getMinimumReuseThreshold());
+				// The last range is open ended, the counter might have moved since it was read
+				partitionPart.setOidRange(from, last ? Long.MAX_VALUE : to);
+				currentSize += last ? Math.min(estimated, partitionSize) : partitionSize;
+				if (last) {
+					break;
+				}
+				from = to;
+			}
+		}
+		return partitions;
+	}
+
+	private static Query createPartition(Query query) {
+		Query partition = new Query(query.getName(), query.getPackageMetaData());
+		partition.setVersion(query.getVersion());
+		partition.setGeometrySettings(query.getGeometrySettings());
+		return partition;
+	}
+
+	private static Set<EClass> getEClasses(PackageMetaData packageMetaData, QueryPart queryPart, OidCounters oidCounters) {
+		Set<EClass> result = new LinkedHashSet<>();
+		if (!queryPart.hasTypes()) {
+			result.addAll(oidCounters.keySet());
+			return result;
+		}
+		Set<EClass> requested = new LinkedHashSet<>();
+		for (TypeDef typeDef : queryPart.getTypes()) {
+			requested.add(typeDef.geteClass());
+			if (typeDef.isIncludeSubTypes()) {
+				for (EClass eClass : packageMetaData.getAllSubClasses(typeDef.geteClass())) {
+					if (!typeDef.hasExcludes() || !typeDef.excludes(eClass)) {
+						requested.add(eClass);
+					}
+				}
+			}
+		}
+		for (EClass eClass : requested) {
+			if (oidCounters.containsKey(eClass)) {
+				result.add(eClass);
+			}
+		}
+		return result;
+	}
+
+	private static boolean isPartitionable(Query query) {
+		if (query.isDoubleBuffer() || query.getSpecialQueryType() != null || query.getQueryParts().size() != 1) {
+			return false;
+		}
+		QueryPart queryPart = query.getQueryParts().get(0);
+		return !queryPart.hasOids() && !queryPart.hasGuids() && queryPart.getNames() == null && !queryPart.hasProperties() && queryPart.getClassifications() == null && !queryPart.hasInBoundingBox() && !queryPart.hasTiles() && !queryPart.hasIncludes() && !queryPart.hasReferences() && !queryPart.hasIncludesToResolve() && !queryPart.hasOidRange();
+	}
+}
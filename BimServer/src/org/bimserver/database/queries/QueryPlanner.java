@@ -0,0 +1,188 @@
+package org.bimserver.database.queries;
+
+/******************************************************************************
+ * Copyright (C) 2009-2019  BIMserver.org
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see {@literal<http://www.gnu.org/licenses/>}.
+ *****************************************************************************/
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.bimserver.BimserverDatabaseException;
+import org.bimserver.database.OidCounters;
+import org.bimserver.database.queries.om.QueryPart;
+import org.bimserver.shared.QueryContext;
+import org.eclipse.emf.ecore.EClass;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+/**
+ * Chooses, per QueryPart and type, how the objects are read: by scanning the type table of the project (and filtering), or by
+ * seeking directly to a (sorted) set of candidate oids that were found through an index.
+ *
+ * The number of records a type scan has to read is estimated from the oid counters, every oid of a class that was created after the
+ * start of the revision is a potential record. A seek costs more than reading the next record of a cursor, so seeks are only used
+ * when the number of candidates is small enough compared to the estimated scan.
+ *
+ * Only classification filters are planned on cost, they are the only filter for which both a scan and seeks are possible. The other
+ * access paths are fixed by the kind of query part and are recorded with "costBased": false: given oids, guids and names are always
+ * seeks (there is no scan that filters on them), properties and inBoundingBox are always scans (there is no index to seek with), and
+ * parts with only types are scans.
+ *
+ * The chosen plans are returned by ServiceInterface.explainQuery, and logged when a query is run with "explain": true.
+ */
+public class QueryPlanner {
+	private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+	// Relative cost of a seek compared to reading the next record of a cursor
+	private static final int SEEK_COST = 4;
+
+	public enum AccessPath {
+		TYPE_SCAN, POINT_SEEKS, EMPTY
+	}
+
+	private static class Step {
+		private final EClass eClass;
+		private final AccessPath accessPath;
+		private final String filter;
+		private final long estimatedScanRecords;
+		private final int candidates;
+		private final boolean costBased;
+
+		private Step(EClass eClass, AccessPath accessPath, String filter, long estimatedScanRecords, int candidates, boolean costBased) {
+			this.eClass = eClass;
+			this.accessPath = accessPath;
+			this.filter = filter;
+			this.estimatedScanRecords = estimatedScanRecords;
+			this.candidates = candidates;
+			this.costBased = costBased;
+		}
+	}
+
+	private final QueryObjectProvider queryObjectProvider;
+	private final Map<QueryPart, Set<Long>> resolvedClassifications = new IdentityHashMap<>();
+	private final Map<QueryPart, List<Step>> steps = new IdentityHashMap<>();
+
+	public QueryPlanner(QueryObjectProvider queryObjectProvider) {
+		this.queryObjectProvider = queryObjectProvider;
+	}
+
+	/**
+	 * @return The estimated number of records a scan of the type table will read for the given revision
+	 */
+	public long estimateTypeScan(EClass eClass, QueryContext reusable) {
+		long counter = queryObjectProvider.getDatabaseSession().getCounter(eClass);
+		OidCounters oidCounters = reusable.getOidCounters();
+		if (oidCounters != null) {
+			if (!oidCounters.containsKey(eClass)) {
+				return 0;
+			}
+			return Math.max(0, (counter - oidCounters.get(eClass)) >> 16);
+		}
+		return counter >> 16;
+	}
+
+	/**
+	 * Decides between scanning the type table and seeking to the given candidates (which must already be restricted to eClass)
+	 */
+	public AccessPath choose(QueryPart queryPart, EClass eClass, QueryContext reusable, String filter, int nrCandidates) {
+		long estimatedScanRecords = estimateTypeScan(eClass, reusable);
+		AccessPath accessPath;
+		if (nrCandidates == 0 || estimatedScanRecords == 0) {
+			accessPath = AccessPath.EMPTY;
+		} else if ((long) nrCandidates * SEEK_COST < estimatedScanRecords) {
+			accessPath = AccessPath.POINT_SEEKS;
+		} else {
+			accessPath = AccessPath.TYPE_SCAN;
+		}
+		record(queryPart, new Step(eClass, accessPath, filter, estimatedScanRecords, nrCandidates, true));
+		return accessPath;
+	}
+
+	/**
+	 * For access paths that are fixed by the kind of query (scans with a filter that has no index, seeks for given oids and guids)
+	 */
+	public void record(QueryPart queryPart, EClass eClass, QueryContext reusable, AccessPath accessPath, String filter, int nrCandidates) {
+		record(queryPart, new Step(eClass, accessPath, filter, estimateTypeScan(eClass, reusable), nrCandidates, false));
+	}
+
+	private synchronized void record(QueryPart queryPart, Step step) {
+		List<Step> list = steps.get(queryPart);
+		if (list == null) {
+			list = new ArrayList<>();
+			steps.put(queryPart, list);
+		}
+		list.add(step);
+	}
+
+	/**
+	 * Classifications are resolved (through the indices) once per QueryPart, not once per type
+	 */
+	public Set<Long> getResolvedClassifications(QueryPart queryPart) {
+		return resolvedClassifications.get(queryPart);
+	}
+
+	public void setResolvedClassifications(QueryPart queryPart, Set<Long> oids) {
+		resolvedClassifications.put(queryPart, oids);
+	}
+
+	/**
+	 * @return The candidates of the given class, sorted, so they can be used for seeking
+	 */
+	public List<Long> getCandidates(Set<Long> oids, EClass eClass) throws BimserverDatabaseException {
+		short cid = queryObjectProvider.getDatabaseSession().getCid(eClass);
+		List<Long> result = new ArrayList<>();
+		for (long oid : oids) {
+			if ((short) oid == cid) {
+				result.add(oid);
+			}
+		}
+		result.sort(null);
+		return result;
+	}
+
+	public synchronized ObjectNode toJson() {
+		ObjectNode result = OBJECT_MAPPER.createObjectNode();
+		ArrayNode partsNode = OBJECT_MAPPER.createArrayNode();
+		for (QueryPart queryPart : queryObjectProvider.getQuery().getQueryParts()) {
+			ArrayNode stepsNode = OBJECT_MAPPER.createArrayNode();
+			List<Step> list = steps.get(queryPart);
+			if (list != null) {
+				for (Step step : list) {
+					ObjectNode stepNode = OBJECT_MAPPER.createObjectNode();
+					stepNode.put("type", step.eClass.getName());
+					stepNode.put("accessPath", step.accessPath.name());
+					stepNode.put("costBased", step.costBased);
+					if (step.filter != null) {
+						stepNode.put("filter", step.filter);
+					}
+					stepNode.put("estimatedScanRecords", step.estimatedScanRecords);
+					if (step.candidates != -1) {
+						stepNode.put("candidates", step.candidates);
+					}
+					stepsNode.add(stepNode);
+				}
+			}
+			partsNode.add(stepsNode);
+		}
+		result.set("queryParts", partsNode);
+		return result;
+	}
+}
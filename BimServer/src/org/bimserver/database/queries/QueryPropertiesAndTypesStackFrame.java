@@ -85,7 +85,6 @@ public class QueryPropertiesAndTypesStackFrame extends DatabaseReadingStackFrame
 
 		currentObject = null;
 		
-		ByteBuffer nextKeyStart = ByteBuffer.allocate(12);
 		getQueryObjectProvider().incReads();
 		ByteBuffer keyBuffer = ByteBuffer.wrap(record.getKey());
 		int keyPid = keyBuffer.getInt();
@@ -93,14 +92,8 @@ public class QueryPropertiesAndTypesStackFrame extends DatabaseReadingStackFrame
 		int keyRid = -keyBuffer.getInt();
 		ByteBuffer valueBuffer = ByteBuffer.wrap(record.getValue());
 		GetResult map = getMap(eClass, eClass, valueBuffer, keyPid, keyOid, keyRid);
-		if (map == GetResult.CONTINUE_WITH_NEXT_OID) {
-			nextKeyStart.position(0);
-			nextKeyStart.putInt(getReusable().getPid());
-			nextKeyStart.putLong(keyOid + 1);
-			record = typeRecordIterator.next(nextKeyStart.array());
-		} else {
-			record = typeRecordIterator.next();
-		}
+		byte[] seekKey = getSeekKey(map, keyOid);
+		record = seekKey == null ? typeRecordIterator.next() : typeRecordIterator.next(seekKey);
 
 		if (currentObject != null) {
 			DatabaseSession databaseSession = getQueryObjectProvider().getDatabaseSession();
@@ -18,12 +18,15 @@ package org.bimserver.database.queries;
  *****************************************************************************/
 
 import java.nio.ByteBuffer;
+import java.util.Arrays;
 
 import org.bimserver.BimserverDatabaseException;
 import org.bimserver.database.BimserverLockConflictException;
+import org.bimserver.database.DatabaseSession;
 import org.bimserver.database.DatabaseSession.GetResult;
 import org.bimserver.database.Record;
 import org.bimserver.database.SearchingRecordIterator;
+import org.bimserver.database.VisibilityIndex;
 import org.bimserver.database.queries.om.QueryException;
 import org.bimserver.database.queries.om.QueryPart;
 import org.bimserver.models.geometry.GeometryPackage;
@@ -36,27 +39,91 @@ public class QueryTypeStackFrame extends DatabaseReadingStackFrame implements Ob
 	private EClass eClass;
 	private SearchingRecordIterator typeRecordIterator;
 	private Record record;
+	private long endOid = Long.MAX_VALUE;
+	private String tableName;
+	private long scanStartOid;
+	
+	// Set when the VisibilityIndex has the visible oids of this table, only those oids are sought
+	private long[] visibleOids;
+	private int visibleOidIndex;
+	
+	// Set when this (complete) scan can create the VisibilityIndex entry of this table
+	private LongArrayList collectedOids;
+	private long skippedRecords;
 
 	public QueryTypeStackFrame(QueryObjectProvider queryObjectProvider, EClass eClass, QueryContext reusable, QueryPart queryPart) throws BimserverLockConflictException, BimserverDatabaseException {
 		super(reusable, queryObjectProvider, queryPart);
 		this.eClass = eClass;
 		
-		String tableName = eClass.getEPackage().getName() + "_" + eClass.getName();
+		tableName = eClass.getEPackage().getName() + "_" + eClass.getName();
 		if (getReusable().getOidCounters() != null) {
 			if (!getReusable().getOidCounters().containsKey(eClass)) {
 				return; // will skip to next one
 			}
-			long startOid = getReusable().getOidCounters().get(eClass);
+			long startOid = getReusable().getOidCounters().get(eClass) + 1;
+			scanStartOid = startOid;
+			if (initVisibleOids(startOid, queryPart)) {
+				return;
+			}
+			if (queryPart != null && queryPart.hasOidRange()) {
+				startOid = Math.max(startOid, queryPart.getOidRangeStart());
+				endOid = queryPart.getOidRangeEnd();
+			}
 			ByteBuffer tmp = ByteBuffer.allocate(12);
 			tmp.putInt(getReusable().getPid());
-			tmp.putLong(startOid + 1);
+			tmp.putLong(startOid);
 			typeRecordIterator = queryObjectProvider.getDatabaseSession().getKeyValueStore().getRecordIterator(tableName, BinUtils.intToByteArray(getReusable().getPid()), tmp.array(), queryObjectProvider.getDatabaseSession());
 			record = typeRecordIterator.next();
 		} else {
 //			LOGGER.warn("Potential too-many-reads");
-			typeRecordIterator = queryObjectProvider.getDatabaseSession().getKeyValueStore().getRecordIterator(tableName, BinUtils.intToByteArray(getReusable().getPid()), BinUtils.intToByteArray(getReusable().getPid()), queryObjectProvider.getDatabaseSession());
+			if (initVisibleOids(0, queryPart)) {
+				return;
+			}
+			byte[] startKey = BinUtils.intToByteArray(getReusable().getPid());
+			if (queryPart != null && queryPart.hasOidRange()) {
+				ByteBuffer tmp = ByteBuffer.allocate(12);
+				tmp.putInt(getReusable().getPid());
+				tmp.putLong(queryPart.getOidRangeStart());
+				startKey = tmp.array();
+				endOid = queryPart.getOidRangeEnd();
+			}
+			typeRecordIterator = queryObjectProvider.getDatabaseSession().getKeyValueStore().getRecordIterator(tableName, BinUtils.intToByteArray(getReusable().getPid()), startKey, queryObjectProvider.getDatabaseSession());
 			record = typeRecordIterator.next();
 		}
+		if ((queryPart == null || !queryPart.hasOidRange()) && !getQueryObjectProvider().getDatabaseSession().hasWritten(getReusable().getPid())) {
+			collectedOids = new LongArrayList();
+		}
+	}
+
+	/*
+	 * Positions the iterator at the first visible oid (within the oid range of the query part) when the VisibilityIndex has the visible oids of this table
+	 */
+	private boolean initVisibleOids(long startOid, QueryPart queryPart) throws BimserverLockConflictException, BimserverDatabaseException {
+		DatabaseSession databaseSession = getQueryObjectProvider().getDatabaseSession();
+		if (databaseSession.hasWritten(getReusable().getPid())) {
+			return false;
+		}
+		visibleOids = databaseSession.getVisibilityIndex().get(getReusable().getPid(), getReusable().getRid(), getReusable().getStopRid(), tableName, startOid, databaseSession.getVisibilityEpoch());
+		if (visibleOids == null) {
+			return false;
+		}
+		if (queryPart != null && queryPart.hasOidRange()) {
+			visibleOidIndex = Arrays.binarySearch(visibleOids, queryPart.getOidRangeStart());
+			if (visibleOidIndex < 0) {
+				visibleOidIndex = -visibleOidIndex - 1;
+			}
+			endOid = queryPart.getOidRangeEnd();
+		}
+		typeRecordIterator = databaseSession.getKeyValueStore().getRecordIterator(tableName, BinUtils.intToByteArray(getReusable().getPid()), BinUtils.intToByteArray(getReusable().getPid()), databaseSession);
+		record = nextVisibleOid();
+		return true;
+	}
+
+	private Record nextVisibleOid() throws BimserverLockConflictException {
+		if (visibleOidIndex >= visibleOids.length || visibleOids[visibleOidIndex] >= endOid) {
+			return null;
+		}
+		return typeRecordIterator.next(getSeekKey(GetResult.SEEK_VISIBLE_VERSION, visibleOids[visibleOidIndex++]));
 	}
 
 	@Override
@@ -67,26 +134,43 @@ public class QueryTypeStackFrame extends DatabaseReadingStackFrame implements Ob
 		if (record == null) {
 			currentObject = null;
 			typeRecordIterator.close();
+			if (collectedOids != null && skippedRecords >= collectedOids.size()) {
+				// Most of the records of this table are not visible in this revision, next time only seek the visible ones
+				DatabaseSession databaseSession = getQueryObjectProvider().getDatabaseSession();
+				databaseSession.getVisibilityIndex().put(getReusable().getPid(), getReusable().getRid(), getReusable().getStopRid(), tableName, scanStartOid, databaseSession.getVisibilityEpoch(), collectedOids.toLongArray());
+				collectedOids = null;
+			}
 			return true;
 		}
 
 		currentObject = null;
 		
-		ByteBuffer nextKeyStart = ByteBuffer.allocate(12);
 		getQueryObjectProvider().incReads();
 		ByteBuffer keyBuffer = ByteBuffer.wrap(record.getKey());
 		int keyPid = keyBuffer.getInt();
 		long keyOid = keyBuffer.getLong();
+		if (keyOid >= endOid) {
+			record = null;
+			currentObject = null;
+			typeRecordIterator.close();
+			return true;
+		}
 		int keyRid = -keyBuffer.getInt();
 		ByteBuffer valueBuffer = ByteBuffer.wrap(record.getValue());
 		GetResult map = getMap(eClass, eClass, valueBuffer, keyPid, keyOid, keyRid);
-		if (map == GetResult.CONTINUE_WITH_NEXT_OID) {
-			nextKeyStart.position(0);
-			nextKeyStart.putInt(getReusable().getPid());
-			nextKeyStart.putLong(keyOid + 1);
-			record = typeRecordIterator.next(nextKeyStart.array());
+		if (visibleOids != null) {
+			// The cursor may have ended up at another oid (if the index was created by a session with a different view), the rid checks of getMap still apply
+			record = nextVisibleOid();
 		} else {
-			record = typeRecordIterator.next();
+			if (collectedOids != null) {
+				if (getVisibleOid() != -1) {
+					collectedOids.add(getVisibleOid());
+				} else {
+					skippedRecords++;
+				}
+			}
+			byte[] seekKey = getSeekKey(map, keyOid);
+			record = seekKey == null ? typeRecordIterator.next() : typeRecordIterator.next(seekKey);
 		}
 		
 		if (currentObject != null) {
@@ -0,0 +1,120 @@
+package org.bimserver.database.statistics;
+
+/******************************************************************************
+ * Copyright (C) 2009-2019  BIMserver.org
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see {@literal<http://www.gnu.org/licenses/>}.
+ *****************************************************************************/
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+/**
+ * Totals of a group of products with geometry. Bounds are in the units of the model (see ConcreteRevision.multiplierToMm).
+ */
+public class Aggregate {
+	private long count;
+	private long triangles;
+	private long vertices;
+	private double area;
+	private double volume;
+	private final double[] min = new double[] { Double.POSITIVE_INFINITY, Double.POSITIVE_INFINITY, Double.POSITIVE_INFINITY };
+	private final double[] max = new double[] { Double.NEGATIVE_INFINITY, Double.NEGATIVE_INFINITY, Double.NEGATIVE_INFINITY };
+
+	public void add(long triangles, long vertices, double area, double volume, double[] min, double[] max) {
+		this.count++;
+		this.triangles += triangles;
+		this.vertices += vertices;
+		this.area += area;
+		this.volume += volume;
+		if (min != null && max != null) {
+			for (int i = 0; i < 3; i++) {
+				this.min[i] = Math.min(this.min[i], min[i]);
+				this.max[i] = Math.max(this.max[i], max[i]);
+			}
+		}
+	}
+
+	public void add(Aggregate other) {
+		this.count += other.count;
+		this.triangles += other.triangles;
+		this.vertices += other.vertices;
+		this.area += other.area;
+		this.volume += other.volume;
+		for (int i = 0; i < 3; i++) {
+			this.min[i] = Math.min(this.min[i], other.min[i]);
+			this.max[i] = Math.max(this.max[i], other.max[i]);
+		}
+	}
+
+	public long getCount() {
+		return count;
+	}
+
+	public long getTriangles() {
+		return triangles;
+	}
+
+	public long getVertices() {
+		return vertices;
+	}
+
+	public double getArea() {
+		return area;
+	}
+
+	public double getVolume() {
+		return volume;
+	}
+
+	public boolean hasBounds() {
+		return min[0] <= max[0];
+	}
+
+	public ObjectNode toJson() {
+		ObjectNode result = JsonNodeFactory.instance.objectNode();
+		result.put("count", count);
+		result.put("triangles", triangles);
+		result.put("vertices", vertices);
+		result.put("area", area);
+		result.put("volume", volume);
+		if (hasBounds()) {
+			ArrayNode minNode = result.putArray("min");
+			ArrayNode maxNode = result.putArray("max");
+			for (int i = 0; i < 3; i++) {
+				minNode.add(min[i]);
+				maxNode.add(max[i]);
+			}
+		}
+		return result;
+	}
+
+	public static Aggregate fromJson(JsonNode node) {
+		Aggregate aggregate = new Aggregate();
+		aggregate.count = node.get("count").asLong();
+		aggregate.triangles = node.get("triangles").asLong();
+		aggregate.vertices = node.get("vertices").asLong();
+		aggregate.area = node.get("area").asDouble();
+		aggregate.volume = node.get("volume").asDouble();
+		if (node.has("min") && node.has("max")) {
+			for (int i = 0; i < 3; i++) {
+				aggregate.min[i] = node.get("min").get(i).asDouble();
+				aggregate.max[i] = node.get("max").get(i).asDouble();
+			}
+		}
+		return aggregate;
+	}
+}
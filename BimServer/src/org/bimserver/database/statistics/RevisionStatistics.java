@@ -0,0 +1,150 @@
+package org.bimserver.database.statistics;
+
+/******************************************************************************
+ * Copyright (C) 2009-2019  BIMserver.org
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see {@literal<http://www.gnu.org/licenses/>}.
+ *****************************************************************************/
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.TreeMap;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+/**
+ * Statistics of one revision, stored by RevisionStatisticsStore when the revision is created and when its geometry is (re)generated.
+ *
+ * Contains the number of objects per type, and totals of the products with geometry, in total and rolled up per group of each of the
+ * GROUP_BY_ dimensions. Statistics of several revisions can be combined with add.
+ */
+public class RevisionStatistics {
+	public static final String GROUP_BY_TYPE = "type";
+	public static final String GROUP_BY_STOREY = "storey";
+	public static final String GROUP_BY_CLASSIFICATION = "classification";
+	public static final String[] GROUP_BY = new String[] { GROUP_BY_TYPE, GROUP_BY_STOREY, GROUP_BY_CLASSIFICATION };
+
+	/**
+	 * The group of products that are not contained in a storey, or have no classification
+	 */
+	public static final String UNASSIGNED = "(none)";
+
+	private final Map<String, Long> objectCounts = new TreeMap<>();
+	private Aggregate total = new Aggregate();
+	private final Map<String, Map<String, Aggregate>> groups = new TreeMap<>();
+	private long created = System.currentTimeMillis();
+
+	public RevisionStatistics() {
+		for (String groupBy : GROUP_BY) {
+			groups.put(groupBy, new TreeMap<>());
+		}
+	}
+
+	public static boolean isValidGroupBy(String groupBy) {
+		return groupBy != null && (groupBy.equals(GROUP_BY_TYPE) || groupBy.equals(GROUP_BY_STOREY) || groupBy.equals(GROUP_BY_CLASSIFICATION));
+	}
+
+	public void addObjectCount(String typeName, long count) {
+		objectCounts.merge(typeName, count, Long::sum);
+	}
+
+	public Aggregate getGroup(String groupBy, String group) {
+		return groups.get(groupBy).computeIfAbsent(group, k -> new Aggregate());
+	}
+
+	public void add(RevisionStatistics other) {
+		for (Map.Entry<String, Long> entry : other.objectCounts.entrySet()) {
+			addObjectCount(entry.getKey(), entry.getValue());
+		}
+		total.add(other.total);
+		for (Map.Entry<String, Map<String, Aggregate>> groupBy : other.groups.entrySet()) {
+			for (Map.Entry<String, Aggregate> group : groupBy.getValue().entrySet()) {
+				getGroup(groupBy.getKey(), group.getKey()).add(group.getValue());
+			}
+		}
+	}
+
+	/**
+	 * Replaces the geometry totals by the ones of other, the object counts stay the same
+	 */
+	public void replaceGeometry(RevisionStatistics other) {
+		total = other.total;
+		for (String groupBy : GROUP_BY) {
+			groups.put(groupBy, other.groups.get(groupBy));
+		}
+	}
+
+	public Map<String, Long> getObjectCounts() {
+		return objectCounts;
+	}
+
+	public Aggregate getTotal() {
+		return total;
+	}
+
+	public Map<String, Aggregate> getGroups(String groupBy) {
+		return groups.get(groupBy);
+	}
+
+	public long getCreated() {
+		return created;
+	}
+
+	public ObjectNode toJson() {
+		ObjectNode result = JsonNodeFactory.instance.objectNode();
+		result.put("created", created);
+		ObjectNode objectCountsNode = result.putObject("objectCounts");
+		for (Map.Entry<String, Long> entry : objectCounts.entrySet()) {
+			objectCountsNode.put(entry.getKey(), entry.getValue());
+		}
+		result.set("total", total.toJson());
+		ObjectNode groupsNode = result.putObject("groups");
+		for (Map.Entry<String, Map<String, Aggregate>> groupBy : groups.entrySet()) {
+			groupsNode.set(groupBy.getKey(), toJson(groupBy.getValue()));
+		}
+		return result;
+	}
+
+	public static ObjectNode toJson(Map<String, Aggregate> groups) {
+		ObjectNode result = JsonNodeFactory.instance.objectNode();
+		for (Map.Entry<String, Aggregate> group : groups.entrySet()) {
+			result.set(group.getKey(), group.getValue().toJson());
+		}
+		return result;
+	}
+
+	public static RevisionStatistics fromJson(JsonNode node) {
+		RevisionStatistics revisionStatistics = new RevisionStatistics();
+		revisionStatistics.created = node.get("created").asLong();
+		Iterator<Map.Entry<String, JsonNode>> objectCounts = node.get("objectCounts").fields();
+		while (objectCounts.hasNext()) {
+			Map.Entry<String, JsonNode> entry = objectCounts.next();
+			revisionStatistics.objectCounts.put(entry.getKey(), entry.getValue().asLong());
+		}
+		revisionStatistics.total = Aggregate.fromJson(node.get("total"));
+		JsonNode groupsNode = node.get("groups");
+		for (String groupBy : GROUP_BY) {
+			if (groupsNode.has(groupBy)) {
+				Iterator<Map.Entry<String, JsonNode>> groups = groupsNode.get(groupBy).fields();
+				while (groups.hasNext()) {
+					Map.Entry<String, JsonNode> group = groups.next();
+					revisionStatistics.groups.get(groupBy).put(group.getKey(), Aggregate.fromJson(group.getValue()));
+				}
+			}
+		}
+		return revisionStatistics;
+	}
+}
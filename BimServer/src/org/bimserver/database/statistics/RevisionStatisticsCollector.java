@@ -0,0 +1,228 @@
+package org.bimserver.database.statistics;
+
+/******************************************************************************
+ * Copyright (C) 2009-2019  BIMserver.org
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see {@literal<http://www.gnu.org/licenses/>}.
+ *****************************************************************************/
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.bimserver.BimServer;
+import org.bimserver.BimserverDatabaseException;
+import org.bimserver.SummaryMap;
+import org.bimserver.database.DatabaseSession;
+import org.bimserver.database.queries.QueryObjectProvider;
+import org.bimserver.database.queries.om.Include;
+import org.bimserver.database.queries.om.Query;
+import org.bimserver.database.queries.om.QueryException;
+import org.bimserver.database.queries.om.QueryPart;
+import org.bimserver.emf.PackageMetaData;
+import org.bimserver.models.geometry.GeometryPackage;
+import org.bimserver.models.store.ConcreteRevision;
+import org.bimserver.models.store.Revision;
+import org.bimserver.shared.AbstractHashMapVirtualObject;
+import org.bimserver.shared.HashMapVirtualObject;
+import org.bimserver.shared.HashMapWrappedVirtualObject;
+import org.eclipse.emf.ecore.EClass;
+import org.eclipse.emf.ecore.EReference;
+
+/**
+ * Builds the RevisionStatistics of a revision while it is being created. The storey and classifications of every product are looked up
+ * once before geometry generation (resolveGroups), the geometry generator then adds every product as soon as its GeometryInfo is
+ * complete (addProduct), so no extra pass over the products is needed.
+ *
+ * Revisions that were created before statistics were kept are handled by collect, which reads the stored products and GeometryInfo.
+ */
+public class RevisionStatisticsCollector {
+	private final RevisionStatistics statistics = new RevisionStatistics();
+	private final Map<Long, String> storeys = new HashMap<>();
+	private final Map<Long, List<String>> classifications = new HashMap<>();
+
+	/**
+	 * Reads the spatial containment and classification relations of the revision, these tables are small compared to the products
+	 */
+	@SuppressWarnings("unchecked")
+	public void resolveGroups(DatabaseSession databaseSession, BimServer bimServer, PackageMetaData packageMetaData, long roid) throws BimserverDatabaseException {
+		try {
+			Map<Long, String> storeyNames = new HashMap<>();
+			for (HashMapVirtualObject storey : getAll(databaseSession, bimServer, packageMetaData, roid, "IfcBuildingStorey")) {
+				storeyNames.put(storey.getOid(), name(storey, "Name", storey.getOid()));
+			}
+			for (HashMapVirtualObject relContained : getAll(databaseSession, bimServer, packageMetaData, roid, "IfcRelContainedInSpatialStructure")) {
+				String storeyName = storeyNames.get(relContained.get("RelatingStructure"));
+				List<Long> relatedElements = (List<Long>) relContained.get("RelatedElements");
+				if (storeyName != null && relatedElements != null) {
+					for (Long oid : relatedElements) {
+						storeys.put(oid, storeyName);
+					}
+				}
+			}
+
+			Map<Long, String> classificationNames = new HashMap<>();
+			for (HashMapVirtualObject reference : getAll(databaseSession, bimServer, packageMetaData, roid, "IfcClassificationReference")) {
+				// Renamed from "ItemReference" in IFC2x3 to "Identification" in IFC4
+				String key = name(reference, "Identification", null);
+				if (key == null) {
+					key = name(reference, "ItemReference", null);
+				}
+				classificationNames.put(reference.getOid(), key != null ? key : name(reference, "Name", reference.getOid()));
+			}
+			for (HashMapVirtualObject classification : getAll(databaseSession, bimServer, packageMetaData, roid, "IfcClassification")) {
+				classificationNames.put(classification.getOid(), name(classification, "Name", classification.getOid()));
+			}
+			for (HashMapVirtualObject relAssociates : getAll(databaseSession, bimServer, packageMetaData, roid, "IfcRelAssociatesClassification")) {
+				String classificationName = classificationNames.get(relAssociates.get("RelatingClassification"));
+				List<Long> relatedObjects = (List<Long>) relAssociates.get("RelatedObjects");
+				if (classificationName != null && relatedObjects != null) {
+					for (Long oid : relatedObjects) {
+						classifications.computeIfAbsent(oid, k -> new ArrayList<>(1)).add(classificationName);
+					}
+				}
+			}
+		} catch (IOException | QueryException e) {
+			throw new BimserverDatabaseException(e);
+		}
+	}
+
+	/**
+	 * Computes the statistics of an existing revision from its summary and its stored products and GeometryInfo
+	 */
+	public static RevisionStatistics collect(DatabaseSession databaseSession, BimServer bimServer, Revision revision) throws BimserverDatabaseException {
+		PackageMetaData packageMetaData = bimServer.getMetaDataManager().getPackageMetaData(revision.getProject().getSchema());
+		RevisionStatisticsCollector collector = new RevisionStatisticsCollector();
+		for (ConcreteRevision concreteRevision : revision.getConcreteRevisions()) {
+			if (concreteRevision.getSummary() != null) {
+				collector.addObjectCounts(new SummaryMap(packageMetaData, concreteRevision.getSummary()).getSummaryMap());
+			}
+		}
+		collector.resolveGroups(databaseSession, bimServer, packageMetaData, revision.getOid());
+		try {
+			EClass productClass = packageMetaData.getEClass("IfcProduct");
+			EReference geometryFeature = packageMetaData.getEReference("IfcProduct", "geometry");
+			Query query = new Query("Statistics products", packageMetaData);
+			QueryPart queryPart = query.createQueryPart();
+			queryPart.addType(productClass, true);
+			Include include = queryPart.createInclude();
+			include.addType(productClass, true);
+			include.addFieldDirect("geometry");
+			QueryObjectProvider queryObjectProvider = new QueryObjectProvider(databaseSession, bimServer, query, Collections.singleton(revision.getOid()), packageMetaData);
+			HashMapVirtualObject next = queryObjectProvider.next();
+			while (next != null) {
+				if (productClass.isSuperTypeOf(next.eClass())) {
+					AbstractHashMapVirtualObject geometryInfo = next.getDirectFeature(geometryFeature);
+					if (geometryInfo instanceof HashMapVirtualObject) {
+						// Bounds and its vectors are embedded in the GeometryInfo record
+						Object bounds = ((HashMapVirtualObject) geometryInfo).eGet(GeometryPackage.eINSTANCE.getGeometryInfo_Bounds());
+						HashMapWrappedVirtualObject min = null;
+						HashMapWrappedVirtualObject max = null;
+						if (bounds instanceof HashMapWrappedVirtualObject) {
+							min = (HashMapWrappedVirtualObject) ((HashMapWrappedVirtualObject) bounds).eGet(GeometryPackage.eINSTANCE.getBounds_Min());
+							max = (HashMapWrappedVirtualObject) ((HashMapWrappedVirtualObject) bounds).eGet(GeometryPackage.eINSTANCE.getBounds_Max());
+						}
+						collector.addProduct(next, (HashMapVirtualObject) geometryInfo, min, max);
+					}
+				}
+				next = queryObjectProvider.next();
+			}
+		} catch (IOException | QueryException e) {
+			throw new BimserverDatabaseException(e);
+		}
+		return collector.getStatistics();
+	}
+
+	private List<HashMapVirtualObject> getAll(DatabaseSession databaseSession, BimServer bimServer, PackageMetaData packageMetaData, long roid, String typeName) throws IOException, QueryException, BimserverDatabaseException {
+		List<HashMapVirtualObject> result = new ArrayList<>();
+		EClass eClass = packageMetaData.getEClass(typeName);
+		if (eClass == null) {
+			return result;
+		}
+		Query query = new Query("Statistics " + typeName, packageMetaData);
+		QueryPart queryPart = query.createQueryPart();
+		queryPart.addType(eClass, false);
+		QueryObjectProvider queryObjectProvider = new QueryObjectProvider(databaseSession, bimServer, query, Collections.singleton(roid), packageMetaData);
+		HashMapVirtualObject next = queryObjectProvider.next();
+		while (next != null) {
+			result.add(next);
+			next = queryObjectProvider.next();
+		}
+		return result;
+	}
+
+	private String name(HashMapVirtualObject object, String featureName, Long fallback) {
+		Object value = object.get(featureName);
+		if (value instanceof String && !((String) value).isEmpty()) {
+			return (String) value;
+		}
+		return fallback == null ? null : String.valueOf(fallback);
+	}
+
+	public void addObjectCounts(Map<EClass, Integer> summaryMap) {
+		for (Map.Entry<EClass, Integer> entry : summaryMap.entrySet()) {
+			statistics.addObjectCount(entry.getKey().getName(), entry.getValue());
+		}
+	}
+
+	/**
+	 * Called by the geometry generator (from multiple threads) for every product of which the GeometryInfo is complete
+	 */
+	public void addProduct(HashMapVirtualObject ifcProduct, HashMapVirtualObject geometryInfo, HashMapWrappedVirtualObject minBounds, HashMapWrappedVirtualObject maxBounds) {
+		long triangles = number(geometryInfo.eGet(GeometryPackage.eINSTANCE.getGeometryInfo_PrimitiveCount())).longValue();
+		long vertices = number(geometryInfo.eGet(GeometryPackage.eINSTANCE.getGeometryInfo_NrVertices())).longValue() / 3;
+		double area = number(geometryInfo.eGet(GeometryPackage.eINSTANCE.getGeometryInfo_Area())).doubleValue();
+		double volume = number(geometryInfo.eGet(GeometryPackage.eINSTANCE.getGeometryInfo_Volume())).doubleValue();
+		double[] min = vector(minBounds);
+		double[] max = vector(maxBounds);
+		String storey = storeys.get(ifcProduct.getOid());
+		List<String> productClassifications = classifications.get(ifcProduct.getOid());
+		synchronized (statistics) {
+			statistics.getTotal().add(triangles, vertices, area, volume, min, max);
+			statistics.getGroup(RevisionStatistics.GROUP_BY_TYPE, ifcProduct.eClass().getName()).add(triangles, vertices, area, volume, min, max);
+			statistics.getGroup(RevisionStatistics.GROUP_BY_STOREY, storey == null ? RevisionStatistics.UNASSIGNED : storey).add(triangles, vertices, area, volume, min, max);
+			if (productClassifications == null) {
+				statistics.getGroup(RevisionStatistics.GROUP_BY_CLASSIFICATION, RevisionStatistics.UNASSIGNED).add(triangles, vertices, area, volume, min, max);
+			} else {
+				for (String classification : productClassifications) {
+					statistics.getGroup(RevisionStatistics.GROUP_BY_CLASSIFICATION, classification).add(triangles, vertices, area, volume, min, max);
+				}
+			}
+		}
+	}
+
+	private static Number number(Object value) {
+		return value instanceof Number ? (Number) value : 0;
+	}
+
+	private static double[] vector(HashMapWrappedVirtualObject vector) {
+		if (vector == null) {
+			return null;
+		}
+		double x = number(vector.eGet("x")).doubleValue();
+		double y = number(vector.eGet("y")).doubleValue();
+		double z = number(vector.eGet("z")).doubleValue();
+		if (Double.isInfinite(x) || Double.isInfinite(y) || Double.isInfinite(z)) {
+			return null;
+		}
+		return new double[] { x, y, z };
+	}
+
+	public RevisionStatistics getStatistics() {
+		return statistics;
+	}
+}
@@ -0,0 +1,65 @@
+package org.bimserver.database.statistics;
+
+/******************************************************************************
+ * Copyright (C) 2009-2019  BIMserver.org
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see {@literal<http://www.gnu.org/licenses/>}.
+ *****************************************************************************/
+
+import java.io.IOException;
+
+import org.bimserver.BimserverDatabaseException;
+import org.bimserver.database.BimserverLockConflictException;
+import org.bimserver.database.DatabaseSession;
+import org.bimserver.database.KeyValueStore;
+import org.bimserver.utils.BinUtils;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Stores the RevisionStatistics of every revision, keyed by roid, so aggregates can be computed without reading the object tables.
+ */
+public class RevisionStatisticsStore {
+	public static final String REVISION_STATISTICS_TABLE = "INT-RevisionStatistics";
+	private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+	private final KeyValueStore keyValueStore;
+
+	public RevisionStatisticsStore(KeyValueStore keyValueStore) {
+		this.keyValueStore = keyValueStore;
+	}
+
+	public void store(long roid, RevisionStatistics revisionStatistics, DatabaseSession databaseSession) throws BimserverDatabaseException {
+		try {
+			keyValueStore.store(REVISION_STATISTICS_TABLE, BinUtils.longToByteArray(roid), OBJECT_MAPPER.writeValueAsBytes(revisionStatistics.toJson()), databaseSession);
+		} catch (IOException e) {
+			throw new BimserverDatabaseException(e);
+		}
+	}
+
+	/**
+	 * @return The statistics of the revision, or null for revisions that were created before statistics were kept
+	 */
+	public RevisionStatistics get(long roid, DatabaseSession databaseSession) throws BimserverLockConflictException, BimserverDatabaseException {
+		byte[] bytes = keyValueStore.get(REVISION_STATISTICS_TABLE, BinUtils.longToByteArray(roid), databaseSession);
+		if (bytes == null) {
+			return null;
+		}
+		try {
+			return RevisionStatistics.fromJson(OBJECT_MAPPER.readValue(bytes, JsonNode.class));
+		} catch (IOException e) {
+			throw new BimserverDatabaseException(e);
+		}
+	}
+}
@@ -126,6 +126,8 @@ public class GeometryRunner implements Runnable {
 	@Override
 	public void run() {
 		Thread.currentThread().setName("GeometryRunner");
+		// This job is no longer waiting in the queue, see StreamingGeometryGenerator.processQuery
+		renderEnginePool.addDemand(-1);
 		long start = System.nanoTime();
 		job.setStartNanos(start);
 
@@ -163,6 +165,8 @@ public class GeometryRunner implements Runnable {
 
 			StreamingSerializer serializer = ifcSerializerPlugin.createSerializer(new PluginConfiguration());
 			RenderEngine renderEngine = null;
+			long renderStart = 0;
+			long cpuTimeStartMs = 0;
 			byte[] bytes = null;
 			try {
 				final Set<HashMapVirtualObject> objects = new LinkedHashSet<>();
@@ -194,6 +198,12 @@ public class GeometryRunner implements Runnable {
 				try {
 					if (!objects.isEmpty()) {
 						renderEngine = renderEnginePool.borrowObject();
+						renderStart = System.nanoTime();
+						// A pooled engine has done other jobs already, its counters are totals over all of them
+						Metrics startMetrics = renderEngine.getMetrics();
+						if (startMetrics != null) {
+							cpuTimeStartMs = startMetrics.getCpuTimeMs();
+						}
 						try (RenderEngineModel renderEngineModel = renderEngine.openModel(in, bytes.length)) {
 							renderEngineModel.setSettings(renderEngineSettings);
 							renderEngineModel.setFilter(renderEngineFilter);
@@ -297,6 +307,7 @@ public class GeometryRunner implements Runnable {
 										}
 
 										geometryData.setAttribute(GeometryPackage.eINSTANCE.getGeometryData_Reused(), 1);
+										geometryData.setAttribute(GeometryPackage.eINSTANCE.getGeometryData_SaveableTriangles(), 0);
 										geometryData.setReference(GeometryPackage.eINSTANCE.getGeometryData_Indices(), createBuffer(queryContext, indices));
 										geometryData.setReference(GeometryPackage.eINSTANCE.getGeometryData_Vertices(), createBuffer(queryContext, vertices));
 										geometryData.setReference(GeometryPackage.eINSTANCE.getGeometryData_Normals(), createBuffer(queryContext, normals));
@@ -314,8 +325,6 @@ public class GeometryRunner implements Runnable {
 										job.setTrianglesGenerated(indicesAsInt.capacity() / 3);
 										job.getReport().incrementTriangles(indicesAsInt.capacity() / 3);
 										
-										streamingGeometryGenerator.cacheGeometryData(geometryData, vertices);
-
 										ColorMap colorMap = new ColorMap();
 										
 										ByteBuffer colors = ByteBuffer.wrap(new byte[0]);
@@ -486,8 +495,7 @@ public class GeometryRunner implements Runnable {
 													LOGGER.error("Object not found in cache: " + referenceOid + " (hash: " + hash + ")");
 												}
 												synchronized (referencedData) {
-													Integer currentValue = (Integer) referencedData.get("reused");
-													referencedData.set("reused", currentValue + 1);
+													incrementReused(referencedData);
 												}
 												HashMapWrappedVirtualObject dataBounds = (HashMapWrappedVirtualObject) referencedData.get("boundsMm");
 												extendBounds(boundsMm, dataBounds);
@@ -541,6 +549,7 @@ public class GeometryRunner implements Runnable {
 													geometryInfo.setAttribute(GeometryPackage.eINSTANCE.getGeometryInfo_PrimitiveCount(), indicesAsInt.capacity() / 3);
 
 													productToData.put(ifcProduct.getOid(), new TemporaryGeometryData(geometryData.getOid(), renderEngineInstance.getAdditionalData(), indicesAsInt.capacity() / 3, size, mibu, mabu, indicesAsInt, verticesAsDouble, hasTransparency, colors.capacity()));
+													this.streamingGeometryGenerator.spillVertices(geometryData, vertices);
 													geometryData.save();
 													databaseSession.cache((HashMapVirtualObject) geometryData);
 												}
@@ -566,6 +575,7 @@ public class GeometryRunner implements Runnable {
 												// So reuse is on, the data was not found by hash, and this item is not in a mapped item
 												
 												// By saving it before putting it in the cache/hashmap, we make sure we won't get a BimserverConcurrentModificationException
+												this.streamingGeometryGenerator.spillVertices(geometryData, vertices);
 												geometryData.save(); // TODO Why??
 
 												databaseSession.cache((HashMapVirtualObject) geometryData);
@@ -573,6 +583,7 @@ public class GeometryRunner implements Runnable {
 												// sizes.put(size, ifcProduct);
 											}
 										} else {
+											this.streamingGeometryGenerator.spillVertices(geometryData, vertices);
 											geometryData.save();
 											databaseSession.cache((HashMapVirtualObject) geometryData);
 										}
@@ -580,6 +591,9 @@ public class GeometryRunner implements Runnable {
 										this.streamingGeometryGenerator.setTransformationMatrix(geometryInfo, productTranformationMatrix);
 										debuggingInfo.put(ifcProduct.getOid(), new DebuggingInfo(productTranformationMatrix, indices.asIntBuffer(), vertices.asFloatBuffer()));
 
+										if (this.streamingGeometryGenerator.getStatisticsCollector() != null) {
+											this.streamingGeometryGenerator.getStatisticsCollector().addProduct(ifcProduct, geometryInfo, minBounds, maxBounds);
+										}
 										geometryInfo.save();
 										this.streamingGeometryGenerator.totalBytes.addAndGet(size);
 
@@ -769,8 +783,7 @@ public class GeometryRunner implements Runnable {
 											generateGeometryResult.addDensity(density);
 											
 											HashMapVirtualObject referencedData = databaseSession.getFromCache(masterGeometryData.getOid());
-											Integer currentValue = (Integer) referencedData.get("reused");
-											referencedData.set("reused", currentValue + 1);
+											incrementReused(referencedData);
 											HashMapWrappedVirtualObject dataBounds = (HashMapWrappedVirtualObject) referencedData.get("boundsMm");
 											extendBounds(boundsMm, dataBounds);
 											
@@ -801,6 +814,9 @@ public class GeometryRunner implements Runnable {
 											// generateGeometryResult);
 											this.streamingGeometryGenerator.setTransformationMatrix(geometryInfo, totalTranformationMatrix);
 
+											if (this.streamingGeometryGenerator.getStatisticsCollector() != null) {
+												this.streamingGeometryGenerator.getStatisticsCollector().addProduct(ifcProduct, geometryInfo, minBounds, maxBounds);
+											}
 											geometryInfo.save();
 											// totalBytes.addAndGet(size);
 
@@ -816,9 +832,11 @@ public class GeometryRunner implements Runnable {
 					if (renderEngine != null) {
 						Metrics metrics = renderEngine.getMetrics();
 						if (metrics != null) {
-							job.setCpuTimeMs(metrics.getCpuTimeMs());
+							job.setCpuTimeMs(metrics.getCpuTimeMs() - cpuTimeStartMs);
+							// A peak cannot be split per job, for a pooled engine this is the peak of all its jobs so far (an upper bound)
 							job.setMaxMemoryBytes(metrics.getMaxMemoryBytes());
 						}
+						renderEnginePool.getMetrics().addRenderTime(eClass.getName(), System.nanoTime() - renderStart);
 						renderEnginePool.returnObject(renderEngine);
 					}
 					try {
@@ -1033,6 +1051,16 @@ public class GeometryRunner implements Runnable {
 		return 0.5f;
 	}
 	
+	/*
+	 * saveableTriangles is kept up to date with every reuse, so the GeometryData does not have to be written again at the end of the run
+	 */
+	private void incrementReused(HashMapVirtualObject geometryData) throws BimserverDatabaseException {
+		int reused = (Integer) geometryData.get("reused") + 1;
+		int nrTriangles = (Integer) geometryData.get("nrIndices") / 3;
+		geometryData.set("reused", reused);
+		geometryData.set("saveableTriangles", (reused - 1) * nrTriangles);
+	}
+
 	private long createBuffer(QueryContext queryContext, ByteBuffer data) throws BimserverDatabaseException {
 		HashMapVirtualObject buffer = new HashMapVirtualObject(queryContext, GeometryPackage.eINSTANCE.getBuffer());
 		buffer.set("data", data.array());
@@ -57,6 +57,7 @@ import org.bimserver.database.queries.om.JsonQueryObjectModelConverter;
 import org.bimserver.database.queries.om.Query;
 import org.bimserver.database.queries.om.QueryException;
 import org.bimserver.database.queries.om.QueryPart;
+import org.bimserver.database.statistics.RevisionStatisticsCollector;
 import org.bimserver.emf.PackageMetaData;
 import org.bimserver.emf.Schema;
 import org.bimserver.models.geometry.Bounds;
@@ -129,7 +130,8 @@ public class StreamingGeometryGenerator extends GenericGeometryGenerator {
 	private boolean reuseGeometry;
 	private boolean optimizeMappedItems;
 	
-	private final Map<Long, Tuple<HashMapVirtualObject, ByteBuffer>> geometryDataMap = new ConcurrentHashMap<>();
+	// Vertices of the stored GeometryData objects, waiting to be quantized at the end of the run
+	private VertexSpillFile vertexSpillFile;
 
 	private GeometryGenerationDebugger geometryGenerationDebugger = new GeometryGenerationDebugger();
 
@@ -137,6 +139,8 @@ public class StreamingGeometryGenerator extends GenericGeometryGenerator {
 
 	private boolean calculateQuantities;
 
+	private RevisionStatisticsCollector statisticsCollector;
+
 	public StreamingGeometryGenerator(final BimServer bimServer, ProgressListener progressListener, Long eoid, GeometryGenerationReport report) {
 		this.bimServer = bimServer;
 		this.progressListener = progressListener;
@@ -254,6 +258,8 @@ public class StreamingGeometryGenerator extends GenericGeometryGenerator {
 			// TODO reuse queue, or try to determine a realistic size, or don't use a fixed-size queue
 			ThreadPoolExecutor executor = new ThreadPoolExecutor(maxSimultanousThreads, maxSimultanousThreads, 24, TimeUnit.HOURS, new ArrayBlockingQueue<Runnable>(10000000));
 
+			vertexSpillFile = new VertexSpillFile(bimServer.getHomeDir().resolve("tmp"));
+
 			JsonQueryObjectModelConverter jsonQueryObjectModelConverter = new JsonQueryObjectModelConverter(packageMetaData);
 			String queryNameSpace = packageMetaData.getSchema().name().toLowerCase() + "-stdlib";
 			
@@ -624,31 +630,14 @@ public class StreamingGeometryGenerator extends GenericGeometryGenerator {
 //			geometryData.setAttribute(GeometryPackage.eINSTANCE.getGeometryData_VerticesQuantized(), verticesQuantized.array());
 
 			
-			// TODO, disable?
-			if (true) {
-				LOGGER.debug("Generating quantized vertices");
-				double[] quantizationMatrix = createQuantizationMatrixFromBounds(generateGeometryResult.getBoundsUntransformed(), multiplierToMm);
-				for (Long id : geometryDataMap.keySet()) {
-					Tuple<HashMapVirtualObject, ByteBuffer> tuple = geometryDataMap.get(id);
-					
-					HashMapVirtualObject buffer = new HashMapVirtualObject(queryContext, GeometryPackage.eINSTANCE.getBuffer());
-//				Buffer buffer = databaseSession.create(Buffer.class);
-					buffer.set("data", quantizeVertices(tuple.getB().asDoubleBuffer(), quantizationMatrix, multiplierToMm).array());
-//				buffer.setData(quantizeVertices(tuple.getB(), quantizationMatrix, multiplierToMm).array());
-//				databaseSession.store(buffer);
-					buffer.save();
-					HashMapVirtualObject geometryData = tuple.getA();
-					geometryData.set("verticesQuantized", buffer.getOid());
-					int reused = (int) geometryData.eGet(GeometryPackage.eINSTANCE.getGeometryData_Reused());
-					int nrTriangles = (int) geometryData.eGet(GeometryPackage.eINSTANCE.getGeometryData_NrIndices()) / 3;
-					int saveableTriangles = Math.max(0, (reused - 1)) * nrTriangles;
-					geometryData.set("saveableTriangles", saveableTriangles);
-//				if (saveableTriangles > 0) {
-//					System.out.println("Saveable triangles: " + saveableTriangles);
-//				}
-					geometryData.saveOverwrite();
-				}
-			}
+			// The GeometryData objects already refer to their (reserved) quantized vertices Buffer, so only the Buffers have to be written here
+			LOGGER.debug("Generating quantized vertices (" + vertexSpillFile.getNrEntries() + " buffers, " + Formatters.bytesToString(vertexSpillFile.getSize()) + " spilled)");
+			double[] quantizationMatrix = createQuantizationMatrixFromBounds(generateGeometryResult.getBoundsUntransformed(), multiplierToMm);
+			vertexSpillFile.readAll((bufferOid, vertices) -> {
+				HashMapVirtualObject buffer = new HashMapVirtualObject(queryContext, GeometryPackage.eINSTANCE.getBuffer(), bufferOid, queryContext.getDatabaseInterface().newUuid());
+				buffer.set("data", quantizeVertices(vertices, quantizationMatrix, multiplierToMm).array());
+				buffer.save();
+			});
 
 			long end = System.nanoTime();
 			long total = totalBytes.get() - (bytesSavedByHash.get() + bytesSavedByTransformation.get() + bytesSavedByMapping.get());
@@ -672,6 +661,14 @@ public class StreamingGeometryGenerator extends GenericGeometryGenerator {
 			LOGGER.error("", e);
 			report.setEnd(new GregorianCalendar());
 			throw new GeometryGeneratingException(e);
+		} finally {
+			if (vertexSpillFile != null) {
+				try {
+					vertexSpillFile.close();
+				} catch (IOException e) {
+					LOGGER.error("", e);
+				}
+			}
 		}
 		report.setEnd(new GregorianCalendar());
 		try {
@@ -1036,6 +1033,8 @@ public class StreamingGeometryGenerator extends GenericGeometryGenerator {
 		
 		ReportJob job = report.newJob(eClass.getName(), nrObjects);
 		GeometryRunner runner = new GeometryRunner(this, eClass, renderEnginePool, databaseSession, settings, queryObjectProvider, ifcSerializerPlugin, renderEngineFilter, generateGeometryResult, queryContext, geometryReused, map, job, reuseGeometry, geometryGenerationDebugger, query);
+		// Lets the pool start engines for the queued jobs, the runner reports it has started
+		renderEnginePool.addDemand(1);
 		executor.submit(runner);
 		jobsTotal.incrementAndGet();
 	}
@@ -1081,6 +1080,8 @@ public class StreamingGeometryGenerator extends GenericGeometryGenerator {
 		
 		ReportJob job = report.newJob(eClass.getName(), nrObjects);
 		GeometryRunner runner = new GeometryRunner(this, eClass, renderEnginePool, databaseSession, settings, queryObjectProvider, ifcSerializerPlugin, renderEngineFilter, generateGeometryResult, queryContext, geometryReused, map, job, reuseGeometry, geometryGenerationDebugger, query);
+		// Lets the pool start engines for the queued jobs, the runner reports it has started
+		renderEnginePool.addDemand(1);
 		executor.submit(runner);
 		jobsTotal.incrementAndGet();
 	}
@@ -1237,8 +1238,18 @@ public class StreamingGeometryGenerator extends GenericGeometryGenerator {
 		return renderEngineName;
 	}
 
-	public void cacheGeometryData(HashMapVirtualObject geometryData, ByteBuffer vertices) {
-		geometryDataMap.put(geometryData.getOid(), new Tuple<>(geometryData, vertices));
+	/**
+	 * Reserves the Buffer for the quantized vertices of the given GeometryData and stores the vertices until they can be quantized at
+	 * the end of the run. Must be called before the GeometryData is saved.
+	 */
+	void spillVertices(HashMapVirtualObject geometryData, ByteBuffer vertices) throws BimserverDatabaseException {
+		long bufferOid = geometryData.getReusable().getDatabaseInterface().newOid(GeometryPackage.eINSTANCE.getBuffer());
+		try {
+			vertexSpillFile.append(bufferOid, vertices);
+		} catch (IOException e) {
+			throw new BimserverDatabaseException(e);
+		}
+		geometryData.set("verticesQuantized", bufferOid);
 	}
 
 	public String getDebugIdentifier() {
@@ -1248,4 +1259,15 @@ public class StreamingGeometryGenerator extends GenericGeometryGenerator {
 	public boolean isCalculateQuantities() {
 		return calculateQuantities;
 	}
+
+	/**
+	 * @param statisticsCollector When set, every product with geometry is added to it
+	 */
+	public void setStatisticsCollector(RevisionStatisticsCollector statisticsCollector) {
+		this.statisticsCollector = statisticsCollector;
+	}
+
+	public RevisionStatisticsCollector getStatisticsCollector() {
+		return statisticsCollector;
+	}
 }
\ No newline at end of file
@@ -0,0 +1,137 @@
+package org.bimserver.geometry;
+
+/******************************************************************************
+ * Copyright (C) 2009-2019  BIMserver.org
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see {@literal<http://www.gnu.org/licenses/>}.
+ *****************************************************************************/
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import org.bimserver.BimserverDatabaseException;
+
+/**
+ * Temporary file that holds the (double precision) vertices of the GeometryData objects of one geometry generation run until they are
+ * quantized at the end of the run. Keeping those on the heap made the memory usage of a run scale with the total number of vertices.
+ *
+ * Entries are appended concurrently by the GeometryRunners. Reading is done in one sequential pass in which the file is memory-mapped one
+ * window at a time, so only a bounded part of it has to be resident.
+ */
+public class VertexSpillFile implements Closeable {
+	private static final int WINDOW_SIZE = 64 * 1024 * 1024;
+	
+	// oid of the Buffer to write the quantized vertices to, and the number of bytes that follow
+	private static final int ENTRY_HEADER_SIZE = 12;
+
+	public interface EntryHandler {
+		void handle(long bufferOid, DoubleBuffer vertices) throws BimserverDatabaseException;
+	}
+
+	private final Path path;
+	private final FileChannel channel;
+	private long size;
+	private int nrEntries;
+
+	public VertexSpillFile(Path folder) throws IOException {
+		Files.createDirectories(folder);
+		this.path = Files.createTempFile(folder, "vertices", ".tmp");
+		this.channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+	}
+
+	public void append(long bufferOid, ByteBuffer vertices) throws IOException {
+		ByteBuffer data = vertices.duplicate();
+		data.clear();
+		ByteBuffer header = ByteBuffer.allocate(ENTRY_HEADER_SIZE);
+		header.order(ByteOrder.LITTLE_ENDIAN);
+		header.putLong(bufferOid);
+		header.putInt(data.remaining());
+		header.flip();
+		long position;
+		synchronized (this) {
+			position = size;
+			size += ENTRY_HEADER_SIZE + data.remaining();
+			nrEntries++;
+		}
+		while (header.hasRemaining()) {
+			position += channel.write(header, position);
+		}
+		while (data.hasRemaining()) {
+			position += channel.write(data, position);
+		}
+	}
+
+	/**
+	 * Calls the handler for every entry, in the order in which they were appended. Must not be called while entries are still being appended.
+	 * The DoubleBuffer given to the handler is only valid during the call.
+	 */
+	public void readAll(EntryHandler handler) throws IOException, BimserverDatabaseException {
+		long position = 0;
+		long windowStart = 0;
+		MappedByteBuffer window = null;
+		long end = getSize();
+		while (position < end) {
+			if (window == null || position + ENTRY_HEADER_SIZE > windowStart + window.capacity()) {
+				window = map(position, ENTRY_HEADER_SIZE, end);
+				windowStart = position;
+			}
+			int offset = (int) (position - windowStart);
+			long bufferOid = window.getLong(offset);
+			int length = window.getInt(offset + 8);
+			long dataStart = position + ENTRY_HEADER_SIZE;
+			if (dataStart + length > windowStart + window.capacity()) {
+				window = map(dataStart, length, end);
+				windowStart = dataStart;
+			}
+			ByteBuffer data = window.duplicate();
+			data.position((int) (dataStart - windowStart));
+			data.limit(data.position() + length);
+			handler.handle(bufferOid, data.slice().order(ByteOrder.LITTLE_ENDIAN).asDoubleBuffer());
+			position = dataStart + length;
+		}
+	}
+
+	private MappedByteBuffer map(long position, int minimumSize, long end) throws IOException {
+		long length = Math.min(end - position, Math.max(WINDOW_SIZE, minimumSize));
+		MappedByteBuffer buffer = channel.map(MapMode.READ_ONLY, position, length);
+		buffer.order(ByteOrder.LITTLE_ENDIAN);
+		return buffer;
+	}
+
+	public synchronized int getNrEntries() {
+		return nrEntries;
+	}
+
+	public synchronized long getSize() {
+		return size;
+	}
+
+	@Override
+	public void close() throws IOException {
+		try {
+			channel.close();
+		} finally {
+			Files.deleteIfExists(path);
+		}
+	}
+}
@@ -0,0 +1,296 @@
+package org.bimserver.longaction;
+
+/******************************************************************************
+ * Copyright (C) 2009-2019  BIMserver.org
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see {@literal<http://www.gnu.org/licenses/>}.
+ *****************************************************************************/
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.bimserver.BimserverDatabaseException;
+import org.bimserver.database.BimserverLockConflictException;
+import org.bimserver.database.DatabaseSession;
+import org.bimserver.database.OldQuery;
+import org.bimserver.database.Record;
+import org.bimserver.database.SearchingRecordIterator;
+import org.bimserver.database.actions.AbstractDownloadDatabaseAction;
+import org.bimserver.database.queries.om.Include.TypeDef;
+import org.bimserver.database.queries.om.Query;
+import org.bimserver.database.queries.om.QueryPart;
+import org.bimserver.emf.PackageMetaData;
+import org.bimserver.models.geometry.GeometryPackage;
+import org.bimserver.models.store.ConcreteRevision;
+import org.bimserver.models.store.Revision;
+import org.bimserver.models.store.StorePackage;
+import org.bimserver.plugins.PluginManagerInterface;
+import org.bimserver.plugins.serializers.MessagingStreamingSerializer;
+import org.bimserver.plugins.serializers.ObjectProvider;
+import org.bimserver.plugins.serializers.ProgressReporter;
+import org.bimserver.plugins.serializers.ProjectInfo;
+import org.bimserver.plugins.serializers.SerializerException;
+import org.bimserver.utils.BinUtils;
+import org.eclipse.emf.ecore.EClass;
+
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+/**
+ * Fast path for viewers that only need the contents of geometry Buffer objects. The records are read straight from the key value store
+ * and the payload is written from the record value, without creating objects and without going through the query engine.
+ *
+ * Used instead of the messaging serializer of the download when the query asks for Buffers by oid and has "rawBuffers": true in its
+ * loaderSettings. Every message is a multiple of 8 bytes and all data starts 8 byte aligned, so clients can create typed array views on
+ * the received frames. All values are little endian.
+ *
+ * <pre>
+ * byte type (10), 3 bytes padding, int nrBuffers
+ * nrBuffers times: long oid, int length, int 0, length bytes of data, padding to a multiple of 8
+ * </pre>
+ *
+ * Buffers that do not exist in the requested revisions (or have no data) are left out.
+ */
+public class GeometryBufferMessagingSerializer implements MessagingStreamingSerializer {
+	public static final byte MESSAGE_TYPE_BUFFERS = 10;
+	private static final int MAX_MESSAGE_SIZE = 256 * 1024;
+	private static final EClass BUFFER = GeometryPackage.eINSTANCE.getBuffer();
+	private static final String TABLE_NAME = BUFFER.getEPackage().getName() + "_" + BUFFER.getName();
+
+	private final DatabaseSession databaseSession;
+	private final List<RevisionRange> ranges = new ArrayList<>();
+	private final Set<Long> oids;
+	private final Set<Long> written = new HashSet<>();
+	private final List<byte[]> batchValues = new ArrayList<>();
+	private final List<Long> batchOids = new ArrayList<>();
+	private final ByteBuffer header = ByteBuffer.allocate(16).order(ByteOrder.LITTLE_ENDIAN);
+	private final int dataOffset;
+	private final int total;
+	private Iterator<RevisionRange> rangeIterator;
+	private RevisionRange currentRange;
+	private Iterator<Long> oidIterator;
+	private SearchingRecordIterator recordIterator;
+	private Record record;
+
+	public GeometryBufferMessagingSerializer(DatabaseSession databaseSession, PackageMetaData packageMetaData, Query query, Set<Long> roids) throws BimserverDatabaseException {
+		this.databaseSession = databaseSession;
+		this.oids = new TreeSet<>();
+		for (QueryPart queryPart : query.getQueryParts()) {
+			oids.addAll(queryPart.getOids());
+		}
+		this.total = oids.size();
+		// Unsetted bitmap, uuid and the length of the data
+		this.dataOffset = packageMetaData.getUnsettedLength(BUFFER) + 16 + 4;
+		for (long roid : roids) {
+			Revision revision = databaseSession.get(StorePackage.eINSTANCE.getRevision(), roid, OldQuery.getDefault());
+			for (ConcreteRevision concreteRevision : revision.getConcreteRevisions()) {
+				int stopRid = AbstractDownloadDatabaseAction.findHighestStopRid(concreteRevision.getProject(), concreteRevision);
+				ranges.add(new RevisionRange(concreteRevision.getProject().getId(), concreteRevision.getId(), stopRid));
+			}
+		}
+		rangeIterator = ranges.iterator();
+	}
+
+	/**
+	 * @return Whether the query can be answered by this serializer: every part selects Buffers by oid, nothing else
+	 */
+	public static boolean isBufferQuery(Query query) {
+		ObjectNode geometrySettings = query.getGeometrySettings();
+		if (geometrySettings == null || !geometrySettings.has("rawBuffers") || !geometrySettings.get("rawBuffers").asBoolean()) {
+			return false;
+		}
+		if (query.getSpecialQueryType() != null || query.getQueryParts().isEmpty()) {
+			return false;
+		}
+		for (QueryPart queryPart : query.getQueryParts()) {
+			if (!queryPart.hasOids() || queryPart.hasGuids() || queryPart.getNames() != null || queryPart.hasProperties() || queryPart.getClassifications() != null || queryPart.hasInBoundingBox() || queryPart.hasTiles() || queryPart.hasIncludes() || queryPart.hasReferences() || queryPart.hasIncludesToResolve() || queryPart.hasOidRange()) {
+				return false;
+			}
+			if (queryPart.hasTypes()) {
+				for (TypeDef typeDef : queryPart.getTypes()) {
+					if (typeDef.geteClass() != BUFFER) {
+						return false;
+					}
+				}
+			}
+		}
+		return true;
+	}
+
+	@Override
+	public void init(ObjectProvider objectProvider, ProjectInfo projectInfo, PluginManagerInterface pluginManager, PackageMetaData packageMetaData) throws SerializerException {
+	}
+
+	@Override
+	public boolean writeMessage(OutputStream outputStream, ProgressReporter progressReporter) throws IOException, SerializerException {
+		try {
+			int messageSize = 8;
+			while (messageSize < MAX_MESSAGE_SIZE) {
+				byte[] value = nextValue();
+				if (value == null) {
+					break;
+				}
+				batchValues.add(value);
+				messageSize += 16 + align8(getLength(value));
+			}
+		} catch (BimserverDatabaseException e) {
+			throw new SerializerException(e);
+		}
+		if (!batchValues.isEmpty()) {
+			header.clear();
+			header.put(MESSAGE_TYPE_BUFFERS);
+			header.put((byte) 0);
+			header.putShort((short) 0);
+			header.putInt(batchValues.size());
+			outputStream.write(header.array(), 0, 8);
+			for (int i = 0; i < batchValues.size(); i++) {
+				byte[] value = batchValues.get(i);
+				int length = getLength(value);
+				header.clear();
+				header.putLong(batchOids.get(i));
+				header.putInt(length);
+				header.putInt(0);
+				outputStream.write(header.array(), 0, 16);
+				// Straight from the record, the data is never copied into an intermediate object
+				outputStream.write(value, dataOffset, length);
+				int padding = align8(length) - length;
+				if (padding > 0) {
+					header.clear();
+					header.putLong(0);
+					outputStream.write(header.array(), 0, padding);
+				}
+			}
+			batchValues.clear();
+			batchOids.clear();
+			if (progressReporter != null && total > 0) {
+				progressReporter.update(written.size(), total);
+			}
+		}
+		if (currentRange == null && !rangeIterator.hasNext()) {
+			return false;
+		}
+		return true;
+	}
+
+	private static int align8(int length) {
+		return (length + 7) & ~7;
+	}
+
+	private int getLength(byte[] value) {
+		return ByteBuffer.wrap(value, dataOffset - 4, 4).getInt();
+	}
+
+	/*
+	 * Returns the record value of the next requested Buffer, moving through the revisions one by one. The oids are sorted, so the cursor
+	 * only moves forward within the table.
+	 */
+	private byte[] nextValue() throws BimserverDatabaseException {
+		while (true) {
+			if (currentRange == null) {
+				if (!rangeIterator.hasNext()) {
+					return null;
+				}
+				currentRange = rangeIterator.next();
+				oidIterator = oids.iterator();
+				recordIterator = databaseSession.getKeyValueStore().getRecordIterator(TABLE_NAME, BinUtils.intToByteArray(currentRange.pid), createKey(currentRange.pid, 0), databaseSession);
+				record = null;
+			}
+			while (oidIterator.hasNext()) {
+				long oid = oidIterator.next();
+				if (written.contains(oid)) {
+					continue;
+				}
+				byte[] value = find(oid);
+				if (value != null) {
+					written.add(oid);
+					batchOids.add(oid);
+					return value;
+				}
+			}
+			recordIterator.close();
+			recordIterator = null;
+			currentRange = null;
+		}
+	}
+
+	/*
+	 * Positions the cursor on the records of the given oid, the records of an oid are sorted from newest to oldest revision
+	 */
+	private byte[] find(long oid) throws BimserverLockConflictException {
+		if (record == null || getOid(record) < oid) {
+			record = recordIterator.next(createKey(currentRange.pid, oid));
+		}
+		while (record != null) {
+			ByteBuffer keyBuffer = ByteBuffer.wrap(record.getKey());
+			int keyPid = keyBuffer.getInt();
+			long keyOid = keyBuffer.getLong();
+			int keyRid = -keyBuffer.getInt();
+			if (keyPid != currentRange.pid || keyOid > oid) {
+				return null;
+			}
+			if (keyOid == oid && keyRid <= currentRange.rid && keyRid >= currentRange.stopRid) {
+				byte[] value = record.getValue();
+				if (value.length == 1 && value[0] == -1) {
+					// Deleted in this revision
+					return null;
+				}
+				if ((value[0] & 1) != 0 || value.length < dataOffset || getLength(value) <= 0) {
+					// Data not set (the first bit of the unsetted bitmap is the only feature of Buffer)
+					return null;
+				}
+				return value;
+			}
+			record = recordIterator.next();
+		}
+		return null;
+	}
+
+	private static long getOid(Record record) {
+		return ByteBuffer.wrap(record.getKey(), 4, 8).getLong();
+	}
+
+	private static byte[] createKey(int pid, long oid) {
+		ByteBuffer key = ByteBuffer.allocate(12);
+		key.putInt(pid);
+		key.putLong(oid);
+		return key.array();
+	}
+
+	@Override
+	public void close() throws IOException {
+		if (recordIterator != null) {
+			recordIterator.close();
+			recordIterator = null;
+		}
+	}
+
+	private static class RevisionRange {
+		private final int pid;
+		private final int rid;
+		private final int stopRid;
+
+		RevisionRange(int pid, int rid, int stopRid) {
+			this.pid = pid;
+			this.rid = rid;
+			this.stopRid = stopRid;
+		}
+	}
+}
@@ -25,6 +25,7 @@ import java.util.concurrent.atomic.AtomicInteger;
 
 import org.bimserver.BimServer;
 import org.bimserver.database.actions.ProgressListener;
+import org.bimserver.memory.MemoryReservation;
 import org.bimserver.models.store.ActionState;
 import org.bimserver.models.store.LongActionState;
 import org.bimserver.models.store.StoreFactory;
@@ -54,6 +55,7 @@ public abstract class LongAction<T extends LongActionKey> implements Reporter, P
 	private String title = "Unknown";
 	private int stage = 0;
 	private ProgressTopic progressTopic;
+	private MemoryReservation memoryReservation;
 
 	public LongAction(BimServer bimServer, String username, String userUsername, Authorization authorization) {
 		start = new GregorianCalendar();
@@ -67,6 +69,26 @@ public abstract class LongAction<T extends LongActionKey> implements Reporter, P
 	public void init() {
 	}
 
+	/**
+	 * Called after init, the LongActionManager reserves this amount of memory with the MemoryGovernor before execute is called
+	 * 
+	 * @return The estimated amount of heap this action needs, 0 for actions that don't need much memory
+	 */
+	public long estimateMemory() {
+		return 0;
+	}
+
+	void setMemoryReservation(MemoryReservation memoryReservation) {
+		this.memoryReservation = memoryReservation;
+	}
+
+	/**
+	 * @return The memory reserved for this action, can be used to release memory when a memory intensive stage of the action is done
+	 */
+	protected MemoryReservation getMemoryReservation() {
+		return memoryReservation;
+	}
+
 	public void setProgressTopic(ProgressTopic progressTopic) {
 		this.progressTopic = progressTopic;
 	}
@@ -21,6 +21,7 @@ import java.util.GregorianCalendar;
 import java.util.Iterator;
 
 import org.bimserver.BimServer;
+import org.bimserver.memory.MemoryReservation;
 import org.bimserver.models.store.ActionState;
 import org.bimserver.shared.exceptions.UserException;
 import org.slf4j.Logger;
@@ -52,7 +53,25 @@ public class LongActionManager {
 				@Override
 				public void run() {
 					longAction.init();
-					longAction.execute();
+					long estimate = longAction.estimateMemory();
+					if (estimate <= 0) {
+						longAction.execute();
+						return;
+					}
+					MemoryReservation memoryReservation = null;
+					try {
+						memoryReservation = bimServer.getMemoryGovernor().reserve(longAction.getDescription() + " (" + longAction.getProgressTopic().getKey().getId() + ")", estimate);
+					} catch (UserException e) {
+						longAction.error(e);
+						longAction.done();
+						return;
+					}
+					longAction.setMemoryReservation(memoryReservation);
+					try {
+						longAction.execute();
+					} finally {
+						memoryReservation.close();
+					}
 				}
 			}, "LongAction Runner");
 		} else {
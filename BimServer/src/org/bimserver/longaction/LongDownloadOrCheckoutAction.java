@@ -26,9 +26,12 @@ import org.bimserver.database.OldQuery;
 import org.bimserver.database.OperationType;
 import org.bimserver.database.actions.BimDatabaseAction;
 import org.bimserver.emf.IfcModelInterface;
+import org.bimserver.emf.PackageMetaData;
 import org.bimserver.exceptions.NoSerializerFoundException;
 import org.bimserver.interfaces.objects.SCheckoutResult;
+import org.bimserver.memory.MemoryEstimator;
 import org.bimserver.models.log.AccessMethod;
+import org.bimserver.models.store.ConcreteRevision;
 import org.bimserver.models.store.MessagingSerializerPluginConfiguration;
 import org.bimserver.models.store.PluginConfiguration;
 import org.bimserver.models.store.Project;
@@ -67,6 +70,32 @@ public abstract class LongDownloadOrCheckoutAction extends LongAction<DownloadPa
 		return checkoutResult;
 	}
 
+	/**
+	 * The revisions are loaded in an EMF model, estimated from the summaries of their concrete revisions
+	 */
+	@Override
+	public long estimateMemory() {
+		if (downloadParameters.getRoids() == null || getBimServer().getDiskCacheManager().contains(downloadParameters)) {
+			return 0;
+		}
+		MemoryEstimator memoryEstimator = getBimServer().getMemoryGovernor().getMemoryEstimator();
+		long estimate = 0;
+		try (DatabaseSession session = getBimServer().getDatabase().createSession(OperationType.READ_ONLY)) {
+			for (long roid : downloadParameters.getRoids()) {
+				Revision revision = session.get(StorePackage.eINSTANCE.getRevision(), roid, OldQuery.getDefault());
+				if (revision != null) {
+					PackageMetaData packageMetaData = getBimServer().getMetaDataManager().getPackageMetaData(revision.getProject().getSchema());
+					for (ConcreteRevision concreteRevision : revision.getConcreteRevisions()) {
+						estimate += memoryEstimator.estimateModel(packageMetaData, concreteRevision.getSummary());
+					}
+				}
+			}
+		} catch (BimserverDatabaseException e) {
+			LOGGER.error("", e);
+		}
+		return estimate;
+	}
+
 	protected SCheckoutResult convertModelToCheckoutResult(Project project, String username, IfcModelInterface model, RenderEnginePlugin renderEnginePlugin, DownloadParameters downloadParameters)
 			throws UserException, NoSerializerFoundException {
 		SCheckoutResult checkoutResult = new SCheckoutResult();
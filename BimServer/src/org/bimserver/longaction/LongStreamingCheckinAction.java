@@ -29,6 +29,7 @@ import org.bimserver.database.RollbackListener;
 import org.bimserver.database.actions.StreamingCheckinDatabaseAction;
 import org.bimserver.database.berkeley.BimserverConcurrentModificationDatabaseException;
 import org.bimserver.interfaces.objects.SProgressTopicType;
+import org.bimserver.memory.MemoryEstimator;
 import org.bimserver.models.store.ActionState;
 import org.bimserver.models.store.LongActionState;
 import org.bimserver.models.store.LongCheckinActionState;
@@ -66,10 +67,22 @@ public class LongStreamingCheckinAction extends LongAction<LongCheckinActionKey>
 		this(-1L, bimServer, username, userUsername, authorization, checkinDatabaseAction);
 	}
 
+	@Override
+	public long estimateMemory() {
+		MemoryEstimator memoryEstimator = getBimServer().getMemoryGovernor().getMemoryEstimator();
+		long fileSize = checkinDatabaseAction.getFileSize();
+		long estimate = memoryEstimator.estimateStreamingCheckin(fileSize);
+		if (getBimServer().getServerSettingsCache().getServerSettings().isGenerateGeometryOnCheckin()) {
+			estimate += memoryEstimator.estimateGeometryGeneration(fileSize);
+		}
+		return estimate;
+	}
+
 	public void execute() {
 		DatabaseSession session = getBimServer().getDatabase().createSession(OperationType.POSSIBLY_WRITE);
 		try {
 			checkinDatabaseAction.setDatabaseSession(session);
+			checkinDatabaseAction.setMemoryReservation(getMemoryReservation());
 			session.executeAndCommitAction(checkinDatabaseAction, new ProgressHandler() {
 				private int count;
 
@@ -17,7 +17,8 @@ package org.bimserver.longaction;
  * along with this program.  If not, see {@literal<http://www.gnu.org/licenses/>}.
  *****************************************************************************/
 
-import java.nio.file.Path;
+import java.io.IOException;
+import java.io.InputStream;
 
 /******************************************************************************
  * Copyright (C) 2009-2018  BIMserver.org
@@ -44,14 +45,15 @@ import javax.activation.DataHandler;
 import javax.activation.DataSource;
 
 import org.bimserver.BimServer;
+import org.bimserver.cache.CachedResultDataSource;
 import org.bimserver.cache.DownloadDescriptor;
 import org.bimserver.cache.FileCacheReadingWriter;
-import org.bimserver.cache.FileInputStreamDataSource;
 import org.bimserver.cache.NewDiskCacheOutputStream;
 import org.bimserver.database.DatabaseSession;
 import org.bimserver.database.OldQuery;
 import org.bimserver.database.OperationType;
 import org.bimserver.database.queries.QueryObjectProvider;
+import org.bimserver.database.queries.QueryPartitioner;
 import org.bimserver.database.queries.om.JsonQueryObjectModelConverter;
 import org.bimserver.database.queries.om.Query;
 import org.bimserver.database.queries.om.QueryPart;
@@ -69,6 +71,7 @@ import org.bimserver.plugins.serializers.CacheStoringStreamingSerializerDataSour
 import org.bimserver.plugins.serializers.DoneListener;
 import org.bimserver.plugins.serializers.MessagingStreamingSerializer;
 import org.bimserver.plugins.serializers.MessagingStreamingSerializerPlugin;
+import org.bimserver.plugins.serializers.PartitionableStreamingSerializer;
 import org.bimserver.plugins.serializers.ProjectInfo;
 import org.bimserver.plugins.serializers.SerializerException;
 import org.bimserver.plugins.serializers.StreamingSerializer;
@@ -93,7 +96,7 @@ public class LongStreamingDownloadAction extends LongAction<StreamingDownloadKey
 	private String filename;
 	private SCheckoutResult checkoutResult = new SCheckoutResult();
 	private DownloadDescriptor downloadDescriptor;
-	private Path cacheFile;
+	private boolean cached;
 	private String jsonQuery;
 	private DatabaseSession databaseSession;
 
@@ -147,13 +150,15 @@ public class LongStreamingDownloadAction extends LongAction<StreamingDownloadKey
 				ObjectNode queryObject = OBJECT_MAPPER.readValue(jsonQuery, ObjectNode.class);
 				Query query = converter.parseJson("query", (ObjectNode) queryObject);
 				
-				downloadDescriptor = new DownloadDescriptor(packageMetaData, jsonQuery, roids, query, serializerOid, this.filename);
+				// The serializer settings instead of the serializerOid, so users with equally configured serializers share cached results
+				String serializerKey = serializerPluginConfiguration.getPluginDescriptor().getPluginClassName() + (pluginConfiguration == null ? "" : pluginConfiguration.toCanonicalString());
+				downloadDescriptor = new DownloadDescriptor(packageMetaData, jsonQuery, roids, query, serializerKey, this.filename);
 				
 				if (getBimServer().getNewDiskCacheManager().contains(downloadDescriptor)) {
-					cacheFile = getBimServer().getNewDiskCacheManager().get(downloadDescriptor);
-					FileInputStreamDataSource fileInputStreamDataSource = new FileInputStreamDataSource(cacheFile);
-					fileInputStreamDataSource.setName(downloadDescriptor.getFileNameWithoutExtension());
-					checkoutResult.setFile(new DataHandler(fileInputStreamDataSource));
+					cached = true;
+					CachedResultDataSource cachedResultDataSource = new CachedResultDataSource(getBimServer().getNewDiskCacheManager(), downloadDescriptor);
+					cachedResultDataSource.setName(downloadDescriptor.getFileNameWithoutExtension());
+					checkoutResult.setFile(new DataHandler(cachedResultDataSource));
 					
 //					if (diskCacheItem instanceof NewDiskCacheOutputStream) {
 //					} else if (diskCacheItem instanceof NewDiskCacheWriter){
@@ -169,6 +174,10 @@ public class LongStreamingDownloadAction extends LongAction<StreamingDownloadKey
 //						streamer = true;
 //					}
 					
+					changeActionState(ActionState.STARTED, "Done preparing", -1);
+				} else if (plugin instanceof MessagingStreamingSerializerPlugin && GeometryBufferMessagingSerializer.isBufferQuery(query)) {
+					// Viewer asking for the raw contents of Buffers, no need for the query engine or the serializer plugin
+					messagingStreamingSerializer = new GeometryBufferMessagingSerializer(databaseSession, packageMetaData, query, roids);
 					changeActionState(ActionState.STARTED, "Done preparing", -1);
 				} else {
 					if (query.isDoubleBuffer()) {
@@ -203,6 +212,14 @@ public class LongStreamingDownloadAction extends LongAction<StreamingDownloadKey
 						
 						serializer.init(queryObjectProvider, projectInfo, ifcHeader, getBimServer().getPluginManager(), packageMetaData);
 						
+						if (streamingSerializerPlugin.supportsPartitioning() && serializer instanceof PartitionableStreamingSerializer) {
+							List<Query> partitions = QueryPartitioner.partition(databaseSession, query, roids, QueryPartitioner.DEFAULT_PARTITION_SIZE);
+							if (partitions != null && partitions.size() > 1) {
+								LOGGER.debug("Serializing " + partitions.size() + " partitions in parallel");
+								serializer = new ParallelStreamingSerializer(getBimServer(), (PartitionableStreamingSerializer) serializer, partitions, roids, packageMetaData);
+							}
+						}
+						
 						changeActionState(ActionState.STARTED, "Done preparing", -1);
 					} else {
 						LOGGER.error("Unimplemented " + plugin);
@@ -226,7 +243,7 @@ public class LongStreamingDownloadAction extends LongAction<StreamingDownloadKey
 	}
 
 	public SCheckoutResult getCheckoutResult() throws SerializerException {
-		if (cacheFile != null) {
+		if (cached) {
 			// already populated by cached file
 			return checkoutResult;
 		}
@@ -240,10 +257,10 @@ public class LongStreamingDownloadAction extends LongAction<StreamingDownloadKey
 		} else {
 			if (getBimServer().getNewDiskCacheManager().isEnabled()) {
 				if (getBimServer().getNewDiskCacheManager().contains(downloadDescriptor)) {
-					cacheFile = getBimServer().getNewDiskCacheManager().get(downloadDescriptor);
-					FileInputStreamDataSource fileInputStreamDataSource = new FileInputStreamDataSource(cacheFile);
-					fileInputStreamDataSource.setName(downloadDescriptor.getFileNameWithoutExtension());
-					checkoutResult.setFile(new DataHandler(fileInputStreamDataSource));
+					cached = true;
+					CachedResultDataSource cachedResultDataSource = new CachedResultDataSource(getBimServer().getNewDiskCacheManager(), downloadDescriptor);
+					cachedResultDataSource.setName(downloadDescriptor.getFileNameWithoutExtension());
+					checkoutResult.setFile(new DataHandler(cachedResultDataSource));
 				} else {
 					try {
 						NewDiskCacheOutputStream diskCacheOutputStream = getBimServer().getNewDiskCacheManager().startCaching(downloadDescriptor);
@@ -274,12 +291,18 @@ public class LongStreamingDownloadAction extends LongAction<StreamingDownloadKey
 	public Writer getMessagingStreamingSerializer() {
 		if (getBimServer().getNewDiskCacheManager().isEnabled()) {
 			if (getBimServer().getNewDiskCacheManager().contains(downloadDescriptor)) {
-				FileCacheReadingWriter fileCacheReadingWriter = new FileCacheReadingWriter(getBimServer().getNewDiskCacheManager().get(downloadDescriptor));
-				fileCacheReadingWriter.setName(downloadDescriptor.getFileNameWithoutExtension());
-				return fileCacheReadingWriter;
-			} else {
-				return getBimServer().getNewDiskCacheManager().startCachingWriter(downloadDescriptor, messagingStreamingSerializer);
+				try {
+					InputStream inputStream = getBimServer().getNewDiskCacheManager().getInputStream(downloadDescriptor);
+					if (inputStream != null) {
+						FileCacheReadingWriter fileCacheReadingWriter = new FileCacheReadingWriter(inputStream);
+						fileCacheReadingWriter.setName(downloadDescriptor.getFileNameWithoutExtension());
+						return fileCacheReadingWriter;
+					}
+				} catch (IOException e) {
+					LOGGER.error("", e);
+				}
 			}
+			return getBimServer().getNewDiskCacheManager().startCachingWriter(downloadDescriptor, messagingStreamingSerializer);
 		}
 		return messagingStreamingSerializer;
 	}
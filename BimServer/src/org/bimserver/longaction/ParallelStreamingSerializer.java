@@ -0,0 +1,172 @@
+package org.bimserver.longaction;
+
+/******************************************************************************
+ * Copyright (C) 2009-2019  BIMserver.org
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see {@literal<http://www.gnu.org/licenses/>}.
+ *****************************************************************************/
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.bimserver.BimServer;
+import org.bimserver.BimserverDatabaseException;
+import org.bimserver.database.DatabaseSession;
+import org.bimserver.database.OperationType;
+import org.bimserver.database.queries.QueryObjectProvider;
+import org.bimserver.database.queries.om.Query;
+import org.bimserver.emf.PackageMetaData;
+import org.bimserver.models.store.IfcHeader;
+import org.bimserver.plugins.PluginManagerInterface;
+import org.bimserver.plugins.serializers.ObjectProvider;
+import org.bimserver.plugins.serializers.PartitionableStreamingSerializer;
+import org.bimserver.plugins.serializers.ProgressReporter;
+import org.bimserver.plugins.serializers.ProjectInfo;
+import org.bimserver.plugins.serializers.SerializerException;
+import org.bimserver.plugins.serializers.StreamingSerializer;
+
+/**
+ * Serializes the partitions of a download (see QueryPartitioner) concurrently. Every partition is read with its own (read-only)
+ * DatabaseSession and QueryObjectProvider and serialized into an in-memory chunk. The chunks are written to the OutputStream in
+ * partition order, so the output only differs from a sequential serialization in the order of the objects.
+ *
+ * To bound the memory usage, only a limited number of partitions is queued ahead of the partition that is being written.
+ *
+ * Progress is reported per partition, by the thread that finished it, and once more when the footer has been written.
+ */
+public class ParallelStreamingSerializer implements StreamingSerializer {
+
+	private final BimServer bimServer;
+	private final PartitionableStreamingSerializer serializer;
+	private final List<Query> partitions;
+	private final Set<Long> roids;
+	private final PackageMetaData packageMetaData;
+	private final int nrThreads;
+
+	public ParallelStreamingSerializer(BimServer bimServer, PartitionableStreamingSerializer serializer, List<Query> partitions, Set<Long> roids, PackageMetaData packageMetaData) {
+		this.bimServer = bimServer;
+		this.serializer = serializer;
+		this.partitions = partitions;
+		this.roids = roids;
+		this.packageMetaData = packageMetaData;
+		this.nrThreads = Math.max(1, Math.min(Runtime.getRuntime().availableProcessors(), partitions.size()));
+	}
+
+	/**
+	 * The wrapped serializer is used for the header and footer, and for getInputStream, which is not parallelized
+	 */
+	@Override
+	public void init(ObjectProvider objectProvider, ProjectInfo projectInfo, IfcHeader ifcHeader, PluginManagerInterface pluginManager, PackageMetaData packageMetaData) throws SerializerException {
+		serializer.init(objectProvider, projectInfo, ifcHeader, pluginManager, packageMetaData);
+	}
+
+	@Override
+	public void writeToOutputStream(OutputStream outputStream) throws SerializerException, BimserverDatabaseException {
+		writeToOutputStream(outputStream, null);
+	}
+
+	@Override
+	public void writeToOutputStream(OutputStream outputStream, ProgressReporter progressReporter) throws SerializerException, BimserverDatabaseException {
+		// The footer is the last step, so the progress only reaches the maximum when all has been written
+		long max = partitions.size() + 1;
+		AtomicLong done = new AtomicLong();
+		serializer.writeHeader(outputStream);
+		ThreadPoolExecutor executor = new ThreadPoolExecutor(nrThreads, nrThreads, 1, TimeUnit.MINUTES, new LinkedBlockingQueue<Runnable>());
+		try {
+			List<Future<byte[]>> chunks = new ArrayList<>(partitions.size());
+			int maxQueued = nrThreads * 2;
+			for (int i = 0; i < Math.min(maxQueued, partitions.size()); i++) {
+				Query partition = partitions.get(i);
+				chunks.add(executor.submit(() -> serializePartition(partition, progressReporter, done, max)));
+			}
+			boolean first = true;
+			for (int i = 0; i < partitions.size(); i++) {
+				byte[] chunk = chunks.get(i).get();
+				chunks.set(i, null);
+				if (chunks.size() < partitions.size()) {
+					Query next = partitions.get(chunks.size());
+					chunks.add(executor.submit(() -> serializePartition(next, progressReporter, done, max)));
+				}
+				if (chunk != null) {
+					if (!first) {
+						outputStream.write(serializer.getPartitionSeparator());
+					}
+					outputStream.write(chunk);
+					first = false;
+				}
+			}
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof SerializerException) {
+				throw (SerializerException) e.getCause();
+			}
+			throw new SerializerException(e.getCause());
+		} catch (InterruptedException | IOException e) {
+			throw new SerializerException(e);
+		} finally {
+			executor.shutdownNow();
+		}
+		serializer.writeFooter(outputStream);
+		if (progressReporter != null) {
+			synchronized (progressReporter) {
+				progressReporter.update(max, max);
+			}
+		}
+	}
+
+	private byte[] serializePartition(Query partition, ProgressReporter progressReporter, AtomicLong done, long max) throws Exception {
+		byte[] chunk = serializePartition(partition);
+		if (progressReporter != null) {
+			// The workers share the reporter, which does not have to be thread safe
+			synchronized (progressReporter) {
+				progressReporter.update(done.incrementAndGet(), max);
+			}
+		}
+		return chunk;
+	}
+
+	/**
+	 * Reads the partition with its own (read-only) DatabaseSession
+	 * 
+	 * @return The serialized objects, or null when the partition did not produce any output
+	 */
+	protected byte[] serializePartition(Query partition) throws Exception {
+		try (DatabaseSession databaseSession = bimServer.getDatabase().createSession(OperationType.READ_ONLY)) {
+			return serializePartition(new QueryObjectProvider(databaseSession, bimServer, partition, roids, packageMetaData));
+		}
+	}
+
+	protected byte[] serializePartition(ObjectProvider objectProvider) throws SerializerException {
+		ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+		if (serializer.writePartition(objectProvider, outputStream)) {
+			return outputStream.toByteArray();
+		}
+		return null;
+	}
+
+	@Override
+	public InputStream getInputStream() {
+		return serializer.getInputStream();
+	}
+}
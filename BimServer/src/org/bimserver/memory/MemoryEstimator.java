@@ -0,0 +1,171 @@
+package org.bimserver.memory;
+
+/******************************************************************************
+ * Copyright (C) 2009-2019  BIMserver.org
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see {@literal<http://www.gnu.org/licenses/>}.
+ *****************************************************************************/
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.bimserver.BimserverDatabaseException;
+import org.bimserver.database.DatabaseSession;
+import org.bimserver.database.RecordSizeEstimater;
+import org.bimserver.emf.PackageMetaData;
+import org.bimserver.models.store.ExtendedData;
+import org.bimserver.models.store.ExtendedDataSchema;
+import org.bimserver.models.store.RevisionSummary;
+import org.bimserver.models.store.RevisionSummaryContainer;
+import org.bimserver.models.store.RevisionSummaryType;
+import org.bimserver.models.store.StorePackage;
+import org.eclipse.emf.ecore.EClass;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+/**
+ * Estimates the working set of jobs, for the MemoryGovernor.
+ *
+ * The amount of triangles generated per byte of IFC file varies a lot between models, so it is learned from the geometry generation
+ * reports of earlier checkins (a moving average), which is seeded from the stored reports at startup. Loading a revision in an EMF model is estimated from the object counts of its
+ * RevisionSummary and the record sizes of the RecordSizeEstimater.
+ */
+public class MemoryEstimator {
+	private static final Logger LOGGER = LoggerFactory.getLogger(MemoryEstimator.class);
+	// These are guesses, needs tuning
+	private static final long BYTES_PER_FILE_BYTE = 3;
+	private static final long BYTES_PER_TRIANGLE = 150;
+	private static final long BYTES_PER_EMF_OBJECT = 400;
+	private static final int DEFAULT_RECORD_SIZE = 100;
+	private static final double DEFAULT_TRIANGLES_PER_FILE_BYTE = 0.02;
+	private static final double HISTORY_WEIGHT = 0.2;
+	// With the moving average, older reports hardly count anymore
+	private static final int MAX_STORED_REPORTS = 30;
+
+	private final Map<PackageMetaData, Map<EClass, Integer>> recordSizes = new ConcurrentHashMap<>();
+	private double trianglesPerFileByte = DEFAULT_TRIANGLES_PER_FILE_BYTE;
+	private long nrReports;
+
+	/**
+	 * Replays the JSON geometry generation reports of the most recent checkins, so the estimates do not start from the defaults after a
+	 * restart
+	 */
+	public void init(DatabaseSession databaseSession) throws BimserverDatabaseException {
+		ExtendedDataSchema schema = databaseSession.querySingle(StorePackage.eINSTANCE.getExtendedDataSchema_Name(), "GEOMETRY_GENERATION_REPORT_JSON_1_1");
+		if (schema == null) {
+			return;
+		}
+		List<ExtendedData> reports = new ArrayList<>(schema.getExtendedData());
+		reports.sort(Comparator.comparing(ExtendedData::getAdded, Comparator.nullsFirst(Comparator.naturalOrder())));
+		ObjectMapper objectMapper = new ObjectMapper();
+		int replayed = 0;
+		for (ExtendedData extendedData : reports.subList(Math.max(0, reports.size() - MAX_STORED_REPORTS), reports.size())) {
+			if (extendedData.getFile() == null || extendedData.getFile().getData() == null) {
+				continue;
+			}
+			try {
+				JsonNode ifcModel = objectMapper.readTree(extendedData.getFile().getData()).get("ifcModel");
+				// Reports of other than streaming checkins have a file size of -1 and are skipped
+				if (ifcModel != null && ifcModel.path("filesize").asLong() > 0) {
+					addGeometryGenerationReport(ifcModel.path("filesize").asLong(), ifcModel.path("trianglesIncludingReuse").asInt());
+					replayed++;
+				}
+			} catch (IOException e) {
+				LOGGER.error("", e);
+			}
+		}
+		LOGGER.info("Memory estimates initialized from " + replayed + " geometry generation reports");
+	}
+
+	/**
+	 * @return The estimated working set of a streaming checkin without geometry generation
+	 */
+	public long estimateStreamingCheckin(long fileSize) {
+		return Math.max(fileSize, 0) * BYTES_PER_FILE_BYTE;
+	}
+
+	/**
+	 * @return The estimated working set of generating the geometry of a checked in file of the given size
+	 */
+	public synchronized long estimateGeometryGeneration(long fileSize) {
+		return (long) (Math.max(fileSize, 0) * trianglesPerFileByte * BYTES_PER_TRIANGLE);
+	}
+
+	/**
+	 * Called when geometry has been generated for a checkin, to improve the estimates of future checkins
+	 */
+	public synchronized void addGeometryGenerationReport(long fileSize, int numberOfTriangles) {
+		if (fileSize <= 0) {
+			return;
+		}
+		double observed = (double) numberOfTriangles / fileSize;
+		if (nrReports == 0) {
+			trianglesPerFileByte = observed;
+		} else {
+			trianglesPerFileByte = HISTORY_WEIGHT * observed + (1 - HISTORY_WEIGHT) * trianglesPerFileByte;
+		}
+		nrReports++;
+	}
+
+	/**
+	 * @return The estimated size of an EMF model containing all objects of the given summary
+	 */
+	public long estimateModel(PackageMetaData packageMetaData, RevisionSummary revisionSummary) {
+		if (revisionSummary == null) {
+			return 0;
+		}
+		Map<EClass, Integer> sizes = getRecordSizes(packageMetaData);
+		long total = 0;
+		for (RevisionSummaryContainer revisionSummaryContainer : revisionSummary.getList()) {
+			for (RevisionSummaryType revisionSummaryType : revisionSummaryContainer.getTypes()) {
+				EClass eClass = packageMetaData.getEClass(revisionSummaryType.getName());
+				Integer recordSize = eClass == null ? null : sizes.get(eClass);
+				total += (long) revisionSummaryType.getCount() * ((recordSize == null ? DEFAULT_RECORD_SIZE : recordSize) + BYTES_PER_EMF_OBJECT);
+			}
+		}
+		return total;
+	}
+
+	private Map<EClass, Integer> getRecordSizes(PackageMetaData packageMetaData) {
+		return recordSizes.computeIfAbsent(packageMetaData, k -> {
+			RecordSizeEstimater recordSizeEstimater = new RecordSizeEstimater();
+			recordSizeEstimater.init(Collections.singleton(packageMetaData.getEPackage()));
+			Map<EClass, Integer> result = new HashMap<>();
+			for (EClass eClass : packageMetaData.getEClasses()) {
+				if (recordSizeEstimater.hasEstimate(eClass)) {
+					result.put(eClass, recordSizeEstimater.getEstimate(eClass));
+				}
+			}
+			return result;
+		});
+	}
+
+	public synchronized ObjectNode toJson() {
+		ObjectNode result = JsonNodeFactory.instance.objectNode();
+		result.put("trianglesPerFileByte", trianglesPerFileByte);
+		result.put("nrReports", nrReports);
+		return result;
+	}
+}
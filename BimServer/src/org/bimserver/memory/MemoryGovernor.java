@@ -0,0 +1,184 @@
+package org.bimserver.memory;
+
+/******************************************************************************
+ * Copyright (C) 2009-2019  BIMserver.org
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see {@literal<http://www.gnu.org/licenses/>}.
+ *****************************************************************************/
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.bimserver.shared.exceptions.UserException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+/**
+ * Admission control for memory intensive jobs. Before a job runs it reserves the amount of heap its MemoryEstimator estimate says it will
+ * need, when the budget is exhausted the job waits until enough has been released by other jobs, or is rejected after MAX_WAIT.
+ *
+ * Estimates bigger than the whole budget are capped at the budget, so such a job can still run, but only when nothing else is running.
+ *
+ * Waiting jobs are served in order of arrival, a job that fits in the remaining budget does not overtake a waiting job. Otherwise a big
+ * job could wait forever while a stream of small jobs keeps the budget occupied.
+ */
+public class MemoryGovernor {
+	private static final Logger LOGGER = LoggerFactory.getLogger(MemoryGovernor.class);
+	private static final long MAX_WAIT = TimeUnit.MINUTES.toMillis(10);
+	private final Map<Long, MemoryReservation> reservations = new LinkedHashMap<>();
+	private final Deque<Object> waiting = new ArrayDeque<>();
+	private final MemoryEstimator memoryEstimator = new MemoryEstimator();
+	private long budget;
+	private long reserved;
+	private long idCounter;
+
+	/**
+	 * @param budget The amount of bytes that can be reserved in total, or -1 for no limit
+	 */
+	public MemoryGovernor(long budget) {
+		this.budget = budget;
+	}
+
+	public MemoryEstimator getMemoryEstimator() {
+		return memoryEstimator;
+	}
+
+	public MemoryReservation reserve(String description, long bytes) throws UserException {
+		return reserve(description, bytes, MAX_WAIT);
+	}
+
+	/**
+	 * Blocks until the given amount of bytes can be reserved and all jobs that were waiting before have their reservation
+	 * 
+	 * @throws UserException When the bytes could not be reserved within maxWait milliseconds
+	 */
+	public synchronized MemoryReservation reserve(String description, long bytes, long maxWait) throws UserException {
+		long toReserve = budget == -1 ? bytes : Math.min(bytes, budget);
+		if (budget == -1 || (waiting.isEmpty() && reserved + toReserve <= budget)) {
+			return add(description, bytes, toReserve);
+		}
+		LOGGER.info("Waiting for " + toReserve + " bytes of memory for " + description + " (" + reserved + " of " + budget + " bytes reserved, " + waiting.size() + " jobs waiting before it)");
+		long deadline = System.currentTimeMillis() + maxWait;
+		Object turn = new Object();
+		waiting.addLast(turn);
+		try {
+			while (waiting.peekFirst() != turn || reserved + toReserve > budget) {
+				long wait = deadline - System.currentTimeMillis();
+				if (wait <= 0) {
+					throw new UserException("Not enough memory available for " + description + " (estimated " + bytes + " bytes, " + (budget - reserved) + " of " + budget + " bytes available), try again later");
+				}
+				try {
+					wait(wait);
+				} catch (InterruptedException e) {
+					throw new UserException("Interrupted while waiting for memory for " + description);
+				}
+			}
+			return add(description, bytes, toReserve);
+		} finally {
+			waiting.remove(turn);
+			// The next job in line might fit now, or might have been waiting only for this one to leave
+			notifyAll();
+		}
+	}
+
+	private MemoryReservation add(String description, long bytes, long toReserve) {
+		reserved += toReserve;
+		MemoryReservation memoryReservation = new MemoryReservation(this, ++idCounter, description, bytes, toReserve);
+		reservations.put(memoryReservation.getId(), memoryReservation);
+		return memoryReservation;
+	}
+
+	synchronized void release(MemoryReservation memoryReservation, long bytes) {
+		reserved -= memoryReservation.take(bytes);
+		if (memoryReservation.getReserved() == 0) {
+			reservations.remove(memoryReservation.getId());
+		}
+		notifyAll();
+	}
+
+	public synchronized long getBudget() {
+		return budget;
+	}
+
+	/**
+	 * Used by BerkeleyCacheTuner before it grows the Berkeley DB cache, which is part of the heap as well. Only bytes that are not
+	 * reserved by jobs can be taken, and nothing while jobs are waiting for memory.
+	 * 
+	 * @return false when the bytes are not available, the cache should not grow in that case
+	 */
+	public synchronized boolean takeFromBudget(long bytes) {
+		if (budget == -1) {
+			return true;
+		}
+		if (!waiting.isEmpty() || budget - reserved < bytes) {
+			return false;
+		}
+		budget -= bytes;
+		return true;
+	}
+
+	/**
+	 * Gives back bytes that were taken with takeFromBudget, after the cache has been shrunk
+	 */
+	public synchronized void returnToBudget(long bytes) {
+		if (budget != -1) {
+			budget += bytes;
+			notifyAll();
+		}
+	}
+
+	public synchronized long getReserved() {
+		return reserved;
+	}
+
+	/**
+	 * @return The number of jobs waiting for a reservation
+	 */
+	public synchronized int getNrWaiting() {
+		return waiting.size();
+	}
+
+	public synchronized List<MemoryReservation> getReservations() {
+		return new ArrayList<>(reservations.values());
+	}
+
+	public synchronized ObjectNode toJson() {
+		ObjectNode result = JsonNodeFactory.instance.objectNode();
+		result.put("budget", budget);
+		result.put("reserved", reserved);
+		result.put("waiting", waiting.size());
+		result.put("maxMemory", Runtime.getRuntime().maxMemory());
+		result.put("usedMemory", Runtime.getRuntime().totalMemory() - Runtime.getRuntime().freeMemory());
+		ArrayNode reservationsNode = result.putArray("reservations");
+		for (MemoryReservation memoryReservation : reservations.values()) {
+			ObjectNode reservationNode = reservationsNode.addObject();
+			reservationNode.put("id", memoryReservation.getId());
+			reservationNode.put("description", memoryReservation.getDescription());
+			reservationNode.put("requested", memoryReservation.getRequested());
+			reservationNode.put("reserved", memoryReservation.getReserved());
+			reservationNode.put("start", memoryReservation.getStart().getTimeInMillis());
+		}
+		result.set("estimator", memoryEstimator.toJson());
+		return result;
+	}
+}
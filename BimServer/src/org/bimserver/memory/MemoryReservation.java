@@ -0,0 +1,82 @@
+package org.bimserver.memory;
+
+/******************************************************************************
+ * Copyright (C) 2009-2019  BIMserver.org
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see {@literal<http://www.gnu.org/licenses/>}.
+ *****************************************************************************/
+
+import java.util.GregorianCalendar;
+
+/**
+ * An amount of heap that has been reserved by a job with the MemoryGovernor. Parts can be released while the job is running (when a
+ * memory intensive stage is done), close releases the rest.
+ */
+public class MemoryReservation implements AutoCloseable {
+	private final MemoryGovernor memoryGovernor;
+	private final long id;
+	private final String description;
+	private final long requested;
+	private final GregorianCalendar start = new GregorianCalendar();
+	private long reserved;
+
+	MemoryReservation(MemoryGovernor memoryGovernor, long id, String description, long requested, long reserved) {
+		this.memoryGovernor = memoryGovernor;
+		this.id = id;
+		this.description = description;
+		this.requested = requested;
+		this.reserved = reserved;
+	}
+
+	/**
+	 * Releases (at most) the given amount of bytes of this reservation
+	 */
+	public void release(long bytes) {
+		memoryGovernor.release(this, bytes);
+	}
+
+	@Override
+	public void close() {
+		memoryGovernor.release(this, Long.MAX_VALUE);
+	}
+
+	long take(long bytes) {
+		long released = Math.min(bytes, reserved);
+		reserved -= released;
+		return released;
+	}
+
+	public long getId() {
+		return id;
+	}
+
+	public String getDescription() {
+		return description;
+	}
+
+	/**
+	 * @return The estimate of the job, can be more than was reserved when the estimate was bigger than the whole budget
+	 */
+	public long getRequested() {
+		return requested;
+	}
+
+	public long getReserved() {
+		return reserved;
+	}
+
+	public GregorianCalendar getStart() {
+		return start;
+	}
+}
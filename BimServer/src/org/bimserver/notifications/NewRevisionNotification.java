@@ -33,16 +33,11 @@ import org.bimserver.BimserverDatabaseException;
 import org.bimserver.client.Channel;
 import org.bimserver.database.DatabaseSession;
 import org.bimserver.database.OldQuery;
-import org.bimserver.database.OldQuery.Deep;
 import org.bimserver.database.OperationType;
-import org.bimserver.emf.IfcModelInterface;
-import org.bimserver.emf.PackageMetaData;
-import org.bimserver.ifc.BasicIfcModel;
 import org.bimserver.mail.EmailMessage;
 import org.bimserver.mail.MailSystem;
 import org.bimserver.models.log.AccessMethod;
 import org.bimserver.models.store.ModelCheckerInstance;
-import org.bimserver.models.store.ModelCheckerResult;
 import org.bimserver.models.store.NewService;
 import org.bimserver.models.store.Project;
 import org.bimserver.models.store.Revision;
@@ -52,9 +47,6 @@ import org.bimserver.models.store.StorePackage;
 import org.bimserver.models.store.Trigger;
 import org.bimserver.models.store.User;
 import org.bimserver.models.store.UserType;
-import org.bimserver.plugins.modelchecker.ModelCheckException;
-import org.bimserver.plugins.modelchecker.ModelChecker;
-import org.bimserver.plugins.modelchecker.ModelCheckerPlugin;
 import org.bimserver.shared.ChannelConnectionException;
 import org.bimserver.shared.exceptions.PublicInterfaceNotFoundException;
 import org.bimserver.shared.exceptions.ServerException;
@@ -132,13 +124,31 @@ public class NewRevisionNotification extends Notification {
 				}
 			}
 			
+			List<Service> services = new ArrayList<>();
 			for (Service service : project.getServices()) {
 				if (soid == -1 || service.getOid() == soid) {
 					if (revision.getService() != null && revision.getService().getOid() == service.getOid()) {
 						// Don't keep calling service recursively
 						continue;
 					}
-					triggerNewRevision(session, getBimServer().getNotificationsManager(), getBimServer(), getBimServer().getNotificationsManager().getSiteAddress(), project, roid, Trigger.NEW_REVISION, service);
+					services.add(service);
+				}
+			}
+			if (!services.isEmpty()) {
+				if (hasModelCheckers(services)) {
+					// Checking reads the revision and can wait a long time for memory, that should not hold up the other notifications
+					final List<Long> soids = new ArrayList<>();
+					for (Service service : services) {
+						soids.add(service.getOid());
+					}
+					getBimServer().getExecutorService().submit(new Runnable() {
+						@Override
+						public void run() {
+							triggerServicesInBackground(soids);
+						}
+					});
+				} else {
+					triggerServices(session, project, services);
 				}
 			}
 			if (soid == -1) {
@@ -157,6 +167,44 @@ public class NewRevisionNotification extends Notification {
 		}
 	}
 	
+	private boolean hasModelCheckers(List<Service> services) {
+		for (Service service : services) {
+			if (service.getTrigger() == Trigger.NEW_REVISION) {
+				for (ModelCheckerInstance modelCheckerInstance : service.getModelCheckers()) {
+					if (modelCheckerInstance.isValid()) {
+						return true;
+					}
+				}
+			}
+		}
+		return false;
+	}
+
+	private void triggerServices(DatabaseSession session, Project project, List<Service> services) throws UserException, ServerException {
+		// The model checkers of all services at once, so the revision is only read once
+		RevisionModelCheckers modelCheckers = new RevisionModelCheckers(getBimServer(), session, project, roid);
+		modelCheckers.run(services, Trigger.NEW_REVISION);
+		for (Service service : services) {
+			triggerNewRevision(session, getBimServer().getNotificationsManager(), getBimServer(), getBimServer().getNotificationsManager().getSiteAddress(), project, roid, Trigger.NEW_REVISION, service, modelCheckers);
+		}
+	}
+
+	private void triggerServicesInBackground(List<Long> soids) {
+		try (DatabaseSession session = getBimServer().getDatabase().createSession(OperationType.READ_ONLY)) {
+			Project project = session.get(StorePackage.eINSTANCE.getProject(), poid, OldQuery.getDefault());
+			List<Service> services = new ArrayList<>();
+			for (long soid : soids) {
+				Service service = session.get(StorePackage.eINSTANCE.getService(), soid, OldQuery.getDefault());
+				if (service != null) {
+					services.add(service);
+				}
+			}
+			triggerServices(session, project, services);
+		} catch (BimserverDatabaseException | UserException | ServerException e) {
+			LOGGER.error("", e);
+		}
+	}
+
 	private void sendEmail(DatabaseSession session, Project project, Revision revision) throws UserException {
 		Set<User> users = getUsers(session, project);
 		for (User user : users) {
@@ -258,40 +306,16 @@ public class NewRevisionNotification extends Notification {
 		thread.start();
 	}
 	
-	public void triggerNewRevision(DatabaseSession session, NotificationsManager notificationsManager, final BimServer bimServer, String siteAddress, Project project, final long roid, Trigger trigger, final Service service) throws UserException, ServerException {
+	/**
+	 * @param modelCheckers Must have been run for this service
+	 */
+	public void triggerNewRevision(DatabaseSession session, NotificationsManager notificationsManager, final BimServer bimServer, String siteAddress, Project project, final long roid, Trigger trigger, final Service service, RevisionModelCheckers modelCheckers) throws UserException, ServerException {
 		if (service.getTrigger() == trigger) {
 			Channel channel = null;
 			try {
-				IfcModelInterface model = null;
-				for (ModelCheckerInstance modelCheckerInstance : service.getModelCheckers()) {
-					if (modelCheckerInstance.isValid()) {
-						ModelCheckerPlugin modelCheckerPlugin = bimServer.getPluginManager().getModelCheckerPlugin(modelCheckerInstance.getModelCheckerPluginClassName(), true);
-						if (modelCheckerPlugin != null) {
-							ModelChecker modelChecker = modelCheckerPlugin.createModelChecker(null);
-							ModelCheckerResult result;
-							try {
-								if (model == null) {
-									PackageMetaData packageMetaData = bimServer.getMetaDataManager().getPackageMetaData(project.getSchema());
-									model = new BasicIfcModel(packageMetaData, null);
-									Revision revision;
-									try {
-										revision = session.get(roid, OldQuery.getDefault());
-										session.getMap(model, new OldQuery(packageMetaData, project.getId(), revision.getId(), revision.getOid(), Deep.NO));
-									} catch (BimserverDatabaseException e) {
-										LOGGER.error("", e);
-									}
-								}
-								result = modelChecker.check(model, modelCheckerInstance.getCompiled());
-								if (!result.isValid()) {
-									LOGGER.info("Not triggering");
-									return;
-								}
-							} catch (ModelCheckException e) {
-								LOGGER.info("Not triggering");
-								return;
-							}
-						}
-					}
+				if (!modelCheckers.isValid(service)) {
+					LOGGER.info("Not triggering");
+					return;
 				}
 				channel = notificationsManager.getChannel(service);
 				final RemoteServiceInterface remoteServiceInterface = channel.get(RemoteServiceInterface.class);
@@ -0,0 +1,207 @@
+package org.bimserver.notifications;
+
+/******************************************************************************
+ * Copyright (C) 2009-2019  BIMserver.org
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see {@literal<http://www.gnu.org/licenses/>}.
+ *****************************************************************************/
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.bimserver.BimServer;
+import org.bimserver.BimserverDatabaseException;
+import org.bimserver.database.DatabaseSession;
+import org.bimserver.database.OldQuery;
+import org.bimserver.database.OldQuery.Deep;
+import org.bimserver.database.queries.QueryObjectProvider;
+import org.bimserver.database.queries.om.Query;
+import org.bimserver.database.queries.om.QueryException;
+import org.bimserver.emf.IfcModelInterface;
+import org.bimserver.emf.PackageMetaData;
+import org.bimserver.ifc.BasicIfcModel;
+import org.bimserver.memory.MemoryEstimator;
+import org.bimserver.memory.MemoryReservation;
+import org.bimserver.models.store.ConcreteRevision;
+import org.bimserver.models.store.ModelCheckerInstance;
+import org.bimserver.models.store.Project;
+import org.bimserver.models.store.Revision;
+import org.bimserver.models.store.Service;
+import org.bimserver.models.store.Trigger;
+import org.bimserver.plugins.modelchecker.ModelCheckException;
+import org.bimserver.plugins.modelchecker.ModelChecker;
+import org.bimserver.plugins.modelchecker.ModelCheckerPlugin;
+import org.bimserver.plugins.modelchecker.StreamingModelCheck;
+import org.bimserver.shared.HashMapVirtualObject;
+import org.bimserver.shared.exceptions.UserException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Runs the model checkers of all services that are triggered by one new revision, so the revision is read once instead of once per
+ * service.
+ *
+ * Checkers that support streaming (ModelChecker.createStreamingCheck) share one query, the combination of the query parts of all those
+ * checks. Only when there are checkers that need the complete model, the revision is loaded into a model, after reserving the memory
+ * for it with the MemoryGovernor, so concurrent new revisions of large models are not all loaded at the same time.
+ *
+ * Reserving can block for a long time, so this is not run on the thread of the NotificationsProcessor (see NewRevisionNotification).
+ */
+public class RevisionModelCheckers {
+	private static final Logger LOGGER = LoggerFactory.getLogger(RevisionModelCheckers.class);
+	private final BimServer bimServer;
+	private final DatabaseSession session;
+	private final Project project;
+	private final long roid;
+
+	// Per ModelCheckerInstance oid, checkers of which the plugin is not available have no result and pass
+	private final Map<Long, Boolean> passed = new HashMap<>();
+
+	public RevisionModelCheckers(BimServer bimServer, DatabaseSession session, Project project, long roid) {
+		this.bimServer = bimServer;
+		this.session = session;
+		this.project = project;
+		this.roid = roid;
+	}
+
+	public void run(Collection<Service> services, Trigger trigger) {
+		PackageMetaData packageMetaData = bimServer.getMetaDataManager().getPackageMetaData(project.getSchema());
+		Map<ModelCheckerInstance, StreamingModelCheck> streamingChecks = new LinkedHashMap<>();
+		Map<ModelCheckerInstance, ModelChecker> modelChecks = new LinkedHashMap<>();
+		for (Service service : services) {
+			if (service.getTrigger() != trigger) {
+				continue;
+			}
+			for (ModelCheckerInstance modelCheckerInstance : service.getModelCheckers()) {
+				if (!modelCheckerInstance.isValid() || passed.containsKey(modelCheckerInstance.getOid()) || streamingChecks.containsKey(modelCheckerInstance) || modelChecks.containsKey(modelCheckerInstance)) {
+					continue;
+				}
+				ModelCheckerPlugin modelCheckerPlugin = bimServer.getPluginManager().getModelCheckerPlugin(modelCheckerInstance.getModelCheckerPluginClassName(), true);
+				if (modelCheckerPlugin != null) {
+					ModelChecker modelChecker = modelCheckerPlugin.createModelChecker(null);
+					try {
+						StreamingModelCheck streamingModelCheck = modelChecker.createStreamingCheck(packageMetaData, modelCheckerInstance.getCompiled());
+						if (streamingModelCheck == null) {
+							modelChecks.put(modelCheckerInstance, modelChecker);
+						} else {
+							streamingChecks.put(modelCheckerInstance, streamingModelCheck);
+						}
+					} catch (ModelCheckException e) {
+						LOGGER.info("Model checker " + modelCheckerInstance.getName() + " failed: " + e.getMessage());
+						passed.put(modelCheckerInstance.getOid(), false);
+					}
+				}
+			}
+		}
+		if (!streamingChecks.isEmpty()) {
+			runStreaming(packageMetaData, streamingChecks);
+		}
+		if (!modelChecks.isEmpty()) {
+			runOnModel(packageMetaData, modelChecks);
+		}
+	}
+
+	private void runStreaming(PackageMetaData packageMetaData, Map<ModelCheckerInstance, StreamingModelCheck> streamingChecks) {
+		Query query = new Query("Model checks " + roid, packageMetaData);
+		for (Map.Entry<ModelCheckerInstance, StreamingModelCheck> entry : new LinkedHashMap<>(streamingChecks).entrySet()) {
+			try {
+				entry.getValue().addQueryParts(query);
+			} catch (ModelCheckException e) {
+				fail(streamingChecks, entry.getKey(), e);
+			}
+		}
+		try {
+			if (query.getQueryParts().isEmpty()) {
+				// A query without parts would return all objects, none of the checks needs any
+				LOGGER.debug("No objects needed for model checks of revision " + roid);
+			} else {
+				QueryObjectProvider queryObjectProvider = new QueryObjectProvider(session, bimServer, query, Collections.singleton(roid), packageMetaData);
+				HashMapVirtualObject next = queryObjectProvider.next();
+				while (next != null && !streamingChecks.isEmpty()) {
+					for (Map.Entry<ModelCheckerInstance, StreamingModelCheck> entry : new LinkedHashMap<>(streamingChecks).entrySet()) {
+						try {
+							entry.getValue().check(next);
+						} catch (ModelCheckException e) {
+							fail(streamingChecks, entry.getKey(), e);
+						}
+					}
+					next = queryObjectProvider.next();
+				}
+			}
+			for (Map.Entry<ModelCheckerInstance, StreamingModelCheck> entry : streamingChecks.entrySet()) {
+				try {
+					passed.put(entry.getKey().getOid(), entry.getValue().getResult().isValid());
+				} catch (ModelCheckException e) {
+					LOGGER.info("Model checker " + entry.getKey().getName() + " failed: " + e.getMessage());
+					passed.put(entry.getKey().getOid(), false);
+				}
+			}
+		} catch (IOException | QueryException | BimserverDatabaseException e) {
+			LOGGER.error("", e);
+			for (ModelCheckerInstance modelCheckerInstance : streamingChecks.keySet()) {
+				passed.put(modelCheckerInstance.getOid(), false);
+			}
+		}
+	}
+
+	private void fail(Map<ModelCheckerInstance, StreamingModelCheck> streamingChecks, ModelCheckerInstance modelCheckerInstance, ModelCheckException e) {
+		LOGGER.info("Model checker " + modelCheckerInstance.getName() + " failed: " + e.getMessage());
+		streamingChecks.remove(modelCheckerInstance);
+		passed.put(modelCheckerInstance.getOid(), false);
+	}
+
+	private void runOnModel(PackageMetaData packageMetaData, Map<ModelCheckerInstance, ModelChecker> modelChecks) {
+		try {
+			Revision revision = session.get(roid, OldQuery.getDefault());
+			MemoryEstimator memoryEstimator = bimServer.getMemoryGovernor().getMemoryEstimator();
+			long estimate = 0;
+			for (ConcreteRevision concreteRevision : revision.getConcreteRevisions()) {
+				estimate += memoryEstimator.estimateModel(packageMetaData, concreteRevision.getSummary());
+			}
+			try (MemoryReservation memoryReservation = bimServer.getMemoryGovernor().reserve("Model checks of revision " + roid, estimate)) {
+				IfcModelInterface model = new BasicIfcModel(packageMetaData, null);
+				session.getMap(model, new OldQuery(packageMetaData, project.getId(), revision.getId(), revision.getOid(), Deep.NO));
+				for (Map.Entry<ModelCheckerInstance, ModelChecker> entry : modelChecks.entrySet()) {
+					try {
+						passed.put(entry.getKey().getOid(), entry.getValue().check(model, entry.getKey().getCompiled()).isValid());
+					} catch (ModelCheckException e) {
+						LOGGER.info("Model checker " + entry.getKey().getName() + " failed: " + e.getMessage());
+						passed.put(entry.getKey().getOid(), false);
+					}
+				}
+			}
+		} catch (BimserverDatabaseException | UserException e) {
+			LOGGER.error("", e);
+			for (ModelCheckerInstance modelCheckerInstance : modelChecks.keySet()) {
+				passed.put(modelCheckerInstance.getOid(), false);
+			}
+		}
+	}
+
+	/**
+	 * @return Whether none of the model checkers of the given service has failed, run must have been called with this service
+	 */
+	public boolean isValid(Service service) {
+		for (ModelCheckerInstance modelCheckerInstance : service.getModelCheckers()) {
+			if (modelCheckerInstance.isValid() && Boolean.FALSE.equals(passed.get(modelCheckerInstance.getOid()))) {
+				return false;
+			}
+		}
+		return true;
+	}
+}
@@ -17,12 +17,16 @@ package org.bimserver.renderengine;
  * along with this program.  If not, see {@literal<http://www.gnu.org/licenses/>}.
  *****************************************************************************/
 
+import java.util.concurrent.atomic.AtomicInteger;
+
 import org.bimserver.plugins.renderengine.RenderEngine;
 import org.bimserver.plugins.renderengine.RenderEngineException;
 
 public class NoPoolingRenderEnginePool implements RenderEnginePool {
 
 	private RenderEngineFactory renderEngineFactory;
+	private final RenderEnginePoolMetrics metrics = new RenderEnginePoolMetrics();
+	private final AtomicInteger active = new AtomicInteger();
 
 	public NoPoolingRenderEnginePool(RenderEngineFactory renderEngineFactory) {
 		this.renderEngineFactory = renderEngineFactory;
@@ -30,16 +34,41 @@ public class NoPoolingRenderEnginePool implements RenderEnginePool {
 	
 	@Override
 	public RenderEngine borrowObject() throws RenderEngineException {
+		long start = System.nanoTime();
 		RenderEngine createRenderEngine = renderEngineFactory.createRenderEngine();
 		createRenderEngine.init();
+		metrics.engineCreated();
+		metrics.addBorrowWait(System.nanoTime() - start);
+		active.incrementAndGet();
 		return createRenderEngine;
 	}
 
 	@Override
 	public void returnObject(RenderEngine renderEngine) throws RenderEngineException {
+		active.decrementAndGet();
+		metrics.engineClosed();
 		renderEngine.close();
 	}
 
+	@Override
+	public RenderEnginePoolMetrics getMetrics() {
+		return metrics;
+	}
+
+	@Override
+	public int getNrActive() {
+		return active.get();
+	}
+
+	@Override
+	public int getNrIdle() {
+		return 0;
+	}
+
+	@Override
+	public void close() {
+	}
+
 	@Override
 	public RenderEngineFactory getRenderEngineFactory() {
 		return renderEngineFactory;
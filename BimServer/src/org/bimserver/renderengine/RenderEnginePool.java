@@ -27,4 +27,22 @@ public interface RenderEnginePool  {
 	RenderEngine borrowObject() throws RenderEngineException;
 
 	void returnObject(RenderEngine renderEngine) throws RenderEngineException;
+
+	RenderEnginePoolMetrics getMetrics();
+
+	int getNrActive();
+
+	int getNrIdle();
+
+	/**
+	 * Geometry generation reports jobs that will borrow an engine soon (positive delta) and jobs that have started (negative delta),
+	 * so a pool can start engines before they are borrowed
+	 */
+	default void addDemand(int delta) {
+	}
+
+	/**
+	 * Stops all idle engines, engines that are returned after this are stopped as well
+	 */
+	void close();
 }
\ No newline at end of file
@@ -0,0 +1,147 @@
+package org.bimserver.renderengine;
+
+/******************************************************************************
+ * Copyright (C) 2009-2019  BIMserver.org
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see {@literal<http://www.gnu.org/licenses/>}.
+ *****************************************************************************/
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.bimserver.interfaces.objects.SInterfaceMetric;
+import org.bimserver.interfaces.objects.SMethodMetric;
+
+/**
+ * Statistics of a RenderEnginePool, exposed through AdminInterface.getMetrics as one SInterfaceMetric per pool
+ */
+public class RenderEnginePoolMetrics {
+
+	public static class Timing {
+		private final AtomicLong count = new AtomicLong();
+		private final AtomicLong totalNanos = new AtomicLong();
+		private final AtomicLong shortestNanos = new AtomicLong(Long.MAX_VALUE);
+		private final AtomicLong longestNanos = new AtomicLong();
+
+		public void add(long nanos) {
+			count.incrementAndGet();
+			totalNanos.addAndGet(nanos);
+			shortestNanos.accumulateAndGet(nanos, Math::min);
+			longestNanos.accumulateAndGet(nanos, Math::max);
+		}
+
+		public long getCount() {
+			return count.get();
+		}
+
+		public long getAverageNanos() {
+			long count = this.count.get();
+			return count == 0 ? 0 : totalNanos.get() / count;
+		}
+
+		SMethodMetric toSMethodMetric(String name) {
+			SMethodMetric methodMetric = new SMethodMetric();
+			methodMetric.setName(name);
+			long count = this.count.get();
+			methodMetric.setNrCalls(count);
+			methodMetric.setAverageMs(getAverageNanos() / 1000000);
+			methodMetric.setShortestMs(count == 0 ? 0 : shortestNanos.get() / 1000000);
+			methodMetric.setLongestMs(longestNanos.get() / 1000000);
+			return methodMetric;
+		}
+	}
+
+	private final Timing borrowWait = new Timing();
+	private final Map<String, Timing> renderTimes = new ConcurrentHashMap<>();
+	private final AtomicLong enginesCreated = new AtomicLong();
+	private final AtomicLong enginesFailed = new AtomicLong();
+	private final AtomicLong enginesRetired = new AtomicLong();
+	private final AtomicLong enginesClosed = new AtomicLong();
+
+	public void addBorrowWait(long nanos) {
+		borrowWait.add(nanos);
+	}
+
+	/**
+	 * @param type The name of the EClass of the objects that were rendered with one borrowed engine
+	 */
+	public void addRenderTime(String type, long nanos) {
+		Timing timing = renderTimes.get(type);
+		if (timing == null) {
+			timing = renderTimes.computeIfAbsent(type, t -> new Timing());
+		}
+		timing.add(nanos);
+	}
+
+	public void engineCreated() {
+		enginesCreated.incrementAndGet();
+	}
+
+	/**
+	 * An engine has been evicted because it failed
+	 */
+	public void engineFailed() {
+		enginesFailed.incrementAndGet();
+	}
+
+	/**
+	 * An engine has been evicted because it reached the maximum number of uses
+	 */
+	public void engineRetired() {
+		enginesRetired.incrementAndGet();
+	}
+
+	/**
+	 * An engine has been closed after a single use, by a pool that does not reuse engines
+	 */
+	public void engineClosed() {
+		enginesClosed.incrementAndGet();
+	}
+
+	public Timing getBorrowWait() {
+		return borrowWait;
+	}
+
+	public Map<String, Timing> getRenderTimes() {
+		return new TreeMap<>(renderTimes);
+	}
+
+	/**
+	 * Counters are reported as a method metric with only nrCalls set
+	 */
+	public SInterfaceMetric toSInterfaceMetric(String name, int active, int idle) {
+		SInterfaceMetric interfaceMetric = new SInterfaceMetric();
+		interfaceMetric.setName(name);
+		interfaceMetric.getMethods().add(counter("activeEngines", active));
+		interfaceMetric.getMethods().add(counter("idleEngines", idle));
+		interfaceMetric.getMethods().add(counter("enginesCreated", enginesCreated.get()));
+		interfaceMetric.getMethods().add(counter("enginesFailed", enginesFailed.get()));
+		interfaceMetric.getMethods().add(counter("enginesRetired", enginesRetired.get()));
+		interfaceMetric.getMethods().add(counter("enginesClosed", enginesClosed.get()));
+		interfaceMetric.getMethods().add(borrowWait.toSMethodMetric("borrow"));
+		for (Map.Entry<String, Timing> entry : getRenderTimes().entrySet()) {
+			interfaceMetric.getMethods().add(entry.getValue().toSMethodMetric("render " + entry.getKey()));
+		}
+		return interfaceMetric;
+	}
+
+	private SMethodMetric counter(String name, long value) {
+		SMethodMetric methodMetric = new SMethodMetric();
+		methodMetric.setName(name);
+		methodMetric.setNrCalls(value);
+		return methodMetric;
+	}
+}
@@ -22,6 +22,7 @@ import java.util.Map;
 
 import org.bimserver.BimServer;
 import org.bimserver.emf.Schema;
+import org.bimserver.interfaces.objects.SMetrics;
 import org.bimserver.plugins.PluginConfiguration;
 import org.bimserver.plugins.renderengine.RenderEngine;
 import org.bimserver.plugins.renderengine.RenderEngineException;
@@ -83,4 +84,25 @@ public class RenderEnginePools {
 			throw new PluginException("No render engine found for schema " + schema);
 		}
 	}
+
+	/**
+	 * Adds the statistics of all pools to the given metrics
+	 */
+	public synchronized void addMetrics(SMetrics metrics) {
+		for (Map.Entry<Schema, Map<String, RenderEnginePool>> schemaEntry : pools.entrySet()) {
+			for (Map.Entry<String, RenderEnginePool> entry : schemaEntry.getValue().entrySet()) {
+				RenderEnginePool renderEnginePool = entry.getValue();
+				String name = "RenderEnginePool " + entry.getKey() + " " + schemaEntry.getKey().name();
+				metrics.getInterfaces().add(renderEnginePool.getMetrics().toSInterfaceMetric(name, renderEnginePool.getNrActive(), renderEnginePool.getNrIdle()));
+			}
+		}
+	}
+
+	public synchronized void close() {
+		for (Map<String, RenderEnginePool> map : pools.values()) {
+			for (RenderEnginePool renderEnginePool : map.values()) {
+				renderEnginePool.close();
+			}
+		}
+	}
 }
\ No newline at end of file
@@ -24,14 +24,32 @@ import org.bimserver.renderengine.RenderEnginePoolFactory;
 
 public class CommonsPoolingRenderEnginePoolFactory implements RenderEnginePoolFactory {
 
+	/**
+	 * Number of engines per pool that are kept running when there is no demand
+	 */
+	public static final int DEFAULT_MIN_IDLE = 1;
+
+	/**
+	 * Number of times an engine is lent out before it is replaced by a fresh one
+	 */
+	public static final int DEFAULT_MAX_USES = 20;
+
 	private int nrRenderEngineProcesses;
+	private int minIdle;
+	private int maxUses;
 
-	public CommonsPoolingRenderEnginePoolFactory(int nrRenderEngineProcesses) {
+	public CommonsPoolingRenderEnginePoolFactory(int nrRenderEngineProcesses, int minIdle, int maxUses) {
 		this.nrRenderEngineProcesses = nrRenderEngineProcesses;
+		this.minIdle = minIdle;
+		this.maxUses = maxUses;
+	}
+
+	public CommonsPoolingRenderEnginePoolFactory(int nrRenderEngineProcesses) {
+		this(nrRenderEngineProcesses, DEFAULT_MIN_IDLE, DEFAULT_MAX_USES);
 	}
 	
 	@Override
 	public RenderEnginePool newRenderEnginePool(RenderEngineFactory renderEngineFactory) throws RenderEngineException {
-		return new CommonsRenderEnginePool(nrRenderEngineProcesses, renderEngineFactory);
+		return new CommonsRenderEnginePool(nrRenderEngineProcesses, minIdle, maxUses, renderEngineFactory);
 	}
 }
@@ -17,6 +17,10 @@ package org.bimserver.renderengine.pooled;
  * along with this program.  If not, see {@literal<http://www.gnu.org/licenses/>}.
  *****************************************************************************/
 
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
 import org.apache.commons.pool2.PooledObject;
 import org.apache.commons.pool2.PooledObjectFactory;
 import org.apache.commons.pool2.impl.DefaultPooledObject;
@@ -25,71 +29,152 @@ import org.bimserver.plugins.renderengine.RenderEngine;
 import org.bimserver.plugins.renderengine.RenderEngineException;
 import org.bimserver.renderengine.RenderEngineFactory;
 import org.bimserver.renderengine.RenderEnginePool;
+import org.bimserver.renderengine.RenderEnginePoolMetrics;
 import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
-
+import org.slf4j.LoggerFactory;
+
+/*
+ * Engines are started before they are needed: minIdle engines are started when the pool is created and kept running, and when
+ * geometry generation reports more demand (see addDemand) more engines are started in the background, up to the pool size.
+ * 
+ * An engine is validated on borrow and on return, engines that failed or have been used maxUses times are evicted and replaced.
+ */
 public class CommonsRenderEnginePool implements RenderEnginePool {
-	private static final Logger LOGGER = LoggerFactory.getLogger(CommonsRenderEnginePool.class);
-	private GenericObjectPool<RenderEngine> genericObjectPool;
-	private RenderEngineFactory renderEngineFactory;
-	
-	public CommonsRenderEnginePool(int poolSize, RenderEngineFactory renderEngineFactory) throws RenderEngineException {
-		LOGGER.info("Pool size: " + poolSize);
+	private static final Logger LOGGER = LoggerFactory.getLogger(CommonsRenderEnginePool.class);
+	private final GenericObjectPool<ReusableRenderEngine> genericObjectPool;
+	private final RenderEngineFactory renderEngineFactory;
+	private final RenderEnginePoolMetrics metrics = new RenderEnginePoolMetrics();
+	private final AtomicInteger demand = new AtomicInteger();
+	private final ExecutorService warmer;
+	private final int poolSize;
+	private final int minIdle;
+
+	public CommonsRenderEnginePool(int poolSize, int minIdle, int maxUses, RenderEngineFactory renderEngineFactory) throws RenderEngineException {
+		LOGGER.info("Pool size: " + poolSize + ", min idle: " + minIdle + ", max uses: " + maxUses);
+		this.poolSize = poolSize;
+		this.minIdle = Math.min(minIdle, poolSize);
 		this.renderEngineFactory = renderEngineFactory;
 		
-		// This pool is currently only used for making sure there is a max amount of engines running simultaneously.
-		// It is not actually pooling the render engines because the render engines used are not stable enough to reuse at the moment.
+		PooledObjectFactory<ReusableRenderEngine> pooledObjectFactory = new PooledObjectFactory<ReusableRenderEngine>() {
+			@Override
+			public void activateObject(PooledObject<ReusableRenderEngine> pooledObject) throws Exception {
+			}
+
+			@Override
+			public void destroyObject(PooledObject<ReusableRenderEngine> pooledObject) throws Exception {
+				pooledObject.getObject().destroy();
+			}
+
+			@Override
+			public PooledObject<ReusableRenderEngine> makeObject() throws Exception {
+				ReusableRenderEngine renderEngine = new ReusableRenderEngine(renderEngineFactory);
+				renderEngine.init();
+				metrics.engineCreated();
+				return new DefaultPooledObject<ReusableRenderEngine>(renderEngine);
+			}
+
+			@Override
+			public void passivateObject(PooledObject<ReusableRenderEngine> pooledObject) throws Exception {
+			}
+
+			@Override
+			public boolean validateObject(PooledObject<ReusableRenderEngine> pooledObject) {
+				ReusableRenderEngine renderEngine = pooledObject.getObject();
+				if (renderEngine.hasFailed()) {
+					metrics.engineFailed();
+					return false;
+				} else if (renderEngine.getUses() >= maxUses) {
+					metrics.engineRetired();
+					return false;
+				}
+				return true;
+			}
+		};
+		
+		genericObjectPool = new GenericObjectPool<ReusableRenderEngine>(pooledObjectFactory);
 		
-		PooledObjectFactory<RenderEngine> pooledObjectFactory = new PooledObjectFactory<RenderEngine>() {
-			@Override
-			public void activateObject(PooledObject<RenderEngine> arg0) throws Exception {
-				arg0.getObject().init();
-			}
-
-			@Override
-			public void destroyObject(PooledObject<RenderEngine> arg0) throws Exception {
-			}
-
-			@Override
-			public PooledObject<RenderEngine> makeObject() throws Exception {
-				AlwaysClosingRenderEngineWrapper alwaysClosingRenderEngineWrapper = new AlwaysClosingRenderEngineWrapper(renderEngineFactory);
-				return new DefaultPooledObject<RenderEngine>(alwaysClosingRenderEngineWrapper);
-			}
-
-			@Override
-			public void passivateObject(PooledObject<RenderEngine> arg0) throws Exception {
-				arg0.getObject().close();
-			}
-
-			@Override
-			public boolean validateObject(PooledObject<RenderEngine> arg0) {
-				return false;
-			}
-		};
-		
-		genericObjectPool = new GenericObjectPool<RenderEngine>(pooledObjectFactory);
-		
-		genericObjectPool.setMaxWaitMillis(1000 * 60 * 60);
-		genericObjectPool.setMaxTotal(poolSize);
-	}
-
-	@Override
-	public RenderEngine borrowObject() throws RenderEngineException {
-		try {
-			RenderEngine borrowObject = genericObjectPool.borrowObject();
-			return borrowObject;
-		} catch (Exception e) {
-			throw new RenderEngineException(e);
-		}
-	}
-
+		genericObjectPool.setMaxWaitMillis(1000 * 60 * 60);
+		genericObjectPool.setMaxTotal(poolSize);
+		genericObjectPool.setMaxIdle(poolSize);
+		genericObjectPool.setMinIdle(this.minIdle);
+		genericObjectPool.setTestOnBorrow(true);
+		genericObjectPool.setTestOnReturn(true);
+		// The evictor also replaces evicted engines to keep minIdle engines running
+		genericObjectPool.setTimeBetweenEvictionRunsMillis(30 * 1000);
+
+		warmer = Executors.newSingleThreadExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "RenderEngineWarmer");
+			thread.setDaemon(true);
+			return thread;
+		});
+		warm();
+	}
+
+	private void warm() {
+		warmer.execute(() -> {
+			try {
+				genericObjectPool.preparePool();
+			} catch (Exception e) {
+				LOGGER.error("", e);
+			}
+		});
+	}
+
+	@Override
+	public RenderEngine borrowObject() throws RenderEngineException {
+		long start = System.nanoTime();
+		try {
+			ReusableRenderEngine renderEngine = genericObjectPool.borrowObject();
+			renderEngine.startUse();
+			metrics.addBorrowWait(System.nanoTime() - start);
+			return renderEngine;
+		} catch (Exception e) {
+			throw new RenderEngineException(e);
+		}
+	}
+
 	@Override
 	public void returnObject(RenderEngine renderEngine) throws RenderEngineException {
-		genericObjectPool.returnObject(renderEngine);
+		genericObjectPool.returnObject((ReusableRenderEngine) renderEngine);
+	}
+
+	@Override
+	public void addDemand(int delta) {
+		int target = Math.max(minIdle, Math.min(poolSize, demand.addAndGet(delta)));
+		synchronized (genericObjectPool) {
+			int previous = genericObjectPool.getMinIdle();
+			if (target != previous) {
+				genericObjectPool.setMinIdle(target);
+				if (target > previous) {
+					warm();
+				}
+			}
+		}
+	}
+
+	@Override
+	public RenderEnginePoolMetrics getMetrics() {
+		return metrics;
+	}
+
+	@Override
+	public int getNrActive() {
+		return genericObjectPool.getNumActive();
+	}
+
+	@Override
+	public int getNrIdle() {
+		return genericObjectPool.getNumIdle();
+	}
+
+	@Override
+	public void close() {
+		warmer.shutdownNow();
+		genericObjectPool.close();
 	}
 
 	@Override
 	public RenderEngineFactory getRenderEngineFactory() {
 		return renderEngineFactory;
-	}
-}
\ No newline at end of file
+	}
+}
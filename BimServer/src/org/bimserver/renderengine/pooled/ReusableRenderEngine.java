@@ -0,0 +1,202 @@
+package org.bimserver.renderengine.pooled;
+
+/******************************************************************************
+ * Copyright (C) 2009-2019  BIMserver.org
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see {@literal<http://www.gnu.org/licenses/>}.
+ *****************************************************************************/
+
+import java.io.InputStream;
+import java.util.Collection;
+
+import org.bimserver.plugins.renderengine.EntityNotFoundException;
+import org.bimserver.plugins.renderengine.Metrics;
+import org.bimserver.plugins.renderengine.RenderEngine;
+import org.bimserver.plugins.renderengine.RenderEngineException;
+import org.bimserver.plugins.renderengine.RenderEngineFilter;
+import org.bimserver.plugins.renderengine.RenderEngineInstance;
+import org.bimserver.plugins.renderengine.RenderEngineModel;
+import org.bimserver.plugins.renderengine.RenderEngineSettings;
+import org.bimserver.renderengine.RenderEngineFactory;
+
+/*
+ * Keeps the same engine (usually a native process) for a number of uses. The render engines are not always stable, so every exception
+ * coming out of the engine or one of its models (except for entities that could not be found) marks the engine as failed, after which
+ * CommonsRenderEnginePool evicts it instead of lending it out again.
+ * 
+ * close() does not stop the engine, the pool does that with destroy().
+ */
+public class ReusableRenderEngine implements RenderEngine {
+
+	private final RenderEngineFactory renderEngineFactory;
+	private volatile RenderEngine wrapped;
+	private volatile boolean failed;
+	private int uses;
+
+	public ReusableRenderEngine(RenderEngineFactory renderEngineFactory) {
+		this.renderEngineFactory = renderEngineFactory;
+	}
+
+	@Override
+	public void init() throws RenderEngineException {
+		if (wrapped == null) {
+			RenderEngine renderEngine = renderEngineFactory.createRenderEngine();
+			renderEngine.init();
+			wrapped = renderEngine;
+		}
+	}
+
+	void startUse() {
+		uses++;
+	}
+
+	int getUses() {
+		return uses;
+	}
+
+	boolean hasFailed() {
+		return failed;
+	}
+
+	@Override
+	public RenderEngineModel openModel(InputStream inputStream, long size) throws RenderEngineException {
+		try {
+			return new FailureTrackingModel(wrapped.openModel(inputStream, size));
+		} catch (RenderEngineException | RuntimeException e) {
+			failed = true;
+			throw e;
+		}
+	}
+
+	@Override
+	public RenderEngineModel openModel(InputStream inputStream) throws RenderEngineException {
+		try {
+			return new FailureTrackingModel(wrapped.openModel(inputStream));
+		} catch (RenderEngineException | RuntimeException e) {
+			failed = true;
+			throw e;
+		}
+	}
+
+	@Override
+	public void close() throws RenderEngineException {
+	}
+
+	void destroy() throws RenderEngineException {
+		RenderEngine renderEngine = wrapped;
+		wrapped = null;
+		if (renderEngine != null) {
+			renderEngine.close();
+		}
+	}
+
+	@Override
+	public boolean isCalculateQuantities() {
+		return wrapped.isCalculateQuantities();
+	}
+
+	@Override
+	public boolean isApplyLayerSets() {
+		return wrapped.isApplyLayerSets();
+	}
+
+	@Override
+	public Metrics getMetrics() {
+		return wrapped.getMetrics();
+	}
+
+	private class FailureTrackingModel implements RenderEngineModel {
+		private final RenderEngineModel model;
+
+		FailureTrackingModel(RenderEngineModel model) {
+			this.model = model;
+		}
+
+		private void failed(Exception e) {
+			if (!(e instanceof EntityNotFoundException)) {
+				failed = true;
+			}
+		}
+
+		@Override
+		public void setFormat(int format, int mask) throws RenderEngineException {
+			try {
+				model.setFormat(format, mask);
+			} catch (RenderEngineException | RuntimeException e) {
+				failed(e);
+				throw e;
+			}
+		}
+
+		@Override
+		public void setSettings(RenderEngineSettings settings) throws RenderEngineException {
+			try {
+				model.setSettings(settings);
+			} catch (RenderEngineException | RuntimeException e) {
+				failed(e);
+				throw e;
+			}
+		}
+
+		@Override
+		public RenderEngineInstance getInstanceFromExpressId(long expressId) throws RenderEngineException {
+			try {
+				return model.getInstanceFromExpressId(expressId);
+			} catch (RenderEngineException | RuntimeException e) {
+				failed(e);
+				throw e;
+			}
+		}
+
+		@Override
+		public Collection<RenderEngineInstance> listInstances() throws RenderEngineException {
+			try {
+				return model.listInstances();
+			} catch (RenderEngineException | RuntimeException e) {
+				failed(e);
+				throw e;
+			}
+		}
+
+		@Override
+		public void generateGeneralGeometry() throws RenderEngineException {
+			try {
+				model.generateGeneralGeometry();
+			} catch (RenderEngineException | RuntimeException e) {
+				failed(e);
+				throw e;
+			}
+		}
+
+		@Override
+		public void close() throws RenderEngineException {
+			try {
+				model.close();
+			} catch (RenderEngineException | RuntimeException e) {
+				failed(e);
+				throw e;
+			}
+		}
+
+		@Override
+		public void setFilter(RenderEngineFilter renderEngineFilter) throws RenderEngineException {
+			try {
+				model.setFilter(renderEngineFilter);
+			} catch (RenderEngineException | RuntimeException e) {
+				failed(e);
+				throw e;
+			}
+		}
+	}
+}
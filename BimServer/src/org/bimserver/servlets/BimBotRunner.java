@@ -18,27 +18,34 @@ package org.bimserver.servlets;
  *****************************************************************************/
 
 import java.io.BufferedInputStream;
-import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Collections;
 import java.util.Random;
 
 import javax.activation.DataHandler;
 
-import org.apache.commons.io.IOUtils;
 import org.apache.commons.io.output.ByteArrayOutputStream;
 import org.bimserver.BimServer;
 import org.bimserver.BimserverDatabaseException;
 import org.bimserver.bimbots.BimBotContext;
 import org.bimserver.bimbots.BimBotDefaultErrorCode;
+import org.bimserver.bimbots.BimBotsConcurrencyLimiter;
 import org.bimserver.bimbots.BimBotsException;
 import org.bimserver.bimbots.BimBotsOutput;
 import org.bimserver.bimbots.BimBotsServiceInterface;
 import org.bimserver.bimbots.BimServerBimBotsInput;
+import org.bimserver.bimbots.SpooledObjectProvider;
+import org.bimserver.bimbots.SpoolingDatabaseInterface;
 import org.bimserver.database.DatabaseSession;
 import org.bimserver.database.OldQuery;
 import org.bimserver.database.OldQuery.Deep;
 import org.bimserver.database.OperationType;
+import org.bimserver.database.queries.QueryObjectProvider;
+import org.bimserver.database.queries.om.DefaultQueries;
 import org.bimserver.emf.IfcModelInterface;
 import org.bimserver.emf.PackageMetaData;
 import org.bimserver.emf.Schema;
@@ -59,6 +66,8 @@ import org.bimserver.plugins.PluginConfiguration;
 import org.bimserver.plugins.SchemaName;
 import org.bimserver.plugins.deserializers.Deserializer;
 import org.bimserver.plugins.deserializers.DeserializerPlugin;
+import org.bimserver.plugins.deserializers.StreamingDeserializer;
+import org.bimserver.plugins.deserializers.StreamingDeserializerPlugin;
 import org.bimserver.plugins.serializers.ProjectInfo;
 import org.bimserver.plugins.serializers.Serializer;
 import org.bimserver.plugins.serializers.SerializerPlugin;
@@ -79,13 +88,19 @@ import org.slf4j.LoggerFactory;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.node.ObjectNode;
 import com.google.common.base.Charsets;
-import com.google.common.io.ByteStreams;
 
+/**
+ * Runs a BIMbot. The input is first spooled to a temporary file, so it never has to be in memory completely. Services that support an
+ * ObjectProvider get their input streamed from the database (when service runs are stored) or from a SpoolingDatabaseInterface
+ * (when they are not), other services get an EMF model. The number of concurrent runs per service is limited by the
+ * BimBotsConcurrencyLimiter.
+ */
 public class BimBotRunner implements Runnable {
 	private static final Logger LOGGER = LoggerFactory.getLogger(BimBotRunner.class);
 	private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
 	private BimServer bimServer;
 	private InputStream inputStream;
+	private Path inputFile;
 	private String inputType;
 	private Authorization authorization;
 	private InternalServicePluginConfiguration foundService;
@@ -116,6 +131,15 @@ public class BimBotRunner implements Runnable {
 		this.endPointId = endPointId;
 		this.settings = new PluginConfiguration(foundService.getSettings());
 	}
+
+	/**
+	 * @param inputFile A file containing the input, will be deleted when the run is done
+	 */
+	public BimBotRunner(BimServer bimServer, Path inputFile, String contextId, String inputType, Authorization authorization,
+			InternalServicePluginConfiguration foundService, BimBotsServiceInterface bimBotsServiceInterface, StreamingSocketInterface streamingSocketInterface, Long topicId, Long endPointId) {
+		this(bimServer, (InputStream) null, contextId, inputType, authorization, foundService, bimBotsServiceInterface, streamingSocketInterface, topicId, endPointId);
+		this.inputFile = inputFile;
+	}
 	
 	public BimBotsOutput runBimBot() throws UserException, IOException {
 		BimBotContext bimBotContext = new BimBotContext() {
@@ -142,7 +166,14 @@ public class BimBotRunner implements Runnable {
 			}
 		};
 
-		try (DatabaseSession session = bimServer.getDatabase().createSession(OperationType.READ_ONLY)) {
+		// The permit is acquired before the session is opened and released after it is closed, runs waiting for a permit do not hold a
+		// session
+		try (BimBotsConcurrencyLimiter.Permit permit = bimServer.getBimBotsConcurrencyLimiter().acquire(foundService.getOid());
+				DatabaseSession session = bimServer.getDatabase().createSession(OperationType.READ_ONLY)) {
+			if (inputFile == null) {
+				inputFile = Files.createTempFile(getTmpDir(), "bimbot", ".input");
+				Files.copy(inputStream, inputFile, StandardCopyOption.REPLACE_EXISTING);
+			}
 			ServiceMap serviceMap = bimServer.getServiceFactory().get(authorization, AccessMethod.INTERNAL);
 			ServiceInterface serviceInterface = serviceMap.get(ServiceInterface.class);
 			if (bimServer.getServerSettingsCache().getServerSettings().isStoreServiceRuns()) {
@@ -155,10 +186,8 @@ public class BimBotRunner implements Runnable {
 				
 				byte[] data = null;
 				if (bimBotsServiceInterface.needsRawInput()) {
-					// We need the raw input later on, lets just get it now
-					data = ByteStreams.toByteArray(inputStream);
-					// Make a clean inputstream that uses the data as the original won't be available after this
-					inputStream = new ByteArrayInputStream(data);
+					// We need the raw input later on
+					data = Files.readAllBytes(inputFile);
 				}
 				
 				SchemaName schema = SchemaName.valueOf(inputType);
@@ -196,22 +225,34 @@ public class BimBotRunner implements Runnable {
 				} catch (TopicRegisterException e1) {
 					e1.printStackTrace();
 				}
-				serviceInterface.checkinInitiatedSync(topicId, project.getOid(), "Auto checkin", deserializer.getOid(), -1L, "s", new DataHandler(new InputStreamDataSource(inputStream)), false);
-				project = serviceInterface.getProjectByPoid(project.getOid());
-				
-				PackageMetaData packageMetaData = bimServer.getMetaDataManager().getPackageMetaData(project.getSchema());
-				BasicIfcModel model = new BasicIfcModel(packageMetaData, null);
-				model.setPluginClassLoaderProvider(bimServer.getPluginManager());
-				try {
-					Revision revision = session.get(project.getLastRevisionId(), OldQuery.getDefault());
-					session.getMap(model, new OldQuery(packageMetaData, project.getId(), revision.getId(), revision.getOid(), Deep.NO));
-					model.getModelMetaData().setIfcHeader(revision.getLastConcreteRevision().getIfcHeader());
-				} catch (BimserverDatabaseException e) {
-					e.printStackTrace();
+				try (InputStream checkinInputStream = Files.newInputStream(inputFile)) {
+					serviceInterface.checkinInitiatedSync(topicId, project.getOid(), "Auto checkin", deserializer.getOid(), Files.size(inputFile), "s", new DataHandler(new InputStreamDataSource(checkinInputStream)), false);
 				}
+				project = serviceInterface.getProjectByPoid(project.getOid());
 				
-				BimServerBimBotsInput input = new BimServerBimBotsInput(bimServer, authorization.getUoid(), inputType, data, model, false);
-				BimBotsOutput output = bimBotsServiceInterface.runBimBot(input, bimBotContext, settings);
+				PackageMetaData packageMetaData = bimServer.getMetaDataManager().getPackageMetaData(project.getSchema());
+				BimBotsOutput output;
+				// A new session, the revision was committed after the session of this run was opened
+				try (DatabaseSession revisionSession = bimServer.getDatabase().createSession(OperationType.READ_ONLY)) {
+					BimServerBimBotsInput input = null;
+					if (bimBotsServiceInterface.supportsObjectProvider()) {
+						// The objects are read from the new revision while the service consumes them
+						input = new BimServerBimBotsInput(bimServer, authorization.getUoid(), inputType, data, null, false);
+						input.setObjectProvider(new QueryObjectProvider(revisionSession, bimServer, DefaultQueries.all(packageMetaData), Collections.singleton(project.getLastRevisionId()), packageMetaData));
+					} else {
+						BasicIfcModel model = new BasicIfcModel(packageMetaData, null);
+						model.setPluginClassLoaderProvider(bimServer.getPluginManager());
+						try {
+							Revision revision = revisionSession.get(project.getLastRevisionId(), OldQuery.getDefault());
+							revisionSession.getMap(model, new OldQuery(packageMetaData, project.getId(), revision.getId(), revision.getOid(), Deep.NO));
+							model.getModelMetaData().setIfcHeader(revision.getLastConcreteRevision().getIfcHeader());
+						} catch (BimserverDatabaseException e) {
+							e.printStackTrace();
+						}
+						input = new BimServerBimBotsInput(bimServer, authorization.getUoid(), inputType, data, model, false);
+					}
+					output = bimBotsServiceInterface.runBimBot(input, bimBotContext, settings);
+				}
 				long end = System.nanoTime();
 				
 				if (output.getModel() != null) {
@@ -259,23 +300,45 @@ public class BimBotRunner implements Runnable {
 				
 				return output;
 			} else {
-				// When we don't store the service runs, there is no other way than to just use the old deserializer and run the service from the EMF model
 				LOGGER.info("NOT Storing intermediate results");
 
 				String projectSchema = getProjectSchema(serviceInterface, SchemaName.valueOf(inputType));
 
 				Schema schema = Schema.valueOf(projectSchema.toUpperCase());
+				PackageMetaData packageMetaData = bimServer.getMetaDataManager().getPackageMetaData(schema.name());
+				byte[] data = null;
+				if (bimBotsServiceInterface.needsRawInput()) {
+					data = Files.readAllBytes(inputFile);
+				}
+
+				if (bimBotsServiceInterface.supportsObjectProvider() && !bimBotsServiceInterface.requiresGeometry()) {
+					// Stream the input to a temporary file, the service reads the objects back from there, so no EMF model is ever built
+					StreamingDeserializerPlugin deserializerPlugin = bimServer.getPluginManager().getFirstStreamingDeserializer("ifc", schema, true);
+					if (deserializerPlugin == null) {
+						throw new BimBotsException("No streaming deserializer plugin found", BimBotDefaultErrorCode.NO_DESERIALIZER);
+					}
+					StreamingDeserializer deserializer = deserializerPlugin.createDeserializer(new PluginConfiguration());
+					deserializer.init(packageMetaData);
+					try (SpoolingDatabaseInterface spool = new SpoolingDatabaseInterface(session, packageMetaData, getTmpDir()); InputStream fileInputStream = Files.newInputStream(inputFile)) {
+						deserializer.read(fileInputStream, inputType, Files.size(inputFile), spool.getQueryContext());
+						BimServerBimBotsInput input = new BimServerBimBotsInput(bimServer, authorization.getUoid(), inputType, data, null, false);
+						input.setObjectProvider(new SpooledObjectProvider(spool));
+						return bimBotsServiceInterface.runBimBot(input, bimBotContext, new PluginConfiguration(foundService.getSettings()));
+					}
+				}
+
+				// Services that need an EMF model (or geometry) still get their input from the old deserializer
 				DeserializerPlugin deserializerPlugin = bimServer.getPluginManager().getFirstDeserializer("ifc", schema, true);
 				if (deserializerPlugin == null) {
 					throw new BimBotsException("No deserializer plugin found", BimBotDefaultErrorCode.NO_DESERIALIZER);
 				}
 				
-				byte[] data = IOUtils.toByteArray(inputStream);
-				
 				Deserializer deserializer = deserializerPlugin.createDeserializer(new PluginConfiguration());
-				PackageMetaData packageMetaData = bimServer.getMetaDataManager().getPackageMetaData(schema.name());
 				deserializer.init(packageMetaData);
-				IfcModelInterface model = deserializer.read(new ByteArrayInputStream(data), inputType, data.length, null);
+				IfcModelInterface model = null;
+				try (InputStream fileInputStream = Files.newInputStream(inputFile)) {
+					model = deserializer.read(fileInputStream, inputType, Files.size(inputFile), null);
+				}
 				
 				BimServerBimBotsInput input = new BimServerBimBotsInput(bimServer, authorization.getUoid(), inputType, data, model, true);
 				BimBotsOutput output = bimBotsServiceInterface.runBimBot(input, bimBotContext, new PluginConfiguration(foundService.getSettings()));
@@ -297,17 +360,26 @@ public class BimBotRunner implements Runnable {
 			errorNode.put("message", "Unknown error: " + e.getMessage());
 			BimBotsOutput bimBotsOutput = new BimBotsOutput("ERROR", errorNode.toString().getBytes(Charsets.UTF_8));
 			return bimBotsOutput;
+		} finally {
+			if (inputFile != null) {
+				Files.deleteIfExists(inputFile);
+			}
 		}
 	}
 
+	private Path getTmpDir() throws IOException {
+		Path tmp = bimServer.getHomeDir().resolve("tmp");
+		Files.createDirectories(tmp);
+		return tmp;
+	}
+
 	private String getProjectSchema(ServiceInterface serviceInterface, SchemaName schema) throws IOException, UserException, ServiceException {
 		if (schema == SchemaName.IFC_STEP) {
 			// We need to determine the schema used by reading the header
-			BufferedInputStream bufferedInputStream = new BufferedInputStream(inputStream);
-			byte[] initialBytes = ByteUtils.extractHead(bufferedInputStream, 4096);
-			
-			inputStream = bufferedInputStream;
-			return serviceInterface.determineIfcVersion(initialBytes, false);
+			try (BufferedInputStream bufferedInputStream = new BufferedInputStream(Files.newInputStream(inputFile))) {
+				byte[] initialBytes = ByteUtils.extractHead(bufferedInputStream, 4096);
+				return serviceInterface.determineIfcVersion(initialBytes, false);
+			}
 		} else if (schema == SchemaName.IFC_STEP_2X3TC1) {
 			return "ifc2x3tc1";
 		} else if (schema == SchemaName.IFC_JSON_4) {
@@ -0,0 +1,208 @@
+package org.bimserver.servlets;
+
+/******************************************************************************
+ * Copyright (C) 2009-2019  BIMserver.org
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see {@literal<http://www.gnu.org/licenses/>}.
+ *****************************************************************************/
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+
+import javax.activation.DataHandler;
+import javax.servlet.ServletContext;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.bimserver.BimServer;
+import org.bimserver.blobs.BlobStore;
+import org.bimserver.database.DatabaseSession;
+import org.bimserver.database.OperationType;
+import org.bimserver.database.actions.DuplicateCheckinDatabaseAction;
+import org.bimserver.interfaces.objects.SLongCheckinActionState;
+import org.bimserver.models.log.AccessMethod;
+import org.bimserver.shared.exceptions.UserException;
+import org.bimserver.shared.interfaces.ServiceInterface;
+import org.bimserver.uploads.DuplicateCheckinPolicy;
+import org.bimserver.uploads.UploadSession;
+import org.bimserver.utils.InputStreamDataSource;
+import org.bimserver.webservices.ServiceMap;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.google.common.io.BaseEncoding;
+
+/**
+ * Resumable uploads of (large) files to check in, the file is sent in chunks that are spooled to disk.
+ * 
+ * POST ?action=create&filename=..&size=.. starts an upload and returns its uploadId. When the client passes the SHA-256 of the file
+ * (digest) and the poid, the DuplicateCheckinPolicy is applied right away, so an identical file does not have to be sent at all.
+ * PUT ?uploadId=..&offset=.. appends the request body, when offset is not where the upload is at, 409 is returned with the offset.
+ * GET ?uploadId=.. returns the offset, so an interrupted upload can be continued.
+ * POST ?action=checkin&uploadId=..&poid=..&deserializerOid=.. checks the file in, with the same parameters as UploadServlet.
+ * DELETE ?uploadId=.. cancels the upload.
+ */
+public class ChunkedUploadServlet extends SubServlet {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(ChunkedUploadServlet.class);
+	private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+	public ChunkedUploadServlet(BimServer bimServer, ServletContext servletContext) {
+		super(bimServer, servletContext);
+	}
+
+	@Override
+	public void service(HttpServletRequest request, HttpServletResponse response) throws ServletException, IOException {
+		String token = request.getHeader("Token");
+		if (token == null) {
+			token = request.getParameter("token");
+		}
+		if (token == null) {
+			token = (String) request.getSession().getAttribute("token");
+		}
+		response.setContentType("text/json");
+		ObjectNode result = OBJECT_MAPPER.createObjectNode();
+		try {
+			ServiceMap serviceMap = getBimServer().getServiceFactory().get(token, AccessMethod.INTERNAL);
+			long uoid = serviceMap.getAuthorization().getUoid();
+			String method = request.getMethod();
+			String action = request.getParameter("action");
+			if ("POST".equals(method) && "create".equals(action)) {
+				String digest = request.getParameter("digest");
+				if (digest != null && request.getParameter("poid") != null) {
+					Long roid = checkDuplicate(serviceMap, Long.parseLong(request.getParameter("poid")), digest, request.getParameter("comment"));
+					if (roid != null) {
+						result.put("duplicate", true);
+						result.put("roid", roid);
+						response.getWriter().write(result.toString());
+						return;
+					}
+				}
+				long size = request.getParameter("size") == null ? -1 : Long.parseLong(request.getParameter("size"));
+				UploadSession uploadSession = getBimServer().getUploadSessionManager().create(uoid, request.getParameter("filename"), size);
+				result.put("uploadId", uploadSession.getId());
+				result.put("offset", 0);
+			} else {
+				UploadSession uploadSession = getBimServer().getUploadSessionManager().get(request.getParameter("uploadId"), uoid);
+				if (uploadSession == null) {
+					response.setStatus(HttpServletResponse.SC_NOT_FOUND);
+					throw new UserException("No upload with id " + request.getParameter("uploadId"));
+				}
+				if ("GET".equals(method)) {
+					result.put("uploadId", uploadSession.getId());
+					result.put("offset", uploadSession.getOffset());
+					result.put("size", uploadSession.getSize());
+				} else if ("PUT".equals(method)) {
+					long offset = Long.parseLong(request.getParameter("offset"));
+					if (!uploadSession.append(offset, request.getInputStream())) {
+						response.setStatus(HttpServletResponse.SC_CONFLICT);
+					}
+					result.put("offset", uploadSession.getOffset());
+				} else if ("DELETE".equals(method)) {
+					getBimServer().getUploadSessionManager().remove(uploadSession);
+				} else if ("POST".equals(method) && "checkin".equals(action)) {
+					result = checkin(serviceMap, uploadSession, request);
+				} else {
+					response.setStatus(HttpServletResponse.SC_BAD_REQUEST);
+					throw new UserException("Unknown action " + method + " " + action);
+				}
+			}
+		} catch (Exception e) {
+			LOGGER.error("", e);
+			sendException(response, e);
+			return;
+		}
+		response.getWriter().write(result.toString());
+	}
+
+	private ObjectNode checkin(ServiceMap serviceMap, UploadSession uploadSession, HttpServletRequest request) throws Exception {
+		ObjectNode result = OBJECT_MAPPER.createObjectNode();
+		long poid = Long.parseLong(request.getParameter("poid"));
+		long deserializerOid = Long.parseLong(request.getParameter("deserializerOid"));
+		String comment = request.getParameter("comment") == null ? "" : request.getParameter("comment");
+		boolean merge = "true".equals(request.getParameter("merge"));
+		boolean sync = "true".equals(request.getParameter("sync"));
+
+		String digest = uploadSession.complete();
+		Long roid = checkDuplicate(serviceMap, poid, digest, comment);
+		if (roid != null) {
+			getBimServer().getUploadSessionManager().remove(uploadSession);
+			result.put("duplicate", true);
+			result.put("roid", roid);
+			return result;
+		}
+
+		ServiceInterface service = serviceMap.get(ServiceInterface.class);
+		InputStream inputStream = Files.newInputStream(uploadSession.getFile());
+		TriggerOnCloseInputStream triggerOnCloseInputStream = new TriggerOnCloseInputStream(inputStream);
+		InputStreamDataSource inputStreamDataSource = new InputStreamDataSource(triggerOnCloseInputStream);
+		inputStreamDataSource.setName(uploadSession.getFileName());
+		DataHandler ifcFile = new DataHandler(inputStreamDataSource);
+		long fileSize = Files.size(uploadSession.getFile());
+		try {
+			if (sync) {
+				SLongCheckinActionState checkinSync = service.checkinSync(poid, comment, deserializerOid, fileSize, uploadSession.getFileName(), ifcFile, merge);
+				result = (ObjectNode) getBimServer().getJsonHandler().getJsonConverter().toJson(checkinSync);
+				service.cleanupLongAction(checkinSync.getTopicId());
+			} else {
+				// The spool file can be removed as soon as the checkin has read it
+				long topicId = service.checkinAsync(poid, comment, deserializerOid, fileSize, uploadSession.getFileName(), ifcFile, merge);
+				triggerOnCloseInputStream.await();
+				result.put("topicId", topicId);
+			}
+		} finally {
+			inputStream.close();
+			getBimServer().getUploadSessionManager().remove(uploadSession);
+		}
+		return result;
+	}
+
+	/**
+	 * @return The roid to use instead of checking in the file, or null when the file has to be checked in
+	 */
+	private Long checkDuplicate(ServiceMap serviceMap, long poid, String digest, String comment) throws Exception {
+		DuplicateCheckinPolicy policy = getBimServer().getConfig().getDuplicateCheckinPolicy();
+		if (policy == DuplicateCheckinPolicy.OFF) {
+			return null;
+		}
+		if (!BlobStore.isValidDigest(digest)) {
+			throw new UserException("Invalid digest " + digest + ", expected the hex SHA-256 of the file");
+		}
+		byte[] checksum = BaseEncoding.base16().lowerCase().decode(digest);
+		try (DatabaseSession session = getBimServer().getDatabase().createSession(OperationType.POSSIBLY_WRITE)) {
+			DuplicateCheckinDatabaseAction action = new DuplicateCheckinDatabaseAction(getBimServer(), session, AccessMethod.INTERNAL, poid, checksum, comment == null ? "" : comment, policy, serviceMap.getAuthorization());
+			return session.executeAndCommitAction(action);
+		}
+	}
+
+	private void sendException(HttpServletResponse response, Exception exception) {
+		try {
+			ObjectNode responseObject = OBJECT_MAPPER.createObjectNode();
+			ObjectNode exceptionJson = OBJECT_MAPPER.createObjectNode();
+			exceptionJson.put("__type", exception.getClass().getSimpleName());
+			if (exception.getMessage() == null) {
+				exceptionJson.put("message", "Unknown exception");
+			} else {
+				exceptionJson.put("message", exception.getMessage());
+			}
+			responseObject.set("exception", exceptionJson);
+			response.getWriter().write(responseObject.toString());
+		} catch (IOException e) {
+		}
+	}
+}
@@ -22,6 +22,11 @@ import java.io.EOFException;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.io.OutputStreamWriter;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.util.Date;
 import java.util.zip.GZIPOutputStream;
 import java.util.zip.ZipEntry;
@@ -69,6 +74,59 @@ public class DownloadServlet extends SubServlet {
 		super(bimServer, servletContext);
 	}
 
+	/**
+	 * Sends the blob, or the single byte range that was requested, using FileChannel.transferTo
+	 */
+	private void sendBlob(HttpServletRequest request, HttpServletResponse response, Path path, String digest) throws IOException {
+		try (FileChannel fileChannel = FileChannel.open(path, StandardOpenOption.READ)) {
+			long size = fileChannel.size();
+			long start = 0;
+			long end = size - 1;
+			response.setHeader("Accept-Ranges", "bytes");
+			response.setHeader("ETag", "\"" + digest + "\"");
+			String range = request.getHeader("Range");
+			String ifRange = request.getHeader("If-Range");
+			if (range != null && range.startsWith("bytes=") && !range.contains(",") && (ifRange == null || ifRange.equals("\"" + digest + "\""))) {
+				String spec = range.substring(6).trim();
+				int dash = spec.indexOf('-');
+				try {
+					if (dash == 0) {
+						// Suffix range, the last n bytes
+						start = Math.max(0, size - Long.parseLong(spec.substring(1)));
+					} else if (dash > 0) {
+						start = Long.parseLong(spec.substring(0, dash));
+						if (dash < spec.length() - 1) {
+							end = Math.min(end, Long.parseLong(spec.substring(dash + 1)));
+						}
+					} else {
+						throw new NumberFormatException(spec);
+					}
+				} catch (NumberFormatException e) {
+					start = -1;
+				}
+				if (start < 0 || start > end) {
+					response.setHeader("Content-Range", "bytes */" + size);
+					response.sendError(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+					return;
+				}
+				response.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+				response.setHeader("Content-Range", "bytes " + start + "-" + end + "/" + size);
+			}
+			long length = end - start + 1;
+			response.setContentLengthLong(length);
+			WritableByteChannel target = Channels.newChannel(response.getOutputStream());
+			long position = start;
+			while (position <= end) {
+				long transferred = fileChannel.transferTo(position, end - position + 1, target);
+				if (transferred <= 0) {
+					throw new EOFException("Blob " + digest + " ended at " + position);
+				}
+				position += transferred;
+			}
+			response.getOutputStream().flush();
+		}
+	}
+
 	@Override
 	public void service(HttpServletRequest request, HttpServletResponse response) throws ServletException, IOException {
 		try {
@@ -79,7 +137,9 @@ public class DownloadServlet extends SubServlet {
 			}
 			OutputStream outputStream = response.getOutputStream();
 			boolean zip = request.getParameter("zip") != null && request.getParameter("zip").equals("on");
-			if (useGzip && !zip) {
+			// Extended data is compressed per file below, blobs are sent as is so ranges and transferTo can be used
+			boolean extendedData = "extendeddata".equals(request.getParameter("action"));
+			if (useGzip && !zip && !extendedData) {
 				response.setHeader("Content-Encoding", "gzip");
 				outputStream = new GZIPOutputStream(response.getOutputStream());
 			}
@@ -98,13 +158,22 @@ public class DownloadServlet extends SubServlet {
 			if (action != null) {
 				if (action.equals("extendeddata")) {
 					SExtendedData sExtendedData = serviceMap.getServiceInterface().getExtendedData(Long.parseLong(request.getParameter("edid")));
-					SFile file = serviceMap.getServiceInterface().getFile(sExtendedData.getFileId());
+					SFile file = serviceMap.getServiceInterface().getFileMeta(sExtendedData.getFileId());
 					if (file.getMime() != null) {
 						response.setContentType(file.getMime());
 					}
 					if (file.getFilename() != null) {
 						response.setHeader("Content-Disposition", "inline; filename=\"" + file.getFilename() + "\"");
 					}
+					if (file.getDigest() != null) {
+						sendBlob(request, response, getBimServer().getBlobStore().getPath(file.getDigest()), file.getDigest());
+						return;
+					}
+					file = serviceMap.getServiceInterface().getFile(sExtendedData.getFileId());
+					if (useGzip) {
+						response.setHeader("Content-Encoding", "gzip");
+						outputStream = new GZIPOutputStream(outputStream);
+					}
 					outputStream.write(file.getData());
 					if (outputStream instanceof GZIPOutputStream) {
 						((GZIPOutputStream) outputStream).finish();
@@ -0,0 +1,51 @@
+package org.bimserver.servlets;
+
+/******************************************************************************
+ * Copyright (C) 2009-2019  BIMserver.org
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see {@literal<http://www.gnu.org/licenses/>}.
+ *****************************************************************************/
+
+import java.util.concurrent.ArrayBlockingQueue;
+
+/**
+ * Pool of the buffers the Streamer builds its binary frames in, so concurrent downloads do not all allocate (and grow) a new buffer.
+ * Buffers that have grown because of a very large message are not returned to the pool, so they do not stay in memory forever.
+ */
+public class FrameBufferPool {
+	private final ArrayBlockingQueue<ReusableLittleEndianDataOutputStream> idle;
+	private final int maxCapacity;
+
+	public FrameBufferPool(int maxIdle, int maxCapacity) {
+		this.idle = new ArrayBlockingQueue<>(maxIdle);
+		this.maxCapacity = maxCapacity;
+	}
+
+	public ReusableLittleEndianDataOutputStream borrow() {
+		ReusableLittleEndianDataOutputStream buffer = idle.poll();
+		if (buffer == null) {
+			return new ReusableLittleEndianDataOutputStream();
+		}
+		return buffer;
+	}
+
+	public void release(ReusableLittleEndianDataOutputStream buffer) {
+		if (buffer.getGrowingByteBuffer().capacity() > maxCapacity) {
+			return;
+		}
+		buffer.reset();
+		// When the pool is full the buffer is simply dropped
+		idle.offer(buffer);
+	}
+}
@@ -48,6 +48,7 @@ public class RootServlet extends HttpServlet {
 	private OAuthAccessTokenServlet oAuthAccesssTokenServlet;
 	private ServiceRunnerServlet serviceRunner;
 	private BulkUploadServlet bulkUploadServlet;
+	private ChunkedUploadServlet chunkedUploadServlet;
 
 	private BimServer bimServer;
 
@@ -63,6 +64,7 @@ public class RootServlet extends HttpServlet {
 		syndicationServlet = new SyndicationServlet(bimServer, servletContext);
 		uploadServlet = new UploadServlet(bimServer, servletContext);
 		bulkUploadServlet = new BulkUploadServlet(bimServer, servletContext);
+		chunkedUploadServlet = new ChunkedUploadServlet(bimServer, servletContext);
 		downloadServlet = new DownloadServlet(bimServer, servletContext);
 		soap11Servlet = new WebServiceServlet11(bimServer, servletContext);
 //		soap11Servlet.init(getServletConfig());
@@ -151,6 +153,8 @@ public class RootServlet extends HttpServlet {
 				uploadServlet.service(request, response);
 			} else if (requestUri.startsWith("/bulkupload/") || requestUri.equals("/bulkupload")) {
 				bulkUploadServlet.service(request, response);
+			} else if (requestUri.startsWith("/chunkedupload/") || requestUri.equals("/chunkedupload")) {
+				chunkedUploadServlet.service(request, response);
 			} else if (requestUri.startsWith("/download/") || requestUri.equals("/download")) {
 				downloadServlet.service(request, response);
 			} else {
@@ -17,10 +17,11 @@ package org.bimserver.servlets;
  * along with this program.  If not, see {@literal<http://www.gnu.org/licenses/>}.
  *****************************************************************************/
 
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
 import java.util.LinkedHashSet;
 import java.util.Set;
 
@@ -29,7 +30,6 @@ import javax.servlet.ServletException;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
-import org.apache.commons.io.IOUtils;
 import org.bimserver.BimServer;
 import org.bimserver.BimserverDatabaseException;
 import org.bimserver.bimbots.BimBotsOutput;
@@ -176,13 +176,15 @@ public class ServiceRunnerServlet extends SubServlet {
 					TopicKey topicKey = new TopicKey();
 					response.setHeader("Output-Type", "Async");
 					response.setHeader("Topic-Id", "" + topicKey.getId());
-					ByteArrayOutputStream baos = new ByteArrayOutputStream();
-					IOUtils.copy(inputStream, baos);
-					// When storing bimbot runs, a streaming deserialzer is used later in the process, memory usage can be reduced by 
-					// streaming the data, but that would require the http socket to stay open (and the response witheld), which is not an option, hence the copy.
+					// Streaming the request directly into the runner would require the http socket to stay open (and the response witheld), which
+					// is not an option, hence the copy. The copy is made to a temporary file, which is deleted by the runner.
+					Path tmp = getBimServer().getHomeDir().resolve("tmp");
+					Files.createDirectories(tmp);
+					Path inputFile = Files.createTempFile(tmp, "bimbot", ".input");
+					Files.copy(inputStream, inputFile, StandardCopyOption.REPLACE_EXISTING);
 					
 					// TODO this can only start as soon as the response has been sent
-					getBimServer().getExecutorService().submit(new BimBotRunner(getBimServer(), new ByteArrayInputStream(baos.toByteArray()), contextId, inputType, authorization, foundService, bimBotsServiceInterface, endPoint.getStreamingSocketInterface(), topicKey.getId(), endPoint.getEndPointId()));
+					getBimServer().getExecutorService().submit(new BimBotRunner(getBimServer(), inputFile, contextId, inputType, authorization, foundService, bimBotsServiceInterface, endPoint.getStreamingSocketInterface(), topicKey.getId(), endPoint.getEndPointId()));
 				}
 			} else {
 				throw new ServletException("Service \"" + serviceName + "\" does not implement the BimBotsServiceInterface");
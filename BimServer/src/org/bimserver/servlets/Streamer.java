@@ -70,6 +70,7 @@ import com.fasterxml.jackson.databind.node.ObjectNode;
 
 public class Streamer implements EndPoint {
 	private static final int ONE_MB = 1024 * 1024;
+	private static final FrameBufferPool FRAME_BUFFER_POOL = new FrameBufferPool(32, 4 * ONE_MB);
 	private static final Logger LOGGER = LoggerFactory.getLogger(Streamer.class);
 	private long uoid;
 	private long endpointid;
@@ -104,6 +105,7 @@ public class Streamer implements EndPoint {
 					bimServer.getExecutorService().execute(new Runnable() {
 						public void run() {
 							Writer writer = null;
+							ReusableLittleEndianDataOutputStream byteArrayOutputStream = null;
 							try {
 								LongAction<?> longAction = bimServer.getLongActionManager().getLongAction(topicId);
 								if (longAction instanceof LongStreamingDownloadAction) {
@@ -121,12 +123,7 @@ public class Streamer implements EndPoint {
 								}
 								boolean writeMessage = true;
 								
-								// TODO pool the buffers
-
-								// TODO whenever a large object has been sent,
-								// the large buffer stays in memory until
-								// websocket closes...
-								ReusableLittleEndianDataOutputStream byteArrayOutputStream = new ReusableLittleEndianDataOutputStream();
+								byteArrayOutputStream = FRAME_BUFFER_POOL.borrow();
 								GrowingByteBuffer growingByteBuffer = byteArrayOutputStream.getGrowingByteBuffer();
 								ProgressReporter progressReporter = new ProgressReporter() {
 									@Override
@@ -192,6 +189,9 @@ public class Streamer implements EndPoint {
 							} catch (SerializerException e) {
 								LOGGER.error("", e);
 							} finally {
+								if (byteArrayOutputStream != null) {
+									FRAME_BUFFER_POOL.release(byteArrayOutputStream);
+								}
 								try {
 									if (writer != null) {
 										writer.close();
@@ -33,13 +33,14 @@ import org.apache.commons.fileupload.FileItemStream;
 import org.apache.commons.fileupload.MultipartStream.MalformedStreamException;
 import org.apache.commons.fileupload.servlet.ServletFileUpload;
 import org.apache.commons.fileupload.util.Streams;
-import org.apache.commons.io.IOUtils;
 import org.bimserver.BimServer;
+import org.bimserver.blobs.Blob;
 import org.bimserver.interfaces.objects.SFile;
 import org.bimserver.interfaces.objects.SLongCheckinActionState;
 import org.bimserver.models.log.AccessMethod;
 import org.bimserver.shared.interfaces.ServiceInterface;
 import org.bimserver.utils.InputStreamDataSource;
+import org.bimserver.webservices.ServiceMap;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -111,11 +112,13 @@ public class UploadServlet extends SubServlet {
 							in = item.openStream();
 							
 							if ("file".equals(action)) {
-								ServiceInterface serviceInterface = getBimServer().getServiceFactory().get(token, AccessMethod.INTERNAL).get(ServiceInterface.class);
+								ServiceMap serviceMap = getBimServer().getServiceFactory().get(token, AccessMethod.INTERNAL);
+								ServiceInterface serviceInterface = serviceMap.get(ServiceInterface.class);
 								SFile file = new SFile();
-								byte[] data = IOUtils.toByteArray(in);
-								file.setData(data);
-								file.setSize(data.length);
+								Blob blob = getBimServer().getBlobStore().store(in);
+								getBimServer().getBlobStore().registerUpload(blob.getDigest(), serviceMap.getAuthorization().getUoid());
+								file.setDigest(blob.getDigest());
+								file.setSize(blob.getSize());
 								file.setFilename(name);
 								file.setMime(item.getContentType());
 								result.put("fileId", serviceInterface.uploadFile(file));
@@ -0,0 +1,38 @@
+package org.bimserver.uploads;
+
+/******************************************************************************
+ * Copyright (C) 2009-2019  BIMserver.org
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see {@literal<http://www.gnu.org/licenses/>}.
+ *****************************************************************************/
+
+/**
+ * What to do with a checkin of which the file is identical (same SHA-256) to the file of the last revision of the project
+ */
+public enum DuplicateCheckinPolicy {
+	/**
+	 * Check the file in as usual
+	 */
+	OFF,
+
+	/**
+	 * Do not create a revision, the last revision is returned
+	 */
+	SKIP,
+
+	/**
+	 * Create a new revision that uses the data (objects, geometry, statistics) of the last revision, the file is not deserialized
+	 */
+	REUSE
+}
@@ -0,0 +1,177 @@
+package org.bimserver.uploads;
+
+/******************************************************************************
+ * Copyright (C) 2009-2019  BIMserver.org
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see {@literal<http://www.gnu.org/licenses/>}.
+ *****************************************************************************/
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+import com.google.common.io.BaseEncoding;
+
+/**
+ * A file that is uploaded in chunks. Chunks are appended to a spool file, the SHA-256 of the file is computed while appending, so
+ * chunks have to be sent in order. When a chunk is interrupted, everything that was received is kept, the client asks for the offset
+ * and continues from there.
+ *
+ * The request body is read without holding the lock of the session, only one chunk is received at a time, a chunk that arrives while
+ * another one is being received is refused like a chunk with the wrong offset.
+ */
+public class UploadSession {
+	private final String id;
+	private final long uoid;
+	private final String fileName;
+	private final long size;
+	private final Path file;
+	private final MessageDigest messageDigest;
+	private long offset;
+	private String digest;
+	private boolean appending;
+	private volatile long lastAccessed = System.currentTimeMillis();
+
+	public UploadSession(String id, long uoid, String fileName, long size, Path file) throws IOException {
+		this.id = id;
+		this.uoid = uoid;
+		this.fileName = fileName;
+		this.size = size;
+		this.file = file;
+		try {
+			this.messageDigest = MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException e) {
+			throw new IOException(e);
+		}
+		Files.createFile(file);
+	}
+
+	/**
+	 * Writes the input to the spool file at the given offset
+	 * 
+	 * @return false when offset is not the current offset or another chunk is being received, nothing is written in that case
+	 */
+	public boolean append(long offset, InputStream inputStream) throws IOException {
+		synchronized (this) {
+			lastAccessed = System.currentTimeMillis();
+			if (digest != null) {
+				throw new IOException("Upload " + id + " has already been completed");
+			}
+			if (appending || offset != this.offset) {
+				return false;
+			}
+			appending = true;
+		}
+		try (FileChannel fileChannel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+			long position = offset;
+			try {
+				byte[] buffer = new byte[65536];
+				int read = inputStream.read(buffer);
+				while (read != -1) {
+					if (size != -1 && position + read > size) {
+						throw new IOException("Upload " + id + " is larger than the announced " + size + " bytes");
+					}
+					ByteBuffer byteBuffer = ByteBuffer.wrap(buffer, 0, read);
+					while (byteBuffer.hasRemaining()) {
+						position += fileChannel.write(byteBuffer, position);
+					}
+					// Only counted once written, so an interrupted chunk can be resumed from the offset
+					messageDigest.update(buffer, 0, read);
+					synchronized (this) {
+						this.offset = position;
+						lastAccessed = System.currentTimeMillis();
+					}
+					read = inputStream.read(buffer);
+				}
+			} catch (IOException e) {
+				// Cut off a partially written buffer, so the file ends at the offset the client continues from
+				try {
+					fileChannel.truncate(getOffset());
+				} catch (IOException e1) {
+					e.addSuppressed(e1);
+				}
+				throw e;
+			}
+		} finally {
+			synchronized (this) {
+				appending = false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Finishes the upload, no more chunks can be appended after this
+	 * 
+	 * @return The lowercase hex SHA-256 of the file
+	 */
+	public synchronized String complete() throws IOException {
+		lastAccessed = System.currentTimeMillis();
+		if (digest == null) {
+			if (appending) {
+				throw new IOException("Upload " + id + " is still receiving a chunk");
+			}
+			if (size != -1 && offset != size) {
+				throw new IOException("Upload " + id + " is incomplete, received " + offset + " of " + size + " bytes");
+			}
+			digest = BaseEncoding.base16().lowerCase().encode(messageDigest.digest());
+		}
+		return digest;
+	}
+
+	public String getId() {
+		return id;
+	}
+
+	public long getUoid() {
+		return uoid;
+	}
+
+	public String getFileName() {
+		return fileName;
+	}
+
+	/**
+	 * @return The announced size, or -1 when the size was not given
+	 */
+	public long getSize() {
+		return size;
+	}
+
+	public synchronized long getOffset() {
+		return offset;
+	}
+
+	public synchronized boolean isComplete() {
+		return digest != null;
+	}
+
+	public Path getFile() {
+		return file;
+	}
+
+	public long getLastAccessed() {
+		return lastAccessed;
+	}
+
+	void touch() {
+		lastAccessed = System.currentTimeMillis();
+	}
+}
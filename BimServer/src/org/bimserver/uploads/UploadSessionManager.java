@@ -0,0 +1,91 @@
+package org.bimserver.uploads;
+
+/******************************************************************************
+ * Copyright (C) 2009-2019  BIMserver.org
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see {@literal<http://www.gnu.org/licenses/>}.
+ *****************************************************************************/
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.bimserver.utils.PathUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Keeps the UploadSessions of chunked uploads, sessions that have not been used for MAX_IDLE_MILLIS are removed by cleanup. Sessions do
+ * not survive a restart, left behind spool files are removed on startup.
+ */
+public class UploadSessionManager {
+	private static final Logger LOGGER = LoggerFactory.getLogger(UploadSessionManager.class);
+	public static final long MAX_IDLE_MILLIS = 24 * 60 * 60 * 1000L;
+	private final Path uploadDir;
+	private final Map<String, UploadSession> sessions = new ConcurrentHashMap<>();
+
+	public UploadSessionManager(Path uploadDir) throws IOException {
+		this.uploadDir = uploadDir;
+		Files.createDirectories(uploadDir);
+		for (Path file : PathUtils.list(uploadDir)) {
+			Files.deleteIfExists(file);
+		}
+	}
+
+	/**
+	 * @param size The size of the file in bytes, or -1 when not known in advance
+	 */
+	public UploadSession create(long uoid, String fileName, long size) throws IOException {
+		String id = UUID.randomUUID().toString();
+		UploadSession uploadSession = new UploadSession(id, uoid, fileName, size, uploadDir.resolve(id));
+		sessions.put(id, uploadSession);
+		return uploadSession;
+	}
+
+	/**
+	 * @return The session, or null when there is no such session or it has been created by another user
+	 */
+	public UploadSession get(String id, long uoid) {
+		UploadSession uploadSession = id == null ? null : sessions.get(id);
+		if (uploadSession == null || uploadSession.getUoid() != uoid) {
+			return null;
+		}
+		uploadSession.touch();
+		return uploadSession;
+	}
+
+	public void remove(UploadSession uploadSession) {
+		sessions.remove(uploadSession.getId());
+		try {
+			Files.deleteIfExists(uploadSession.getFile());
+		} catch (IOException e) {
+			LOGGER.error("", e);
+		}
+	}
+
+	public void cleanup() {
+		long removeBefore = System.currentTimeMillis() - MAX_IDLE_MILLIS;
+		Iterator<UploadSession> iterator = sessions.values().iterator();
+		while (iterator.hasNext()) {
+			UploadSession uploadSession = iterator.next();
+			if (uploadSession.getLastAccessed() < removeBefore) {
+				remove(uploadSession);
+			}
+		}
+	}
+}
@@ -379,7 +379,21 @@ public class AdminServiceImpl extends GenericServiceImpl implements AdminInterfa
 	@Override
 	public SMetrics getMetrics() throws UserException {
 		requireAdminOrMonitorAuthentication();
-		return getBimServer().getMetricsRegistry().getMetrics();
+		SMetrics metrics = getBimServer().getMetricsRegistry().getMetrics();
+		getBimServer().getRenderEnginePools().addMetrics(metrics);
+		return metrics;
+	}
+
+	@Override
+	public String getMemoryReservations() throws UserException, ServerException {
+		requireAdminOrMonitorAuthentication();
+		return getBimServer().getMemoryGovernor().toJson().toString();
+	}
+
+	@Override
+	public String getDatabaseCacheStatistics() throws UserException, ServerException {
+		requireAdminOrMonitorAuthentication();
+		return getBimServer().getDatabase().getKeyValueStore().getCacheStatistics();
 	}
 
 	@Override
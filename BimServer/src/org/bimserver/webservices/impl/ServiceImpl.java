@@ -86,6 +86,8 @@ import org.bimserver.database.actions.CompareDatabaseAction;
 import org.bimserver.database.actions.DeleteProjectDatabaseAction;
 import org.bimserver.database.actions.DeleteServiceDatabaseAction;
 import org.bimserver.database.actions.DeleteUserDatabaseAction;
+import org.bimserver.database.actions.ExplainQueryDatabaseAction;
+import org.bimserver.database.actions.GetAggregatedStatisticsDatabaseAction;
 import org.bimserver.database.actions.GetAllAuthorizedUsersOfProjectDatabaseAction;
 import org.bimserver.database.actions.GetAllCheckoutsByUserDatabaseAction;
 import org.bimserver.database.actions.GetAllCheckoutsOfProjectDatabaseAction;
@@ -1023,6 +1025,9 @@ public class ServiceImpl extends GenericServiceImpl implements ServiceInterface
 	@Override
 	public Long initiateCheckin(Long poid, Long deserializerOid) throws ServerException, UserException {
 		requireAuthenticationAndRunningServer();
+		if (getBimServer().isStaleDataCleanupPending(poid)) {
+			throw new UserException("The records of an interrupted checkin on this project are still being removed, please try again later");
+		}
 
 		ProgressOnProjectTopic progressTopic = getBimServer().getNotificationsManager().createProgressOnProjectTopic(getAuthorization().getUoid(), poid, SProgressTopicType.UPLOAD, "Checkin");
 		long topicId = progressTopic.getKey().getId();
@@ -2485,7 +2490,9 @@ public class ServiceImpl extends GenericServiceImpl implements ServiceInterface
 		DatabaseSession session = getBimServer().getDatabase().createSession(OperationType.READ_ONLY);
 		try {
 			org.bimserver.models.store.File file = (org.bimserver.models.store.File) session.get(StorePackage.eINSTANCE.getFile(), fileId, OldQuery.getDefault());
-			return getBimServer().getSConverter().convertToSObject(file);
+			SFile sFile = getBimServer().getSConverter().convertToSObject(file);
+			sFile.setData(getBimServer().getBlobStore().getData(file));
+			return sFile;
 		} catch (Exception e) {
 			return handleException(e);
 		} finally {
@@ -2512,7 +2519,7 @@ public class ServiceImpl extends GenericServiceImpl implements ServiceInterface
 		DatabaseSession session = getBimServer().getDatabase().createSession(OperationType.POSSIBLY_WRITE);
 		try {
 			File convertFromSObject = getBimServer().getSConverter().convertFromSObject(file, session.create(File.class), session);
-			UploadFileDatabaseAction action = new UploadFileDatabaseAction(session, getInternalAccessMethod(), convertFromSObject);
+			UploadFileDatabaseAction action = new UploadFileDatabaseAction(getBimServer(), session, getInternalAccessMethod(), getAuthorization(), convertFromSObject);
 			return session.executeAndCommitAction(action);
 		} catch (Exception e) {
 			return handleException(e);
@@ -2981,6 +2988,32 @@ public class ServiceImpl extends GenericServiceImpl implements ServiceInterface
 		}
 	}
 
+	@Override
+	public String getAggregatedStatistics(Set<Long> roids, String groupBy) throws ServerException, UserException {
+		requireAuthentication();
+		DatabaseSession session = getBimServer().getDatabase().createSession(OperationType.READ_ONLY);
+		try {
+			return new GetAggregatedStatisticsDatabaseAction(getBimServer(), session, getInternalAccessMethod(), roids, groupBy, getAuthorization()).execute();
+		} catch (Exception e) {
+			return handleException(e);
+		} finally {
+			session.close();
+		}
+	}
+
+	@Override
+	public String explainQuery(Set<Long> roids, String query) throws ServerException, UserException {
+		requireAuthenticationAndRunningServer();
+		DatabaseSession session = getBimServer().getDatabase().createSession(OperationType.READ_ONLY);
+		try {
+			return new ExplainQueryDatabaseAction(getBimServer(), session, getInternalAccessMethod(), roids, query, getAuthorization()).execute();
+		} catch (Exception e) {
+			return handleException(e);
+		} finally {
+			session.close();
+		}
+	}
+
 	@Override
 	public Long addNewServiceToProject(Long poid, SNewService sService, SAction sAction) throws ServerException, UserException {
 		requireRealUserAuthentication();
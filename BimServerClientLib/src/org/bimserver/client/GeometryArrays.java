@@ -0,0 +1,132 @@
+package org.bimserver.client;
+
+/******************************************************************************
+ * Copyright (C) 2009-2019  BIMserver.org
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see {@literal<http://www.gnu.org/licenses/>}.
+ *****************************************************************************/
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * The contents of one GeometryData object, decoded straight into primitive arrays
+ */
+public class GeometryArrays {
+	private final long oid;
+	private final int[] indices;
+	private final float[] vertices;
+	private final float[] normals;
+	private final byte[] colorsQuantized;
+	private final float[] color;
+
+	public GeometryArrays(long oid, int[] indices, float[] vertices, float[] normals, byte[] colorsQuantized, float[] color) {
+		this.oid = oid;
+		this.indices = indices;
+		this.vertices = vertices;
+		this.normals = normals;
+		this.colorsQuantized = colorsQuantized;
+		this.color = color;
+	}
+
+	/**
+	 * @return The oid of the GeometryData object
+	 */
+	public long getOid() {
+		return oid;
+	}
+
+	public int[] getIndices() {
+		return indices;
+	}
+
+	public float[] getVertices() {
+		return vertices;
+	}
+
+	public float[] getNormals() {
+		return normals;
+	}
+
+	/**
+	 * @return RGBA per vertex, can be empty when the geometry has a single color
+	 */
+	public byte[] getColorsQuantized() {
+		return colorsQuantized;
+	}
+
+	/**
+	 * @return The RGBA color of the whole geometry, or null
+	 */
+	public float[] getColor() {
+		return color;
+	}
+
+	public int getNrTriangles() {
+		return indices.length / 3;
+	}
+
+	/**
+	 * @return The approximate number of bytes used by the arrays
+	 */
+	public long getSize() {
+		return indices.length * 4L + vertices.length * 4L + normals.length * 4L + colorsQuantized.length;
+	}
+
+	void writeTo(DataOutput output) throws IOException {
+		output.writeLong(oid);
+		output.writeInt(indices.length);
+		for (int index : indices) {
+			output.writeInt(index);
+		}
+		writeFloats(output, vertices);
+		writeFloats(output, normals);
+		output.writeInt(colorsQuantized.length);
+		output.write(colorsQuantized);
+		output.writeBoolean(color != null);
+		if (color != null) {
+			writeFloats(output, color);
+		}
+	}
+
+	static GeometryArrays readFrom(DataInput input) throws IOException {
+		long oid = input.readLong();
+		int[] indices = new int[input.readInt()];
+		for (int i = 0; i < indices.length; i++) {
+			indices[i] = input.readInt();
+		}
+		float[] vertices = readFloats(input);
+		float[] normals = readFloats(input);
+		byte[] colorsQuantized = new byte[input.readInt()];
+		input.readFully(colorsQuantized);
+		float[] color = input.readBoolean() ? readFloats(input) : null;
+		return new GeometryArrays(oid, indices, vertices, normals, colorsQuantized, color);
+	}
+
+	private static void writeFloats(DataOutput output, float[] values) throws IOException {
+		output.writeInt(values.length);
+		for (float value : values) {
+			output.writeFloat(value);
+		}
+	}
+
+	private static float[] readFloats(DataInput input) throws IOException {
+		float[] values = new float[input.readInt()];
+		for (int i = 0; i < values.length; i++) {
+			values[i] = input.readFloat();
+		}
+		return values;
+	}
+}
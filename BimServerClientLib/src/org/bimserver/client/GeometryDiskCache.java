@@ -0,0 +1,160 @@
+package org.bimserver.client;
+
+/******************************************************************************
+ * Copyright (C) 2009-2019  BIMserver.org
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see {@literal<http://www.gnu.org/licenses/>}.
+ *****************************************************************************/
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Local on-disk cache for ParallelGeometryLoader. GeometryData objects are stored by oid, the list of products of a revision (with the
+ * oids of their GeometryData) is stored by roid. Both never change on the server once created, so entries never have to be invalidated.
+ *
+ * Oids are only unique within one server, so use a separate directory per server. Entries are written to a temporary file and moved
+ * in place, so multiple clients (or processes) can share a directory. Unreadable entries are removed and treated as a miss.
+ */
+public class GeometryDiskCache {
+	private static final Logger LOGGER = LoggerFactory.getLogger(GeometryDiskCache.class);
+	private static final int MAGIC = 0x42474331; // BGC1
+
+	private final Path geometryDataDirectory;
+	private final Path revisionsDirectory;
+
+	public GeometryDiskCache(Path directory) throws IOException {
+		this.geometryDataDirectory = directory.resolve("data");
+		this.revisionsDirectory = directory.resolve("revisions");
+		Files.createDirectories(geometryDataDirectory);
+		Files.createDirectories(revisionsDirectory);
+	}
+
+	public GeometryArrays getGeometryData(long oid) {
+		Path path = getGeometryDataPath(oid);
+		try (DataInputStream input = open(path)) {
+			if (input == null) {
+				return null;
+			}
+			return GeometryArrays.readFrom(input);
+		} catch (IOException e) {
+			remove(path, e);
+			return null;
+		}
+	}
+
+	public void putGeometryData(GeometryArrays geometryArrays) {
+		Path path = getGeometryDataPath(geometryArrays.getOid());
+		try {
+			Files.createDirectories(path.getParent());
+			Path tempFile = Files.createTempFile(path.getParent(), "geometry", ".tmp");
+			try (DataOutputStream output = create(tempFile)) {
+				geometryArrays.writeTo(output);
+			}
+			Files.move(tempFile, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} catch (IOException e) {
+			LOGGER.error("", e);
+		}
+	}
+
+	/**
+	 * @return The products of the given revision, null when the revision has not been cached
+	 */
+	public List<ProductGeometry> getRevision(long roid) {
+		Path path = revisionsDirectory.resolve(roid + ".bin");
+		try (DataInputStream input = open(path)) {
+			if (input == null) {
+				return null;
+			}
+			int nrProducts = input.readInt();
+			List<ProductGeometry> products = new ArrayList<>(nrProducts);
+			for (int i = 0; i < nrProducts; i++) {
+				products.add(ProductGeometry.readFrom(input));
+			}
+			return products;
+		} catch (IOException e) {
+			remove(path, e);
+			return null;
+		}
+	}
+
+	public void putRevision(long roid, Collection<ProductGeometry> products) {
+		try {
+			Path tempFile = Files.createTempFile(revisionsDirectory, "revision", ".tmp");
+			try (DataOutputStream output = create(tempFile)) {
+				output.writeInt(products.size());
+				for (ProductGeometry productGeometry : products) {
+					productGeometry.writeTo(output);
+				}
+			}
+			Files.move(tempFile, revisionsDirectory.resolve(roid + ".bin"), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} catch (IOException e) {
+			LOGGER.error("", e);
+		}
+	}
+
+	/*
+	 * Spread the files over 256 directories, a large model easily has tens of thousands of GeometryData objects. The lowest 16 bits of
+	 * an oid are the cid, which is the same for all GeometryData objects, so the directory is taken from the counter above it
+	 */
+	private Path getGeometryDataPath(long oid) {
+		return geometryDataDirectory.resolve(String.format("%02x", (oid >> 16) & 0xFF)).resolve(oid + ".bin");
+	}
+
+	private DataInputStream open(Path path) throws IOException {
+		InputStream inputStream;
+		try {
+			inputStream = Files.newInputStream(path);
+		} catch (NoSuchFileException e) {
+			return null;
+		}
+		DataInputStream input = new DataInputStream(new BufferedInputStream(inputStream, 65536));
+		if (input.readInt() != MAGIC) {
+			input.close();
+			throw new IOException("Not a geometry cache file: " + path);
+		}
+		return input;
+	}
+
+	private DataOutputStream create(Path path) throws IOException {
+		OutputStream outputStream = Files.newOutputStream(path);
+		DataOutputStream output = new DataOutputStream(new BufferedOutputStream(outputStream, 65536));
+		output.writeInt(MAGIC);
+		return output;
+	}
+
+	private void remove(Path path, IOException e) {
+		LOGGER.error("", e);
+		try {
+			Files.deleteIfExists(path);
+		} catch (IOException e1) {
+			LOGGER.error("", e1);
+		}
+	}
+}
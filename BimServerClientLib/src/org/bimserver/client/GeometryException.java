@@ -24,4 +24,8 @@ public class GeometryException extends Exception {
 	public GeometryException(String message) {
 		super(message);
 	}
+
+	public GeometryException(String message, Throwable cause) {
+		super(message, cause);
+	}
 }
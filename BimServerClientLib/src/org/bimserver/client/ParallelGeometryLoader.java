@@ -0,0 +1,317 @@
+package org.bimserver.client;
+
+/******************************************************************************
+ * Copyright (C) 2009-2019  BIMserver.org
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see {@literal<http://www.gnu.org/licenses/>}.
+ *****************************************************************************/
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.bimserver.database.queries.om.Include;
+import org.bimserver.database.queries.om.Query;
+import org.bimserver.database.queries.om.QueryException;
+import org.bimserver.database.queries.om.QueryPart;
+import org.bimserver.emf.PackageMetaData;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+/**
+ * Loads the geometry of a revision into primitive arrays (see ProductGeometry and GeometryArrays) instead of into a ClientIfcModel.
+ *
+ * First the list of products with their GeometryInfo is loaded (without the actual geometry), then the GeometryData objects that are
+ * not in memory or in the GeometryDiskCache are downloaded in batches of oids, over several concurrent downloads. Because GeometryData
+ * objects are shared between revisions when the geometry did not change, opening a new revision only downloads the geometry of the
+ * changed products, and reopening a revision does not download anything.
+ *
+ * One instance can be used to load multiple revisions, the GeometryArrays loaded so far are kept in memory and shared.
+ */
+public class ParallelGeometryLoader {
+	private static final Logger LOGGER = LoggerFactory.getLogger(ParallelGeometryLoader.class);
+	private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+	private final BimServerClient bimServerClient;
+	private final PackageMetaData packageMetaData;
+	private final GeometryDiskCache diskCache;
+	private final int nrStreams;
+	private final int batchSize;
+	private final Map<Long, GeometryArrays> geometryArrays = new ConcurrentHashMap<>();
+
+	/**
+	 * @param diskCache Can be null, in which case geometry is only cached in memory
+	 * @param nrStreams The number of concurrent downloads
+	 * @param batchSize The maximum number of GeometryData objects per download
+	 */
+	public ParallelGeometryLoader(BimServerClient bimServerClient, PackageMetaData packageMetaData, GeometryDiskCache diskCache, int nrStreams, int batchSize) {
+		this.bimServerClient = bimServerClient;
+		this.packageMetaData = packageMetaData;
+		this.diskCache = diskCache;
+		this.nrStreams = nrStreams;
+		this.batchSize = batchSize;
+	}
+
+	public ParallelGeometryLoader(BimServerClient bimServerClient, PackageMetaData packageMetaData, GeometryDiskCache diskCache) {
+		this(bimServerClient, packageMetaData, diskCache, 4, 500);
+	}
+
+	/**
+	 * @return The products of the revision that have geometry by oid, with their GeometryArrays set
+	 */
+	public Map<Long, ProductGeometry> load(long roid) throws GeometryException {
+		List<ProductGeometry> products = diskCache == null ? null : diskCache.getRevision(roid);
+		if (products == null) {
+			products = new ArrayList<>();
+			fetch(roid, createProductsQuery(), products, null);
+			if (diskCache != null) {
+				diskCache.putRevision(roid, products);
+			}
+		}
+		Set<Long> missing = new LinkedHashSet<>();
+		for (ProductGeometry productGeometry : products) {
+			long geometryDataOid = productGeometry.getGeometryDataOid();
+			if (!geometryArrays.containsKey(geometryDataOid) && !missing.contains(geometryDataOid)) {
+				GeometryArrays cached = diskCache == null ? null : diskCache.getGeometryData(geometryDataOid);
+				if (cached != null) {
+					geometryArrays.put(geometryDataOid, cached);
+				} else {
+					missing.add(geometryDataOid);
+				}
+			}
+		}
+		if (!missing.isEmpty()) {
+			LOGGER.info("Loading " + missing.size() + " of " + products.size() + " geometries");
+			loadGeometryData(roid, missing);
+		}
+		Map<Long, ProductGeometry> result = new LinkedHashMap<>();
+		for (ProductGeometry productGeometry : products) {
+			productGeometry.setGeometryArrays(geometryArrays.get(productGeometry.getGeometryDataOid()));
+			result.put(productGeometry.getProductOid(), productGeometry);
+		}
+		return result;
+	}
+
+	private void loadGeometryData(long roid, Set<Long> oids) throws GeometryException {
+		ExecutorService executorService = Executors.newFixedThreadPool(nrStreams);
+		try {
+			List<Future<Void>> futures = new ArrayList<>();
+			List<Long> batch = new ArrayList<>(batchSize);
+			for (long oid : oids) {
+				batch.add(oid);
+				if (batch.size() == batchSize) {
+					futures.add(executorService.submit(createBatch(roid, batch)));
+					batch = new ArrayList<>(batchSize);
+				}
+			}
+			if (!batch.isEmpty()) {
+				futures.add(executorService.submit(createBatch(roid, batch)));
+			}
+			for (Future<Void> future : futures) {
+				future.get();
+			}
+		} catch (ExecutionException e) {
+			throw new GeometryException("Error loading geometry for revision " + roid, e.getCause());
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new GeometryException("Interrupted while loading geometry for revision " + roid, e);
+		} finally {
+			executorService.shutdownNow();
+		}
+	}
+
+	private Callable<Void> createBatch(long roid, List<Long> oids) {
+		return new Callable<Void>() {
+			@Override
+			public Void call() throws Exception {
+				List<GeometryArrays> loaded = new ArrayList<>(oids.size());
+				fetch(roid, createGeometryDataQuery(oids), null, loaded);
+				for (GeometryArrays arrays : loaded) {
+					geometryArrays.put(arrays.getOid(), arrays);
+					if (diskCache != null) {
+						diskCache.putGeometryData(arrays);
+					}
+				}
+				return null;
+			}
+		};
+	}
+
+	private Query createProductsQuery() throws GeometryException {
+		try {
+			Query query = createQuery();
+			QueryPart queryPart = query.createQueryPart();
+			queryPart.addType(packageMetaData.getEClass("IfcProduct"), true);
+			Include include = queryPart.createInclude();
+			include.addType(packageMetaData.getEClass("IfcProduct"), true);
+			include.addField("geometry");
+			return query;
+		} catch (QueryException e) {
+			throw new GeometryException("Error creating query", e);
+		}
+	}
+
+	private Query createGeometryDataQuery(List<Long> oids) throws GeometryException {
+		try {
+			Query query = createQuery();
+			QueryPart queryPart = query.createQueryPart();
+			queryPart.addOids(oids);
+			Include include = queryPart.createInclude();
+			include.addType(packageMetaData.getEClassIncludingDependencies("GeometryData"), false);
+			include.addFieldDirect("indices");
+			include.addFieldDirect("normals");
+			include.addFieldDirect("vertices");
+			include.addFieldDirect("colorsQuantized");
+			return query;
+		} catch (QueryException e) {
+			throw new GeometryException("Error creating query", e);
+		}
+	}
+
+	private Query createQuery() {
+		Query query = new Query("geometry", packageMetaData);
+		ObjectNode settings = OBJECT_MAPPER.createObjectNode();
+		settings.put("useSmallInts", false);
+		settings.put("splitGeometry", false);
+		settings.put("quantizeColors", true);
+		query.setGeometrySettings(settings);
+		return query;
+	}
+
+	private void fetch(long roid, Query query, List<ProductGeometry> products, List<GeometryArrays> geometryData) throws GeometryException {
+		try {
+			long serializerOid = bimServerClient.getBinaryGeometryMessagingStreamingSerializerOid();
+			long topicId = bimServerClient.query(query, roid, serializerOid);
+			try {
+				bimServerClient.waitForDonePreparing(topicId);
+				try (InputStream inputStream = bimServerClient.getDownloadData(topicId)) {
+					decode(inputStream, products, geometryData);
+				}
+			} finally {
+				bimServerClient.getServiceInterface().cleanupLongAction(topicId);
+			}
+		} catch (GeometryException e) {
+			throw e;
+		} catch (Exception e) {
+			throw new GeometryException("Error downloading geometry", e);
+		}
+	}
+
+	/**
+	 * Decodes the output of the binary geometry messaging serializer, see GeometryLoader.load for the same format decoded into IdEObjects
+	 */
+	private void decode(InputStream inputStream, List<ProductGeometry> products, List<GeometryArrays> geometryData) throws IOException, GeometryException {
+		CountingLittleEndianDataInputStream dataInputStream = new CountingLittleEndianDataInputStream(inputStream);
+		try {
+			while (true) {
+				byte geometryType = dataInputStream.readByte();
+				if (geometryType == 0) {
+					String protocol = dataInputStream.readUTF();
+					if (!protocol.equals("BGS")) {
+						throw new GeometryException("Protocol != BGS (" + protocol + ")");
+					}
+					byte formatVersion = dataInputStream.readByte();
+					if (formatVersion != 20) {
+						throw new GeometryException("Unsupported version " + formatVersion + " / 20");
+					}
+					dataInputStream.readFloat(); // multiplierToMm
+					dataInputStream.align8();
+					for (int i = 0; i < 6; i++) {
+						dataInputStream.readDouble();
+					}
+				} else if (geometryType == 5) {
+					dataInputStream.readByte(); // isInPreparedBuffer
+					long productOid = dataInputStream.readLong();
+					String type = dataInputStream.readUTF();
+					dataInputStream.readInt(); // nrColors
+					dataInputStream.align8();
+					dataInputStream.readLong(); // roid
+					long geometryInfoOid = dataInputStream.readLong();
+					boolean transparent = dataInputStream.readLong() == 1;
+					double[] bounds = new double[6];
+					for (int i = 0; i < bounds.length; i++) {
+						bounds[i] = dataInputStream.readDouble();
+					}
+					double[] transformation = new double[16];
+					for (int i = 0; i < transformation.length; i++) {
+						transformation[i] = dataInputStream.readDouble();
+					}
+					long geometryDataOid = dataInputStream.readLong();
+					if (products != null) {
+						products.add(new ProductGeometry(productOid, type, geometryInfoOid, geometryDataOid, transparent, bounds, transformation));
+					}
+				} else if (geometryType == 3) {
+					throw new GeometryException("Parts not supported");
+				} else if (geometryType == 1) {
+					dataInputStream.readInt(); // reused
+					dataInputStream.readUTF(); // type
+					dataInputStream.align8();
+					dataInputStream.readLong(); // roid
+					dataInputStream.readLong(); // croid
+					dataInputStream.readLong(); // transparent
+					long geometryDataOid = dataInputStream.readLong();
+					int[] indices = new int[dataInputStream.readInt()];
+					readBuffer(dataInputStream, indices.length * 4).asIntBuffer().get(indices);
+					float[] color = null;
+					if (dataInputStream.readInt() == 1) {
+						color = new float[4];
+						for (int i = 0; i < color.length; i++) {
+							color[i] = dataInputStream.readFloat();
+						}
+					}
+					float[] vertices = new float[dataInputStream.readInt()];
+					readBuffer(dataInputStream, vertices.length * 4).asFloatBuffer().get(vertices);
+					float[] normals = new float[dataInputStream.readInt()];
+					readBuffer(dataInputStream, normals.length * 4).asFloatBuffer().get(normals);
+					byte[] colorsQuantized = new byte[dataInputStream.readInt()];
+					dataInputStream.readFully(colorsQuantized);
+					if (geometryData != null) {
+						geometryData.add(new GeometryArrays(geometryDataOid, indices, vertices, normals, colorsQuantized, color));
+					}
+				} else if (geometryType == 6) {
+					return;
+				} else {
+					throw new GeometryException("Unimplemented geometryType: " + geometryType);
+				}
+				dataInputStream.align8();
+			}
+		} catch (EOFException e) {
+		} finally {
+			dataInputStream.close();
+		}
+	}
+
+	private ByteBuffer readBuffer(CountingLittleEndianDataInputStream dataInputStream, int length) throws IOException {
+		byte[] bytes = new byte[length];
+		dataInputStream.readFully(bytes);
+		return ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN);
+	}
+}
@@ -0,0 +1,123 @@
+package org.bimserver.client;
+
+/******************************************************************************
+ * Copyright (C) 2009-2019  BIMserver.org
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see {@literal<http://www.gnu.org/licenses/>}.
+ *****************************************************************************/
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * The geometry of one product as loaded by ParallelGeometryLoader, without any IdEObjects. Products with the same geometry (mapped
+ * items, reused geometry) share the same GeometryArrays.
+ */
+public class ProductGeometry {
+	private final long productOid;
+	private final String type;
+	private final long geometryInfoOid;
+	private final long geometryDataOid;
+	private final boolean transparent;
+	private final double[] bounds;
+	private final double[] transformation;
+	private volatile GeometryArrays geometryArrays;
+
+	public ProductGeometry(long productOid, String type, long geometryInfoOid, long geometryDataOid, boolean transparent, double[] bounds, double[] transformation) {
+		this.productOid = productOid;
+		this.type = type;
+		this.geometryInfoOid = geometryInfoOid;
+		this.geometryDataOid = geometryDataOid;
+		this.transparent = transparent;
+		this.bounds = bounds;
+		this.transformation = transformation;
+	}
+
+	public long getProductOid() {
+		return productOid;
+	}
+
+	public String getType() {
+		return type;
+	}
+
+	public long getGeometryInfoOid() {
+		return geometryInfoOid;
+	}
+
+	public long getGeometryDataOid() {
+		return geometryDataOid;
+	}
+
+	public boolean isTransparent() {
+		return transparent;
+	}
+
+	/**
+	 * @return minX, minY, minZ, maxX, maxY, maxZ
+	 */
+	public double[] getBounds() {
+		return bounds;
+	}
+
+	/**
+	 * @return The 4x4 transformation matrix, column major
+	 */
+	public double[] getTransformation() {
+		return transformation;
+	}
+
+	/**
+	 * @return The geometry, null when it has not been loaded (yet)
+	 */
+	public GeometryArrays getGeometryArrays() {
+		return geometryArrays;
+	}
+
+	void setGeometryArrays(GeometryArrays geometryArrays) {
+		this.geometryArrays = geometryArrays;
+	}
+
+	void writeTo(DataOutput output) throws IOException {
+		output.writeLong(productOid);
+		output.writeUTF(type);
+		output.writeLong(geometryInfoOid);
+		output.writeLong(geometryDataOid);
+		output.writeBoolean(transparent);
+		for (double value : bounds) {
+			output.writeDouble(value);
+		}
+		for (double value : transformation) {
+			output.writeDouble(value);
+		}
+	}
+
+	static ProductGeometry readFrom(DataInput input) throws IOException {
+		long productOid = input.readLong();
+		String type = input.readUTF();
+		long geometryInfoOid = input.readLong();
+		long geometryDataOid = input.readLong();
+		boolean transparent = input.readBoolean();
+		double[] bounds = new double[6];
+		for (int i = 0; i < bounds.length; i++) {
+			bounds[i] = input.readDouble();
+		}
+		double[] transformation = new double[16];
+		for (int i = 0; i < transformation.length; i++) {
+			transformation[i] = input.readDouble();
+		}
+		return new ProductGeometry(productOid, type, geometryInfoOid, geometryDataOid, transparent, bounds, transformation);
+	}
+}
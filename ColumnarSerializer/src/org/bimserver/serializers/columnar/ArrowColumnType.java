@@ -0,0 +1,222 @@
+package org.bimserver.serializers.columnar;
+
+/******************************************************************************
+ * Copyright (C) 2009-2019  BIMserver.org
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see {@literal<http://www.gnu.org/licenses/>}.
+ *****************************************************************************/
+
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.Date;
+import java.util.Map;
+
+import org.apache.arrow.vector.BigIntVector;
+import org.apache.arrow.vector.BitVector;
+import org.apache.arrow.vector.FieldVector;
+import org.apache.arrow.vector.FixedSizeBinaryVector;
+import org.apache.arrow.vector.Float4Vector;
+import org.apache.arrow.vector.Float8Vector;
+import org.apache.arrow.vector.IntVector;
+import org.apache.arrow.vector.SmallIntVector;
+import org.apache.arrow.vector.TimeStampMilliVector;
+import org.apache.arrow.vector.VarBinaryVector;
+import org.apache.arrow.vector.VarCharVector;
+import org.apache.arrow.vector.types.FloatingPointPrecision;
+import org.apache.arrow.vector.types.TimeUnit;
+import org.apache.arrow.vector.types.pojo.ArrowType;
+import org.apache.arrow.vector.types.pojo.Field;
+import org.apache.arrow.vector.types.pojo.FieldType;
+
+import com.google.common.base.Charsets;
+
+/**
+ * The Arrow types the values of features are written as. Oids, uuids and JSON values are written as plain Arrow types, the field
+ * metadata "bimserver.type" tells readers what they contain.
+ */
+enum ArrowColumnType {
+	INT16(new ArrowType.Int(16, true), null, 2) {
+		@Override
+		boolean set(FieldVector vector, int index, Object value) {
+			if (!(value instanceof Number)) {
+				return false;
+			}
+			((SmallIntVector) vector).setSafe(index, ((Number) value).shortValue());
+			return true;
+		}
+	},
+	INT32(new ArrowType.Int(32, true), null, 4) {
+		@Override
+		boolean set(FieldVector vector, int index, Object value) {
+			if (!(value instanceof Number)) {
+				return false;
+			}
+			((IntVector) vector).setSafe(index, ((Number) value).intValue());
+			return true;
+		}
+	},
+	INT64(new ArrowType.Int(64, true), null, 8) {
+		@Override
+		boolean set(FieldVector vector, int index, Object value) {
+			if (!(value instanceof Number)) {
+				return false;
+			}
+			((BigIntVector) vector).setSafe(index, ((Number) value).longValue());
+			return true;
+		}
+	},
+	OID(new ArrowType.Int(64, true), "oid", 8) {
+		@Override
+		boolean set(FieldVector vector, int index, Object value) {
+			return INT64.set(vector, index, value);
+		}
+	},
+	FLOAT32(new ArrowType.FloatingPoint(FloatingPointPrecision.SINGLE), null, 4) {
+		@Override
+		boolean set(FieldVector vector, int index, Object value) {
+			if (!(value instanceof Number)) {
+				return false;
+			}
+			((Float4Vector) vector).setSafe(index, ((Number) value).floatValue());
+			return true;
+		}
+	},
+	FLOAT64(new ArrowType.FloatingPoint(FloatingPointPrecision.DOUBLE), null, 8) {
+		@Override
+		boolean set(FieldVector vector, int index, Object value) {
+			if (!(value instanceof Number)) {
+				return false;
+			}
+			((Float8Vector) vector).setSafe(index, ((Number) value).doubleValue());
+			return true;
+		}
+	},
+	BOOLEAN(ArrowType.Bool.INSTANCE, null, 1) {
+		@Override
+		boolean set(FieldVector vector, int index, Object value) {
+			if (!(value instanceof Boolean)) {
+				return false;
+			}
+			((BitVector) vector).setSafe(index, (Boolean) value ? 1 : 0);
+			return true;
+		}
+	},
+	TIMESTAMP(new ArrowType.Timestamp(TimeUnit.MILLISECOND, null), null, 8) {
+		@Override
+		boolean set(FieldVector vector, int index, Object value) {
+			if (!(value instanceof Date)) {
+				return false;
+			}
+			((TimeStampMilliVector) vector).setSafe(index, ((Date) value).getTime());
+			return true;
+		}
+	},
+	UUID(new ArrowType.FixedSizeBinary(16), "uuid", 16) {
+		@Override
+		boolean set(FieldVector vector, int index, Object value) {
+			if (!(value instanceof java.util.UUID)) {
+				return false;
+			}
+			java.util.UUID uuid = (java.util.UUID) value;
+			ByteBuffer bytes = ByteBuffer.allocate(16);
+			bytes.putLong(uuid.getMostSignificantBits());
+			bytes.putLong(uuid.getLeastSignificantBits());
+			((FixedSizeBinaryVector) vector).setSafe(index, bytes.array());
+			return true;
+		}
+	},
+	STRING(ArrowType.Utf8.INSTANCE, null, 4) {
+		@Override
+		boolean set(FieldVector vector, int index, Object value) {
+			((VarCharVector) vector).setSafe(index, value.toString().getBytes(Charsets.UTF_8));
+			return true;
+		}
+
+		@Override
+		int getSize(Object value) {
+			return value == null ? 4 : 4 + value.toString().length();
+		}
+	},
+	JSON(ArrowType.Utf8.INSTANCE, "json", 4) {
+		@Override
+		boolean set(FieldVector vector, int index, Object value) {
+			return STRING.set(vector, index, value);
+		}
+
+		@Override
+		int getSize(Object value) {
+			return STRING.getSize(value);
+		}
+	},
+	BINARY(ArrowType.Binary.INSTANCE, null, 4) {
+		@Override
+		boolean set(FieldVector vector, int index, Object value) {
+			if (!(value instanceof byte[])) {
+				return false;
+			}
+			((VarBinaryVector) vector).setSafe(index, (byte[]) value);
+			return true;
+		}
+
+		@Override
+		int getSize(Object value) {
+			return value instanceof byte[] ? 4 + ((byte[]) value).length : 4;
+		}
+	};
+
+	static final String TYPE_METADATA = "bimserver.type";
+
+	private final ArrowType arrowType;
+	private final String bimserverType;
+	private final int width;
+
+	/**
+	 * @param width The number of bytes a value takes, for variable width types the size of the offset
+	 */
+	ArrowColumnType(ArrowType arrowType, String bimserverType, int width) {
+		this.arrowType = arrowType;
+		this.bimserverType = bimserverType;
+		this.width = width;
+	}
+
+	/**
+	 * @param list Whether the field holds a list of values of this type per row
+	 */
+	Field createField(String name, boolean list) {
+		Map<String, String> metadata = bimserverType == null ? null : Collections.singletonMap(TYPE_METADATA, bimserverType);
+		Field field = new Field(list ? "item" : name, new FieldType(true, arrowType, null, metadata), null);
+		if (!list) {
+			return field;
+		}
+		return new Field(name, FieldType.nullable(ArrowType.List.INSTANCE), Collections.singletonList(field));
+	}
+
+	/**
+	 * @return false when the value can not be represented by this type
+	 */
+	abstract boolean set(FieldVector vector, int index, Object value);
+
+	/**
+	 * @return An estimate of the number of bytes the value takes in a batch, strings are counted as one byte per character
+	 */
+	int getSize(Object value) {
+		return width;
+	}
+
+	void setOrNull(FieldVector vector, int index, Object value) {
+		if (value == null || !set(vector, index, value)) {
+			vector.setNull(index);
+		}
+	}
+}
@@ -0,0 +1,221 @@
+package org.bimserver.serializers.columnar;
+
+/******************************************************************************
+ * Copyright (C) 2009-2019  BIMserver.org
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see {@literal<http://www.gnu.org/licenses/>}.
+ *****************************************************************************/
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.ZipOutputStream;
+
+import org.apache.arrow.memory.BufferAllocator;
+import org.apache.arrow.memory.RootAllocator;
+import org.bimserver.BimserverDatabaseException;
+import org.bimserver.emf.PackageMetaData;
+import org.bimserver.plugins.serializers.ObjectProvider;
+import org.bimserver.plugins.serializers.SerializerException;
+import org.bimserver.plugins.serializers.StreamingReader;
+import org.bimserver.shared.HashMapVirtualObject;
+import org.eclipse.emf.ecore.EClass;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Writes the objects of a model as a zip with one Apache Arrow IPC file per EClass ("IfcWall.arrow"), so analytical tools (pyarrow,
+ * DuckDB, Spark) can read single attributes of all objects of a type without parsing the whole model. See ArrowTable for the columns
+ * and README.md for the full description.
+ *
+ * An Arrow file has one schema, so every table is first written to its own temporary file, batch by batch. Only one batch per table is
+ * kept in memory, a batch is written when it is full or when all open batches together get too big. When all objects have been read,
+ * the files are copied into the zip, a part per call of write.
+ */
+public class ArrowColumnarWriter implements StreamingReader {
+	private static final Logger LOGGER = LoggerFactory.getLogger(ArrowColumnarWriter.class);
+
+	enum Mode {
+		BODY, ARCHIVE, DONE
+	}
+
+	private static final int MAX_BATCH_ROWS = 16384;
+	private static final long MAX_BATCH_SIZE = 4 * 1024 * 1024;
+	private static final long MAX_TOTAL_SIZE = 64 * 1024 * 1024;
+	private static final int COPY_BUFFER_SIZE = 1024 * 1024;
+
+	private final ObjectProvider objectProvider;
+	private final PackageMetaData packageMetaData;
+	private final Path tempDir;
+	private final BufferAllocator allocator = new RootAllocator();
+	private final Map<EClass, ArrowTable> tables = new LinkedHashMap<>();
+	private final CurrentOutputStream currentOutputStream = new CurrentOutputStream();
+	private final ZipOutputStream zipOutputStream = new ZipOutputStream(currentOutputStream);
+	private Mode mode = Mode.BODY;
+	private int objectsSinceSizeCheck;
+	private Iterator<ArrowTable> tablesToArchive;
+	private ArrowTable archivingTable;
+	private InputStream archivingInputStream;
+	private byte[] copyBuffer;
+
+	/**
+	 * @param tempDir The directory for the temporary files of the tables, they are removed when done
+	 */
+	public ArrowColumnarWriter(ObjectProvider objectProvider, PackageMetaData packageMetaData, Path tempDir) throws SerializerException {
+		if (objectProvider == null) {
+			throw new SerializerException("No object provider");
+		}
+		this.objectProvider = objectProvider;
+		this.packageMetaData = packageMetaData;
+		this.tempDir = tempDir;
+	}
+
+	@Override
+	public boolean write(OutputStream outputStream) throws SerializerException, BimserverDatabaseException {
+		try {
+			if (mode == Mode.BODY) {
+				HashMapVirtualObject object = objectProvider.next();
+				if (object != null) {
+					add(object);
+				} else {
+					for (ArrowTable table : tables.values()) {
+						table.finish();
+					}
+					tablesToArchive = tables.values().iterator();
+					copyBuffer = new byte[COPY_BUFFER_SIZE];
+					mode = Mode.ARCHIVE;
+				}
+				return true;
+			} else if (mode == Mode.ARCHIVE) {
+				currentOutputStream.setOutputStream(outputStream);
+				archive();
+				return true;
+			}
+		} catch (IOException | RuntimeException e) {
+			close();
+			throw new SerializerException(e);
+		}
+		return false;
+	}
+
+	private void add(HashMapVirtualObject object) throws IOException {
+		EClass eClass = object.eClass();
+		if (eClass.getEAnnotation("hidden") != null) {
+			return;
+		}
+		ArrowTable table = tables.get(eClass);
+		if (table == null) {
+			Files.createDirectories(tempDir);
+			table = new ArrowTable(packageMetaData, eClass, allocator, Files.createTempFile(tempDir, eClass.getName(), ".arrow"));
+			tables.put(eClass, table);
+		}
+		table.add(object);
+		if (table.getRows() >= MAX_BATCH_ROWS || table.getSize() >= MAX_BATCH_SIZE) {
+			table.writeBatch();
+		}
+		// There can be many tables, so the size of all open batches is only checked every now and then
+		if (++objectsSinceSizeCheck == 1024) {
+			objectsSinceSizeCheck = 0;
+			long totalSize = 0;
+			for (ArrowTable openTable : tables.values()) {
+				totalSize += openTable.getSize();
+			}
+			if (totalSize > MAX_TOTAL_SIZE) {
+				for (ArrowTable openTable : tables.values()) {
+					if (openTable.getRows() > 0) {
+						openTable.writeBatch();
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Copies the next part of a table file into the zip, or finishes the zip when all tables have been copied
+	 */
+	private void archive() throws IOException {
+		if (archivingInputStream == null) {
+			if (tablesToArchive.hasNext()) {
+				archivingTable = tablesToArchive.next();
+				zipOutputStream.putNextEntry(archivingTable.createZipEntry());
+				archivingInputStream = Files.newInputStream(archivingTable.getFile());
+			} else {
+				zipOutputStream.finish();
+				close();
+				mode = Mode.DONE;
+			}
+			return;
+		}
+		int read = archivingInputStream.read(copyBuffer);
+		if (read == -1) {
+			archivingInputStream.close();
+			archivingInputStream = null;
+			zipOutputStream.closeEntry();
+			Files.delete(archivingTable.getFile());
+		} else {
+			zipOutputStream.write(copyBuffer, 0, read);
+		}
+	}
+
+	/**
+	 * Releases the memory of the batches and removes the temporary files that are left
+	 */
+	private void close() {
+		try {
+			if (archivingInputStream != null) {
+				archivingInputStream.close();
+				archivingInputStream = null;
+			}
+			for (ArrowTable table : tables.values()) {
+				table.close();
+				Files.deleteIfExists(table.getFile());
+			}
+			tables.clear();
+			allocator.close();
+		} catch (IOException | RuntimeException e) {
+			LOGGER.error("", e);
+		}
+	}
+
+	/**
+	 * The zip is written to the stream that is passed to write, which does not have to be the same stream every time
+	 */
+	private static class CurrentOutputStream extends OutputStream {
+		private OutputStream outputStream;
+
+		void setOutputStream(OutputStream outputStream) {
+			this.outputStream = outputStream;
+		}
+
+		@Override
+		public void write(int b) throws IOException {
+			outputStream.write(b);
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException {
+			outputStream.write(b, off, len);
+		}
+
+		@Override
+		public void flush() throws IOException {
+			outputStream.flush();
+		}
+	}
+}
@@ -0,0 +1,361 @@
+package org.bimserver.serializers.columnar;
+
+/******************************************************************************
+ * Copyright (C) 2009-2019  BIMserver.org
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see {@literal<http://www.gnu.org/licenses/>}.
+ *****************************************************************************/
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+import java.util.zip.ZipEntry;
+
+import org.apache.arrow.compression.CommonsCompressionFactory;
+import org.apache.arrow.memory.BufferAllocator;
+import org.apache.arrow.vector.FieldVector;
+import org.apache.arrow.vector.VectorSchemaRoot;
+import org.apache.arrow.vector.complex.ListVector;
+import org.apache.arrow.vector.compression.CompressionUtil.CodecType;
+import org.apache.arrow.vector.ipc.ArrowFileWriter;
+import org.apache.arrow.vector.ipc.message.IpcOption;
+import org.apache.arrow.vector.types.pojo.Field;
+import org.apache.arrow.vector.types.pojo.Schema;
+import org.apache.commons.codec.binary.Base64;
+import org.bimserver.emf.PackageMetaData;
+import org.bimserver.shared.HashMapVirtualObject;
+import org.bimserver.shared.HashMapWrappedVirtualObject;
+import org.eclipse.emf.ecore.EAttribute;
+import org.eclipse.emf.ecore.EClass;
+import org.eclipse.emf.ecore.EClassifier;
+import org.eclipse.emf.ecore.EStructuralFeature;
+import org.eclipse.emf.ecore.EcorePackage;
+
+import com.fasterxml.jackson.core.io.JsonStringEncoder;
+
+/**
+ * The objects of one EClass, written to a temporary Arrow IPC file with one column per feature. Rows are collected in the vectors of
+ * a VectorSchemaRoot and written as a record batch by writeBatch, so only one batch per table is in memory.
+ *
+ * The file is written sequentially, so its CRC is computed along the way and it can be stored in the zip without reading it twice.
+ */
+class ArrowTable implements Closeable {
+	static final String SCHEMA_METADATA = "bimserver.schema";
+	static final String TABLE_METADATA = "bimserver.table";
+	private static final int FIRST_FEATURE_COLUMN = 3;
+
+	private final EClass eClass;
+	private final Path file;
+	private final int[] featureIndices;
+	private final EStructuralFeature[] features;
+	private final boolean[] json;
+	private final ArrowColumnType[] types;
+	private final FieldVector[] vectors;
+	private final CRC32 crc = new CRC32();
+	private final StringBuilder stringBuilder = new StringBuilder();
+	private BufferAllocator allocator;
+	private VectorSchemaRoot root;
+	private ArrowFileWriter writer;
+	private int rows;
+	private long size;
+
+	ArrowTable(PackageMetaData packageMetaData, EClass eClass, BufferAllocator parentAllocator, Path file) throws IOException {
+		this.eClass = eClass;
+		this.file = file;
+		List<EStructuralFeature> allFeatures = eClass.getEAllStructuralFeatures();
+		List<Integer> indices = new ArrayList<>();
+		for (int index = 0; index < allFeatures.size(); index++) {
+			EStructuralFeature feature = allFeatures.get(index);
+			if (feature.getEAnnotation("nolazyload") == null && feature.getEAnnotation("hidden") == null) {
+				indices.add(index);
+			}
+		}
+		featureIndices = new int[indices.size()];
+		features = new EStructuralFeature[indices.size()];
+		json = new boolean[indices.size()];
+		types = new ArrowColumnType[FIRST_FEATURE_COLUMN + indices.size()];
+		List<Field> fields = new ArrayList<>(types.length);
+		types[0] = ArrowColumnType.OID;
+		types[1] = ArrowColumnType.INT32;
+		types[2] = ArrowColumnType.UUID;
+		fields.add(ArrowColumnType.OID.createField("_oid", false));
+		fields.add(ArrowColumnType.INT32.createField("_rid", false));
+		fields.add(ArrowColumnType.UUID.createField("_uuid", false));
+		for (int i = 0; i < indices.size(); i++) {
+			EStructuralFeature feature = allFeatures.get(indices.get(i));
+			featureIndices[i] = indices.get(i);
+			features[i] = feature;
+			ArrowColumnType type;
+			if (feature instanceof EAttribute) {
+				type = getType(feature.getEType());
+			} else {
+				json[i] = canHoldEmbeddedValues(packageMetaData, feature);
+				type = json[i] ? ArrowColumnType.JSON : ArrowColumnType.OID;
+			}
+			types[FIRST_FEATURE_COLUMN + i] = type;
+			fields.add(type.createField(feature.getName(), feature.isMany()));
+		}
+		Map<String, String> metaData = new HashMap<>();
+		metaData.put(SCHEMA_METADATA, packageMetaData.getEPackage().getName());
+		metaData.put(TABLE_METADATA, eClass.getName());
+		try {
+			allocator = parentAllocator.newChildAllocator(eClass.getName(), 0, Long.MAX_VALUE);
+			root = VectorSchemaRoot.create(new Schema(fields, metaData), allocator);
+			vectors = root.getFieldVectors().toArray(new FieldVector[types.length]);
+			writer = new ArrowFileWriter(root, null, Channels.newChannel(new CheckedOutputStream(new BufferedOutputStream(Files.newOutputStream(file)), crc)), Collections.<String, String>emptyMap(), IpcOption.DEFAULT, CommonsCompressionFactory.INSTANCE, CodecType.ZSTD);
+			writer.start();
+		} catch (IOException | RuntimeException e) {
+			close();
+			throw e;
+		}
+	}
+
+	private static ArrowColumnType getType(EClassifier type) {
+		EcorePackage ecore = EcorePackage.eINSTANCE;
+		if (type == ecore.getEInt() || type == ecore.getEIntegerObject()) {
+			return ArrowColumnType.INT32;
+		} else if (type == ecore.getEShort() || type == ecore.getEShortObject()) {
+			return ArrowColumnType.INT16;
+		} else if (type == ecore.getELong() || type == ecore.getELongObject()) {
+			return ArrowColumnType.INT64;
+		} else if (type == ecore.getEDouble() || type == ecore.getEDoubleObject()) {
+			return ArrowColumnType.FLOAT64;
+		} else if (type == ecore.getEFloat() || type == ecore.getEFloatObject()) {
+			return ArrowColumnType.FLOAT32;
+		} else if (type == ecore.getEBoolean() || type == ecore.getEBooleanObject()) {
+			return ArrowColumnType.BOOLEAN;
+		} else if (type == ecore.getEDate()) {
+			return ArrowColumnType.TIMESTAMP;
+		} else if (type == ecore.getEByteArray()) {
+			return ArrowColumnType.BINARY;
+		}
+		// Strings, and enums (including Tristate) as their literal
+		return ArrowColumnType.STRING;
+	}
+
+	private static boolean canHoldEmbeddedValues(PackageMetaData packageMetaData, EStructuralFeature feature) {
+		if (feature.getEAnnotation("twodimensionalarray") != null || feature.getEAnnotation("dbembed") != null) {
+			return true;
+		}
+		if (feature.getEType().getEPackage() != packageMetaData.getEPackage()) {
+			return false;
+		}
+		EClass type = (EClass) feature.getEType();
+		if (type.getEAnnotation("wrapped") != null) {
+			return true;
+		}
+		Set<EClass> subClasses = packageMetaData.getAllSubClasses(type);
+		if (subClasses != null) {
+			for (EClass subClass : subClasses) {
+				if (subClass.getEAnnotation("wrapped") != null) {
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+
+	EClass getEClass() {
+		return eClass;
+	}
+
+	int getRows() {
+		return rows;
+	}
+
+	/**
+	 * @return An estimate of the number of bytes of the values in the current batch. The allocated memory is no measure for this, the
+	 *         vectors keep their capacity after a batch has been written.
+	 */
+	long getSize() {
+		return size;
+	}
+
+	void add(HashMapVirtualObject object) {
+		set(0, object.getOid());
+		set(1, object.getRid());
+		set(2, object.getUuid());
+		for (int i = 0; i < features.length; i++) {
+			Object value = object.eGet(featureIndices[i]);
+			if (value != null && json[i]) {
+				value = features[i].isMany() ? toJsonList((List<?>) value) : toJson(value);
+			}
+			set(FIRST_FEATURE_COLUMN + i, value);
+		}
+		rows++;
+	}
+
+	/**
+	 * Values that can not be represented by the type of the column are set as null
+	 */
+	private void set(int column, Object value) {
+		FieldVector vector = vectors[column];
+		if (vector instanceof ListVector) {
+			ListVector listVector = (ListVector) vector;
+			size += 4;
+			if (!(value instanceof List)) {
+				listVector.setNull(rows);
+				// setNull fills the offsets from the last value that was set, but does not move it, which makes a column of nulls quadratic
+				listVector.setLastSet(rows);
+				return;
+			}
+			List<?> list = (List<?>) value;
+			FieldVector elements = listVector.getDataVector();
+			int offset = listVector.startNewValue(rows);
+			for (int i = 0; i < list.size(); i++) {
+				types[column].setOrNull(elements, offset + i, list.get(i));
+				size += types[column].getSize(list.get(i));
+			}
+			listVector.endValue(rows, list.size());
+		} else {
+			types[column].setOrNull(vector, rows, value);
+			size += types[column].getSize(value);
+		}
+	}
+
+	/**
+	 * Writes the current rows as a record batch and frees the vectors for the next batch
+	 */
+	void writeBatch() throws IOException {
+		root.setRowCount(rows);
+		writer.writeBatch();
+		root.clear();
+		rows = 0;
+		size = 0;
+	}
+
+	/**
+	 * Writes the last batch and the footer of the Arrow file
+	 */
+	void finish() throws IOException {
+		if (rows > 0) {
+			writeBatch();
+		}
+		writer.end();
+		close();
+	}
+
+	Path getFile() {
+		return file;
+	}
+
+	/**
+	 * @return An entry that stores the file as is, Arrow already compresses the buffers
+	 */
+	ZipEntry createZipEntry() throws IOException {
+		ZipEntry zipEntry = new ZipEntry(eClass.getName() + ".arrow");
+		zipEntry.setMethod(ZipEntry.STORED);
+		long size = Files.size(file);
+		zipEntry.setSize(size);
+		zipEntry.setCompressedSize(size);
+		zipEntry.setCrc(crc.getValue());
+		return zipEntry;
+	}
+
+	@Override
+	public void close() {
+		if (writer != null) {
+			writer.close();
+			writer = null;
+		}
+		if (root != null) {
+			root.close();
+			root = null;
+		}
+		if (allocator != null) {
+			allocator.close();
+			allocator = null;
+		}
+	}
+
+	private List<String> toJsonList(List<?> list) {
+		List<String> result = new ArrayList<>(list.size());
+		for (Object element : list) {
+			result.add(element == null ? null : toJson(element));
+		}
+		return result;
+	}
+
+	private String toJson(Object value) {
+		stringBuilder.setLength(0);
+		appendJson(value, true);
+		return stringBuilder.toString();
+	}
+
+	/**
+	 * @param reference Whether the value is the value of a reference, in which case a Long is an oid
+	 */
+	private void appendJson(Object value, boolean reference) {
+		StringBuilder sb = stringBuilder;
+		if (value == null) {
+			sb.append("null");
+		} else if (reference && value instanceof Long) {
+			sb.append("{\"_i\":").append((long) (Long) value).append('}');
+		} else if (value instanceof HashMapWrappedVirtualObject) {
+			HashMapWrappedVirtualObject wrappedObject = (HashMapWrappedVirtualObject) value;
+			sb.append("{\"_t\":\"").append(wrappedObject.eClass().getName()).append('"');
+			for (EStructuralFeature feature : wrappedObject.eClass().getEAllStructuralFeatures()) {
+				Object featureValue = wrappedObject.eGet(feature);
+				if (featureValue != null) {
+					sb.append(",\"").append(feature.getName()).append("\":");
+					appendJson(featureValue, !(feature instanceof EAttribute));
+				}
+			}
+			sb.append('}');
+		} else if (value instanceof HashMapVirtualObject) {
+			// Two dimensional arrays, the nested lists are written as arrays
+			HashMapVirtualObject nested = (HashMapVirtualObject) value;
+			EStructuralFeature listFeature = nested.eClass().getEStructuralFeature("List");
+			appendJson(nested.eGet(listFeature), !(listFeature instanceof EAttribute));
+		} else if (value instanceof List) {
+			sb.append('[');
+			boolean first = true;
+			for (Object element : (List<?>) value) {
+				if (!first) {
+					sb.append(',');
+				}
+				first = false;
+				appendJson(element, reference);
+			}
+			sb.append(']');
+		} else if (value instanceof Double || value instanceof Float) {
+			double doubleValue = ((Number) value).doubleValue();
+			if (Double.isNaN(doubleValue) || Double.isInfinite(doubleValue)) {
+				sb.append("null");
+			} else {
+				sb.append(value);
+			}
+		} else if (value instanceof Number || value instanceof Boolean) {
+			sb.append(value);
+		} else if (value instanceof Date) {
+			sb.append(((Date) value).getTime());
+		} else if (value instanceof byte[]) {
+			sb.append('"').append(Base64.encodeBase64String((byte[]) value)).append('"');
+		} else {
+			sb.append('"').append(JsonStringEncoder.getInstance().quoteAsString(value.toString())).append('"');
+		}
+	}
+}
@@ -0,0 +1,96 @@
+package org.bimserver.serializers.columnar;
+
+/******************************************************************************
+ * Copyright (C) 2009-2019  BIMserver.org
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see {@literal<http://www.gnu.org/licenses/>}.
+ *****************************************************************************/
+
+import java.nio.file.Path;
+import java.util.Set;
+
+import org.bimserver.emf.Schema;
+import org.bimserver.models.store.ObjectDefinition;
+import org.bimserver.models.store.ParameterDefinition;
+import org.bimserver.models.store.PrimitiveDefinition;
+import org.bimserver.models.store.PrimitiveEnum;
+import org.bimserver.models.store.StoreFactory;
+import org.bimserver.models.store.StringType;
+import org.bimserver.plugins.PluginConfiguration;
+import org.bimserver.plugins.PluginContext;
+import org.bimserver.plugins.serializers.StreamingSerializer;
+import org.bimserver.plugins.serializers.StreamingSerializerPlugin;
+import org.bimserver.shared.exceptions.PluginException;
+
+/**
+ * Serializer for analytical use, writes the objects as a zip with one Apache Arrow IPC file per type, see ArrowColumnarWriter.
+ * Partitioning is not supported because every table is a single file in the zip.
+ */
+public class ColumnarStreamingSerializerPlugin implements StreamingSerializerPlugin {
+
+	private Path tempDir;
+
+	@Override
+	public void init(PluginContext pluginContext, PluginConfiguration systemSettings) throws PluginException {
+		tempDir = pluginContext.getTempDir();
+	}
+
+	@Override
+	public StreamingSerializer createSerializer(PluginConfiguration pluginConfiguration) {
+		return new ColumnarStreamingSerializer(tempDir);
+	}
+
+	@Override
+	public Set<Schema> getSupportedSchemas() {
+		return Schema.asSet(Schema.IFC2X3TC1, Schema.IFC4);
+	}
+
+	@Override
+	public String getOutputFormat(Schema schema) {
+		return "COLUMNAR_ARROW_1_0";
+	}
+
+	@Override
+	public ObjectDefinition getUserSettingsDefinition() {
+		ObjectDefinition objectDefinition = StoreFactory.eINSTANCE.createObjectDefinition();
+
+		ParameterDefinition extensionParameter = StoreFactory.eINSTANCE.createParameterDefinition();
+		extensionParameter.setIdentifier(EXTENSION);
+		extensionParameter.setName(EXTENSION);
+		extensionParameter.setDescription("Extension of the downloaded file");
+		PrimitiveDefinition stringType = StoreFactory.eINSTANCE.createPrimitiveDefinition();
+		stringType.setType(PrimitiveEnum.STRING);
+		extensionParameter.setType(stringType);
+		StringType defaultExtensionValue = StoreFactory.eINSTANCE.createStringType();
+		defaultExtensionValue.setValue("zip");
+		extensionParameter.setDefaultValue(defaultExtensionValue);
+		objectDefinition.getParameters().add(extensionParameter);
+
+		ParameterDefinition contentTypeParameter = StoreFactory.eINSTANCE.createParameterDefinition();
+		contentTypeParameter.setIdentifier(CONTENT_TYPE);
+		contentTypeParameter.setName(CONTENT_TYPE);
+		contentTypeParameter.setDescription("Content-Type in the HTTP header of the downloaded file");
+		contentTypeParameter.setType(stringType);
+		StringType defaultContentTypeValue = StoreFactory.eINSTANCE.createStringType();
+		defaultContentTypeValue.setValue("application/zip");
+		contentTypeParameter.setDefaultValue(defaultContentTypeValue);
+		objectDefinition.getParameters().add(contentTypeParameter);
+		return objectDefinition;
+	}
+
+	@Override
+	public ObjectDefinition getSystemSettingsDefinition() {
+		return null;
+	}
+}
@@ -0,0 +1,62 @@
+package org.bimserver.modelcheckers;
+
+/******************************************************************************
+ * Copyright (C) 2009-2019  BIMserver.org
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see {@literal<http://www.gnu.org/licenses/>}.
+ *****************************************************************************/
+
+import org.bimserver.models.store.ModelCheckerResult;
+import org.bimserver.models.store.ModelCheckerResultHeader;
+import org.bimserver.models.store.ModelCheckerResultLine;
+import org.bimserver.models.store.ModelCheckerResultType;
+import org.bimserver.models.store.StoreFactory;
+
+/**
+ * Collects the objects that miss a required attribute. Only the first lines are kept, so a rule that fails for all objects of a large
+ * model does not produce a huge result.
+ */
+class MissingAttributes {
+	private static final int MAX_LINES = 1000;
+
+	private final ModelCheckerResult result = StoreFactory.eINSTANCE.createModelCheckerResult();
+	private int missing;
+
+	MissingAttributes() {
+		result.setValid(true);
+	}
+
+	void add(RequiredAttribute requiredAttribute, long oid) {
+		result.setValid(false);
+		if (++missing > MAX_LINES) {
+			return;
+		}
+		ModelCheckerResultLine line = StoreFactory.eINSTANCE.createModelCheckerResultLine();
+		line.setType(ModelCheckerResultType.ERROR);
+		line.setObjectId(oid);
+		line.setFieldOrClass(requiredAttribute.toString());
+		line.setValue("not set");
+		line.setShouldBe("set");
+		result.getItems().add(line);
+	}
+
+	ModelCheckerResult getResult() {
+		if (missing > MAX_LINES) {
+			ModelCheckerResultHeader header = StoreFactory.eINSTANCE.createModelCheckerResultHeader();
+			header.setText((missing - MAX_LINES) + " more objects miss required attributes");
+			result.getItems().add(header);
+		}
+		return result;
+	}
+}
@@ -0,0 +1,107 @@
+package org.bimserver.modelcheckers;
+
+/******************************************************************************
+ * Copyright (C) 2009-2019  BIMserver.org
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see {@literal<http://www.gnu.org/licenses/>}.
+ *****************************************************************************/
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.bimserver.emf.PackageMetaData;
+import org.bimserver.plugins.modelchecker.ModelCheckException;
+import org.eclipse.emf.ecore.EClass;
+import org.eclipse.emf.ecore.EClassifier;
+import org.eclipse.emf.ecore.EStructuralFeature;
+
+/**
+ * A rule of the RequiredAttributesModelChecker, all objects of a type (including subtypes) need to have a feature set
+ */
+class RequiredAttribute {
+	private static final Pattern RULE = Pattern.compile("([A-Za-z_][A-Za-z0-9_]*)\\.([A-Za-z_][A-Za-z0-9_]*)");
+
+	private final EClass eClass;
+	private final EStructuralFeature feature;
+
+	RequiredAttribute(EClass eClass, EStructuralFeature feature) {
+		this.eClass = eClass;
+		this.feature = feature;
+	}
+
+	EClass getEClass() {
+		return eClass;
+	}
+
+	EStructuralFeature getFeature() {
+		return feature;
+	}
+
+	/**
+	 * @param set Whether the object has the feature set, as returned by eIsSet
+	 * @param value The value of the feature, a feature that holds many values is only set when the list is not empty
+	 */
+	boolean isSet(boolean set, Object value) {
+		return set && value != null && !(value instanceof List && ((List<?>) value).isEmpty());
+	}
+
+	@Override
+	public String toString() {
+		return eClass.getName() + "." + feature.getName();
+	}
+
+	/**
+	 * Checks the syntax of the rules, the types and features are only known when the schema of the model is known
+	 * 
+	 * @return The "Type.feature" rules, without comments and empty lines
+	 */
+	static List<String[]> parse(String code) throws ModelCheckException {
+		List<String[]> rules = new ArrayList<>();
+		if (code == null) {
+			return rules;
+		}
+		String[] lines = code.split("\r?\n");
+		for (int i = 0; i < lines.length; i++) {
+			String line = lines[i].trim();
+			if (line.isEmpty() || line.startsWith("#")) {
+				continue;
+			}
+			Matcher matcher = RULE.matcher(line);
+			if (!matcher.matches()) {
+				throw new ModelCheckException("Line " + (i + 1) + ": \"" + line + "\" is not of the form Type.feature");
+			}
+			rules.add(new String[] { matcher.group(1), matcher.group(2) });
+		}
+		return rules;
+	}
+
+	static List<RequiredAttribute> parse(PackageMetaData packageMetaData, String code) throws ModelCheckException {
+		List<RequiredAttribute> requiredAttributes = new ArrayList<>();
+		for (String[] rule : parse(code)) {
+			EClassifier eClassifier = packageMetaData.getEPackage().getEClassifier(rule[0]);
+			if (!(eClassifier instanceof EClass)) {
+				throw new ModelCheckException("Type " + rule[0] + " not found in " + packageMetaData.getEPackage().getName());
+			}
+			EClass eClass = (EClass) eClassifier;
+			EStructuralFeature feature = eClass.getEStructuralFeature(rule[1]);
+			if (feature == null) {
+				throw new ModelCheckException("Feature " + rule[1] + " not found in " + eClass.getName());
+			}
+			requiredAttributes.add(new RequiredAttribute(eClass, feature));
+		}
+		return requiredAttributes;
+	}
+}
@@ -0,0 +1,68 @@
+package org.bimserver.modelcheckers;
+
+/******************************************************************************
+ * Copyright (C) 2009-2019  BIMserver.org
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see {@literal<http://www.gnu.org/licenses/>}.
+ *****************************************************************************/
+
+import java.util.List;
+
+import org.bimserver.emf.IdEObject;
+import org.bimserver.emf.IfcModelInterface;
+import org.bimserver.emf.PackageMetaData;
+import org.bimserver.models.store.ModelCheckerResult;
+import org.bimserver.plugins.modelchecker.ModelCheckException;
+import org.bimserver.plugins.modelchecker.ModelChecker;
+import org.bimserver.plugins.modelchecker.StreamingModelCheck;
+
+import com.google.common.base.Charsets;
+
+/**
+ * Checks that all objects of a type have a feature set, the code is one "Type.feature" rule per line, see README.md. The compiled code
+ * is the code itself, the types and features are looked up in the schema of the model that is checked.
+ */
+public class RequiredAttributesModelChecker implements ModelChecker {
+
+	@Override
+	public byte[] compile(String code) throws ModelCheckException {
+		RequiredAttribute.parse(code);
+		return (code == null ? "" : code).getBytes(Charsets.UTF_8);
+	}
+
+	@Override
+	public ModelCheckerResult check(IfcModelInterface model, byte[] compiledCode) throws ModelCheckException {
+		MissingAttributes missingAttributes = new MissingAttributes();
+		for (RequiredAttribute requiredAttribute : parse(model.getPackageMetaData(), compiledCode)) {
+			for (IdEObject object : model.getAllWithSubTypes(requiredAttribute.getEClass())) {
+				if (!requiredAttribute.isSet(object.eIsSet(requiredAttribute.getFeature()), object.eGet(requiredAttribute.getFeature()))) {
+					missingAttributes.add(requiredAttribute, object.getOid());
+				}
+			}
+		}
+		return missingAttributes.getResult();
+	}
+
+	@Override
+	public StreamingModelCheck createStreamingCheck(PackageMetaData packageMetaData, byte[] compiledCode) throws ModelCheckException {
+		return new RequiredAttributesStreamingCheck(parse(packageMetaData, compiledCode));
+	}
+
+	private List<RequiredAttribute> parse(PackageMetaData packageMetaData, byte[] compiledCode) throws ModelCheckException {
+		if (compiledCode == null) {
+			throw new ModelCheckException("No compiled code, the model checker has to be validated first");
+		}
+		return RequiredAttribute.parse(packageMetaData, new String(compiledCode, Charsets.UTF_8));
+	}
+}
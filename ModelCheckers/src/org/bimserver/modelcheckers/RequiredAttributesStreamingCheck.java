@@ -0,0 +1,71 @@
+package org.bimserver.modelcheckers;
+
+/******************************************************************************
+ * Copyright (C) 2009-2019  BIMserver.org
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see {@literal<http://www.gnu.org/licenses/>}.
+ *****************************************************************************/
+
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.bimserver.database.queries.om.Query;
+import org.bimserver.database.queries.om.QueryPart;
+import org.bimserver.models.store.ModelCheckerResult;
+import org.bimserver.plugins.modelchecker.StreamingModelCheck;
+import org.bimserver.shared.HashMapVirtualObject;
+import org.eclipse.emf.ecore.EClass;
+
+/**
+ * Checks the required attributes of the objects of a revision one by one. Only the objects of the types of the rules are needed, the
+ * features are read from the objects themselves, so the query has no includes.
+ */
+class RequiredAttributesStreamingCheck implements StreamingModelCheck {
+	private final List<RequiredAttribute> requiredAttributes;
+	private final MissingAttributes missingAttributes = new MissingAttributes();
+
+	RequiredAttributesStreamingCheck(List<RequiredAttribute> requiredAttributes) {
+		this.requiredAttributes = requiredAttributes;
+	}
+
+	@Override
+	public void addQueryParts(Query query) {
+		Set<EClass> eClasses = new LinkedHashSet<>();
+		for (RequiredAttribute requiredAttribute : requiredAttributes) {
+			eClasses.add(requiredAttribute.getEClass());
+		}
+		if (eClasses.isEmpty()) {
+			return;
+		}
+		QueryPart queryPart = query.createQueryPart();
+		for (EClass eClass : eClasses) {
+			queryPart.addType(eClass, true);
+		}
+	}
+
+	@Override
+	public void check(HashMapVirtualObject object) {
+		for (RequiredAttribute requiredAttribute : requiredAttributes) {
+			if (requiredAttribute.getEClass().isSuperTypeOf(object.eClass()) && !requiredAttribute.isSet(object.eIsSet(requiredAttribute.getFeature()), object.eGet(requiredAttribute.getFeature()))) {
+				missingAttributes.add(requiredAttribute, object.getOid());
+			}
+		}
+	}
+
+	@Override
+	public ModelCheckerResult getResult() {
+		return missingAttributes.getResult();
+	}
+}
@@ -35,6 +35,7 @@ public class SFile implements SDataBase
 	private java.lang.String filename;
 	private java.lang.String mime;
 	private long size;
+	private java.lang.String digest;
 
 	public long getOid() {
 		return this.oid;
@@ -82,6 +83,9 @@ public class SFile implements SDataBase
 		if (sField.getName().equals("size")) {
 			return getSize();
 		}
+		if (sField.getName().equals("digest")) {
+			return getDigest();
+		}
 		if (sField.getName().equals("oid")) {
 			return getOid();
 		}
@@ -111,6 +115,10 @@ public class SFile implements SDataBase
 			setSize((Long)val);
 			return;
 		}
+		if (sField.getName().equals("digest")) {
+			setDigest((String)val);
+			return;
+		}
 		if (sField.getName().equals("oid")) {
 			setOid((Long)val);
 			return;
@@ -158,6 +166,14 @@ public class SFile implements SDataBase
 		this.size = size;
 	}
 	
+	public java.lang.String getDigest() {
+		return digest;
+	}
+
+	public void setDigest(java.lang.String digest) {
+		this.digest = digest;
+	}
+	
 	@Override
 	public int hashCode() {
 		final int prime = 31;
@@ -34,6 +34,7 @@ public class SServerInfo implements SDataBase
 	private SServerState serverState;
 	private java.lang.String errorMessage;
 	private SVersion version;
+	private java.lang.String startupTimings;
 
 	public long getOid() {
 		return this.oid;
@@ -78,6 +79,9 @@ public class SServerInfo implements SDataBase
 		if (sField.getName().equals("version")) {
 			return getVersion();
 		}
+		if (sField.getName().equals("startupTimings")) {
+			return getStartupTimings();
+		}
 		if (sField.getName().equals("oid")) {
 			return getOid();
 		}
@@ -103,6 +107,10 @@ public class SServerInfo implements SDataBase
 			setVersion((SVersion)val);
 			return;
 		}
+		if (sField.getName().equals("startupTimings")) {
+			setStartupTimings((String)val);
+			return;
+		}
 		if (sField.getName().equals("oid")) {
 			setOid((Long)val);
 			return;
@@ -142,6 +150,14 @@ public class SServerInfo implements SDataBase
 		this.version = version;
 	}
 	
+	public java.lang.String getStartupTimings() {
+		return startupTimings;
+	}
+
+	public void setStartupTimings(java.lang.String startupTimings) {
+		this.startupTimings = startupTimings;
+	}
+	
 	
 	@Override
 	public int hashCode() {
@@ -48,6 +48,7 @@ import org.bimserver.emf.IdEObject;
  *   <li>{@link org.bimserver.models.store.File#getFilename <em>Filename</em>}</li>
  *   <li>{@link org.bimserver.models.store.File#getMime <em>Mime</em>}</li>
  *   <li>{@link org.bimserver.models.store.File#getSize <em>Size</em>}</li>
+ *   <li>{@link org.bimserver.models.store.File#getDigest <em>Digest</em>}</li>
  * </ul>
  *
  * @see org.bimserver.models.store.StorePackage#getFile()
@@ -160,4 +161,30 @@ public interface File extends IdEObject {
 	 */
 	void setSize(long value);
 
+	/**
+	 * Returns the value of the '<em><b>Digest</b></em>' attribute.
+	 * <!-- begin-user-doc -->
+	 * <p>
+	 * If the meaning of the '<em>Digest</em>' attribute isn't clear,
+	 * there really should be more of a description here...
+	 * </p>
+	 * <!-- end-user-doc -->
+	 * @return the value of the '<em>Digest</em>' attribute.
+	 * @see #setDigest(String)
+	 * @see org.bimserver.models.store.StorePackage#getFile_Digest()
+	 * @model
+	 * @generated
+	 */
+	String getDigest();
+
+	/**
+	 * Sets the value of the '{@link org.bimserver.models.store.File#getDigest <em>Digest</em>}' attribute.
+	 * <!-- begin-user-doc -->
+	 * <!-- end-user-doc -->
+	 * @param value the new value of the '<em>Digest</em>' attribute.
+	 * @see #getDigest()
+	 * @generated
+	 */
+	void setDigest(String value);
+
 } // File
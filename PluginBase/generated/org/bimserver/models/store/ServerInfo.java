@@ -47,6 +47,7 @@ import org.bimserver.emf.IdEObject;
  *   <li>{@link org.bimserver.models.store.ServerInfo#getServerState <em>Server State</em>}</li>
  *   <li>{@link org.bimserver.models.store.ServerInfo#getErrorMessage <em>Error Message</em>}</li>
  *   <li>{@link org.bimserver.models.store.ServerInfo#getVersion <em>Version</em>}</li>
+ *   <li>{@link org.bimserver.models.store.ServerInfo#getStartupTimings <em>Startup Timings</em>}</li>
  * </ul>
  *
  * @see org.bimserver.models.store.StorePackage#getServerInfo()
@@ -136,6 +137,32 @@ public interface ServerInfo extends IdEObject {
 	 */
 	void setVersion(Version value);
 
+	/**
+	 * Returns the value of the '<em><b>Startup Timings</b></em>' attribute.
+	 * <!-- begin-user-doc -->
+	 * <p>
+	 * If the meaning of the '<em>Startup Timings</em>' attribute isn't clear,
+	 * there really should be more of a description here...
+	 * </p>
+	 * <!-- end-user-doc -->
+	 * @return the value of the '<em>Startup Timings</em>' attribute.
+	 * @see #setStartupTimings(String)
+	 * @see org.bimserver.models.store.StorePackage#getServerInfo_StartupTimings()
+	 * @model
+	 * @generated
+	 */
+	String getStartupTimings();
+
+	/**
+	 * Sets the value of the '{@link org.bimserver.models.store.ServerInfo#getStartupTimings <em>Startup Timings</em>}' attribute.
+	 * <!-- begin-user-doc -->
+	 * <!-- end-user-doc -->
+	 * @param value the new value of the '<em>Startup Timings</em>' attribute.
+	 * @see #getStartupTimings()
+	 * @generated
+	 */
+	void setStartupTimings(String value);
+
 	/**
 	 * Returns the value of the '<em><b>Uuid</b></em>' attribute.
 	 * <!-- begin-user-doc -->
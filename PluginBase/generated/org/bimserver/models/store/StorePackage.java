@@ -3250,6 +3250,15 @@ public interface StorePackage extends EPackage {
 	 */
 	int SERVER_INFO__VERSION = 2;
 
+	/**
+	 * The feature id for the '<em><b>Startup Timings</b></em>' attribute.
+	 * <!-- begin-user-doc -->
+	 * <!-- end-user-doc -->
+	 * @generated
+	 * @ordered
+	 */
+	int SERVER_INFO__STARTUP_TIMINGS = 3;
+
 	/**
 	 * The number of structural features of the '<em>Server Info</em>' class.
 	 * <!-- begin-user-doc -->
@@ -3257,7 +3266,7 @@ public interface StorePackage extends EPackage {
 	 * @generated
 	 * @ordered
 	 */
-	int SERVER_INFO_FEATURE_COUNT = 3;
+	int SERVER_INFO_FEATURE_COUNT = 4;
 
 	/**
 	 * The meta object id for the '{@link org.bimserver.models.store.impl.VersionImpl <em>Version</em>}' class.
@@ -3396,6 +3405,15 @@ public interface StorePackage extends EPackage {
 	 */
 	int FILE__SIZE = 3;
 
+	/**
+	 * The feature id for the '<em><b>Digest</b></em>' attribute.
+	 * <!-- begin-user-doc -->
+	 * <!-- end-user-doc -->
+	 * @generated
+	 * @ordered
+	 */
+	int FILE__DIGEST = 4;
+
 	/**
 	 * The number of structural features of the '<em>File</em>' class.
 	 * <!-- begin-user-doc -->
@@ -3403,7 +3421,7 @@ public interface StorePackage extends EPackage {
 	 * @generated
 	 * @ordered
 	 */
-	int FILE_FEATURE_COUNT = 4;
+	int FILE_FEATURE_COUNT = 5;
 
 	/**
 	 * The meta object id for the '{@link org.bimserver.models.store.impl.ExtendedDataSchemaImpl <em>Extended Data Schema</em>}' class.
@@ -10739,6 +10757,17 @@ public interface StorePackage extends EPackage {
 	 */
 	EReference getServerInfo_Version();
 
+	/**
+	 * Returns the meta object for the attribute '{@link org.bimserver.models.store.ServerInfo#getStartupTimings <em>Startup Timings</em>}'.
+	 * <!-- begin-user-doc -->
+	 * <!-- end-user-doc -->
+	 * @return the meta object for the attribute '<em>Startup Timings</em>'.
+	 * @see org.bimserver.models.store.ServerInfo#getStartupTimings()
+	 * @see #getServerInfo()
+	 * @generated
+	 */
+	EAttribute getServerInfo_StartupTimings();
+
 	/**
 	 * Returns the meta object for class '{@link org.bimserver.models.store.Version <em>Version</em>}'.
 	 * <!-- begin-user-doc -->
@@ -10891,6 +10920,17 @@ public interface StorePackage extends EPackage {
 	 */
 	EAttribute getFile_Size();
 
+	/**
+	 * Returns the meta object for the attribute '{@link org.bimserver.models.store.File#getDigest <em>Digest</em>}'.
+	 * <!-- begin-user-doc -->
+	 * <!-- end-user-doc -->
+	 * @return the meta object for the attribute '<em>Digest</em>'.
+	 * @see org.bimserver.models.store.File#getDigest()
+	 * @see #getFile()
+	 * @generated
+	 */
+	EAttribute getFile_Digest();
+
 	/**
 	 * Returns the meta object for class '{@link org.bimserver.models.store.ExtendedDataSchema <em>Extended Data Schema</em>}'.
 	 * <!-- begin-user-doc -->
@@ -17090,6 +17130,14 @@ public interface StorePackage extends EPackage {
 		 */
 		EReference SERVER_INFO__VERSION = eINSTANCE.getServerInfo_Version();
 
+		/**
+		 * The meta object literal for the '<em><b>Startup Timings</b></em>' attribute feature.
+		 * <!-- begin-user-doc -->
+		 * <!-- end-user-doc -->
+		 * @generated
+		 */
+		EAttribute SERVER_INFO__STARTUP_TIMINGS = eINSTANCE.getServerInfo_StartupTimings();
+
 		/**
 		 * The meta object literal for the '{@link org.bimserver.models.store.impl.VersionImpl <em>Version</em>}' class.
 		 * <!-- begin-user-doc -->
@@ -17206,6 +17254,14 @@ public interface StorePackage extends EPackage {
 		 */
 		EAttribute FILE__SIZE = eINSTANCE.getFile_Size();
 
+		/**
+		 * The meta object literal for the '<em><b>Digest</b></em>' attribute feature.
+		 * <!-- begin-user-doc -->
+		 * <!-- end-user-doc -->
+		 * @generated
+		 */
+		EAttribute FILE__DIGEST = eINSTANCE.getFile_Digest();
+
 		/**
 		 * The meta object literal for the '{@link org.bimserver.models.store.impl.ExtendedDataSchemaImpl <em>Extended Data Schema</em>}' class.
 		 * <!-- begin-user-doc -->
@@ -50,6 +50,7 @@ import org.eclipse.emf.ecore.EClass;
  *   <li>{@link org.bimserver.models.store.impl.FileImpl#getFilename <em>Filename</em>}</li>
  *   <li>{@link org.bimserver.models.store.impl.FileImpl#getMime <em>Mime</em>}</li>
  *   <li>{@link org.bimserver.models.store.impl.FileImpl#getSize <em>Size</em>}</li>
+ *   <li>{@link org.bimserver.models.store.impl.FileImpl#getDigest <em>Digest</em>}</li>
  * </ul>
  *
  * @generated
@@ -164,4 +165,24 @@ public class FileImpl extends IdEObjectImpl implements File {
 		eSet(StorePackage.Literals.FILE__SIZE, newSize);
 	}
 
+	/**
+	 * <!-- begin-user-doc -->
+	 * <!-- end-user-doc -->
+	 * @generated
+	 */
+	@Override
+	public String getDigest() {
+		return (String) eGet(StorePackage.Literals.FILE__DIGEST, true);
+	}
+
+	/**
+	 * <!-- begin-user-doc -->
+	 * <!-- end-user-doc -->
+	 * @generated
+	 */
+	@Override
+	public void setDigest(String newDigest) {
+		eSet(StorePackage.Literals.FILE__DIGEST, newDigest);
+	}
+
 } //FileImpl
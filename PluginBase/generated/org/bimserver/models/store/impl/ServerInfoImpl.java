@@ -51,6 +51,7 @@ import org.eclipse.emf.ecore.EClass;
  *   <li>{@link org.bimserver.models.store.impl.ServerInfoImpl#getServerState <em>Server State</em>}</li>
  *   <li>{@link org.bimserver.models.store.impl.ServerInfoImpl#getErrorMessage <em>Error Message</em>}</li>
  *   <li>{@link org.bimserver.models.store.impl.ServerInfoImpl#getVersion <em>Version</em>}</li>
+ *   <li>{@link org.bimserver.models.store.impl.ServerInfoImpl#getStartupTimings <em>Startup Timings</em>}</li>
  * </ul>
  *
  * @generated
@@ -145,6 +146,26 @@ public class ServerInfoImpl extends IdEObjectImpl implements ServerInfo {
 		eSet(StorePackage.Literals.SERVER_INFO__VERSION, newVersion);
 	}
 
+	/**
+	 * <!-- begin-user-doc -->
+	 * <!-- end-user-doc -->
+	 * @generated
+	 */
+	@Override
+	public String getStartupTimings() {
+		return (String) eGet(StorePackage.Literals.SERVER_INFO__STARTUP_TIMINGS, true);
+	}
+
+	/**
+	 * <!-- begin-user-doc -->
+	 * <!-- end-user-doc -->
+	 * @generated
+	 */
+	@Override
+	public void setStartupTimings(String newStartupTimings) {
+		eSet(StorePackage.Literals.SERVER_INFO__STARTUP_TIMINGS, newStartupTimings);
+	}
+
 	/**
 	 * <!-- begin-user-doc -->
 	 * <!-- end-user-doc -->
@@ -3926,6 +3926,16 @@ public class StorePackageImpl extends EPackageImpl implements StorePackage {
 		return (EReference) getServerInfo().getEStructuralFeatures().get(2);
 	}
 
+	/**
+	 * <!-- begin-user-doc -->
+	 * <!-- end-user-doc -->
+	 * @generated
+	 */
+	@Override
+	public EAttribute getServerInfo_StartupTimings() {
+		return (EAttribute) getServerInfo().getEStructuralFeatures().get(3);
+	}
+
 	/**
 	 * <!-- begin-user-doc -->
 	 * <!-- end-user-doc -->
@@ -4072,6 +4082,16 @@ public class StorePackageImpl extends EPackageImpl implements StorePackage {
 		return (EAttribute) getFile().getEStructuralFeatures().get(3);
 	}
 
+	/**
+	 * <!-- begin-user-doc -->
+	 * <!-- end-user-doc -->
+	 * @generated
+	 */
+	@Override
+	public EAttribute getFile_Digest() {
+		return (EAttribute) getFile().getEStructuralFeatures().get(4);
+	}
+
 	/**
 	 * <!-- begin-user-doc -->
 	 * <!-- end-user-doc -->
@@ -42,6 +42,10 @@ public class AdminInterfaceAdaptor implements org.bimserver.shared.interfaces.Ad
 		return null;
 	}
 	
+	public java.lang.String getDatabaseCacheStatistics() throws UserException, ServerException {
+		return null;
+	}
+	
 	public org.bimserver.interfaces.objects.SDatabaseInformation getDatabaseInformation() throws UserException, ServerException {
 		return null;
 	}
@@ -62,6 +66,10 @@ public class AdminInterfaceAdaptor implements org.bimserver.shared.interfaces.Ad
 		return null;
 	}
 	
+	public java.lang.String getMemoryReservations() throws UserException, ServerException {
+		return null;
+	}
+	
 	public org.bimserver.interfaces.objects.SMetrics getMetrics() throws UserException, ServerException {
 		return null;
 	}
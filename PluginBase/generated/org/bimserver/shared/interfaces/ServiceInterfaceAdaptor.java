@@ -153,6 +153,14 @@ public class ServiceInterfaceAdaptor implements org.bimserver.shared.interfaces.
 		return null;
 	}
 	
+	public java.lang.String explainQuery(java.util.Set<java.lang.Long> roids, java.lang.String query) throws UserException, ServerException {
+		return null;
+	}
+	
+	public java.lang.String getAggregatedStatistics(java.util.Set<java.lang.Long> roids, java.lang.String groupBy) throws UserException, ServerException {
+		return null;
+	}
+	
 	public java.util.List<org.bimserver.interfaces.objects.SUser> getAllAuthorizedUsersOfProject(java.lang.Long poid) throws UserException, ServerException {
 		return null;
 	}
@@ -59,6 +59,11 @@ public class AsyncAdminInterface {
 		void error(Throwable e);
 	}
 	
+	public interface GetDatabaseCacheStatisticsCallback {
+		void success(java.lang.String result);
+		void error(Throwable e);
+	}
+	
 	public interface GetDatabaseInformationCallback {
 		void success(org.bimserver.interfaces.objects.SDatabaseInformation result);
 		void error(Throwable e);
@@ -84,6 +89,11 @@ public class AsyncAdminInterface {
 		void error(Throwable e);
 	}
 	
+	public interface GetMemoryReservationsCallback {
+		void success(java.lang.String result);
+		void error(Throwable e);
+	}
+	
 	public interface GetMetricsCallback {
 		void success(org.bimserver.interfaces.objects.SMetrics result);
 		void error(Throwable e);
@@ -226,6 +236,18 @@ public class AsyncAdminInterface {
 		});
 	}
 	
+	public void getDatabaseCacheStatistics(final GetDatabaseCacheStatisticsCallback callback) {
+		executorService.submit(new Runnable(){
+			public void run(){
+				try {
+					callback.success(syncService.getDatabaseCacheStatistics());
+				} catch (Throwable e) {
+					callback.error(e);
+				}
+			}
+		});
+	}
+	
 	public void getDatabaseInformation(final GetDatabaseInformationCallback callback) {
 		executorService.submit(new Runnable(){
 			public void run(){
@@ -286,6 +308,18 @@ public class AsyncAdminInterface {
 		});
 	}
 	
+	public void getMemoryReservations(final GetMemoryReservationsCallback callback) {
+		executorService.submit(new Runnable(){
+			public void run(){
+				try {
+					callback.success(syncService.getMemoryReservations());
+				} catch (Throwable e) {
+					callback.error(e);
+				}
+			}
+		});
+	}
+	
 	public void getMetrics(final GetMetricsCallback callback) {
 		executorService.submit(new Runnable(){
 			public void run(){
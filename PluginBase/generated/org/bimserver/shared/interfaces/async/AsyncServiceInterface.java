@@ -204,6 +204,16 @@ public class AsyncServiceInterface {
 		void error(Throwable e);
 	}
 	
+	public interface ExplainQueryCallback {
+		void success(java.lang.String result);
+		void error(Throwable e);
+	}
+	
+	public interface GetAggregatedStatisticsCallback {
+		void success(java.lang.String result);
+		void error(Throwable e);
+	}
+	
 	public interface GetAllAuthorizedUsersOfProjectCallback {
 		void success(java.util.List<org.bimserver.interfaces.objects.SUser> result);
 		void error(Throwable e);
@@ -1209,6 +1219,30 @@ public class AsyncServiceInterface {
 		});
 	}
 	
+	public void explainQuery(final java.util.Set<java.lang.Long> roids, final java.lang.String query, final ExplainQueryCallback callback) {
+		executorService.submit(new Runnable(){
+			public void run(){
+				try {
+					callback.success(syncService.explainQuery(roids, query));
+				} catch (Throwable e) {
+					callback.error(e);
+				}
+			}
+		});
+	}
+	
+	public void getAggregatedStatistics(final java.util.Set<java.lang.Long> roids, final java.lang.String groupBy, final GetAggregatedStatisticsCallback callback) {
+		executorService.submit(new Runnable(){
+			public void run(){
+				try {
+					callback.success(syncService.getAggregatedStatistics(roids, groupBy));
+				} catch (Throwable e) {
+					callback.error(e);
+				}
+			}
+		});
+	}
+	
 	public void getAllAuthorizedUsersOfProject(final java.lang.Long poid, final GetAllAuthorizedUsersOfProjectCallback callback) {
 		executorService.submit(new Runnable(){
 			public void run(){
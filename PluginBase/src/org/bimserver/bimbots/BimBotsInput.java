@@ -19,11 +19,13 @@ package org.bimserver.bimbots;
 
 import org.bimserver.emf.IfcModelInterface;
 import org.bimserver.plugins.SchemaName;
+import org.bimserver.plugins.serializers.ObjectProvider;
 
 public class BimBotsInput {
 	private String schemaName;
 	private byte[] data;
 	private IfcModelInterface model;
+	private ObjectProvider objectProvider;
 
 	public BimBotsInput(SchemaName schemaName, byte[] data) {
 		this.schemaName = schemaName.name();
@@ -54,4 +56,16 @@ public class BimBotsInput {
 	public void setIfcModel(IfcModelInterface model) {
 		this.model = model;
 	}
+
+	/**
+	 * @return The objects of the input, only set for services that return true for BimBotsServiceInterface.supportsObjectProvider(). When
+	 *         set, getIfcModel() can return null
+	 */
+	public ObjectProvider getObjectProvider() {
+		return objectProvider;
+	}
+
+	public void setObjectProvider(ObjectProvider objectProvider) {
+		this.objectProvider = objectProvider;
+	}
 }
@@ -86,4 +86,15 @@ public interface BimBotsServiceInterface {
 	 *         submitted)
 	 */
 	Query getPreloadQuery(PackageMetaData packageMetaData);
+
+	/**
+	 * @return Whether this BIMbot can read its input from
+	 *         BimBotsInput.getObjectProvider() instead of getIfcModel(). The
+	 *         objects are then streamed to the BIMbot without ever building an
+	 *         EMF model of the input, which is a lot less memory intensive for
+	 *         large models
+	 */
+	default boolean supportsObjectProvider() {
+		return false;
+	}
 }
@@ -19,6 +19,8 @@ package org.bimserver.database.queries.om;
 
 import java.io.IOException;
 import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
@@ -59,6 +61,9 @@ public class JsonQueryObjectModelConverter {
 		ObjectNode definesNode = OBJECT_MAPPER.createObjectNode();
 		queryNode.set("defines", definesNode);
 		queryNode.put("doublebuffer", query.isDoubleBuffer());
+		if (query.isExplain()) {
+			queryNode.put("explain", true);
+		}
 		for (String key : defines.keySet()) {
 			Include include = defines.get(key);
 			definesNode.set(key, dumpInclude(include));
@@ -240,6 +245,34 @@ public class JsonQueryObjectModelConverter {
 		return includeNode;
 	}
 	
+	/**
+	 * A normalised form of a JSON query, the keys of all objects are sorted, so queries that only differ in key order or whitespace
+	 * result in the same string. Arrays keep their order.
+	 */
+	public static String toCanonicalString(JsonNode query) {
+		return canonicalize(query).toString();
+	}
+
+	private static JsonNode canonicalize(JsonNode node) {
+		if (node.isObject()) {
+			ObjectNode result = OBJECT_MAPPER.createObjectNode();
+			List<String> fieldNames = new ArrayList<>();
+			node.fieldNames().forEachRemaining(fieldNames::add);
+			Collections.sort(fieldNames);
+			for (String fieldName : fieldNames) {
+				result.set(fieldName, canonicalize(node.get(fieldName)));
+			}
+			return result;
+		} else if (node.isArray()) {
+			ArrayNode result = OBJECT_MAPPER.createArrayNode();
+			for (JsonNode element : node) {
+				result.add(canonicalize(element));
+			}
+			return result;
+		}
+		return node;
+	}
+
 	public Query parseJson(String queryName, ObjectNode fullQuery) throws QueryException {
 		Query query = new Query(queryName, packageMetaData);
 		query.setOriginalJson(fullQuery);
@@ -252,6 +285,7 @@ public class JsonQueryObjectModelConverter {
 		}
 		query.setVersion(version);
 		query.setDoubleBuffer(fullQuery.has("doublebuffer") ? fullQuery.get("doublebuffer").asBoolean() : true);
+		query.setExplain(fullQuery.has("explain") && fullQuery.get("explain").asBoolean());
 		if (fullQuery.has("defines")) {
 			JsonNode defines = fullQuery.get("defines");
 			if (defines instanceof ObjectNode) {
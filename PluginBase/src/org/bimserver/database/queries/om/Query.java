@@ -33,6 +33,7 @@ public class Query {
 	private String name;
 	private PackageMetaData packageMetaData;
 	private boolean doubleBuffer;
+	private boolean explain;
 	private int version;
 	private ObjectNode geometrySettings;
 	private ObjectNode originalJson;
@@ -112,6 +113,17 @@ public class Query {
 		return doubleBuffer;
 	}
 
+	/**
+	 * When set, the access paths chosen by the query planner are logged when the query has been fully read
+	 */
+	public void setExplain(boolean explain) {
+		this.explain = explain;
+	}
+	
+	public boolean isExplain() {
+		return explain;
+	}
+
 	public void setVersion(int version) {
 		this.version = version;
 	}
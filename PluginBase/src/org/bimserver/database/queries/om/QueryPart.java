@@ -44,6 +44,8 @@ public class QueryPart extends PartOfQuery implements CanInclude {
 	private List<Reference> references;
 	private Tiles tiles;
 	private int minimumReuseThreshold = -1;
+	private long oidRangeStart = -1;
+	private long oidRangeEnd = -1;
 	private Set<String> includesToResolve;
 	
 	public QueryPart(PackageMetaData packageMetaData) {
@@ -304,6 +306,27 @@ public class QueryPart extends PartOfQuery implements CanInclude {
 		return minimumReuseThreshold;
 	}
 
+	/**
+	 * Limits the type scans of this part to the objects with start <= oid < end. Not part of the JSON query language, this is used to
+	 * split a query in partitions that can be read in parallel.
+	 */
+	public void setOidRange(long start, long end) {
+		this.oidRangeStart = start;
+		this.oidRangeEnd = end;
+	}
+
+	public boolean hasOidRange() {
+		return oidRangeStart != -1;
+	}
+
+	public long getOidRangeStart() {
+		return oidRangeStart;
+	}
+
+	public long getOidRangeEnd() {
+		return oidRangeEnd;
+	}
+
 
 	@Override
 	public void addInclude(String name) {
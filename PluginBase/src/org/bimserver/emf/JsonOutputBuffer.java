@@ -0,0 +1,238 @@
+package org.bimserver.emf;
+
+/******************************************************************************
+ * Copyright (C) 2009-2019  BIMserver.org
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see {@literal<http://www.gnu.org/licenses/>}.
+ *****************************************************************************/
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.UUID;
+
+/**
+ * Buffer for the JSON serializers, strings are encoded to UTF-8 and numbers are formatted directly into the buffer, so no intermediate
+ * Strings or byte arrays are created. The buffer is flushed to the OutputStream explicitly, and when it is full.
+ */
+class JsonOutputBuffer {
+	private static final byte[] HEX = "0123456789abcdef".getBytes();
+	private static final byte[] MIN_LONG = Long.toString(Long.MIN_VALUE).getBytes();
+	private final byte[] buffer;
+	private final byte[] digits = new byte[20];
+	private int position;
+	private OutputStream outputStream;
+
+	JsonOutputBuffer(int size) {
+		this.buffer = new byte[size];
+	}
+
+	void setOutputStream(OutputStream outputStream) {
+		this.outputStream = outputStream;
+	}
+
+	void flush() throws IOException {
+		if (position > 0) {
+			outputStream.write(buffer, 0, position);
+			position = 0;
+		}
+	}
+
+	private void ensure(int length) throws IOException {
+		if (position + length > buffer.length) {
+			flush();
+		}
+	}
+
+	void write(byte b) throws IOException {
+		ensure(1);
+		buffer[position++] = b;
+	}
+
+	void write(byte[] bytes) throws IOException {
+		if (bytes.length > buffer.length) {
+			flush();
+			outputStream.write(bytes);
+			return;
+		}
+		ensure(bytes.length);
+		System.arraycopy(bytes, 0, buffer, position, bytes.length);
+		position += bytes.length;
+	}
+
+	/**
+	 * Only for strings that are known to be ASCII (class names, formatted numbers)
+	 */
+	void writeAscii(String string) throws IOException {
+		int length = string.length();
+		if (length > buffer.length) {
+			flush();
+			outputStream.write(string.getBytes());
+			return;
+		}
+		ensure(length);
+		for (int i = 0; i < length; i++) {
+			buffer[position++] = (byte) string.charAt(i);
+		}
+	}
+
+	void writeLong(long value) throws IOException {
+		if (value == Long.MIN_VALUE) {
+			write(MIN_LONG);
+			return;
+		}
+		ensure(20);
+		if (value < 0) {
+			buffer[position++] = '-';
+			value = -value;
+		}
+		int nrDigits = 0;
+		do {
+			digits[nrDigits++] = (byte) ('0' + (value % 10));
+			value /= 10;
+		} while (value != 0);
+		while (nrDigits > 0) {
+			buffer[position++] = digits[--nrDigits];
+		}
+	}
+
+	/**
+	 * Same format as UUID.toString
+	 */
+	void writeUuid(UUID uuid) throws IOException {
+		ensure(36);
+		long msb = uuid.getMostSignificantBits();
+		long lsb = uuid.getLeastSignificantBits();
+		writeHex(msb >>> 32, 8);
+		buffer[position++] = '-';
+		writeHex(msb >>> 16, 4);
+		buffer[position++] = '-';
+		writeHex(msb, 4);
+		buffer[position++] = '-';
+		writeHex(lsb >>> 48, 4);
+		buffer[position++] = '-';
+		writeHex(lsb, 12);
+	}
+
+	private void writeHex(long value, int nrDigits) {
+		for (int i = nrDigits - 1; i >= 0; i--) {
+			buffer[position++] = HEX[(int) (value >>> (i * 4)) & 0xF];
+		}
+	}
+
+	/**
+	 * Writes the string encoded as UTF-8, unpaired surrogates are written as '?' (the same as String.getBytes does)
+	 */
+	void writeUtf8(String string) throws IOException {
+		int length = string.length();
+		for (int i = 0; i < length; i++) {
+			char c = string.charAt(i);
+			if (c < 0x80) {
+				ensure(1);
+				buffer[position++] = (byte) c;
+			} else {
+				i = writeNonAscii(string, i, c);
+			}
+		}
+	}
+
+	private int writeNonAscii(String string, int i, char c) throws IOException {
+		ensure(4);
+		if (c < 0x800) {
+			buffer[position++] = (byte) (0xC0 | (c >> 6));
+			buffer[position++] = (byte) (0x80 | (c & 0x3F));
+		} else if (Character.isHighSurrogate(c) && i + 1 < string.length() && Character.isLowSurrogate(string.charAt(i + 1))) {
+			int codePoint = Character.toCodePoint(c, string.charAt(i + 1));
+			buffer[position++] = (byte) (0xF0 | (codePoint >> 18));
+			buffer[position++] = (byte) (0x80 | ((codePoint >> 12) & 0x3F));
+			buffer[position++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+			buffer[position++] = (byte) (0x80 | (codePoint & 0x3F));
+			return i + 1;
+		} else if (Character.isSurrogate(c)) {
+			buffer[position++] = '?';
+		} else {
+			buffer[position++] = (byte) (0xE0 | (c >> 12));
+			buffer[position++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+			buffer[position++] = (byte) (0x80 | (c & 0x3F));
+		}
+		return i;
+	}
+
+	/**
+	 * Writes a quoted JSON string, with the same escaping as SharedJsonStreamingSerializer.quote
+	 */
+	void writeQuoted(String string) throws IOException {
+		if (string == null || string.length() == 0) {
+			ensure(2);
+			buffer[position++] = '"';
+			buffer[position++] = '"';
+			return;
+		}
+		write((byte) '"');
+		char c = 0;
+		int length = string.length();
+		for (int i = 0; i < length; i++) {
+			char b = c;
+			c = string.charAt(i);
+			switch (c) {
+			case '\\':
+			case '"':
+				ensure(2);
+				buffer[position++] = '\\';
+				buffer[position++] = (byte) c;
+				break;
+			case '/':
+				ensure(2);
+				if (b == '<') {
+					buffer[position++] = '\\';
+				}
+				buffer[position++] = '/';
+				break;
+			case '\b':
+				writeEscape('b');
+				break;
+			case '\t':
+				writeEscape('t');
+				break;
+			case '\n':
+				writeEscape('n');
+				break;
+			case '\f':
+				writeEscape('f');
+				break;
+			case '\r':
+				writeEscape('r');
+				break;
+			default:
+				if (c < ' ' || (c >= '\u0080' && c < '\u00a0') || (c >= '\u2000' && c < '\u2100')) {
+					ensure(6);
+					buffer[position++] = '\\';
+					buffer[position++] = 'u';
+					writeHex(c, 4);
+				} else if (c < 0x80) {
+					ensure(1);
+					buffer[position++] = (byte) c;
+				} else {
+					i = writeNonAscii(string, i, c);
+				}
+			}
+		}
+		write((byte) '"');
+	}
+
+	private void writeEscape(char c) throws IOException {
+		ensure(2);
+		buffer[position++] = '\\';
+		buffer[position++] = (byte) c;
+	}
+}
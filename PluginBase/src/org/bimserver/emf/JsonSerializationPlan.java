@@ -0,0 +1,135 @@
+package org.bimserver.emf;
+
+/******************************************************************************
+ * Copyright (C) 2009-2019  BIMserver.org
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see {@literal<http://www.gnu.org/licenses/>}.
+ *****************************************************************************/
+
+import org.eclipse.emf.ecore.EAttribute;
+import org.eclipse.emf.ecore.EClass;
+import org.eclipse.emf.ecore.EStructuralFeature;
+
+import com.google.common.base.Charsets;
+
+/**
+ * Everything SharedJsonStreamingSerializer needs to know about an EClass, computed once per PackageMetaData: which features are
+ * serialized (in the order of getEAllStructuralFeatures, the index is also the index in the VirtualObjectLayout) and the UTF-8 encoded
+ * JSON fragments for the type and the field names.
+ */
+class JsonSerializationPlan {
+	static final byte ATTRIBUTE = 0;
+	static final byte ATTRIBUTE_LIST = 1;
+	static final byte REFERENCE = 2;
+	static final byte REFERENCE_LIST = 3;
+
+	private final byte[] typeBytes;
+	private final int[] featureIndices;
+	private final EStructuralFeature[] features;
+	private final byte[] kinds;
+	private final boolean[] hidden;
+
+	// For attributes ,"name": (and ,"name":[ for lists), for references ,"_rname":{"_i": (and ,"_rname":[ for lists)
+	private final byte[][] prefixes;
+
+	// Only for references ,"_ename": (and ,"_ename":[ for lists)
+	private final byte[][] embeddedPrefixes;
+
+	JsonSerializationPlan(EClass eClass) {
+		this.typeBytes = bytes("\",\"_t\":\"" + eClass.getName() + "\",\"_s\":1");
+		EStructuralFeature[] allFeatures = eClass.getEAllStructuralFeatures().toArray(new EStructuralFeature[0]);
+		int nrFeatures = 0;
+		for (EStructuralFeature eStructuralFeature : allFeatures) {
+			if (eStructuralFeature.getEAnnotation("nolazyload") == null) {
+				nrFeatures++;
+			}
+		}
+		featureIndices = new int[nrFeatures];
+		features = new EStructuralFeature[nrFeatures];
+		kinds = new byte[nrFeatures];
+		hidden = new boolean[nrFeatures];
+		prefixes = new byte[nrFeatures][];
+		embeddedPrefixes = new byte[nrFeatures][];
+		int i = 0;
+		for (int index = 0; index < allFeatures.length; index++) {
+			EStructuralFeature eStructuralFeature = allFeatures[index];
+			if (eStructuralFeature.getEAnnotation("nolazyload") != null) {
+				continue;
+			}
+			String name = eStructuralFeature.getName();
+			featureIndices[i] = index;
+			features[i] = eStructuralFeature;
+			hidden[i] = eStructuralFeature.getEAnnotation("hidden") != null;
+			if (eStructuralFeature instanceof EAttribute) {
+				if (eStructuralFeature.isMany()) {
+					kinds[i] = ATTRIBUTE_LIST;
+					prefixes[i] = bytes(",\"" + name + "\":[");
+				} else {
+					kinds[i] = ATTRIBUTE;
+					prefixes[i] = bytes(",\"" + name + "\":");
+				}
+			} else {
+				if (eStructuralFeature.isMany()) {
+					kinds[i] = REFERENCE_LIST;
+					prefixes[i] = bytes(",\"_r" + name + "\":[");
+					embeddedPrefixes[i] = bytes(",\"_e" + name + "\":[");
+				} else {
+					kinds[i] = REFERENCE;
+					prefixes[i] = bytes(",\"_r" + name + "\":{\"_i\":");
+					embeddedPrefixes[i] = bytes(",\"_e" + name + "\":");
+				}
+			}
+			i++;
+		}
+	}
+
+	private static byte[] bytes(String string) {
+		return string.getBytes(Charsets.UTF_8);
+	}
+
+	/**
+	 * @return The part of the object header following the rid: ","_t":"ClassName","_s":1
+	 */
+	byte[] getTypeBytes() {
+		return typeBytes;
+	}
+
+	int getNrFeatures() {
+		return features.length;
+	}
+
+	int getFeatureIndex(int i) {
+		return featureIndices[i];
+	}
+
+	EStructuralFeature getFeature(int i) {
+		return features[i];
+	}
+
+	byte getKind(int i) {
+		return kinds[i];
+	}
+
+	boolean isHidden(int i) {
+		return hidden[i];
+	}
+
+	byte[] getPrefix(int i) {
+		return prefixes[i];
+	}
+
+	byte[] getEmbeddedPrefix(int i) {
+		return embeddedPrefixes[i];
+	}
+}
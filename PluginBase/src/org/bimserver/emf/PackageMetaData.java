@@ -29,6 +29,7 @@ import java.util.Map;
 import java.util.Set;
 import java.util.TreeMap;
 import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.bimserver.models.ifc2x3tc1.Ifc2x3tc1Package;
 import org.bimserver.models.ifc4.Ifc4Package;
@@ -71,6 +72,8 @@ public class PackageMetaData implements ObjectFactory, Comparable<PackageMetaDat
 	private final Map<EClass, Set<EStructuralFeature>> useForDatabaseStorage = new HashMap<>();
 	private final Map<EClass, OppositeInfo> oppositeInfos = new HashMap<>();
 	private final Map<EClass, Integer> unsettedLengths = new HashMap<EClass, Integer>();
+	private final Map<EClass, VirtualObjectLayout> virtualObjectLayouts = new ConcurrentHashMap<>();
+	private final Map<EClass, JsonSerializationPlan> jsonSerializationPlans = new ConcurrentHashMap<>();
 	private Path schemaPath;
 
 	public PackageMetaData(EPackage ePackage, Schema schema, Path tempDir) {
@@ -135,6 +138,7 @@ public class PackageMetaData implements ObjectFactory, Comparable<PackageMetaDat
 		
 		try {
 			initUnsettedLengths();
+			initVirtualObjectLayouts();
 			if (ePackage == Ifc2x3tc1Package.eINSTANCE || ePackage == Ifc4Package.eINSTANCE) {
 				// Only do this for IFC schemas, other schemas do not have inverses (since that's an express concept)
 				initInverses();
@@ -258,6 +262,36 @@ public class PackageMetaData implements ObjectFactory, Comparable<PackageMetaDat
 		isInverseCache.put(eReference, isInverse);
 	}
 
+	private void initVirtualObjectLayouts() {
+		for (EClassifier eClassifier : ePackage.getEClassifiers()) {
+			if (eClassifier instanceof EClass) {
+				EClass eClass = (EClass)eClassifier;
+				virtualObjectLayouts.put(eClass, new VirtualObjectLayout(eClass));
+			}
+		}
+	}
+
+	/**
+	 * Layouts of EClasses of other packages (for example geometry objects created while processing an IFC model) are created on first use
+	 */
+	public VirtualObjectLayout getVirtualObjectLayout(EClass eClass) {
+		VirtualObjectLayout virtualObjectLayout = virtualObjectLayouts.get(eClass);
+		if (virtualObjectLayout == null) {
+			virtualObjectLayout = new VirtualObjectLayout(eClass);
+			virtualObjectLayouts.put(eClass, virtualObjectLayout);
+		}
+		return virtualObjectLayout;
+	}
+
+	JsonSerializationPlan getJsonSerializationPlan(EClass eClass) {
+		JsonSerializationPlan jsonSerializationPlan = jsonSerializationPlans.get(eClass);
+		if (jsonSerializationPlan == null) {
+			jsonSerializationPlan = new JsonSerializationPlan(eClass);
+			jsonSerializationPlans.put(eClass, jsonSerializationPlan);
+		}
+		return jsonSerializationPlan;
+	}
+
 	private void initUnsettedLengths() {
 		for (EClassifier eClassifier : ePackage.getEClassifiers()) {
 			if (eClassifier instanceof EClass) {
@@ -0,0 +1,89 @@
+package org.bimserver.emf;
+
+/******************************************************************************
+ * Copyright (C) 2009-2019  BIMserver.org
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see {@literal<http://www.gnu.org/licenses/>}.
+ *****************************************************************************/
+
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import org.bimserver.BimserverDatabaseException;
+import org.bimserver.models.store.IfcHeader;
+import org.bimserver.plugins.PluginManagerInterface;
+import org.bimserver.plugins.serializers.ObjectProvider;
+import org.bimserver.plugins.serializers.PartitionableStreamingSerializer;
+import org.bimserver.plugins.serializers.ProjectInfo;
+import org.bimserver.plugins.serializers.SerializerException;
+import org.bimserver.plugins.serializers.SerializerInputstream;
+import org.bimserver.plugins.serializers.StreamingReader;
+
+/**
+ * StreamingSerializer for the format of SharedJsonStreamingSerializer, for JSON serializer plugins. The objects can be written in
+ * partitions, so a plugin that creates this serializer can return true from StreamingSerializerPlugin.supportsPartitioning.
+ */
+public class PartitionableJsonStreamingSerializer implements PartitionableStreamingSerializer, StreamingReader {
+
+	private final boolean includeHidden;
+	private final boolean minimal;
+	private SharedJsonStreamingSerializer sharedJsonStreamingSerializer;
+
+	public PartitionableJsonStreamingSerializer(boolean includeHidden, boolean minimal) {
+		this.includeHidden = includeHidden;
+		this.minimal = minimal;
+	}
+
+	@Override
+	public void init(ObjectProvider objectProvider, ProjectInfo projectInfo, IfcHeader ifcHeader, PluginManagerInterface pluginManager, PackageMetaData packageMetaData) throws SerializerException {
+		sharedJsonStreamingSerializer = new SharedJsonStreamingSerializer(objectProvider, ifcHeader, includeHidden, minimal);
+	}
+
+	@Override
+	public void writeToOutputStream(OutputStream outputStream) throws SerializerException, BimserverDatabaseException {
+		while (sharedJsonStreamingSerializer.write(outputStream, null)) {
+		}
+	}
+
+	@Override
+	public InputStream getInputStream() {
+		return new SerializerInputstream(this);
+	}
+
+	@Override
+	public boolean write(OutputStream outputStream) throws SerializerException, BimserverDatabaseException {
+		return sharedJsonStreamingSerializer.write(outputStream, null);
+	}
+
+	@Override
+	public void writeHeader(OutputStream outputStream) throws SerializerException {
+		sharedJsonStreamingSerializer.writeHeader(outputStream);
+	}
+
+	@Override
+	public boolean writePartition(ObjectProvider objectProvider, OutputStream outputStream) throws SerializerException {
+		// The header is not written by a partition, so it does not need one
+		return new SharedJsonStreamingSerializer(objectProvider, null, includeHidden, minimal).writeObjects(outputStream);
+	}
+
+	@Override
+	public byte[] getPartitionSeparator() {
+		return SharedJsonStreamingSerializer.PARTITION_SEPARATOR;
+	}
+
+	@Override
+	public void writeFooter(OutputStream outputStream) throws SerializerException {
+		sharedJsonStreamingSerializer.writeFooter(outputStream);
+	}
+}
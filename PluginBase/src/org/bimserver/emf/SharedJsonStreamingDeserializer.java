@@ -1,18 +1,568 @@
 package org.bimserver.emf;
 
+/******************************************************************************
+ * Copyright (C) 2009-2019  BIMserver.org
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see {@literal<http://www.gnu.org/licenses/>}.
+ *****************************************************************************/
+
+import java.io.IOException;
 import java.io.InputStream;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
-import org.apache.commons.lang3.NotImplementedException;
+import org.apache.commons.codec.binary.Base64;
+import org.bimserver.BimserverDatabaseException;
+import org.bimserver.models.store.IfcHeader;
+import org.bimserver.models.store.StoreFactory;
+import org.bimserver.models.store.StorePackage;
+import org.bimserver.plugins.deserializers.ByteProgressReporter;
+import org.bimserver.plugins.deserializers.DeserializeException;
+import org.bimserver.plugins.deserializers.DeserializerErrorCode;
+import org.bimserver.plugins.deserializers.StreamingDeserializer;
+import org.bimserver.shared.HashMapVirtualObject;
+import org.bimserver.shared.HashMapWrappedVirtualObject;
+import org.bimserver.shared.QueryContext;
+import org.bimserver.utils.DiskBackedLongMap;
+import org.eclipse.emf.ecore.EAttribute;
+import org.eclipse.emf.ecore.EClass;
+import org.eclipse.emf.ecore.EClassifier;
+import org.eclipse.emf.ecore.EEnum;
+import org.eclipse.emf.ecore.EEnumLiteral;
+import org.eclipse.emf.ecore.EReference;
+import org.eclipse.emf.ecore.EStructuralFeature;
+import org.eclipse.emf.ecore.EcorePackage;
 
-public class SharedJsonStreamingDeserializer {
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
 
+/**
+ * Reads the JSON written by SharedJsonStreamingSerializer token by token and saves every object to the QueryContext as soon as it is
+ * complete. Unlike SharedJsonDeserializer no model is built, so the memory use does not depend on the size of the model.
+ *
+ * Objects get new oids. The new oid of every oid in the file is kept in a DiskBackedLongMap. References contain the type of the
+ * referenced object ("_t"), so a reference to an object further on in the file (a forward reference) gets its new oid when the
+ * reference is read, and the referencing object can be saved right away. Only for references without a type (embedded oids) the
+ * referencing object has to wait in memory until the referenced object has been read.
+ */
+public class SharedJsonStreamingDeserializer implements StreamingDeserializer {
+	// The serializer writes NaN and Infinity doubles as they are
+	private static final JsonFactory JSON_FACTORY = new JsonFactory().enable(JsonParser.Feature.ALLOW_NON_NUMERIC_NUMBERS);
+	// Set on the new oids in the oid map of objects that have been read, other entries have only been referenced so far
+	private static final long DEFINED = 1L << 62;
+	// The value in the oid map of objects with state 0, these are not stored and must not be referenced
+	private static final long STUB = 1L << 61;
+	private final Path tempDir;
 	private PackageMetaData packageMetaData;
+	private ByteProgressReporter byteProgressReporter;
+	private IfcHeader ifcHeader;
+	private final Map<EClass, Integer> summaryMap = new HashMap<>();
+	private QueryContext queryContext;
+	private DiskBackedLongMap oids;
+	private long nrReferencedOnly;
+	private long nrStubs;
+	private final Map<Long, List<WaitingReference>> waiting = new HashMap<>();
+
+	private static class Reference {
+		private final long oid;
+		private final EClass eClass;
+
+		private Reference(long oid, EClass eClass) {
+			this.oid = oid;
+			this.eClass = eClass;
+		}
+	}
+
+	private static class WaitingObject {
+		private final HashMapVirtualObject object;
+		private int unresolved;
+		private boolean read;
+
+		private WaitingObject(HashMapVirtualObject object) {
+			this.object = object;
+		}
+	}
 
-	public SharedJsonStreamingDeserializer(PackageMetaData packageMetaData) {
+	private static class WaitingReference {
+		private final WaitingObject waitingObject;
+		private final EReference eReference;
+		private final int index;
+
+		private WaitingReference(WaitingObject waitingObject, EReference eReference, int index) {
+			this.waitingObject = waitingObject;
+			this.eReference = eReference;
+			this.index = index;
+		}
+	}
+
+	/**
+	 * @param tempDir The folder in which the oid map is stored while reading
+	 */
+	public SharedJsonStreamingDeserializer(Path tempDir) {
+		this.tempDir = tempDir;
+	}
+
+	public SharedJsonStreamingDeserializer(PackageMetaData packageMetaData, Path tempDir) {
 		this.packageMetaData = packageMetaData;
+		this.tempDir = tempDir;
+	}
+
+	@Override
+	public void init(PackageMetaData packageMetaData) {
+		this.packageMetaData = packageMetaData;
+	}
+
+	@Override
+	public void setProgressReporter(ByteProgressReporter byteProgressReporter) {
+		this.byteProgressReporter = byteProgressReporter;
+	}
+
+	@Override
+	public IfcHeader getIfcHeader() {
+		return ifcHeader;
+	}
+
+	@Override
+	public Map<EClass, Integer> getSummaryMap() {
+		return summaryMap;
+	}
+
+	/**
+	 * @return The number of objects with state 0 in the last file, these have been skipped
+	 */
+	public long getNrStubs() {
+		return nrStubs;
+	}
+
+	@Override
+	public long read(InputStream inputStream, String fileName, long fileSize, QueryContext queryContext) throws DeserializeException {
+		this.queryContext = queryContext;
+		long nrObjects = 0;
+		nrReferencedOnly = 0;
+		nrStubs = 0;
+		try (DiskBackedLongMap oids = new DiskBackedLongMap(tempDir); JsonParser parser = JSON_FACTORY.createParser(inputStream)) {
+			this.oids = oids;
+			if (parser.nextToken() != JsonToken.START_OBJECT) {
+				throw new DeserializeException(DeserializerErrorCode.UNEXPECTED_TYPE, "JSON object expected");
+			}
+			while (parser.nextToken() == JsonToken.FIELD_NAME) {
+				String name = parser.getCurrentName();
+				JsonToken value = parser.nextToken();
+				if (name.equals("objects") && value == JsonToken.START_ARRAY) {
+					while (parser.nextToken() == JsonToken.START_OBJECT) {
+						if (readObject(parser)) {
+							nrObjects++;
+							if (byteProgressReporter != null && nrObjects % 1000 == 0) {
+								byteProgressReporter.progress(parser.getCurrentLocation().getByteOffset());
+							}
+						}
+					}
+				} else if (name.equals("header") && value == JsonToken.START_OBJECT) {
+					ifcHeader = readHeader(parser);
+				} else {
+					parser.skipChildren();
+				}
+			}
+			if (nrReferencedOnly > 0 || !waiting.isEmpty()) {
+				throw new DeserializeException(DeserializerErrorCode.NON_EXISTING_ENTITY_REFERENCED, (nrReferencedOnly + waiting.size()) + " referenced objects are not in the file");
+			}
+			if (byteProgressReporter != null) {
+				byteProgressReporter.progress(parser.getCurrentLocation().getByteOffset());
+			}
+		} catch (IOException | BimserverDatabaseException e) {
+			throw new DeserializeException(e);
+		} finally {
+			this.oids = null;
+			waiting.clear();
+		}
+		return nrObjects;
+	}
+
+	/**
+	 * @return Whether an object has been read, false for objects with state 0 (not loaded, see readStub)
+	 */
+	private boolean readObject(JsonParser parser) throws IOException, DeserializeException, BimserverDatabaseException {
+		long oid = -1;
+		EClass eClass = null;
+		WaitingObject waitingObject = null;
+		while (parser.nextToken() == JsonToken.FIELD_NAME) {
+			String fieldName = parser.getCurrentName();
+			parser.nextToken();
+			if (fieldName.equals("_i")) {
+				oid = parser.getValueAsLong();
+			} else if (fieldName.equals("_t")) {
+				eClass = getEClass(parser.getText());
+			} else if (fieldName.equals("_u") || fieldName.equals("_r")) {
+				// The objects get a new uuid and rid
+				parser.skipChildren();
+			} else if (fieldName.equals("_s")) {
+				if (oid == -1 || eClass == null) {
+					throw new DeserializeException(DeserializerErrorCode.UNEXPECTED_FIELD, "_i and _t expected before _s");
+				}
+				if (parser.getValueAsInt() != 1) {
+					readStub(parser, oid);
+					return false;
+				}
+				waitingObject = new WaitingObject(new HashMapVirtualObject(queryContext, eClass, define(oid, eClass), queryContext.getDatabaseInterface().newUuid()));
+			} else if (fieldName.length() > 2 && (fieldName.startsWith("_r") || fieldName.startsWith("_e"))) {
+				if (waitingObject == null) {
+					throw new DeserializeException(DeserializerErrorCode.UNEXPECTED_FIELD, "_s expected before " + fieldName);
+				}
+				EStructuralFeature feature = getFeature(eClass, fieldName.substring(2));
+				if (!(feature instanceof EReference)) {
+					throw new DeserializeException(DeserializerErrorCode.UNEXPECTED_FIELD, fieldName + " of " + eClass.getName() + " is not a reference");
+				}
+				readReference(parser, waitingObject, (EReference) feature);
+			} else if (fieldName.startsWith("_")) {
+				throw new DeserializeException(DeserializerErrorCode.UNEXPECTED_FIELD, "Unknown field " + fieldName);
+			} else {
+				if (waitingObject == null) {
+					throw new DeserializeException(DeserializerErrorCode.UNEXPECTED_FIELD, "_s expected before " + fieldName);
+				}
+				readFeature(parser, waitingObject, getFeature(eClass, fieldName));
+			}
+		}
+		if (waitingObject == null) {
+			throw new DeserializeException(DeserializerErrorCode.UNEXPECTED_FIELD, "Object without _s");
+		}
+		summaryMap.merge(eClass, 1, Integer::sum);
+		waitingObject.read = true;
+		if (waitingObject.unresolved == 0) {
+			waitingObject.object.save();
+		}
+		return true;
+	}
+
+	/**
+	 * An object with state 0 has not been loaded by the writer of the file, only its type is known. Storing it without features would
+	 * leave an incomplete object in the model, so it is skipped. References to it can not be kept either, a file in which a stub is
+	 * referenced is refused (here when the reference came first, in checkNotStub when the stub came first).
+	 */
+	private void readStub(JsonParser parser, long oid) throws IOException, DeserializeException {
+		long value = oids.get(oid);
+		if (value == STUB || (value != -1 && (value & DEFINED) != 0)) {
+			throw new DeserializeException(DeserializerErrorCode.DUPLICATE_EXPRESS_ID, "Object " + oid + " occurs more than once");
+		}
+		if (value != -1 || waiting.containsKey(oid)) {
+			// Referenced with a type (in the oid map) or without (waiting)
+			throw new DeserializeException(DeserializerErrorCode.NON_EXISTING_ENTITY_REFERENCED, "Object " + oid + " is referenced, but has not been loaded (_s 0)");
+		}
+		oids.put(oid, STUB);
+		while (parser.nextToken() == JsonToken.FIELD_NAME) {
+			parser.nextToken();
+			parser.skipChildren();
+		}
+		nrStubs++;
+	}
+
+	private void checkNotStub(long oid, long value) throws DeserializeException {
+		if (value == STUB) {
+			throw new DeserializeException(DeserializerErrorCode.NON_EXISTING_ENTITY_REFERENCED, "Object " + oid + " is referenced, but has not been loaded (_s 0)");
+		}
+	}
+
+	private void readFeature(JsonParser parser, WaitingObject waitingObject, EStructuralFeature feature) throws IOException, DeserializeException, BimserverDatabaseException {
+		HashMapVirtualObject object = waitingObject.object;
+		if (feature instanceof EReference) {
+			if (feature.getName().equals("GlobalId") && parser.getCurrentToken() == JsonToken.VALUE_STRING) {
+				// GlobalId is an IfcGloballyUniqueId in some schemas, but always written as a string
+				HashMapWrappedVirtualObject globalId = new HashMapWrappedVirtualObject(((EReference) feature).getEReferenceType());
+				globalId.setAttribute((EAttribute) globalId.eClass().getEStructuralFeature("wrappedValue"), parser.getText());
+				object.setReference((EReference) feature, globalId);
+			} else {
+				readReference(parser, waitingObject, (EReference) feature);
+			}
+			return;
+		}
+		EStructuralFeature asStringFeature = null;
+		if (feature.getEType() == EcorePackage.eINSTANCE.getEDouble() || feature.getEType() == EcorePackage.eINSTANCE.getEDoubleObject()) {
+			asStringFeature = object.eClass().getEStructuralFeature(feature.getName() + "AsString");
+		}
+		if (feature.isMany()) {
+			expect(parser, JsonToken.START_ARRAY);
+			while (parser.nextToken() != JsonToken.END_ARRAY) {
+				Object value = readPrimitive(parser, feature);
+				object.addListItem(feature, value);
+				if (asStringFeature != null) {
+					object.addListItem(asStringFeature, parser.getText());
+				}
+			}
+		} else {
+			object.setAttribute((EAttribute) feature, readPrimitive(parser, feature));
+			if (asStringFeature != null) {
+				object.setAttribute((EAttribute) asStringFeature, parser.getText());
+			}
+		}
+	}
+
+	private void readReference(JsonParser parser, WaitingObject waitingObject, EReference eReference) throws IOException, DeserializeException, BimserverDatabaseException {
+		HashMapVirtualObject object = waitingObject.object;
+		if (eReference.isMany()) {
+			expect(parser, JsonToken.START_ARRAY);
+			int index = 0;
+			while (parser.nextToken() != JsonToken.END_ARRAY) {
+				if (parser.getCurrentToken() == JsonToken.START_ARRAY) {
+					object.setListItem(eReference, index, readTwoDimensionalList(parser, eReference));
+				} else {
+					Object value = readValue(parser);
+					if (value instanceof Reference) {
+						Long newOid = resolve((Reference) value, waitingObject, eReference, index);
+						object.setListItemReference(eReference, index, ((Reference) value).eClass, newOid, -1);
+					} else {
+						object.setListItem(eReference, index, value);
+					}
+				}
+				index++;
+			}
+		} else {
+			Object value = readValue(parser);
+			if (value instanceof Reference) {
+				Long newOid = resolve((Reference) value, waitingObject, eReference, -1);
+				if (newOid != null) {
+					object.setReference(eReference, newOid);
+				}
+			} else {
+				object.setReference(eReference, (HashMapWrappedVirtualObject) value);
+			}
+		}
+	}
+
+	/**
+	 * Reads the value at the current token, which is a reference ({"_i": oid, "_t": type} or an oid) or an embedded object ({"_t": type,
+	 * "_v": value} or {"_t": type, feature: value, ...})
+	 * 
+	 * @return A Reference (with the oid in the file) or a HashMapWrappedVirtualObject
+	 */
+	private Object readValue(JsonParser parser) throws IOException, DeserializeException, BimserverDatabaseException {
+		if (parser.getCurrentToken() == JsonToken.VALUE_NUMBER_INT) {
+			return new Reference(parser.getLongValue(), null);
+		}
+		expect(parser, JsonToken.START_OBJECT);
+		long oid = -1;
+		EClass eClass = null;
+		HashMapWrappedVirtualObject wrapped = null;
+		while (parser.nextToken() == JsonToken.FIELD_NAME) {
+			String fieldName = parser.getCurrentName();
+			JsonToken token = parser.nextToken();
+			if (fieldName.equals("_i") || fieldName.equals("_r")) {
+				oid = parser.getValueAsLong();
+			} else if (fieldName.equals("_t")) {
+				eClass = getEClass(parser.getText());
+				if (oid == -1) {
+					wrapped = new HashMapWrappedVirtualObject(eClass);
+				}
+			} else if (wrapped == null) {
+				throw new DeserializeException(DeserializerErrorCode.UNEXPECTED_FIELD, "_t expected before " + fieldName);
+			} else {
+				EStructuralFeature feature = getFeature(eClass, fieldName.equals("_v") ? "wrappedValue" : fieldName);
+				if (feature instanceof EReference) {
+					Object value = readValue(parser);
+					if (value instanceof Reference) {
+						throw new DeserializeException(DeserializerErrorCode.UNEXPECTED_FIELD, "References are not supported in embedded objects (" + eClass.getName() + "." + fieldName + ")");
+					}
+					wrapped.setReference((EReference) feature, value);
+				} else if (token == JsonToken.START_ARRAY) {
+					List<Object> list = new ArrayList<>();
+					while (parser.nextToken() != JsonToken.END_ARRAY) {
+						list.add(readPrimitive(parser, feature));
+					}
+					wrapped.setAttribute((EAttribute) feature, list);
+				} else {
+					wrapped.setAttribute((EAttribute) feature, readPrimitive(parser, feature));
+				}
+			}
+		}
+		if (wrapped != null) {
+			return wrapped;
+		}
+		if (oid == -1) {
+			throw new DeserializeException(DeserializerErrorCode.UNEXPECTED_FIELD, "_i or _t expected");
+		}
+		return new Reference(oid, eClass);
+	}
+
+	private HashMapVirtualObject readTwoDimensionalList(JsonParser parser, EReference eReference) throws IOException, DeserializeException, BimserverDatabaseException {
+		if (eReference.getEAnnotation("twodimensionalarray") == null) {
+			throw new DeserializeException(DeserializerErrorCode.UNEXPECTED_AGGREGATION, eReference.getName() + " is not a two dimensional list");
+		}
+		EClass listEClass = eReference.getEReferenceType();
+		EStructuralFeature listFeature = listEClass.getEStructuralFeature("List");
+		// Stored inside the referencing object, so it does not need an oid
+		HashMapVirtualObject listObject = new HashMapVirtualObject(queryContext, listEClass, -1, null);
+		while (parser.nextToken() != JsonToken.END_ARRAY) {
+			if (listFeature instanceof EAttribute) {
+				listObject.addListItem(listFeature, readPrimitive(parser, listFeature));
+			} else {
+				Object value = readValue(parser);
+				if (value instanceof Reference) {
+					Reference reference = (Reference) value;
+					if (reference.eClass == null) {
+						throw new DeserializeException(DeserializerErrorCode.INVALID_REFERENCE, "Reference without _t in " + eReference.getName());
+					}
+					listObject.addListItem(listFeature, resolveTyped(reference.oid, reference.eClass));
+				} else {
+					listObject.addListItem(listFeature, value);
+				}
+			}
+		}
+		return listObject;
+	}
+
+	/**
+	 * @return The new oid of the referenced object, or null when the type of the referenced object is not known yet, in which case the
+	 *         reference is filled in when the referenced object has been read
+	 */
+	private Long resolve(Reference reference, WaitingObject waitingObject, EReference eReference, int index) throws IOException, DeserializeException {
+		if (reference.eClass != null) {
+			return resolveTyped(reference.oid, reference.eClass);
+		}
+		long value = oids.get(reference.oid);
+		if (value != -1) {
+			checkNotStub(reference.oid, value);
+			return value & ~DEFINED;
+		}
+		waitingObject.unresolved++;
+		waiting.computeIfAbsent(reference.oid, k -> new ArrayList<>(1)).add(new WaitingReference(waitingObject, eReference, index));
+		return null;
+	}
+
+	private long resolveTyped(long oid, EClass eClass) throws IOException, DeserializeException {
+		long value = oids.get(oid);
+		if (value != -1) {
+			checkNotStub(oid, value);
+			return value & ~DEFINED;
+		}
+		long newOid = queryContext.getDatabaseInterface().newOid(eClass);
+		oids.put(oid, newOid);
+		nrReferencedOnly++;
+		return newOid;
+	}
+
+	/**
+	 * @return The new oid of the object with the given oid in the file
+	 */
+	private long define(long oid, EClass eClass) throws IOException, DeserializeException, BimserverDatabaseException {
+		long value = oids.get(oid);
+		long newOid;
+		if (value == -1) {
+			newOid = queryContext.getDatabaseInterface().newOid(eClass);
+		} else if (value == STUB || (value & DEFINED) != 0) {
+			throw new DeserializeException(DeserializerErrorCode.DUPLICATE_EXPRESS_ID, "Object " + oid + " occurs more than once");
+		} else {
+			newOid = value;
+			nrReferencedOnly--;
+			EClass referencedAs = queryContext.getDatabaseInterface().getEClassForOid(newOid);
+			if (referencedAs != eClass) {
+				throw new DeserializeException(DeserializerErrorCode.UNEXPECTED_TYPE, "Object " + oid + " is a " + eClass.getName() + " but has been referenced as a " + referencedAs.getName());
+			}
+		}
+		oids.put(oid, newOid | DEFINED);
+		List<WaitingReference> waitingReferences = waiting.remove(oid);
+		if (waitingReferences != null) {
+			for (WaitingReference waitingReference : waitingReferences) {
+				WaitingObject waitingObject = waitingReference.waitingObject;
+				if (waitingReference.index == -1) {
+					waitingObject.object.setReference(waitingReference.eReference, newOid);
+				} else {
+					waitingObject.object.setListItemReference(waitingReference.eReference, waitingReference.index, eClass, newOid, -1);
+				}
+				waitingObject.unresolved--;
+				if (waitingObject.unresolved == 0 && waitingObject.read) {
+					waitingObject.object.save();
+				}
+			}
+		}
+		return newOid;
+	}
+
+	@SuppressWarnings("unchecked")
+	private IfcHeader readHeader(JsonParser parser) throws IOException, DeserializeException {
+		IfcHeader ifcHeader = StoreFactory.eINSTANCE.createIfcHeader();
+		EClass eClass = StorePackage.eINSTANCE.getIfcHeader();
+		while (parser.nextToken() == JsonToken.FIELD_NAME) {
+			EStructuralFeature feature = eClass.getEStructuralFeature(parser.getCurrentName());
+			JsonToken token = parser.nextToken();
+			if (!(feature instanceof EAttribute)) {
+				parser.skipChildren();
+			} else if (token == JsonToken.START_ARRAY) {
+				List<Object> list = (List<Object>) ifcHeader.eGet(feature);
+				while (parser.nextToken() != JsonToken.END_ARRAY) {
+					list.add(readPrimitive(parser, feature));
+				}
+			} else if (token != JsonToken.VALUE_NULL) {
+				ifcHeader.eSet(feature, readPrimitive(parser, feature));
+			}
+		}
+		return ifcHeader;
+	}
+
+	private Object readPrimitive(JsonParser parser, EStructuralFeature feature) throws IOException, DeserializeException {
+		EClassifier eClassifier = feature.getEType();
+		if (eClassifier == EcorePackage.eINSTANCE.getEString()) {
+			return parser.getText();
+		} else if (eClassifier == EcorePackage.eINSTANCE.getEDouble() || eClassifier == EcorePackage.eINSTANCE.getEDoubleObject()) {
+			return parser.getValueAsDouble();
+		} else if (eClassifier == EcorePackage.eINSTANCE.getEBoolean() || eClassifier == EcorePackage.eINSTANCE.getEBooleanObject()) {
+			return parser.getValueAsBoolean();
+		} else if (eClassifier == EcorePackage.eINSTANCE.getEInt() || eClassifier == EcorePackage.eINSTANCE.getEIntegerObject()) {
+			return parser.getValueAsInt();
+		} else if (eClassifier == EcorePackage.eINSTANCE.getEShort()) {
+			return (short) parser.getValueAsInt();
+		} else if (eClassifier == EcorePackage.eINSTANCE.getELong() || eClassifier == EcorePackage.eINSTANCE.getELongObject()) {
+			return parser.getValueAsLong();
+		} else if (eClassifier == EcorePackage.eINSTANCE.getEFloat()) {
+			return (float) parser.getValueAsDouble();
+		} else if (eClassifier == EcorePackage.eINSTANCE.getEByteArray()) {
+			return Base64.decodeBase64(parser.getText());
+		} else if (eClassifier == EcorePackage.eINSTANCE.getEDate()) {
+			return new Date(parser.getValueAsLong());
+		} else if (eClassifier instanceof EEnum) {
+			EEnum eEnum = (EEnum) eClassifier;
+			String literal = parser.getCurrentToken() == JsonToken.VALUE_TRUE ? "TRUE" : parser.getCurrentToken() == JsonToken.VALUE_FALSE ? "FALSE" : parser.getText();
+			EEnumLiteral eEnumLiteral = eEnum.getEEnumLiteral(literal);
+			if (eEnumLiteral == null) {
+				throw new DeserializeException(DeserializerErrorCode.NON_EXISTING_ENUM_LITERAL_USED, literal + " is not a literal of " + eEnum.getName());
+			}
+			return eEnumLiteral.getInstance();
+		}
+		throw new DeserializeException(DeserializerErrorCode.UNIMPLEMENTED_BIMSERVER_FEATURE, "Unimplemented type " + eClassifier.getName());
+	}
+
+	private EClass getEClass(String type) throws DeserializeException {
+		EClass eClass = packageMetaData.getEClassIncludingDependencies(type);
+		if (eClass == null) {
+			throw new DeserializeException(DeserializerErrorCode.UNKNOWN_ENTITY, "No class found with name " + type);
+		}
+		return eClass;
+	}
+
+	private EStructuralFeature getFeature(EClass eClass, String name) throws DeserializeException {
+		EStructuralFeature feature = eClass.getEStructuralFeature(name);
+		if (feature == null) {
+			throw new DeserializeException(DeserializerErrorCode.UNKNOWN_FIELD, "Unknown field (" + name + ") on class " + eClass.getName());
+		}
+		return feature;
 	}
 
-	public long read(InputStream inputStream) {
-		throw new NotImplementedException("Streaming json deserializer not implemented");
+	private void expect(JsonParser parser, JsonToken expected) throws DeserializeException {
+		if (parser.getCurrentToken() != expected) {
+			throw new DeserializeException(DeserializerErrorCode.UNEXPECTED_TYPE, expected + " expected but found " + parser.getCurrentToken() + " at " + parser.getCurrentLocation());
+		}
 	}
 }
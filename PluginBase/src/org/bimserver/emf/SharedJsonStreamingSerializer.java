@@ -50,6 +50,21 @@ public class SharedJsonStreamingSerializer implements StreamingReader {
 	}
 
 	private static final boolean SERIALIZE_EMPTY_LISTS = false;
+	private static final int BUFFER_SIZE = 65536;
+	private static final byte[] OBJECT_START = bytes("{\"_i\":");
+	private static final byte[] UUID_START = bytes(",\"_u\":\"");
+	private static final byte[] RID_START = bytes("\",\"_r\":\"");
+	private static final byte[] OBJECT_END = bytes("}\n");
+	private static final byte[] REFERENCE_START = bytes("{\"_i\":");
+	private static final byte[] TYPE_START = bytes(",\"_t\":\"");
+	private static final byte[] REFERENCE_END = bytes("\"}");
+	private static final byte[] TRUE = bytes("true");
+	private static final byte[] FALSE = bytes("false");
+
+	/**
+	 * Written between the output of two (non-empty) partitions, see writeObjects
+	 */
+	public static final byte[] PARTITION_SEPARATOR = bytes(",");
 
 	private Mode mode = Mode.HEADER;
 	private boolean firstObject = true;
@@ -64,6 +79,7 @@ public class SharedJsonStreamingSerializer implements StreamingReader {
 	private EmfJsonSerializer emfJsonSerializer;
 
 	private boolean minimal;
+	private final JsonOutputBuffer buffer = new JsonOutputBuffer(BUFFER_SIZE);
 
 	public SharedJsonStreamingSerializer(ObjectProvider objectProvider, IfcHeader ifcHeader, boolean includeHidden, boolean minimal) throws SerializerException {
 		this.minimal = minimal;
@@ -76,51 +92,28 @@ public class SharedJsonStreamingSerializer implements StreamingReader {
 	}
 
 	private void print(String line) throws IOException {
-		byte[] bytes = line.getBytes(Charsets.UTF_8);
-		outputStream.write(bytes, 0, bytes.length);
+		buffer.writeUtf8(line);
 	}
 	
 	public boolean write(OutputStream outputStream, ProgressReporter progressReporter) throws SerializerException {
 		this.outputStream = outputStream;
+		buffer.setOutputStream(outputStream);
 		try {
 			if (mode == Mode.HEADER) {
-				if (this.emfJsonSerializer == null) {
-					this.emfJsonSerializer = new EmfJsonSerializer(outputStream, includeHidden, SERIALIZE_EMPTY_LISTS);
-				}
-				print("{");
-				if (!minimal) {
-					if (ifcHeader != null) {
-						print("\"header\":");
-						this.emfJsonSerializer.writeObject(ifcHeader);
-						print("\n,");
-					}
-				}
-				print("\"objects\":[");
+				writeHeader();
 				mode = Mode.BODY;
+				buffer.flush();
 				return true;
 			} else if (mode == Mode.BODY) {
 				HashMapVirtualObject object = objectProvider.next();
 				if (object != null) {
-					if (object.getOid() == -1) {
-						throw new SerializerException("Object cannot have oid -1 " + object.eClass().getName());
-					}
-					if (object.eClass().getEAnnotation("hidden") == null || includeHidden) {
-						if (!firstObject) {
-							print(",");
-						} else {
-							firstObject = false;
-						}
-						if (minimal) {
-							print("" + object.getOid());
-						} else {
-							writeObject(object);
-						}
-					}
+					writeTopLevelObject(object);
+					buffer.flush();
 					return true;
 				} else {
-					print("]");
-					print("}");
+					writeFooter();
 					mode = Mode.FOOTER;
+					buffer.flush();
 					return true;
 				}
 			} else if (mode == Mode.FOOTER) {
@@ -133,164 +126,226 @@ public class SharedJsonStreamingSerializer implements StreamingReader {
 		return false;
 	}
 
+	/**
+	 * Writes the part before the objects ('{', the header and the start of the "objects" array)
+	 */
+	public void writeHeader(OutputStream outputStream) throws SerializerException {
+		this.outputStream = outputStream;
+		buffer.setOutputStream(outputStream);
+		try {
+			writeHeader();
+			buffer.flush();
+		} catch (IOException e) {
+			throw new SerializerException(e);
+		}
+	}
+
+	/**
+	 * Writes all objects of the ObjectProvider of this serializer, separated by commas but without the surrounding header and footer.
+	 * Used to serialize partitions of a download in parallel, each partition using its own instance of this class. The outputs of the
+	 * (non-empty) partitions have to be joined with PARTITION_SEPARATOR.
+	 * 
+	 * @return Whether any objects have been written
+	 */
+	public boolean writeObjects(OutputStream outputStream) throws SerializerException {
+		this.outputStream = outputStream;
+		buffer.setOutputStream(outputStream);
+		try {
+			HashMapVirtualObject object = objectProvider.next();
+			while (object != null) {
+				writeTopLevelObject(object);
+				object = objectProvider.next();
+			}
+			buffer.flush();
+			return !firstObject;
+		} catch (SerializerException e) {
+			throw e;
+		} catch (Exception e) {
+			throw new SerializerException(e);
+		}
+	}
+
+	/**
+	 * Writes the part after the objects
+	 */
+	public void writeFooter(OutputStream outputStream) throws SerializerException {
+		this.outputStream = outputStream;
+		buffer.setOutputStream(outputStream);
+		try {
+			writeFooter();
+			buffer.flush();
+		} catch (IOException e) {
+			throw new SerializerException(e);
+		}
+	}
+
+	private void writeHeader() throws IOException {
+		if (this.emfJsonSerializer == null) {
+			this.emfJsonSerializer = new EmfJsonSerializer(outputStream, includeHidden, SERIALIZE_EMPTY_LISTS);
+		}
+		print("{");
+		if (!minimal) {
+			if (ifcHeader != null) {
+				print("\"header\":");
+				// The EmfJsonSerializer writes directly to the OutputStream
+				buffer.flush();
+				this.emfJsonSerializer.writeObject(ifcHeader);
+				print("\n,");
+			}
+		}
+		print("\"objects\":[");
+	}
+
+	private void writeFooter() throws IOException {
+		print("]");
+		print("}");
+	}
+
+	private void writeTopLevelObject(HashMapVirtualObject object) throws IOException, BimserverDatabaseException, SerializerException {
+		if (object.getOid() == -1) {
+			throw new SerializerException("Object cannot have oid -1 " + object.eClass().getName());
+		}
+		if (object.eClass().getEAnnotation("hidden") == null || includeHidden) {
+			if (!firstObject) {
+				print(",");
+			} else {
+				firstObject = false;
+			}
+			if (minimal) {
+				buffer.writeLong(object.getOid());
+			} else {
+				writeObject(object);
+			}
+		}
+	}
+
 	private void writeObject(HashMapVirtualObject object) throws IOException, BimserverDatabaseException {
-//		if (((IdEObjectImpl) object).getLoadingState() != State.LOADED) {
-//			print("{");
-//			print("\"_i\":" + object.getOid() + ",");
-//			print("\"_t\":\"" + object.eClass().getName() + "\",");
-//			print("\"_s\":0");
-//			print("}\n");
-//		} else {
-			print("{");
-			print("\"_i\":" + object.getOid() + ",");
-			print("\"_u\":\"" + object.getUuid().toString() + "\",");
-			print("\"_r\":\"" + object.getRid() + "\",");
-			print("\"_t\":\"" + object.eClass().getName() + "\",");
-			print("\"_s\":1");
-			
-			for (EStructuralFeature eStructuralFeature : object.eClass().getEAllStructuralFeatures()) {
-				if (eStructuralFeature.getEAnnotation("nolazyload") == null && (eStructuralFeature.getEAnnotation("hidden") == null || includeHidden)) {
-					if (eStructuralFeature instanceof EReference) {
-						Object value = object.eGet(eStructuralFeature);
-						if (value != null) {
-							if (eStructuralFeature.isMany()) {
-								List<?> list = (List<?>) value;
-								if (SERIALIZE_EMPTY_LISTS || !list.isEmpty()) {
-									print(",");
-									int wrapped = 0;
-									int referred = 0;
-									for (Object o : list) {
-										if (o instanceof Long) {
-											referred++;
-										} else if (o instanceof HashMapWrappedVirtualObject) {
-											wrapped++;
-										}
-									}
-									if (wrapped == 0 && referred != 0) {
-										print("\"_r" + eStructuralFeature.getName() + "\":[");
-									} else if (wrapped != 0 && referred == 0) {
-										print("\"_e" + eStructuralFeature.getName() + "\":[");
-									} else if (wrapped == 0 && referred == 0) {
-										print("\"_e" + eStructuralFeature.getName() + "\":[");
-										// should not happen
-									} else {
-										// both, this can occur,
-										// for example
-										// IfcTrimmedCurve.Trim1
-										print("\"_e" + eStructuralFeature.getName() + "\":[");
-									}
-									boolean f = true;
-									for (Object o : list) {
-										if (o == null) {
-											LOGGER.info("Unexpeced null in list " + object.eClass().getName() + ":" + object.getOid() + "." + eStructuralFeature.getName());
-										} else {
-											if (!f) {
-												print(",");
-											} else {
-												f = false;
-											}
-											if (o instanceof Long) {
-												long ref = (Long)o;
-												if (wrapped != 0 && referred != 0) {
-													// Special
-													// situation,
-													// where we have
-													// to construct
-													// an object
-													// around the
-													// OID to make
-													// it
-													// distinguishable
-													// from embedded
-													// objects
-													print("{");
-													print("\"_i\":");
-													print("" + ref + ",");
-													print("\"_t\":");
-													print("\"" + object.getReusable().getDatabaseInterface().getEClassForOid(ref).getName() + "\"");
-													print("}");
-												} else {
-													print("{");
-													print("\"_i\":");
-													print("" + ref + ",");
-													print("\"_t\":");
-													print("\"" + object.getReusable().getDatabaseInterface().getEClassForOid(ref).getName() + "\"");
-													print("}");
-												}
-											} else if (o instanceof HashMapWrappedVirtualObject) {
-												write((HashMapWrappedVirtualObject) o);
-											} else if (o instanceof HashMapVirtualObject) {
-												write((HashMapVirtualObject) o);
-											} else if (eStructuralFeature.getEAnnotation("twodimensionalarray") != null) {
-												EClass type = (EClass) eStructuralFeature.getEType();
-												EStructuralFeature listFeature = type.getEStructuralFeature("List");
-												List<?> listX = (List<?>)(((HashMapVirtualObject)o).eGet(listFeature));
-												print("[");
-												boolean fq = true;
-												for (Object k : listX) {
-													if (!fq) {
-														print(",");
-													}
-													fq = false;
-													if (k instanceof HashMapWrappedVirtualObject) {
-														write((HashMapWrappedVirtualObject)k);
-													} else {
-														print("\"" + k + "\"");
-													}
-												}
-												print("]");
-											} else {
-												LOGGER.info("Unimplemented " + o.getClass() + " " + o);
-											}
-										}
-									}
-									print("]");
-								}
-							} else {
-								print(",");
-								if (value instanceof Long) {
-									long ref = (Long) value;
-									print("\"_r" + eStructuralFeature.getName() + "\":{\"_i\":" + ref + ",\"_t\":\"" + object.getReusable().getDatabaseInterface().getEClassForOid(ref).getName() + "\"}");
-								} else if (value instanceof HashMapWrappedVirtualObject) {
-									print("\"_e" + eStructuralFeature.getName() + "\":");
-									HashMapWrappedVirtualObject hashMapWrappedVirtualObject = (HashMapWrappedVirtualObject)value;
-									write(hashMapWrappedVirtualObject);
-								} else {
-//									print("\"" + eStructuralFeature.getName() + "\":");
-//									writePrimitive(eStructuralFeature, ((IfcGloballyUniqueId) ref).getWrappedValue());
-								}
-							}
+		JsonSerializationPlan plan = object.getReusable().getPackageMetaData().getJsonSerializationPlan(object.eClass());
+		buffer.write(OBJECT_START);
+		buffer.writeLong(object.getOid());
+		buffer.write(UUID_START);
+		buffer.writeUuid(object.getUuid());
+		buffer.write(RID_START);
+		buffer.writeLong(object.getRid());
+		buffer.write(plan.getTypeBytes());
+		for (int i = 0; i < plan.getNrFeatures(); i++) {
+			if (plan.isHidden(i) && !includeHidden) {
+				continue;
+			}
+			Object value = object.eGet(plan.getFeatureIndex(i));
+			if (value == null) {
+				continue;
+			}
+			switch (plan.getKind(i)) {
+			case JsonSerializationPlan.REFERENCE_LIST:
+				writeReferenceList(object, plan, i, (List<?>) value);
+				break;
+			case JsonSerializationPlan.REFERENCE:
+				if (value instanceof Long) {
+					long ref = (Long) value;
+					buffer.write(plan.getPrefix(i));
+					buffer.writeLong(ref);
+					buffer.write(TYPE_START);
+					buffer.writeAscii(object.getReusable().getDatabaseInterface().getEClassForOid(ref).getName());
+					buffer.write(REFERENCE_END);
+				} else if (value instanceof HashMapWrappedVirtualObject) {
+					buffer.write(plan.getEmbeddedPrefix(i));
+					write((HashMapWrappedVirtualObject) value);
+				} else {
+					buffer.write((byte) ',');
+				}
+				break;
+			case JsonSerializationPlan.ATTRIBUTE_LIST:
+				List<?> list = (List<?>) value;
+				if (SERIALIZE_EMPTY_LISTS || !list.isEmpty()) {
+					buffer.write(plan.getPrefix(i));
+					boolean f = true;
+					for (Object o : list) {
+						if (!f) {
+							buffer.write((byte) ',');
+						} else {
+							f = false;
 						}
-					} else {
-						Object value = object.eGet(eStructuralFeature);
-						if (value != null) {
-							if (eStructuralFeature.isMany()) {
-								List<?> list = (List<?>) value;
-								if (SERIALIZE_EMPTY_LISTS || !list.isEmpty()) {
-									print(",");
-									print("\"" + eStructuralFeature.getName() + "\":[");
-									boolean f = true;
-									for (Object o : list) {
-										if (!f) {
-											print(",");
-										} else {
-											f = false;
-										}
-										writePrimitive(eStructuralFeature, o);
-									}
-									print("]");
-								}
-							} else {
-								print(",");
-								print("\"" + eStructuralFeature.getName() + "\":");
-								writePrimitive(eStructuralFeature, value);
-							}
+						writePrimitive(plan.getFeature(i), o);
+					}
+					buffer.write((byte) ']');
+				}
+				break;
+			default:
+				buffer.write(plan.getPrefix(i));
+				writePrimitive(plan.getFeature(i), value);
+				break;
+			}
+		}
+		buffer.write(OBJECT_END);
+	}
+
+	private void writeReferenceList(HashMapVirtualObject object, JsonSerializationPlan plan, int i, List<?> list) throws IOException, BimserverDatabaseException {
+		if (!SERIALIZE_EMPTY_LISTS && list.isEmpty()) {
+			return;
+		}
+		int wrapped = 0;
+		int referred = 0;
+		for (Object o : list) {
+			if (o instanceof Long) {
+				referred++;
+			} else if (o instanceof HashMapWrappedVirtualObject) {
+				wrapped++;
+			}
+		}
+		// When there are both references and embedded objects (for example IfcTrimmedCurve.Trim1), the references are written as objects
+		// around the oid, so they can be distinguished from the embedded objects
+		if (wrapped == 0 && referred != 0) {
+			buffer.write(plan.getPrefix(i));
+		} else {
+			buffer.write(plan.getEmbeddedPrefix(i));
+		}
+		EStructuralFeature eStructuralFeature = plan.getFeature(i);
+		boolean f = true;
+		for (Object o : list) {
+			if (o == null) {
+				LOGGER.info("Unexpeced null in list " + object.eClass().getName() + ":" + object.getOid() + "." + eStructuralFeature.getName());
+			} else {
+				if (!f) {
+					buffer.write((byte) ',');
+				} else {
+					f = false;
+				}
+				if (o instanceof Long) {
+					long ref = (Long)o;
+					buffer.write(REFERENCE_START);
+					buffer.writeLong(ref);
+					buffer.write(TYPE_START);
+					buffer.writeAscii(object.getReusable().getDatabaseInterface().getEClassForOid(ref).getName());
+					buffer.write(REFERENCE_END);
+				} else if (o instanceof HashMapWrappedVirtualObject) {
+					write((HashMapWrappedVirtualObject) o);
+				} else if (o instanceof HashMapVirtualObject) {
+					write((HashMapVirtualObject) o);
+				} else if (eStructuralFeature.getEAnnotation("twodimensionalarray") != null) {
+					EClass type = (EClass) eStructuralFeature.getEType();
+					EStructuralFeature listFeature = type.getEStructuralFeature("List");
+					List<?> listX = (List<?>)(((HashMapVirtualObject)o).eGet(listFeature));
+					print("[");
+					boolean fq = true;
+					for (Object k : listX) {
+						if (!fq) {
+							print(",");
+						}
+						fq = false;
+						if (k instanceof HashMapWrappedVirtualObject) {
+							write((HashMapWrappedVirtualObject)k);
+						} else {
+							print("\"" + k + "\"");
 						}
 					}
+					print("]");
+				} else {
+					LOGGER.info("Unimplemented " + o.getClass() + " " + o);
 				}
 			}
-			print("}\n");
-//		}
+		}
+		buffer.write((byte) ']');
 	}
 
 	private void write(MinimalVirtualObject object) throws IOException {
@@ -437,9 +492,19 @@ public class SharedJsonStreamingSerializer implements StreamingReader {
         return w;
     }
 
+	private static byte[] bytes(String string) {
+		return string.getBytes(Charsets.UTF_8);
+	}
+
 	private void writePrimitive(EStructuralFeature feature, Object value) throws IOException {
 		if (value instanceof String) {
-			print(quote((String) value));
+			buffer.writeQuoted((String) value);
+		} else if (value instanceof Integer || value instanceof Long || value instanceof Short) {
+			buffer.writeLong(((Number) value).longValue());
+		} else if (value instanceof Double) {
+			buffer.writeAscii(Double.toString((Double) value));
+		} else if (value instanceof Boolean) {
+			buffer.write((Boolean) value ? TRUE : FALSE);
 		} else if (value instanceof byte[]) {
 			print("\"" + new String(Base64.encodeBase64((byte[]) value), Charsets.UTF_8) + "\"");
 		} else if (value instanceof Date) {
@@ -0,0 +1,141 @@
+package org.bimserver.emf;
+
+/******************************************************************************
+ * Copyright (C) 2009-2019  BIMserver.org
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see {@literal<http://www.gnu.org/licenses/>}.
+ *****************************************************************************/
+
+import org.eclipse.emf.ecore.EAttribute;
+import org.eclipse.emf.ecore.EClass;
+import org.eclipse.emf.ecore.EClassifier;
+import org.eclipse.emf.ecore.EStructuralFeature;
+import org.eclipse.emf.ecore.EcorePackage;
+
+/**
+ * Slot layout of the features of one EClass, used by HashMapVirtualObject to store its values in arrays instead of maps.
+ * 
+ * Features are indexed by their EMF feature id (the index in getEAllStructuralFeatures). Single valued primitive attributes and single
+ * references are stored unboxed in a long[] (a reference as the oid), all other features get a slot in an Object[].
+ */
+public class VirtualObjectLayout {
+	public static final byte KIND_OBJECT = 0;
+	public static final byte KIND_INT = 1;
+	public static final byte KIND_LONG = 2;
+	public static final byte KIND_DOUBLE = 3;
+	public static final byte KIND_FLOAT = 4;
+	public static final byte KIND_BOOLEAN = 5;
+	public static final byte KIND_SHORT = 6;
+	public static final byte KIND_REFERENCE = 7;
+	public static final byte KIND_REFERENCE_LIST = 8;
+
+	private final EClass eClass;
+	private final EStructuralFeature[] features;
+	private final byte[] kinds;
+	private final int[] slots;
+	private final int nrPrimitiveSlots;
+	private final int nrObjectSlots;
+
+	public VirtualObjectLayout(EClass eClass) {
+		this.eClass = eClass;
+		this.features = eClass.getEAllStructuralFeatures().toArray(new EStructuralFeature[0]);
+		this.kinds = new byte[features.length];
+		this.slots = new int[features.length];
+		int primitiveSlot = 0;
+		int objectSlot = 0;
+		for (int i = 0; i < features.length; i++) {
+			byte kind = determineKind(features[i]);
+			kinds[i] = kind;
+			if (isPrimitive(kind)) {
+				slots[i] = primitiveSlot++;
+			} else {
+				slots[i] = objectSlot++;
+			}
+		}
+		this.nrPrimitiveSlots = primitiveSlot;
+		this.nrObjectSlots = objectSlot;
+	}
+
+	private static byte determineKind(EStructuralFeature feature) {
+		if (feature.isMany()) {
+			return feature instanceof EAttribute ? KIND_OBJECT : KIND_REFERENCE_LIST;
+		}
+		if (!(feature instanceof EAttribute)) {
+			return KIND_REFERENCE;
+		}
+		EClassifier type = feature.getEType();
+		if (type == EcorePackage.eINSTANCE.getEInt() || type == EcorePackage.eINSTANCE.getEIntegerObject()) {
+			return KIND_INT;
+		} else if (type == EcorePackage.eINSTANCE.getELong() || type == EcorePackage.eINSTANCE.getELongObject()) {
+			return KIND_LONG;
+		} else if (type == EcorePackage.eINSTANCE.getEDouble() || type == EcorePackage.eINSTANCE.getEDoubleObject()) {
+			return KIND_DOUBLE;
+		} else if (type == EcorePackage.eINSTANCE.getEFloat() || type == EcorePackage.eINSTANCE.getEFloatObject()) {
+			return KIND_FLOAT;
+		} else if (type == EcorePackage.eINSTANCE.getEBoolean() || type == EcorePackage.eINSTANCE.getEBooleanObject()) {
+			return KIND_BOOLEAN;
+		} else if (type == EcorePackage.eINSTANCE.getEShort() || type == EcorePackage.eINSTANCE.getEShortObject()) {
+			return KIND_SHORT;
+		}
+		return KIND_OBJECT;
+	}
+
+	public static boolean isPrimitive(byte kind) {
+		return kind != KIND_OBJECT && kind != KIND_REFERENCE_LIST;
+	}
+
+	/**
+	 * @return The index of the given feature in this layout, -1 if the EClass does not have this feature. Features are matched by
+	 *         identity, like the keys of the map this layout replaces.
+	 */
+	public int getIndex(EStructuralFeature feature) {
+		// The id of a feature is its index in the containing class, which is the same in subclasses unless multiple inheritance moved it
+		int index = feature.getFeatureID();
+		if (index >= 0 && index < features.length && features[index] == feature) {
+			return index;
+		}
+		return eClass.getFeatureID(feature);
+	}
+
+	public EClass getEClass() {
+		return eClass;
+	}
+
+	public int getNrFeatures() {
+		return features.length;
+	}
+
+	public EStructuralFeature getFeature(int index) {
+		return features[index];
+	}
+
+	public byte getKind(int index) {
+		return kinds[index];
+	}
+
+	/**
+	 * @return The index in the primitive or the object array, depending on the kind of the feature
+	 */
+	public int getSlot(int index) {
+		return slots[index];
+	}
+
+	public int getNrPrimitiveSlots() {
+		return nrPrimitiveSlots;
+	}
+
+	public int getNrObjectSlots() {
+		return nrObjectSlots;
+	}
+}
@@ -153,7 +153,9 @@ public class MavenPluginRepository {
 	}
 
 	public List<RemoteRepository> getRepositoriesAsList() {
-		return new ArrayList<>(repositories);
+		synchronized (repositories) {
+			return new ArrayList<>(repositories);
+		}
 	}
 	
 	public RepositorySystemSession getSession() {
@@ -173,8 +175,11 @@ public class MavenPluginRepository {
 	}
 
 	public void addRepository(String id, String type, String url){
-		repositories.add(
-			new RemoteRepository.Builder(id, type, url).setProxy(proxySelector.getProxy(url)).build()
-		);
+		// Plugin bundles can be loaded concurrently at startup, all of them registering their repositories here
+		synchronized (repositories) {
+			repositories.add(
+				new RemoteRepository.Builder(id, type, url).setProxy(proxySelector.getProxy(url)).build()
+			);
+		}
 	}
 }
\ No newline at end of file
@@ -17,8 +17,11 @@ package org.bimserver.plugins;
  * along with this program.  If not, see {@literal<http://www.gnu.org/licenses/>}.
  *****************************************************************************/
 
+import java.util.Base64;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.TreeSet;
 
 import org.apache.commons.lang3.NotImplementedException;
 import org.bimserver.interfaces.objects.SArrayType;
@@ -142,6 +145,54 @@ public class PluginConfiguration {
 		return values.containsKey(fullIdentifier);
 	}
 
+	/**
+	 * The values sorted by identifier, in a form that is equal for equal configurations (unlike toString of byte arrays and EMF objects)
+	 */
+	public String toCanonicalString() {
+		StringBuilder sb = new StringBuilder();
+		for (String identifier : new TreeSet<>(values.keySet())) {
+			sb.append(identifier).append("=");
+			appendCanonical(sb, values.get(identifier));
+			sb.append(";");
+		}
+		return sb.toString();
+	}
+
+	private static void appendCanonical(StringBuilder sb, Object value) {
+		if (value instanceof byte[]) {
+			sb.append(Base64.getEncoder().encodeToString((byte[]) value));
+		} else if (value instanceof List) {
+			sb.append("[");
+			for (Object element : (List<?>) value) {
+				appendCanonical(sb, element);
+				sb.append(",");
+			}
+			sb.append("]");
+		} else if (value instanceof BooleanType) {
+			sb.append(((BooleanType) value).isValue());
+		} else if (value instanceof StringType) {
+			sb.append(((StringType) value).getValue());
+		} else if (value instanceof LongType) {
+			sb.append(((LongType) value).getValue());
+		} else if (value instanceof DoubleType) {
+			sb.append(((DoubleType) value).getValue());
+		} else if (value instanceof ByteArrayType) {
+			appendCanonical(sb, ((ByteArrayType) value).getValue());
+		} else if (value instanceof SBooleanType) {
+			sb.append(((SBooleanType) value).isValue());
+		} else if (value instanceof SStringType) {
+			sb.append(((SStringType) value).getValue());
+		} else if (value instanceof SLongType) {
+			sb.append(((SLongType) value).getValue());
+		} else if (value instanceof SDoubleType) {
+			sb.append(((SDoubleType) value).getValue());
+		} else if (value instanceof SByteArrayType) {
+			appendCanonical(sb, ((SByteArrayType) value).getValue());
+		} else {
+			sb.append(value);
+		}
+	}
+
 	public SObjectType toSObjectType() {
 		SObjectType objectType = new SObjectType();
 		
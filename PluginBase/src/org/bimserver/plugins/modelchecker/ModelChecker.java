@@ -18,8 +18,26 @@ package org.bimserver.plugins.modelchecker;
  *****************************************************************************/
 
 import org.bimserver.emf.IfcModelInterface;
+import org.bimserver.emf.PackageMetaData;
 import org.bimserver.models.store.ModelCheckerResult;
 
 public interface ModelChecker {
 	ModelCheckerResult check(IfcModelInterface model, byte[] compiledCode) throws ModelCheckException;
+
+	/**
+	 * Called when a model checker is validated, the result is stored as the compiled code that is passed to the checks
+	 * 
+	 * @return The compiled code, or null to keep the compiled code that is stored
+	 */
+	default byte[] compile(String code) throws ModelCheckException {
+		return null;
+	}
+
+	/**
+	 * @return A check that is fed the objects of the revision one by one, or null when this checker needs the complete model, in which case
+	 *         check(IfcModelInterface, byte[]) is used
+	 */
+	default StreamingModelCheck createStreamingCheck(PackageMetaData packageMetaData, byte[] compiledCode) throws ModelCheckException {
+		return null;
+	}
 }
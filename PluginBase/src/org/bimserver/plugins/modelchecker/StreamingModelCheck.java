@@ -0,0 +1,43 @@
+package org.bimserver.plugins.modelchecker;
+/******************************************************************************
+ * Copyright (C) 2009-2019  BIMserver.org
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see {@literal<http://www.gnu.org/licenses/>}.
+ *****************************************************************************/
+
+import org.bimserver.database.queries.om.Query;
+import org.bimserver.models.store.ModelCheckerResult;
+import org.bimserver.shared.HashMapVirtualObject;
+
+/**
+ * One run of a ModelChecker over a revision, without loading the revision completely. The server reads the revision once for all
+ * checks triggered by that revision, with a query that combines the query parts of all checks, and passes every object to every check.
+ */
+public interface StreamingModelCheck {
+
+	/**
+	 * Declares the types and includes this check needs, by adding one or more QueryParts to the shared query
+	 */
+	void addQueryParts(Query query) throws ModelCheckException;
+
+	/**
+	 * Called for every object of the shared query, so also for objects only requested by other checks, those should be ignored
+	 */
+	void check(HashMapVirtualObject object) throws ModelCheckException;
+
+	/**
+	 * Called after the last object
+	 */
+	ModelCheckerResult getResult() throws ModelCheckException;
+}
@@ -42,7 +42,7 @@ public class CacheStoringStreamingSerializerDataSource extends ExtendedDataSourc
 		boolean closed = false;
 		try {
 			multiplexer = new MultiplexingOutputStream(outputStream, diskCacheOutputStream);
-			serializer.writeToOutputStream(multiplexer);
+			serializer.writeToOutputStream(multiplexer, progressReporter);
 			doneListener.done();
 		} catch (Exception e) {
 			if (multiplexer != null) {
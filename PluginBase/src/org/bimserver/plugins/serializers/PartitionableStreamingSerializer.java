@@ -0,0 +1,46 @@
+package org.bimserver.plugins.serializers;
+
+/******************************************************************************
+ * Copyright (C) 2009-2019  BIMserver.org
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see {@literal<http://www.gnu.org/licenses/>}.
+ *****************************************************************************/
+
+import java.io.OutputStream;
+
+/**
+ * A StreamingSerializer of which the output can be produced in pieces. The header and footer are written once, the objects are
+ * written in partitions that can be serialized concurrently (each with its own ObjectProvider) and are concatenated in order afterwards.
+ *
+ * Only serializers of which the output of an object does not depend on previously written objects (no running line numbers,
+ * no references to earlier output) can implement this.
+ */
+public interface PartitionableStreamingSerializer extends StreamingSerializer {
+	void writeHeader(OutputStream outputStream) throws SerializerException;
+
+	/**
+	 * Writes all objects of the given ObjectProvider. Called concurrently for different partitions, so implementations should not
+	 * keep any state of a partition in fields.
+	 * 
+	 * @return Whether anything has been written
+	 */
+	boolean writePartition(ObjectProvider objectProvider, OutputStream outputStream) throws SerializerException;
+
+	/**
+	 * @return The bytes that have to be written between two non-empty partitions
+	 */
+	byte[] getPartitionSeparator();
+
+	void writeFooter(OutputStream outputStream) throws SerializerException;
+}
@@ -28,5 +28,12 @@ import org.bimserver.plugins.PluginManagerInterface;
 public interface StreamingSerializer {
 	void init(ObjectProvider objectProvider, ProjectInfo projectInfo, IfcHeader ifcHeader, PluginManagerInterface pluginManager, PackageMetaData packageMetaData) throws SerializerException;
 	void writeToOutputStream(OutputStream outputStream) throws SerializerException, BimserverDatabaseException;
+
+	/**
+	 * @param progressReporter Can be null, serializers that do not report progress ignore it
+	 */
+	default void writeToOutputStream(OutputStream outputStream, ProgressReporter progressReporter) throws SerializerException, BimserverDatabaseException {
+		writeToOutputStream(outputStream);
+	}
 	InputStream getInputStream();
 }
\ No newline at end of file
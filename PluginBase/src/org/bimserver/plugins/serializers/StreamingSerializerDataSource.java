@@ -64,7 +64,7 @@ public class StreamingSerializerDataSource extends ExtendedDataSource {
 	}
 
 	public void writeToOutputStream(OutputStream outputStream, ProgressReporter progressReporter) throws SerializerException, IOException, BimserverDatabaseException {
-		serializer.writeToOutputStream(outputStream);
+		serializer.writeToOutputStream(outputStream, progressReporter);
 		try {
 			outputStream.close();
 		} catch (EOFException e) {
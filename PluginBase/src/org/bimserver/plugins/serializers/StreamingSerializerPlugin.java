@@ -48,4 +48,12 @@ public interface StreamingSerializerPlugin extends Plugin {
 	 * @return The output format this serializer outputs when the given Schema is used as the input. These formats have not been standardized, but a list is available on https://github.com/opensourceBIM/BIMserver/wiki/New-remote-service-interface#namespaces
 	 */
 	String getOutputFormat(Schema schema);
+
+	/**
+	 * @return Whether the serializers created by this plugin implement PartitionableStreamingSerializer, in which case large downloads
+	 *         can be serialized by multiple threads. JSON serializers can use PartitionableJsonStreamingSerializer for this.
+	 */
+	default boolean supportsPartitioning() {
+		return false;
+	}
 }
\ No newline at end of file
@@ -31,6 +31,7 @@ import java.util.UUID;
 import org.bimserver.BimserverDatabaseException;
 import org.bimserver.CannotStoreReferenceInFieldException;
 import org.bimserver.emf.PackageMetaData;
+import org.bimserver.emf.VirtualObjectLayout;
 import org.bimserver.models.ifc2x3tc1.Tristate;
 import org.bimserver.plugins.deserializers.DatabaseInterface;
 import org.bimserver.plugins.deserializers.DeserializerErrorCode;
@@ -49,22 +50,41 @@ import org.slf4j.LoggerFactory;
 
 import com.google.common.base.Charsets;
 
+/**
+ * Despite the name (kept because plugins use this class), the values are not stored in a HashMap anymore, but in arrays indexed by
+ * the slots of the VirtualObjectLayout of the EClass. Primitive values and single references are stored unboxed, reference lists are
+ * stored in an OidList.
+ * 
+ * Values of features the EClass does not have are accepted, like the map based implementation did. They are kept in maps, can be read
+ * back with eGet, but are never written to the database.
+ */
 public class HashMapVirtualObject extends AbstractHashMapVirtualObject implements VirtualObject {
 	private static final Logger LOGGER = LoggerFactory.getLogger(VirtualObject.class);
-	private final Map<EStructuralFeature, Object> map = new HashMap<>();
+	private static final long[] NO_PRIMITIVES = new long[0];
+	private static final Object[] NO_OBJECTS = new Object[0];
+	private static final byte UNSET = 0;
+	private static final byte SET = 1;
+	
+	// Set, but the value is in the overflow array, for example a null or a wrapped value for a primitive/reference feature
+	private static final byte OVERFLOW = 2;
+	private final VirtualObjectLayout layout;
+	private final byte[] states;
+	private final long[] primitives;
+	private final Object[] objects;
+	private Object[] overflow;
 	private EClass eClass;
 	private long oid;
 	private UUID uuid;
 	private QueryContext reusable;
-	private Map<EStructuralFeature, Object> useForSerializationFeatures = new HashMap<>();
-	private HashMap<EReference, AbstractHashMapVirtualObject> directReferences;
-	private HashMap<EReference, Set<HashMapVirtualObject>> directListReferences;
+	private Object[] useForSerializationFeatures;
+	private AbstractHashMapVirtualObject[] directReferences;
+	private Object[] directListReferences;
+	private Map<EStructuralFeature, Object> foreignValues;
+	private Map<EStructuralFeature, AbstractHashMapVirtualObject> foreignDirectReferences;
+	private Map<EStructuralFeature, Set<HashMapVirtualObject>> foreignDirectListReferences;
 
 	public HashMapVirtualObject(QueryContext reusable, EClass eClass) {
-		this.reusable = reusable;
-		this.eClass = eClass;
-		this.oid = reusable.getDatabaseInterface().newOid(eClass);
-		this.uuid = reusable.getDatabaseInterface().newUuid();
+		this(reusable, eClass, reusable.getDatabaseInterface().newOid(eClass), reusable.getDatabaseInterface().newUuid());
 	}
 
 	public HashMapVirtualObject(QueryContext reusable, EClass eClass, long oid, UUID uuid) {
@@ -72,6 +92,124 @@ public class HashMapVirtualObject extends AbstractHashMapVirtualObject implement
 		this.eClass = eClass;
 		this.oid = oid;
 		this.uuid = uuid;
+		this.layout = reusable.getPackageMetaData().getVirtualObjectLayout(eClass);
+		this.states = new byte[layout.getNrFeatures()];
+		this.primitives = layout.getNrPrimitiveSlots() == 0 ? NO_PRIMITIVES : new long[layout.getNrPrimitiveSlots()];
+		this.objects = layout.getNrObjectSlots() == 0 ? NO_OBJECTS : new Object[layout.getNrObjectSlots()];
+	}
+	
+	private Map<EStructuralFeature, Object> getOrCreateForeignValues() {
+		if (foreignValues == null) {
+			foreignValues = new HashMap<>();
+		}
+		return foreignValues;
+	}
+
+	private Object getValue(int index) {
+		byte state = states[index];
+		if (state == UNSET) {
+			return null;
+		} else if (state == OVERFLOW) {
+			return overflow[index];
+		}
+		int slot = layout.getSlot(index);
+		switch (layout.getKind(index)) {
+		case VirtualObjectLayout.KIND_INT:
+			return (int) primitives[slot];
+		case VirtualObjectLayout.KIND_LONG:
+		case VirtualObjectLayout.KIND_REFERENCE:
+			return primitives[slot];
+		case VirtualObjectLayout.KIND_DOUBLE:
+			return Double.longBitsToDouble(primitives[slot]);
+		case VirtualObjectLayout.KIND_FLOAT:
+			return Float.intBitsToFloat((int) primitives[slot]);
+		case VirtualObjectLayout.KIND_BOOLEAN:
+			return primitives[slot] != 0;
+		case VirtualObjectLayout.KIND_SHORT:
+			return (short) primitives[slot];
+		default:
+			return objects[slot];
+		}
+	}
+
+	private void setValue(int index, Object value) {
+		byte kind = layout.getKind(index);
+		int slot = layout.getSlot(index);
+		if (!VirtualObjectLayout.isPrimitive(kind)) {
+			objects[slot] = value;
+			states[index] = SET;
+		} else if (setPrimitive(kind, slot, value)) {
+			states[index] = SET;
+			if (overflow != null) {
+				overflow[index] = null;
+			}
+		} else {
+			if (overflow == null) {
+				overflow = new Object[states.length];
+			}
+			overflow[index] = value;
+			states[index] = OVERFLOW;
+		}
+	}
+
+	/*
+	 * Values that do not have the exact type of the feature are not converted, they end up in the overflow array as they are
+	 */
+	private boolean setPrimitive(byte kind, int slot, Object value) {
+		switch (kind) {
+		case VirtualObjectLayout.KIND_INT:
+			if (value instanceof Integer) {
+				primitives[slot] = (Integer) value;
+				return true;
+			}
+			break;
+		case VirtualObjectLayout.KIND_LONG:
+		case VirtualObjectLayout.KIND_REFERENCE:
+			if (value instanceof Long) {
+				primitives[slot] = (Long) value;
+				return true;
+			}
+			break;
+		case VirtualObjectLayout.KIND_DOUBLE:
+			if (value instanceof Double) {
+				primitives[slot] = Double.doubleToRawLongBits((Double) value);
+				return true;
+			}
+			break;
+		case VirtualObjectLayout.KIND_FLOAT:
+			if (value instanceof Float) {
+				primitives[slot] = Float.floatToRawIntBits((Float) value);
+				return true;
+			}
+			break;
+		case VirtualObjectLayout.KIND_BOOLEAN:
+			if (value instanceof Boolean) {
+				primitives[slot] = ((Boolean) value) ? 1 : 0;
+				return true;
+			}
+			break;
+		case VirtualObjectLayout.KIND_SHORT:
+			if (value instanceof Short) {
+				primitives[slot] = (Short) value;
+				return true;
+			}
+			break;
+		default:
+			break;
+		}
+		return false;
+	}
+
+	private void setReferenceOid(int index, long referenceOid) {
+		if (layout.getKind(index) == VirtualObjectLayout.KIND_REFERENCE) {
+			primitives[layout.getSlot(index)] = referenceOid;
+			states[index] = SET;
+			if (overflow != null) {
+				overflow[index] = null;
+			}
+		} else {
+			setValue(index, referenceOid);
+		}
 	}
 	
 	public void prepareForCopy(QueryContext queryContext) {
@@ -84,7 +222,20 @@ public class HashMapVirtualObject extends AbstractHashMapVirtualObject implement
 	}
 	
 	public void eUnset(EStructuralFeature feature) {
-		map.remove(feature);
+		int index = layout.getIndex(feature);
+		if (index == -1) {
+			if (foreignValues != null) {
+				foreignValues.remove(feature);
+			}
+			return;
+		}
+		states[index] = UNSET;
+		if (!VirtualObjectLayout.isPrimitive(layout.getKind(index))) {
+			objects[layout.getSlot(index)] = null;
+		}
+		if (overflow != null) {
+			overflow[index] = null;
+		}
 	}
 	
 	public QueryContext getReusable() {
@@ -92,20 +243,43 @@ public class HashMapVirtualObject extends AbstractHashMapVirtualObject implement
 	}
 
 	public void setAttribute(EAttribute eAttribute, Object val) {
-		map.put(eAttribute, val);
+		int index = layout.getIndex(eAttribute);
+		if (index == -1) {
+			getOrCreateForeignValues().put(eAttribute, val);
+		} else {
+			setValue(index, val);
+		}
 	}
 
 	public Object eGet(EStructuralFeature feature) {
-		return map.get(feature);
+		int index = layout.getIndex(feature);
+		if (index == -1) {
+			return foreignValues == null ? null : foreignValues.get(feature);
+		}
+		return getValue(index);
+	}
+
+	/**
+	 * @param featureIndex The index of the feature in getEAllStructuralFeatures of the EClass of this object
+	 */
+	public Object eGet(int featureIndex) {
+		return getValue(featureIndex);
 	}
 
 	public Object get(String featureName) {
 		EStructuralFeature eStructuralFeature = eClass.getEStructuralFeature(featureName);
-		return map.get(eStructuralFeature);
+		if (eStructuralFeature == null) {
+			return null;
+		}
+		return eGet(eStructuralFeature);
 	}
 	
 	public boolean eIsSet(EStructuralFeature feature) {
-		return map.containsKey(feature);
+		int index = layout.getIndex(feature);
+		if (index == -1) {
+			return foreignValues != null && foreignValues.containsKey(feature);
+		}
+		return states[index] != UNSET;
 	}
 	
 	public EClass eClass() {
@@ -154,10 +328,11 @@ public class HashMapVirtualObject extends AbstractHashMapVirtualObject implement
 		int size = 16;
 		int lastSize = 0;
 
-		for (EStructuralFeature eStructuralFeature : eClass().getEAllStructuralFeatures()) {
+		for (int index = 0; index < layout.getNrFeatures(); index++) {
+			EStructuralFeature eStructuralFeature = layout.getFeature(index);
 			if (getPackageMetaData().useForDatabaseStorage(eClass, eStructuralFeature)) {
-				if (!useUnsetBit(eStructuralFeature)) {
-					Object val = eGet(eStructuralFeature);
+				if (!useUnsetBit(index)) {
+					Object val = getValue(index);
 					if (eStructuralFeature instanceof EAttribute) {
 						EAttribute eAttribute = (EAttribute) eStructuralFeature;
 						if (eAttribute.isMany()) {
@@ -189,11 +364,12 @@ public class HashMapVirtualObject extends AbstractHashMapVirtualObject implement
 		return size;
 	}
 	
-	private boolean useUnsetBit(EStructuralFeature feature) {
+	private boolean useUnsetBit(int index) {
 		// TODO non-unsettable boolean values can also be stored in these bits
-		Object value = eGet(feature);
+		EStructuralFeature feature = layout.getFeature(index);
+		Object value = getValue(index);
 		if (feature.isUnsettable()) {
-			if (!eIsSet(feature)) {
+			if (states[index] == UNSET) {
 				return true;
 			}
 		} else {
@@ -216,9 +392,9 @@ public class HashMapVirtualObject extends AbstractHashMapVirtualObject implement
 		ByteBuffer buffer = ByteBuffer.allocate(bufferSize);
 		byte[] unsetted = new byte[getPackageMetaData().getUnsettedLength(eClass)];
 		int fieldCounter = 0;
-		for (EStructuralFeature feature : eClass().getEAllStructuralFeatures()) {
-			if (getPackageMetaData().useForDatabaseStorage(eClass, feature)) {
-				if (useUnsetBit(feature)) {
+		for (int index = 0; index < layout.getNrFeatures(); index++) {
+			if (getPackageMetaData().useForDatabaseStorage(eClass, layout.getFeature(index))) {
+				if (useUnsetBit(index)) {
 					unsetted[fieldCounter / 8] |= (1 << (fieldCounter % 8));
 				}
 				fieldCounter++;
@@ -234,13 +410,14 @@ public class HashMapVirtualObject extends AbstractHashMapVirtualObject implement
 		buffer.putLong(getUuid().getMostSignificantBits());
 		buffer.putLong(getUuid().getLeastSignificantBits());
 		
-		for (EStructuralFeature feature : eClass().getEAllStructuralFeatures()) {
+		for (int index = 0; index < layout.getNrFeatures(); index++) {
+			EStructuralFeature feature = layout.getFeature(index);
 			if (getPackageMetaData().useForDatabaseStorage(eClass, feature)) {
-				if (!useUnsetBit(feature)) {
+				if (!useUnsetBit(index)) {
 					if (feature.isMany()) {
 						writeList(this, buffer, getPackageMetaData(), feature);
 					} else {
-						Object value = eGet(feature);
+						Object value = getValue(index);
 						if (feature.getEType() instanceof EEnum) {
 							if (value == null) {
 								buffer.putInt(-1);
@@ -504,10 +681,19 @@ public class HashMapVirtualObject extends AbstractHashMapVirtualObject implement
 
 	@SuppressWarnings({ "rawtypes", "unchecked" })
 	private List getOrCreateList(EStructuralFeature structuralFeature, int minSize) {
-		List list = (List<?>) map.get(structuralFeature);
+		int index = layout.getIndex(structuralFeature);
+		List list = (List<?>) (index == -1 ? eGet(structuralFeature) : getValue(index));
 		if (list == null) {
-			list = new ArrayList(minSize == -1 ? 0 : minSize);
-			map.put(structuralFeature, list);
+			if (index != -1 && layout.getKind(index) == VirtualObjectLayout.KIND_REFERENCE_LIST) {
+				list = new OidList(minSize == -1 ? 0 : minSize);
+			} else {
+				list = new ArrayList(minSize == -1 ? 0 : minSize);
+			}
+			if (index == -1) {
+				getOrCreateForeignValues().put(structuralFeature, list);
+			} else {
+				setValue(index, list);
+			}
 		}
 		while (list.size() < minSize) {
 			list.add(null);
@@ -543,7 +729,12 @@ public class HashMapVirtualObject extends AbstractHashMapVirtualObject implement
 		if (!definedType.isSuperTypeOf(referencedEClass)) {
 			throw new CannotStoreReferenceInFieldException(DeserializerErrorCode.REFERENCED_OBJECT_CANNOT_BE_STORED_IN_THIS_FIELD, "Cannot store a " + referencedEClass.getName() + " in " + eClass().getName() + "." + eReference.getName() + " of type " + definedType.getName());
 		}
-		map.put(eReference, referenceOid);
+		int index = layout.getIndex(eReference);
+		if (index == -1) {
+			getOrCreateForeignValues().put(eReference, referenceOid);
+		} else {
+			setReferenceOid(index, referenceOid);
+		}
 	}
 
 	@Override
@@ -558,7 +749,12 @@ public class HashMapVirtualObject extends AbstractHashMapVirtualObject implement
 		if (!definedType.isSuperTypeOf(referencedEClass)) {
 			throw new CannotStoreReferenceInFieldException(DeserializerErrorCode.REFERENCED_OBJECT_CANNOT_BE_STORED_IN_THIS_FIELD, "Cannot store a " + referencedEClass.getName() + " in " + eClass().getName() + "." + eReference.getName() + " of type " + definedType.getName());
 		}
-		map.put(eReference, wrappedVirtualObject);
+		int index = layout.getIndex(eReference);
+		if (index == -1) {
+			getOrCreateForeignValues().put(eReference, wrappedVirtualObject);
+		} else {
+			setValue(index, wrappedVirtualObject);
+		}
 	}
 
 	@Override
@@ -576,7 +772,18 @@ public class HashMapVirtualObject extends AbstractHashMapVirtualObject implement
 
 	public boolean has(String key) {
 		EStructuralFeature eStructuralFeature = eClass.getEStructuralFeature(key);
-		return map.containsKey(eStructuralFeature) && map.get(eStructuralFeature) != null;
+		if (eStructuralFeature == null) {
+			return false;
+		}
+		return eGet(eStructuralFeature) != null;
+	}
+
+	private Object getUseForSerialization(EStructuralFeature feature) {
+		if (useForSerializationFeatures == null) {
+			return null;
+		}
+		int featureIndex = layout.getIndex(feature);
+		return featureIndex == -1 ? null : useForSerializationFeatures[featureIndex];
 	}
 
 	@SuppressWarnings("unchecked")
@@ -584,8 +791,8 @@ public class HashMapVirtualObject extends AbstractHashMapVirtualObject implement
 		if (feature instanceof EAttribute) {
 			return true;
 		}
-		if (useForSerializationFeatures.containsKey(feature)) {
-			Object object = useForSerializationFeatures.get(feature);
+		Object object = getUseForSerialization(feature);
+		if (object != null) {
 			if (object instanceof Set) {
 				Set<Integer> set = (Set<Integer>) object;
 				if (set.contains(index)) {
@@ -602,12 +809,19 @@ public class HashMapVirtualObject extends AbstractHashMapVirtualObject implement
 		if (feature instanceof EAttribute) {
 			return true;
 		}
-		return useForSerializationFeatures.containsKey(feature);
+		return getUseForSerialization(feature) != null;
+	}
+
+	private Object[] getOrCreateUseForSerializationFeatures() {
+		if (useForSerializationFeatures == null) {
+			useForSerializationFeatures = new Object[states.length];
+		}
+		return useForSerializationFeatures;
 	}
 
 	public void addUseForSerialization(EStructuralFeature eStructuralFeature) {
 		if (eStructuralFeature.getEContainingClass().isSuperTypeOf(eClass)) {
-			useForSerializationFeatures.put(eStructuralFeature, true);
+			getOrCreateUseForSerializationFeatures()[layout.getIndex(eStructuralFeature)] = Boolean.TRUE;
 		} else {
 			throw new IllegalArgumentException(eStructuralFeature.getName() + " does not exist in " + eClass.getName());
 		}
@@ -616,10 +830,16 @@ public class HashMapVirtualObject extends AbstractHashMapVirtualObject implement
 	@SuppressWarnings("unchecked")
 	public void addUseForSerialization(EStructuralFeature eStructuralFeature, int index) {
 		if (eStructuralFeature.getEContainingClass().isSuperTypeOf(eClass)) {
-			Set<Object> set = (Set<Object>) useForSerializationFeatures.get(eStructuralFeature);
+			Object[] features = getOrCreateUseForSerializationFeatures();
+			int featureIndex = layout.getIndex(eStructuralFeature);
+			if (features[featureIndex] == Boolean.TRUE) {
+				// Already used completely, no need to keep track of the indices
+				return;
+			}
+			Set<Object> set = (Set<Object>) features[featureIndex];
 			if (set == null) {
 				set = new HashSet<>();
-				useForSerializationFeatures.put(eStructuralFeature, set);
+				features[featureIndex] = set;
 			}
 			set.add(index);
 		} else {
@@ -649,49 +869,77 @@ public class HashMapVirtualObject extends AbstractHashMapVirtualObject implement
 	public String toString() {
 		StringBuilder sb = new StringBuilder();
 		sb.append(eClass.getName() + " " + getOid() + "\n");
-		for (EStructuralFeature eStructuralFeature : map.keySet()) {
-			sb.append("\t" + eStructuralFeature.getName() + ": " + map.get(eStructuralFeature) + "\n");
+		for (int index = 0; index < states.length; index++) {
+			if (states[index] != UNSET) {
+				sb.append("\t" + layout.getFeature(index).getName() + ": " + getValue(index) + "\n");
+			}
 		}
 		return sb.toString();
 	}
 
 	public void setDirectReference(EReference feature2, AbstractHashMapVirtualObject byOid) {
+		int index = layout.getIndex(feature2);
+		if (index == -1) {
+			if (foreignDirectReferences == null) {
+				foreignDirectReferences = new HashMap<>();
+			}
+			foreignDirectReferences.put(feature2, byOid);
+			return;
+		}
 		if (directReferences == null) {
-			directReferences = new HashMap<>();
+			directReferences = new AbstractHashMapVirtualObject[states.length];
 		}
-		directReferences.put(feature2, byOid);
+		directReferences[index] = byOid;
 	}
 
+	@SuppressWarnings("unchecked")
 	public int addDirectListReference(EReference feature2, HashMapVirtualObject byOid) {
-		if (directListReferences == null) {
-			directListReferences = new HashMap<>();
-		}
-		Set<HashMapVirtualObject> set = directListReferences.get(feature2);
-		if (set == null) {
-			set = new HashSet<>();
-			directListReferences.put(feature2, set);
+		int index = layout.getIndex(feature2);
+		Set<HashMapVirtualObject> set;
+		if (index == -1) {
+			if (foreignDirectListReferences == null) {
+				foreignDirectListReferences = new HashMap<>();
+			}
+			set = foreignDirectListReferences.computeIfAbsent(feature2, k -> new HashSet<>());
+		} else {
+			if (directListReferences == null) {
+				directListReferences = new Object[states.length];
+			}
+			set = (Set<HashMapVirtualObject>) directListReferences[index];
+			if (set == null) {
+				set = new HashSet<>();
+				directListReferences[index] = set;
+			}
 		}
 		set.add(byOid);
 		return set.size() - 1;
 	}
 
 	public AbstractHashMapVirtualObject getDirectFeature(EStructuralFeature representationFeature) {
-		if (directReferences == null) {
-			return null;
+		int index = layout.getIndex(representationFeature);
+		if (index == -1) {
+			return foreignDirectReferences == null ? null : foreignDirectReferences.get(representationFeature);
 		}
-		return directReferences.get(representationFeature);
+		return directReferences == null ? null : directReferences[index];
 	}
 
+	@SuppressWarnings("unchecked")
 	public Set<HashMapVirtualObject> getDirectListFeature(EStructuralFeature representationFeature) {
-		if (directListReferences == null) {
-			return null;
+		int index = layout.getIndex(representationFeature);
+		if (index == -1) {
+			return foreignDirectListReferences == null ? null : foreignDirectListReferences.get(representationFeature);
 		}
-		return directListReferences.get(representationFeature);
+		return directListReferences == null ? null : (Set<HashMapVirtualObject>) directListReferences[index];
 	}
 
+	@SuppressWarnings("unchecked")
 	public void addReference(EReference eReference, EClass eClassForOid, long referencedOid) {
-		List<Long> list = getOrCreateList(eReference, 0);
-		list.add(referencedOid);
+		List<Object> list = getOrCreateList(eReference, 0);
+		if (list instanceof OidList) {
+			((OidList) list).addOid(referencedOid);
+		} else {
+			list.add(referencedOid);
+		}
 	}
 
 	public UUID getUuid() {
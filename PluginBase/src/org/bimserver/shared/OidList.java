@@ -0,0 +1,161 @@
+package org.bimserver.shared;
+
+/******************************************************************************
+ * Copyright (C) 2009-2019  BIMserver.org
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see {@literal<http://www.gnu.org/licenses/>}.
+ *****************************************************************************/
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.RandomAccess;
+
+/**
+ * List used by HashMapVirtualObject for reference lists. As long as it only contains oids (and nulls) the values are kept in a long[],
+ * when anything else is added (wrapped values, embedded objects), it switches to an Object[].
+ */
+public class OidList extends AbstractList<Object> implements RandomAccess {
+	private static final long NULL_OID = Long.MIN_VALUE;
+	private long[] oids;
+	private Object[] objects;
+	private int size;
+
+	public OidList(int initialCapacity) {
+		oids = new long[Math.max(initialCapacity, 4)];
+	}
+
+	@Override
+	public Object get(int index) {
+		checkIndex(index);
+		if (objects != null) {
+			return objects[index];
+		}
+		long oid = oids[index];
+		return oid == NULL_OID ? null : oid;
+	}
+
+	/**
+	 * @return Whether this list only contains oids, in which case getOid can be used to read them without boxing
+	 */
+	public boolean isOidsOnly() {
+		return objects == null;
+	}
+
+	public long getOid(int index) {
+		checkIndex(index);
+		if (objects != null) {
+			return (Long) objects[index];
+		}
+		return oids[index];
+	}
+
+	@Override
+	public Object set(int index, Object element) {
+		checkIndex(index);
+		Object old = get(index);
+		store(index, element);
+		return old;
+	}
+
+	@Override
+	public void add(int index, Object element) {
+		if (index < 0 || index > size) {
+			throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+		}
+		if (objects != null) {
+			if (size == objects.length) {
+				objects = Arrays.copyOf(objects, size * 2);
+			}
+			System.arraycopy(objects, index, objects, index + 1, size - index);
+		} else {
+			if (size == oids.length) {
+				oids = Arrays.copyOf(oids, size * 2);
+			}
+			System.arraycopy(oids, index, oids, index + 1, size - index);
+		}
+		size++;
+		modCount++;
+		store(index, element);
+	}
+
+	public void addOid(long oid) {
+		if (objects != null) {
+			add(oid);
+			return;
+		}
+		if (size == oids.length) {
+			oids = Arrays.copyOf(oids, size * 2);
+		}
+		oids[size++] = oid;
+		modCount++;
+	}
+
+	@Override
+	public Object remove(int index) {
+		checkIndex(index);
+		Object old = get(index);
+		if (objects != null) {
+			System.arraycopy(objects, index + 1, objects, index, size - index - 1);
+			objects[size - 1] = null;
+		} else {
+			System.arraycopy(oids, index + 1, oids, index, size - index - 1);
+		}
+		size--;
+		modCount++;
+		return old;
+	}
+
+	@Override
+	public void clear() {
+		size = 0;
+		if (objects != null) {
+			objects = null;
+			oids = new long[4];
+		}
+		modCount++;
+	}
+
+	@Override
+	public int size() {
+		return size;
+	}
+
+	private void store(int index, Object element) {
+		if (objects == null) {
+			if (element == null) {
+				oids[index] = NULL_OID;
+				return;
+			} else if (element instanceof Long) {
+				oids[index] = (Long) element;
+				return;
+			}
+			inflate();
+		}
+		objects[index] = element;
+	}
+
+	private void inflate() {
+		objects = new Object[Math.max(oids.length, size)];
+		for (int i = 0; i < size; i++) {
+			objects[i] = oids[i] == NULL_OID ? null : oids[i];
+		}
+		oids = null;
+	}
+
+	private void checkIndex(int index) {
+		if (index < 0 || index >= size) {
+			throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+		}
+	}
+}
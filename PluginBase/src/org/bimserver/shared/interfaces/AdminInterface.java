@@ -231,6 +231,24 @@ public interface AdminInterface extends PublicInterface {
 	@WebMethod(action = "getMetrics")
 	SMetrics getMetrics() throws UserException, ServerException;
 
+	/**
+	 * Get the memory budget for checkins and downloads, and the memory currently reserved by running jobs
+	 * @return JSON object with the "budget", the total "reserved", and per job the "requested" and "reserved" bytes ("reservations")
+	 * @throws UserException
+	 * @throws ServerException
+	 */
+	@WebMethod(action = "getMemoryReservations")
+	String getMemoryReservations() throws UserException, ServerException;
+
+	/**
+	 * Get the statistics of the Berkeley DB cache, cleaner and checkpointer
+	 * @return JSON object with the "cachePolicy", "cache", "cleaner" and "checkpointer" statistics, the cache mode per table ("cacheModes") and, when self tuning is enabled, the current settings ("tuning")
+	 * @throws UserException
+	 * @throws ServerException
+	 */
+	@WebMethod(action = "getDatabaseCacheStatistics")
+	String getDatabaseCacheStatistics() throws UserException, ServerException;
+
 	@WebMethod(action = "shutdown")
 	void shutdown() throws UserException, ServerException;
 
@@ -1517,6 +1517,40 @@ public interface ServiceInterface extends PublicInterface {
 	
 	@WebMethod(action = "getNrPrimitivesTotal")
 	Long getNrPrimitivesTotal(@WebParam(name = "roids", partName = "getNrPrimitivesTotal.roids") Set<Long> roids) throws ServerException, UserException;
+
+	/**
+	 * Combines the statistics that are kept for every revision (when it is checked in and when its geometry is generated), without reading the objects of the revisions.
+	 * The result is a JSON object with the number of objects per type ("objectCounts"), the totals of the products with geometry ("total": count, triangles, vertices, area, volume, min and max)
+	 * and, when groupBy is given, the same totals per group ("groups"). Revisions for which no statistics are available are listed in "missing".
+	 * 
+	 * @param roids Revision-IDs of the revisions to combine
+	 * @param groupBy "type", "storey", "classification", or empty for only the totals
+	 * @return JSON object with the combined statistics
+	 * @throws ServerException
+	 * @throws UserException
+	 */
+	@WebMethod(action = "getAggregatedStatistics")
+	String getAggregatedStatistics(
+		@WebParam(name = "roids", partName = "getAggregatedStatistics.roids") Set<Long> roids,
+		@WebParam(name = "groupBy", partName = "getAggregatedStatistics.groupBy") String groupBy) throws ServerException, UserException;
+
+	/**
+	 * Runs a query without serializing the results and returns how the objects were read. The result is a JSON object with one list per
+	 * query part ("queryParts"), holding per type the access path ("TYPE_SCAN", "POINT_SEEKS" or "EMPTY"), the filter, the estimated number
+	 * of records a scan reads, the number of candidates and whether the access path was chosen on cost ("costBased"), plus the number of
+	 * records read ("reads"), skipped ("skipped") and returned ("objects"). Only classification filters are chosen on cost, the access
+	 * paths of the other query parts are fixed.
+	 * 
+	 * @param roids A set of Revision ObjectIDs
+	 * @param query The query to explain (JSON), the same as for download
+	 * @return JSON object with the plan
+	 * @throws ServerException
+	 * @throws UserException
+	 */
+	@WebMethod(action = "explainQuery")
+	String explainQuery(
+		@WebParam(name = "roids", partName = "explainQuery.roids") Set<Long> roids,
+		@WebParam(name = "query", partName = "explainQuery.query") String query) throws ServerException, UserException;
 	
 	/**
 	 * @param poid
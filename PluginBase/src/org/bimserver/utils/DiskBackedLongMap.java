@@ -0,0 +1,131 @@
+package org.bimserver.utils;
+
+/******************************************************************************
+ * Copyright (C) 2009-2019  BIMserver.org
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see {@literal<http://www.gnu.org/licenses/>}.
+ *****************************************************************************/
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Map of non-negative long keys to long values, stored in a memory mapped temporary file instead of on the heap, so the heap use does
+ * not depend on the number of entries (the operating system decides how much of the file is kept in memory).
+ *
+ * Open addressing with linear probing, the table is doubled (into a new file) when it is half full. The table is limited to 2^26 slots
+ * (a 1GB file), so at most 2^25 entries.
+ */
+public class DiskBackedLongMap implements Closeable {
+	private static final int SLOT_SIZE = 16;
+	private static final int MAX_CAPACITY = 1 << 26;
+	private final Path tempDir;
+	private Path file;
+	private FileChannel channel;
+	private MappedByteBuffer buffer;
+	private int capacity;
+	private int size;
+
+	public DiskBackedLongMap(Path tempDir) throws IOException {
+		this.tempDir = tempDir;
+		allocate(1 << 16);
+	}
+
+	private void allocate(int newCapacity) throws IOException {
+		Path newFile = Files.createTempFile(tempDir, "longmap", ".tmp");
+		FileChannel newChannel = FileChannel.open(newFile, StandardOpenOption.READ, StandardOpenOption.WRITE);
+		// A newly mapped file is filled with zeros, which is the empty slot (keys are stored + 1)
+		MappedByteBuffer newBuffer = newChannel.map(MapMode.READ_WRITE, 0, (long) newCapacity * SLOT_SIZE);
+		MappedByteBuffer oldBuffer = buffer;
+		int oldCapacity = capacity;
+		buffer = newBuffer;
+		capacity = newCapacity;
+		if (oldBuffer != null) {
+			for (int slot = 0; slot < oldCapacity; slot++) {
+				long storedKey = oldBuffer.getLong(slot * SLOT_SIZE);
+				if (storedKey != 0) {
+					int newSlot = find(storedKey - 1);
+					buffer.putLong(newSlot * SLOT_SIZE, storedKey);
+					buffer.putLong(newSlot * SLOT_SIZE + 8, oldBuffer.getLong(slot * SLOT_SIZE + 8));
+				}
+			}
+			closeFile();
+		}
+		file = newFile;
+		channel = newChannel;
+	}
+
+	private int find(long key) {
+		int mask = capacity - 1;
+		int slot = (int) ((key * 0x9E3779B97F4A7C15L) >>> 40) & mask;
+		while (true) {
+			long storedKey = buffer.getLong(slot * SLOT_SIZE);
+			if (storedKey == 0 || storedKey == key + 1) {
+				return slot;
+			}
+			slot = (slot + 1) & mask;
+		}
+	}
+
+	/**
+	 * @return The value, or -1 when there is no entry for the key
+	 */
+	public long get(long key) {
+		int slot = find(key);
+		if (buffer.getLong(slot * SLOT_SIZE) == 0) {
+			return -1;
+		}
+		return buffer.getLong(slot * SLOT_SIZE + 8);
+	}
+
+	public void put(long key, long value) throws IOException {
+		if (key < 0) {
+			throw new IllegalArgumentException("Negative key " + key);
+		}
+		int slot = find(key);
+		if (buffer.getLong(slot * SLOT_SIZE) == 0) {
+			if ((size + 1) * 2 > capacity) {
+				if (capacity == MAX_CAPACITY) {
+					throw new IOException("Too many entries (" + size + ")");
+				}
+				allocate(capacity * 2);
+				slot = find(key);
+			}
+			buffer.putLong(slot * SLOT_SIZE, key + 1);
+			size++;
+		}
+		buffer.putLong(slot * SLOT_SIZE + 8, value);
+	}
+
+	public int size() {
+		return size;
+	}
+
+	private void closeFile() throws IOException {
+		channel.close();
+		Files.deleteIfExists(file);
+	}
+
+	@Override
+	public void close() throws IOException {
+		buffer = null;
+		closeFile();
+	}
+}
@@ -0,0 +1,52 @@
+package org.bimserver.plugins;
+
+/******************************************************************************
+ * Copyright (C) 2009-2019  BIMserver.org
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see {@literal<http://www.gnu.org/licenses/>}.
+ *****************************************************************************/
+
+import java.util.List;
+
+import org.bimserver.interfaces.objects.SPluginBundleVersion;
+import org.bimserver.interfaces.objects.SPluginInformation;
+
+public class PluginBundleLoadRequest {
+	private final PluginBundleVersionIdentifier pluginBundleVersionIdentifier;
+	private final SPluginBundleVersion pluginBundleVersion;
+	private final List<SPluginInformation> plugins;
+
+	public PluginBundleLoadRequest(PluginBundleVersionIdentifier pluginBundleVersionIdentifier, SPluginBundleVersion pluginBundleVersion, List<SPluginInformation> plugins) {
+		this.pluginBundleVersionIdentifier = pluginBundleVersionIdentifier;
+		this.pluginBundleVersion = pluginBundleVersion;
+		this.plugins = plugins;
+	}
+
+	public PluginBundleVersionIdentifier getPluginBundleVersionIdentifier() {
+		return pluginBundleVersionIdentifier;
+	}
+
+	public SPluginBundleVersion getPluginBundleVersion() {
+		return pluginBundleVersion;
+	}
+
+	public List<SPluginInformation> getPlugins() {
+		return plugins;
+	}
+
+	@Override
+	public String toString() {
+		return pluginBundleVersionIdentifier.getHumanReadable();
+	}
+}
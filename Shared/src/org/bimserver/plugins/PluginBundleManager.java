@@ -12,12 +12,18 @@ import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.jar.JarEntry;
 import java.util.jar.JarFile;
 import java.util.jar.JarInputStream;
@@ -38,9 +44,10 @@ import org.bimserver.interfaces.objects.SPluginBundleVersion;
 import org.bimserver.interfaces.objects.SPluginInformation;
 import org.bimserver.plugins.classloaders.DelegatingClassLoader;
 import org.bimserver.plugins.classloaders.EclipsePluginClassloader;
-import org.bimserver.plugins.classloaders.FileJarClassLoader;
+import org.bimserver.plugins.classloaders.MappedJarClassLoader;
 import org.bimserver.plugins.classloaders.JarClassLoader;
 import org.bimserver.plugins.classloaders.PublicFindClassClassLoader;
+import org.bimserver.plugins.serializers.ProgressReporter;
 import org.bimserver.plugins.web.WebModulePlugin;
 import org.bimserver.shared.exceptions.PluginException;
 import org.bimserver.shared.exceptions.UserException;
@@ -70,19 +77,22 @@ import org.slf4j.LoggerFactory;
 public class PluginBundleManager implements AutoCloseable {
 	private static final Logger LOGGER = LoggerFactory.getLogger(PluginBundleManager.class);
 	
-	private final Map<PluginBundleIdentifier, PluginBundle> pluginBundleIdentifierToPluginBundle = new HashMap<>();
-	private final Map<PluginBundleVersionIdentifier, PluginBundle> pluginBundleVersionIdentifierToPluginBundle = new HashMap<>();
-	private final Map<PluginBundleIdentifier, PluginBundleVersionIdentifier> pluginBundleIdentifierToCurrentPluginBundleVersionIdentifier = new HashMap<>();
+	// Concurrent because independent plugin bundles are loaded in parallel at startup
+	private final Map<PluginBundleIdentifier, PluginBundle> pluginBundleIdentifierToPluginBundle = new ConcurrentHashMap<>();
+	private final Map<PluginBundleVersionIdentifier, PluginBundle> pluginBundleVersionIdentifierToPluginBundle = new ConcurrentHashMap<>();
+	private final Map<PluginBundleIdentifier, PluginBundleVersionIdentifier> pluginBundleIdentifierToCurrentPluginBundleVersionIdentifier = new ConcurrentHashMap<>();
 
 	private PluginManager pluginManager;
 	private final Path pluginsDir;
 	private MavenPluginRepository mavenPluginRepository;
-	private final List<FileJarClassLoader> jarClassLoaders = new ArrayList<>();
+	private final List<MappedJarClassLoader> jarClassLoaders = Collections.synchronizedList(new ArrayList<>());
+	private final Object installNotificationLock = new Object();
 
 	public PluginBundleManager(PluginManager pluginManager, MavenPluginRepository mavenPluginRepository, Path pluginsDir) {
 		this.pluginManager = pluginManager;
 		this.mavenPluginRepository = mavenPluginRepository;
 		this.pluginsDir = pluginsDir;
+		MappedJarClassLoader.deleteStaleCopies(pluginManager);
 		
 		if (pluginsDir != null) {
 			if (!Files.isDirectory(pluginsDir)) {
@@ -213,7 +223,7 @@ public class PluginBundleManager implements AutoCloseable {
 					if (dependencyArtifact.getExtension().contentEquals("jar")) {
 						Path depJarFile = mavenPluginLocation.getVersionJar(dependencyArtifact.getVersion());
 						
-						FileJarClassLoader jarClassLoader = new FileJarClassLoader(pluginManager, delegatingClassLoader, depJarFile);
+						MappedJarClassLoader jarClassLoader = new MappedJarClassLoader(pluginManager, delegatingClassLoader, depJarFile);
 						jarClassLoaders.add(jarClassLoader);
 						delegatingClassLoader.add(jarClassLoader);
 					}
@@ -233,15 +243,7 @@ public class PluginBundleManager implements AutoCloseable {
 
 		SPluginBundle sPluginBundle = new SPluginBundle();
 
-		MavenXpp3Reader mavenreader = new MavenXpp3Reader();
-
-		Model model = null;
-		try (JarFile jarFile = new JarFile(target.toFile())) {
-			ZipEntry entry = jarFile.getEntry("META-INF/maven/" + pluginBundleVersion.getGroupId() + "/" + pluginBundleVersion.getArtifactId() + "/pom.xml");
-			try (InputStream inputStream = jarFile.getInputStream(entry)) {
-				model = mavenreader.read(inputStream);
-			}
-		}
+		Model model = readModel(target, pluginBundleVersion);
 		sPluginBundle.setOrganization(model.getOrganization().getName());
 		sPluginBundle.setName(model.getName());
 
@@ -275,7 +277,7 @@ public class PluginBundleManager implements AutoCloseable {
 						try {
 							Path depJarFile = mavenPluginLocation.getVersionJar(dependency.getVersion());
 
-							FileJarClassLoader jarClassLoader = new FileJarClassLoader(pluginManager, delegatingClassLoader, depJarFile);
+							MappedJarClassLoader jarClassLoader = new MappedJarClassLoader(pluginManager, delegatingClassLoader, depJarFile);
 							jarClassLoaders.add(jarClassLoader);
 							delegatingClassLoader.add(jarClassLoader);
 						} catch (Exception e) {
@@ -287,6 +289,101 @@ public class PluginBundleManager implements AutoCloseable {
 		}
 		return loadPlugin(pluginBundleVersionIdentifier, target, sPluginBundle, pluginBundleVersion, plugins, delegatingClassLoader);
 	}
+
+	private Model readModel(Path target, SPluginBundleVersion pluginBundleVersion) throws IOException, XmlPullParserException {
+		MavenXpp3Reader mavenreader = new MavenXpp3Reader();
+		try (JarFile jarFile = new JarFile(target.toFile())) {
+			ZipEntry entry = jarFile.getEntry("META-INF/maven/" + pluginBundleVersion.getGroupId() + "/" + pluginBundleVersion.getArtifactId() + "/pom.xml");
+			try (InputStream inputStream = jarFile.getInputStream(entry)) {
+				return mavenreader.read(inputStream);
+			}
+		}
+	}
+
+	/**
+	 * Load a set of plugin bundles from the plugin directory. Bundles that do not depend on each other are loaded concurrently, a
+	 * bundle that depends on other bundles from the same set is only loaded after those have been loaded. Failures are logged per
+	 * bundle and do not stop the other bundles from loading.
+	 * 
+	 * @param requests The bundles to load
+	 * @param strictDependencyChecking
+	 * @param threads Maximum number of bundles to load at the same time
+	 * @param progressReporter Receives the number of processed bundles, may be null
+	 */
+	public void loadFromPluginDir(List<PluginBundleLoadRequest> requests, boolean strictDependencyChecking, int threads, ProgressReporter progressReporter) {
+		Map<PluginBundleIdentifier, PluginBundleLoadRequest> requestsByIdentifier = new HashMap<>();
+		for (PluginBundleLoadRequest request : requests) {
+			requestsByIdentifier.put(request.getPluginBundleVersionIdentifier().getPluginBundleIdentifier(), request);
+		}
+		Map<PluginBundleLoadRequest, Set<PluginBundleIdentifier>> dependencies = new HashMap<>();
+		for (PluginBundleLoadRequest request : requests) {
+			Set<PluginBundleIdentifier> requestDependencies = new HashSet<>();
+			Path target = pluginsDir.resolve(request.getPluginBundleVersionIdentifier().getFileName());
+			if (Files.exists(target)) {
+				try {
+					for (org.apache.maven.model.Dependency dependency : readModel(target, request.getPluginBundleVersion()).getDependencies()) {
+						PluginBundleIdentifier dependencyIdentifier = new PluginBundleIdentifier(dependency.getGroupId(), dependency.getArtifactId());
+						if (requestsByIdentifier.containsKey(dependencyIdentifier) && requestsByIdentifier.get(dependencyIdentifier) != request) {
+							requestDependencies.add(dependencyIdentifier);
+						}
+					}
+				} catch (IOException | XmlPullParserException e) {
+					// loadFromPluginDir will report this
+				}
+			}
+			dependencies.put(request, requestDependencies);
+		}
+
+		ExecutorService executorService = Executors.newFixedThreadPool(Math.max(1, Math.min(threads, requests.size())));
+		try {
+			Set<PluginBundleIdentifier> processed = new HashSet<>();
+			List<PluginBundleLoadRequest> remaining = new ArrayList<>(requests);
+			while (!remaining.isEmpty()) {
+				List<PluginBundleLoadRequest> wave = new ArrayList<>();
+				for (PluginBundleLoadRequest request : remaining) {
+					if (processed.containsAll(dependencies.get(request))) {
+						wave.add(request);
+					}
+				}
+				if (wave.isEmpty()) {
+					LOGGER.warn("Circular dependencies between plugin bundles " + remaining + ", loading them in the given order");
+					wave.add(remaining.get(0));
+				}
+				List<Future<?>> futures = new ArrayList<>();
+				for (final PluginBundleLoadRequest request : wave) {
+					futures.add(executorService.submit(new Runnable() {
+						@Override
+						public void run() {
+							try {
+								loadFromPluginDir(request.getPluginBundleVersionIdentifier(), request.getPluginBundleVersion(), request.getPlugins(), strictDependencyChecking);
+							} catch (Exception e) {
+								LOGGER.error("Error loading plugin bundle " + request.getPluginBundleVersionIdentifier().getHumanReadable(), e);
+							}
+						}
+					}));
+				}
+				for (Future<?> future : futures) {
+					try {
+						future.get();
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+						return;
+					} catch (ExecutionException e) {
+						LOGGER.error("", e);
+					}
+				}
+				for (PluginBundleLoadRequest request : wave) {
+					processed.add(request.getPluginBundleVersionIdentifier().getPluginBundleIdentifier());
+				}
+				remaining.removeAll(wave);
+				if (progressReporter != null) {
+					progressReporter.update(requests.size() - remaining.size(), requests.size());
+				}
+			}
+		} finally {
+			executorService.shutdown();
+		}
+	}
 	
 	@SuppressWarnings({ "unchecked", "rawtypes" })
 	private PluginBundle loadPlugins(PluginBundleVersionIdentifier pluginBundleVersionIdentifier, ResourceLoader resourceLoader, ClassLoader classLoader, URI location, String classLocation, PluginDescriptor pluginDescriptor,
@@ -348,9 +445,10 @@ public class PluginBundleManager implements AutoCloseable {
 		if (!Files.exists(file)) {
 			throw new PluginException("Not a file: " + file.toString());
 		}
-		FileJarClassLoader jarClassLoader = null;
+		MappedJarClassLoader jarClassLoader = null;
 		try {
-			jarClassLoader = new FileJarClassLoader(pluginManager, parentClassLoader, file);
+			// Mapped through a copy, installed bundles are deleted on uninstall and update while their class loader can still be mapped
+			jarClassLoader = MappedJarClassLoader.mapCopy(pluginManager, parentClassLoader, file);
 			jarClassLoaders.add(jarClassLoader);
 			final JarClassLoader finalLoader = jarClassLoader;
 			URL resource = jarClassLoader.findResource("plugin/plugin.xml");
@@ -697,7 +795,7 @@ public class PluginBundleManager implements AutoCloseable {
 
 	private void loadDependencies(Path libFile, DelegatingClassLoader classLoader) throws FileNotFoundException, IOException {
 		if (libFile.getFileName().toString().toLowerCase().endsWith(".jar")) {
-			FileJarClassLoader jarClassLoader = new FileJarClassLoader(pluginManager, classLoader, libFile);
+			MappedJarClassLoader jarClassLoader = new MappedJarClassLoader(pluginManager, classLoader, libFile);
 			jarClassLoaders.add(jarClassLoader);
 			classLoader.add(jarClassLoader);
 		}
@@ -784,12 +882,15 @@ public class PluginBundleManager implements AutoCloseable {
 		// anything goes wrong in the notifications, the plugin bundle will be
 		// uninstalled
 		try {
-			long pluginBundleVersionId = pluginManager.pluginBundleInstalled(pluginBundle);
-			for (SPluginInformation sPluginInformation : plugins) {
-				if (sPluginInformation.isEnabled()) {
-					PluginContext pluginContext = pluginBundle.getPluginContext(sPluginInformation.getIdentifier());
-					if (pluginContext != null) {
-						pluginManager.pluginInstalled(pluginBundleVersionId, pluginContext, sPluginInformation);
+			// The listeners write to the database, serialize them so concurrently loading bundles don't conflict
+			synchronized (installNotificationLock) {
+				long pluginBundleVersionId = pluginManager.pluginBundleInstalled(pluginBundle);
+				for (SPluginInformation sPluginInformation : plugins) {
+					if (sPluginInformation.isEnabled()) {
+						PluginContext pluginContext = pluginBundle.getPluginContext(sPluginInformation.getIdentifier());
+						if (pluginContext != null) {
+							pluginManager.pluginInstalled(pluginBundleVersionId, pluginContext, sPluginInformation);
+						}
 					}
 				}
 			}
@@ -915,7 +1016,7 @@ public class PluginBundleManager implements AutoCloseable {
 						try {
 							Path depJarFile = mavenPluginLocation.getVersionJar(dependency.getVersion());
 
-							FileJarClassLoader jarClassLoader = new FileJarClassLoader(pluginManager, delegatingClassLoader, depJarFile);
+							MappedJarClassLoader jarClassLoader = new MappedJarClassLoader(pluginManager, delegatingClassLoader, depJarFile);
 							jarClassLoaders.add(jarClassLoader);
 							delegatingClassLoader.add(jarClassLoader);
 						} catch (Exception e) {
@@ -973,9 +1074,9 @@ public class PluginBundleManager implements AutoCloseable {
 	}
 	
 	public void close() {
-		for (FileJarClassLoader fileJarClassLoader : jarClassLoaders) {
+		for (MappedJarClassLoader mappedJarClassLoader : jarClassLoaders) {
 			try {
-				fileJarClassLoader.close();
+				mappedJarClassLoader.close();
 			} catch (IOException e) {
 				LOGGER.error("", e);
 			}
@@ -32,11 +32,11 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.Iterator;
-import java.util.LinkedHashMap;
-import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArraySet;
 import java.util.jar.JarEntry;
 import java.util.jar.JarFile;
 import java.util.jar.JarInputStream;
@@ -87,8 +87,9 @@ import org.slf4j.LoggerFactory;
 public class PluginManager implements PluginManagerInterface, PluginClassLoaderProvider {
 	private static final Logger LOGGER = LoggerFactory.getLogger(PluginManager.class);
 	private static Unmarshaller PLUGIN_DESCRIPTOR_UNMARSHALLER;
-	private final Map<Class<? extends Plugin>, Set<PluginContext>> implementations = new LinkedHashMap<>();
-	private final Map<Plugin, PluginContext> pluginToPluginContext = new HashMap<>();
+	// Plugin bundles are loaded in the background while the server is already running, so these are read and written concurrently
+	private final Map<Class<? extends Plugin>, Set<PluginContext>> implementations = new ConcurrentHashMap<>();
+	private final Map<Plugin, PluginContext> pluginToPluginContext = new ConcurrentHashMap<>();
 
 	private final Path tempDir;
 	private final String baseClassPath;
@@ -282,14 +283,14 @@ public class PluginManager implements PluginManagerInterface, PluginClassLoaderP
 		return tempDir;
 	}
 
-	public PluginContext loadPlugin(PluginBundle pluginBundle, Class<? extends Plugin> interfaceClass, URI location, String classLocation, Plugin plugin, ClassLoader classLoader, PluginSourceType pluginType,
+	public synchronized PluginContext loadPlugin(PluginBundle pluginBundle, Class<? extends Plugin> interfaceClass, URI location, String classLocation, Plugin plugin, ClassLoader classLoader, PluginSourceType pluginType,
 			AbstractPlugin pluginImplementation, Set<org.bimserver.plugins.Dependency> dependencies, String identifier) throws PluginException {
 		LOGGER.debug("Loading plugin " + plugin.getClass().getSimpleName() + " of type " + interfaceClass.getSimpleName());
 		if (!Plugin.class.isAssignableFrom(interfaceClass)) {
 			throw new PluginException("Given interface class (" + interfaceClass.getName() + ") must be a subclass of " + Plugin.class.getName());
 		}
 		if (!implementations.containsKey(interfaceClass)) {
-			implementations.put(interfaceClass, new LinkedHashSet<PluginContext>());
+			implementations.put(interfaceClass, new CopyOnWriteArraySet<PluginContext>());
 		}
 		Set<PluginContext> set = (Set<PluginContext>) implementations.get(interfaceClass);
 		try {
@@ -25,6 +25,10 @@ import org.bimserver.utils.StringUtils;
 
 public class DelegatingClassLoader extends PublicFindClassClassLoader {
 	private final Set<PublicFindClassClassLoader> jarClassLoaders = new LinkedHashSet<PublicFindClassClassLoader>();
+
+	static {
+		registerAsParallelCapable();
+	}
 	
 	public DelegatingClassLoader(ClassLoader parentClassLoader) {
 		super(parentClassLoader);
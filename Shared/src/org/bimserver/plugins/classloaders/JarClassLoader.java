@@ -21,6 +21,10 @@ import java.net.URL;
 
 public abstract class JarClassLoader extends PublicFindClassClassLoader {
 
+	static {
+		registerAsParallelCapable();
+	}
+
 	public JarClassLoader(ClassLoader parentClassLoader) {
 		super(parentClassLoader);
 	}
@@ -0,0 +1,287 @@
+package org.bimserver.plugins.classloaders;
+
+/******************************************************************************
+ * Copyright (C) 2009-2019  BIMserver.org
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see {@literal<http://www.gnu.org/licenses/>}.
+ *****************************************************************************/
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.ZipEntry;
+
+/**
+ * A JAR file that is mapped into memory. The central directory is read once, entries are read (and inflated) from the mapped file
+ * when they are requested, so nothing of the JAR is kept on the heap.
+ */
+class MappedJar implements AutoCloseable {
+	private static final int END_OF_CENTRAL_DIRECTORY = 0x06054b50;
+	private static final int ZIP64_END_OF_CENTRAL_DIRECTORY_LOCATOR = 0x07064b50;
+	private static final int ZIP64_END_OF_CENTRAL_DIRECTORY = 0x06064b50;
+	private static final int CENTRAL_DIRECTORY_ENTRY = 0x02014b50;
+	private static final int LOCAL_FILE_HEADER = 0x04034b50;
+	private static final int ZIP64_EXTRA_FIELD = 0x0001;
+
+	private final Path path;
+	private final URI uri;
+	private final FileChannel channel;
+	private final MappedByteBuffer buffer;
+
+	MappedJar(Path path) throws IOException {
+		this.path = path;
+		this.uri = path.toUri();
+		this.channel = FileChannel.open(path, StandardOpenOption.READ);
+		try {
+			if (channel.size() > Integer.MAX_VALUE) {
+				throw new IOException(path + " is too large to be mapped");
+			}
+			this.buffer = channel.map(MapMode.READ_ONLY, 0, channel.size());
+			buffer.order(ByteOrder.LITTLE_ENDIAN);
+		} catch (IOException e) {
+			channel.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * Reads the central directory
+	 */
+	List<Entry> readEntries() throws IOException {
+		ByteBuffer buffer = view();
+		int end = findEndOfCentralDirectory(buffer);
+		long nrEntries = buffer.getShort(end + 10) & 0xFFFF;
+		long centralDirectoryOffset = buffer.getInt(end + 16) & 0xFFFFFFFFL;
+		if (nrEntries == 0xFFFF || centralDirectoryOffset == 0xFFFFFFFFL) {
+			int locator = end - 20;
+			if (locator < 0 || buffer.getInt(locator) != ZIP64_END_OF_CENTRAL_DIRECTORY_LOCATOR) {
+				throw new IOException("No ZIP64 end of central directory in " + path);
+			}
+			int zip64End = checkedOffset(buffer.getLong(locator + 8));
+			if (buffer.getInt(zip64End) != ZIP64_END_OF_CENTRAL_DIRECTORY) {
+				throw new IOException("Invalid ZIP64 end of central directory in " + path);
+			}
+			nrEntries = buffer.getLong(zip64End + 32);
+			centralDirectoryOffset = buffer.getLong(zip64End + 48);
+		}
+		List<Entry> entries = new ArrayList<>((int) Math.min(nrEntries, 65536));
+		int position = checkedOffset(centralDirectoryOffset);
+		for (long i = 0; i < nrEntries; i++) {
+			if (buffer.getInt(position) != CENTRAL_DIRECTORY_ENTRY) {
+				throw new IOException("Invalid central directory entry " + i + " in " + path);
+			}
+			int flags = buffer.getShort(position + 8) & 0xFFFF;
+			int method = buffer.getShort(position + 10) & 0xFFFF;
+			long crc = buffer.getInt(position + 16) & 0xFFFFFFFFL;
+			long compressedSize = buffer.getInt(position + 20) & 0xFFFFFFFFL;
+			long size = buffer.getInt(position + 24) & 0xFFFFFFFFL;
+			int nameLength = buffer.getShort(position + 28) & 0xFFFF;
+			int extraLength = buffer.getShort(position + 30) & 0xFFFF;
+			int commentLength = buffer.getShort(position + 32) & 0xFFFF;
+			long localHeaderOffset = buffer.getInt(position + 42) & 0xFFFFFFFFL;
+			byte[] nameBytes = new byte[nameLength];
+			buffer.position(position + 46);
+			buffer.get(nameBytes);
+			if (size == 0xFFFFFFFFL || compressedSize == 0xFFFFFFFFL || localHeaderOffset == 0xFFFFFFFFL) {
+				// The real values are in the ZIP64 extra field, in this order, but only the ones that did not fit
+				int extra = position + 46 + nameLength;
+				int extraEnd = extra + extraLength;
+				while (extra + 4 <= extraEnd) {
+					int headerId = buffer.getShort(extra) & 0xFFFF;
+					int dataSize = buffer.getShort(extra + 2) & 0xFFFF;
+					if (headerId == ZIP64_EXTRA_FIELD) {
+						int field = extra + 4;
+						if (size == 0xFFFFFFFFL) {
+							size = buffer.getLong(field);
+							field += 8;
+						}
+						if (compressedSize == 0xFFFFFFFFL) {
+							compressedSize = buffer.getLong(field);
+							field += 8;
+						}
+						if (localHeaderOffset == 0xFFFFFFFFL) {
+							localHeaderOffset = buffer.getLong(field);
+						}
+						break;
+					}
+					extra += 4 + dataSize;
+				}
+			}
+			position += 46 + nameLength + extraLength + commentLength;
+			if ((flags & 1) != 0 || (method != ZipEntry.STORED && method != ZipEntry.DEFLATED)) {
+				// Encrypted or an unusual compression method, the JDK class loaders cannot read these either
+				continue;
+			}
+			// Bit 11 means the name is UTF-8, jar tools always write UTF-8 names anyway
+			String name = new String(nameBytes, StandardCharsets.UTF_8);
+			entries.add(new Entry(this, name, method, crc, checkedOffset(compressedSize), checkedSize(size), checkedOffset(localHeaderOffset)));
+		}
+		return entries;
+	}
+
+	private int findEndOfCentralDirectory(ByteBuffer buffer) throws IOException {
+		// The record is at least 22 bytes, followed by a comment of at most 65535 bytes
+		int minimum = Math.max(0, buffer.capacity() - 22 - 65535);
+		for (int position = buffer.capacity() - 22; position >= minimum; position--) {
+			if (buffer.getInt(position) == END_OF_CENTRAL_DIRECTORY) {
+				return position;
+			}
+		}
+		throw new IOException("Not a JAR file: " + path);
+	}
+
+	private int checkedOffset(long value) throws IOException {
+		if (value < 0 || value > buffer.capacity()) {
+			throw new IOException("Invalid offset or size " + value + " in " + path);
+		}
+		return (int) value;
+	}
+
+	private int checkedSize(long value) throws IOException {
+		// The uncompressed size is not limited by the size of the file, but it has to fit in an array
+		if (value < 0 || value > Integer.MAX_VALUE - 8) {
+			throw new IOException("Invalid size " + value + " in " + path);
+		}
+		return (int) value;
+	}
+
+	/*
+	 * Buffers share the position, so every reader gets its own view of the mapping
+	 */
+	private ByteBuffer view() {
+		return buffer.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+	}
+
+	/**
+	 * @return The raw (possibly deflated) data of the entry, without copying it
+	 */
+	ByteBuffer getRawData(Entry entry) throws IOException {
+		ByteBuffer view = view();
+		if (view.getInt(entry.localHeaderOffset) != LOCAL_FILE_HEADER) {
+			throw new IOException("Invalid local header for " + entry.name + " in " + path);
+		}
+		// The lengths in the local header can differ from the ones in the central directory
+		int nameLength = view.getShort(entry.localHeaderOffset + 26) & 0xFFFF;
+		int extraLength = view.getShort(entry.localHeaderOffset + 28) & 0xFFFF;
+		int dataStart = entry.localHeaderOffset + 30 + nameLength + extraLength;
+		if (dataStart + entry.compressedSize > view.capacity()) {
+			throw new IOException("Entry " + entry.name + " extends beyond the end of " + path);
+		}
+		view.limit(dataStart + entry.compressedSize);
+		view.position(dataStart);
+		return view.slice();
+	}
+
+	byte[] read(Entry entry) throws IOException {
+		ByteBuffer raw = getRawData(entry);
+		if (entry.method == ZipEntry.STORED) {
+			byte[] data = new byte[entry.size];
+			raw.get(data);
+			return data;
+		}
+		// Inflater can only read from arrays on Java 8
+		byte[] compressed = new byte[entry.compressedSize];
+		raw.get(compressed);
+		Inflater inflater = new Inflater(true);
+		try {
+			inflater.setInput(compressed);
+			byte[] data = new byte[entry.size];
+			int read = 0;
+			while (read < data.length) {
+				int inflated = inflater.inflate(data, read, data.length - read);
+				if (inflated == 0 && (inflater.finished() || inflater.needsInput() || inflater.needsDictionary())) {
+					break;
+				}
+				read += inflated;
+			}
+			if (read != data.length) {
+				throw new IOException("Entry " + entry.name + " in " + path + " is truncated");
+			}
+			return data;
+		} catch (DataFormatException e) {
+			throw new IOException("Entry " + entry.name + " in " + path + " is corrupt", e);
+		} finally {
+			inflater.end();
+		}
+	}
+
+	Path getPath() {
+		return path;
+	}
+
+	URI getUri() {
+		return uri;
+	}
+
+	@Override
+	public void close() throws IOException {
+		// The mapping itself is released when the buffer is garbage collected
+		channel.close();
+	}
+
+	static class Entry {
+		private final MappedJar jar;
+		private final String name;
+		private final int method;
+		private final long crc;
+		private final int compressedSize;
+		private final int size;
+		private final int localHeaderOffset;
+
+		Entry(MappedJar jar, String name, int method, long crc, int compressedSize, int size, int localHeaderOffset) {
+			this.jar = jar;
+			this.name = name;
+			this.method = method;
+			this.crc = crc;
+			this.compressedSize = compressedSize;
+			this.size = size;
+			this.localHeaderOffset = localHeaderOffset;
+		}
+
+		MappedJar getJar() {
+			return jar;
+		}
+
+		String getName() {
+			return name;
+		}
+
+		boolean isStored() {
+			return method == ZipEntry.STORED;
+		}
+
+		long getCrc() {
+			return crc;
+		}
+
+		int getSize() {
+			return size;
+		}
+
+		byte[] read() throws IOException {
+			return jar.read(this);
+		}
+	}
+}
@@ -0,0 +1,286 @@
+package org.bimserver.plugins.classloaders;
+
+/******************************************************************************
+ * Copyright (C) 2009-2019  BIMserver.org
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see {@literal<http://www.gnu.org/licenses/>}.
+ *****************************************************************************/
+
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.net.URLConnection;
+import java.net.URLStreamHandler;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.bimserver.plugins.PluginManager;
+import org.bimserver.plugins.classloaders.MappedJar.Entry;
+import org.bimserver.utils.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Class loader for plugin JAR files. The central directory of the JAR is read once, classes and resources are read from the memory
+ * mapped JAR when they are requested. JAR files embedded in the plugin JAR are extracted once to a cache directory (see
+ * getNestedJarCache) and mapped from there, their entries are found after the entries of the plugin JAR itself.
+ *
+ * A mapped file cannot be deleted on Windows, and Java 8 only unmaps a file when its buffer is garbage collected. JAR files that have
+ * to be deleted or replaced while the server runs (installed plugin bundles) are therefore mapped through a copy, see mapCopy.
+ *
+ * This class loader is parallel capable, classes are defined under the per class name lock of ClassLoader.
+ */
+public class MappedJarClassLoader extends JarClassLoader implements Closeable {
+	private static final Logger LOGGER = LoggerFactory.getLogger(MappedJarClassLoader.class);
+	public static final String NESTED_JAR_CACHE = "nestedjars";
+	public static final String MAPPED_COPIES = "mappedjars";
+
+	static {
+		registerAsParallelCapable();
+	}
+
+	private final Path jarFile;
+	private final Path copy;
+	private final List<MappedJar> jars = new ArrayList<>();
+	private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+
+	public MappedJarClassLoader(PluginManager pluginManager, ClassLoader parentClassLoader, Path jarFile) throws IOException {
+		this(parentClassLoader, jarFile, getNestedJarCache(pluginManager));
+	}
+
+	public MappedJarClassLoader(ClassLoader parentClassLoader, Path jarFile, Path nestedJarCache) throws IOException {
+		this(parentClassLoader, jarFile, null, nestedJarCache);
+	}
+
+	private MappedJarClassLoader(ClassLoader parentClassLoader, Path jarFile, Path copy, Path nestedJarCache) throws IOException {
+		super(parentClassLoader);
+		this.jarFile = jarFile;
+		this.copy = copy;
+		try {
+			MappedJar mappedJar = new MappedJar(copy == null ? jarFile : copy);
+			jars.add(mappedJar);
+			List<Entry> nestedJars = new ArrayList<>();
+			for (Entry entry : mappedJar.readEntries()) {
+				entries.put(entry.getName(), entry);
+				if (entry.getName().toLowerCase().endsWith(".jar")) {
+					nestedJars.add(entry);
+				}
+			}
+			for (Entry nestedJar : nestedJars) {
+				MappedJar nestedMappedJar = new MappedJar(extract(nestedJar, nestedJarCache));
+				jars.add(nestedMappedJar);
+				for (Entry entry : nestedMappedJar.readEntries()) {
+					entries.putIfAbsent(entry.getName(), entry);
+				}
+			}
+		} catch (IOException e) {
+			close();
+			throw e;
+		}
+	}
+
+	/**
+	 * Maps a copy of the given JAR file, so the file itself can be deleted while this class loader is in use. The copy is deleted when
+	 * the class loader is closed, or by deleteStaleCopies when it was still mapped at that time.
+	 */
+	public static MappedJarClassLoader mapCopy(PluginManager pluginManager, ClassLoader parentClassLoader, Path jarFile) throws IOException {
+		Path copies = pluginManager.getTempDir().resolve(MAPPED_COPIES);
+		Files.createDirectories(copies);
+		Path copy = Files.createTempFile(copies, jarFile.getFileName().toString(), ".jar");
+		try {
+			Files.copy(jarFile, copy, StandardCopyOption.REPLACE_EXISTING);
+			return new MappedJarClassLoader(parentClassLoader, jarFile, copy, getNestedJarCache(pluginManager));
+		} catch (IOException e) {
+			Files.deleteIfExists(copy);
+			throw e;
+		}
+	}
+
+	/**
+	 * Deletes the copies made by mapCopy that could not be deleted when their class loader was closed, must be called before any JAR
+	 * file is mapped
+	 */
+	public static void deleteStaleCopies(PluginManager pluginManager) {
+		Path copies = pluginManager.getTempDir().resolve(MAPPED_COPIES);
+		if (!Files.isDirectory(copies)) {
+			return;
+		}
+		try (DirectoryStream<Path> directoryStream = Files.newDirectoryStream(copies)) {
+			for (Path file : directoryStream) {
+				try {
+					Files.deleteIfExists(file);
+				} catch (IOException e) {
+					LOGGER.debug("Could not delete " + file + ", it is in use");
+				}
+			}
+		} catch (IOException e) {
+			LOGGER.error("", e);
+		}
+	}
+
+	public static Path getNestedJarCache(PluginManager pluginManager) {
+		return pluginManager.getTempDir().resolve(NESTED_JAR_CACHE);
+	}
+
+	/*
+	 * The cached file is named after the checksum and size of the embedded JAR, so a cached copy is reused by every plugin version that
+	 * embeds the same JAR, and is never stale
+	 */
+	private Path extract(Entry entry, Path nestedJarCache) throws IOException {
+		String name = entry.getName();
+		String simpleName = name.substring(name.lastIndexOf('/') + 1);
+		Path cachedFile = nestedJarCache.resolve(String.format("%08x-%d-%s", entry.getCrc(), entry.getSize(), simpleName));
+		if (Files.exists(cachedFile) && Files.size(cachedFile) == entry.getSize()) {
+			return cachedFile;
+		}
+		Files.createDirectories(nestedJarCache);
+		Path tempFile = Files.createTempFile(nestedJarCache, simpleName, ".tmp");
+		try {
+			try (OutputStream outputStream = Files.newOutputStream(tempFile)) {
+				if (entry.isStored()) {
+					ByteBuffer data = entry.getJar().getRawData(entry);
+					WritableByteChannel channel = Channels.newChannel(outputStream);
+					while (data.hasRemaining()) {
+						channel.write(data);
+					}
+				} else {
+					outputStream.write(entry.read());
+				}
+			}
+			// Another server (or plugin) could be extracting the same JAR, both copies are equal
+			Files.move(tempFile, cachedFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} finally {
+			Files.deleteIfExists(tempFile);
+		}
+		LOGGER.debug("Extracted " + name + " from " + jarFile.getFileName().toString() + " to " + cachedFile);
+		return cachedFile;
+	}
+
+	@Override
+	public URL findResource(final String name) {
+		final Entry entry = entries.get(name);
+		if (entry == null) {
+			LOGGER.debug("File not found: " + name + " (in " + jarFile.getFileName().toString() + ")");
+			return null;
+		}
+		try {
+			return new URL(new URL("jar:" + entry.getJar().getUri() + "!/" + name), name, new URLStreamHandler() {
+				@Override
+				protected URLConnection openConnection(URL u) throws IOException {
+					return new URLConnection(u) {
+						@Override
+						public void connect() throws IOException {
+						}
+
+						@Override
+						public int getContentLength() {
+							return entry.getSize();
+						}
+
+						@Override
+						public InputStream getInputStream() throws IOException {
+							return new ByteArrayInputStream(entry.read());
+						}
+					};
+				}
+			});
+		} catch (MalformedURLException e) {
+			LOGGER.error("", e);
+		}
+		return null;
+	}
+
+	@Override
+	public Class<?> findClass(String name) throws ClassNotFoundException {
+		Entry entry = entries.get(name.replace(".", "/") + ".class");
+		if (entry == null) {
+			throw new ClassNotFoundException(name);
+		}
+		// DelegatingClassLoader calls findClass directly, so the lock of loadClass is not always held already
+		synchronized (getClassLoadingLock(name)) {
+			Class<?> loadedClass = findLoadedClass(name);
+			if (loadedClass != null) {
+				return loadedClass;
+			}
+			Class<?> defineClass;
+			try {
+				if (entry.isStored()) {
+					ByteBuffer data = entry.getJar().getRawData(entry);
+					defineClass = defineClass(name, data, null);
+				} else {
+					byte[] data = entry.read();
+					defineClass = defineClass(name, data, 0, data.length);
+				}
+			} catch (IOException e) {
+				throw new ClassNotFoundException(name, e);
+			}
+			/*
+			 * This is a fix to actually load the package-info.class file with
+			 * the annotations about for example namespaces required for JAXB to
+			 * work. Found this code here:
+			 * https://issues.jboss.org/browse/JBPM-1404
+			 */
+			final int packageIndex = name.lastIndexOf('.');
+			if (packageIndex != -1) {
+				final String packageName = name.substring(0, packageIndex);
+				if (getPackage(packageName) == null) {
+					try {
+						definePackage(packageName, null, null, null, null, null, null, null);
+					} catch (IllegalArgumentException e) {
+						// Defined concurrently by a class of the same package
+					}
+				}
+			}
+			return defineClass;
+		}
+	}
+
+	@Override
+	public void dumpStructure(int indent) {
+		System.out.print(StringUtils.gen("  ", indent));
+		System.out.println("MappedJarClassLoader " + jarFile.getFileName().toString() + " (" + entries.size() + " entries, " + (jars.size() - 1) + " embedded JAR files)");
+	}
+
+	@Override
+	public void close() throws IOException {
+		for (MappedJar mappedJar : jars) {
+			try {
+				mappedJar.close();
+			} catch (IOException e) {
+				LOGGER.error("", e);
+			}
+		}
+		if (copy != null) {
+			try {
+				Files.deleteIfExists(copy);
+			} catch (IOException e) {
+				// Still mapped (Windows), deleted on the next start
+				LOGGER.debug("Could not delete " + copy + " yet");
+			}
+		}
+	}
+}
@@ -21,6 +21,10 @@ import java.net.URL;
 
 public abstract class PublicFindClassClassLoader extends ClassLoader {
 
+	static {
+		registerAsParallelCapable();
+	}
+
 	public PublicFindClassClassLoader(ClassLoader parentClassloader) {
 		super(parentClassloader);
 	}
@@ -0,0 +1,141 @@
+package org.bimserver.tests.database;
+
+/******************************************************************************
+ * Copyright (C) 2009-2019  BIMserver.org
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see {@literal<http://www.gnu.org/licenses/>}.
+ *****************************************************************************/
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+import org.bimserver.BimserverDatabaseException;
+import org.bimserver.database.CompactRecordCodec;
+import org.bimserver.models.ifc2x3tc1.IfcChangeActionEnum;
+import org.bimserver.shared.HashMapVirtualObject;
+import org.bimserver.shared.HashMapWrappedVirtualObject;
+import org.bimserver.tests.utils.VirtualObjectTestBase;
+import org.eclipse.emf.ecore.EClass;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Records written in the fixed width format by HashMapVirtualObject must come out of the codec byte for byte, no server needed
+ */
+public class TestCompactRecordCodec extends VirtualObjectTestBase {
+	private CompactRecordCodec codec;
+
+	@Before
+	public void setup() {
+		codec = new CompactRecordCodec(metaDataManager, databaseInterface::getEClassForCid);
+	}
+
+	@Test
+	public void testRoundTrip() throws Exception {
+		HashMapVirtualObject ownerHistory = create(ifc.getIfcOwnerHistory());
+		ownerHistory.setAttribute(ifc.getIfcOwnerHistory_ChangeAction(), IfcChangeActionEnum.ADDED);
+		ownerHistory.setAttribute(ifc.getIfcOwnerHistory_CreationDate(), 1262304000L);
+		assertRoundTrip(ownerHistory);
+
+		HashMapVirtualObject wall = create(ifc.getIfcWall());
+		wall.setAttribute(ifc.getIfcRoot_GlobalId(), "2O2Fr$t4X7Zf8NOew3FL9r");
+		wall.setAttribute(ifc.getIfcRoot_Name(), "Basic Wall:Interior - 138mm Partition");
+		wall.setReference(ifc.getIfcRoot_OwnerHistory(), ownerHistory.getOid());
+		assertRoundTrip(wall);
+
+		HashMapVirtualObject relContained = create(ifc.getIfcRelContainedInSpatialStructure());
+		// Oids that go down as well as up, the references in a list are stored as differences
+		long[] oids = new long[] { databaseInterface.newOid(ifc.getIfcWall()), databaseInterface.newOid(ifc.getIfcSlab()), wall.getOid(), databaseInterface.newOid(ifc.getIfcWall()) };
+		for (long oid : oids) {
+			relContained.addReference(ifc.getIfcRelContainedInSpatialStructure_RelatedElements(), databaseInterface.getEClassForOid(oid), oid);
+		}
+		assertTrue(assertRoundTrip(relContained) < relContained.write().capacity());
+
+		HashMapVirtualObject property = create(ifc.getIfcPropertySingleValue());
+		HashMapWrappedVirtualObject label = new HashMapWrappedVirtualObject(ifc.getIfcLabel());
+		label.setAttribute(ifc.getIfcLabel_WrappedValue(), "Reference");
+		property.setAttribute(ifc.getIfcProperty_Name(), "Reference");
+		property.setReference(ifc.getIfcPropertySingleValue_NominalValue(), label);
+		assertRoundTrip(property);
+	}
+
+	@Test
+	public void testDoubles() throws Exception {
+		// Stored as integers, as floats and as doubles
+		for (double[] coordinates : new double[][] { { 1000, -2500, 0 }, { 1.5, -2.25, 0.125 }, { 0.1, 1e300, -0.0 }, { Double.NaN, Double.NEGATIVE_INFINITY, 3 } }) {
+			HashMapVirtualObject point = create(ifc.getIfcCartesianPoint());
+			for (double coordinate : coordinates) {
+				point.addListItem(ifc.getIfcCartesianPoint_Coordinates(), coordinate);
+				point.addListItem(ifc.getIfcCartesianPoint_CoordinatesAsString(), Double.toString(coordinate));
+			}
+			assertRoundTrip(point);
+		}
+	}
+
+	@Test
+	public void testRecordsThatCannotBeWalked() throws Exception {
+		String tableName = tableName(ifc.getIfcWall());
+		codec.enable(tableName);
+		Random random = new Random(1);
+		for (int length : new int[] { 1, 2, 17, 100 }) {
+			byte[] value = new byte[length];
+			random.nextBytes(value);
+			byte[] stored = codec.encode(tableName, value, 0, value.length);
+			assertArrayEquals(value, codec.decode(tableName, stored));
+		}
+	}
+
+	@Test
+	public void testDisabledTable() throws Exception {
+		HashMapVirtualObject wall = create(ifc.getIfcWall());
+		wall.setAttribute(ifc.getIfcRoot_Name(), "Wall");
+		byte[] value = wall.write().array();
+		String tableName = tableName(ifc.getIfcWall());
+		assertTrue(codec.handles(tableName));
+		assertNull(codec.encode(tableName, value, 0, value.length));
+		assertSame(value, codec.decode(tableName, value));
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void testUnknownFormat() {
+		String tableName = tableName(ifc.getIfcWall());
+		codec.enable(tableName);
+		codec.decode(tableName, new byte[] { 7, 0, 0 });
+	}
+
+	/**
+	 * @return The size of the stored record
+	 */
+	private int assertRoundTrip(HashMapVirtualObject object) throws BimserverDatabaseException {
+		String tableName = tableName(object.eClass());
+		codec.enable(tableName);
+		ByteBuffer buffer = object.write();
+		byte[] value = buffer.array();
+		// Encoding an offset in a larger array, like the writers do with their reusable buffers
+		byte[] padded = new byte[value.length + 10];
+		System.arraycopy(value, 0, padded, 5, value.length);
+		byte[] stored = codec.encode(tableName, padded, 5, value.length);
+		assertArrayEquals(value, codec.decode(tableName, stored));
+		return stored.length;
+	}
+
+	private String tableName(EClass eClass) {
+		return eClass.getEPackage().getName() + "_" + eClass.getName();
+	}
+}
@@ -0,0 +1,110 @@
+package org.bimserver.tests.database;
+
+/******************************************************************************
+ * Copyright (C) 2009-2019  BIMserver.org
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see {@literal<http://www.gnu.org/licenses/>}.
+ *****************************************************************************/
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.bimserver.database.berkeley.BerkeleySnapshotTransaction;
+import org.bimserver.database.berkeley.RecordVersions;
+import org.bimserver.database.berkeley.RecordVersions.Writer;
+import org.junit.Test;
+
+/**
+ * What a snapshot sees of records that are written by transactions that finish before and after it was taken
+ */
+public class TestRecordVersions {
+	private static final String TABLE = "store_Project";
+	private static final byte[] KEY = new byte[] { 1, 2, 3 };
+	private static final byte[] OLD = new byte[] { 10 };
+	private static final byte[] NEWER = new byte[] { 20 };
+
+	@Test
+	public void testSnapshotSeesPreImageUntilEnded() {
+		RecordVersions recordVersions = new RecordVersions();
+		long before = recordVersions.startSnapshot();
+		Writer writer = recordVersions.createWriter();
+		assertTrue(recordVersions.registerWrite(writer, TABLE, KEY, OLD));
+		assertTrue(writer.hasRegistered(TABLE, KEY.clone()));
+		assertFalse(recordVersions.registerWrite(writer, TABLE, KEY, NEWER));
+		recordVersions.transactionFinished(writer);
+		long after = recordVersions.startSnapshot();
+
+		assertArrayEquals(OLD, recordVersions.getVisibleVersion(TABLE, KEY, recordVersions.getSnapshotSequence(before)).getPreImage());
+		assertNull(recordVersions.getVisibleVersion(TABLE, KEY, recordVersions.getSnapshotSequence(after)));
+
+		recordVersions.endSnapshot(before);
+		recordVersions.endSnapshot(after);
+		// Pruned, a snapshot with an old sequence number would not find it anymore
+		assertNull(recordVersions.getVisibleVersion(TABLE, KEY, 0));
+	}
+
+	@Test
+	public void testPendingWriteIsInvisible() {
+		RecordVersions recordVersions = new RecordVersions();
+		Writer writer = recordVersions.createWriter();
+		recordVersions.registerWrite(writer, TABLE, KEY, null);
+		long snapshot = recordVersions.startSnapshot();
+		// Inserted by a transaction that did not finish, the record did not exist for the snapshot
+		assertNull(recordVersions.getVisibleVersion(TABLE, KEY, recordVersions.getSnapshotSequence(snapshot)).getPreImage());
+		recordVersions.transactionFinished(writer);
+		assertNull(recordVersions.getVisibleVersion(TABLE, KEY, recordVersions.getSnapshotSequence(snapshot)).getPreImage());
+		recordVersions.endSnapshot(snapshot);
+	}
+
+	@Test
+	public void testOldestVersionWins() {
+		RecordVersions recordVersions = new RecordVersions();
+		long snapshot = recordVersions.startSnapshot();
+		Writer first = recordVersions.createWriter();
+		recordVersions.registerWrite(first, TABLE, KEY, OLD);
+		recordVersions.transactionFinished(first);
+		long between = recordVersions.startSnapshot();
+		Writer second = recordVersions.createWriter();
+		recordVersions.registerWrite(second, TABLE, KEY, NEWER);
+		recordVersions.transactionFinished(second);
+
+		assertArrayEquals(OLD, recordVersions.getVisibleVersion(TABLE, KEY, recordVersions.getSnapshotSequence(snapshot)).getPreImage());
+		assertArrayEquals(NEWER, recordVersions.getVisibleVersion(TABLE, KEY, recordVersions.getSnapshotSequence(between)).getPreImage());
+
+		// The first version is not needed by the remaining snapshot anymore
+		recordVersions.endSnapshot(snapshot);
+		assertArrayEquals(NEWER, recordVersions.getVisibleVersion(TABLE, KEY, recordVersions.getSnapshotSequence(between)).getPreImage());
+		recordVersions.endSnapshot(between);
+	}
+
+	@Test
+	public void testSnapshotIsTakenOnFirstRead() {
+		RecordVersions recordVersions = new RecordVersions();
+		// Only needed when the session writes
+		BerkeleySnapshotTransaction transaction = new BerkeleySnapshotTransaction(null, recordVersions);
+		Writer first = recordVersions.createWriter();
+		recordVersions.registerWrite(first, TABLE, KEY, OLD);
+		recordVersions.transactionFinished(first);
+		// Committed after the session was created but before it read anything, so visible
+		assertNull(transaction.getVisibleVersion(TABLE, KEY));
+
+		Writer second = recordVersions.createWriter();
+		recordVersions.registerWrite(second, TABLE, KEY, NEWER);
+		recordVersions.transactionFinished(second);
+		assertArrayEquals(NEWER, transaction.getVisibleVersion(TABLE, KEY).getPreImage());
+		transaction.close();
+	}
+}
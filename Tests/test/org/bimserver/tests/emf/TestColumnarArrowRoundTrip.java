@@ -0,0 +1,244 @@
+package org.bimserver.tests.emf;
+
+/******************************************************************************
+ * Copyright (C) 2009-2019  BIMserver.org
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see {@literal<http://www.gnu.org/licenses/>}.
+ *****************************************************************************/
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import org.apache.arrow.compression.CommonsCompressionFactory;
+import org.apache.arrow.memory.BufferAllocator;
+import org.apache.arrow.memory.RootAllocator;
+import org.apache.arrow.vector.FieldVector;
+import org.apache.arrow.vector.ipc.ArrowFileReader;
+import org.apache.arrow.vector.types.pojo.ArrowType;
+import org.apache.arrow.vector.types.pojo.Schema;
+import org.apache.arrow.vector.util.ByteArrayReadableSeekableByteChannel;
+import org.apache.commons.io.IOUtils;
+import org.bimserver.models.ifc2x3tc1.IfcChangeActionEnum;
+import org.bimserver.serializers.columnar.ArrowColumnarWriter;
+import org.bimserver.shared.HashMapVirtualObject;
+import org.bimserver.shared.HashMapWrappedVirtualObject;
+import org.bimserver.tests.utils.ListObjectProvider;
+import org.bimserver.tests.utils.VirtualObjectTestBase;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Writes objects with the ArrowColumnarWriter of the Columnar Serializer and reads the tables back with the ArrowFileReader of Apache
+ * Arrow, no server needed
+ */
+public class TestColumnarArrowRoundTrip extends VirtualObjectTestBase {
+	private BufferAllocator allocator;
+
+	@Before
+	public void setup() {
+		allocator = new RootAllocator();
+	}
+
+	@After
+	public void tearDown() {
+		allocator.close();
+	}
+
+	@Test
+	public void testRoundTrip() throws Exception {
+		HashMapVirtualObject ownerHistory = create(ifc.getIfcOwnerHistory());
+		HashMapVirtualObject wall1 = create(ifc.getIfcWall());
+		HashMapVirtualObject wall2 = create(ifc.getIfcWall());
+		HashMapVirtualObject property = create(ifc.getIfcPropertySingleValue());
+		HashMapVirtualObject point = create(ifc.getIfcCartesianPoint());
+
+		ownerHistory.setAttribute(ifc.getIfcOwnerHistory_ChangeAction(), IfcChangeActionEnum.ADDED);
+		ownerHistory.setAttribute(ifc.getIfcOwnerHistory_CreationDate(), 1262304000L);
+		wall1.setAttribute(ifc.getIfcRoot_GlobalId(), "2O2Fr$t4X7Zf8NOew3FL01");
+		wall1.setAttribute(ifc.getIfcRoot_Name(), "Wall \u00e9\u00e8");
+		wall1.setReference(ifc.getIfcRoot_OwnerHistory(), ownerHistory.getOid());
+		// wall2 has no attributes, all its feature columns are null
+		HashMapWrappedVirtualObject label = new HashMapWrappedVirtualObject(ifc.getIfcLabel());
+		label.setAttribute(ifc.getIfcLabel_WrappedValue(), "Interior - 138mm Partition");
+		property.setAttribute(ifc.getIfcProperty_Name(), "Reference");
+		property.setReference(ifc.getIfcPropertySingleValue_NominalValue(), label);
+		for (double coordinate : new double[] { 1.5, -2.25, 0.1 }) {
+			point.addListItem(ifc.getIfcCartesianPoint_Coordinates(), coordinate);
+		}
+
+		Path file = write(Arrays.asList(ownerHistory, wall1, wall2, property, point));
+		try (ZipFile zipFile = new ZipFile(file.toFile())) {
+			List<String> entries = new ArrayList<>();
+			for (ZipEntry entry : Collections.list(zipFile.entries())) {
+				entries.add(entry.getName());
+				// Arrow compresses the buffers itself
+				assertEquals(ZipEntry.STORED, entry.getMethod());
+			}
+			assertEquals(Arrays.asList("IfcOwnerHistory.arrow", "IfcWall.arrow", "IfcPropertySingleValue.arrow", "IfcCartesianPoint.arrow"), entries);
+		}
+
+		Schema wallSchema = readSchema(file, "IfcWall");
+		assertEquals(ifc.getName(), wallSchema.getCustomMetadata().get("bimserver.schema"));
+		assertEquals("IfcWall", wallSchema.getCustomMetadata().get("bimserver.table"));
+		assertEquals(Arrays.asList("_oid", "_rid", "_uuid"), Arrays.asList(wallSchema.getFields().get(0).getName(), wallSchema.getFields().get(1).getName(), wallSchema.getFields().get(2).getName()));
+		assertEquals("oid", wallSchema.findField("OwnerHistory").getMetadata().get("bimserver.type"));
+		assertEquals(new ArrowType.Int(64, true), wallSchema.findField("OwnerHistory").getType());
+		assertEquals(ArrowType.Utf8.INSTANCE, wallSchema.findField("Name").getType());
+
+		Map<String, List<Object>> walls = readTable(file, "IfcWall");
+		assertEquals(Arrays.asList(wall1.getOid(), wall2.getOid()), walls.get("_oid"));
+		assertEquals(Arrays.asList(1, 1), walls.get("_rid"));
+		assertEquals(Arrays.asList(toBytes(wall1.getUuid()), toBytes(wall2.getUuid())), toLists(walls.get("_uuid")));
+		assertEquals(Arrays.asList("Wall \u00e9\u00e8", null), toStrings(walls.get("Name")));
+		assertEquals(Arrays.asList(ownerHistory.getOid(), null), walls.get("OwnerHistory"));
+
+		Map<String, List<Object>> ownerHistories = readTable(file, "IfcOwnerHistory");
+		assertEquals(Arrays.asList("ADDED"), toStrings(ownerHistories.get("ChangeAction")));
+		assertEquals(1262304000L, ((Number) ownerHistories.get("CreationDate").get(0)).longValue());
+
+		assertEquals("json", readSchema(file, "IfcPropertySingleValue").findField("NominalValue").getMetadata().get("bimserver.type"));
+		String nominalValue = readTable(file, "IfcPropertySingleValue").get("NominalValue").get(0).toString();
+		assertTrue(nominalValue, nominalValue.startsWith("{\"_t\":\"IfcLabel\""));
+		assertTrue(nominalValue, nominalValue.contains("\"Interior - 138mm Partition\""));
+
+		assertEquals(ArrowType.List.INSTANCE, readSchema(file, "IfcCartesianPoint").findField("Coordinates").getType());
+		assertEquals(Arrays.asList(Arrays.asList(1.5, -2.25, 0.1)), readTable(file, "IfcCartesianPoint").get("Coordinates"));
+	}
+
+	@Test
+	public void testBatches() throws Exception {
+		// More rows than fit in one batch
+		List<HashMapVirtualObject> walls = new ArrayList<>();
+		List<Object> oids = new ArrayList<>();
+		List<Object> names = new ArrayList<>();
+		for (int i = 0; i < 40000; i++) {
+			HashMapVirtualObject wall = create(ifc.getIfcWall());
+			String name = i % 3 == 0 ? null : "Wall " + i;
+			if (name != null) {
+				wall.setAttribute(ifc.getIfcRoot_Name(), name);
+			}
+			walls.add(wall);
+			oids.add(wall.getOid());
+			names.add(name);
+		}
+		Map<String, List<Object>> table = readTable(write(walls), "IfcWall");
+		assertEquals(oids, table.get("_oid"));
+		assertEquals(names, toStrings(table.get("Name")));
+	}
+
+	@Test
+	public void testTemporaryFilesAreRemoved() throws Exception {
+		Path file = write(Arrays.asList(create(ifc.getIfcWall()), create(ifc.getIfcDoor())));
+		try (Stream<Path> files = Files.list(tempDir.resolve("tables"))) {
+			assertEquals(0, files.count());
+		}
+		assertEquals(1, readTable(file, "IfcDoor").get("_oid").size());
+	}
+
+	@Test
+	public void testEmptyModel() throws Exception {
+		try (ZipFile zipFile = new ZipFile(write(Collections.<HashMapVirtualObject>emptyList()).toFile())) {
+			assertEquals(0, zipFile.size());
+		}
+	}
+
+	private Path write(List<HashMapVirtualObject> objects) throws Exception {
+		Path file = tempDir.resolve("model.zip");
+		ArrowColumnarWriter writer = new ArrowColumnarWriter(new ListObjectProvider(objects, databaseInterface), packageMetaData, tempDir.resolve("tables"));
+		try (OutputStream outputStream = Files.newOutputStream(file)) {
+			while (writer.write(outputStream)) {
+			}
+		}
+		return file;
+	}
+
+	private byte[] readEntry(Path file, String tableName) throws IOException {
+		try (ZipFile zipFile = new ZipFile(file.toFile())) {
+			ZipEntry entry = zipFile.getEntry(tableName + ".arrow");
+			assertTrue("No table " + tableName, entry != null);
+			return IOUtils.toByteArray(zipFile.getInputStream(entry));
+		}
+	}
+
+	private Schema readSchema(Path file, String tableName) throws IOException {
+		try (ArrowFileReader reader = new ArrowFileReader(new ByteArrayReadableSeekableByteChannel(readEntry(file, tableName)), allocator, CommonsCompressionFactory.INSTANCE)) {
+			return reader.getVectorSchemaRoot().getSchema();
+		}
+	}
+
+	/**
+	 * @return The values of all columns, the record batches are concatenated
+	 */
+	private Map<String, List<Object>> readTable(Path file, String tableName) throws IOException {
+		Map<String, List<Object>> columns = new HashMap<>();
+		try (ArrowFileReader reader = new ArrowFileReader(new ByteArrayReadableSeekableByteChannel(readEntry(file, tableName)), allocator, CommonsCompressionFactory.INSTANCE)) {
+			while (reader.loadNextBatch()) {
+				for (FieldVector vector : reader.getVectorSchemaRoot().getFieldVectors()) {
+					List<Object> values = columns.computeIfAbsent(vector.getName(), k -> new ArrayList<>());
+					for (int i = 0; i < vector.getValueCount(); i++) {
+						values.add(vector.getObject(i));
+					}
+				}
+			}
+		}
+		return columns;
+	}
+
+	private static List<String> toStrings(List<Object> values) {
+		List<String> result = new ArrayList<>();
+		for (Object value : values) {
+			result.add(value == null ? null : value.toString());
+		}
+		return result;
+	}
+
+	private static List<List<Byte>> toLists(List<Object> values) {
+		List<List<Byte>> result = new ArrayList<>();
+		for (Object value : values) {
+			List<Byte> bytes = new ArrayList<>();
+			for (byte b : (byte[]) value) {
+				bytes.add(b);
+			}
+			result.add(bytes);
+		}
+		return result;
+	}
+
+	private static List<Byte> toBytes(UUID uuid) {
+		List<Byte> result = new ArrayList<>();
+		for (int shift = 56; shift >= 0; shift -= 8) {
+			result.add((byte) (uuid.getMostSignificantBits() >> shift));
+		}
+		for (int shift = 56; shift >= 0; shift -= 8) {
+			result.add((byte) (uuid.getLeastSignificantBits() >> shift));
+		}
+		return result;
+	}
+}
@@ -0,0 +1,186 @@
+package org.bimserver.tests.emf;
+
+/******************************************************************************
+ * Copyright (C) 2009-2019  BIMserver.org
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see {@literal<http://www.gnu.org/licenses/>}.
+ *****************************************************************************/
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+
+import org.bimserver.emf.PackageMetaData;
+import org.bimserver.emf.Schema;
+import org.bimserver.models.geometry.GeometryPackage;
+import org.bimserver.models.ifc2x3tc1.IfcChangeActionEnum;
+import org.bimserver.shared.HashMapVirtualObject;
+import org.bimserver.shared.HashMapWrappedVirtualObject;
+import org.bimserver.shared.OidList;
+import org.bimserver.shared.QueryContext;
+import org.bimserver.tests.utils.VirtualObjectTestBase;
+import org.junit.Test;
+
+/**
+ * HashMapVirtualObject stores its values in the slots of the VirtualObjectLayout of its EClass, values must come back as they were set
+ */
+public class TestHashMapVirtualObject extends VirtualObjectTestBase {
+	@Test
+	public void testPrimitives() {
+		HashMapVirtualObject storey = create(ifc.getIfcBuildingStorey());
+		storey.setAttribute(ifc.getIfcBuildingStorey_Elevation(), 3.25);
+		storey.setAttribute(ifc.getIfcRoot_Name(), "Level 1");
+		HashMapVirtualObject point = create(ifc.getIfcCartesianPoint());
+		point.setAttribute(ifc.getIfcCartesianPoint_Dim(), 3L);
+		HashMapVirtualObject shapeAspect = create(ifc.getIfcShapeAspect());
+		shapeAspect.setAttribute(ifc.getIfcShapeAspect_ProductDefinitional(), true);
+		HashMapVirtualObject ownerHistory = create(ifc.getIfcOwnerHistory());
+		ownerHistory.setAttribute(ifc.getIfcOwnerHistory_ChangeAction(), IfcChangeActionEnum.ADDED);
+
+		assertEquals(3.25, storey.eGet(ifc.getIfcBuildingStorey_Elevation()));
+		assertEquals("Level 1", storey.eGet(ifc.getIfcRoot_Name()));
+		assertEquals("Level 1", storey.get("Name"));
+		assertEquals(3L, point.eGet(ifc.getIfcCartesianPoint_Dim()));
+		assertEquals(true, shapeAspect.eGet(ifc.getIfcShapeAspect_ProductDefinitional()));
+		assertSame(IfcChangeActionEnum.ADDED, ownerHistory.eGet(ifc.getIfcOwnerHistory_ChangeAction()));
+
+		// Geometry has the int and float features that IFC does not have
+		PackageMetaData geometry = new PackageMetaData(GeometryPackage.eINSTANCE, Schema.GEOMETRY, tempDir);
+		QueryContext geometryContext = new QueryContext(databaseInterface, geometry, 1, 1, 1, 1, 0);
+		GeometryPackage geometryPackage = GeometryPackage.eINSTANCE;
+		HashMapVirtualObject geometryInfo = new HashMapVirtualObject(geometryContext, geometryPackage.getGeometryInfo(), databaseInterface.newOid(geometryPackage.getGeometryInfo()), UUID.randomUUID());
+		geometryInfo.setAttribute(geometryPackage.getGeometryInfo_IfcProductRid(), -7);
+		geometryInfo.setAttribute(geometryPackage.getGeometryInfo_StartVertex(), Integer.MAX_VALUE);
+		geometryInfo.setAttribute(geometryPackage.getGeometryInfo_Density(), 0.5f);
+		assertEquals(-7, geometryInfo.eGet(geometryPackage.getGeometryInfo_IfcProductRid()));
+		assertEquals(Integer.MAX_VALUE, geometryInfo.eGet(geometryPackage.getGeometryInfo_StartVertex()));
+		assertEquals(0.5f, geometryInfo.eGet(geometryPackage.getGeometryInfo_Density()));
+	}
+
+	@Test
+	public void testValuesOfOtherTypes() {
+		HashMapVirtualObject point = create(ifc.getIfcCartesianPoint());
+		// Values that do not have the type of the feature are kept as they are, not converted
+		point.setAttribute(ifc.getIfcCartesianPoint_Dim(), 3);
+		assertEquals(3, point.eGet(ifc.getIfcCartesianPoint_Dim()));
+		point.setAttribute(ifc.getIfcCartesianPoint_Dim(), null);
+		assertTrue(point.eIsSet(ifc.getIfcCartesianPoint_Dim()));
+		assertNull(point.eGet(ifc.getIfcCartesianPoint_Dim()));
+		point.setAttribute(ifc.getIfcCartesianPoint_Dim(), 2L);
+		assertEquals(2L, point.eGet(ifc.getIfcCartesianPoint_Dim()));
+	}
+
+	@Test
+	public void testReferences() throws Exception {
+		HashMapVirtualObject ownerHistory = create(ifc.getIfcOwnerHistory());
+		HashMapVirtualObject wall = create(ifc.getIfcWall());
+		wall.setReference(ifc.getIfcRoot_OwnerHistory(), ownerHistory.getOid());
+		assertEquals(ownerHistory.getOid(), wall.eGet(ifc.getIfcRoot_OwnerHistory()));
+
+		HashMapVirtualObject property = create(ifc.getIfcPropertySingleValue());
+		HashMapWrappedVirtualObject label = new HashMapWrappedVirtualObject(ifc.getIfcLabel());
+		label.setAttribute(ifc.getIfcLabel_WrappedValue(), "Partition");
+		property.setReference(ifc.getIfcPropertySingleValue_NominalValue(), label);
+		assertSame(label, property.eGet(ifc.getIfcPropertySingleValue_NominalValue()));
+	}
+
+	@Test
+	public void testLists() {
+		HashMapVirtualObject relContained = create(ifc.getIfcRelContainedInSpatialStructure());
+		long wall1 = databaseInterface.newOid(ifc.getIfcWall());
+		long wall2 = databaseInterface.newOid(ifc.getIfcWall());
+		relContained.addReference(ifc.getIfcRelContainedInSpatialStructure_RelatedElements(), ifc.getIfcWall(), wall1);
+		relContained.addReference(ifc.getIfcRelContainedInSpatialStructure_RelatedElements(), ifc.getIfcWall(), wall2);
+		Object relatedElements = relContained.eGet(ifc.getIfcRelContainedInSpatialStructure_RelatedElements());
+		assertTrue(relatedElements instanceof OidList);
+		assertTrue(((OidList) relatedElements).isOidsOnly());
+		assertEquals(Arrays.asList(wall1, wall2), relatedElements);
+
+		HashMapVirtualObject point = create(ifc.getIfcCartesianPoint());
+		point.addListItem(ifc.getIfcCartesianPoint_Coordinates(), 1.0);
+		// Setting an item past the end fills the list up with nulls
+		point.setListItem(ifc.getIfcCartesianPoint_Coordinates(), 2, 3.0);
+		assertEquals(Arrays.asList(1.0, null, 3.0), point.eGet(ifc.getIfcCartesianPoint_Coordinates()));
+	}
+
+	@Test
+	public void testUnset() {
+		HashMapVirtualObject storey = create(ifc.getIfcBuildingStorey());
+		assertFalse(storey.eIsSet(ifc.getIfcBuildingStorey_Elevation()));
+		assertNull(storey.eGet(ifc.getIfcBuildingStorey_Elevation()));
+		storey.setAttribute(ifc.getIfcBuildingStorey_Elevation(), 0.0);
+		storey.setAttribute(ifc.getIfcRoot_Name(), "Level 0");
+		assertTrue(storey.eIsSet(ifc.getIfcBuildingStorey_Elevation()));
+		storey.eUnset(ifc.getIfcBuildingStorey_Elevation());
+		storey.eUnset(ifc.getIfcRoot_Name());
+		assertFalse(storey.eIsSet(ifc.getIfcBuildingStorey_Elevation()));
+		assertNull(storey.eGet(ifc.getIfcBuildingStorey_Elevation()));
+		assertFalse(storey.eIsSet(ifc.getIfcRoot_Name()));
+		assertNull(storey.eGet(ifc.getIfcRoot_Name()));
+
+		HashMapVirtualObject point = create(ifc.getIfcCartesianPoint());
+		point.addListItem(ifc.getIfcCartesianPoint_Coordinates(), 1.0);
+		point.eUnset(ifc.getIfcCartesianPoint_Coordinates());
+		assertNull(point.eGet(ifc.getIfcCartesianPoint_Coordinates()));
+		point.addListItem(ifc.getIfcCartesianPoint_Coordinates(), 2.0);
+		assertEquals(Arrays.asList(2.0), point.eGet(ifc.getIfcCartesianPoint_Coordinates()));
+	}
+
+	@Test
+	public void testFeatureOfOtherClass() throws Exception {
+		HashMapVirtualObject wall = create(ifc.getIfcWall());
+		wall.setAttribute(ifc.getIfcRoot_GlobalId(), "2O2Fr$t4X7Zf8NOew3FL01");
+		byte[] record = wall.write().array();
+
+		// Accepted like the map based implementation did, but not written to the database
+		wall.setAttribute(ifc.getIfcBuildingStorey_Elevation(), 2.5);
+		wall.addListItem(ifc.getIfcCartesianPoint_Coordinates(), 1.0);
+		assertTrue(wall.eIsSet(ifc.getIfcBuildingStorey_Elevation()));
+		assertEquals(2.5, wall.eGet(ifc.getIfcBuildingStorey_Elevation()));
+		assertEquals(Arrays.asList(1.0), wall.eGet(ifc.getIfcCartesianPoint_Coordinates()));
+		assertArrayEquals(record, wall.write().array());
+
+		wall.eUnset(ifc.getIfcBuildingStorey_Elevation());
+		assertFalse(wall.eIsSet(ifc.getIfcBuildingStorey_Elevation()));
+		assertNull(wall.eGet(ifc.getIfcBuildingStorey_Elevation()));
+	}
+
+	@Test
+	public void testDirectReferences() {
+		HashMapVirtualObject wall = create(ifc.getIfcWall());
+		HashMapVirtualObject ownerHistory = create(ifc.getIfcOwnerHistory());
+		HashMapVirtualObject storey = create(ifc.getIfcBuildingStorey());
+		wall.setDirectReference(ifc.getIfcRoot_OwnerHistory(), ownerHistory);
+		assertSame(ownerHistory, wall.getDirectFeature(ifc.getIfcRoot_OwnerHistory()));
+		assertNull(wall.getDirectFeature(ifc.getIfcProduct_Representation()));
+
+		assertEquals(0, wall.addDirectListReference(ifc.getIfcProduct_ReferencedBy(), storey));
+		assertEquals(1, wall.addDirectListReference(ifc.getIfcProduct_ReferencedBy(), ownerHistory));
+		List<HashMapVirtualObject> expected = Arrays.asList(storey, ownerHistory);
+		assertTrue(wall.getDirectListFeature(ifc.getIfcProduct_ReferencedBy()).containsAll(expected));
+
+		// Features the EClass does not have are kept apart
+		wall.setDirectReference(ifc.getIfcRelContainedInSpatialStructure_RelatingStructure(), storey);
+		assertSame(storey, wall.getDirectFeature(ifc.getIfcRelContainedInSpatialStructure_RelatingStructure()));
+		wall.addDirectListReference(ifc.getIfcRelContainedInSpatialStructure_RelatedElements(), storey);
+		assertEquals(1, wall.getDirectListFeature(ifc.getIfcRelContainedInSpatialStructure_RelatedElements()).size());
+	}
+}
@@ -0,0 +1,129 @@
+package org.bimserver.tests.emf;
+
+/******************************************************************************
+ * Copyright (C) 2009-2019  BIMserver.org
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see {@literal<http://www.gnu.org/licenses/>}.
+ *****************************************************************************/
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.bimserver.models.ifc2x3tc1.Ifc2x3tc1Package;
+import org.bimserver.shared.HashMapWrappedVirtualObject;
+import org.bimserver.shared.OidList;
+import org.junit.Test;
+
+/**
+ * OidList keeps oids in a long[] until anything else is added, either way it has to behave like any other List
+ */
+public class TestOidList {
+	private final Ifc2x3tc1Package ifc = Ifc2x3tc1Package.eINSTANCE;
+
+	@Test
+	public void testOids() {
+		OidList list = new OidList(0);
+		for (long oid = 1; oid <= 100; oid++) {
+			list.addOid(oid);
+		}
+		assertEquals(100, list.size());
+		assertTrue(list.isOidsOnly());
+		assertEquals(1L, list.getOid(0));
+		assertEquals(100L, list.get(99));
+		assertEquals(50L, list.set(49, 1000L));
+		assertEquals(1000L, list.getOid(49));
+		assertTrue(list.isOidsOnly());
+	}
+
+	@Test
+	public void testNull() {
+		OidList list = new OidList(2);
+		list.add(1L);
+		list.add(null);
+		list.add(3L);
+		assertTrue(list.isOidsOnly());
+		assertEquals(Arrays.asList(1L, null, 3L), list);
+	}
+
+	@Test
+	public void testInsertAndRemove() {
+		OidList list = new OidList(4);
+		list.addAll(Arrays.asList(1L, 2L, 4L));
+		list.add(2, 3L);
+		list.add(0, 0L);
+		assertEquals(Arrays.asList(0L, 1L, 2L, 3L, 4L), list);
+		assertEquals(0L, list.remove(0));
+		assertEquals(4L, list.remove(3));
+		assertEquals(Arrays.asList(1L, 2L, 3L), list);
+	}
+
+	@Test
+	public void testObject() {
+		OidList list = new OidList(4);
+		list.addOid(1L);
+		list.add(null);
+		HashMapWrappedVirtualObject wrapped = new HashMapWrappedVirtualObject(ifc.getIfcLabel());
+		list.add(wrapped);
+		// Anything that is not an oid switches the list to objects, the oids and nulls that were in it are kept
+		assertFalse(list.isOidsOnly());
+		assertEquals(Arrays.asList(1L, null, wrapped), list);
+		assertEquals(1L, list.getOid(0));
+		list.addOid(4L);
+		list.add(1, 2L);
+		assertEquals(Arrays.asList(1L, 2L, null, wrapped, 4L), list);
+		assertEquals(wrapped, list.remove(3));
+		assertEquals(Arrays.asList(1L, 2L, null, 4L), list);
+	}
+
+	@Test
+	public void testClear() {
+		OidList list = new OidList(4);
+		list.add(new HashMapWrappedVirtualObject(ifc.getIfcLabel()));
+		list.clear();
+		assertEquals(0, list.size());
+		assertTrue(list.isOidsOnly());
+		list.addOid(1L);
+		assertEquals(Arrays.asList(1L), list);
+	}
+
+	@Test
+	public void testEqualsArrayList() {
+		OidList list = new OidList(0);
+		List<Object> expected = new ArrayList<>();
+		for (long oid = 0; oid < 10; oid++) {
+			list.addOid(oid);
+			expected.add(oid);
+		}
+		assertEquals(expected, list);
+		assertEquals(expected.hashCode(), list.hashCode());
+		assertEquals(expected, new ArrayList<>(list));
+	}
+
+	@Test(expected = IndexOutOfBoundsException.class)
+	public void testGetOutOfBounds() {
+		OidList list = new OidList(4);
+		list.addOid(1L);
+		list.get(1);
+	}
+
+	@Test(expected = IndexOutOfBoundsException.class)
+	public void testAddOutOfBounds() {
+		new OidList(4).add(1, 1L);
+	}
+}
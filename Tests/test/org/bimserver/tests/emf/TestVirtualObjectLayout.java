@@ -0,0 +1,181 @@
+package org.bimserver.tests.emf;
+
+/******************************************************************************
+ * Copyright (C) 2009-2019  BIMserver.org
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see {@literal<http://www.gnu.org/licenses/>}.
+ *****************************************************************************/
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.bimserver.emf.VirtualObjectLayout;
+import org.eclipse.emf.ecore.EAttribute;
+import org.eclipse.emf.ecore.EClass;
+import org.eclipse.emf.ecore.EClassifier;
+import org.eclipse.emf.ecore.EReference;
+import org.eclipse.emf.ecore.EStructuralFeature;
+import org.eclipse.emf.ecore.EcoreFactory;
+import org.eclipse.emf.ecore.EcorePackage;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * The layout is built from a dynamic EClass with a feature of every kind, so all kinds are covered without depending on a schema
+ */
+public class TestVirtualObjectLayout {
+	private final EcorePackage ecore = EcorePackage.eINSTANCE;
+	private EClass thing;
+	private EAttribute intValue;
+	private EAttribute name;
+	private EAttribute longValue;
+	private EAttribute doubleValue;
+	private EAttribute values;
+	private EAttribute floatValue;
+	private EAttribute booleanValue;
+	private EAttribute shortValue;
+	private EAttribute integerObject;
+	private EReference reference;
+	private EReference references;
+
+	@Before
+	public void setup() {
+		thing = createEClass("Thing");
+		intValue = createAttribute(thing, "intValue", ecore.getEInt(), false);
+		name = createAttribute(thing, "name", ecore.getEString(), false);
+		longValue = createAttribute(thing, "longValue", ecore.getELong(), false);
+		doubleValue = createAttribute(thing, "doubleValue", ecore.getEDouble(), false);
+		values = createAttribute(thing, "values", ecore.getEDouble(), true);
+		floatValue = createAttribute(thing, "floatValue", ecore.getEFloat(), false);
+		booleanValue = createAttribute(thing, "booleanValue", ecore.getEBoolean(), false);
+		shortValue = createAttribute(thing, "shortValue", ecore.getEShort(), false);
+		integerObject = createAttribute(thing, "integerObject", ecore.getEIntegerObject(), false);
+		reference = createReference(thing, "reference", false);
+		references = createReference(thing, "references", true);
+	}
+
+	@Test
+	public void testKinds() {
+		VirtualObjectLayout layout = new VirtualObjectLayout(thing);
+		assertSame(thing, layout.getEClass());
+		assertEquals(11, layout.getNrFeatures());
+		assertEquals(VirtualObjectLayout.KIND_INT, kind(layout, intValue));
+		assertEquals(VirtualObjectLayout.KIND_OBJECT, kind(layout, name));
+		assertEquals(VirtualObjectLayout.KIND_LONG, kind(layout, longValue));
+		assertEquals(VirtualObjectLayout.KIND_DOUBLE, kind(layout, doubleValue));
+		assertEquals(VirtualObjectLayout.KIND_OBJECT, kind(layout, values));
+		assertEquals(VirtualObjectLayout.KIND_FLOAT, kind(layout, floatValue));
+		assertEquals(VirtualObjectLayout.KIND_BOOLEAN, kind(layout, booleanValue));
+		assertEquals(VirtualObjectLayout.KIND_SHORT, kind(layout, shortValue));
+		assertEquals(VirtualObjectLayout.KIND_INT, kind(layout, integerObject));
+		assertEquals(VirtualObjectLayout.KIND_REFERENCE, kind(layout, reference));
+		assertEquals(VirtualObjectLayout.KIND_REFERENCE_LIST, kind(layout, references));
+		assertFalse(VirtualObjectLayout.isPrimitive(VirtualObjectLayout.KIND_OBJECT));
+		assertFalse(VirtualObjectLayout.isPrimitive(VirtualObjectLayout.KIND_REFERENCE_LIST));
+		assertTrue(VirtualObjectLayout.isPrimitive(VirtualObjectLayout.KIND_REFERENCE));
+	}
+
+	@Test
+	public void testSlots() {
+		VirtualObjectLayout layout = new VirtualObjectLayout(thing);
+		// Primitive and object slots are both handed out in feature order, starting at 0
+		assertEquals(8, layout.getNrPrimitiveSlots());
+		assertEquals(3, layout.getNrObjectSlots());
+		assertEquals(0, slot(layout, intValue));
+		assertEquals(0, slot(layout, name));
+		assertEquals(1, slot(layout, longValue));
+		assertEquals(2, slot(layout, doubleValue));
+		assertEquals(1, slot(layout, values));
+		assertEquals(3, slot(layout, floatValue));
+		assertEquals(4, slot(layout, booleanValue));
+		assertEquals(5, slot(layout, shortValue));
+		assertEquals(6, slot(layout, integerObject));
+		assertEquals(7, slot(layout, reference));
+		assertEquals(2, slot(layout, references));
+	}
+
+	@Test
+	public void testIndex() {
+		VirtualObjectLayout layout = new VirtualObjectLayout(thing);
+		for (int index = 0; index < layout.getNrFeatures(); index++) {
+			EStructuralFeature feature = thing.getEAllStructuralFeatures().get(index);
+			assertSame(feature, layout.getFeature(index));
+			assertEquals(index, layout.getIndex(feature));
+		}
+	}
+
+	@Test
+	public void testFeatureOfOtherClass() {
+		EClass other = createEClass("Other");
+		// Same name, but features are matched by identity
+		EAttribute otherName = createAttribute(other, "name", ecore.getEString(), false);
+		VirtualObjectLayout layout = new VirtualObjectLayout(thing);
+		assertEquals(-1, layout.getIndex(otherName));
+		assertEquals(-1, new VirtualObjectLayout(other).getIndex(name));
+	}
+
+	@Test
+	public void testMultipleInheritance() {
+		EClass other = createEClass("Other");
+		EAttribute label = createAttribute(other, "label", ecore.getEString(), false);
+		EClass sub = createEClass("Sub");
+		sub.getESuperTypes().add(other);
+		sub.getESuperTypes().add(thing);
+		EAttribute extra = createAttribute(sub, "extra", ecore.getELong(), false);
+
+		// The features of Thing come after the one of Other, so their feature ids do not match their index in Sub
+		VirtualObjectLayout layout = new VirtualObjectLayout(sub);
+		assertEquals(13, layout.getNrFeatures());
+		assertEquals(0, layout.getIndex(label));
+		assertEquals(1, layout.getIndex(intValue));
+		assertEquals(11, layout.getIndex(references));
+		assertEquals(12, layout.getIndex(extra));
+		assertEquals(VirtualObjectLayout.KIND_REFERENCE_LIST, layout.getKind(layout.getIndex(references)));
+		assertEquals(VirtualObjectLayout.KIND_LONG, layout.getKind(layout.getIndex(extra)));
+	}
+
+	private byte kind(VirtualObjectLayout layout, EStructuralFeature feature) {
+		return layout.getKind(layout.getIndex(feature));
+	}
+
+	private int slot(VirtualObjectLayout layout, EStructuralFeature feature) {
+		return layout.getSlot(layout.getIndex(feature));
+	}
+
+	private EClass createEClass(String name) {
+		EClass eClass = EcoreFactory.eINSTANCE.createEClass();
+		eClass.setName(name);
+		return eClass;
+	}
+
+	private EAttribute createAttribute(EClass eClass, String name, EClassifier type, boolean many) {
+		EAttribute eAttribute = EcoreFactory.eINSTANCE.createEAttribute();
+		eAttribute.setName(name);
+		eAttribute.setEType(type);
+		eAttribute.setUpperBound(many ? -1 : 1);
+		eClass.getEStructuralFeatures().add(eAttribute);
+		return eAttribute;
+	}
+
+	private EReference createReference(EClass eClass, String name, boolean many) {
+		EReference eReference = EcoreFactory.eINSTANCE.createEReference();
+		eReference.setName(name);
+		eReference.setEType(eClass);
+		eReference.setUpperBound(many ? -1 : 1);
+		eClass.getEStructuralFeatures().add(eReference);
+		return eReference;
+	}
+}
@@ -0,0 +1,114 @@
+package org.bimserver.tests.json;
+
+/******************************************************************************
+ * Copyright (C) 2009-2019  BIMserver.org
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see {@literal<http://www.gnu.org/licenses/>}.
+ *****************************************************************************/
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.bimserver.database.queries.om.Query;
+import org.bimserver.emf.PartitionableJsonStreamingSerializer;
+import org.bimserver.longaction.ParallelStreamingSerializer;
+import org.bimserver.models.store.ParameterDefinition;
+import org.bimserver.models.store.StringType;
+import org.bimserver.plugins.serializers.PartitionableStreamingSerializer;
+import org.bimserver.plugins.serializers.ProgressReporter;
+import org.bimserver.plugins.serializers.StreamingSerializerPlugin;
+import org.bimserver.serializers.json.ParallelJsonStreamingSerializerPlugin;
+import org.bimserver.shared.HashMapVirtualObject;
+import org.bimserver.tests.utils.ListObjectProvider;
+import org.bimserver.tests.utils.VirtualObjectTestBase;
+import org.junit.Test;
+
+public class TestParallelJsonStreamingSerializer extends VirtualObjectTestBase {
+
+	@Test
+	public void testPlugin() {
+		ParallelJsonStreamingSerializerPlugin plugin = new ParallelJsonStreamingSerializerPlugin();
+		assertTrue(plugin.supportsPartitioning());
+		assertTrue(plugin.createSerializer(null) instanceof PartitionableStreamingSerializer);
+		for (ParameterDefinition parameterDefinition : plugin.getUserSettingsDefinition().getParameters()) {
+			if (parameterDefinition.getIdentifier().equals(StreamingSerializerPlugin.EXTENSION)) {
+				assertEquals("json", ((StringType) parameterDefinition.getDefaultValue()).getValue());
+			}
+		}
+	}
+
+	@Test
+	public void testParallel() throws Exception {
+		List<HashMapVirtualObject> objects = new ArrayList<>();
+		List<Query> partitions = new ArrayList<>();
+		Map<Query, List<HashMapVirtualObject>> partitionObjects = new IdentityHashMap<>();
+		for (int i = 0; i < 20; i++) {
+			Query partition = new Query(packageMetaData);
+			List<HashMapVirtualObject> walls = new ArrayList<>();
+			// Every third partition is empty
+			for (int j = 0; j < (i % 3 == 0 ? 0 : i); j++) {
+				HashMapVirtualObject wall = create(ifc.getIfcWall());
+				wall.setAttribute(ifc.getIfcRoot_Name(), "Wall " + i + "." + j);
+				walls.add(wall);
+			}
+			objects.addAll(walls);
+			partitions.add(partition);
+			partitionObjects.put(partition, walls);
+		}
+
+		StreamingSerializerPlugin plugin = new ParallelJsonStreamingSerializerPlugin();
+		PartitionableJsonStreamingSerializer serializer = (PartitionableJsonStreamingSerializer) plugin.createSerializer(null);
+		serializer.init(new ListObjectProvider(objects, databaseInterface), null, null, null, packageMetaData);
+		ByteArrayOutputStream sequential = new ByteArrayOutputStream();
+		serializer.writeToOutputStream(sequential);
+
+		PartitionableStreamingSerializer partitionable = (PartitionableStreamingSerializer) plugin.createSerializer(null);
+		ParallelStreamingSerializer parallel = new ParallelStreamingSerializer(null, partitionable, partitions, Collections.<Long>emptySet(), packageMetaData) {
+			@Override
+			protected byte[] serializePartition(Query partition) throws Exception {
+				return serializePartition(new ListObjectProvider(partitionObjects.get(partition), databaseInterface));
+			}
+		};
+		parallel.init(new ListObjectProvider(objects, databaseInterface), null, null, null, packageMetaData);
+		List<long[]> updates = new ArrayList<>();
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		parallel.writeToOutputStream(output, new ProgressReporter() {
+			@Override
+			public void update(long progress, long max) {
+				updates.add(new long[] { progress, max });
+			}
+
+			@Override
+			public void setTitle(String stage) {
+			}
+		});
+
+		assertArrayEquals(sequential.toByteArray(), output.toByteArray());
+
+		// One update per partition, in the order in which they were done, and one for the footer
+		assertEquals(partitions.size() + 1, updates.size());
+		for (int i = 0; i < updates.size(); i++) {
+			assertEquals(i + 1, updates.get(i)[0]);
+			assertEquals(partitions.size() + 1, updates.get(i)[1]);
+		}
+	}
+}
@@ -0,0 +1,185 @@
+package org.bimserver.tests.json;
+
+/******************************************************************************
+ * Copyright (C) 2009-2019  BIMserver.org
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see {@literal<http://www.gnu.org/licenses/>}.
+ *****************************************************************************/
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+
+import org.bimserver.emf.PartitionableJsonStreamingSerializer;
+import org.bimserver.emf.SharedJsonStreamingDeserializer;
+import org.bimserver.emf.SharedJsonStreamingSerializer;
+import org.bimserver.models.ifc2x3tc1.IfcChangeActionEnum;
+import org.bimserver.plugins.deserializers.DeserializeException;
+import org.bimserver.plugins.deserializers.DeserializerErrorCode;
+import org.bimserver.shared.HashMapVirtualObject;
+import org.bimserver.shared.HashMapWrappedVirtualObject;
+import org.bimserver.shared.QueryContext;
+import org.bimserver.tests.utils.ListObjectProvider;
+import org.bimserver.tests.utils.MemoryDatabaseInterface;
+import org.bimserver.tests.utils.VirtualObjectTestBase;
+import org.junit.Test;
+
+/**
+ * Writes objects with the SharedJsonStreamingSerializer and reads the output back with the SharedJsonStreamingDeserializer, no server
+ * needed
+ */
+public class TestSharedJsonStreamingRoundTrip extends VirtualObjectTestBase {
+	@Test
+	public void testRoundTrip() throws Exception {
+		List<HashMapVirtualObject> objects = new ArrayList<>();
+		HashMapVirtualObject storey = create(ifc.getIfcBuildingStorey());
+		HashMapVirtualObject ownerHistory = create(ifc.getIfcOwnerHistory());
+		HashMapVirtualObject wall1 = create(ifc.getIfcWall());
+		HashMapVirtualObject wall2 = create(ifc.getIfcWall());
+		HashMapVirtualObject relContained = create(ifc.getIfcRelContainedInSpatialStructure());
+		HashMapVirtualObject property = create(ifc.getIfcPropertySingleValue());
+		HashMapVirtualObject point = create(ifc.getIfcCartesianPoint());
+
+		ownerHistory.setAttribute(ifc.getIfcOwnerHistory_ChangeAction(), IfcChangeActionEnum.ADDED);
+		ownerHistory.setAttribute(ifc.getIfcOwnerHistory_CreationDate(), 1262304000L);
+		storey.setAttribute(ifc.getIfcRoot_GlobalId(), "0Kf0ZNHi58wBKSyUsM1Fq1");
+		storey.setAttribute(ifc.getIfcRoot_Name(), "Level 1");
+		for (HashMapVirtualObject wall : Arrays.asList(wall1, wall2)) {
+			wall.setAttribute(ifc.getIfcRoot_GlobalId(), "2O2Fr$t4X7Zf8NOew3FL" + wall.getOid());
+			wall.setAttribute(ifc.getIfcRoot_Name(), "Wall \"" + wall.getOid() + "\"");
+			// A reference to an object that comes later in the file
+			wall.setReference(ifc.getIfcRoot_OwnerHistory(), ownerHistory.getOid());
+		}
+		relContained.addReference(ifc.getIfcRelContainedInSpatialStructure_RelatedElements(), ifc.getIfcWall(), wall1.getOid());
+		relContained.addReference(ifc.getIfcRelContainedInSpatialStructure_RelatedElements(), ifc.getIfcWall(), wall2.getOid());
+		relContained.setReference(ifc.getIfcRelContainedInSpatialStructure_RelatingStructure(), storey.getOid());
+		HashMapWrappedVirtualObject label = new HashMapWrappedVirtualObject(ifc.getIfcLabel());
+		label.setAttribute(ifc.getIfcLabel_WrappedValue(), "Interior - 138mm Partition");
+		property.setAttribute(ifc.getIfcProperty_Name(), "Reference");
+		property.setReference(ifc.getIfcPropertySingleValue_NominalValue(), label);
+		for (double coordinate : new double[] { 1.5, -2.25, 0.1 }) {
+			point.addListItem(ifc.getIfcCartesianPoint_Coordinates(), coordinate);
+			point.addListItem(ifc.getIfcCartesianPoint_CoordinatesAsString(), Double.toString(coordinate));
+		}
+		objects.addAll(Arrays.asList(storey, wall1, wall2, relContained, property, point, ownerHistory));
+
+		MemoryDatabaseInterface target = new MemoryDatabaseInterface();
+		SharedJsonStreamingDeserializer deserializer = new SharedJsonStreamingDeserializer(packageMetaData, tempDir);
+		long read = deserializer.read(new ByteArrayInputStream(serialize(objects)), "test.json", -1, new QueryContext(target, packageMetaData, 1, 1, 1, 1, 0));
+		assertEquals(objects.size(), read);
+		assertEquals(objects.size(), target.getSaved().size());
+		assertEquals(2, (int) deserializer.getSummaryMap().get(ifc.getIfcWall()));
+
+		HashMapVirtualObject newOwnerHistory = target.getOne(ifc.getIfcOwnerHistory());
+		assertEquals(IfcChangeActionEnum.ADDED, newOwnerHistory.eGet(ifc.getIfcOwnerHistory_ChangeAction()));
+		assertEquals(1262304000L, newOwnerHistory.eGet(ifc.getIfcOwnerHistory_CreationDate()));
+
+		HashMapVirtualObject newRelContained = target.getOne(ifc.getIfcRelContainedInSpatialStructure());
+		assertEquals(target.getOne(ifc.getIfcBuildingStorey()).getOid(), newRelContained.eGet(ifc.getIfcRelContainedInSpatialStructure_RelatingStructure()));
+		List<?> relatedElements = (List<?>) newRelContained.eGet(ifc.getIfcRelContainedInSpatialStructure_RelatedElements());
+		assertEquals(2, relatedElements.size());
+		for (Object relatedElement : relatedElements) {
+			HashMapVirtualObject wall = target.getSaved().get(relatedElement);
+			assertEquals(ifc.getIfcWall(), wall.eClass());
+			assertEquals(newOwnerHistory.getOid(), wall.eGet(ifc.getIfcRoot_OwnerHistory()));
+			assertTrue(((String) wall.eGet(ifc.getIfcRoot_Name())).startsWith("Wall \""));
+		}
+
+		HashMapVirtualObject newProperty = target.getOne(ifc.getIfcPropertySingleValue());
+		HashMapWrappedVirtualObject newLabel = (HashMapWrappedVirtualObject) newProperty.eGet(ifc.getIfcPropertySingleValue_NominalValue());
+		assertEquals(ifc.getIfcLabel(), newLabel.eClass());
+		assertEquals("Interior - 138mm Partition", newLabel.eGet(ifc.getIfcLabel_WrappedValue()));
+
+		HashMapVirtualObject newPoint = target.getOne(ifc.getIfcCartesianPoint());
+		assertEquals(Arrays.asList(1.5, -2.25, 0.1), newPoint.eGet(ifc.getIfcCartesianPoint_Coordinates()));
+		assertEquals(Arrays.asList("1.5", "-2.25", "0.1"), newPoint.eGet(ifc.getIfcCartesianPoint_CoordinatesAsString()));
+	}
+
+	@Test
+	public void testStub() throws Exception {
+		String json = "{\"objects\":["
+				+ "{\"_i\":65537,\"_u\":\"" + UUID.randomUUID() + "\",\"_r\":3,\"_t\":\"IfcWall\",\"_s\":1,\"Name\":\"Wall\"},"
+				+ "{\"_i\":131074,\"_u\":\"" + UUID.randomUUID() + "\",\"_r\":3,\"_t\":\"IfcOwnerHistory\",\"_s\":0}"
+				+ "]}";
+		MemoryDatabaseInterface target = new MemoryDatabaseInterface();
+		SharedJsonStreamingDeserializer deserializer = new SharedJsonStreamingDeserializer(packageMetaData, tempDir);
+		long read = deserializer.read(new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8)), "test.json", -1, new QueryContext(target, packageMetaData, 1, 1, 1, 1, 0));
+		assertEquals(1, read);
+		assertEquals(1, deserializer.getNrStubs());
+		// The stub is not stored
+		assertEquals(1, target.getSaved().size());
+		assertEquals(ifc.getIfcWall(), target.getSaved().values().iterator().next().eClass());
+	}
+
+	@Test
+	public void testReferencedStub() throws Exception {
+		String wall = "{\"_i\":65537,\"_u\":\"" + UUID.randomUUID() + "\",\"_r\":3,\"_t\":\"IfcWall\",\"_s\":1,\"Name\":\"Wall\",\"_rOwnerHistory\":{\"_i\":131074,\"_t\":\"IfcOwnerHistory\"}}";
+		String stub = "{\"_i\":131074,\"_u\":\"" + UUID.randomUUID() + "\",\"_r\":3,\"_t\":\"IfcOwnerHistory\",\"_s\":0}";
+		// Referenced before and after the stub
+		for (String json : Arrays.asList("{\"objects\":[" + wall + "," + stub + "]}", "{\"objects\":[" + stub + "," + wall + "]}")) {
+			SharedJsonStreamingDeserializer deserializer = new SharedJsonStreamingDeserializer(packageMetaData, tempDir);
+			try {
+				deserializer.read(new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8)), "test.json", -1, new QueryContext(new MemoryDatabaseInterface(), packageMetaData, 1, 1, 1, 1, 0));
+				fail("A reference to a stub was accepted");
+			} catch (DeserializeException e) {
+				assertEquals(DeserializerErrorCode.NON_EXISTING_ENTITY_REFERENCED, e.getDeserializerErrorCode());
+			}
+		}
+	}
+
+	@Test
+	public void testPartitions() throws Exception {
+		List<HashMapVirtualObject> objects = new ArrayList<>();
+		for (int i = 0; i < 5; i++) {
+			HashMapVirtualObject wall = create(ifc.getIfcWall());
+			wall.setAttribute(ifc.getIfcRoot_Name(), "Wall " + i);
+			objects.add(wall);
+		}
+		PartitionableJsonStreamingSerializer serializer = new PartitionableJsonStreamingSerializer(false, false);
+		serializer.init(new ListObjectProvider(objects, databaseInterface), null, null, null, packageMetaData);
+		ByteArrayOutputStream sequential = new ByteArrayOutputStream();
+		serializer.writeToOutputStream(sequential);
+
+		// Joined the way ParallelStreamingSerializer joins them, an empty partition writes nothing
+		serializer = new PartitionableJsonStreamingSerializer(false, false);
+		serializer.init(new ListObjectProvider(objects, databaseInterface), null, null, null, packageMetaData);
+		ByteArrayOutputStream partitioned = new ByteArrayOutputStream();
+		serializer.writeHeader(partitioned);
+		assertTrue(serializer.writePartition(new ListObjectProvider(objects.subList(0, 2), databaseInterface), partitioned));
+		assertFalse(serializer.writePartition(new ListObjectProvider(new ArrayList<>(), databaseInterface), partitioned));
+		partitioned.write(serializer.getPartitionSeparator());
+		assertTrue(serializer.writePartition(new ListObjectProvider(objects.subList(2, 5), databaseInterface), partitioned));
+		serializer.writeFooter(partitioned);
+
+		assertArrayEquals(sequential.toByteArray(), partitioned.toByteArray());
+	}
+
+	private byte[] serialize(List<HashMapVirtualObject> objects) throws Exception {
+		ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+		SharedJsonStreamingSerializer serializer = new SharedJsonStreamingSerializer(new ListObjectProvider(objects, databaseInterface), null, false, false);
+		while (serializer.write(outputStream, null)) {
+		}
+		return outputStream.toByteArray();
+	}
+}
@@ -0,0 +1,123 @@
+package org.bimserver.tests.memory;
+
+/******************************************************************************
+ * Copyright (C) 2009-2019  BIMserver.org
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see {@literal<http://www.gnu.org/licenses/>}.
+ *****************************************************************************/
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.bimserver.memory.MemoryGovernor;
+import org.bimserver.memory.MemoryReservation;
+import org.bimserver.shared.exceptions.UserException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestMemoryGovernor {
+	private ExecutorService executorService;
+
+	@Before
+	public void setup() {
+		executorService = Executors.newCachedThreadPool();
+	}
+
+	@After
+	public void tearDown() {
+		executorService.shutdownNow();
+	}
+
+	@Test
+	public void testBigJobIsNotOvertaken() throws Exception {
+		MemoryGovernor memoryGovernor = new MemoryGovernor(100);
+		MemoryReservation first = memoryGovernor.reserve("first", 60);
+		Future<MemoryReservation> big = executorService.submit(() -> memoryGovernor.reserve("big", 80));
+		waitForWaiting(memoryGovernor, 1);
+
+		// Fits in the remaining 40 bytes, but the big job was first
+		Future<MemoryReservation> small = executorService.submit(() -> memoryGovernor.reserve("small", 10));
+		waitForWaiting(memoryGovernor, 2);
+		assertFalse(small.isDone());
+
+		first.close();
+		MemoryReservation bigReservation = big.get(10, TimeUnit.SECONDS);
+		MemoryReservation smallReservation = small.get(10, TimeUnit.SECONDS);
+		// Ids are handed out in the order the reservations are made
+		assertTrue(bigReservation.getId() < smallReservation.getId());
+		assertEquals(90, memoryGovernor.getReserved());
+		bigReservation.close();
+		smallReservation.close();
+		assertEquals(0, memoryGovernor.getReserved());
+	}
+
+	@Test
+	public void testTimeoutLetsNextJobIn() throws Exception {
+		MemoryGovernor memoryGovernor = new MemoryGovernor(100);
+		MemoryReservation first = memoryGovernor.reserve("first", 60);
+		Future<MemoryReservation> big = executorService.submit(() -> memoryGovernor.reserve("big", 80, 200));
+		waitForWaiting(memoryGovernor, 1);
+		Future<MemoryReservation> small = executorService.submit(() -> memoryGovernor.reserve("small", 10));
+
+		// The big job gives up, after which the small job fits
+		try {
+			big.get(10, TimeUnit.SECONDS);
+			fail("Reserved more than the budget");
+		} catch (ExecutionException e) {
+			assertTrue(e.getCause() instanceof UserException);
+		}
+		small.get(10, TimeUnit.SECONDS).close();
+		first.close();
+		assertEquals(0, memoryGovernor.getReserved());
+	}
+
+	@Test
+	public void testDatabaseCacheTakesFromBudget() throws Exception {
+		MemoryGovernor memoryGovernor = new MemoryGovernor(100);
+		MemoryReservation first = memoryGovernor.reserve("first", 60);
+		// Only the unreserved part can go to the cache
+		assertFalse(memoryGovernor.takeFromBudget(50));
+		assertTrue(memoryGovernor.takeFromBudget(30));
+		assertEquals(70, memoryGovernor.getBudget());
+
+		Future<MemoryReservation> second = executorService.submit(() -> memoryGovernor.reserve("second", 30));
+		waitForWaiting(memoryGovernor, 1);
+		// Jobs that are waiting go first
+		assertFalse(memoryGovernor.takeFromBudget(5));
+		// Shrinking the cache lets the waiting job in
+		memoryGovernor.returnToBudget(30);
+		second.get(10, TimeUnit.SECONDS).close();
+		first.close();
+		assertEquals(100, memoryGovernor.getBudget());
+	}
+
+	private void waitForWaiting(MemoryGovernor memoryGovernor, int expected) throws InterruptedException {
+		long deadline = System.currentTimeMillis() + 10000;
+		while (memoryGovernor.getNrWaiting() != expected) {
+			if (System.currentTimeMillis() > deadline) {
+				fail("Expected " + expected + " waiting jobs");
+			}
+			Thread.sleep(10);
+		}
+	}
+}
@@ -0,0 +1,158 @@
+package org.bimserver.tests.modelcheckers;
+
+/******************************************************************************
+ * Copyright (C) 2009-2019  BIMserver.org
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see {@literal<http://www.gnu.org/licenses/>}.
+ *****************************************************************************/
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.bimserver.database.queries.om.Include.TypeDef;
+import org.bimserver.database.queries.om.Query;
+import org.bimserver.database.queries.om.QueryPart;
+import org.bimserver.emf.IfcModelInterface;
+import org.bimserver.ifc.BasicIfcModel;
+import org.bimserver.modelcheckers.RequiredAttributesModelChecker;
+import org.bimserver.models.ifc2x3tc1.IfcWall;
+import org.bimserver.models.store.ModelCheckerResult;
+import org.bimserver.models.store.ModelCheckerResultHeader;
+import org.bimserver.models.store.ModelCheckerResultLine;
+import org.bimserver.plugins.modelchecker.ModelCheckException;
+import org.bimserver.plugins.modelchecker.StreamingModelCheck;
+import org.bimserver.shared.HashMapVirtualObject;
+import org.bimserver.tests.utils.VirtualObjectTestBase;
+import org.eclipse.emf.ecore.EClass;
+import org.junit.Test;
+
+public class TestRequiredAttributesModelChecker extends VirtualObjectTestBase {
+	private final RequiredAttributesModelChecker modelChecker = new RequiredAttributesModelChecker();
+
+	@Test
+	public void testCompile() throws ModelCheckException {
+		modelChecker.compile("# Walls\n\nIfcWall.Name\r\n  IfcSpace.LongName  \n");
+		try {
+			modelChecker.compile("IfcWall.Name\nIfcWall Name\n");
+			fail("Rule without a dot accepted");
+		} catch (ModelCheckException e) {
+			assertTrue(e.getMessage(), e.getMessage().startsWith("Line 2:"));
+		}
+	}
+
+	@Test
+	public void testUnknownTypesAndFeatures() throws ModelCheckException {
+		for (String code : new String[] { "IfcUnknown.Name", "IfcWall.Unknown", "IfcWallTypeEnum.Name" }) {
+			try {
+				modelChecker.createStreamingCheck(packageMetaData, modelChecker.compile(code));
+				fail(code + " accepted");
+			} catch (ModelCheckException e) {
+				// Expected
+			}
+		}
+		try {
+			modelChecker.createStreamingCheck(packageMetaData, null);
+			fail("Checker without compiled code accepted");
+		} catch (ModelCheckException e) {
+			// Expected
+		}
+	}
+
+	@Test
+	public void testQueryParts() throws ModelCheckException {
+		StreamingModelCheck check = modelChecker.createStreamingCheck(packageMetaData, modelChecker.compile("IfcWall.Name\nIfcWall.GlobalId\nIfcSpace.LongName"));
+		Query query = new Query(packageMetaData);
+		check.addQueryParts(query);
+		assertEquals(1, query.getQueryParts().size());
+		QueryPart queryPart = query.getQueryParts().get(0);
+		List<EClass> types = new ArrayList<>();
+		for (TypeDef typeDef : queryPart.getTypes()) {
+			types.add(typeDef.geteClass());
+			assertTrue(typeDef.isIncludeSubTypes());
+		}
+		assertEquals(2, types.size());
+		assertTrue(types.contains(ifc.getIfcWall()));
+		assertTrue(types.contains(ifc.getIfcSpace()));
+		assertFalse(queryPart.hasIncludes());
+
+		Query empty = new Query(packageMetaData);
+		modelChecker.createStreamingCheck(packageMetaData, modelChecker.compile("# Nothing yet")).addQueryParts(empty);
+		assertTrue(empty.getQueryParts().isEmpty());
+	}
+
+	@Test
+	public void testStreamingCheck() throws ModelCheckException {
+		StreamingModelCheck check = modelChecker.createStreamingCheck(packageMetaData, modelChecker.compile("IfcBuildingElement.Name\nIfcWall.ContainedInStructure"));
+		HashMapVirtualObject named = create(ifc.getIfcWallStandardCase());
+		named.setAttribute(ifc.getIfcRoot_Name(), "Wall");
+		named.addReference(ifc.getIfcElement_ContainedInStructure(), ifc.getIfcRelContainedInSpatialStructure(), 1L);
+		HashMapVirtualObject unnamed = create(ifc.getIfcWall());
+		// Objects that were requested by other checks are ignored
+		HashMapVirtualObject space = create(ifc.getIfcSpace());
+
+		for (HashMapVirtualObject object : new HashMapVirtualObject[] { named, unnamed, space }) {
+			check.check(object);
+		}
+		ModelCheckerResult result = check.getResult();
+		assertFalse(result.isValid());
+		assertEquals(2, result.getItems().size());
+		assertLine(result, 0, unnamed.getOid(), "IfcBuildingElement.Name");
+		assertLine(result, 1, unnamed.getOid(), "IfcWall.ContainedInStructure");
+
+		StreamingModelCheck passing = modelChecker.createStreamingCheck(packageMetaData, modelChecker.compile("IfcWall.Name"));
+		passing.check(named);
+		passing.check(space);
+		assertTrue(passing.getResult().isValid());
+		assertTrue(passing.getResult().getItems().isEmpty());
+	}
+
+	@Test
+	public void testLinesAreLimited() throws ModelCheckException {
+		StreamingModelCheck check = modelChecker.createStreamingCheck(packageMetaData, modelChecker.compile("IfcWall.Name"));
+		for (int i = 0; i < 1005; i++) {
+			check.check(create(ifc.getIfcWall()));
+		}
+		ModelCheckerResult result = check.getResult();
+		assertEquals(1001, result.getItems().size());
+		assertEquals("5 more objects miss required attributes", ((ModelCheckerResultHeader) result.getItems().get(1000)).getText());
+	}
+
+	@Test
+	public void testCheckOnModel() throws Exception {
+		IfcModelInterface model = new BasicIfcModel(packageMetaData, null);
+		IfcWall named = model.createAndAdd(ifc.getIfcWallStandardCase(), 1L);
+		named.setName("Wall");
+		IfcWall unnamed = model.createAndAdd(ifc.getIfcWall(), 2L);
+		model.createAndAdd(ifc.getIfcSpace(), 3L);
+
+		ModelCheckerResult result = modelChecker.check(model, modelChecker.compile("IfcBuildingElement.Name\nIfcWall.ContainedInStructure"));
+		assertFalse(result.isValid());
+		// A list without values is not set
+		assertEquals(3, result.getItems().size());
+		assertLine(result, 0, unnamed.getOid(), "IfcBuildingElement.Name");
+		assertLine(result, 1, named.getOid(), "IfcWall.ContainedInStructure");
+		assertLine(result, 2, unnamed.getOid(), "IfcWall.ContainedInStructure");
+	}
+
+	private void assertLine(ModelCheckerResult result, int index, long oid, String rule) {
+		ModelCheckerResultLine line = (ModelCheckerResultLine) result.getItems().get(index);
+		assertEquals(oid, line.getObjectId());
+		assertEquals(rule, line.getFieldOrClass());
+	}
+}
@@ -0,0 +1,92 @@
+package org.bimserver.tests.utils;
+
+/******************************************************************************
+ * Copyright (C) 2009-2019  BIMserver.org
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see {@literal<http://www.gnu.org/licenses/>}.
+ *****************************************************************************/
+
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.List;
+
+import org.bimserver.BimserverDatabaseException;
+import org.bimserver.database.queries.om.QueryException;
+import org.bimserver.plugins.deserializers.DatabaseInterface;
+import org.bimserver.plugins.serializers.ObjectProvider;
+import org.bimserver.shared.HashMapVirtualObject;
+import org.eclipse.emf.ecore.EClass;
+
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+/**
+ * Provides the objects of a list to a streaming serializer, in the order of the list
+ */
+public class ListObjectProvider implements ObjectProvider {
+	private final List<HashMapVirtualObject> objects;
+	private final Iterator<HashMapVirtualObject> iterator;
+	private final DatabaseInterface databaseInterface;
+
+	/**
+	 * @param databaseInterface Used to look up the classes of oids
+	 */
+	public ListObjectProvider(List<HashMapVirtualObject> objects, DatabaseInterface databaseInterface) {
+		this.objects = objects;
+		this.iterator = objects.iterator();
+		this.databaseInterface = databaseInterface;
+	}
+
+	@Override
+	public HashMapVirtualObject next() {
+		return iterator.hasNext() ? iterator.next() : null;
+	}
+
+	@Override
+	public ObjectProvider copy() throws IOException, QueryException {
+		return new ListObjectProvider(objects, databaseInterface);
+	}
+
+	@Override
+	public HashMapVirtualObject getByOid(long oid) {
+		for (HashMapVirtualObject object : objects) {
+			if (object.getOid() == oid) {
+				return object;
+			}
+		}
+		return null;
+	}
+
+	@Override
+	public EClass getEClassForOid(long oid) {
+		try {
+			return databaseInterface.getEClassForOid(oid);
+		} catch (BimserverDatabaseException e) {
+			throw new IllegalArgumentException(e);
+		}
+	}
+
+	@Override
+	public EClass getEClassForCid(short cid) {
+		return null;
+	}
+
+	@Override
+	public ObjectNode getQueryNode() {
+		return null;
+	}
+
+	@Override
+	public void cache(HashMapVirtualObject object) {
+	}
+}
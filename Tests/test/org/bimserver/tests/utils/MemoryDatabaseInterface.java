@@ -0,0 +1,124 @@
+package org.bimserver.tests.utils;
+
+/******************************************************************************
+ * Copyright (C) 2009-2019  BIMserver.org
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see {@literal<http://www.gnu.org/licenses/>}.
+ *****************************************************************************/
+
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import org.bimserver.BimserverDatabaseException;
+import org.bimserver.plugins.deserializers.DatabaseInterface;
+import org.bimserver.shared.HashMapVirtualObject;
+import org.bimserver.shared.VirtualObject;
+import org.eclipse.emf.ecore.EClass;
+
+/**
+ * Hands out cids and oids like the Database, the cid is in the lowest 16 bits of an oid. Saved objects are kept in a map.
+ */
+public class MemoryDatabaseInterface implements DatabaseInterface {
+	private final Map<EClass, Short> cids = new HashMap<>();
+	private final Map<Short, EClass> eClasses = new HashMap<>();
+	private final Map<EClass, Long> counters = new HashMap<>();
+	private final Map<Long, HashMapVirtualObject> saved = new HashMap<>();
+
+	@Override
+	public EClass getEClassForOid(long oid) throws BimserverDatabaseException {
+		return getEClassForCid((short) oid);
+	}
+
+	public EClass getEClassForCid(short cid) throws BimserverDatabaseException {
+		EClass eClass = eClasses.get(cid);
+		if (eClass == null) {
+			throw new BimserverDatabaseException("No class for cid " + cid);
+		}
+		return eClass;
+	}
+
+	@Override
+	public short getCidOfEClass(EClass eClass) {
+		return cids.computeIfAbsent(eClass, k -> {
+			short cid = (short) (cids.size() + 1);
+			eClasses.put(cid, k);
+			return cid;
+		});
+	}
+
+	@Override
+	public long newOid(EClass eClass) {
+		Long counter = counters.get(eClass);
+		long oid = (counter == null ? getCidOfEClass(eClass) : counter) + 65536;
+		counters.put(eClass, oid);
+		return oid;
+	}
+
+	@Override
+	public int save(VirtualObject virtualObject) throws BimserverDatabaseException {
+		HashMapVirtualObject object = (HashMapVirtualObject) virtualObject;
+		if (saved.put(object.getOid(), object) != null) {
+			throw new BimserverDatabaseException("Object " + object.getOid() + " saved twice");
+		}
+		return 0;
+	}
+
+	@Override
+	public int saveOverwrite(VirtualObject virtualObject) throws BimserverDatabaseException {
+		saved.put(virtualObject.getOid(), (HashMapVirtualObject) virtualObject);
+		return 0;
+	}
+
+	@Override
+	public byte[] get(String tableName, byte[] key) {
+		return null;
+	}
+
+	@Override
+	public List<byte[]> getDuplicates(String tableName, byte[] key) {
+		return null;
+	}
+
+	@Override
+	public UUID newUuid() {
+		return UUID.randomUUID();
+	}
+
+	/**
+	 * @return The saved objects by oid
+	 */
+	public Map<Long, HashMapVirtualObject> getSaved() {
+		return saved;
+	}
+
+	/**
+	 * @return The only saved object of the given class, fails when there is none or more than one
+	 */
+	public HashMapVirtualObject getOne(EClass eClass) {
+		HashMapVirtualObject result = null;
+		for (HashMapVirtualObject object : saved.values()) {
+			if (object.eClass() == eClass) {
+				assertNull("More than one " + eClass.getName(), result);
+				result = object;
+			}
+		}
+		assertNotNull("No " + eClass.getName(), result);
+		return result;
+	}
+}
@@ -0,0 +1,66 @@
+package org.bimserver.tests.utils;
+
+/******************************************************************************
+ * Copyright (C) 2009-2019  BIMserver.org
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see {@literal<http://www.gnu.org/licenses/>}.
+ *****************************************************************************/
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.UUID;
+
+import org.apache.commons.io.FileUtils;
+import org.bimserver.emf.MetaDataManager;
+import org.bimserver.emf.PackageMetaData;
+import org.bimserver.emf.Schema;
+import org.bimserver.models.ifc2x3tc1.Ifc2x3tc1Package;
+import org.bimserver.shared.HashMapVirtualObject;
+import org.bimserver.shared.QueryContext;
+import org.eclipse.emf.ecore.EClass;
+import org.junit.After;
+import org.junit.Before;
+
+/**
+ * Base for tests that work on HashMapVirtualObjects of IFC2x3tc1 without a server. Every test gets its own temporary directory, which is
+ * removed afterwards, and a MemoryDatabaseInterface that the objects made by create are registered with.
+ */
+public abstract class VirtualObjectTestBase {
+	protected final Ifc2x3tc1Package ifc = Ifc2x3tc1Package.eINSTANCE;
+	protected Path tempDir;
+	protected MetaDataManager metaDataManager;
+	protected PackageMetaData packageMetaData;
+	protected MemoryDatabaseInterface databaseInterface;
+	protected QueryContext queryContext;
+
+	@Before
+	public void setupVirtualObjects() throws IOException {
+		tempDir = Files.createTempDirectory(getClass().getSimpleName());
+		metaDataManager = new MetaDataManager(tempDir);
+		metaDataManager.addEPackage(ifc, Schema.IFC2X3TC1);
+		packageMetaData = metaDataManager.getPackageMetaData(ifc.getName());
+		databaseInterface = new MemoryDatabaseInterface();
+		queryContext = new QueryContext(databaseInterface, packageMetaData, 1, 1, 1, 1, 0);
+	}
+
+	@After
+	public void removeTempDir() throws IOException {
+		FileUtils.deleteDirectory(tempDir.toFile());
+	}
+
+	protected HashMapVirtualObject create(EClass eClass) {
+		return new HashMapVirtualObject(queryContext, eClass, databaseInterface.newOid(eClass), UUID.randomUUID());
+	}
+}